@@ -0,0 +1,20 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package benchmarks.com.microsoft.azure.sdk.iot.device;
+
+/**
+ * The JVM arguments every benchmark fork runs with.
+ */
+public final class BenchmarkJvmArgs
+{
+    /**
+     * Replaces the log4j configuration bundled with the device client, which
+     * logs everything to a file, with one that turns logging off.
+     */
+    public static final String LOGGING_OFF = "-Dlog4j.configuration=log4j-benchmarks.properties";
+
+    private BenchmarkJvmArgs()
+    {
+    }
+}
@@ -0,0 +1,171 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package benchmarks.com.microsoft.azure.sdk.iot.device;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs all the benchmarks with the GC profiler and compares the bytes each
+ * operation allocates against a baseline, so that the build fails when a
+ * change makes a hot path allocate more.
+ *
+ * The allocation per operation does not depend on the speed of the machine,
+ * unlike the time per operation, which is reported but not checked, since the
+ * build agents are shared.
+ *
+ * Usage: {@code java -cp benchmarks.jar benchmarks.com.microsoft.azure.sdk.iot.device.BenchmarkRegressionCheck [--write-baseline] <baseline file> [tolerance]}
+ *
+ * The check fails if the baseline file does not exist, or has no entry for a
+ * benchmark, so that a build agent cannot pass by seeding its own baseline.
+ * With {@code --write-baseline}, the baseline file is written from this run
+ * instead, to be reviewed and committed. The tolerance is the fraction of
+ * the baseline a benchmark may allocate above it, 0.1 by default.
+ */
+public final class BenchmarkRegressionCheck
+{
+    private static final String ALLOCATION_KEY = "\u00b7gc.alloc.rate.norm";
+    private static final String RESULT_FILE = "benchmarks-result.json";
+    private static final double DEFAULT_TOLERANCE = 0.1;
+    private static final String WRITE_BASELINE_OPTION = "--write-baseline";
+
+    /** Bytes a benchmark may allocate above the tolerance, for the noise of the smallest ones. */
+    private static final double ALLOCATION_SLACK_BYTES = 16;
+
+    public static void main(String[] args) throws IOException, RunnerException
+    {
+        boolean writeBaseline = args.length > 0 && WRITE_BASELINE_OPTION.equals(args[0]);
+        int first = writeBaseline ? 1 : 0;
+        if (args.length - first < 1 || args.length - first > 2)
+        {
+            System.err.println("Usage: BenchmarkRegressionCheck [" + WRITE_BASELINE_OPTION + "] <baseline file> [tolerance]");
+            System.exit(2);
+        }
+        File baselineFile = new File(args[first]);
+        double tolerance = (args.length - first > 1) ? Double.parseDouble(args[first + 1]) : DEFAULT_TOLERANCE;
+        if (!writeBaseline && !baselineFile.isFile())
+        {
+            System.err.println("No baseline at " + baselineFile + ", run with " + WRITE_BASELINE_OPTION + " to create it");
+            System.exit(2);
+        }
+
+        Options options = new OptionsBuilder()
+                .include(BenchmarkRegressionCheck.class.getPackage().getName() + ".*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .warmupIterations(3)
+                .measurementIterations(3)
+                .forks(1)
+                .jvmArgsAppend(BenchmarkJvmArgs.LOGGING_OFF)
+                .resultFormat(ResultFormatType.JSON)
+                .result(RESULT_FILE)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        Properties current = new Properties();
+        for (RunResult result : results)
+        {
+            Result allocation = result.getSecondaryResults().get(ALLOCATION_KEY);
+            if (allocation != null)
+            {
+                current.setProperty(getLabel(result.getParams()), Double.toString(allocation.getScore()));
+            }
+        }
+
+        if (writeBaseline)
+        {
+            store(current, baselineFile);
+            System.out.println("Wrote the baseline " + baselineFile);
+            return;
+        }
+
+        List<String> regressions = compare(load(baselineFile), current, tolerance);
+        for (String regression : regressions)
+        {
+            System.err.println(regression);
+        }
+        if (!regressions.isEmpty())
+        {
+            System.exit(1);
+        }
+        System.out.println("No allocation regression against " + baselineFile);
+    }
+
+    /**
+     * Lists the benchmarks that allocate more per operation than the baseline
+     * allows, or that are missing from the baseline.
+     */
+    static List<String> compare(Properties baseline, Properties current, double tolerance)
+    {
+        List<String> regressions = new ArrayList<>();
+        for (String label : current.stringPropertyNames())
+        {
+            String baselineValue = baseline.getProperty(label);
+            if (baselineValue == null)
+            {
+                regressions.add(String.format("%s has no baseline", label));
+            }
+            else
+            {
+                double expected = Double.parseDouble(baselineValue);
+                double actual = Double.parseDouble(current.getProperty(label));
+                if (actual > expected * (1 + tolerance) + ALLOCATION_SLACK_BYTES)
+                {
+                    regressions.add(String.format("%s allocates %.1f bytes/op, baseline is %.1f bytes/op", label, actual, expected));
+                }
+            }
+        }
+        return regressions;
+    }
+
+    private static String getLabel(BenchmarkParams params)
+    {
+        StringBuilder label = new StringBuilder(params.getBenchmark());
+        for (String key : params.getParamsKeys())
+        {
+            label.append(':').append(key).append('=').append(params.getParam(key));
+        }
+        return label.toString();
+    }
+
+    private static Properties load(File file) throws IOException
+    {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file))
+        {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private static void store(Properties properties, File file) throws IOException
+    {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs())
+        {
+            throw new IOException("Cannot create " + parent);
+        }
+        try (OutputStream out = new FileOutputStream(file))
+        {
+            properties.store(out, "Bytes allocated per operation by each benchmark");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package benchmarks.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the construction of a message and the setting of its user
+ * properties, which every message sent by the client goes through.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkJvmArgs.LOGGING_OFF)
+@State(Scope.Thread)
+public class MessageBenchmark
+{
+    @Param({"16", "256", "4096"})
+    public int bodySize;
+
+    private byte[] body;
+    private String stringBody;
+
+    @Setup
+    public void setup()
+    {
+        this.body = new byte[this.bodySize];
+        Arrays.fill(this.body, (byte) 'a');
+        this.stringBody = new String(this.body, Message.DEFAULT_IOTHUB_MESSAGE_CHARSET);
+    }
+
+    @Benchmark
+    public Message constructFromBytes()
+    {
+        return new Message(this.body);
+    }
+
+    @Benchmark
+    public Message constructFromString()
+    {
+        return new Message(this.stringBody);
+    }
+
+    @Benchmark
+    public Message constructAndSetProperties()
+    {
+        Message message = new Message(this.body);
+        message.setProperty("temperatureAlert", "true");
+        message.setProperty("sensor", "thermostat-1");
+        message.setProperty("unit", "celsius");
+        message.setProperty("sequence", "42");
+        return message;
+    }
+}
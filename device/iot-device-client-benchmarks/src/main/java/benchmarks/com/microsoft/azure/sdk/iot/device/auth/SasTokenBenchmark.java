@@ -0,0 +1,80 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package benchmarks.com.microsoft.azure.sdk.iot.device.auth;
+
+import benchmarks.com.microsoft.azure.sdk.iot.device.BenchmarkJvmArgs;
+import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasToken;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenManager;
+import com.microsoft.azure.sdk.iot.device.auth.Signature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the generation of the SAS token the transports authenticate
+ * with, of the HMAC signature it is built on, and of the token handed out
+ * by the SAS token manager, cached and renewed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkJvmArgs.LOGGING_OFF)
+@State(Scope.Thread)
+public class SasTokenBenchmark
+{
+    private static final String HOSTNAME = "bench-hub.azure-devices.net";
+    private static final String DEVICE_ID = "bench-device";
+    private static final String DEVICE_KEY = "c2VjcmV0LWtleS1mb3ItYmVuY2htYXJrcy1vbmx5IQ==";
+    private static final String RESOURCE_URI = HOSTNAME + "/devices/" + DEVICE_ID;
+
+    private DeviceClientConfig config;
+    private long expiryTime;
+    private IotHubSasTokenManager renewingManager;
+
+    @Setup
+    public void setup() throws URISyntaxException
+    {
+        this.config = new DeviceClientConfig(HOSTNAME, DEVICE_ID, DEVICE_KEY, null);
+        this.expiryTime = System.currentTimeMillis() / 1000 + 3600;
+        DeviceClientConfig renewingConfig = new DeviceClientConfig(HOSTNAME, DEVICE_ID, DEVICE_KEY, null);
+        renewingConfig.setTokenValidSecs(0);
+        this.renewingManager = renewingConfig.getSasTokenManager();
+    }
+
+    @Benchmark
+    public String signature()
+    {
+        return new Signature(RESOURCE_URI, this.expiryTime, DEVICE_KEY).toString();
+    }
+
+    @Benchmark
+    public String sasToken()
+    {
+        return new IotHubSasToken(this.config, this.expiryTime).toString();
+    }
+
+    @Benchmark
+    public String cachedSasToken()
+    {
+        return this.config.getSasTokenManager().getSasToken();
+    }
+
+    @Benchmark
+    public String renewedSasToken()
+    {
+        return this.renewingManager.getSasToken();
+    }
+}
@@ -0,0 +1,209 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package benchmarks.com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import benchmarks.com.microsoft.azure.sdk.iot.device.BenchmarkJvmArgs;
+import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsIotHubConnection;
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsTransport;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.engine.Collector;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.Link;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Session;
+import org.apache.qpid.proton.engine.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole AMQPS send path of a message, with the logging of the
+ * client turned off: AmqpsTransport.addMessage and sendMessages, the
+ * conversion and encoding AmqpsIotHubConnection.sendMessage does, the
+ * acknowledgement of the IoT Hub handled by onDelivery, and the callback of
+ * the message.
+ *
+ * The connection sends on a Proton link to a second, in-memory Proton engine
+ * standing for the IoT Hub, which accepts every message. The engine adds the
+ * same cost to every run; it is needed because a Proton sender keeps every
+ * delivery until a peer settles it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkJvmArgs.LOGGING_OFF)
+@State(Scope.Thread)
+public class AmqpsSendBenchmark
+{
+    private static final IotHubEventCallback CALLBACK = new IotHubEventCallback()
+    {
+        @Override
+        public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+        {
+        }
+    };
+
+    @Param({"16", "256", "4096"})
+    public int bodySize;
+
+    private AmqpsTransport transport;
+    private AmqpsIotHubConnection connection;
+    private Message message;
+
+    private Transport clientTransport;
+    private Collector clientEvents;
+    private Transport hubTransport;
+    private Receiver hubReceiver;
+    private byte[] hubBuffer;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        DeviceClientConfig config = new DeviceClientConfig("bench-hub.azure-devices.net", "bench-device",
+                "c2VjcmV0LWtleS1mb3ItYmVuY2htYXJrcy1vbmx5IQ==", null);
+
+        Connection clientConnection = Proton.connection();
+        this.clientTransport = Proton.transport();
+        this.clientTransport.bind(clientConnection);
+        this.clientEvents = Proton.collector();
+        clientConnection.collect(this.clientEvents);
+        clientConnection.open();
+        Session session = clientConnection.session();
+        session.open();
+        Sender sender = session.sender("bench-sender");
+        sender.open();
+
+        Connection hubConnection = Proton.connection();
+        this.hubTransport = Proton.transport();
+        this.hubTransport.bind(hubConnection);
+        hubConnection.open();
+        EnumSet<EndpointState> uninitialized = EnumSet.of(EndpointState.UNINITIALIZED);
+        EnumSet<EndpointState> any = EnumSet.allOf(EndpointState.class);
+        while (this.hubReceiver == null)
+        {
+            this.pump();
+            for (Session hubSession = hubConnection.sessionHead(uninitialized, any); hubSession != null;
+                 hubSession = hubSession.next(uninitialized, any))
+            {
+                hubSession.open();
+            }
+            for (Link hubLink = hubConnection.linkHead(uninitialized, any); hubLink != null;
+                 hubLink = hubLink.next(uninitialized, any))
+            {
+                hubLink.open();
+                this.hubReceiver = (Receiver) hubLink;
+                this.hubReceiver.flow(Integer.MAX_VALUE);
+            }
+        }
+        this.pump();
+        this.hubBuffer = new byte[this.bodySize + 1024];
+
+        this.transport = new AmqpsTransport(config, false);
+        this.connection = new AmqpsIotHubConnection(config, false);
+        this.connection.addListener(this.transport);
+        setField(this.connection, "sender", sender);
+        setField(this.connection, "linkCredit", Integer.MAX_VALUE);
+        setField(this.connection, "state", com.microsoft.azure.sdk.iot.device.transport.State.OPEN);
+        setField(this.transport, "connection", this.connection);
+        setField(this.transport, "state", com.microsoft.azure.sdk.iot.device.transport.State.OPEN);
+
+        byte[] body = new byte[this.bodySize];
+        Arrays.fill(body, (byte) 'a');
+        this.message = new Message(body);
+        this.message.setMessageId("bench-message-id");
+        this.message.setProperty("sensor", "thermostat-1");
+        this.message.setProperty("unit", "celsius");
+    }
+
+    @Benchmark
+    public void send() throws Exception
+    {
+        this.transport.addMessage(this.message, CALLBACK, null);
+        this.transport.sendMessages();
+
+        this.pump();
+        Delivery received = this.hubReceiver.current();
+        if (received != null && !received.isPartial())
+        {
+            this.hubReceiver.recv(this.hubBuffer, 0, this.hubBuffer.length);
+            this.hubReceiver.advance();
+            received.disposition(Accepted.getInstance());
+            received.settle();
+        }
+        this.pump();
+
+        Event event;
+        while ((event = this.clientEvents.peek()) != null)
+        {
+            if (event.getType() == Event.Type.DELIVERY)
+            {
+                this.connection.onDelivery(event);
+                event.getDelivery().settle();
+            }
+            this.clientEvents.pop();
+        }
+
+        this.transport.invokeCallbacks();
+    }
+
+    /**
+     * Moves the bytes written by each engine to the other, until both are idle.
+     */
+    private void pump()
+    {
+        boolean moved = true;
+        while (moved)
+        {
+            moved = move(this.clientTransport, this.hubTransport) | move(this.hubTransport, this.clientTransport);
+        }
+    }
+
+    private static boolean move(Transport from, Transport to)
+    {
+        boolean moved = false;
+        while (from.pending() > 0 && to.capacity() > 0)
+        {
+            ByteBuffer head = from.head();
+            int length = Math.min(head.remaining(), to.capacity());
+            ByteBuffer chunk = head.duplicate();
+            chunk.limit(chunk.position() + length);
+            to.tail().put(chunk);
+            to.process();
+            from.pop(length);
+            moved = true;
+        }
+        return moved;
+    }
+
+    private static void setField(Object target, String name, Object value) throws Exception
+    {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
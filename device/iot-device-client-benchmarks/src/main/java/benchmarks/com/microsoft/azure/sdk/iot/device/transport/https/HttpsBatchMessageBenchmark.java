@@ -0,0 +1,64 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package benchmarks.com.microsoft.azure.sdk.iot.device.transport.https;
+
+import benchmarks.com.microsoft.azure.sdk.iot.device.BenchmarkJvmArgs;
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsBatchMessage;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsSingleMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.naming.SizeLimitExceededException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the building of an HTTPS batch out of batchSize messages, so that
+ * the cost of a growing batch body shows across the sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkJvmArgs.LOGGING_OFF)
+@State(Scope.Thread)
+public class HttpsBatchMessageBenchmark
+{
+    @Param({"1", "10", "100", "500"})
+    public int batchSize;
+
+    private HttpsSingleMessage[] messages;
+
+    @Setup
+    public void setup()
+    {
+        this.messages = new HttpsSingleMessage[this.batchSize];
+        for (int i = 0; i < this.batchSize; i++)
+        {
+            Message message = new Message("{\"deviceId\":\"bench-device\",\"temperature\":21.5,\"sequence\":" + i + "}");
+            message.setProperty("sensor", "thermostat-1");
+            this.messages[i] = HttpsSingleMessage.parseHttpsMessage(message);
+        }
+    }
+
+    @Benchmark
+    public HttpsBatchMessage addMessages() throws SizeLimitExceededException
+    {
+        HttpsBatchMessage batch = new HttpsBatchMessage();
+        for (HttpsSingleMessage message : this.messages)
+        {
+            batch.addMessage(message);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,85 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package benchmarks.com.microsoft.azure.sdk.iot.device.transport.mqtt;
+
+import benchmarks.com.microsoft.azure.sdk.iot.device.BenchmarkJvmArgs;
+import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttMessaging;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the topic handling of a message received over MQTT: queueing it
+ * by topic as the Paho callback does, finding the device-bound topic among
+ * the queued ones, and taking its payload out of the queue.
+ *
+ * No connection is opened. The parsing methods are package-private, so they
+ * are reached through reflection, which adds the same small constant cost to
+ * every run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkJvmArgs.LOGGING_OFF)
+@State(Scope.Thread)
+public class MqttMessagingBenchmark
+{
+    private static final String DEVICE_ID = "bench-device";
+    private static final String TOPIC = "devices/" + DEVICE_ID + "/messages/devicebound/%24.mid=bench-message-id&sensor=thermostat-1";
+
+    /** Topics of other operations waiting in the queue, which are scanned before the device-bound one. */
+    @Param({"0", "16"})
+    public int otherTopics;
+
+    private MqttMessaging messaging;
+    private Method parseTopic;
+    private Method parsePayload;
+    private MqttMessage mqttMessage;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        this.messaging = new MqttMessaging("ssl://bench-hub.azure-devices.net:8883", DEVICE_ID,
+                "bench-hub.azure-devices.net/" + DEVICE_ID, "SharedAccessSignature sr=bench");
+
+        this.parseTopic = MqttMessaging.class.getDeclaredMethod("parseTopic");
+        this.parseTopic.setAccessible(true);
+        this.parsePayload = MqttMessaging.class.getDeclaredMethod("parsePayload", String.class);
+        this.parsePayload.setAccessible(true);
+
+        this.mqttMessage = new MqttMessage("{\"command\":\"reboot\"}".getBytes("UTF-8"));
+        for (int i = 0; i < this.otherTopics; i++)
+        {
+            this.messaging.messageArrived("$iothub/twin/res/200/?$rid=" + i, new MqttMessage(new byte[0]));
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        this.messaging.restartBaseMqtt();
+    }
+
+    @Benchmark
+    public byte[] receive() throws Exception
+    {
+        this.messaging.messageArrived(TOPIC, this.mqttMessage);
+        String topic = (String) this.parseTopic.invoke(this.messaging);
+        return (byte[]) this.parsePayload.invoke(this.messaging, topic);
+    }
+}
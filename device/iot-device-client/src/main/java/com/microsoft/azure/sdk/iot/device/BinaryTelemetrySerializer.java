@@ -0,0 +1,161 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * <p>
+ * A {@link TelemetrySerializer} writing each event in a compact binary
+ * format, for the back ends that decode it and the devices whose bandwidth
+ * matters more than human-readable bodies. An event is written as:
+ * </p>
+ * <pre>
+ * event  = FORMAT_VERSION field*
+ * field  = type name value
+ * name   = varint(UTF-8 length) UTF-8 bytes
+ * value  = for TYPE_STRING, varint(UTF-8 length) UTF-8 bytes
+ *          for TYPE_LONG, the zigzag varint of the value
+ *          for TYPE_DOUBLE, the 8 bytes of the IEEE 754 value, big-endian
+ *          for TYPE_FALSE and TYPE_TRUE, nothing
+ * </pre>
+ * <p>
+ * A varint holds 7 bits per byte, low bits first, with the high bit set on
+ * all the bytes but the last. The fields are written straight into a buffer
+ * the calling thread reuses from one event to the next, so serializing an
+ * event only allocates its body.
+ * </p>
+ */
+public final class BinaryTelemetrySerializer implements TelemetrySerializer
+{
+    /** The serializer shared by the clients using this format. */
+    public static final BinaryTelemetrySerializer INSTANCE = new BinaryTelemetrySerializer();
+
+    /** The first byte of every event, the version of the format. */
+    public static final byte FORMAT_VERSION = 1;
+    public static final byte TYPE_STRING = 1;
+    public static final byte TYPE_LONG = 2;
+    public static final byte TYPE_DOUBLE = 3;
+    public static final byte TYPE_FALSE = 4;
+    public static final byte TYPE_TRUE = 5;
+
+    private final ThreadLocal<BinaryWriter> writers = new ThreadLocal<BinaryWriter>()
+    {
+        @Override
+        protected BinaryWriter initialValue()
+        {
+            return new BinaryWriter();
+        }
+    };
+
+    /**
+     * Serializes an event in the binary format.
+     *
+     * @param event the event to be serialized.
+     *
+     * @return the serialized event.
+     *
+     * @throws IllegalArgumentException if {@code event} is {@code null}, or
+     * has a field with a {@code null} name.
+     */
+    @Override
+    public byte[] serialize(TelemetryEvent event)
+    {
+        // Codes_SRS_BINARYTELEMETRYSERIALIZER_21_001: [If the event is null, the function shall throw an IllegalArgumentException.]
+        if (event == null)
+        {
+            throw new IllegalArgumentException("The telemetry event cannot be 'null'.");
+        }
+
+        // Codes_SRS_BINARYTELEMETRYSERIALIZER_21_002: [The function shall write the format version and then the fields in the order the event writes them into the buffer of the calling thread, and return a copy of the exact length of the event.]
+        BinaryWriter writer = this.writers.get();
+        if (writer.isBusy())
+        {
+            writer = new BinaryWriter();
+        }
+        return writer.write(event);
+    }
+
+    private static final class BinaryWriter extends TelemetryBufferWriter
+    {
+        @Override
+        void begin()
+        {
+            this.writeByte(FORMAT_VERSION);
+        }
+
+        @Override
+        void end()
+        {
+        }
+
+        @Override
+        public TelemetryWriter field(String name, String value)
+        {
+            // Codes_SRS_BINARYTELEMETRYSERIALIZER_21_003: [The writer shall skip a string field with a null value, and write the other strings with their UTF-8 length.]
+            checkName(name);
+            if (value != null)
+            {
+                this.writeHeader(TYPE_STRING, name);
+                this.writeString(value);
+            }
+            return this;
+        }
+
+        @Override
+        public TelemetryWriter field(String name, long value)
+        {
+            // Codes_SRS_BINARYTELEMETRYSERIALIZER_21_004: [The writer shall write the integral fields as zigzag varints.]
+            checkName(name);
+            this.writeHeader(TYPE_LONG, name);
+            this.writeVarint((value << 1) ^ (value >> 63));
+            return this;
+        }
+
+        @Override
+        public TelemetryWriter field(String name, double value)
+        {
+            // Codes_SRS_BINARYTELEMETRYSERIALIZER_21_005: [The writer shall write the floating point fields as their 8 IEEE 754 bytes, big-endian.]
+            checkName(name);
+            this.writeHeader(TYPE_DOUBLE, name);
+            long bits = Double.doubleToLongBits(value);
+            this.ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8)
+            {
+                this.buffer[this.length++] = (byte) (bits >>> shift);
+            }
+            return this;
+        }
+
+        @Override
+        public TelemetryWriter field(String name, boolean value)
+        {
+            // Codes_SRS_BINARYTELEMETRYSERIALIZER_21_006: [The writer shall write the boolean fields as their type alone.]
+            checkName(name);
+            this.writeHeader(value ? TYPE_TRUE : TYPE_FALSE, name);
+            return this;
+        }
+
+        private void writeHeader(byte type, String name)
+        {
+            this.writeByte(type);
+            this.writeString(name);
+        }
+
+        private void writeString(String s)
+        {
+            this.writeVarint(utf8Length(s));
+            this.writeUtf8(s);
+        }
+
+        private void writeVarint(long value)
+        {
+            this.ensureCapacity(10);
+            while ((value & ~0x7fL) != 0)
+            {
+                this.buffer[this.length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            this.buffer[this.length++] = (byte) value;
+        }
+    }
+}
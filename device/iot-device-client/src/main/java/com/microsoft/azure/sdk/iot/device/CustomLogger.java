@@ -2,10 +2,53 @@ package com.microsoft.azure.sdk.iot.device;
 
 import org.apache.log4j.*;
 
+/**
+ * Formats and logs messages on behalf of a class. The parameters of a message
+ * are only formatted if the message is logged, so the costly ones shall be
+ * deferred until then: {@link #METHOD_NAME} stands for the name of the
+ * calling method, and a {@link LazyArgument} computes its value when it is
+ * formatted.
+ */
 public class CustomLogger {
 
+    /**
+     * Stands for the name of the calling method among the parameters of a
+     * message. The stack is only walked if the message is logged.
+     */
+    public static final Object METHOD_NAME = new Object()
+    {
+        @Override
+        public String toString()
+        {
+            return "unknown";
+        }
+    };
+
+    /**
+     * A parameter of a message whose value is only computed if the message is
+     * logged.
+     */
+    public static abstract class LazyArgument
+    {
+        /**
+         * Computes the value of the parameter.
+         *
+         * @return the value to be formatted.
+         */
+        protected abstract Object evaluate();
+
+        @Override
+        public String toString()
+        {
+            // Codes_SRS_CUSTOMLOGGER_21_003: [A lazy argument shall be formatted as the value it evaluates to.]
+            return String.valueOf(this.evaluate());
+        }
+    }
+
     private Logger logger;
     private static final int CALLING_METHOD_NAME_DEPTH = 2;
+    /** The depth of the caller of a log method, as seen from {@link #format}. */
+    private static final int LOGGING_METHOD_NAME_DEPTH = 3;
 
     public CustomLogger(Class<?> clazz)
     {
@@ -14,9 +57,10 @@ public class CustomLogger {
 
     public void LogInfo(String message, Object...params)
     {
+        // Codes_SRS_CUSTOMLOGGER_21_001: [The log functions shall only format the message and its parameters if the message is logged at their level.]
         if(logger.isEnabledFor(Level.INFO))
         {
-            logger.info(String.format(message, params));
+            logger.info(format(message, params));
         }
     }
 
@@ -24,7 +68,7 @@ public class CustomLogger {
     {
         if(logger.isEnabledFor(Level.DEBUG))
         {
-            logger.debug(String.format(message, params));
+            logger.debug(format(message, params));
         }
     }
 
@@ -32,7 +76,7 @@ public class CustomLogger {
     {
         if(logger.isEnabledFor(Level.TRACE))
         {
-            logger.trace(String.format(message, params));
+            logger.trace(format(message, params));
         }
     }
 	
@@ -40,7 +84,7 @@ public class CustomLogger {
     {
         if(logger.isEnabledFor(Level.WARN))
         {
-            logger.warn(String.format(message, params));
+            logger.warn(format(message, params));
         }
     }
 	
@@ -48,7 +92,7 @@ public class CustomLogger {
     {
         if(logger.isEnabledFor(Level.FATAL))
         {
-            logger.fatal(String.format(message, params));
+            logger.fatal(format(message, params));
         }
     }
 
@@ -56,7 +100,7 @@ public class CustomLogger {
     {
         if(logger.isEnabledFor(Level.ERROR))
         {
-            logger.error(String.format(message, params));
+            logger.error(format(message, params));
         }
     }
 
@@ -72,4 +116,26 @@ public class CustomLogger {
     {
         return Thread.currentThread().getStackTrace()[CALLING_METHOD_NAME_DEPTH].getMethodName();
     }
+
+    /**
+     * Formats a message that is logged, looking up the name of the calling
+     * method if it is one of the parameters.
+     */
+    private static String format(String message, Object[] params)
+    {
+        String methodName = null;
+        for (int i = 0; i < params.length; i++)
+        {
+            // Codes_SRS_CUSTOMLOGGER_21_002: [The log functions shall format METHOD_NAME as the name of the method calling them.]
+            if (params[i] == METHOD_NAME)
+            {
+                if (methodName == null)
+                {
+                    methodName = Thread.currentThread().getStackTrace()[LOGGING_METHOD_NAME_DEPTH].getMethodName();
+                }
+                params[i] = methodName;
+            }
+        }
+        return String.format(message, params);
+    }
 }
@@ -0,0 +1,179 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * A {@link MessageCodec} compressing the bodies in the {@code gzip} or the
+ * {@code deflate} (zlib) content encoding.
+ * </p>
+ * <p>
+ * Each thread encoding bodies keeps its own {@link Deflater} and buffers,
+ * which are reset rather than reallocated for every body, so a steady
+ * stream of messages only allocates the encoded bodies.
+ * </p>
+ */
+public final class DeflateMessageCodec implements MessageCodec
+{
+    /** The {@code gzip} codec, with the default compression level. */
+    public static final DeflateMessageCodec GZIP = new DeflateMessageCodec(true, Deflater.DEFAULT_COMPRESSION);
+    /** The {@code deflate} codec, with the default compression level. */
+    public static final DeflateMessageCodec DEFLATE = new DeflateMessageCodec(false, Deflater.DEFAULT_COMPRESSION);
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private final boolean gzip;
+    private final int level;
+    private final ThreadLocal<Compressor> compressors = new ThreadLocal<Compressor>()
+    {
+        @Override
+        protected Compressor initialValue()
+        {
+            return new Compressor(new Deflater(level, gzip));
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param gzip {@code true} for the {@code gzip} content encoding, and
+     * {@code false} for {@code deflate}.
+     * @param level the compression level, from 0 to 9, or -1 for the default
+     * level.
+     *
+     * @throws IllegalArgumentException if the level is out of range.
+     */
+    public DeflateMessageCodec(boolean gzip, int level)
+    {
+        // Codes_SRS_DEFLATEMESSAGECODEC_21_001: [If the level is not from -1 to 9, the constructor shall throw an IllegalArgumentException.]
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+        {
+            throw new IllegalArgumentException("The compression level shall be from -1 to 9.");
+        }
+
+        // Codes_SRS_DEFLATEMESSAGECODEC_21_002: [The constructor shall save the content encoding and the compression level.]
+        this.gzip = gzip;
+        this.level = level;
+    }
+
+    @Override
+    public String getContentEncoding()
+    {
+        // Codes_SRS_DEFLATEMESSAGECODEC_21_003: [The function shall return "gzip" for a gzip codec, and "deflate" otherwise.]
+        return this.gzip ? "gzip" : "deflate";
+    }
+
+    /**
+     * Compresses a body with the deflater of the calling thread.
+     *
+     * @param body the body to be compressed.
+     *
+     * @return the compressed body.
+     *
+     * @throws IllegalArgumentException if {@code body} is {@code null}.
+     */
+    @Override
+    public byte[] encode(ByteBuffer body)
+    {
+        // Codes_SRS_DEFLATEMESSAGECODEC_21_004: [If the body is null, the function shall throw an IllegalArgumentException.]
+        if (body == null)
+        {
+            throw new IllegalArgumentException("The body cannot be null.");
+        }
+
+        // Codes_SRS_DEFLATEMESSAGECODEC_21_005: [The function shall compress the body with the deflater of the calling thread, reset for the body, and return the compressed body in the gzip or the zlib format.]
+        Compressor compressor = this.compressors.get();
+        return compressor.compress(body, this.gzip);
+    }
+
+    /** The deflater and buffers of a thread. */
+    private static final class Compressor
+    {
+        final Deflater deflater;
+        final CRC32 crc = new CRC32();
+        final byte[] chunk = new byte[CHUNK_SIZE];
+        final byte[] trailer = new byte[GZIP_TRAILER_SIZE];
+        byte[] output = new byte[CHUNK_SIZE];
+        int length;
+
+        Compressor(Deflater deflater)
+        {
+            this.deflater = deflater;
+        }
+
+        byte[] compress(ByteBuffer body, boolean gzip)
+        {
+            this.deflater.reset();
+            this.crc.reset();
+            this.length = 0;
+            if (gzip)
+            {
+                this.append(GZIP_HEADER, GZIP_HEADER.length);
+            }
+
+            int inputLength = 0;
+            while (body.hasRemaining())
+            {
+                // read-only views have no accessible array, so the body is
+                // fed through the chunk buffer.
+                int read = Math.min(body.remaining(), this.chunk.length);
+                body.get(this.chunk, 0, read);
+                inputLength += read;
+                this.crc.update(this.chunk, 0, read);
+                this.deflater.setInput(this.chunk, 0, read);
+                while (!this.deflater.needsInput())
+                {
+                    this.deflate();
+                }
+            }
+            this.deflater.finish();
+            while (!this.deflater.finished())
+            {
+                this.deflate();
+            }
+
+            if (gzip)
+            {
+                writeIntLittleEndian(this.trailer, 0, (int) this.crc.getValue());
+                writeIntLittleEndian(this.trailer, 4, inputLength);
+                this.append(this.trailer, this.trailer.length);
+            }
+            return Arrays.copyOf(this.output, this.length);
+        }
+
+        private void deflate()
+        {
+            if (this.length == this.output.length)
+            {
+                this.output = Arrays.copyOf(this.output, 2 * this.output.length);
+            }
+            this.length += this.deflater.deflate(this.output, this.length, this.output.length - this.length);
+        }
+
+        private void append(byte[] bytes, int count)
+        {
+            if (this.length + count > this.output.length)
+            {
+                this.output = Arrays.copyOf(this.output, Math.max(2 * this.output.length, this.length + count));
+            }
+            System.arraycopy(bytes, 0, this.output, this.length, count);
+            this.length += count;
+        }
+
+        private static void writeIntLittleEndian(byte[] bytes, int offset, int value)
+        {
+            bytes[offset] = (byte) value;
+            bytes[offset + 1] = (byte) (value >>> 8);
+            bytes[offset + 2] = (byte) (value >>> 16);
+            bytes[offset + 3] = (byte) (value >>> 24);
+        }
+    }
+}
@@ -4,8 +4,15 @@
 package com.microsoft.azure.sdk.iot.device;
 
 import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsTransport;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsEngine;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsPersistentEngine;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsTransport;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubEventDrivenReceiveTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubEventDrivenSendTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubRuntimeSendTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubReceiveTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubSendTask;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttTransport;
@@ -18,8 +25,17 @@ import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -45,21 +61,43 @@ public final class DeviceClient implements Closeable
     /** The state of the IoT Hub client's connection with the IoT Hub. */
     protected enum IotHubClientState
     {
-        OPEN, CLOSED
+        OPEN, CLOSING, CLOSED
     }
 
     protected final static String SET_MINIMUM_POLLING_INTERVAL = "SetMinimumPollingInterval";
     protected final static String SET_CERTIFICATE_PATH = "SetCertificatePath";
     protected final static String SET_SAS_TOKEN_EXPIRY_TIME = "SetSASTokenExpiryTime";
+    protected final static String SET_EVENT_DRIVEN_SEND = "SetEventDrivenSend";
+    protected final static String SET_OUTBOUND_BUFFER = "SetOutboundBuffer";
+    protected final static String SET_CALLBACK_DISPATCHER = "SetCallbackDispatcher";
+    protected final static String SET_OUTBOUND_JOURNAL = "SetOutboundJournal";
+    protected final static String SET_MESSAGE_ID_GENERATOR = "SetMessageIdGenerator";
+    protected final static String SET_MESSAGE_POOL = "SetMessagePool";
+    protected final static String SET_CODEC_STAGE = "SetCodecStage";
+    protected final static String SET_TELEMETRY_SERIALIZER = "SetTelemetrySerializer";
+    protected final static String SET_COALESCER = "SetCoalescer";
+    protected final static String SET_METRICS_EXPORTER = "SetMetricsExporter";
+    protected final static String SET_HTTPS_ENGINE = "SetHttpsEngine";
 
     /**
      * The number of milliseconds the transport will wait between
      * sending out messages.
      */
     public static long SEND_PERIOD_MILLIS = 10l;
+    /**
+     * The number of milliseconds an event-driven sender will wait before
+     * retrying messages that the transport could not complete yet.
+     */
+    public static long SEND_RETRY_PERIOD_MILLIS = 1000l;
+    /**
+     * The maximum number of milliseconds a closing client will wait for the
+     * send task before checking again whether the transport is empty.
+     */
+    public static long CLOSE_RECHECK_PERIOD_MILLIS = 100l;
     /**
      * The number of milliseconds the transport will wait between
-     * polling for messages.
+     * polling for messages. An event-driven AMQPS or MQTT client handles
+     * each message as it arrives instead.
      */
     public static long RECEIVE_PERIOD_MILLIS_AMQPS = 10l;
     public static long RECEIVE_PERIOD_MILLIS_MQTT = 10l;
@@ -84,10 +122,73 @@ public final class DeviceClient implements Closeable
     protected IotHubTransport transport;
 
     protected ScheduledExecutorService taskScheduler;
-    protected IotHubClientState state;
+    protected volatile IotHubClientState state;
     protected long RECEIVE_PERIOD_MILLIS;
     protected CustomLogger logger;
 
+    /**
+     * Whether messages are sent as soon as they are added, instead of by a
+     * send task that polls the transport every SEND_PERIOD_MILLIS.
+     */
+    protected boolean eventDrivenSend;
+    protected IotHubEventDrivenSendTask eventDrivenSendTask;
+    /** The event-driven sender of a client built with a runtime. */
+    protected IotHubRuntimeSendTask runtimeSendTask;
+    /**
+     * Whether the transport raises a receive signal when a message arrives,
+     * so that an event-driven client needs no task polling it.
+     */
+    protected boolean receiveSignalled;
+    /** The receive task of an event-driven client whose transport raises a receive signal. */
+    protected IotHubEventDrivenReceiveTask eventDrivenReceiveTask;
+
+    /**
+     * Caps the messages held by the transport until the IoT Hub responds to
+     * them. {@code null} unless the <b>SetOutboundBuffer</b> option is set, in
+     * which case the transport does not account for its messages at all.
+     */
+    protected IotHubOutboundBuffer outboundBuffer;
+
+    /**
+     * Delivers the event callbacks away from the send task. Can be
+     * {@code null}, in which case the send task invokes them itself.
+     */
+    protected IotHubCallbackDispatcher callbackDispatcher;
+
+    /**
+     * Keeps the messages held by the transport on disk, to be sent again
+     * after a restart. Can be {@code null}.
+     */
+    protected IotHubOutboundJournal outboundJournal;
+
+    /** Generates the IDs the messages sent by the client have not given out yet. */
+    protected MessageIdGenerator messageIdGenerator = new SequentialMessageIdGenerator();
+
+    /** Recycles the messages obtained from the client once sent. Can be {@code null}. */
+    protected IotHubMessagePool messagePool;
+
+    /** Encodes the bodies of the messages before they are queued. Can be {@code null}. */
+    protected IotHubCodecStage codecStage;
+
+    /** Serializes the telemetry events given to {@link #obtainMessage(TelemetryEvent)}. */
+    protected TelemetrySerializer telemetrySerializer = JsonTelemetrySerializer.INSTANCE;
+
+    /** Packs the small readings sent by the client into single messages. Can be {@code null}. */
+    protected IotHubCoalescer coalescer;
+
+    /** The metrics the transport records the messages and callbacks of the client in. */
+    protected final IotHubClientMetrics metrics = new IotHubClientMetrics();
+
+    /** Publishes the metrics of the client while it is open. Can be {@code null}. */
+    protected IotHubMetricsExporter metricsExporter;
+
+    /** The shared runtime hosting the client tasks. Can be {@code null}. */
+    protected IotHubClientRuntime runtime;
+    /** The tasks scheduled on the shared runtime while the client is open. */
+    protected final List<ScheduledFuture<?>> runtimeTasks = new ArrayList<>();
+    /** Raised by the send task whenever the transport is empty after a pass. */
+    protected IotHubSendSignal drainSignal;
+
     /**
      * Constructor that takes a connection string as an argument.
      *
@@ -155,7 +256,39 @@ public final class DeviceClient implements Closeable
 
         initIotHubClient(hostname, deviceId, sharedAccessKey, sharedAccessToken, protocol);
         this.logger = new CustomLogger(this.getClass());
-        logger.LogInfo("DeviceClient object is created successfully, method name is %s ", logger.getMethodName());
+        logger.LogInfo("DeviceClient object is created successfully, method name is %s ", CustomLogger.METHOD_NAME);
+    }
+
+    /**
+     * Constructor that takes a connection string and a shared runtime as
+     * arguments. The client runs its send and receive tasks on the threads of
+     * the runtime instead of creating its own.
+     *
+     * @param connString the connection string. See
+     * {@link #DeviceClient(String, IotHubClientProtocol)}.
+     * @param protocol the communication protocol used (i.e. HTTPS).
+     * @param runtime the runtime shared with other clients.
+     *
+     * @throws IllegalArgumentException if any of {@code connString},
+     * {@code protocol} or {@code runtime} are {@code null}; or if
+     * {@code connString} is missing one of the following attributes:
+     * {@code HostName}, {@code DeviceId}, or {@code SharedAccessKey}.
+     * @throws URISyntaxException if the IoT hub hostname does not conform to
+     * RFC 3986.
+     */
+    public DeviceClient(String connString, IotHubClientProtocol protocol, IotHubClientRuntime runtime)
+            throws URISyntaxException
+    {
+        this(connString, protocol);
+
+        // Codes_SRS_DEVICECLIENT_21_012: [If the runtime is null, the constructor shall throw an IllegalArgumentException.]
+        if (runtime == null)
+        {
+            throw new IllegalArgumentException("Client runtime cannot be null.");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_013: [The constructor shall save the runtime.]
+        this.runtime = runtime;
     }
 
     /**
@@ -164,36 +297,243 @@ public final class DeviceClient implements Closeable
      *
      * @throws IOException if a connection to an IoT Hub is cannot be
      * established.
+     * @throws IllegalStateException if the client was built with a runtime
+     * that is already closed.
      */
     public void open() throws IOException
     {
         // Codes_SRS_DEVICECLIENT_11_028: [If the client is already open, the function shall do nothing.]
-        if (this.state == IotHubClientState.OPEN)
+        if (this.state != IotHubClientState.CLOSED)
         {
             return;
         }
 
+        // Codes_SRS_DEVICECLIENT_21_017: [If the client was built with a runtime that is closed, the function shall throw an IllegalStateException.]
+        if (this.runtime != null && this.runtime.isClosed())
+        {
+            throw new IllegalStateException("Cannot open a client whose runtime is closed.");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_064: [The function shall register the metrics of the client with the transport before opening it.]
+        this.transport.setMetrics(this.metrics);
+        // Codes_SRS_DEVICECLIENT_21_066: [If a metrics exporter is set, the function shall register the metrics with it, under the IoT Hub host name and the device ID, before opening the transport.]
+        if (this.metricsExporter != null)
+        {
+            this.metricsExporter.register(this.config.getIotHubHostname(), this.config.getDeviceId(), this.metrics);
+        }
+
         // Codes_SRS_DEVICECLIENT_11_035: [The function shall open the transport to communicate with an IoT Hub.]
         // Codes_SRS_DEVICECLIENT_11_036: [If an error occurs in opening the transport, the function shall throw an IOException.]
-        this.transport.open();
+        try
+        {
+            this.transport.open();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // Codes_SRS_DEVICECLIENT_21_067: [If the transport fails to open, the function shall unregister the metrics from the metrics exporter before throwing.]
+            this.unregisterMetrics();
+            throw e;
+        }
+        // Codes_SRS_DEVICECLIENT_21_006: [The function shall register the outbound buffer, if any, with the transport.]
+        this.transport.setOutboundBuffer(this.outboundBuffer);
+        // Codes_SRS_DEVICECLIENT_21_030: [The function shall register the callback dispatcher, if any, with the transport.]
+        this.transport.setCallbackDispatcher(this.callbackDispatcher);
+        if (this.callbackDispatcher != null)
+        {
+            // Codes_SRS_DEVICECLIENT_21_065: [If a callback dispatcher is set, the function shall register the metrics of the client with it.]
+            this.callbackDispatcher.setMetrics(this.metrics);
+        }
+        // Codes_SRS_DEVICECLIENT_21_038: [The function shall register the outbound journal, if any, with the transport.]
+        this.transport.setOutboundJournal(this.outboundJournal);
 
-        IotHubSendTask sendTask = new IotHubSendTask(this.transport);
         IotHubReceiveTask receiveTask = new IotHubReceiveTask(this.transport);
+        this.drainSignal = new IotHubSendSignal();
 
-        this.taskScheduler = Executors.newScheduledThreadPool(2);
-        // the scheduler waits until each execution is finished before
-        // scheduling the next one, so executions of a given task
-        // will never overlap.
-        // Codes_SRS_DEVICECLIENT_11_023: [The function shall schedule send tasks to run every SEND_PERIOD_MILLIS milliseconds.]
-        this.taskScheduler.scheduleAtFixedRate(sendTask, 0,
-                SEND_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
-        // Codes_SRS_DEVICECLIENT_11_024: [The function shall schedule receive tasks to run every RECEIVE_PERIOD_MILLIS milliseconds.]
-        this.taskScheduler.scheduleAtFixedRate(receiveTask, 0,
-                RECEIVE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        if (this.runtime != null)
+        {
+            // Codes_SRS_DEVICECLIENT_21_014: [If the client was built with a runtime, the function shall schedule the send and receive tasks on the runtime instead of creating its own threads.]
+            if (this.eventDrivenSend)
+            {
+                // Codes_SRS_DEVICECLIENT_21_076: [If event-driven sending is enabled on a client built with a runtime, the function shall register a send signal with the transport and start a send task that submits a pass to the runtime whenever the signal is raised, without holding a thread of the runtime while the transport is idle.]
+                IotHubSendSignal sendSignal = new IotHubSendSignal();
+                this.transport.setSendSignal(sendSignal);
+                this.runtimeSendTask = new IotHubRuntimeSendTask(this.transport, sendSignal,
+                        SEND_RETRY_PERIOD_MILLIS, this.drainSignal, this.runtime);
+                this.runtimeSendTask.start();
+            }
+            else
+            {
+                this.runtimeTasks.add(this.runtime.schedule(new IotHubSendTask(this.transport, this.drainSignal), SEND_PERIOD_MILLIS));
+            }
+            if (!this.startEventDrivenReceiveTask(this.runtime))
+            {
+                this.runtimeTasks.add(this.runtime.schedule(receiveTask, RECEIVE_PERIOD_MILLIS));
+            }
+        }
+        else
+        {
+            this.scheduleOwnTasks(receiveTask);
+        }
+
+        if (this.coalescer != null)
+        {
+            // Codes_SRS_DEVICECLIENT_21_059: [If the client has a coalescer, the function shall schedule a task adding the readings whose window expires to the transport, at the flush period of the coalescer.]
+            this.scheduleCoalescingTask();
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_039: [If an outbound journal is set, the function shall add the messages pending in it to the transport, oldest first, before accepting new messages.]
+        this.replayOutboundJournal();
 
         this.state = IotHubClientState.OPEN;
     }
 
+    /**
+     * Adds the messages left in the outbound journal to the transport, with
+     * the replay callback of the journal. If the outbound buffer refuses one,
+     * the others stay in the journal for the next time the client is opened.
+     */
+    private void replayOutboundJournal()
+    {
+        if (this.outboundJournal == null)
+        {
+            return;
+        }
+
+        for (Message message : this.outboundJournal.getPendingMessages())
+        {
+            try
+            {
+                this.transport.addMessage(message, this.outboundJournal.getReplayCallback(),
+                        this.outboundJournal.getReplayCallbackContext());
+            }
+            catch (IllegalStateException e)
+            {
+                logger.LogError("Stopped sending the journaled messages again: %s, method name is %s ", e.toString(), CustomLogger.METHOD_NAME);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Starts the send and receive tasks on threads owned by this client.
+     *
+     * @param receiveTask the receive task.
+     */
+    private void scheduleOwnTasks(IotHubReceiveTask receiveTask)
+    {
+        this.taskScheduler = Executors.newScheduledThreadPool(2);
+        if (this.eventDrivenSend)
+        {
+            // Codes_SRS_DEVICECLIENT_21_001: [If event-driven sending is enabled, the function shall register a send signal with the transport and start a single send task that waits on it.]
+            IotHubSendSignal sendSignal = new IotHubSendSignal();
+            this.transport.setSendSignal(sendSignal);
+            this.eventDrivenSendTask = new IotHubEventDrivenSendTask(this.transport, sendSignal,
+                    SEND_RETRY_PERIOD_MILLIS, this.drainSignal);
+            this.taskScheduler.execute(this.eventDrivenSendTask);
+        }
+        else
+        {
+            IotHubSendTask sendTask = new IotHubSendTask(this.transport, this.drainSignal);
+            // the scheduler waits until each execution is finished before
+            // scheduling the next one, so executions of a given task
+            // will never overlap.
+            // Codes_SRS_DEVICECLIENT_11_023: [The function shall schedule send tasks to run every SEND_PERIOD_MILLIS milliseconds.]
+            this.taskScheduler.scheduleAtFixedRate(sendTask, 0,
+                    SEND_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        if (!this.startEventDrivenReceiveTask(this.taskScheduler))
+        {
+            // Codes_SRS_DEVICECLIENT_11_024: [The function shall schedule receive tasks to run every RECEIVE_PERIOD_MILLIS milliseconds.]
+            this.taskScheduler.scheduleAtFixedRate(receiveTask, 0,
+                    RECEIVE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts a receive task handling each message as it arrives, if sending
+     * is event-driven and the transport raises a receive signal.
+     *
+     * @param executor the executor the receive task runs on.
+     *
+     * @return {@code true} if the task was started, or {@code false} if the
+     * transport is to be polled instead.
+     */
+    private boolean startEventDrivenReceiveTask(Executor executor)
+    {
+        if (!this.eventDrivenSend || !this.receiveSignalled)
+        {
+            return false;
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_079: [If event-driven sending is enabled and the protocol is AMQPS, AMQPS_WS or MQTT, the function shall register a receive signal with the transport and start a receive task that handles a message whenever the signal is raised, on the runtime or the threads of the client, instead of polling the transport every RECEIVE_PERIOD_MILLIS milliseconds.]
+        IotHubSendSignal receiveSignal = new IotHubSendSignal();
+        this.transport.setReceiveSignal(receiveSignal);
+        this.eventDrivenReceiveTask = new IotHubEventDrivenReceiveTask(this.transport, receiveSignal, executor);
+        this.eventDrivenReceiveTask.start();
+        return true;
+    }
+
+
+    /**
+     * Schedules the task handing the expired windows of the coalescer to the
+     * transport, on the runtime or on the threads of the client.
+     */
+    private void scheduleCoalescingTask()
+    {
+        Runnable coalescingTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    flushCoalescer(false);
+                }
+                catch (Throwable e)
+                {
+                    logger.LogError("Failed to send the coalesced readings: %s, method name is %s ", e.toString(), CustomLogger.METHOD_NAME);
+                }
+            }
+        };
+        long period = this.coalescer.getFlushPeriodMillis();
+        if (this.runtime != null)
+        {
+            this.runtimeTasks.add(this.runtime.schedule(coalescingTask, period));
+        }
+        else
+        {
+            this.taskScheduler.scheduleAtFixedRate(coalescingTask, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Adds the readings held by the coalescer, if any, to the transport.
+     *
+     * @param all {@code true} to add them whatever their age, and
+     * {@code false} to only add the ones whose window expires.
+     */
+    private void flushCoalescer(boolean all)
+    {
+        IotHubCoalescer coalescer = this.coalescer;
+        if (coalescer != null)
+        {
+            synchronized (coalescer)
+            {
+                this.enqueueAll(coalescer.flush(System.currentTimeMillis(), all));
+            }
+        }
+    }
+
+    /**
+     * Stops publishing the metrics of the client, if a metrics exporter is set.
+     */
+    private void unregisterMetrics()
+    {
+        if (this.metricsExporter != null)
+        {
+            this.metricsExporter.unregister(this.config.getIotHubHostname(), this.config.getDeviceId(), this.metrics);
+        }
+    }
 
     /**
      * Completes all current outstanding requests and closes the IoT Hub client.
@@ -205,58 +545,481 @@ public final class DeviceClient implements Closeable
      */
     public void close() throws IOException
     {
+        // Codes_SRS_DEVICECLIENT_21_018: [The function shall close the client, waiting for as long as it takes to complete all current outstanding requests.]
+        this.close(0);
+    }
+
+    /**
+     * Stops accepting new messages, waits at most {@code timeoutMillis}
+     * milliseconds for the outstanding requests to complete, and closes the
+     * IoT Hub client. The callbacks of the messages the IoT Hub acknowledged
+     * are invoked before the client closes. Messages the IoT Hub has not
+     * acknowledged by then are removed, their callbacks are invoked with
+     * {@link IotHubStatusCode#MESSAGE_CANCELLED_ONCLOSE}, and they are
+     * returned to the caller, except for the messages of a message pool,
+     * which are released to it. If the client is already closed, the
+     * function shall do nothing.
+     *
+     * @param timeoutMillis the maximum time to wait for the outstanding
+     * requests, in milliseconds. A timeout of 0 waits until they complete.
+     *
+     * @return the messages that were still pending when the client closed,
+     * oldest first, without the pooled ones.
+     *
+     * @throws IllegalArgumentException if {@code timeoutMillis} is negative.
+     * @throws IOException if the connection to an IoT Hub cannot be closed.
+     */
+    public synchronized List<Message> close(long timeoutMillis) throws IOException
+    {
+        // Codes_SRS_DEVICECLIENT_21_019: [If the timeout is negative, the function shall throw an IllegalArgumentException.]
+        if (timeoutMillis < 0)
+        {
+            throw new IllegalArgumentException("The close timeout cannot be negative.");
+        }
+
         // Codes_SRS_DEVICECLIENT_11_031: [If the client is already closed, the function shall do nothing.]
         if (this.state == IotHubClientState.CLOSED)
         {
-            return;
+            return Collections.emptyList();
         }
 
+        // Codes_SRS_DEVICECLIENT_21_020: [The function shall stop accepting new messages before waiting for the outstanding requests.]
+        this.state = IotHubClientState.CLOSING;
+
+        // Codes_SRS_DEVICECLIENT_21_060: [If the client has a coalescer, the function shall add the readings it holds to the transport before waiting for the outstanding requests.]
+        this.flushCoalescer(true);
+
         // Codes_SRS_DEVICECLIENT_11_010: [The function shall finish all ongoing tasks.]
+        // Codes_SRS_DEVICECLIENT_21_021: [The function shall wait on the drain signal raised by the send task, checking whether the transport is empty at least every CLOSE_RECHECK_PERIOD_MILLIS milliseconds, until it is empty or the timeout expires.]
+        // Codes_SRS_DEVICECLIENT_21_031: [If a callback dispatcher is set, the function shall also wait until every callback handed to it has run.]
+        boolean drained = this.awaitDrain(timeoutMillis);
+
         // Codes_SRS_DEVICECLIENT_11_011: [The function shall cancel all recurring tasks.]
-        while (!this.transport.isEmpty())
+        // Codes_SRS_DEVICECLIENT_21_002: [If event-driven sending is enabled, the function shall stop the send task and unregister the send signal from the transport.]
+        if (this.eventDrivenSendTask != null)
+        {
+            this.eventDrivenSendTask.stop();
+            this.eventDrivenSendTask = null;
+            this.transport.setSendSignal(null);
+        }
+        if (this.runtimeSendTask != null)
+        {
+            this.runtimeSendTask.stop();
+            this.runtimeSendTask = null;
+            this.transport.setSendSignal(null);
+        }
+        // Codes_SRS_DEVICECLIENT_21_080: [If an event-driven receive task was started, the function shall stop it and unregister the receive signal from the transport.]
+        if (this.eventDrivenReceiveTask != null)
+        {
+            this.eventDrivenReceiveTask.stop();
+            this.eventDrivenReceiveTask = null;
+            this.transport.setReceiveSignal(null);
+        }
+        if (this.runtime != null)
         {
+            // Codes_SRS_DEVICECLIENT_21_015: [If the client was built with a runtime, the function shall cancel its tasks on the runtime without closing the runtime.]
+            for (ScheduledFuture<?> task : this.runtimeTasks)
+            {
+                task.cancel(false);
+            }
+            this.runtimeTasks.clear();
+        }
+        else
+        {
+            this.taskScheduler.shutdown();
+        }
+
+        List<IotHubOutboundPacket> pendingPackets = drained
+                ? Collections.<IotHubOutboundPacket>emptyList()
+                : this.transport.removePendingPackets();
+
+        // Codes_SRS_DEVICECLIENT_21_077: [The function shall invoke the callbacks of the messages the IoT Hub acknowledged before closing the transport.]
+        this.transport.invokeCallbacks();
 
+        List<Message> pendingMessages = new ArrayList<>(pendingPackets.size());
+        for (IotHubOutboundPacket packet : pendingPackets)
+        {
+            // Codes_SRS_DEVICECLIENT_21_022: [If the timeout expires first, the function shall remove the pending messages from the transport and return them, except for the messages of a message pool.]
+            if (packet.getCallback() != IotHubMessagePool.RELEASING_CALLBACK)
+            {
+                pendingMessages.add(packet.getMessage());
+            }
+            // Codes_SRS_DEVICECLIENT_21_078: [The function shall invoke the callback of every message removed with the status MESSAGE_CANCELLED_ONCLOSE.]
+            this.cancelOnClose(packet);
         }
-        this.taskScheduler.shutdown();
+
+        // Codes_SRS_DEVICECLIENT_21_068: [If a metrics exporter is set, the function shall unregister the metrics from it before closing the transport.]
+        this.unregisterMetrics();
+
         // Codes_SRS_DEVICECLIENT_11_037: [The function shall close the transport.]
         this.transport.close();
         this.state = IotHubClientState.CLOSED;
+        return pendingMessages;
+    }
+
+    /**
+     * Completes the callback of a message removed from the transport on
+     * close. The callback of a pooled message releases it to its pool.
+     *
+     * @param packet the packet removed.
+     */
+    private void cancelOnClose(IotHubOutboundPacket packet)
+    {
+        IotHubEventCallback callback = packet.getCallback();
+        if (callback == null)
+        {
+            return;
+        }
+
+        try
+        {
+            callback.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, packet.getContext());
+        }
+        catch (Throwable e)
+        {
+            logger.LogError("Event callback threw %s on close, method name is %s ", e.toString(), CustomLogger.METHOD_NAME);
+        }
+    }
+
+    /**
+     * Closes the IoT Hub client on a background thread, as
+     * {@link #close(long)} does. The client stops accepting new messages
+     * before the function returns.
+     *
+     * @param timeoutMillis the maximum time to wait for the outstanding
+     * requests, in milliseconds. A timeout of 0 waits until they complete.
+     *
+     * @return a future completed with the messages that were still pending
+     * when the client closed, or with the {@link IOException} thrown while
+     * closing the connection.
+     *
+     * @throws IllegalArgumentException if {@code timeoutMillis} is negative.
+     */
+    public Future<List<Message>> closeAsync(final long timeoutMillis)
+    {
+        // Codes_SRS_DEVICECLIENT_21_023: [If the timeout is negative, the function shall throw an IllegalArgumentException.]
+        if (timeoutMillis < 0)
+        {
+            throw new IllegalArgumentException("The close timeout cannot be negative.");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_024: [If the client is open, the function shall stop accepting new messages before returning.]
+        if (this.state == IotHubClientState.OPEN)
+        {
+            this.state = IotHubClientState.CLOSING;
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_025: [The function shall close the client on a new thread and return a future completed with the result of close(timeoutMillis).]
+        FutureTask<List<Message>> closeTask = new FutureTask<>(new Callable<List<Message>>()
+        {
+            @Override
+            public List<Message> call() throws IOException
+            {
+                return close(timeoutMillis);
+            }
+        });
+        Thread closeThread = new Thread(closeTask, "iothub-device-client-close");
+        closeThread.setDaemon(true);
+        closeThread.start();
+        return closeTask;
+    }
+
+    /**
+     * Returns {@code true} if no callback handed to the callback dispatcher is
+     * still waiting or running.
+     *
+     * @return {@code true} if the callback dispatcher is idle or not set.
+     */
+    private boolean isCallbackDispatcherIdle()
+    {
+        return this.callbackDispatcher == null || this.callbackDispatcher.isIdle();
+    }
+
+    /**
+     * Waits until the transport and the callback dispatcher are empty or the
+     * timeout expires.
+     *
+     * @param timeoutMillis the maximum time to wait, in milliseconds. A
+     * timeout of 0 waits until they are empty.
+     *
+     * @return {@code true} if they are empty.
+     */
+    private boolean awaitDrain(long timeoutMillis)
+    {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        // the signal may be raised between a check and the following wait, so
+        // the wait is bounded rather than relying on the signal alone.
+        while (!this.transport.isEmpty() || !this.isCallbackDispatcherIdle())
+        {
+            long waitMillis = CLOSE_RECHECK_PERIOD_MILLIS;
+            if (timeoutMillis > 0)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    return false;
+                }
+                waitMillis = Math.min(remaining, waitMillis);
+            }
+
+            try
+            {
+                this.drainSignal.await(waitMillis);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Asynchronously sends an event message to the IoT Hub.
+     *
+     * @param message the message to be sent.
+     * @param callback the callback to be invoked when a response is received.
+     * Can be {@code null}.
+     * @param callbackContext a context to be passed to the callback. Can be
+     * {@code null} if no callback is provided.
+     *
+     * @throws IllegalArgumentException if the message provided is {@code null}.
+     * @throws IllegalStateException if the client has not been opened yet or is
+     * closed or closing, or if the outbound buffer has no room for the message
+     * (see the <b>SetOutboundBuffer</b> option).
+     */
+    public void sendEventAsync(Message message,
+            IotHubEventCallback callback,
+            Object callbackContext)
+    {
+        // Codes_SRS_DEVICECLIENT_11_039: [If the client is closed, the function shall throw an IllegalStateException.]
+        // Codes_SRS_DEVICECLIENT_21_026: [If the client is closing, the function shall throw an IllegalStateException.]
+        if (this.state != IotHubClientState.OPEN)
+        {
+            throw new IllegalStateException(
+                    "Cannot send event from "
+                            + "an IoT Hub client that is closed or closing.");
+        }
+
+        // Codes_SRS_DEVICECLIENT_11_033: [If the message given is null, the function shall throw an IllegalArgumentException.]
+        if (message == null)
+        {
+            throw new IllegalArgumentException("Cannot send message 'null'.");
+        }
+
+        IotHubCoalescer coalescer = this.coalescer;
+        if (coalescer != null)
+        {
+            // Codes_SRS_DEVICECLIENT_21_057: [If the client has a coalescer, the function shall hand the message to it, and add the packets it returns to the transport, in order.]
+            synchronized (coalescer)
+            {
+                this.enqueueAll(coalescer.add(message, callback, callbackContext, System.currentTimeMillis()));
+            }
+            return;
+        }
+
+        this.enqueue(message, callback, callbackContext);
+    }
+
+    /**
+     * Adds the packets handed out by the coalescer to the transport. A packed
+     * message the transport refuses is dropped, as its readings were already
+     * accepted, and a message sent on its own is refused as any other.
+     *
+     * @param packets the packets, in order.
+     */
+    private void enqueueAll(List<IotHubOutboundPacket> packets)
+    {
+        for (IotHubOutboundPacket packet : packets)
+        {
+            if (packet.getCallback() != IotHubCoalescer.FANOUT_CALLBACK)
+            {
+                this.enqueue(packet.getMessage(), packet.getCallback(), packet.getContext());
+                continue;
+            }
+
+            try
+            {
+                this.enqueue(packet.getMessage(), packet.getCallback(), packet.getContext());
+            }
+            catch (IllegalStateException e)
+            {
+                // Codes_SRS_DEVICECLIENT_21_058: [If the transport refuses a packed message, the function shall invoke the callbacks of its readings with the MESSAGE_DROPPED status.]
+                logger.LogError("Dropped coalesced readings: %s, method name is %s ", e.toString(), CustomLogger.METHOD_NAME);
+                packet.getCallback().execute(IotHubStatusCode.MESSAGE_DROPPED, packet.getContext());
+            }
+        }
+    }
+
+    /**
+     * Adds a message to the transport.
+     *
+     * @param message the message to be sent.
+     * @param callback the callback of the message. Can be {@code null}.
+     * @param callbackContext the context of the callback.
+     */
+    private void enqueue(Message message, IotHubEventCallback callback, Object callbackContext)
+    {
+        // Codes_SRS_DEVICECLIENT_21_040: [The function shall have the message generate the IDs it has not given out yet with the message ID generator of the client.]
+        message.setIdGenerator(this.messageIdGenerator);
+
+        // Codes_SRS_DEVICECLIENT_21_049: [If the client has a codec stage, the function shall have it encode the message before adding the message to the transport.]
+        IotHubCodecStage stage = this.codecStage;
+        if (stage != null)
+        {
+            stage.apply(message);
+        }
+
+        logger.LogInfo("Message with messageid %s along with callback and callbackcontext is added to the queue, method name is %s ", message.messageIdArgument(), CustomLogger.METHOD_NAME);
+        if (message.isPooled())
+        {
+            // Codes_SRS_DEVICECLIENT_21_047: [If the message was obtained from a message pool, the function shall add it to the transport with a callback invoking the given callback and then releasing the message to its pool.]
+            message.setSendCallback(callback, callbackContext);
+            transport.addMessage(message, IotHubMessagePool.RELEASING_CALLBACK, message);
+            return;
+        }
+
+        // Codes_SRS_DEVICECLIENT_11_006: [The function shall add the message, with its associated callback and callback context, to the transport.]
+        transport.addMessage(message, callback, callbackContext);
+    }
+
+    /**
+     * Creates a message to be sent by this client, taken from the message
+     * pool of the client if it has one (see the <b>SetMessagePool</b>
+     * option). A pooled message is released once the callback of its send
+     * has returned, so it shall not be used after being sent.
+     *
+     * @param body the body of the message, which the message takes ownership of.
+     *
+     * @return the message.
+     *
+     * @throws IllegalArgumentException if {@code body} is {@code null}.
+     */
+    public Message obtainMessage(byte[] body)
+    {
+        // Codes_SRS_DEVICECLIENT_21_048: [If the client has a message pool, the function shall obtain the message from it, and otherwise create a new message with the given body.]
+        IotHubMessagePool pool = this.messagePool;
+        return pool == null ? new Message(body) : pool.obtain(body);
+    }
+
+    /**
+     * Creates a message to be sent by this client, whose body is the given
+     * event serialized by the telemetry serializer of the client (see the
+     * <b>SetTelemetrySerializer</b> option). As with
+     * {@link #obtainMessage(byte[])}, the message is taken from the message
+     * pool of the client if it has one.
+     *
+     * @param event the event to be serialized.
+     *
+     * @return the message.
+     *
+     * @throws IllegalArgumentException if {@code event} is {@code null}, or
+     * cannot be serialized.
+     */
+    public Message obtainMessage(TelemetryEvent event)
+    {
+        // Codes_SRS_DEVICECLIENT_21_053: [The function shall obtain a message whose body is the event serialized by the telemetry serializer of the client.]
+        return this.obtainMessage(this.telemetrySerializer.serialize(event));
     }
 
     /**
-     * Asynchronously sends an event message to the IoT Hub.
+     * Asynchronously sends an event message to the IoT Hub, and returns a
+     * future completed with the status the IoT Hub responds with.
      *
      * @param message the message to be sent.
-     * @param callback the callback to be invoked when a response is received.
-     * Can be {@code null}.
-     * @param callbackContext a context to be passed to the callback. Can be
-     * {@code null} if no callback is provided.
+     *
+     * @return the future completed when the IoT Hub responds to the message.
      *
      * @throws IllegalArgumentException if the message provided is {@code null}.
      * @throws IllegalStateException if the client has not been opened yet or is
-     * already closed.
+     * closed or closing, or if the outbound buffer has no room for the message
+     * (see the <b>SetOutboundBuffer</b> option).
      */
-    public void sendEventAsync(Message message,
-            IotHubEventCallback callback,
-            Object callbackContext)
+    public IotHubSendFuture sendEventAsync(Message message)
     {
-        // Codes_SRS_DEVICECLIENT_11_039: [If the client is closed, the function shall throw an IllegalStateException.]
-        if (this.state == IotHubClientState.CLOSED)
+        // Codes_SRS_DEVICECLIENT_21_032: [The function shall send the message with a callback completing the returned future with the status the IoT Hub responds with.]
+        IotHubSendFuture future = new IotHubSendFuture();
+        this.sendEventAsync(message, IotHubSendFuture.COMPLETING_CALLBACK, future);
+        return future;
+    }
+
+    /**
+     * Asynchronously sends event messages to the IoT Hub, in order, and
+     * returns a single future completed once the IoT Hub has responded to all
+     * of them (see {@link IotHubSendFuture#allOf(Collection)}). If a message
+     * cannot be sent, the function throws and the messages before it remain
+     * queued.
+     *
+     * @param messages the messages to be sent.
+     *
+     * @return the future completed when the IoT Hub has responded to every
+     * message.
+     *
+     * @throws IllegalArgumentException if the collection or one of its
+     * messages is {@code null}.
+     * @throws IllegalStateException if the client has not been opened yet or is
+     * closed or closing, or if the outbound buffer has no room for a message
+     * (see the <b>SetOutboundBuffer</b> option).
+     */
+    public IotHubSendFuture sendEventsAsync(Collection<Message> messages)
+    {
+        // Codes_SRS_DEVICECLIENT_21_033: [If the collection is null, the function shall throw an IllegalArgumentException.]
+        if (messages == null)
         {
-            throw new IllegalStateException(
-                    "Cannot send event from "
-                            + "an IoT Hub client that is closed.");
+            throw new IllegalArgumentException("Cannot send messages 'null'.");
         }
 
-        // Codes_SRS_DEVICECLIENT_11_033: [If the message given is null, the function shall throw an IllegalArgumentException.]
-        if (message == null)
+        // Codes_SRS_DEVICECLIENT_21_034: [The function shall send every message, in order, and return a future combining their futures.]
+        List<IotHubSendFuture> futures = new ArrayList<>(messages.size());
+        for (Message message : messages)
         {
-            throw new IllegalArgumentException("Cannot send message 'null'.");
+            futures.add(this.sendEventAsync(message));
         }
+        return IotHubSendFuture.allOf(futures);
+    }
 
-        logger.LogInfo("Message with messageid %s along with callback and callbackcontext is added to the queue, method name is %s ", message.getMessageId(), logger.getMethodName());
-        // Codes_SRS_DEVICECLIENT_11_006: [The function shall add the message, with its associated callback and callback context, to the transport.]
-        transport.addMessage(message, callback, callbackContext);
+    /**
+     * Getter for the number of messages added to the client that the IoT Hub
+     * has not responded to yet. Only counted if an outbound buffer is set
+     * (see the <b>SetOutboundBuffer</b> option).
+     *
+     * @return the number of messages held in the outbound buffer, or 0 if
+     * there is none.
+     */
+    public int getOutboundMessageCount()
+    {
+        // Codes_SRS_DEVICECLIENT_21_010: [The function shall return the number of messages held in the outbound buffer, or 0 if no outbound buffer is set.]
+        IotHubOutboundBuffer buffer = this.outboundBuffer;
+        return buffer == null ? 0 : buffer.getMessageCount();
+    }
+
+    /**
+     * Getter for the total body size of the messages added to the client that
+     * the IoT Hub has not responded to yet. Only counted if an outbound
+     * buffer is set (see the <b>SetOutboundBuffer</b> option).
+     *
+     * @return the number of body bytes held in the outbound buffer, or 0 if
+     * there is none.
+     */
+    public long getOutboundByteCount()
+    {
+        // Codes_SRS_DEVICECLIENT_21_011: [The function shall return the number of body bytes held in the outbound buffer, or 0 if no outbound buffer is set.]
+        IotHubOutboundBuffer buffer = this.outboundBuffer;
+        return buffer == null ? 0 : buffer.getByteCount();
+    }
+
+    /**
+     * Getter for the metrics of the client, which its transport records while
+     * the client is open, and keeps across reopens.
+     *
+     * @return the metrics of the client.
+     */
+    public IotHubClientMetrics getMetrics()
+    {
+        // Codes_SRS_DEVICECLIENT_21_069: [The function shall return the metrics of the client.]
+        return this.metrics;
     }
 
     /**
@@ -353,14 +1116,17 @@ public final class DeviceClient implements Closeable
             case AMQPS:
                 this.transport = new AmqpsTransport(this.config, false);
                 RECEIVE_PERIOD_MILLIS = RECEIVE_PERIOD_MILLIS_AMQPS;
+                this.receiveSignalled = true;
                 break;
             case AMQPS_WS:
                 this.transport = new AmqpsTransport(this.config, true);
                 RECEIVE_PERIOD_MILLIS = RECEIVE_PERIOD_MILLIS_AMQPS;
+                this.receiveSignalled = true;
                 break;
             case MQTT:
                 this.transport = new MqttTransport(this.config);
                 RECEIVE_PERIOD_MILLIS = RECEIVE_PERIOD_MILLIS_MQTT;
+                this.receiveSignalled = true;
                 break;
             default:
                 // should never happen.
@@ -380,7 +1146,7 @@ public final class DeviceClient implements Closeable
 
     private void setOption_SetMinimumPollingInterval(Object value)
     {
-        logger.LogInfo("Setting MinimumPollingInterval as %s milliseconds, method name is %s ", value, logger.getMethodName());
+        logger.LogInfo("Setting MinimumPollingInterval as %s milliseconds, method name is %s ", value, CustomLogger.METHOD_NAME);
         if (!value.equals(null)) {
             if (this.state != IotHubClientState.CLOSED) {
                 throw new IllegalStateException("setOption " + SET_MINIMUM_POLLING_INTERVAL +
@@ -401,7 +1167,7 @@ public final class DeviceClient implements Closeable
 
     private void setOption_SetCertificatePath(Object value)
     {
-        logger.LogInfo("Setting CertificatePath as %s, method name is %s ", value, logger.getMethodName());
+        logger.LogInfo("Setting CertificatePath as %s, method name is %s ", value, CustomLogger.METHOD_NAME);
         if (this.state != IotHubClientState.CLOSED) {
             throw new IllegalStateException("setOption " + SET_CERTIFICATE_PATH +
                     "only works when the transport is closed");
@@ -414,9 +1180,295 @@ public final class DeviceClient implements Closeable
 
     }
 
+    private void setOption_SetEventDrivenSend(Object value)
+    {
+        logger.LogInfo("Setting EventDrivenSend as %s, method name is %s ", value, CustomLogger.METHOD_NAME);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_004: ["SetEventDrivenSend" only works when the client is closed.]
+        if (this.state != IotHubClientState.CLOSED)
+        {
+            throw new IllegalStateException("setOption " + SET_EVENT_DRIVEN_SEND +
+                    " only works when the transport is closed");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_005: ["SetEventDrivenSend" should have value type boolean.]
+        if (value instanceof Boolean)
+        {
+            this.eventDrivenSend = (Boolean) value;
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not boolean = " + value);
+        }
+    }
+
+    private void setOption_SetOutboundBuffer(Object value)
+    {
+        logger.LogInfo("Setting OutboundBuffer as %s, method name is %s ", value, CustomLogger.METHOD_NAME);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_008: ["SetOutboundBuffer" only works when the client is closed.]
+        if (this.state != IotHubClientState.CLOSED)
+        {
+            throw new IllegalStateException("setOption " + SET_OUTBOUND_BUFFER +
+                    " only works when the transport is closed");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_009: ["SetOutboundBuffer" should have value type IotHubOutboundBuffer.]
+        if (value instanceof IotHubOutboundBuffer)
+        {
+            this.outboundBuffer = (IotHubOutboundBuffer) value;
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not an IotHubOutboundBuffer = " + value);
+        }
+    }
+
+    private void setOption_SetCallbackDispatcher(Object value)
+    {
+        logger.LogInfo("Setting CallbackDispatcher as %s, method name is %s ", value, CustomLogger.METHOD_NAME);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_028: ["SetCallbackDispatcher" only works when the client is closed.]
+        if (this.state != IotHubClientState.CLOSED)
+        {
+            throw new IllegalStateException("setOption " + SET_CALLBACK_DISPATCHER +
+                    " only works when the transport is closed");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_029: ["SetCallbackDispatcher" should have value type IotHubCallbackDispatcher.]
+        if (value instanceof IotHubCallbackDispatcher)
+        {
+            this.callbackDispatcher = (IotHubCallbackDispatcher) value;
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not an IotHubCallbackDispatcher = " + value);
+        }
+    }
+
+    private void setOption_SetOutboundJournal(Object value)
+    {
+        logger.LogInfo("Setting OutboundJournal as %s, method name is %s ", value, CustomLogger.METHOD_NAME);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_036: ["SetOutboundJournal" only works when the client is closed.]
+        if (this.state != IotHubClientState.CLOSED)
+        {
+            throw new IllegalStateException("setOption " + SET_OUTBOUND_JOURNAL +
+                    " only works when the transport is closed");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_037: ["SetOutboundJournal" should have value type IotHubOutboundJournal.]
+        if (value instanceof IotHubOutboundJournal)
+        {
+            this.outboundJournal = (IotHubOutboundJournal) value;
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not an IotHubOutboundJournal = " + value);
+        }
+    }
+
+    private void setOption_SetMessageIdGenerator(Object value)
+    {
+        logger.LogInfo("Setting MessageIdGenerator as %s, method name is %s ", value, CustomLogger.METHOD_NAME);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_042: ["SetMessageIdGenerator" only works when the client is closed.]
+        if (this.state != IotHubClientState.CLOSED)
+        {
+            throw new IllegalStateException("setOption " + SET_MESSAGE_ID_GENERATOR +
+                    " only works when the transport is closed");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_043: ["SetMessageIdGenerator" should have value type MessageIdGenerator.]
+        if (value instanceof MessageIdGenerator)
+        {
+            this.messageIdGenerator = (MessageIdGenerator) value;
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not a MessageIdGenerator = " + value);
+        }
+    }
+
+    private void setOption_SetMessagePool(Object value)
+    {
+        logger.LogInfo("Setting MessagePool as %s, method name is %s ", value, CustomLogger.METHOD_NAME);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_045: ["SetMessagePool" only works when the client is closed.]
+        if (this.state != IotHubClientState.CLOSED)
+        {
+            throw new IllegalStateException("setOption " + SET_MESSAGE_POOL +
+                    " only works when the transport is closed");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_046: ["SetMessagePool" should have value type IotHubMessagePool.]
+        if (value instanceof IotHubMessagePool)
+        {
+            this.messagePool = (IotHubMessagePool) value;
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not an IotHubMessagePool = " + value);
+        }
+    }
+
+    private void setOption_SetCodecStage(Object value)
+    {
+        logger.LogInfo("Setting CodecStage as %s, method name is %s ", value, CustomLogger.METHOD_NAME);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_051: ["SetCodecStage" only works when the client is closed.]
+        if (this.state != IotHubClientState.CLOSED)
+        {
+            throw new IllegalStateException("setOption " + SET_CODEC_STAGE +
+                    " only works when the transport is closed");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_052: ["SetCodecStage" should have value type IotHubCodecStage.]
+        if (value instanceof IotHubCodecStage)
+        {
+            this.codecStage = (IotHubCodecStage) value;
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not an IotHubCodecStage = " + value);
+        }
+    }
+
+    private void setOption_SetTelemetrySerializer(Object value)
+    {
+        logger.LogInfo("Setting TelemetrySerializer as %s, method name is %s ", value, CustomLogger.METHOD_NAME);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_055: ["SetTelemetrySerializer" only works when the client is closed.]
+        if (this.state != IotHubClientState.CLOSED)
+        {
+            throw new IllegalStateException("setOption " + SET_TELEMETRY_SERIALIZER +
+                    " only works when the transport is closed");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_056: ["SetTelemetrySerializer" should have value type TelemetrySerializer.]
+        if (value instanceof TelemetrySerializer)
+        {
+            this.telemetrySerializer = (TelemetrySerializer) value;
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not a TelemetrySerializer = " + value);
+        }
+    }
+
+    private void setOption_SetCoalescer(Object value)
+    {
+        logger.LogInfo("Setting Coalescer as %s, method name is %s ", value, CustomLogger.METHOD_NAME);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_062: ["SetCoalescer" only works when the client is closed.]
+        if (this.state != IotHubClientState.CLOSED)
+        {
+            throw new IllegalStateException("setOption " + SET_COALESCER +
+                    " only works when the transport is closed");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_063: ["SetCoalescer" should have value type IotHubCoalescer.]
+        if (value instanceof IotHubCoalescer)
+        {
+            this.coalescer = (IotHubCoalescer) value;
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not an IotHubCoalescer = " + value);
+        }
+    }
+
+    private void setOption_SetMetricsExporter(Object value)
+    {
+        logger.LogInfo("Setting MetricsExporter as %s, method name is %s ", value, CustomLogger.METHOD_NAME);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_071: ["SetMetricsExporter" only works when the client is closed.]
+        if (this.state != IotHubClientState.CLOSED)
+        {
+            throw new IllegalStateException("setOption " + SET_METRICS_EXPORTER +
+                    " only works when the transport is closed");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_072: ["SetMetricsExporter" should have value type IotHubMetricsExporter.]
+        if (value instanceof IotHubMetricsExporter)
+        {
+            this.metricsExporter = (IotHubMetricsExporter) value;
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not an IotHubMetricsExporter = " + value);
+        }
+    }
+
+    private void setOption_SetHttpsEngine(Object value)
+    {
+        logger.LogInfo("Setting HttpsEngine as %s, method name is %s ", value, CustomLogger.METHOD_NAME);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_074: ["SetHttpsEngine" only works when the client is closed.]
+        if (this.state != IotHubClientState.CLOSED)
+        {
+            throw new IllegalStateException("setOption " + SET_HTTPS_ENGINE +
+                    " only works when the transport is closed");
+        }
+
+        // Codes_SRS_DEVICECLIENT_21_075: ["SetHttpsEngine" should have value type HttpsEngine.]
+        if (value instanceof HttpsEngine)
+        {
+            ((HttpsTransport) this.transport).setHttpsEngine((HttpsEngine) value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("value is not an HttpsEngine = " + value);
+        }
+    }
+
     private void setOption_SetSASTokenExpiryTime(Object value)
     {
-        logger.LogInfo("Setting SASTokenExpiryTime as %s seconds, method name is %s ", value, logger.getMethodName());
+        logger.LogInfo("Setting SASTokenExpiryTime as %s seconds, method name is %s ", value, CustomLogger.METHOD_NAME);
         if (!value.equals(null)) {
             //**Codes_SRS_DEVICECLIENT_25_009: [**"SetSASTokenExpiryTime" should have value type long**.]**
             long validTimeInSeconds;
@@ -489,6 +1541,88 @@ public final class DeviceClient implements Closeable
      *         SASToken expires. If the transport is already open then setting this
      *         option will restart the transport with the updated expiry time. The
      *         value is expected to be of type {@code long}.
+     *      - <b>SetEventDrivenSend</b> - this option is applicable for HTTP/
+     *         AMQP/MQTT and can only be set while the client is closed. When
+     *         {@code true}, messages are sent as soon as they are added instead
+     *         of every SEND_PERIOD_MILLIS milliseconds, and the sender does not
+     *         wake up while there is nothing to send. On a client built with
+     *         an {@link IotHubClientRuntime}, the sender runs on the runtime
+     *         only when there is something to send, without holding one of
+     *         its threads. The value is expected to be of type
+     *         {@code boolean}.
+     *      - <b>SetOutboundBuffer</b> - this option is applicable for HTTP/
+     *         AMQP/MQTT and can only be set while the client is closed. This
+     *         option caps the messages held by the client, by count and by body
+     *         bytes, until the IoT Hub responds to them, and decides what
+     *         happens to a message that does not fit. By default the client
+     *         holds as many messages as it is given, without accounting for
+     *         them. The value is expected to
+     *         be of type {@link IotHubOutboundBuffer}.
+     *      - <b>SetCallbackDispatcher</b> - this option is applicable for HTTP/
+     *         AMQP/MQTT and can only be set while the client is closed. This
+     *         option delivers the event callbacks on the dispatcher's executor
+     *         instead of the thread sending the messages, so a slow callback
+     *         does not delay outbound messages. By default the callbacks run
+     *         on the sending thread. The value is expected to be of type
+     *         {@link IotHubCallbackDispatcher}.
+     *      - <b>SetOutboundJournal</b> - this option is applicable for HTTP/
+     *         AMQP/MQTT and can only be set while the client is closed. This
+     *         option keeps the messages held by the client on disk until the
+     *         IoT Hub responds to them, and sends the messages left over by a
+     *         previous process when the client is opened. By default messages
+     *         are only held in memory. The value is expected to be of type
+     *         {@link IotHubOutboundJournal}.
+     *      - <b>SetMessageIdGenerator</b> - this option is applicable for
+     *         HTTP/AMQP/MQTT and can only be set while the client is closed.
+     *         This option generates the message and correlation IDs the
+     *         messages sent by the client have neither set nor read yet. By
+     *         default each client has its own
+     *         {@link SequentialMessageIdGenerator}. The value is expected to be
+     *         of type {@link MessageIdGenerator}.
+     *      - <b>SetMessagePool</b> - this option is applicable for HTTP/AMQP/
+     *         MQTT and can only be set while the client is closed. This option
+     *         has {@link #obtainMessage(byte[])} reuse the messages the client
+     *         has sent, which it releases once their callback has returned.
+     *         By default every message is a new object. The value is expected
+     *         to be of type {@link IotHubMessagePool}.
+     *      - <b>SetCodecStage</b> - this option is applicable for HTTP/AMQP
+     *         and can only be set while the client is closed. This option
+     *         encodes, typically compresses, the bodies of the messages sent
+     *         by the client, and sets their content encoding. The MQTT
+     *         transport does not send the content encoding, so it does not
+     *         support this option. By default bodies are sent as given. The
+     *         value is expected to be of type {@link IotHubCodecStage}.
+     *      - <b>SetTelemetrySerializer</b> - this option is applicable for
+     *         HTTP/AMQP/MQTT and can only be set while the client is closed.
+     *         This option serializes the events given to
+     *         {@link #obtainMessage(TelemetryEvent)}. By default the events are
+     *         written in JSON by {@link JsonTelemetrySerializer}, and
+     *         {@link BinaryTelemetrySerializer} writes them in a compact binary
+     *         format. The value is expected to be of type
+     *         {@link TelemetrySerializer}.
+     *      - <b>SetCoalescer</b> - this option is applicable for HTTP/AMQP/
+     *         MQTT and can only be set while the client is closed. This option
+     *         holds the small readings sent by the client for a short time,
+     *         and sends them packed into single messages, invoking the
+     *         callback of each reading with the status of its packed message.
+     *         By default every message is sent on its own. The value is
+     *         expected to be of type {@link IotHubCoalescer}.
+     *      - <b>SetMetricsExporter</b> - this option is applicable for HTTP/
+     *         AMQP/MQTT and can only be set while the client is closed. This
+     *         option publishes the metrics of the client, see
+     *         {@link #getMetrics()}, from the moment it opens until it closes,
+     *         for instance as a JMX MBean with
+     *         {@link IotHubJmxMetricsExporter}. By default the metrics are
+     *         only available through {@link #getMetrics()}. The value is
+     *         expected to be of type {@link IotHubMetricsExporter}.
+     *      - <b>SetHttpsEngine</b> - this option is applicable for HTTP and
+     *         can only be set while the client is closed. This option sends
+     *         the requests of the client with the given engine, such as an
+     *         {@link HttpsPersistentEngine}, which keeps its connections to
+     *         the IoT Hub open between requests and pipelines a message
+     *         result with the next event. By default each request is sent
+     *         over an {@link javax.net.ssl.HttpsURLConnection}. The value is
+     *         expected to be of type {@link HttpsEngine}.
      *
      * @param optionName the option name to modify
      * @param value an object of the appropriate type for the option's value
@@ -509,7 +1643,7 @@ public final class DeviceClient implements Closeable
                         setOption_SetMinimumPollingInterval(value);
 
                     } else {
-                        logger.LogError("optionName is unknown = %s for %s, method name is %s ", optionName, this.transport.getClass(), logger.getMethodName());
+                        logger.LogError("optionName is unknown = %s for %s, method name is %s ", optionName, this.transport.getClass(), CustomLogger.METHOD_NAME);
                         // Codes_SRS_DEVICECLIENT_02_001: [If optionName is null or not an option
                         // handled by the client, then it shall throw IllegalArgumentException.]
                         throw new IllegalArgumentException("optionName is unknown = " + optionName
@@ -527,7 +1661,7 @@ public final class DeviceClient implements Closeable
                         setOption_SetCertificatePath(value);
 
                     } else {
-                        logger.LogError("optionName is unknown = %s for %s, method name is %s ", optionName, this.transport.getClass(), logger.getMethodName());
+                        logger.LogError("optionName is unknown = %s for %s, method name is %s ", optionName, this.transport.getClass(), CustomLogger.METHOD_NAME);
                         // Codes_SRS_DEVICECLIENT_02_001: [If optionName is null or not an option handled by the
                         // client, then it shall throw IllegalArgumentException.]
                         throw new IllegalArgumentException("optionName is unknown = " + optionName +
@@ -544,7 +1678,85 @@ public final class DeviceClient implements Closeable
                         setOption_SetSASTokenExpiryTime(value);
 
                     } else {
-                        logger.LogError("optionName is unknown = %s for %s, method name is %s ", optionName, this.transport.getClass(), logger.getMethodName());
+                        logger.LogError("optionName is unknown = %s for %s, method name is %s ", optionName, this.transport.getClass(), CustomLogger.METHOD_NAME);
+                        // Codes_SRS_DEVICECLIENT_02_001: [If optionName is null or not an option handled by the
+                        // client, then it shall throw IllegalArgumentException.]
+                        throw new IllegalArgumentException("optionName is unknown = " + optionName +
+                                " for " + this.transport.getClass());
+                    }
+                    break;
+                }
+                //**Codes_SRS_DEVICECLIENT_21_003: ["SetEventDrivenSend" is available for HTTPS/AMQP/MQTT.]
+                case SET_EVENT_DRIVEN_SEND: {
+                    setOption_SetEventDrivenSend(value);
+                    break;
+                }
+                //**Codes_SRS_DEVICECLIENT_21_007: ["SetOutboundBuffer" is available for HTTPS/AMQP/MQTT.]
+                case SET_OUTBOUND_BUFFER: {
+                    setOption_SetOutboundBuffer(value);
+                    break;
+                }
+                //**Codes_SRS_DEVICECLIENT_21_027: ["SetCallbackDispatcher" is available for HTTPS/AMQP/MQTT.]
+                case SET_CALLBACK_DISPATCHER: {
+                    setOption_SetCallbackDispatcher(value);
+                    break;
+                }
+                //**Codes_SRS_DEVICECLIENT_21_035: ["SetOutboundJournal" is available for HTTPS/AMQP/MQTT.]
+                case SET_OUTBOUND_JOURNAL: {
+                    setOption_SetOutboundJournal(value);
+                    break;
+                }
+                //**Codes_SRS_DEVICECLIENT_21_041: ["SetMessageIdGenerator" is available for HTTPS/AMQP/MQTT.]
+                case SET_MESSAGE_ID_GENERATOR: {
+                    setOption_SetMessageIdGenerator(value);
+                    break;
+                }
+                //**Codes_SRS_DEVICECLIENT_21_044: ["SetMessagePool" is available for HTTPS/AMQP/MQTT.]
+                case SET_MESSAGE_POOL: {
+                    setOption_SetMessagePool(value);
+                    break;
+                }
+                case SET_CODEC_STAGE: {
+                    //**Codes_SRS_DEVICECLIENT_21_050: ["SetCodecStage" is available for HTTPS/AMQP.]
+                    if (this.transport.getClass() == AmqpsTransport.class ||
+                            this.transport.getClass() == HttpsTransport.class)
+                    {
+                        setOption_SetCodecStage(value);
+                    }
+                    else
+                    {
+                        logger.LogError("optionName is unknown = %s for %s, method name is %s ", optionName, this.transport.getClass(), CustomLogger.METHOD_NAME);
+                        // Codes_SRS_DEVICECLIENT_02_001: [If optionName is null or not an option handled by the
+                        // client, then it shall throw IllegalArgumentException.]
+                        throw new IllegalArgumentException("optionName is unknown = " + optionName +
+                                " for " + this.transport.getClass());
+                    }
+                    break;
+                }
+                //**Codes_SRS_DEVICECLIENT_21_054: ["SetTelemetrySerializer" is available for HTTPS/AMQP/MQTT.]
+                case SET_TELEMETRY_SERIALIZER: {
+                    setOption_SetTelemetrySerializer(value);
+                    break;
+                }
+                //**Codes_SRS_DEVICECLIENT_21_061: ["SetCoalescer" is available for HTTPS/AMQP/MQTT.]
+                case SET_COALESCER: {
+                    setOption_SetCoalescer(value);
+                    break;
+                }
+                //**Codes_SRS_DEVICECLIENT_21_070: ["SetMetricsExporter" is available for HTTPS/AMQP/MQTT.]
+                case SET_METRICS_EXPORTER: {
+                    setOption_SetMetricsExporter(value);
+                    break;
+                }
+                case SET_HTTPS_ENGINE: {
+                    //**Codes_SRS_DEVICECLIENT_21_073: ["SetHttpsEngine" is available for HTTPS.]
+                    if (this.transport.getClass() == HttpsTransport.class)
+                    {
+                        setOption_SetHttpsEngine(value);
+                    }
+                    else
+                    {
+                        logger.LogError("optionName is unknown = %s for %s, method name is %s ", optionName, this.transport.getClass(), CustomLogger.METHOD_NAME);
                         // Codes_SRS_DEVICECLIENT_02_001: [If optionName is null or not an option handled by the
                         // client, then it shall throw IllegalArgumentException.]
                         throw new IllegalArgumentException("optionName is unknown = " + optionName +
@@ -3,6 +3,8 @@
 
 package com.microsoft.azure.sdk.iot.device;
 
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenManager;
+
 import java.net.URI;
 import java.net.URISyntaxException;
 
@@ -41,6 +43,8 @@ public final class DeviceClientConfig
     protected Object messageContext;
 
     protected CustomLogger logger;
+    /** Hands out the SAS tokens of the client. */
+    protected final IotHubSasTokenManager sasTokenManager;
     /**
      * Constructor.
      *
@@ -80,8 +84,10 @@ public final class DeviceClientConfig
         this.deviceKey = deviceKey;
         // Codes_SRS_DEVICECLIENTCONFIG_25_017: [**The constructor shall save sharedAccessToken.**] **
         this.sharedAccessToken = sharedAccessToken;
+        // Codes_SRS_DEVICECLIENTCONFIG_21_019: [The constructor shall create the SAS token manager of the client.]
+        this.sasTokenManager = new IotHubSasTokenManager(this);
         this.logger = new CustomLogger(this.getClass());
-        logger.LogInfo("DeviceClientConfig object is created successfully with IotHubName=%s, deviceID=%s , method name is %s ", this.iotHubName, this.deviceId, logger.getMethodName());
+        logger.LogInfo("DeviceClientConfig object is created successfully with IotHubName=%s, deviceID=%s , method name is %s ", this.iotHubName, this.deviceId, CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -163,6 +169,18 @@ public final class DeviceClientConfig
         return this.sharedAccessToken;
     }
 
+    /**
+     * Getter for the SAS token manager, from which the transports obtain
+     * the SAS tokens of the client.
+     *
+     * @return the SAS token manager.
+     */
+    public IotHubSasTokenManager getSasTokenManager()
+    {
+        // Codes_SRS_DEVICECLIENTCONFIG_21_020: [The function shall return the SAS token manager created in the constructor.]
+        return this.sasTokenManager;
+    }
+
     /**
      * Getter for the number of seconds a SAS token should be valid for. A
      * message that arrives at an IoT Hub in time of length greater than this
@@ -257,6 +275,7 @@ public final class DeviceClientConfig
         this.deviceKey = null;
         this.sharedAccessToken = null;
         this.pathToCertificate = null;
+        this.sasTokenManager = null;
     }
 
 }
@@ -0,0 +1,288 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Delivers the event callbacks of a client on an executor of the user's
+ * choosing instead of the thread sending the messages, so a slow
+ * {@link IotHubEventCallback} cannot hold back outbound messages.
+ * </p>
+ * <p>
+ * An ordered dispatcher invokes the callbacks one at a time, in the order the
+ * transport completed them, while an unordered dispatcher hands each callback
+ * to the executor as soon as it is ready. Many clients may share an executor,
+ * but each needs its own dispatcher; an ordered dispatcher then keeps the
+ * callbacks of its client in order without serializing the other clients.
+ * </p>
+ * <p>
+ * The dispatcher measures the time each callback waits between being ready
+ * and starting to run, and records the time it runs for in the metrics of
+ * its client.
+ * </p>
+ */
+public final class IotHubCallbackDispatcher
+{
+    private final Executor executor;
+    private final boolean ordered;
+
+    /** The callbacks waiting for an ordered dispatcher, oldest first. */
+    private final Queue<PendingCallback> orderedCallbacks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /** The metrics the time the callbacks run for is recorded in. Can be {@code null}. */
+    private volatile IotHubClientMetrics metrics;
+
+    private final CustomLogger logger = new CustomLogger(this.getClass());
+
+    /**
+     * Constructor.
+     *
+     * @param executor the executor running the callbacks.
+     * @param ordered if {@code true}, the callbacks are invoked one at a time
+     * in the order they were dispatched.
+     *
+     * @throws IllegalArgumentException if {@code executor} is {@code null}.
+     */
+    public IotHubCallbackDispatcher(Executor executor, boolean ordered)
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_001: [If the executor is null, the constructor shall throw an IllegalArgumentException.]
+        if (executor == null)
+        {
+            throw new IllegalArgumentException("The callback executor cannot be null.");
+        }
+
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_002: [The constructor shall save the executor and the ordering.]
+        this.executor = executor;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Schedules the callback of a completed request. Called by the
+     * transports.
+     *
+     * @param packet the callback to be invoked.
+     */
+    public void dispatch(IotHubCallbackPacket packet)
+    {
+        final PendingCallback pending = new PendingCallback(packet, System.nanoTime());
+        this.pendingCount.incrementAndGet();
+
+        if (this.ordered)
+        {
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_003: [If the dispatcher is ordered, the function shall queue the callback and, if no callback of this dispatcher is running, submit a task to the executor that invokes the queued callbacks one at a time, oldest first.]
+            this.orderedCallbacks.add(pending);
+            this.scheduleDrain();
+        }
+        else
+        {
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_004: [If the dispatcher is not ordered, the function shall submit the callback to the executor.]
+            try
+            {
+                this.executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        invoke(pending);
+                    }
+                });
+            }
+            catch (RuntimeException e)
+            {
+                this.pendingCount.decrementAndGet();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if every callback dispatched so far has run.
+     *
+     * @return {@code true} if no callback is waiting or running.
+     */
+    public boolean isIdle()
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_007: [The function shall return true if every callback dispatched has completed, and false otherwise.]
+        return this.pendingCount.get() == 0;
+    }
+
+    /**
+     * Getter for the number of callbacks invoked so far.
+     *
+     * @return the number of callbacks invoked.
+     */
+    public long getDispatchedCount()
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_008: [The function shall return the number of callbacks invoked.]
+        return this.dispatchedCount.get();
+    }
+
+    /**
+     * Getter for the average time a callback waited between being dispatched
+     * and starting to run.
+     *
+     * @return the average dispatch latency, in nanoseconds, or 0 if no
+     * callback was invoked yet.
+     */
+    public long getAverageDispatchLatencyNanos()
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_009: [The function shall return the total dispatch latency divided by the number of callbacks invoked, or 0 if none was invoked.]
+        long count = this.dispatchedCount.get();
+        return count == 0 ? 0 : this.totalLatencyNanos.get() / count;
+    }
+
+    /**
+     * Getter for the longest time a callback waited between being dispatched
+     * and starting to run.
+     *
+     * @return the maximum dispatch latency, in nanoseconds.
+     */
+    public long getMaxDispatchLatencyNanos()
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_010: [The function shall return the longest dispatch latency observed.]
+        return this.maxLatencyNanos.get();
+    }
+
+    /**
+     * Getter for whether the callbacks are invoked in order.
+     *
+     * @return {@code true} if the dispatcher is ordered.
+     */
+    public boolean isOrdered()
+    {
+        return this.ordered;
+    }
+
+    /**
+     * Sets the metrics of the client the callbacks belong to. Called by the
+     * client when it opens.
+     *
+     * @param metrics the metrics of the client. Can be {@code null}.
+     */
+    void setMetrics(IotHubClientMetrics metrics)
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_012: [The function shall save the metrics.]
+        this.metrics = metrics;
+    }
+
+    private void scheduleDrain()
+    {
+        if (this.draining.compareAndSet(false, true))
+        {
+            try
+            {
+                this.executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        drain();
+                    }
+                });
+            }
+            catch (RuntimeException e)
+            {
+                // the queued callbacks are kept for the next dispatch.
+                this.draining.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain()
+    {
+        PendingCallback pending;
+        while ((pending = this.orderedCallbacks.poll()) != null)
+        {
+            this.invoke(pending);
+        }
+
+        this.draining.set(false);
+        // a callback queued after the last poll but before the flag was
+        // cleared would otherwise wait for the next dispatch.
+        if (!this.orderedCallbacks.isEmpty())
+        {
+            this.scheduleDrain();
+        }
+    }
+
+    private void invoke(PendingCallback pending)
+    {
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_005: [Before invoking a callback, the dispatcher shall record the time it waited since it was dispatched.]
+        this.recordLatency(System.nanoTime() - pending.dispatchedNanos);
+        // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_013: [The dispatcher shall invoke the callbacks as a client thread of the outbound buffer.]
+        boolean wasClientThread = IotHubOutboundBuffer.enterClientThread();
+        try
+        {
+            IotHubCallbackPacket packet = pending.packet;
+            IotHubClientMetrics clientMetrics = this.metrics;
+            if (clientMetrics == null)
+            {
+                packet.getCallback().execute(packet.getStatus(), packet.getContext());
+            }
+            else
+            {
+                // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_011: [If metrics are set, the dispatcher shall record the time each callback runs for.]
+                long startNanos = System.nanoTime();
+                try
+                {
+                    packet.getCallback().execute(packet.getStatus(), packet.getContext());
+                }
+                finally
+                {
+                    clientMetrics.recordCallback(System.nanoTime() - startNanos);
+                }
+            }
+        }
+        catch (Throwable e)
+        {
+            // Codes_SRS_IOTHUBCALLBACKDISPATCHER_21_006: [If a callback throws, the dispatcher shall drop it and carry on with the next one.]
+            this.logger.LogError("Event callback threw %s, method name is %s ", e.toString(), CustomLogger.METHOD_NAME);
+        }
+        finally
+        {
+            IotHubOutboundBuffer.exitClientThread(wasClientThread);
+            this.pendingCount.decrementAndGet();
+        }
+    }
+
+    private void recordLatency(long latencyNanos)
+    {
+        this.dispatchedCount.incrementAndGet();
+        this.totalLatencyNanos.addAndGet(latencyNanos);
+        long max = this.maxLatencyNanos.get();
+        while (latencyNanos > max && !this.maxLatencyNanos.compareAndSet(max, latencyNanos))
+        {
+            max = this.maxLatencyNanos.get();
+        }
+    }
+
+    /** A callback waiting to be invoked, with the time it was dispatched. */
+    private static final class PendingCallback
+    {
+        private final IotHubCallbackPacket packet;
+        private final long dispatchedNanos;
+
+        private PendingCallback(IotHubCallbackPacket packet, long dispatchedNanos)
+        {
+            this.packet = packet;
+            this.dispatchedNanos = dispatchedNanos;
+        }
+    }
+}
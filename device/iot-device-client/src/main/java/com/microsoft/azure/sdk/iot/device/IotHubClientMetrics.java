@@ -0,0 +1,325 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * The metrics of a single client, recorded by its transport and connection as
+ * messages flow: bytes and messages sent and received, acknowledgements and
+ * their latency from the moment the message was queued, the number of
+ * messages per send pass, reconnections, the HTTPS connections opened and
+ * reused, the time the event callbacks run for, and the queue depth,
+ * in-flight window and link credit.
+ * </p>
+ * <p>
+ * Every client has its metrics (see {@link DeviceClient#getMetrics()}).
+ * Recording uses {@link IotHubStripedCounter}s and {@link IotHubHistogram}s,
+ * so it never blocks the threads of the client; the gauges are sampled by
+ * the transport rather than updated on every change. The metrics can be
+ * read directly, or exported, for instance as a JMX MBean by the
+ * {@link IotHubJmxMetricsExporter} set through the <b>SetMetricsExporter</b>
+ * option.
+ * </p>
+ */
+public final class IotHubClientMetrics implements IotHubClientMetricsMBean
+{
+    private static final double P50 = 0.5;
+    private static final double P99 = 0.99;
+
+    private final IotHubStripedCounter bytesSent = new IotHubStripedCounter();
+    private final IotHubStripedCounter bytesReceived = new IotHubStripedCounter();
+    private final IotHubStripedCounter messagesReceived = new IotHubStripedCounter();
+    private final IotHubStripedCounter reconnects = new IotHubStripedCounter();
+    private final IotHubStripedCounter connectionsOpened = new IotHubStripedCounter();
+    private final IotHubStripedCounter connectionsReused = new IotHubStripedCounter();
+    private final IotHubStripedCounter tlsSessionsResumed = new IotHubStripedCounter();
+
+    private final IotHubHistogram ackLatencyMicros = new IotHubHistogram();
+    private final IotHubHistogram batchSizes = new IotHubHistogram();
+    private final IotHubHistogram callbackDurationMicros = new IotHubHistogram();
+
+    private volatile long queueDepth;
+    private volatile long inFlightCount;
+    private volatile long linkCredit = -1;
+
+    /**
+     * Records a send pass. Called by the transports.
+     *
+     * @param messageCount the number of messages sent in the pass.
+     * @param bodyBytes the body bytes of the messages sent in the pass.
+     */
+    public void recordSent(int messageCount, long bodyBytes)
+    {
+        // Codes_SRS_IOTHUBCLIENTMETRICS_21_001: [The function shall record the number of messages in the batch size histogram, and add the body bytes to the bytes sent.]
+        this.batchSizes.record(messageCount);
+        this.bytesSent.add(bodyBytes);
+    }
+
+    /**
+     * Records a message acknowledged by the IoT Hub. Called by the
+     * transports.
+     *
+     * @param queuedNanos the {@link System#nanoTime()} at which the message
+     * was queued.
+     */
+    public void recordAcknowledged(long queuedNanos)
+    {
+        // Codes_SRS_IOTHUBCLIENTMETRICS_21_002: [The function shall record the time elapsed since the message was queued, in microseconds, in the acknowledgement latency histogram.]
+        this.ackLatencyMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - queuedNanos));
+    }
+
+    /**
+     * Records a message received. Called by the transports.
+     *
+     * @param bodyBytes the body bytes of the message.
+     */
+    public void recordReceived(long bodyBytes)
+    {
+        // Codes_SRS_IOTHUBCLIENTMETRICS_21_003: [The function shall count the message received and add its body bytes to the bytes received.]
+        this.messagesReceived.increment();
+        this.bytesReceived.add(bodyBytes);
+    }
+
+    /**
+     * Records the loss of the connection. Called by the connections.
+     */
+    public void recordReconnect()
+    {
+        // Codes_SRS_IOTHUBCLIENTMETRICS_21_004: [The function shall count the reconnection.]
+        this.reconnects.increment();
+    }
+
+    /**
+     * Records a connection opened by an HTTPS engine. Called by the engines.
+     *
+     * @param tlsSessionResumed whether the connection resumed a previous TLS
+     * session instead of negotiating a new one.
+     */
+    public void recordConnectionOpened(boolean tlsSessionResumed)
+    {
+        // Codes_SRS_IOTHUBCLIENTMETRICS_21_009: [The function shall count the connection opened, and count it as resuming a TLS session if tlsSessionResumed is true.]
+        this.connectionsOpened.increment();
+        if (tlsSessionResumed)
+        {
+            this.tlsSessionsResumed.increment();
+        }
+    }
+
+    /**
+     * Records a request sent on a connection an HTTPS engine kept open.
+     * Called by the engines.
+     */
+    public void recordConnectionReused()
+    {
+        // Codes_SRS_IOTHUBCLIENTMETRICS_21_010: [The function shall count the connection reused.]
+        this.connectionsReused.increment();
+    }
+
+    /**
+     * Records the run of an event callback. Called by the transports and the
+     * {@link IotHubCallbackDispatcher}.
+     *
+     * @param durationNanos the time the callback ran for, in nanoseconds.
+     */
+    public void recordCallback(long durationNanos)
+    {
+        // Codes_SRS_IOTHUBCLIENTMETRICS_21_005: [The function shall record the duration, in microseconds, in the callback duration histogram.]
+        this.callbackDurationMicros.record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    /**
+     * Samples the number of messages waiting to be sent. Called by the
+     * transports.
+     *
+     * @param queueDepth the number of messages waiting.
+     */
+    public void setQueueDepth(long queueDepth)
+    {
+        // Codes_SRS_IOTHUBCLIENTMETRICS_21_006: [The gauge setters shall save the value, to be returned by the matching getter.]
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Samples the number of messages sent and not acknowledged yet. Called
+     * by the transports.
+     *
+     * @param inFlightCount the number of messages in flight.
+     */
+    public void setInFlightCount(long inFlightCount)
+    {
+        this.inFlightCount = inFlightCount;
+    }
+
+    /**
+     * Samples the link credit granted by the IoT Hub. Called by the AMQPS
+     * connection.
+     *
+     * @param linkCredit the link credit.
+     */
+    public void setLinkCredit(long linkCredit)
+    {
+        this.linkCredit = linkCredit;
+    }
+
+    /**
+     * Getter for the distribution of the time from a message being queued to
+     * being acknowledged.
+     *
+     * @return the histogram, in microseconds.
+     */
+    public IotHubHistogram getAckLatency()
+    {
+        return this.ackLatencyMicros;
+    }
+
+    /**
+     * Getter for the distribution of the number of messages per send pass.
+     *
+     * @return the histogram, in messages.
+     */
+    public IotHubHistogram getBatchSizes()
+    {
+        return this.batchSizes;
+    }
+
+    /**
+     * Getter for the distribution of the time the event callbacks run for.
+     *
+     * @return the histogram, in microseconds.
+     */
+    public IotHubHistogram getCallbackDurations()
+    {
+        return this.callbackDurationMicros;
+    }
+
+    @Override
+    public long getBytesSent()
+    {
+        return this.bytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived()
+    {
+        return this.bytesReceived.sum();
+    }
+
+    @Override
+    public long getMessagesSent()
+    {
+        // Codes_SRS_IOTHUBCLIENTMETRICS_21_007: [The function shall return the sum of the batch sizes recorded.]
+        return this.batchSizes.getSum();
+    }
+
+    @Override
+    public long getMessagesAcknowledged()
+    {
+        // Codes_SRS_IOTHUBCLIENTMETRICS_21_008: [The function shall return the number of acknowledgements recorded.]
+        return this.ackLatencyMicros.getCount();
+    }
+
+    @Override
+    public long getMessagesReceived()
+    {
+        return this.messagesReceived.sum();
+    }
+
+    @Override
+    public long getReconnectCount()
+    {
+        return this.reconnects.sum();
+    }
+
+    @Override
+    public long getConnectionsOpened()
+    {
+        return this.connectionsOpened.sum();
+    }
+
+    @Override
+    public long getConnectionsReused()
+    {
+        return this.connectionsReused.sum();
+    }
+
+    @Override
+    public long getTlsSessionsResumed()
+    {
+        return this.tlsSessionsResumed.sum();
+    }
+
+    @Override
+    public long getQueueDepth()
+    {
+        return this.queueDepth;
+    }
+
+    @Override
+    public long getInFlightCount()
+    {
+        return this.inFlightCount;
+    }
+
+    @Override
+    public long getLinkCredit()
+    {
+        return this.linkCredit;
+    }
+
+    @Override
+    public double getAckLatencyMeanMicros()
+    {
+        return this.ackLatencyMicros.getMean();
+    }
+
+    @Override
+    public long getAckLatencyP50Micros()
+    {
+        return this.ackLatencyMicros.getPercentile(P50);
+    }
+
+    @Override
+    public long getAckLatencyP99Micros()
+    {
+        return this.ackLatencyMicros.getPercentile(P99);
+    }
+
+    @Override
+    public long getAckLatencyMaxMicros()
+    {
+        return this.ackLatencyMicros.getMax();
+    }
+
+    @Override
+    public double getBatchSizeMean()
+    {
+        return this.batchSizes.getMean();
+    }
+
+    @Override
+    public long getBatchSizeMax()
+    {
+        return this.batchSizes.getMax();
+    }
+
+    @Override
+    public double getCallbackDurationMeanMicros()
+    {
+        return this.callbackDurationMicros.getMean();
+    }
+
+    @Override
+    public long getCallbackDurationP99Micros()
+    {
+        return this.callbackDurationMicros.getPercentile(P99);
+    }
+
+    @Override
+    public long getCallbackDurationMaxMicros()
+    {
+        return this.callbackDurationMicros.getMax();
+    }
+}
@@ -0,0 +1,75 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * The attributes of the {@link IotHubClientMetrics} of a client, as read
+ * through JMX. Latencies and durations are in microseconds, and sizes in
+ * messages or in body bytes.
+ */
+public interface IotHubClientMetricsMBean
+{
+    /** @return the body bytes of the messages sent. */
+    long getBytesSent();
+
+    /** @return the body bytes of the messages received. */
+    long getBytesReceived();
+
+    /** @return the number of messages sent, including the ones sent again. */
+    long getMessagesSent();
+
+    /** @return the number of messages the IoT Hub acknowledged. */
+    long getMessagesAcknowledged();
+
+    /** @return the number of messages received. */
+    long getMessagesReceived();
+
+    /** @return the number of times the connection was lost and reestablished. */
+    long getReconnectCount();
+
+    /** @return the number of connections the HTTPS engine opened. */
+    long getConnectionsOpened();
+
+    /** @return the number of requests the HTTPS engine sent on a connection it kept open. */
+    long getConnectionsReused();
+
+    /** @return the number of connections the HTTPS engine opened by resuming a TLS session. */
+    long getTlsSessionsResumed();
+
+    /** @return the number of messages waiting to be sent, as of the last send pass. */
+    long getQueueDepth();
+
+    /** @return the number of messages sent and not acknowledged yet, as last seen by the transport. */
+    long getInFlightCount();
+
+    /** @return the link credit granted by the IoT Hub, or -1 if the transport has none. */
+    long getLinkCredit();
+
+    /** @return the mean time from a message being queued to being acknowledged. */
+    double getAckLatencyMeanMicros();
+
+    /** @return the median time from a message being queued to being acknowledged. */
+    long getAckLatencyP50Micros();
+
+    /** @return the 99th percentile of the time from a message being queued to being acknowledged. */
+    long getAckLatencyP99Micros();
+
+    /** @return the longest time from a message being queued to being acknowledged. */
+    long getAckLatencyMaxMicros();
+
+    /** @return the mean number of messages sent per send pass. */
+    double getBatchSizeMean();
+
+    /** @return the largest number of messages sent in a send pass. */
+    long getBatchSizeMax();
+
+    /** @return the mean time an event callback ran for. */
+    double getCallbackDurationMeanMicros();
+
+    /** @return the 99th percentile of the time an event callback ran for. */
+    long getCallbackDurationP99Micros();
+
+    /** @return the longest time an event callback ran for. */
+    long getCallbackDurationMaxMicros();
+}
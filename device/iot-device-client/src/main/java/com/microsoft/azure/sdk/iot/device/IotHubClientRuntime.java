@@ -0,0 +1,142 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A small, fixed set of threads shared by many {@link DeviceClient} instances.
+ * By default every client opens its own pool of send and receive threads; a
+ * client built with a runtime schedules its tasks on the runtime instead, so
+ * a process hosting thousands of devices needs only a handful of threads.
+ * </p>
+ * <p>
+ * Every client task is rescheduled behind the tasks of the other clients once
+ * it completes a pass, so a busy device cannot keep the threads away from the
+ * others. The runtime must be closed by its owner once all its clients are
+ * closed.
+ * </p>
+ */
+public final class IotHubClientRuntime implements Closeable, Executor
+{
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor.
+     *
+     * @param threadCount the number of threads shared by the clients.
+     *
+     * @throws IllegalArgumentException if {@code threadCount} is not positive.
+     */
+    public IotHubClientRuntime(int threadCount)
+    {
+        // Codes_SRS_IOTHUBCLIENTRUNTIME_21_001: [If the thread count is not positive, the constructor shall throw an IllegalArgumentException.]
+        if (threadCount <= 0)
+        {
+            throw new IllegalArgumentException("The thread count must be positive.");
+        }
+
+        // Codes_SRS_IOTHUBCLIENTRUNTIME_21_002: [The constructor shall create a scheduler with the given number of threads.]
+        this.scheduler = Executors.newScheduledThreadPool(threadCount);
+    }
+
+    /**
+     * Runs a client task repeatedly, {@code periodMillis} milliseconds after
+     * each pass completes.
+     *
+     * @param task the task to run.
+     * @param periodMillis the delay between the end of a pass and the start of
+     * the next one, in milliseconds.
+     *
+     * @return the handle used to cancel the task.
+     *
+     * @throws IllegalStateException if the runtime is closed.
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long periodMillis)
+    {
+        // Codes_SRS_IOTHUBCLIENTRUNTIME_21_003: [If the runtime is closed, the function shall throw an IllegalStateException.]
+        if (this.scheduler.isShutdown())
+        {
+            throw new IllegalStateException("Cannot schedule a task on a client runtime that is closed.");
+        }
+
+        // a fixed delay, rather than a fixed rate, sends a late task to the
+        // back of the queue instead of letting it catch up ahead of the others.
+        // Codes_SRS_IOTHUBCLIENTRUNTIME_21_004: [The function shall schedule the task to run repeatedly with the given delay between the end of a pass and the start of the next one.]
+        return this.scheduler.scheduleWithFixedDelay(task, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a client task once, {@code delayMillis} milliseconds from now.
+     * Tasks that only have work to do from time to time, such as an
+     * event-driven sender, submit themselves again when they are woken up
+     * instead of holding a thread while they wait.
+     *
+     * @param task the task to run.
+     * @param delayMillis the delay before the task runs, in milliseconds.
+     *
+     * @return the handle used to cancel the task.
+     *
+     * @throws IllegalStateException if the runtime is closed.
+     */
+    public ScheduledFuture<?> submit(Runnable task, long delayMillis)
+    {
+        // Codes_SRS_IOTHUBCLIENTRUNTIME_21_007: [If the runtime is closed, the function shall throw an IllegalStateException.]
+        if (this.scheduler.isShutdown())
+        {
+            throw new IllegalStateException("Cannot submit a task to a client runtime that is closed.");
+        }
+
+        // Codes_SRS_IOTHUBCLIENTRUNTIME_21_008: [The function shall schedule the task to run once after the given delay.]
+        return this.scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a client task once, as soon as a thread of the runtime is free.
+     *
+     * @param task the task to run.
+     *
+     * @throws RejectedExecutionException if the runtime is closed.
+     */
+    public void execute(Runnable task)
+    {
+        // Codes_SRS_IOTHUBCLIENTRUNTIME_21_009: [If the runtime is closed, the function shall throw a RejectedExecutionException.]
+        if (this.scheduler.isShutdown())
+        {
+            throw new RejectedExecutionException("Cannot run a task on a client runtime that is closed.");
+        }
+
+        // Codes_SRS_IOTHUBCLIENTRUNTIME_21_010: [The function shall schedule the task to run once without delay.]
+        this.scheduler.execute(task);
+    }
+
+    /**
+     * Returns {@code true} if the runtime is closed, and {@code false}
+     * otherwise.
+     *
+     * @return {@code true} if the runtime is closed.
+     */
+    public boolean isClosed()
+    {
+        // Codes_SRS_IOTHUBCLIENTRUNTIME_21_005: [The function shall return true if the runtime is closed, and false otherwise.]
+        return this.scheduler.isShutdown();
+    }
+
+    /**
+     * Stops the shared threads. Tasks still scheduled by open clients no
+     * longer run.
+     */
+    public void close()
+    {
+        // Codes_SRS_IOTHUBCLIENTRUNTIME_21_006: [The function shall shut down the scheduler.]
+        this.scheduler.shutdown();
+    }
+}
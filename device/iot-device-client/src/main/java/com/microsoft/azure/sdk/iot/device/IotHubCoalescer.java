@@ -0,0 +1,345 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * Coalesces the small readings sent by a client into a single message, so a
+ * burst of readings costs one publish, one acknowledgement and one billable
+ * message instead of one each. A client with a coalescer (see the
+ * <b>SetCoalescer</b> option of {@link DeviceClient#setOption(String, Object)})
+ * holds the readings it is given for up to the maximum delay, or until they
+ * fill the maximum number of bytes, and then sends them packed in the
+ * {@link IotHubCoalescingFormat} of the coalescer. The callback of each
+ * reading is invoked, in order, with the status the IoT Hub responds to the
+ * packed message with.
+ * </p>
+ * <p>
+ * Only plain readings are coalesced: a message with properties, a content
+ * encoding or a codec, a priority other than NORMAL, an expiry time, or a
+ * message or correlation ID that was set or read, is sent on its own, after
+ * the readings held before it. So is a reading too large to fit in a
+ * message of the maximum number of bytes. The packed message has the
+ * {@link #FORMAT_PROPERTY} and {@link #COUNT_PROPERTY} properties; the MQTT
+ * transport does not send them, so MQTT back ends shall know the format.
+ * </p>
+ * <p>
+ * A coalescer holds the readings of a single client and shall not be shared.
+ * </p>
+ */
+public final class IotHubCoalescer
+{
+    /** The property holding the name of the format of a packed message. */
+    public static final String FORMAT_PROPERTY = "coalescedFormat";
+    /** The property holding the number of readings in a packed message. */
+    public static final String COUNT_PROPERTY = "coalescedCount";
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int LENGTH_PREFIX_SIZE = 4;
+
+    private final long maxDelayMillis;
+    private final int maxBytes;
+    private final IotHubCoalescingFormat format;
+    private final long flushPeriodMillis;
+
+    /** The readings held, packed, without the closing bracket of a JSON array. */
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int length;
+    private final List<Reading> readings = new ArrayList<>();
+    private long windowStartMillis;
+
+    private static final CustomLogger logger = new CustomLogger(IotHubCoalescer.class);
+
+    /**
+     * The callback of the packed messages, whose context is the readings
+     * they pack. It invokes the callback of each reading with the status of
+     * the packed message, and releases the pooled ones to their pool.
+     */
+    static final IotHubEventCallback FANOUT_CALLBACK = new IotHubEventCallback()
+    {
+        @Override
+        public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+        {
+            for (Reading reading : (Reading[]) callbackContext)
+            {
+                try
+                {
+                    if (reading.callback != null)
+                    {
+                        reading.callback.execute(responseStatus, reading.callbackContext);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    logger.LogError("Event callback of a coalesced reading threw %s, method name is %s ", e.toString(), CustomLogger.METHOD_NAME);
+                }
+                finally
+                {
+                    if (reading.message.isPooled())
+                    {
+                        reading.message.getPool().release(reading.message);
+                    }
+                }
+            }
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param maxDelayMillis the maximum time, in milliseconds, a reading is
+     * held before being sent.
+     * @param maxBytes the maximum size of the body of a packed message.
+     * @param format how the readings are packed.
+     *
+     * @throws IllegalArgumentException if {@code maxDelayMillis} or
+     * {@code maxBytes} is not positive, or {@code format} is {@code null}.
+     */
+    public IotHubCoalescer(long maxDelayMillis, int maxBytes, IotHubCoalescingFormat format)
+    {
+        // Codes_SRS_IOTHUBCOALESCER_21_001: [If the maximum delay or the maximum bytes is not positive, or the format is null, the constructor shall throw an IllegalArgumentException.]
+        if (maxDelayMillis <= 0)
+        {
+            throw new IllegalArgumentException("The maximum delay shall be positive.");
+        }
+        if (maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("The maximum bytes shall be positive.");
+        }
+        if (format == null)
+        {
+            throw new IllegalArgumentException("The coalescing format cannot be 'null'.");
+        }
+
+        // Codes_SRS_IOTHUBCOALESCER_21_002: [The constructor shall save the maximum delay, the maximum bytes and the format, and check for expired windows four times per maximum delay.]
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxBytes = maxBytes;
+        this.format = format;
+        this.flushPeriodMillis = Math.max(1, maxDelayMillis / 4);
+    }
+
+    /**
+     * Takes a message sent by the client.
+     *
+     * @param message the message.
+     * @param callback the callback of the message. Can be {@code null}.
+     * @param callbackContext the context of the callback.
+     * @param nowMillis the current time, in milliseconds.
+     *
+     * @return the packets to be added to the transport now, in order.
+     */
+    synchronized List<IotHubOutboundPacket> add(Message message, IotHubEventCallback callback,
+            Object callbackContext, long nowMillis)
+    {
+        int framedLength = this.framing() + message.getBodyLength();
+        if (!isCoalescible(message) || framedLength + this.closing() > this.maxBytes)
+        {
+            // Codes_SRS_IOTHUBCOALESCER_21_003: [If the message is not a plain reading, or does not fit alone in the maximum bytes, the function shall return the readings held as a packed message, if any, followed by the message on its own.]
+            List<IotHubOutboundPacket> packets = new ArrayList<>(2);
+            this.drainTo(packets);
+            packets.add(new IotHubOutboundPacket(message, callback, callbackContext));
+            return packets;
+        }
+
+        // Codes_SRS_IOTHUBCOALESCER_21_004: [If the reading does not fit with the readings held, the function shall return the readings held as a packed message before holding the reading.]
+        List<IotHubOutboundPacket> packets = Collections.emptyList();
+        if (!this.readings.isEmpty() && this.length + framedLength + this.closing() > this.maxBytes)
+        {
+            packets = new ArrayList<>(1);
+            this.drainTo(packets);
+        }
+
+        // Codes_SRS_IOTHUBCOALESCER_21_005: [The function shall copy the body of the reading, framed in the format of the coalescer, and hold the reading, starting the window at the first reading held.]
+        ByteBuffer body = message.getBodyBuffer();
+        this.append(body, message.getBodyLength());
+        if (this.readings.isEmpty())
+        {
+            this.windowStartMillis = nowMillis;
+        }
+        this.readings.add(new Reading(message, callback, callbackContext));
+
+        // Codes_SRS_IOTHUBCOALESCER_21_006: [If the readings held fill the maximum bytes, the function shall return them as a packed message.]
+        if (this.length + this.closing() >= this.maxBytes)
+        {
+            if (packets.isEmpty())
+            {
+                packets = new ArrayList<>(1);
+            }
+            this.drainTo(packets);
+        }
+        return packets;
+    }
+
+    /**
+     * Hands out the readings held, if their window expires before the next
+     * check, or in any case.
+     *
+     * @param nowMillis the current time, in milliseconds.
+     * @param all {@code true} to hand out the readings whatever their age,
+     * as the client does when it closes.
+     *
+     * @return the packed message to be added to the transport, if any.
+     */
+    synchronized List<IotHubOutboundPacket> flush(long nowMillis, boolean all)
+    {
+        // Codes_SRS_IOTHUBCOALESCER_21_007: [The function shall return the readings held as a packed message if all of them are requested, or if their window expires before the next check, and nothing otherwise.]
+        if (this.readings.isEmpty()
+                || (!all && nowMillis - this.windowStartMillis < this.maxDelayMillis - this.flushPeriodMillis))
+        {
+            return Collections.emptyList();
+        }
+        List<IotHubOutboundPacket> packets = new ArrayList<>(1);
+        this.drainTo(packets);
+        return packets;
+    }
+
+    /**
+     * Getter for the maximum delay.
+     *
+     * @return the maximum time, in milliseconds, a reading is held.
+     */
+    public long getMaxDelayMillis()
+    {
+        // Codes_SRS_IOTHUBCOALESCER_21_008: [The function shall return the maximum delay.]
+        return this.maxDelayMillis;
+    }
+
+    /**
+     * Getter for the maximum bytes.
+     *
+     * @return the maximum size of the body of a packed message.
+     */
+    public int getMaxBytes()
+    {
+        // Codes_SRS_IOTHUBCOALESCER_21_009: [The function shall return the maximum bytes.]
+        return this.maxBytes;
+    }
+
+    /**
+     * Getter for the format.
+     *
+     * @return how the readings are packed.
+     */
+    public IotHubCoalescingFormat getFormat()
+    {
+        // Codes_SRS_IOTHUBCOALESCER_21_010: [The function shall return the format.]
+        return this.format;
+    }
+
+    /**
+     * Getter for the period the client checks for expired windows at.
+     *
+     * @return the period, in milliseconds.
+     */
+    public long getFlushPeriodMillis()
+    {
+        // Codes_SRS_IOTHUBCOALESCER_21_011: [The function shall return the period of the checks for expired windows.]
+        return this.flushPeriodMillis;
+    }
+
+    /**
+     * Getter for the number of readings held.
+     *
+     * @return the number of readings not handed to the transport yet.
+     */
+    public synchronized int getPendingCount()
+    {
+        // Codes_SRS_IOTHUBCOALESCER_21_012: [The function shall return the number of readings held.]
+        return this.readings.size();
+    }
+
+    private static boolean isCoalescible(Message message)
+    {
+        return message.getPropertyView().isEmpty()
+                && message.getContentEncoding() == null
+                && message.getCodec() == null
+                && message.getPriority() == MessagePriority.NORMAL
+                && message.getExpiryTime() == 0
+                && !message.hasAssignedIds();
+    }
+
+    /** The bytes written before each body. */
+    private int framing()
+    {
+        return this.format == IotHubCoalescingFormat.JSON_ARRAY ? 1 : LENGTH_PREFIX_SIZE;
+    }
+
+    /** The bytes written after the last body. */
+    private int closing()
+    {
+        return this.format == IotHubCoalescingFormat.JSON_ARRAY ? 1 : 0;
+    }
+
+    private void append(ByteBuffer body, int bodyLength)
+    {
+        int needed = this.length + this.framing() + bodyLength + this.closing();
+        if (needed > this.buffer.length)
+        {
+            // a reading is only held if it fits in the maximum bytes, so the buffer never grows past them
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(needed, Math.min(this.buffer.length * 2, this.maxBytes)));
+        }
+
+        if (this.format == IotHubCoalescingFormat.JSON_ARRAY)
+        {
+            this.buffer[this.length++] = (byte) (this.readings.isEmpty() ? '[' : ',');
+        }
+        else
+        {
+            this.buffer[this.length++] = (byte) (bodyLength >>> 24);
+            this.buffer[this.length++] = (byte) (bodyLength >>> 16);
+            this.buffer[this.length++] = (byte) (bodyLength >>> 8);
+            this.buffer[this.length++] = (byte) bodyLength;
+        }
+        if (body != null)
+        {
+            body.duplicate().get(this.buffer, this.length, bodyLength);
+        }
+        this.length += bodyLength;
+    }
+
+    /** Packs the readings held, if any, into a message, and starts a new window. */
+    private void drainTo(List<IotHubOutboundPacket> packets)
+    {
+        if (this.readings.isEmpty())
+        {
+            return;
+        }
+
+        byte[] body = Arrays.copyOf(this.buffer, this.length + this.closing());
+        if (this.format == IotHubCoalescingFormat.JSON_ARRAY)
+        {
+            body[this.length] = ']';
+        }
+        Message packed = new Message(body);
+        packed.setProperty(FORMAT_PROPERTY, this.format.getName());
+        packed.setProperty(COUNT_PROPERTY, Integer.toString(this.readings.size()));
+        packets.add(new IotHubOutboundPacket(packed, FANOUT_CALLBACK, this.readings.toArray(new Reading[this.readings.size()])));
+
+        this.readings.clear();
+        this.length = 0;
+    }
+
+    /** A reading held, with its callback. */
+    private static final class Reading
+    {
+        final Message message;
+        final IotHubEventCallback callback;
+        final Object callbackContext;
+
+        Reading(Message message, IotHubEventCallback callback, Object callbackContext)
+        {
+            this.message = message;
+            this.callback = callback;
+            this.callbackContext = callbackContext;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * How an {@link IotHubCoalescer} packs the bodies of the readings it
+ * coalesces into the body of a single message. The format is also sent in
+ * the {@link IotHubCoalescer#FORMAT_PROPERTY} property of the message.
+ */
+public enum IotHubCoalescingFormat
+{
+    /**
+     * The bodies, each a JSON value such as the ones written by
+     * {@link JsonTelemetrySerializer}, as the elements of a JSON array.
+     */
+    JSON_ARRAY("json-array"),
+    /**
+     * Each body preceded by its length, as a 4-byte big-endian integer, for
+     * bodies of any content.
+     */
+    LENGTH_PREFIXED("length-prefixed");
+
+    private final String name;
+
+    IotHubCoalescingFormat(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Getter for the name of the format, as sent in the messages.
+     *
+     * @return the name of the format.
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+}
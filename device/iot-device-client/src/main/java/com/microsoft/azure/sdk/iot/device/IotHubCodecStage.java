@@ -0,0 +1,127 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * The stage of a client encoding the bodies of the messages it sends, before
+ * they are queued for the transport (see the <b>SetCodecStage</b> option of
+ * {@link DeviceClient#setOption(String, Object)}).
+ * </p>
+ * <p>
+ * A body is encoded with the codec of its message, if set with
+ * {@link Message#setCodec(MessageCodec)}, or else with the codec of the
+ * stage, and only if it is at least the minimum body length long. A message
+ * that already has a content encoding is left alone, and so is a body that
+ * the codec does not make any shorter. The encoded body replaces the body
+ * of the message, which gets the content encoding of the codec.
+ * </p>
+ */
+public final class IotHubCodecStage
+{
+    /** The length, in bytes, under which bodies are not encoded by default. */
+    public static final int DEFAULT_MIN_BODY_LENGTH = 1024;
+
+    private final MessageCodec codec;
+    private final int minBodyLength;
+
+    /**
+     * Constructor, with the default minimum body length.
+     *
+     * @param codec the codec of the messages without their own.
+     *
+     * @throws IllegalArgumentException if {@code codec} is {@code null}.
+     */
+    public IotHubCodecStage(MessageCodec codec)
+    {
+        this(codec, DEFAULT_MIN_BODY_LENGTH);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param codec the codec of the messages without their own.
+     * @param minBodyLength the length, in bytes, under which the bodies are
+     * sent as they are.
+     *
+     * @throws IllegalArgumentException if {@code codec} is {@code null} or
+     * {@code minBodyLength} is negative.
+     */
+    public IotHubCodecStage(MessageCodec codec, int minBodyLength)
+    {
+        // Codes_SRS_IOTHUBCODECSTAGE_21_001: [If the codec is null or the minimum body length is negative, the constructor shall throw an IllegalArgumentException.]
+        if (codec == null)
+        {
+            throw new IllegalArgumentException("The codec cannot be null.");
+        }
+        if (minBodyLength < 0)
+        {
+            throw new IllegalArgumentException("The minimum body length cannot be negative.");
+        }
+
+        // Codes_SRS_IOTHUBCODECSTAGE_21_002: [The constructor shall save the codec and the minimum body length.]
+        this.codec = codec;
+        this.minBodyLength = minBodyLength;
+    }
+
+    /**
+     * Encodes the body of a message, if it is to be encoded.
+     *
+     * @param message the message.
+     *
+     * @return {@code true} if the body was replaced by its encoding.
+     */
+    public boolean apply(Message message)
+    {
+        // Codes_SRS_IOTHUBCODECSTAGE_21_003: [If the message already has a content encoding, or its body is shorter than the minimum body length, the function shall leave the message unchanged and return false.]
+        int bodyLength = message.getBodyLength();
+        if (message.getContentEncoding() != null || bodyLength == 0 || bodyLength < this.minBodyLength)
+        {
+            return false;
+        }
+
+        // Codes_SRS_IOTHUBCODECSTAGE_21_004: [The function shall encode the body with the codec of the message, or with the codec of the stage if the message has none.]
+        MessageCodec messageCodec = message.getCodec();
+        if (messageCodec == null)
+        {
+            messageCodec = this.codec;
+        }
+        ByteBuffer body = message.getBodyBuffer();
+        byte[] encoded = messageCodec.encode(body);
+
+        // Codes_SRS_IOTHUBCODECSTAGE_21_005: [If the encoded body is not shorter than the body, the function shall leave the message unchanged and return false.]
+        if (encoded.length >= bodyLength)
+        {
+            return false;
+        }
+
+        // Codes_SRS_IOTHUBCODECSTAGE_21_006: [The function shall replace the body of the message by the encoded body, set the content encoding of the message to the one of the codec, and return true.]
+        message.setEncodedBody(encoded, messageCodec.getContentEncoding());
+        return true;
+    }
+
+    /**
+     * Getter for the codec of the messages without their own.
+     *
+     * @return the codec.
+     */
+    public MessageCodec getCodec()
+    {
+        // Codes_SRS_IOTHUBCODECSTAGE_21_007: [The function shall return the codec of the stage.]
+        return this.codec;
+    }
+
+    /**
+     * Getter for the length under which the bodies are not encoded.
+     *
+     * @return the minimum body length, in bytes.
+     */
+    public int getMinBodyLength()
+    {
+        // Codes_SRS_IOTHUBCODECSTAGE_21_008: [The function shall return the minimum body length.]
+        return this.minBodyLength;
+    }
+}
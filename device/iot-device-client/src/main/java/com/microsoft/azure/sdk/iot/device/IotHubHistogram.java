@@ -0,0 +1,147 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Records the distribution of a quantity, such as a latency in microseconds
+ * or a batch size, in buckets of powers of two: bucket 0 counts the values
+ * of 0, and bucket {@code i} the values from 2<sup>i-1</sup> to
+ * 2<sup>i</sup>-1. Percentiles are thus approximate, reported as the upper
+ * bound of their bucket, while the count, sum and maximum are exact.
+ * </p>
+ * <p>
+ * Recording never blocks, so the threads of a client can record into the
+ * same histogram.
+ * </p>
+ */
+public final class IotHubHistogram
+{
+    private static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final IotHubStripedCounter count = new IotHubStripedCounter();
+    private final IotHubStripedCounter sum = new IotHubStripedCounter();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param value the value. A negative value is recorded as 0.
+     */
+    public void record(long value)
+    {
+        // Codes_SRS_IOTHUBHISTOGRAM_21_001: [The function shall record a negative value as 0.]
+        if (value < 0)
+        {
+            value = 0;
+        }
+
+        // Codes_SRS_IOTHUBHISTOGRAM_21_002: [The function shall count the value in the bucket of its highest bit, and add it to the count and sum of the histogram.]
+        this.buckets.getAndIncrement(BUCKET_COUNT - Long.numberOfLeadingZeros(value));
+        this.count.increment();
+        this.sum.add(value);
+
+        // Codes_SRS_IOTHUBHISTOGRAM_21_003: [The function shall keep the largest value recorded.]
+        long current = this.max.get();
+        while (value > current && !this.max.compareAndSet(current, value))
+        {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * Getter for the number of values recorded.
+     *
+     * @return the number of values recorded.
+     */
+    public long getCount()
+    {
+        return this.count.sum();
+    }
+
+    /**
+     * Getter for the sum of the values recorded.
+     *
+     * @return the sum of the values recorded.
+     */
+    public long getSum()
+    {
+        return this.sum.sum();
+    }
+
+    /**
+     * Getter for the largest value recorded.
+     *
+     * @return the largest value recorded, or 0 if none was.
+     */
+    public long getMax()
+    {
+        return this.max.get();
+    }
+
+    /**
+     * Getter for the mean of the values recorded.
+     *
+     * @return the mean, or 0 if no value was recorded.
+     */
+    public double getMean()
+    {
+        // Codes_SRS_IOTHUBHISTOGRAM_21_004: [The function shall return the sum divided by the count, or 0 if no value was recorded.]
+        long count = this.count.sum();
+        return count == 0 ? 0 : (double) this.sum.sum() / count;
+    }
+
+    /**
+     * Getter for a percentile of the values recorded.
+     *
+     * @param fraction the fraction of the values at or below the percentile,
+     * such as 0.99 for the 99th percentile.
+     *
+     * @return the upper bound of the bucket of the percentile, capped at the
+     * largest value recorded, or 0 if no value was recorded.
+     *
+     * @throws IllegalArgumentException if {@code fraction} is not between 0
+     * and 1.
+     */
+    public long getPercentile(double fraction)
+    {
+        // Codes_SRS_IOTHUBHISTOGRAM_21_005: [If the fraction is not between 0 and 1, the function shall throw an IllegalArgumentException.]
+        if (!(fraction >= 0 && fraction <= 1))
+        {
+            throw new IllegalArgumentException("The percentile fraction shall be between 0 and 1.");
+        }
+
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            counts[i] = this.buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        // Codes_SRS_IOTHUBHISTOGRAM_21_006: [The function shall return the upper bound of the first bucket at which the fraction of the values is reached, capped at the largest value recorded.]
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        int bucket = 0;
+        while (bucket < BUCKET_COUNT - 1)
+        {
+            seen += counts[bucket];
+            if (seen >= rank)
+            {
+                break;
+            }
+            bucket++;
+        }
+        long upperBound = bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        return Math.min(upperBound, this.max.get());
+    }
+}
@@ -0,0 +1,156 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exports the {@link IotHubClientMetrics} of each client as an MBean named
+ * {@code com.microsoft.azure.sdk.iot.device:type=DeviceClient,hub="<iotHubHostname>",name="<deviceId>"},
+ * so they can be read with JConsole, VisualVM or any JMX collector.
+ */
+public final class IotHubJmxMetricsExporter implements IotHubMetricsExporter
+{
+    /** The domain of the names of the MBeans. */
+    public static final String DOMAIN = "com.microsoft.azure.sdk.iot.device";
+
+    private final MBeanServer server;
+
+    /** The metrics this exporter registered, by MBean name. */
+    private final Map<ObjectName, IotHubClientMetrics> registered = new HashMap<>();
+
+    /**
+     * Constructor for an exporter registering the MBeans with the platform
+     * MBean server.
+     */
+    public IotHubJmxMetricsExporter()
+    {
+        // Codes_SRS_IOTHUBJMXMETRICSEXPORTER_21_001: [The constructor shall use the platform MBean server.]
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param server the MBean server to register the MBeans with.
+     *
+     * @throws IllegalArgumentException if {@code server} is {@code null}.
+     */
+    public IotHubJmxMetricsExporter(MBeanServer server)
+    {
+        // Codes_SRS_IOTHUBJMXMETRICSEXPORTER_21_002: [If the server is null, the constructor shall throw an IllegalArgumentException.]
+        if (server == null)
+        {
+            throw new IllegalArgumentException("The MBean server cannot be 'null'.");
+        }
+        this.server = server;
+    }
+
+    /**
+     * Builds the name of the MBean of a device.
+     *
+     * @param iotHubHostname the host name of the IoT Hub of the device.
+     * @param deviceId the ID of the device.
+     *
+     * @return the name of the MBean.
+     *
+     * @throws IllegalArgumentException if {@code iotHubHostname} or
+     * {@code deviceId} is {@code null}.
+     */
+    public static ObjectName getObjectName(String iotHubHostname, String deviceId)
+    {
+        // Codes_SRS_IOTHUBJMXMETRICSEXPORTER_21_003: [The function shall return the name of the DeviceClient type in the exporter domain, with the quoted IoT Hub host name as hub and the quoted device ID as name.]
+        if (iotHubHostname == null)
+        {
+            throw new IllegalArgumentException("The IoT Hub host name cannot be 'null'.");
+        }
+        if (deviceId == null)
+        {
+            throw new IllegalArgumentException("The device ID cannot be 'null'.");
+        }
+        try
+        {
+            return new ObjectName(DOMAIN + ":type=DeviceClient,hub=" + ObjectName.quote(iotHubHostname)
+                    + ",name=" + ObjectName.quote(deviceId));
+        }
+        catch (JMException e)
+        {
+            // should never happen, since the host name and the device ID are quoted.
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Registers the metrics of a client as an MBean.
+     *
+     * @param iotHubHostname the host name of the IoT Hub of the client.
+     * @param deviceId the ID of the device of the client.
+     * @param metrics the metrics of the client.
+     *
+     * @throws IllegalArgumentException if {@code iotHubHostname},
+     * {@code deviceId} or {@code metrics} is {@code null}.
+     * @throws IllegalStateException if the MBean of the device is already
+     * registered, or the server refuses it.
+     */
+    public synchronized void register(String iotHubHostname, String deviceId, IotHubClientMetrics metrics)
+    {
+        if (metrics == null)
+        {
+            throw new IllegalArgumentException("The metrics cannot be 'null'.");
+        }
+
+        // Codes_SRS_IOTHUBJMXMETRICSEXPORTER_21_004: [The function shall register the metrics with the server under the name of the device, and throw an IllegalStateException if the server refuses them.]
+        ObjectName name = getObjectName(iotHubHostname, deviceId);
+        try
+        {
+            this.server.registerMBean(metrics, name);
+            this.registered.put(name, metrics);
+        }
+        catch (JMException e)
+        {
+            throw new IllegalStateException("Cannot register the metrics MBean " + name, e);
+        }
+    }
+
+    /**
+     * Unregisters the MBean of a client, if this exporter registered it with
+     * the same metrics. The MBean of another client with the same name is
+     * left alone.
+     *
+     * @param iotHubHostname the host name of the IoT Hub of the client.
+     * @param deviceId the ID of the device of the client.
+     * @param metrics the metrics of the client.
+     *
+     * @throws IllegalArgumentException if {@code iotHubHostname} or
+     * {@code deviceId} is {@code null}.
+     * @throws IllegalStateException if the server refuses to unregister the
+     * MBean.
+     */
+    public synchronized void unregister(String iotHubHostname, String deviceId, IotHubClientMetrics metrics)
+    {
+        // Codes_SRS_IOTHUBJMXMETRICSEXPORTER_21_005: [The function shall unregister the MBean of the device if this exporter registered it with the given metrics, and do nothing otherwise.]
+        ObjectName name = getObjectName(iotHubHostname, deviceId);
+        if (metrics == null || this.registered.get(name) != metrics)
+        {
+            return;
+        }
+        try
+        {
+            this.registered.remove(name);
+            if (this.server.isRegistered(name))
+            {
+                this.server.unregisterMBean(name);
+            }
+        }
+        catch (JMException e)
+        {
+            throw new IllegalStateException("Cannot unregister the metrics MBean " + name, e);
+        }
+    }
+}
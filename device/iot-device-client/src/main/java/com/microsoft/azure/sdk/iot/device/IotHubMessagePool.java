@@ -0,0 +1,259 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * A pool of messages for clients sending at a high rate, so that a message,
+ * and the property table it carries, is reused rather than reallocated for
+ * every event.
+ * </p>
+ * <p>
+ * The application obtains a message with {@link #obtain(byte[])}, fills it
+ * and sends it with {@link DeviceClient#sendEventAsync(Message, IotHubEventCallback, Object)}.
+ * The client releases the message to its pool once the send callback has
+ * returned, so the application shall not touch the message after sending it,
+ * nor keep it from its callback. A message obtained but never sent is given
+ * back with {@link #release(Message)}. A pool keeps up to its capacity of
+ * idle messages, and allocates a new message when none is idle.
+ * </p>
+ * <p>
+ * A pool created with a leak threshold, typically in debug builds, records
+ * where each message is obtained, and logs the messages held for longer than
+ * the threshold, once each, along with the stack trace of their
+ * {@link #obtain(byte[])}. The pool is thread-safe.
+ * </p>
+ */
+public final class IotHubMessagePool
+{
+    /** The number of idle messages kept by default. */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final int capacity;
+    private final long leakThresholdMillis;
+    private final ArrayDeque<Message> idle;
+    private int inUseCount;
+
+    /** The messages in use, with where they were obtained; null without leak detection. */
+    private final Map<Message, Obtained> obtained;
+    private long leakCount;
+
+    private final CustomLogger logger = new CustomLogger(this.getClass());
+
+    /**
+     * The callback standing in for the callback of a pooled message, which
+     * is then its context. It invokes the callback of the message and
+     * releases it.
+     */
+    static final IotHubEventCallback RELEASING_CALLBACK = new IotHubEventCallback()
+    {
+        @Override
+        public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+        {
+            Message message = (Message) callbackContext;
+            IotHubEventCallback callback = message.getSendCallback();
+            Object context = message.getSendCallbackContext();
+            try
+            {
+                if (callback != null)
+                {
+                    callback.execute(responseStatus, context);
+                }
+            }
+            finally
+            {
+                message.getPool().release(message);
+            }
+        }
+    };
+
+    /**
+     * Constructor, with the default capacity and without leak detection.
+     */
+    public IotHubMessagePool()
+    {
+        this(DEFAULT_CAPACITY, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the maximum number of idle messages kept for reuse.
+     * @param leakThresholdMillis the time, in milliseconds, after which a
+     * message not released yet is reported as leaked, or 0 to disable the
+     * leak detection.
+     *
+     * @throws IllegalArgumentException if {@code capacity} is not positive or
+     * {@code leakThresholdMillis} is negative.
+     */
+    public IotHubMessagePool(int capacity, long leakThresholdMillis)
+    {
+        // Codes_SRS_IOTHUBMESSAGEPOOL_21_001: [If the capacity is not positive or the leak threshold is negative, the constructor shall throw an IllegalArgumentException.]
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("The pool capacity shall be positive.");
+        }
+        if (leakThresholdMillis < 0)
+        {
+            throw new IllegalArgumentException("The leak threshold cannot be negative.");
+        }
+
+        // Codes_SRS_IOTHUBMESSAGEPOOL_21_002: [The constructor shall create an empty pool, which tracks the messages in use only if the leak threshold is positive.]
+        this.capacity = capacity;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.idle = new ArrayDeque<>(capacity);
+        this.obtained = leakThresholdMillis > 0 ? new IdentityHashMap<Message, Obtained>() : null;
+    }
+
+    /**
+     * Hands out a message with the given body, reusing an idle message if
+     * there is one. The message takes ownership of the body array.
+     *
+     * @param body the body of the message.
+     *
+     * @return a message in the state of {@code new Message(body)}.
+     *
+     * @throws IllegalArgumentException if {@code body} is {@code null}.
+     */
+    public synchronized Message obtain(byte[] body)
+    {
+        // Codes_SRS_IOTHUBMESSAGEPOOL_21_003: [If the body is null, the function shall throw an IllegalArgumentException.]
+        if (body == null)
+        {
+            throw new IllegalArgumentException("Message body cannot be 'null'.");
+        }
+
+        // Codes_SRS_IOTHUBMESSAGEPOOL_21_004: [The function shall return an idle message reset to the given body, or a new message bound to the pool if none is idle.]
+        Message message = this.idle.pollFirst();
+        if (message == null)
+        {
+            message = new Message(body);
+            message.setPool(this);
+        }
+        else
+        {
+            message.recycle(body);
+        }
+        message.setInUse(true);
+        this.inUseCount++;
+
+        if (this.obtained != null)
+        {
+            // Codes_SRS_IOTHUBMESSAGEPOOL_21_005: [If the leak detection is enabled, the function shall record where the message is obtained, and log once each message held for longer than the leak threshold, with where it was obtained.]
+            long now = this.currentTimeMillis();
+            this.reportLeaks(now);
+            this.obtained.put(message, new Obtained(now));
+        }
+        return message;
+    }
+
+    /**
+     * Gives a message back to its pool. The client releases the messages it
+     * sent by itself, once their callback returned.
+     *
+     * @param message the message, which shall not be used afterwards.
+     *
+     * @throws IllegalArgumentException if {@code message} is {@code null} or
+     * was not obtained from this pool.
+     * @throws IllegalStateException if the message was already released.
+     */
+    public synchronized void release(Message message)
+    {
+        // Codes_SRS_IOTHUBMESSAGEPOOL_21_006: [If the message is null or was not obtained from this pool, the function shall throw an IllegalArgumentException.]
+        if (message == null || message.getPool() != this)
+        {
+            throw new IllegalArgumentException("The message was not obtained from this pool.");
+        }
+
+        // Codes_SRS_IOTHUBMESSAGEPOOL_21_007: [If the message was already released, the function shall throw an IllegalStateException.]
+        if (!message.isInUse())
+        {
+            throw new IllegalStateException("The message was already released to its pool.");
+        }
+
+        // Codes_SRS_IOTHUBMESSAGEPOOL_21_008: [The function shall drop the body of the message and keep it for reuse, unless the pool already holds its capacity of idle messages.]
+        message.setInUse(false);
+        message.recycle(null);
+        this.inUseCount--;
+        if (this.obtained != null)
+        {
+            this.obtained.remove(message);
+        }
+        if (this.idle.size() < this.capacity)
+        {
+            this.idle.addFirst(message);
+        }
+    }
+
+    /**
+     * Getter for the number of idle messages.
+     *
+     * @return the number of messages waiting for reuse.
+     */
+    public synchronized int getIdleCount()
+    {
+        // Codes_SRS_IOTHUBMESSAGEPOOL_21_009: [The function shall return the number of idle messages.]
+        return this.idle.size();
+    }
+
+    /**
+     * Getter for the number of messages handed out and not released yet.
+     *
+     * @return the number of messages in use.
+     */
+    public synchronized int getInUseCount()
+    {
+        // Codes_SRS_IOTHUBMESSAGEPOOL_21_010: [The function shall return the number of messages obtained and not released yet.]
+        return this.inUseCount;
+    }
+
+    /**
+     * Getter for the number of messages reported as leaked so far.
+     *
+     * @return the number of leaks, always 0 without leak detection.
+     */
+    public synchronized long getLeakCount()
+    {
+        // Codes_SRS_IOTHUBMESSAGEPOOL_21_011: [The function shall return the number of messages reported as leaked.]
+        return this.leakCount;
+    }
+
+    /** The clock of the leak detection, replaced in tests. */
+    private long currentTimeMillis()
+    {
+        return System.currentTimeMillis();
+    }
+
+    private void reportLeaks(long now)
+    {
+        for (Obtained entry : this.obtained.values())
+        {
+            if (!entry.reported && now - entry.timeMillis > this.leakThresholdMillis)
+            {
+                entry.reported = true;
+                this.leakCount++;
+                logger.LogError("A pooled message was held for more than %s milliseconds without being sent or released, method name is %s ", this.leakThresholdMillis, CustomLogger.METHOD_NAME);
+                logger.LogError(entry.site);
+            }
+        }
+    }
+
+    /** Where and when a message in use was obtained. */
+    private static final class Obtained
+    {
+        final long timeMillis;
+        final Throwable site;
+        boolean reported;
+
+        Obtained(long timeMillis)
+        {
+            this.timeMillis = timeMillis;
+            this.site = new Throwable("The leaked message was obtained here.");
+        }
+    }
+}
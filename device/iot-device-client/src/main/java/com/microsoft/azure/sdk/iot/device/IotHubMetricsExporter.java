@@ -0,0 +1,35 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * Publishes the {@link IotHubClientMetrics} of the clients to a monitoring
+ * system. A client with an exporter (see the <b>SetMetricsExporter</b>
+ * option of {@link DeviceClient#setOption(String, Object)}) registers its
+ * metrics when it opens and unregisters them when it closes. An exporter
+ * can be shared by many clients, told apart by their IoT Hub host name and
+ * device ID.
+ */
+public interface IotHubMetricsExporter
+{
+    /**
+     * Starts publishing the metrics of a client.
+     *
+     * @param iotHubHostname the host name of the IoT Hub of the client.
+     * @param deviceId the ID of the device of the client.
+     * @param metrics the metrics of the client.
+     */
+    void register(String iotHubHostname, String deviceId, IotHubClientMetrics metrics);
+
+    /**
+     * Stops publishing the metrics of a client. Only the metrics given are
+     * unpublished, even if another client has the same host name and device
+     * ID.
+     *
+     * @param iotHubHostname the host name of the IoT Hub of the client.
+     * @param deviceId the ID of the device of the client.
+     * @param metrics the metrics of the client.
+     */
+    void unregister(String iotHubHostname, String deviceId, IotHubClientMetrics metrics);
+}
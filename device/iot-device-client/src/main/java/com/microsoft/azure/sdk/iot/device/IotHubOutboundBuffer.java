@@ -0,0 +1,381 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * <p>
+ * Caps the messages a client holds on to while they are on their way to an
+ * IoT Hub, by both message count and total body bytes. A message takes up room
+ * from the moment it is added to the transport until the IoT Hub responds to
+ * it, is dropped, or expires.
+ * </p>
+ * <p>
+ * When a new message does not fit, the buffer applies its
+ * {@link IotHubOutboundBufferPolicy}. A message larger than the buffer itself
+ * never fits, and is refused at once whatever the policy. The current depth
+ * of the buffer can be read through {@link #getMessageCount()} and
+ * {@link #getByteCount()}.
+ * </p>
+ * <p>
+ * The threads that send the messages of a client or invoke its callbacks are
+ * the ones that make room in the buffer, so they never wait for room: under
+ * {@link IotHubOutboundBufferPolicy#BLOCK}, a message added from one of them
+ * that does not fit is refused as under
+ * {@link IotHubOutboundBufferPolicy#FAIL}.
+ * </p>
+ */
+public final class IotHubOutboundBuffer
+{
+    private final int maxMessages;
+    private final long maxBytes;
+    private final IotHubOutboundBufferPolicy policy;
+    private final long blockTimeoutMillis;
+
+    /** Whether the current thread sends messages or invokes callbacks for a client. */
+    private static final ThreadLocal<Boolean> CLIENT_THREAD = new ThreadLocal<Boolean>()
+    {
+        @Override
+        protected Boolean initialValue()
+        {
+            return Boolean.FALSE;
+        }
+    };
+
+    private final Object bufferLock = new Object();
+    /** The body size of every message currently held, by packet. */
+    private final Map<IotHubOutboundPacket, Integer> heldPackets = new HashMap<>();
+    private long byteCount;
+
+    /**
+     * Constructor.
+     *
+     * @param maxMessages the maximum number of messages held at once.
+     * @param maxBytes the maximum total body size, in bytes, of the messages
+     * held at once.
+     * @param policy what to do with a message that does not fit.
+     * @param blockTimeoutMillis for {@link IotHubOutboundBufferPolicy#BLOCK},
+     * the maximum time to wait for room, in milliseconds. A timeout of 0 waits
+     * until there is room. Ignored by the other policies.
+     *
+     * @throws IllegalArgumentException if {@code maxMessages} or
+     * {@code maxBytes} is not positive, if {@code policy} is {@code null}, or
+     * if {@code blockTimeoutMillis} is negative.
+     */
+    public IotHubOutboundBuffer(int maxMessages,
+            long maxBytes,
+            IotHubOutboundBufferPolicy policy,
+            long blockTimeoutMillis)
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_001: [If the maximum number of messages or the maximum number of bytes is not positive, the constructor shall throw an IllegalArgumentException.]
+        if (maxMessages <= 0 || maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("The outbound buffer limits must be positive.");
+        }
+        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_002: [If the policy is null, the constructor shall throw an IllegalArgumentException.]
+        if (policy == null)
+        {
+            throw new IllegalArgumentException("The outbound buffer policy cannot be null.");
+        }
+        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_003: [If the block timeout is negative, the constructor shall throw an IllegalArgumentException.]
+        if (blockTimeoutMillis < 0)
+        {
+            throw new IllegalArgumentException("The outbound buffer timeout cannot be negative.");
+        }
+
+        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_004: [The constructor shall save the limits, the policy and the block timeout.]
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+    }
+
+    /**
+     * Creates a buffer that never runs out of room, and only keeps track of
+     * its depth.
+     *
+     * @return a buffer without limits.
+     */
+    public static IotHubOutboundBuffer unbounded()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_005: [The function shall return a buffer limited to Integer.MAX_VALUE messages and Long.MAX_VALUE bytes.]
+        return new IotHubOutboundBuffer(Integer.MAX_VALUE, Long.MAX_VALUE, IotHubOutboundBufferPolicy.FAIL, 0);
+    }
+
+    /**
+     * Marks the current thread as one that sends messages or invokes
+     * callbacks for a client, until {@link #exitClientThread(boolean)} is
+     * called. Called by the send and receive tasks and by the callback
+     * dispatcher.
+     *
+     * @return whether the thread was already marked, to be given back to
+     * {@link #exitClientThread(boolean)}.
+     */
+    public static boolean enterClientThread()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_018: [The function shall mark the current thread as a client thread and return whether it already was one.]
+        boolean wasClientThread = CLIENT_THREAD.get();
+        if (!wasClientThread)
+        {
+            CLIENT_THREAD.set(Boolean.TRUE);
+        }
+        return wasClientThread;
+    }
+
+    /**
+     * Restores the mark of the current thread set by
+     * {@link #enterClientThread()}.
+     *
+     * @param wasClientThread the value returned by {@link #enterClientThread()}.
+     */
+    public static void exitClientThread(boolean wasClientThread)
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_019: [The function shall unmark the current thread, unless it was already a client thread when it was marked.]
+        if (!wasClientThread)
+        {
+            CLIENT_THREAD.remove();
+        }
+    }
+
+    /**
+     * Makes room for a packet about to be added to a transport queue. Called
+     * by the transports; the packet shall be added to {@code waitingList} only
+     * if the function returns {@code true}, and given back through
+     * {@link #release(IotHubOutboundPacket)} once it is completed.
+     *
+     * @param packet the packet to be added.
+     * @param waitingList the transport queue the packet is added to. Packets
+     * dropped by {@link IotHubOutboundBufferPolicy#DROP_OLDEST} are taken from
+     * its head, or from the head of its lowest priority lane if it is an
+     * {@link IotHubOutboundQueue}.
+     * @param callbackList the transport queue receiving the callbacks of
+     * dropped packets.
+     *
+     * @return {@code true} if the packet is to be added to the transport
+     * queue, and {@code false} if it was dropped.
+     *
+     * @throws IllegalStateException if there is no room for the packet and the
+     * policy is {@link IotHubOutboundBufferPolicy#FAIL}, or the policy is
+     * {@link IotHubOutboundBufferPolicy#BLOCK} and the packet is larger than
+     * the buffer, the calling thread is a client thread, the timeout expired
+     * or the waiting thread was interrupted.
+     */
+    public boolean acquire(IotHubOutboundPacket packet,
+            Queue<IotHubOutboundPacket> waitingList,
+            Queue<IotHubCallbackPacket> callbackList)
+    {
+        int packetBytes = getBodyLength(packet);
+
+        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_016: [If the packet is larger than the maximum number of bytes, the function shall throw an IllegalStateException if the policy is FAIL or BLOCK, and otherwise drop only the packet and return false.]
+        if (packetBytes > this.maxBytes)
+        {
+            if ((this.policy == IotHubOutboundBufferPolicy.FAIL) || (this.policy == IotHubOutboundBufferPolicy.BLOCK))
+            {
+                throw new IllegalStateException("The message of " + packetBytes
+                        + " bytes is larger than the outbound buffer of " + this.maxBytes + " bytes.");
+            }
+            addDroppedCallback(packet, callbackList);
+            return false;
+        }
+
+        synchronized (this.bufferLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_006: [If the packet fits, the function shall account for it and return true.]
+            if (!this.fits(packetBytes))
+            {
+                switch (this.policy)
+                {
+                    case BLOCK:
+                        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_017: [If the policy is BLOCK and the calling thread is a client thread, the function shall throw an IllegalStateException instead of waiting.]
+                        if (CLIENT_THREAD.get())
+                        {
+                            throw new IllegalStateException("The outbound buffer is full, and a thread of the client cannot wait for room.");
+                        }
+                        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_007: [If the policy is BLOCK, the function shall wait until the packet fits, and throw an IllegalStateException if the block timeout expires first.]
+                        this.awaitRoom(packetBytes);
+                        break;
+                    case FAIL:
+                        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_008: [If the policy is FAIL and the packet does not fit, the function shall throw an IllegalStateException.]
+                        throw new IllegalStateException("The outbound buffer is full.");
+                    case DROP_OLDEST:
+                        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_009: [If the policy is DROP_OLDEST, the function shall drop packets from the head of the waiting list until the packet fits.]
+                        while (!this.fits(packetBytes))
+                        {
+                            // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_015: [If the waiting list is an IotHubOutboundQueue, the function shall drop packets from its lowest priority lane first.]
+                            IotHubOutboundPacket oldest = waitingList instanceof IotHubOutboundQueue
+                                    ? ((IotHubOutboundQueue) waitingList).pollLowestPriority()
+                                    : waitingList.poll();
+                            if (oldest == null)
+                            {
+                                break;
+                            }
+                            this.releaseHeld(oldest);
+                            addDroppedCallback(oldest, callbackList);
+                        }
+                        if (!this.fits(packetBytes))
+                        {
+                            addDroppedCallback(packet, callbackList);
+                            return false;
+                        }
+                        break;
+                    default:
+                        // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_010: [If the policy is DROP_NEWEST and the packet does not fit, the function shall drop it and return false.]
+                        addDroppedCallback(packet, callbackList);
+                        return false;
+                }
+            }
+
+            this.heldPackets.put(packet, packetBytes);
+            this.byteCount += packetBytes;
+            return true;
+        }
+    }
+
+    /**
+     * Gives back the room taken by a completed packet. Releasing a packet that
+     * is not held does nothing.
+     *
+     * @param packet the completed packet.
+     */
+    public void release(IotHubOutboundPacket packet)
+    {
+        synchronized (this.bufferLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_011: [The function shall stop accounting for the packet and wake up all threads waiting for room.]
+            // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_012: [If the packet is not held by the buffer, the function shall do nothing.]
+            if (this.releaseHeld(packet))
+            {
+                this.bufferLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Getter for the number of messages currently held.
+     *
+     * @return the number of messages currently held.
+     */
+    public int getMessageCount()
+    {
+        synchronized (this.bufferLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_013: [The function shall return the number of packets currently held.]
+            return this.heldPackets.size();
+        }
+    }
+
+    /**
+     * Getter for the total body size of the messages currently held.
+     *
+     * @return the total body size, in bytes, of the messages currently held.
+     */
+    public long getByteCount()
+    {
+        synchronized (this.bufferLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDBUFFER_21_014: [The function shall return the total body size of the packets currently held.]
+            return this.byteCount;
+        }
+    }
+
+    /**
+     * Getter for the maximum number of messages held at once.
+     *
+     * @return the maximum number of messages held at once.
+     */
+    public int getMaxMessages()
+    {
+        return this.maxMessages;
+    }
+
+    /**
+     * Getter for the maximum total body size of the messages held at once.
+     *
+     * @return the maximum total body size, in bytes.
+     */
+    public long getMaxBytes()
+    {
+        return this.maxBytes;
+    }
+
+    /**
+     * Getter for the policy applied to messages that do not fit.
+     *
+     * @return the policy applied to messages that do not fit.
+     */
+    public IotHubOutboundBufferPolicy getPolicy()
+    {
+        return this.policy;
+    }
+
+    private boolean fits(int packetBytes)
+    {
+        return this.heldPackets.size() < this.maxMessages
+                && packetBytes <= this.maxBytes - this.byteCount;
+    }
+
+    private void awaitRoom(int packetBytes)
+    {
+        long deadline = System.currentTimeMillis() + this.blockTimeoutMillis;
+        try
+        {
+            while (!this.fits(packetBytes))
+            {
+                if (this.blockTimeoutMillis == 0)
+                {
+                    this.bufferLock.wait();
+                }
+                else
+                {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0)
+                    {
+                        throw new IllegalStateException("Timed out waiting for room in the outbound buffer.");
+                    }
+                    this.bufferLock.wait(remaining);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for room in the outbound buffer.", e);
+        }
+    }
+
+    private boolean releaseHeld(IotHubOutboundPacket packet)
+    {
+        Integer packetBytes = this.heldPackets.remove(packet);
+        if (packetBytes == null)
+        {
+            return false;
+        }
+
+        this.byteCount -= packetBytes;
+        return true;
+    }
+
+    private static void addDroppedCallback(IotHubOutboundPacket packet,
+            Queue<IotHubCallbackPacket> callbackList)
+    {
+        if (packet.getCallback() != null)
+        {
+            callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_DROPPED,
+                    packet.getCallback(), packet.getContext()));
+        }
+    }
+
+    private static int getBodyLength(IotHubOutboundPacket packet)
+    {
+        Message message = packet.getMessage();
+        return message == null ? 0 : message.getBodyLength();
+    }
+}
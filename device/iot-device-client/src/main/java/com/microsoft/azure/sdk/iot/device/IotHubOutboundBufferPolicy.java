@@ -0,0 +1,26 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * What an {@link IotHubOutboundBuffer} does with a new message when it is
+ * already holding as many messages or bytes as it is allowed to.
+ */
+public enum IotHubOutboundBufferPolicy
+{
+    /** Block the caller until there is room, or until the buffer timeout expires. */
+    BLOCK,
+    /** Reject the new message immediately with an {@link IllegalStateException}. */
+    FAIL,
+    /**
+     * Drop the oldest messages not yet handed to the IoT Hub to make room. Their
+     * callbacks are invoked with {@link IotHubStatusCode#MESSAGE_DROPPED}.
+     */
+    DROP_OLDEST,
+    /**
+     * Drop the new message. Its callback is invoked with
+     * {@link IotHubStatusCode#MESSAGE_DROPPED}.
+     */
+    DROP_NEWEST
+}
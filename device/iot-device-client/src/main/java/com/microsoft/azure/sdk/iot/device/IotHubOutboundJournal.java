@@ -0,0 +1,647 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Keeps the messages of a client on disk from the moment they are added to
+ * the transport until the IoT Hub responds to them, so that they survive a
+ * restart of the process. When a client with a journal is opened, the
+ * messages left in the journal are sent again, oldest first, before any new
+ * message.
+ * </p>
+ * <p>
+ * The journal is a directory of memory-mapped segment files of a fixed size.
+ * Messages are appended to the newest segment, each record protected by a
+ * CRC32 checksum, and checkpointed in place once the IoT Hub responds. A
+ * segment is deleted as soon as every message in it is checkpointed. When the
+ * journal reaches its maximum size, the oldest segment is compacted into a new
+ * one; its pending messages that do not fit are no longer journaled, though
+ * they are still sent.
+ * </p>
+ * <p>
+ * Messages dropped by the {@link IotHubOutboundBuffer}, or still pending when
+ * {@link DeviceClient#close(long)} times out, are not checkpointed and are
+ * sent again the next time a client is opened with the journal. Messages are
+ * sent at least once: a message the IoT Hub received just before the process
+ * stopped may be sent again. A journal shall be used by a single client at a
+ * time.
+ * </p>
+ */
+public final class IotHubOutboundJournal implements Closeable
+{
+    /** The extension of the segment files. */
+    public static final String SEGMENT_FILE_EXTENSION = ".journal";
+
+    /** The size of a record header: length, checksum and state. */
+    private static final int HEADER_SIZE = 9;
+    private static final int CHECKSUM_OFFSET = 4;
+    private static final int STATE_OFFSET = 8;
+    private static final byte STATE_PENDING = 1;
+    private static final byte STATE_CHECKPOINTED = 2;
+    /** Set in the priority byte of a record when a content encoding follows it. */
+    private static final int CONTENT_ENCODING_FLAG = 0x80;
+
+    /** Invoked for replayed messages when no replay callback is set. */
+    private static final IotHubEventCallback NO_OP_CALLBACK = new IotHubEventCallback()
+    {
+        @Override
+        public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+        {
+        }
+    };
+
+    private final File directory;
+    private final int segmentSizeBytes;
+    private final int maxSegments;
+
+    private final Object journalLock = new Object();
+    /** The segments on disk, oldest first. The last one is the active one, if any. */
+    private final LinkedList<Segment> segments = new LinkedList<>();
+    private Segment activeSegment;
+    /** The records not checkpointed yet, by sequence number. */
+    private final TreeMap<Long, Record> pendingRecords = new TreeMap<>();
+    /** The records not checkpointed yet, by message. */
+    private final Map<Message, Record> recordsByMessage = new IdentityHashMap<>();
+    private long nextSequence;
+    private boolean closed;
+
+    private volatile IotHubEventCallback replayCallback = NO_OP_CALLBACK;
+    private volatile Object replayCallbackContext;
+
+    private final CustomLogger logger = new CustomLogger(this.getClass());
+
+    /**
+     * Constructor. Opens the journal in the given directory, recovering the
+     * messages a previous journal left in it.
+     *
+     * @param directory the directory holding the segment files. It is created
+     * if it does not exist.
+     * @param segmentSizeBytes the size of a segment file, in bytes. Bounds the
+     * size of a journaled message.
+     * @param maxBytes the maximum total size of the segment files, in bytes.
+     *
+     * @throws IllegalArgumentException if {@code directory} is {@code null},
+     * if {@code segmentSizeBytes} is not larger than a record header, or if
+     * {@code maxBytes} is smaller than {@code segmentSizeBytes}.
+     * @throws IOException if the directory or its segment files cannot be
+     * read.
+     */
+    public IotHubOutboundJournal(File directory, int segmentSizeBytes, long maxBytes) throws IOException
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_001: [If the directory is null, the constructor shall throw an IllegalArgumentException.]
+        if (directory == null)
+        {
+            throw new IllegalArgumentException("The journal directory cannot be null.");
+        }
+        // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_002: [If the segment size is not larger than a record header, or the maximum size is smaller than the segment size, the constructor shall throw an IllegalArgumentException.]
+        if (segmentSizeBytes <= HEADER_SIZE || maxBytes < segmentSizeBytes)
+        {
+            throw new IllegalArgumentException("The journal segment size must be positive and fit in the maximum journal size.");
+        }
+        // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_003: [If the directory does not exist and cannot be created, the constructor shall throw an IOException.]
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Cannot create the journal directory " + directory);
+        }
+
+        this.directory = directory;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.maxSegments = (int) Math.min(Integer.MAX_VALUE, maxBytes / segmentSizeBytes);
+
+        // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_004: [The constructor shall read every segment file in the directory, oldest first, up to the first record that is incomplete or fails its checksum, and recover the records not checkpointed.]
+        // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_005: [The constructor shall delete the segment files holding no record to recover.]
+        this.recover();
+    }
+
+    /**
+     * Appends the message of a packet about to be added to a transport queue.
+     * Called by the transports. A message recovered by the journal is not
+     * appended again.
+     *
+     * @param packet the packet to be journaled.
+     */
+    public void record(IotHubOutboundPacket packet)
+    {
+        Message message = packet.getMessage();
+        if (message == null)
+        {
+            return;
+        }
+
+        synchronized (this.journalLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_006: [If the journal is closed or the message is already journaled, the function shall do nothing.]
+            if (this.closed || this.recordsByMessage.containsKey(message))
+            {
+                return;
+            }
+
+            try
+            {
+                byte[] body = encodeBody(this.nextSequence, message);
+                // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_007: [If the record does not fit in a segment, the function shall not journal the message.]
+                if (HEADER_SIZE + body.length > this.segmentSizeBytes)
+                {
+                    this.logger.LogError("Message with messageid %s is too large to be journaled, method name is %s ", message.getMessageId(), CustomLogger.METHOD_NAME);
+                    return;
+                }
+
+                // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_008: [The function shall append a record holding the message and a checksum to the active segment, starting a new segment if it does not fit.]
+                if (this.activeSegment == null || this.activeSegment.remaining() < HEADER_SIZE + body.length)
+                {
+                    this.roll(HEADER_SIZE + body.length);
+                }
+                Record record = this.activeSegment.append(body, message);
+                record.sequence = this.nextSequence++;
+                this.pendingRecords.put(record.sequence, record);
+                this.recordsByMessage.put(message, record);
+            }
+            catch (IOException e)
+            {
+                // the message is still sent, only not durably.
+                this.logger.LogError("Cannot journal message with messageid %s: %s, method name is %s ", message.getMessageId(), e.toString(), CustomLogger.METHOD_NAME);
+            }
+        }
+    }
+
+    /**
+     * Checkpoints the message of a packet the IoT Hub responded to, so that it
+     * is not sent again. Called by the transports. Checkpointing a message
+     * that is not journaled does nothing.
+     *
+     * @param packet the completed packet.
+     */
+    public void checkpoint(IotHubOutboundPacket packet)
+    {
+        synchronized (this.journalLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_009: [If the message is not journaled, the function shall do nothing.]
+            Record record = this.recordsByMessage.remove(packet.getMessage());
+            if (record == null)
+            {
+                return;
+            }
+
+            // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_010: [The function shall mark the record as checkpointed in its segment, and delete the segment if it is not the active one and holds no other pending record.]
+            this.pendingRecords.remove(record.sequence);
+            Segment segment = record.segment;
+            segment.buffer.put(record.position + STATE_OFFSET, STATE_CHECKPOINTED);
+            segment.pendingCount--;
+            if (segment.pendingCount == 0 && segment != this.activeSegment)
+            {
+                this.deleteSegment(segment);
+            }
+        }
+    }
+
+    /**
+     * Returns the messages journaled and not checkpointed yet.
+     *
+     * @return the pending messages, oldest first.
+     */
+    public List<Message> getPendingMessages()
+    {
+        synchronized (this.journalLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_011: [The function shall return the messages not checkpointed, in the order they were first journaled.]
+            List<Message> messages = new ArrayList<>(this.pendingRecords.size());
+            for (Record record : this.pendingRecords.values())
+            {
+                messages.add(record.message);
+            }
+            return messages;
+        }
+    }
+
+    /**
+     * Getter for the number of segment files currently on disk.
+     *
+     * @return the number of segment files.
+     */
+    public int getSegmentCount()
+    {
+        synchronized (this.journalLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_012: [The function shall return the number of segment files currently on disk.]
+            return this.segments.size();
+        }
+    }
+
+    /**
+     * Sets the callback invoked when the IoT Hub responds to a message sent
+     * again from the journal, whose original callback was lost.
+     *
+     * @param callback the callback. Can be {@code null}, in which case the
+     * responses are ignored.
+     * @param callbackContext the context to be passed to the callback.
+     */
+    public void setReplayCallback(IotHubEventCallback callback, Object callbackContext)
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_013: [The function shall save the replay callback and context; a null callback shall be replaced by one that does nothing.]
+        this.replayCallback = callback == null ? NO_OP_CALLBACK : callback;
+        this.replayCallbackContext = callbackContext;
+    }
+
+    IotHubEventCallback getReplayCallback()
+    {
+        return this.replayCallback;
+    }
+
+    Object getReplayCallbackContext()
+    {
+        return this.replayCallbackContext;
+    }
+
+    /**
+     * Flushes the segments to disk and closes the journal. Messages are no
+     * longer journaled or checkpointed; those pending stay on disk for the
+     * next journal opened in the directory.
+     */
+    public void close()
+    {
+        synchronized (this.journalLock)
+        {
+            // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_014: [The function shall flush every segment to disk and stop journaling messages.]
+            if (this.closed)
+            {
+                return;
+            }
+
+            for (Segment segment : this.segments)
+            {
+                segment.buffer.force();
+            }
+            this.segments.clear();
+            this.activeSegment = null;
+            this.pendingRecords.clear();
+            this.recordsByMessage.clear();
+            this.closed = true;
+        }
+    }
+
+    /**
+     * Seals the active segment and starts a new one, compacting the oldest
+     * segments if the journal is at its maximum size.
+     *
+     * @param reservedBytes the room to keep in the new segment for the record
+     * about to be appended.
+     */
+    private void roll(int reservedBytes) throws IOException
+    {
+        Segment sealed = this.activeSegment;
+        if (sealed != null)
+        {
+            sealed.buffer.force();
+            if (sealed.pendingCount == 0)
+            {
+                this.deleteSegment(sealed);
+            }
+        }
+
+        this.activeSegment = Segment.create(new File(this.directory, segmentFileName(this.nextSequence)), this.segmentSizeBytes);
+        this.segments.add(this.activeSegment);
+
+        // Codes_SRS_IOTHUBOUTBOUNDJOURNAL_21_015: [If there are more segments than the maximum size allows, the function shall move the pending records of the oldest segments into the new one and delete them; records that do not fit shall no longer be journaled.]
+        while (this.segments.size() > this.maxSegments)
+        {
+            this.compact(this.segments.getFirst(), reservedBytes);
+        }
+    }
+
+    private void compact(Segment oldest, int reservedBytes)
+    {
+        Iterator<Record> records = this.pendingRecords.values().iterator();
+        while (records.hasNext())
+        {
+            Record record = records.next();
+            if (record.segment != oldest)
+            {
+                continue;
+            }
+
+            if (this.activeSegment.remaining() - reservedBytes >= record.length)
+            {
+                this.activeSegment.copy(oldest, record);
+            }
+            else
+            {
+                this.logger.LogWarn("The journal is full, message with messageid %s is no longer journaled, method name is %s ", record.message.getMessageId(), CustomLogger.METHOD_NAME);
+                records.remove();
+                this.recordsByMessage.remove(record.message);
+            }
+        }
+
+        this.deleteSegment(oldest);
+    }
+
+    private void deleteSegment(Segment segment)
+    {
+        this.segments.remove(segment);
+        if (!segment.file.delete())
+        {
+            this.logger.LogWarn("Cannot delete journal segment %s, method name is %s ", segment.file, CustomLogger.METHOD_NAME);
+        }
+    }
+
+    private void recover() throws IOException
+    {
+        File[] files = this.directory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(SEGMENT_FILE_EXTENSION);
+            }
+        });
+        if (files == null)
+        {
+            throw new IOException("Cannot list the journal directory " + this.directory);
+        }
+        // the file names are zero-padded sequence numbers.
+        Arrays.sort(files);
+
+        for (File file : files)
+        {
+            Segment segment = Segment.open(file);
+            int position = 0;
+            while (position + HEADER_SIZE <= segment.buffer.capacity())
+            {
+                int length = segment.buffer.getInt(position);
+                if (length < 8 || length > segment.buffer.capacity() - position - HEADER_SIZE)
+                {
+                    break;
+                }
+
+                byte[] body = new byte[length];
+                ByteBuffer view = segment.buffer.duplicate();
+                view.position(position + HEADER_SIZE);
+                view.get(body);
+                if (checksum(body) != segment.buffer.getInt(position + CHECKSUM_OFFSET))
+                {
+                    this.logger.LogWarn("Journal segment %s is truncated at offset %s, method name is %s ", file, position, CustomLogger.METHOD_NAME);
+                    break;
+                }
+
+                this.recoverRecord(segment, position, body);
+                position += HEADER_SIZE + length;
+            }
+            segment.writePosition = position;
+
+            this.segments.add(segment);
+            if (segment.pendingCount == 0)
+            {
+                this.deleteSegment(segment);
+            }
+        }
+    }
+
+    private void recoverRecord(Segment segment, int position, byte[] body) throws IOException
+    {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(body));
+        long sequence = input.readLong();
+        this.nextSequence = Math.max(this.nextSequence, sequence + 1);
+
+        // a record copied by a compaction interrupted before the old segment
+        // was deleted is found twice.
+        if (segment.buffer.get(position + STATE_OFFSET) != STATE_PENDING
+                || this.pendingRecords.containsKey(sequence))
+        {
+            return;
+        }
+
+        Record record = new Record(segment, position, HEADER_SIZE + body.length, decodeMessage(input));
+        record.sequence = sequence;
+        segment.pendingCount++;
+        this.pendingRecords.put(sequence, record);
+        this.recordsByMessage.put(record.message, record);
+    }
+
+    private static String segmentFileName(long firstSequence)
+    {
+        return String.format("%020d%s", firstSequence, SEGMENT_FILE_EXTENSION);
+    }
+
+    private static int checksum(byte[] body)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encodeBody(long sequence, Message message) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + message.getBodyLength());
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeLong(sequence);
+        writeNullableString(output, message.getMessageId());
+        writeNullableString(output, message.getCorrelationId());
+        output.writeLong(message.getExpiryTime());
+        // the content encoding is flagged in the priority byte, so records
+        // of messages without one keep their original layout.
+        String contentEncoding = message.getContentEncoding();
+        output.writeByte(message.getPriority().ordinal() | (contentEncoding == null ? 0 : CONTENT_ENCODING_FLAG));
+        if (contentEncoding != null)
+        {
+            output.writeUTF(contentEncoding);
+        }
+
+        List<MessageProperty> properties = message.getPropertyView();
+        output.writeInt(properties.size());
+        for (MessageProperty property : properties)
+        {
+            output.writeUTF(property.getName());
+            output.writeUTF(property.getValue());
+        }
+
+        ByteBuffer messageBody = message.getBodyBuffer();
+        if (messageBody == null)
+        {
+            output.writeInt(-1);
+        }
+        else
+        {
+            output.writeInt(messageBody.remaining());
+            output.flush();
+            Channels.newChannel(bytes).write(messageBody);
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Message decodeMessage(DataInputStream input) throws IOException
+    {
+        String messageId = readNullableString(input);
+        String correlationId = readNullableString(input);
+        long expiryTime = input.readLong();
+        int priorityByte = input.readUnsignedByte();
+        int priority = priorityByte & ~CONTENT_ENCODING_FLAG;
+        if (priority >= MessagePriority.values().length)
+        {
+            throw new IOException("Unknown message priority " + priority + ".");
+        }
+        String contentEncoding = (priorityByte & CONTENT_ENCODING_FLAG) == 0 ? null : input.readUTF();
+
+        int propertyCount = input.readInt();
+        String[] properties = new String[2 * propertyCount];
+        for (int i = 0; i < properties.length; i++)
+        {
+            properties[i] = input.readUTF();
+        }
+
+        int bodyLength = input.readInt();
+        Message message;
+        if (bodyLength < 0)
+        {
+            message = new Message();
+        }
+        else
+        {
+            byte[] body = new byte[bodyLength];
+            input.readFully(body);
+            message = new Message(body);
+        }
+
+        message.setMessageId(messageId);
+        message.setCorrelationId(correlationId);
+        message.setAbsoluteExpiryTime(expiryTime);
+        message.setPriority(MessagePriority.values()[priority]);
+        message.setContentEncoding(contentEncoding);
+        for (int i = 0; i < properties.length; i += 2)
+        {
+            message.setProperty(properties[i], properties[i + 1]);
+        }
+        return message;
+    }
+
+    private static void writeNullableString(DataOutputStream output, String value) throws IOException
+    {
+        output.writeBoolean(value != null);
+        if (value != null)
+        {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream input) throws IOException
+    {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    /** A segment file, mapped in memory. */
+    private static final class Segment
+    {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int pendingCount;
+
+        private Segment(File file, MappedByteBuffer buffer)
+        {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        private static Segment create(File file, int sizeBytes) throws IOException
+        {
+            return new Segment(file, map(file, sizeBytes));
+        }
+
+        private static Segment open(File file) throws IOException
+        {
+            return new Segment(file, map(file, file.length()));
+        }
+
+        private static MappedByteBuffer map(File file, long sizeBytes) throws IOException
+        {
+            // the mapping stays valid once the channel is closed.
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                 FileChannel channel = raf.getChannel())
+            {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeBytes);
+            }
+        }
+
+        private int remaining()
+        {
+            return this.buffer.capacity() - this.writePosition;
+        }
+
+        private Record append(byte[] body, Message message)
+        {
+            int position = this.writePosition;
+            ByteBuffer view = this.buffer.duplicate();
+            view.position(position + HEADER_SIZE);
+            view.put(body);
+            this.buffer.putInt(position + CHECKSUM_OFFSET, checksum(body));
+            this.buffer.put(position + STATE_OFFSET, STATE_PENDING);
+            // the length is written last, so a record cut short by a crash
+            // reads as the end of the segment or fails its checksum.
+            this.buffer.putInt(position, body.length);
+
+            this.writePosition += HEADER_SIZE + body.length;
+            this.pendingCount++;
+            return new Record(this, position, HEADER_SIZE + body.length, message);
+        }
+
+        private void copy(Segment source, Record record)
+        {
+            ByteBuffer from = source.buffer.duplicate();
+            from.position(record.position);
+            from.limit(record.position + record.length);
+            ByteBuffer to = this.buffer.duplicate();
+            to.position(this.writePosition);
+            to.put(from);
+
+            source.pendingCount--;
+            record.segment = this;
+            record.position = this.writePosition;
+            this.writePosition += record.length;
+            this.pendingCount++;
+        }
+    }
+
+    /** A record not checkpointed yet. */
+    private static final class Record
+    {
+        private Segment segment;
+        private int position;
+        private final int length;
+        private final Message message;
+        private long sequence;
+
+        private Record(Segment segment, int position, int length, Message message)
+        {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+            this.message = message;
+        }
+    }
+}
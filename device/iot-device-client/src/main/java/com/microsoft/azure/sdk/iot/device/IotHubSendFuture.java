@@ -0,0 +1,244 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * The result of a message sent with {@link DeviceClient#sendEventAsync(Message)},
+ * completed with the status the IoT Hub responded with, at the time the event
+ * callback of the message would have been invoked.
+ * </p>
+ * <p>
+ * Further work can be chained with
+ * {@link #whenComplete(IotHubEventCallback, Object)}, and several futures can
+ * be combined with {@link #allOf(Collection)}. A sent message cannot be
+ * recalled, so the future cannot be cancelled.
+ * </p>
+ */
+public final class IotHubSendFuture implements Future<IotHubStatusCode>
+{
+    private final Object completionLock = new Object();
+    private IotHubStatusCode status;
+    /** The callbacks waiting for completion, with their contexts. */
+    private List<Object[]> listeners = new ArrayList<>();
+
+    /**
+     * Completes a future with the status of its message. Shared by all the
+     * futures, which are passed as the callback context.
+     */
+    static final IotHubEventCallback COMPLETING_CALLBACK = new IotHubEventCallback()
+    {
+        @Override
+        public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+        {
+            ((IotHubSendFuture) callbackContext).complete(responseStatus);
+        }
+    };
+
+    /** Futures are created by the client sending their message. */
+    IotHubSendFuture()
+    {
+    }
+
+    /**
+     * Returns a future completed once every given future is completed. Its
+     * status is the first status, in the order of {@code futures}, that is
+     * neither {@link IotHubStatusCode#OK} nor {@link IotHubStatusCode#OK_EMPTY};
+     * or {@link IotHubStatusCode#OK_EMPTY} if every message was accepted.
+     *
+     * @param futures the futures to combine.
+     *
+     * @return the combined future.
+     *
+     * @throws IllegalArgumentException if {@code futures} is {@code null}.
+     */
+    public static IotHubSendFuture allOf(Collection<IotHubSendFuture> futures)
+    {
+        // Codes_SRS_IOTHUBSENDFUTURE_21_007: [If the collection is null, the function shall throw an IllegalArgumentException.]
+        if (futures == null)
+        {
+            throw new IllegalArgumentException("The futures to combine cannot be null.");
+        }
+
+        final IotHubSendFuture combined = new IotHubSendFuture();
+        final IotHubStatusCode[] statuses = new IotHubStatusCode[futures.size()];
+        final AtomicInteger remaining = new AtomicInteger(statuses.length);
+        if (statuses.length == 0)
+        {
+            // Codes_SRS_IOTHUBSENDFUTURE_21_008: [If the collection is empty, the function shall return a future completed with OK_EMPTY.]
+            combined.complete(IotHubStatusCode.OK_EMPTY);
+            return combined;
+        }
+
+        // Codes_SRS_IOTHUBSENDFUTURE_21_009: [The function shall return a future completed once all the futures are completed, with the first status, in collection order, that is neither OK nor OK_EMPTY, or OK_EMPTY if there is none.]
+        IotHubEventCallback collector = new IotHubEventCallback()
+        {
+            @Override
+            public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+            {
+                statuses[(Integer) callbackContext] = responseStatus;
+                if (remaining.decrementAndGet() == 0)
+                {
+                    combined.complete(firstFailure(statuses));
+                }
+            }
+        };
+        int index = 0;
+        for (IotHubSendFuture future : futures)
+        {
+            future.whenComplete(collector, index++);
+        }
+
+        return combined;
+    }
+
+    /**
+     * Invokes a callback once the future is completed, on the thread that
+     * completes it; or right away, on the calling thread, if it already is.
+     *
+     * @param callback the callback to be invoked with the status.
+     * @param callbackContext a context to be passed to the callback. Can be
+     * {@code null}.
+     *
+     * @return itself, for fluent chaining.
+     *
+     * @throws IllegalArgumentException if {@code callback} is {@code null}.
+     */
+    public IotHubSendFuture whenComplete(IotHubEventCallback callback, Object callbackContext)
+    {
+        // Codes_SRS_IOTHUBSENDFUTURE_21_004: [If the callback is null, the function shall throw an IllegalArgumentException.]
+        if (callback == null)
+        {
+            throw new IllegalArgumentException("Callback cannot be null.");
+        }
+
+        IotHubStatusCode completedStatus;
+        synchronized (this.completionLock)
+        {
+            completedStatus = this.status;
+            if (completedStatus == null)
+            {
+                // Codes_SRS_IOTHUBSENDFUTURE_21_005: [If the future is not completed, the function shall invoke the callback with the status and the context once it is.]
+                this.listeners.add(new Object[] { callback, callbackContext });
+                return this;
+            }
+        }
+
+        // Codes_SRS_IOTHUBSENDFUTURE_21_006: [If the future is completed, the function shall invoke the callback with the status and the context right away.]
+        callback.execute(completedStatus, callbackContext);
+        return this;
+    }
+
+    /**
+     * Always fails, since a message handed to the transport cannot be recalled.
+     *
+     * @param mayInterruptIfRunning ignored.
+     *
+     * @return {@code false}.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        // Codes_SRS_IOTHUBSENDFUTURE_21_010: [The function shall return false without cancelling the future.]
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isDone()
+    {
+        synchronized (this.completionLock)
+        {
+            // Codes_SRS_IOTHUBSENDFUTURE_21_001: [The function shall return true if the future is completed, and false otherwise.]
+            return this.status != null;
+        }
+    }
+
+    @Override
+    public IotHubStatusCode get() throws InterruptedException
+    {
+        synchronized (this.completionLock)
+        {
+            // Codes_SRS_IOTHUBSENDFUTURE_21_002: [The function shall wait until the future is completed and return its status.]
+            while (this.status == null)
+            {
+                this.completionLock.wait();
+            }
+            return this.status;
+        }
+    }
+
+    @Override
+    public IotHubStatusCode get(long timeout, TimeUnit unit)
+            throws InterruptedException, TimeoutException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this.completionLock)
+        {
+            while (this.status == null)
+            {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                {
+                    // Codes_SRS_IOTHUBSENDFUTURE_21_003: [If the timeout expires before the future is completed, the function shall throw a TimeoutException.]
+                    throw new TimeoutException("The IoT Hub did not respond to the message in time.");
+                }
+                TimeUnit.NANOSECONDS.timedWait(this.completionLock, remaining);
+            }
+            return this.status;
+        }
+    }
+
+    /**
+     * Completes the future and invokes the callbacks waiting for it. A future
+     * is completed only once; later calls do nothing.
+     *
+     * @param completedStatus the status the IoT Hub responded with.
+     */
+    void complete(IotHubStatusCode completedStatus)
+    {
+        List<Object[]> waiting;
+        synchronized (this.completionLock)
+        {
+            if (this.status != null)
+            {
+                return;
+            }
+            this.status = completedStatus;
+            waiting = this.listeners;
+            this.listeners = null;
+            this.completionLock.notifyAll();
+        }
+
+        for (Object[] listener : waiting)
+        {
+            ((IotHubEventCallback) listener[0]).execute(completedStatus, listener[1]);
+        }
+    }
+
+    private static IotHubStatusCode firstFailure(IotHubStatusCode[] statuses)
+    {
+        for (IotHubStatusCode status : statuses)
+        {
+            if (status != IotHubStatusCode.OK && status != IotHubStatusCode.OK_EMPTY)
+            {
+                return status;
+            }
+        }
+        return IotHubStatusCode.OK_EMPTY;
+    }
+}
@@ -0,0 +1,88 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A counter the send, receive and callback threads of a client can all add to
+ * without contending on a single memory location. Each thread adds to one of
+ * several stripes, picked from its ID, and the value of the counter is the sum
+ * of the stripes.
+ * </p>
+ * <p>
+ * Adding never blocks nor retries. A sum taken while other threads add is not
+ * a snapshot of an instant, but it never misses an addition that completed
+ * before the sum started.
+ * </p>
+ */
+public final class IotHubStripedCounter
+{
+    /** The longs from one stripe to the next, so that each stripe has a cache line of its own. */
+    private static final int STRIPE_WIDTH = 8;
+    private static final int MAX_STRIPES = 64;
+
+    private final AtomicLongArray cells;
+    private final int stripeMask;
+
+    /**
+     * Constructor. The counter has one stripe per available processor,
+     * rounded up to a power of two.
+     */
+    public IotHubStripedCounter()
+    {
+        // Codes_SRS_IOTHUBSTRIPEDCOUNTER_21_001: [The constructor shall create a counter of value 0, with as many stripes as available processors, rounded up to a power of two and capped at 64.]
+        int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors && stripes < MAX_STRIPES)
+        {
+            stripes <<= 1;
+        }
+        this.cells = new AtomicLongArray(stripes * STRIPE_WIDTH);
+        this.stripeMask = stripes - 1;
+    }
+
+    /**
+     * Adds to the counter.
+     *
+     * @param delta the value to add. Can be negative.
+     */
+    public void add(long delta)
+    {
+        // Codes_SRS_IOTHUBSTRIPEDCOUNTER_21_002: [The function shall add the value to the stripe of the calling thread.]
+        this.cells.getAndAdd(this.stripeOf(Thread.currentThread()), delta);
+    }
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment()
+    {
+        this.add(1);
+    }
+
+    /**
+     * Getter for the value of the counter.
+     *
+     * @return the sum of everything added to the counter.
+     */
+    public long sum()
+    {
+        // Codes_SRS_IOTHUBSTRIPEDCOUNTER_21_003: [The function shall return the sum of all stripes.]
+        long sum = 0;
+        for (int i = 0; i < this.cells.length(); i += STRIPE_WIDTH)
+        {
+            sum += this.cells.get(i);
+        }
+        return sum;
+    }
+
+    private int stripeOf(Thread thread)
+    {
+        // thread IDs are sequential, so they are spread before being masked.
+        long hash = thread.getId() * 0x9E3779B97F4A7C15L;
+        return ((int) (hash >>> 32) & this.stripeMask) * STRIPE_WIDTH;
+    }
+}
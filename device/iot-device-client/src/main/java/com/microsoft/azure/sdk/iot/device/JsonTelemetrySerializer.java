@@ -0,0 +1,214 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * <p>
+ * A {@link TelemetrySerializer} writing each event as a JSON object, with
+ * its fields in the order they are written, encoded in UTF-8. The numbers
+ * are written as Gson writes {@code long} and {@code double} fields, so
+ * {@code 10.0} for a {@code double} of 10.
+ * </p>
+ * <p>
+ * The fields are written straight into a buffer the calling thread reuses
+ * from one event to the next, so serializing an event allocates its body,
+ * and nothing else unless it has non-integral {@code double} fields.
+ * This is the serializer of a client unless set otherwise.
+ * </p>
+ */
+public final class JsonTelemetrySerializer implements TelemetrySerializer
+{
+    /** The serializer shared by the clients that are not given one. */
+    public static final JsonTelemetrySerializer INSTANCE = new JsonTelemetrySerializer();
+
+    /** Below this magnitude, {@link Double#toString(double)} does not use the computerized scientific notation. */
+    private static final double PLAIN_DOUBLE_LIMIT = 1e7;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    /** Valid in JSON strings but not in JavaScript ones, so escaped as Gson does. */
+    private static final char LINE_SEPARATOR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+    private final ThreadLocal<JsonWriter> writers = new ThreadLocal<JsonWriter>()
+    {
+        @Override
+        protected JsonWriter initialValue()
+        {
+            return new JsonWriter();
+        }
+    };
+
+    /**
+     * Serializes an event as a JSON object.
+     *
+     * @param event the event to be serialized.
+     *
+     * @return the JSON object, in UTF-8.
+     *
+     * @throws IllegalArgumentException if {@code event} is {@code null}, or
+     * has a field with a {@code null} name or a {@code double} that is not
+     * finite.
+     */
+    @Override
+    public byte[] serialize(TelemetryEvent event)
+    {
+        // Codes_SRS_JSONTELEMETRYSERIALIZER_21_001: [If the event is null, the function shall throw an IllegalArgumentException.]
+        if (event == null)
+        {
+            throw new IllegalArgumentException("The telemetry event cannot be 'null'.");
+        }
+
+        // Codes_SRS_JSONTELEMETRYSERIALIZER_21_002: [The function shall write the event as a JSON object in UTF-8, with the fields in the order the event writes them, into the buffer of the calling thread, and return a copy of the exact length of the object.]
+        JsonWriter writer = this.writers.get();
+        if (writer.isBusy())
+        {
+            writer = new JsonWriter();
+        }
+        return writer.write(event);
+    }
+
+    private static final class JsonWriter extends TelemetryBufferWriter
+    {
+        private boolean first;
+
+        @Override
+        void begin()
+        {
+            this.first = true;
+            this.writeByte('{');
+        }
+
+        @Override
+        void end()
+        {
+            this.writeByte('}');
+        }
+
+        @Override
+        public TelemetryWriter field(String name, String value)
+        {
+            // Codes_SRS_JSONTELEMETRYSERIALIZER_21_003: [The writer shall skip a string field with a null value, and write the other strings escaped as JSON strings.]
+            checkName(name);
+            if (value != null)
+            {
+                this.writeName(name);
+                this.writeString(value);
+            }
+            return this;
+        }
+
+        @Override
+        public TelemetryWriter field(String name, long value)
+        {
+            // Codes_SRS_JSONTELEMETRYSERIALIZER_21_004: [The writer shall write the integral fields in decimal.]
+            checkName(name);
+            this.writeName(name);
+            this.writeDecimal(value);
+            return this;
+        }
+
+        @Override
+        public TelemetryWriter field(String name, double value)
+        {
+            // Codes_SRS_JSONTELEMETRYSERIALIZER_21_005: [If a floating point value is NaN or infinite, the writer shall throw an IllegalArgumentException.]
+            checkName(name);
+            if (Double.isNaN(value) || Double.isInfinite(value))
+            {
+                throw new IllegalArgumentException("JSON cannot represent the value " + value + " of the field " + name + ".");
+            }
+
+            // Codes_SRS_JSONTELEMETRYSERIALIZER_21_006: [The writer shall write the floating point fields as Double.toString does, without creating a string for the integral values.]
+            this.writeName(name);
+            if (value == Math.rint(value) && Math.abs(value) < PLAIN_DOUBLE_LIMIT
+                    && Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(-0.0))
+            {
+                this.writeDecimal((long) value);
+                this.writeAscii(".0");
+            }
+            else
+            {
+                this.writeAscii(Double.toString(value));
+            }
+            return this;
+        }
+
+        @Override
+        public TelemetryWriter field(String name, boolean value)
+        {
+            // Codes_SRS_JSONTELEMETRYSERIALIZER_21_007: [The writer shall write the boolean fields as true or false.]
+            checkName(name);
+            this.writeName(name);
+            this.writeAscii(value ? "true" : "false");
+            return this;
+        }
+
+        private void writeName(String name)
+        {
+            if (this.first)
+            {
+                this.first = false;
+            }
+            else
+            {
+                this.writeByte(',');
+            }
+            this.writeString(name);
+            this.writeByte(':');
+        }
+
+        private void writeString(String s)
+        {
+            this.writeByte('"');
+            int count = s.length();
+            for (int i = 0; i < count; )
+            {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\')
+                {
+                    this.writeByte('\\');
+                    this.writeByte(c);
+                    i++;
+                }
+                else if (c < 0x20 || c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR)
+                {
+                    this.writeEscaped(c);
+                    i++;
+                }
+                else
+                {
+                    i += this.writeUtf8Char(s, i);
+                }
+            }
+            this.writeByte('"');
+        }
+
+        private void writeEscaped(char c)
+        {
+            switch (c)
+            {
+                case '\n':
+                    this.writeAscii("\\n");
+                    break;
+                case '\r':
+                    this.writeAscii("\\r");
+                    break;
+                case '\t':
+                    this.writeAscii("\\t");
+                    break;
+                case '\b':
+                    this.writeAscii("\\b");
+                    break;
+                case '\f':
+                    this.writeAscii("\\f");
+                    break;
+                default:
+                    this.writeAscii("\\u");
+                    this.writeByte(HEX_DIGITS[(c >> 12) & 0xf]);
+                    this.writeByte(HEX_DIGITS[(c >> 8) & 0xf]);
+                    this.writeByte(HEX_DIGITS[(c >> 4) & 0xf]);
+                    this.writeByte(HEX_DIGITS[c & 0xf]);
+                    break;
+            }
+        }
+    }
+}
@@ -5,6 +5,9 @@ package com.microsoft.azure.sdk.iot.device;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -23,8 +26,10 @@ public class Message
      * Format: A case-sensitive string (up to 128 char long) of ASCII 7-bit alphanumeric chars
      * plus {'-', ':', '/', '\', '.', '+', '%', '_', '#', '*', '?', '!', '(', ')', ',', '=', '@', ';', '$', '''}.
      * Non-alphanumeric characters are from URN RFC.
+     * Generated the first time it is read, unless set before.
      */
     private String messageId;
+    private boolean messageIdAssigned;
 
     /// <summary>
     /// Destination of the message
@@ -37,14 +42,15 @@ public class Message
     private long expiryTime;
 
     /// <summary>
-    /// Used by receiver to Abandon, Reject or Complete the message
-    /// </summary>
-    private String lockToken;
-
-    /// <summary>
-    /// Used in message responses and feedback
+    /// Used in message responses and feedback. Generated the first time it is read, unless set before.
     /// </summary>
     private String correlationId;
+    private boolean correlationIdAssigned;
+
+    /**
+     * Generates the message and correlation IDs not set by the application.
+     */
+    private MessageIdGenerator idGenerator;
 
     /// <summary>
     /// [Required in feedback messages] Used to specify the entity creating the message.
@@ -103,9 +109,14 @@ public class Message
     private String feedbackDeviceGenerationId;
 
     /**
-     * User-defined properties.
+     * User-defined properties, by case-insensitive name.
      */
-    private ArrayList<MessageProperty> properties;
+    private MessagePropertyTable properties;
+
+    /**
+     * [Optional] The lane the message waits in before being sent. Default: NORMAL.
+     */
+    private MessagePriority priority;
 
     /// <summary>
     /// The message body
@@ -113,10 +124,44 @@ public class Message
     private byte[] body;
 
     /**
-     * Stream that will provide the bytes for the body of the
+     * Stream that will provide the bytes for the body of the message, until
+     * they are read into {@link #body} or taken by a transport.
+     */
+    private InputStream bodyStream;
+
+    /** Whether a transport took the body stream, so the body can no longer be read. */
+    private boolean bodyStreamTaken;
+
+    /**
+     * The number of bytes in the body, including the ones still in {@link #bodyStream}.
      */
-    private ByteArrayInputStream bodyStream;
-    private CustomLogger logger;
+    private int bodyLength;
+
+    /**
+     * [Optional] The encoding of the body, such as gzip, sent in the
+     * content-encoding property. Default: none.
+     */
+    private String contentEncoding;
+
+    /**
+     * [Optional] The codec encoding the body, instead of the codec of the
+     * client. Default: the codec of the client.
+     */
+    private MessageCodec codec;
+
+    /** The pool the message was obtained from, or null if it is not pooled. */
+    private IotHubMessagePool pool;
+
+    /** Whether the pooled message is handed out, rather than idle in its pool. */
+    private boolean inUse;
+
+    /** The callback of the pending send of a pooled message, and its context. */
+    private IotHubEventCallback sendCallback;
+    private Object sendCallbackContext;
+
+    /** The ID generator of the messages not sent by a client yet. */
+    private static final MessageIdGenerator DEFAULT_ID_GENERATOR = new SequentialMessageIdGenerator();
+    private static final CustomLogger logger = new CustomLogger(Message.class);
 
     // ----- Constructors -----
 
@@ -128,16 +173,50 @@ public class Message
     }
 
     /**
-     * Constructor.
+     * Constructor. The body is made of the bytes still available in the
+     * stream, which are read when the message is sent.
      * @param stream A stream to provide the body of the new Message instance.
      */
     public Message(ByteArrayInputStream stream)
     {
+        this(stream, stream == null ? 0 : stream.available());
+    }
+
+    /**
+     * Constructor, for a body produced by a stream. The message takes
+     * ownership of the stream, which is not read before the message is sent.
+     * The HTTPS transport sends such a message on its own and copies the
+     * stream into the request through a single pooled buffer, so the body is
+     * never held in memory; it can then not be sent again. The AMQP and MQTT
+     * transports read the body once into an array of its exact length, which
+     * they hand to the protocol library without copying it, and keep for the
+     * retries.
+     * @param stream A stream to provide the body of the new Message instance.
+     * @param length The number of bytes of the body to be read from the stream.
+     * @exception IllegalArgumentException If the stream is null or the length is negative.
+     */
+    public Message(InputStream stream, int length)
+    {
+        // Codes_SRS_MESSAGE_21_016: [If the stream is null or the length is negative, the constructor shall throw an IllegalArgumentException.]
+        if (stream == null)
+        {
+            throw new IllegalArgumentException("Message body stream cannot be 'null'.");
+        }
+        if (length < 0)
+        {
+            throw new IllegalArgumentException("Message body length cannot be negative.");
+        }
+
         initialize();
+
+        // Codes_SRS_MESSAGE_21_017: [The constructor shall save the stream and the length of the body without reading the stream.]
+        this.bodyStream = stream;
+        this.bodyLength = length;
     }
 
     /**
-     * Constructor.
+     * Constructor. The message takes ownership of the body array, which is
+     * not copied, so the caller shall not modify it afterwards.
      * @param body The body of the new Message instance.
      */
     public Message(byte[] body) {
@@ -149,7 +228,9 @@ public class Message
         initialize();
 
         // Codes_SRS_MESSAGE_11_024: [The constructor shall save the message body.]
+        // Codes_SRS_MESSAGE_21_006: [The constructor shall take ownership of the body array without copying it.]
         this.body = body;
+        this.bodyLength = body.length;
     }
 
     /**
@@ -164,14 +245,20 @@ public class Message
         initialize();
 
         this.body = body.getBytes(DEFAULT_IOTHUB_MESSAGE_CHARSET);
+        this.bodyLength = this.body.length;
     }
 
 
     // ----- Public Methods -----
 
-    /// <summary>
-    /// The stream content of the body.
-    /// </summary>
+    /**
+     * The stream content of the body. Not supported.
+     * @return null.
+     * @deprecated The body is read with {@link #getBytes()} or
+     * {@link #getBodyBuffer()}, and a body given to
+     * {@link #Message(InputStream, int)} is streamed by the transports.
+     */
+    @Deprecated
     public ByteArrayOutputStream getBodyStream() {
         return null;
     }
@@ -185,13 +272,147 @@ public class Message
         // Codes_SRS_MESSAGE_11_002: [The function shall return the message body.]
         byte[] bodyClone = null;
 
-        if (this.body != null) {
-            bodyClone = Arrays.copyOf(this.body, this.body.length);
+        byte[] body = this.readBody();
+        if (body != null) {
+            bodyClone = Arrays.copyOf(body, body.length);
         }
 
         return bodyClone;
     }
 
+    /**
+     * The size of the body, without copying it.
+     * @return The number of bytes in this Message body, or 0 if it has none.
+     */
+    public int getBodyLength()
+    {
+        // Codes_SRS_MESSAGE_21_001: [The function shall return the number of bytes in the message body, or 0 if the body is null.]
+        // Codes_SRS_MESSAGE_21_018: [The function shall not read the body from its stream.]
+        return this.bodyLength;
+    }
+
+    /**
+     * A read-only view of the body, without copying it. Transports and
+     * loggers shall read the body through this view rather than through
+     * {@link #getBytes()}.
+     * @return A read-only buffer over this Message body, positioned at its
+     * first byte, or null if it has no body.
+     */
+    public ByteBuffer getBodyBuffer()
+    {
+        // Codes_SRS_MESSAGE_21_007: [The function shall return a read-only view of the message body, sharing its content, or null if the body is null.]
+        byte[] body = this.readBody();
+        return body == null ? null : ByteBuffer.wrap(body).asReadOnlyBuffer();
+    }
+
+    /**
+     * The body itself, without copying it, for the transports that hand it
+     * to a protocol library taking an array. Reads the body from its stream
+     * if it is still in it. The array shall not be modified.
+     * @return The body, of {@link #getBodyLength()} bytes, or null if the
+     * message has none.
+     * @exception IllegalStateException If the body stream was taken by
+     * {@link #takeBodyStream()}, or could not be read.
+     */
+    public byte[] getBodyArray()
+    {
+        // Codes_SRS_MESSAGE_21_025: [The function shall return the message body without copying it, or null if the body is null.]
+        return this.readBody();
+    }
+
+    /**
+     * Whether the body is still in the stream given to the constructor, so
+     * that a transport can take the stream with {@link #takeBodyStream()}.
+     * @return true if the body has not been read from its stream yet.
+     */
+    public synchronized boolean hasBodyStream()
+    {
+        // Codes_SRS_MESSAGE_21_026: [The function shall return true if the body is still in its stream, and false otherwise.]
+        return this.bodyStream != null;
+    }
+
+    /**
+     * Hands the body stream over to a transport, which copies the
+     * {@link #getBodyLength()} bytes of the body from it while sending the
+     * message, and then closes it. The body can then no longer be read, so
+     * the message cannot be sent again.
+     * @return The body stream, or null if the body is not in a stream.
+     */
+    public synchronized InputStream takeBodyStream()
+    {
+        // Codes_SRS_MESSAGE_21_027: [If the body is still in its stream, the function shall return the stream and release it, after which reading the body shall throw an IllegalStateException.]
+        // Codes_SRS_MESSAGE_21_028: [Otherwise, the function shall return null.]
+        InputStream stream = this.bodyStream;
+        if (stream != null)
+        {
+            this.bodyStream = null;
+            this.bodyStreamTaken = true;
+        }
+        return stream;
+    }
+
+    /**
+     * Reads the body from its stream, the first time the body is needed.
+     * @return The body, or null if the message has none.
+     * @exception IllegalStateException If the stream was taken by a
+     * transport, could not be read, or ended before the length given to the
+     * constructor.
+     */
+    private synchronized byte[] readBody()
+    {
+        if (this.bodyStreamTaken)
+        {
+            throw new IllegalStateException("Message body was streamed to the IoT Hub and cannot be read again.");
+        }
+        if (this.bodyStream != null)
+        {
+            // Codes_SRS_MESSAGE_21_019: [The first time the body is needed, the message shall read it from its stream into an array of the length of the body, and close the stream.]
+            byte[] streamedBody = new byte[this.bodyLength];
+            try
+            {
+                int offset = 0;
+                while (offset < streamedBody.length)
+                {
+                    int read = this.bodyStream.read(streamedBody, offset, streamedBody.length - offset);
+                    // Codes_SRS_MESSAGE_21_020: [If the stream cannot be read or ends before the length of the body, the message shall throw an IllegalStateException.]
+                    if (read < 0)
+                    {
+                        throw new IllegalStateException("Message body stream ended after " + offset + " of " + streamedBody.length + " bytes.");
+                    }
+                    offset += read;
+                }
+                this.body = streamedBody;
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("Message body stream could not be read.", e);
+            }
+            finally
+            {
+                closeBodyStream();
+                if (this.body == null)
+                {
+                    // the body is lost, so the message is left without one.
+                    this.bodyLength = 0;
+                }
+            }
+        }
+        return this.body;
+    }
+
+    private void closeBodyStream()
+    {
+        try
+        {
+            this.bodyStream.close();
+        }
+        catch (IOException e)
+        {
+            logger.LogInfo("Message body stream could not be closed, method name is %s ", CustomLogger.METHOD_NAME);
+        }
+        this.bodyStream = null;
+    }
+
     /**
      * Gets the values of user-defined properties of this Message.
      * @param name Name of the user-defined property to search for.
@@ -199,14 +420,7 @@ public class Message
      */
     public String getProperty(String name) {
 
-        MessageProperty messageProperty = null;
-
-        for (MessageProperty currentMessageProperty: this.properties) {
-            if (currentMessageProperty.hasSameName(name)) {
-                messageProperty = currentMessageProperty;
-                break;
-            }
-        }
+        MessageProperty messageProperty = this.properties.get(name);
 
         // Codes_SRS_MESSAGE_11_034: [If no value associated with the property name is found, the function shall return null.]
         if (messageProperty == null) {
@@ -235,21 +449,10 @@ public class Message
         }
 
         // Codes_SRS_MESSAGE_11_026: [The function shall set the message property to the given value.]
-        MessageProperty messageProperty = null;
-
-        for (MessageProperty currentMessageProperty: this.properties) {
-            if (currentMessageProperty.hasSameName(name)) {
-                messageProperty = currentMessageProperty;
-                break;
-            }
-        }
-
-        if (messageProperty != null) {
-            this.properties.remove(messageProperty);
-        }
+        MessageProperty messageProperty = new MessageProperty(name, value);
 
-        logger.LogInfo("Setting message property with name=%s and value=%s, method name is %s ", name, value, logger.getMethodName());
-        this.properties.add(new MessageProperty(name, value));
+        logger.LogInfo("Setting message property with name=%s and value=%s, method name is %s ", name, value, CustomLogger.METHOD_NAME);
+        this.properties.put(name, messageProperty);
     }
 
     /**
@@ -259,7 +462,18 @@ public class Message
      */
     public MessageProperty[] getProperties() {
         // Codes_SRS_MESSAGE_11_033: [The function shall return a copy of the message properties.]
-        return properties.toArray(new MessageProperty[this.properties.size()]);
+        return this.properties.toArray();
+    }
+
+    /**
+     * Returns an unmodifiable view of the message properties, shared until
+     * they change. Unlike {@link #getProperties()}, it does not copy them.
+     *
+     * @return the message properties, in the order they were last set.
+     */
+    public List<MessageProperty> getPropertyView() {
+        // Codes_SRS_MESSAGE_21_015: [The function shall return an unmodifiable view of the message properties, in the order they were last set, which is the same object until they change.]
+        return this.properties.view();
     }
 
     // ----- Private Methods -----
@@ -268,34 +482,108 @@ public class Message
      * Internal initializer method for a new Message instance.
      */
     private void initialize() {
-        this.lockToken = UUID.randomUUID().toString();
-        this.messageId = generateId(127); // 1 in 2.03035346985252E-242 chances of collision. Might be safe enough...
-        this.correlationId = generateId(127);
+        // Codes_SRS_MESSAGE_21_008: [The constructor shall not generate the message and correlation IDs.]
+        this.idGenerator = DEFAULT_ID_GENERATOR;
         this.feedbackStatusCode = FeedbackStatusCodeEnum.none;
         this.ack = FeedbackStatusCodeEnum.none;
-        this.properties = new ArrayList<MessageProperty>();
-        this.logger = new CustomLogger(this.getClass());
+        this.properties = new MessagePropertyTable();
+        this.priority = MessagePriority.NORMAL;
     }
 
     /**
-     * Generates a random ID string.
-     * @param length Length of the string to be generated.
-     * @return A string containing valid ID chars.
+     * Binds the message to the pool it is obtained from.
+     * @param pool The pool.
      */
-    private String generateId(int length)
+    void setPool(IotHubMessagePool pool)
     {
-        String validCharacters = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ-:.+%_#*?!(),=@;$'";
+        this.pool = pool;
+    }
+
+    IotHubMessagePool getPool()
+    {
+        return this.pool;
+    }
+
+    /**
+     * Whether the message was obtained from a pool, and is to be released to
+     * it once sent.
+     * @return true if the message is pooled, false otherwise.
+     */
+    boolean isPooled()
+    {
+        return this.pool != null;
+    }
+
+    boolean isInUse()
+    {
+        return this.inUse;
+    }
+
+    void setInUse(boolean inUse)
+    {
+        this.inUse = inUse;
+    }
 
-        char[] charSequence = new char[length];
+    /**
+     * Saves the callback of the send of a pooled message, which is invoked
+     * before the message is released.
+     * @param callback The callback, possibly null.
+     * @param callbackContext The context of the callback.
+     */
+    void setSendCallback(IotHubEventCallback callback, Object callbackContext)
+    {
+        this.sendCallback = callback;
+        this.sendCallbackContext = callbackContext;
+    }
 
-        Random random = new Random();
+    IotHubEventCallback getSendCallback()
+    {
+        return this.sendCallback;
+    }
+
+    Object getSendCallbackContext()
+    {
+        return this.sendCallbackContext;
+    }
 
-        for (int i = 0; i < length; i++)
+    /**
+     * Resets the message to the state of a message just built with the given
+     * body, keeping its property table and its pool.
+     * @param body The new body, or null to drop the body.
+     */
+    synchronized void recycle(byte[] body)
+    {
+        this.messageId = null;
+        this.messageIdAssigned = false;
+        this.to = null;
+        this.expiryTime = 0;
+        this.correlationId = null;
+        this.correlationIdAssigned = false;
+        this.idGenerator = DEFAULT_ID_GENERATOR;
+        this.userId = null;
+        this.ack = FeedbackStatusCodeEnum.none;
+        this.httpBatchSerializeAsString = null;
+        this.httpBatchEncoding = null;
+        this.connectionDeviceId = null;
+        this.connectionDeviceGenerationId = null;
+        this.connectionAuthenticationMethod = null;
+        this.feedbackStatusCode = FeedbackStatusCodeEnum.none;
+        this.feedbackDescription = null;
+        this.feedbackDeviceId = null;
+        this.feedbackDeviceGenerationId = null;
+        this.properties.clear();
+        this.priority = MessagePriority.NORMAL;
+        this.contentEncoding = null;
+        this.codec = null;
+        if (this.bodyStream != null)
         {
-            charSequence[i] = validCharacters.charAt(random.nextInt(validCharacters.length()));
+            closeBodyStream();
         }
-
-        return new String(charSequence);
+        this.bodyStreamTaken = false;
+        this.body = body;
+        this.bodyLength = body == null ? 0 : body.length;
+        this.sendCallback = null;
+        this.sendCallbackContext = null;
     }
 
     /**
@@ -317,7 +605,7 @@ public class Message
             long currentTime = System.currentTimeMillis();
             if (currentTime > expiryTime)
             {
-                logger.LogWarn("The message with messageid %s expired on %s, method name is %s ", this.getMessageId(), new Date(), logger.getMethodName());
+                logger.LogWarn("The message with messageid %s expired on %s, method name is %s ", this.messageIdArgument(), new Date(currentTime), CustomLogger.METHOD_NAME);
                 messageExpired = true;
             }
             else
@@ -330,39 +618,165 @@ public class Message
     }
 
     /**
-     * Getter for the messageId property
+     * Getter for the messageId property. Unless set before, the ID is
+     * generated by the first call.
      * @return The property value
      */
-    public String getMessageId()
+    public synchronized String getMessageId()
     {
-        return messageId;
+        // Codes_SRS_MESSAGE_21_009: [If the message ID was neither set nor read before, the function shall generate it with the ID generator of the message.]
+        if (!this.messageIdAssigned)
+        {
+            this.messageId = this.idGenerator.generateId();
+            this.messageIdAssigned = true;
+        }
+
+        // Codes_SRS_MESSAGE_21_010: [The function shall return the message ID.]
+        return this.messageId;
     }
 
     /**
      * Setter for the messageId property
      * @param messageId The string containing the property value
      */
-    public void setMessageId(String messageId)
+    public synchronized void setMessageId(String messageId)
     {
+        // Codes_SRS_MESSAGE_21_011: [The function shall set the message ID, which is then no longer generated.]
         this.messageId = messageId;
+        this.messageIdAssigned = true;
     }
 
     /**
-     * Getter for the correlationId property
+     * Getter for the correlationId property. Unless set before, the ID is
+     * generated by the first call.
      * @return The property value
      */
-    public String getCorrelationId()
+    public synchronized String getCorrelationId()
     {
-        return correlationId;
+        // Codes_SRS_MESSAGE_21_012: [If the correlation ID was neither set nor read before, the function shall generate it with the ID generator of the message.]
+        if (!this.correlationIdAssigned)
+        {
+            this.correlationId = this.idGenerator.generateId();
+            this.correlationIdAssigned = true;
+        }
+
+        // Codes_SRS_MESSAGE_21_013: [The function shall return the correlation ID.]
+        return this.correlationId;
     }
 
     /**
      * Setter for the correlationId property
      * @param correlationId The string containing the property value
      */
-    public void setCorrelationId(String correlationId)
+    public synchronized void setCorrelationId(String correlationId)
     {
+        // Codes_SRS_MESSAGE_21_014: [The function shall set the correlation ID, which is then no longer generated.]
         this.correlationId = correlationId;
+        this.correlationIdAssigned = true;
+    }
+
+    /**
+     * Sets the generator of the IDs not read yet. Used by the client sending
+     * the message.
+     * @param idGenerator The generator.
+     */
+    synchronized void setIdGenerator(MessageIdGenerator idGenerator)
+    {
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Tells whether the message or correlation ID was set or read, so the
+     * application may rely on it.
+     * @return true if either ID was given out.
+     */
+    synchronized boolean hasAssignedIds()
+    {
+        return this.messageIdAssigned || this.correlationIdAssigned;
+    }
+
+    /**
+     * Getter for the encoding of the body, sent in the content-encoding
+     * property.
+     * @return The content encoding, or null if the body is not encoded.
+     */
+    public String getContentEncoding()
+    {
+        // Codes_SRS_MESSAGE_21_021: [The function shall return the content encoding of the message, or null if it has none.]
+        return this.contentEncoding;
+    }
+
+    /**
+     * Setter for the encoding of a body the application encoded itself. A
+     * message with a content encoding is not encoded again by the client.
+     * @param contentEncoding The content encoding, such as gzip, or null if
+     * the body is not encoded.
+     */
+    public void setContentEncoding(String contentEncoding)
+    {
+        // Codes_SRS_MESSAGE_21_022: [The function shall set the content encoding of the message.]
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * Getter for the codec of the message.
+     * @return The codec, or null if the codec of the client applies.
+     */
+    public MessageCodec getCodec()
+    {
+        // Codes_SRS_MESSAGE_21_023: [The function shall return the codec of the message, or null if it has none.]
+        return this.codec;
+    }
+
+    /**
+     * Setter for the codec encoding the body of this message, instead of the
+     * codec of the client. The body is still only encoded if the client has
+     * a codec stage, and the body is long enough for it.
+     * @param codec The codec, or null for the codec of the client.
+     */
+    public void setCodec(MessageCodec codec)
+    {
+        // Codes_SRS_MESSAGE_21_024: [The function shall set the codec of the message.]
+        this.codec = codec;
+    }
+
+    /**
+     * Replaces the body by its encoding.
+     * @param encodedBody The encoded body, which the message takes ownership of.
+     * @param contentEncoding The encoding of the body.
+     */
+    synchronized void setEncodedBody(byte[] encodedBody, String contentEncoding)
+    {
+        this.body = encodedBody;
+        this.bodyLength = encodedBody.length;
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * Getter for the priority property
+     * @return The lane the message waits in before being sent.
+     */
+    public MessagePriority getPriority()
+    {
+        // Codes_SRS_MESSAGE_21_002: [The function shall return the message priority, which is NORMAL unless set otherwise.]
+        return this.priority;
+    }
+
+    /**
+     * Setter for the priority property
+     * @param priority The lane the message waits in before being sent.
+     * @exception IllegalArgumentException If the priority is null.
+     */
+    public void setPriority(MessagePriority priority)
+    {
+        // Codes_SRS_MESSAGE_21_003: [If the priority is null, the function shall throw an IllegalArgumentException.]
+        if (priority == null)
+        {
+            throw new IllegalArgumentException("Message priority cannot be 'null'.");
+        }
+
+        // Codes_SRS_MESSAGE_21_004: [The function shall set the message priority.]
+        this.priority = priority;
     }
 
     /**
@@ -373,6 +787,42 @@ public class Message
     {
         long currentTime = System.currentTimeMillis();
         this.expiryTime = currentTime + timeOut;
-        logger.LogInfo("The message with messageid %s has expiry time as %s milliseconds and the message will expire on %s, method name is %s ", this.getMessageId(), timeOut, new Date(this.expiryTime), logger.getMethodName());
+        logger.LogInfo("The message with messageid %s has expiry time as %s milliseconds and the message will expire on %s, method name is %s ", this.messageIdArgument(), timeOut, new Date(this.expiryTime), CustomLogger.METHOD_NAME);
+    }
+
+    /**
+     * The message ID as a log parameter, so that logging does not generate it
+     * unless the message is logged.
+     * @return The log parameter.
+     */
+    CustomLogger.LazyArgument messageIdArgument()
+    {
+        return new CustomLogger.LazyArgument()
+        {
+            @Override
+            protected Object evaluate()
+            {
+                return getMessageId();
+            }
+        };
+    }
+
+    /**
+     * Getter for the expiryTime property
+     * @return The time the message expires, in milliseconds since the epoch, or 0 if it never expires.
+     */
+    public long getExpiryTime()
+    {
+        // Codes_SRS_MESSAGE_21_005: [The function shall return the time the message expires, in milliseconds since the epoch, or 0 if it never expires.]
+        return this.expiryTime;
+    }
+
+    /**
+     * Setter for the expiryTime property, as a point in time rather than a time out
+     * @param expiryTime The time the message expires, in milliseconds since the epoch, or 0 if it never expires.
+     */
+    void setAbsoluteExpiryTime(long expiryTime)
+    {
+        this.expiryTime = expiryTime;
     }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the bodies of the {@link Message}s sent through an
+ * {@link IotHubCodecStage}, typically to compress them. The IoT Hub
+ * receives the encoding in the content-encoding property of the message.
+ * Implementations shall be thread-safe.
+ *
+ * @see DeflateMessageCodec
+ */
+public interface MessageCodec
+{
+    /**
+     * Getter for the content encoding of the bodies encoded by the codec.
+     *
+     * @return the content encoding, such as {@code gzip}.
+     */
+    String getContentEncoding();
+
+    /**
+     * Encodes a body.
+     *
+     * @param body the body to be encoded, which is read up to its limit.
+     *
+     * @return the encoded body, in an array of its exact length.
+     */
+    byte[] encode(ByteBuffer body);
+}
@@ -0,0 +1,23 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * Generates the message and correlation IDs of the {@link Message}s whose
+ * IDs are not set by the application. A message only asks for an ID the
+ * first time it is read, so IDs that are never read are never generated.
+ * Implementations shall be thread-safe.
+ *
+ * @see SequentialMessageIdGenerator
+ */
+public interface MessageIdGenerator
+{
+    /**
+     * Generates a new ID.
+     *
+     * @return an ID of at most 128 ASCII 7-bit alphanumeric characters plus
+     * {'-', ':', '.', '+', '%', '_', '#', '*', '?', '!', '(', ')', ',', '=', '@', ';', '$', '''}.
+     */
+    String generateId();
+}
@@ -0,0 +1,20 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * The lane a {@link Message} waits in before being sent to the IoT Hub.
+ * Higher lanes are drained more often, so that a high priority message is
+ * not stuck behind a backlog of lower priority ones; lower lanes are still
+ * drained, only less often.
+ */
+public enum MessagePriority
+{
+    /** Critical messages, such as alarms. */
+    HIGH,
+    /** The default priority. */
+    NORMAL,
+    /** Bulk messages, such as periodic telemetry. */
+    LOW
+}
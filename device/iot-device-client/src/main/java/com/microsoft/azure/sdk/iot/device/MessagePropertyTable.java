@@ -0,0 +1,228 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * The properties of a {@link Message}, indexed by their case-insensitive
+ * name in an open-addressing table, so that finding a property does not
+ * scan the others.
+ * </p>
+ * <p>
+ * The properties are kept in the order they were last set. The table hands
+ * out an unmodifiable view of them that is shared until the next change, so
+ * reading the properties of a message that no longer changes does not copy
+ * them. The table is not thread-safe.
+ * </p>
+ */
+final class MessagePropertyTable
+{
+    private static final int INITIAL_CAPACITY = 8;
+    private static final String[] NO_NAMES = new String[0];
+    private static final MessageProperty[] NO_PROPERTIES = new MessageProperty[0];
+
+    /** The names the properties were set with, in order. */
+    private String[] names = NO_NAMES;
+    /** The properties, in order. */
+    private MessageProperty[] properties = NO_PROPERTIES;
+    private int size;
+
+    /**
+     * The positions of the properties plus one, by name hash; 0 marks a free
+     * slot. Twice as long as the properties, so at most half full.
+     */
+    private int[] slots;
+
+    /** The properties handed out since the last change, or null. */
+    private List<MessageProperty> view;
+
+    /**
+     * Returns the property with the given name, compared in a
+     * case-insensitive manner.
+     *
+     * @param name the property name.
+     *
+     * @return the property, or {@code null} if there is none.
+     */
+    MessageProperty get(String name)
+    {
+        int position = this.find(name);
+        return position < 0 ? null : this.properties[position];
+    }
+
+    /**
+     * Sets a property, replacing the property with the same case-insensitive
+     * name, if any. The property moves after the others, so replacing it
+     * shifts the properties set after it, but allocates nothing.
+     *
+     * @param name the name the property is set with.
+     * @param property the property.
+     */
+    void put(String name, MessageProperty property)
+    {
+        int slot = this.findSlot(name);
+        if (slot >= 0)
+        {
+            int position = this.slots[slot] - 1;
+            int last = this.size - 1;
+            int moved = last - position;
+            if (moved > 0)
+            {
+                System.arraycopy(this.names, position + 1, this.names, position, moved);
+                System.arraycopy(this.properties, position + 1, this.properties, position, moved);
+                for (int i = 0; i < this.slots.length; i++)
+                {
+                    if (this.slots[i] > position + 1)
+                    {
+                        this.slots[i]--;
+                    }
+                }
+            }
+
+            // The new name folds to the same hash, so the slot of the old
+            // name now points to the property at the end.
+            this.slots[slot] = last + 1;
+            this.names[last] = name;
+            this.properties[last] = property;
+            this.view = null;
+            return;
+        }
+
+        if (this.size == this.properties.length)
+        {
+            int capacity = Math.max(INITIAL_CAPACITY, 2 * this.size);
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.properties = Arrays.copyOf(this.properties, capacity);
+            this.reindex(2 * capacity);
+        }
+
+        this.names[this.size] = name;
+        this.properties[this.size] = property;
+        this.size++;
+        this.index(this.size - 1);
+        this.view = null;
+    }
+
+    /**
+     * Removes every property, keeping the arrays for the next properties.
+     */
+    void clear()
+    {
+        if (this.size > 0)
+        {
+            Arrays.fill(this.names, 0, this.size, null);
+            Arrays.fill(this.properties, 0, this.size, null);
+            Arrays.fill(this.slots, 0);
+            this.size = 0;
+        }
+        this.view = null;
+    }
+
+    /**
+     * Returns the number of properties.
+     *
+     * @return the number of properties.
+     */
+    int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns a copy of the properties, in order.
+     *
+     * @return the properties.
+     */
+    MessageProperty[] toArray()
+    {
+        return this.size == 0 ? NO_PROPERTIES : Arrays.copyOf(this.properties, this.size);
+    }
+
+    /**
+     * Returns an unmodifiable view of the properties, in order, that is
+     * shared until the next change.
+     *
+     * @return the properties.
+     */
+    List<MessageProperty> view()
+    {
+        if (this.view == null)
+        {
+            this.view = this.size == 0
+                    ? Collections.<MessageProperty>emptyList()
+                    : Collections.unmodifiableList(Arrays.asList(this.toArray()));
+        }
+        return this.view;
+    }
+
+    private int find(String name)
+    {
+        int slot = this.findSlot(name);
+        return slot < 0 ? -1 : this.slots[slot] - 1;
+    }
+
+    private int findSlot(String name)
+    {
+        if (name == null || this.size == 0)
+        {
+            return -1;
+        }
+
+        int mask = this.slots.length - 1;
+        for (int slot = hash(name) & mask; this.slots[slot] != 0; slot = (slot + 1) & mask)
+        {
+            if (this.names[this.slots[slot] - 1].equalsIgnoreCase(name))
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void index(int position)
+    {
+        int mask = this.slots.length - 1;
+        int slot = hash(this.names[position]) & mask;
+        while (this.slots[slot] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+        this.slots[slot] = position + 1;
+    }
+
+    private void reindex(int slotCount)
+    {
+        this.slots = new int[slotCount];
+        for (int position = 0; position < this.size; position++)
+        {
+            this.index(position);
+        }
+    }
+
+    /**
+     * Hashes a name so that names equal when ignoring case hash the same.
+     */
+    private static int hash(String name)
+    {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++)
+        {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z')
+            {
+                c += 'a' - 'A';
+            }
+            else if (c > 0x7F)
+            {
+                c = Character.toLowerCase(Character.toUpperCase(c));
+            }
+            hash = 31 * hash + c;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
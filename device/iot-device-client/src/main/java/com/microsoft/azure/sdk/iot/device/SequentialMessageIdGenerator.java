@@ -0,0 +1,65 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default {@link MessageIdGenerator}: each ID is a random prefix drawn
+ * once per generator, followed by a sequence number. The IDs of a generator
+ * never repeat, and the prefix keeps them apart from the IDs of other
+ * generators, including those of previous processes.
+ */
+public final class SequentialMessageIdGenerator implements MessageIdGenerator
+{
+    /** The number of random characters in the prefix. */
+    public static final int PREFIX_LENGTH = 24;
+
+    private static final String PREFIX_CHARACTERS =
+            "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private final String prefix;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Constructor. Draws the prefix from a {@link SecureRandom}.
+     */
+    public SequentialMessageIdGenerator()
+    {
+        this(new SecureRandom());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param random the source of the prefix.
+     *
+     * @throws IllegalArgumentException if {@code random} is {@code null}.
+     */
+    public SequentialMessageIdGenerator(Random random)
+    {
+        // Codes_SRS_SEQUENTIALMESSAGEIDGENERATOR_21_001: [If the random source is null, the constructor shall throw an IllegalArgumentException.]
+        if (random == null)
+        {
+            throw new IllegalArgumentException("The random source cannot be null.");
+        }
+
+        // Codes_SRS_SEQUENTIALMESSAGEIDGENERATOR_21_002: [The constructor shall draw a prefix of PREFIX_LENGTH alphanumeric characters from the random source.]
+        char[] prefix = new char[PREFIX_LENGTH];
+        for (int i = 0; i < prefix.length; i++)
+        {
+            prefix[i] = PREFIX_CHARACTERS.charAt(random.nextInt(PREFIX_CHARACTERS.length()));
+        }
+        this.prefix = new String(prefix) + '-';
+    }
+
+    @Override
+    public String generateId()
+    {
+        // Codes_SRS_SEQUENTIALMESSAGEIDGENERATOR_21_003: [The function shall return the prefix followed by the next sequence number of the generator, in base 36.]
+        return this.prefix + Long.toString(this.sequence.getAndIncrement(), Character.MAX_RADIX);
+    }
+}
@@ -0,0 +1,224 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.util.Arrays;
+
+/**
+ * The base of the writers of the built-in serializers, which write the
+ * fields of an event straight into a byte buffer. Each serializer keeps a
+ * writer per thread, whose buffer is reused from one event to the next, so
+ * serializing an event only allocates its body.
+ */
+abstract class TelemetryBufferWriter implements TelemetryWriter
+{
+    static final int INITIAL_CAPACITY = 256;
+    /** A buffer grown past this size by a large event is not kept for the next one. */
+    static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final byte[] LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE).getBytes(Message.DEFAULT_IOTHUB_MESSAGE_CHARSET);
+
+    byte[] buffer = new byte[INITIAL_CAPACITY];
+    int length;
+    private boolean busy;
+
+    /** Writes what precedes the fields of an event. */
+    abstract void begin();
+
+    /** Writes what follows the fields of an event. */
+    abstract void end();
+
+    /**
+     * Serializes an event into the buffer, and copies it out.
+     *
+     * @param event the event to be serialized.
+     *
+     * @return the serialized event.
+     */
+    final byte[] write(TelemetryEvent event)
+    {
+        this.busy = true;
+        try
+        {
+            this.begin();
+            event.writeTo(this);
+            this.end();
+            return Arrays.copyOf(this.buffer, this.length);
+        }
+        finally
+        {
+            this.length = 0;
+            if (this.buffer.length > MAX_RETAINED_CAPACITY)
+            {
+                this.buffer = new byte[INITIAL_CAPACITY];
+            }
+            this.busy = false;
+        }
+    }
+
+    /**
+     * Tells whether the writer is serializing an event, in which case an
+     * event serialized from within {@link TelemetryEvent#writeTo(TelemetryWriter)}
+     * needs a writer of its own.
+     *
+     * @return {@code true} while the writer is serializing an event.
+     */
+    final boolean isBusy()
+    {
+        return this.busy;
+    }
+
+    static void checkName(String name)
+    {
+        if (name == null)
+        {
+            throw new IllegalArgumentException("The field name cannot be 'null'.");
+        }
+    }
+
+    final void ensureCapacity(int extra)
+    {
+        if (this.length + extra > this.buffer.length)
+        {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.length + extra));
+        }
+    }
+
+    final void writeByte(int b)
+    {
+        this.ensureCapacity(1);
+        this.buffer[this.length++] = (byte) b;
+    }
+
+    final void writeAscii(String s)
+    {
+        int count = s.length();
+        this.ensureCapacity(count);
+        for (int i = 0; i < count; i++)
+        {
+            this.buffer[this.length++] = (byte) s.charAt(i);
+        }
+    }
+
+    /** Writes the decimal digits of a value. */
+    final void writeDecimal(long value)
+    {
+        if (value == Long.MIN_VALUE)
+        {
+            this.ensureCapacity(LONG_MIN_VALUE.length);
+            System.arraycopy(LONG_MIN_VALUE, 0, this.buffer, this.length, LONG_MIN_VALUE.length);
+            this.length += LONG_MIN_VALUE.length;
+            return;
+        }
+
+        this.ensureCapacity(20);
+        if (value < 0)
+        {
+            this.buffer[this.length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10)
+        {
+            digits++;
+        }
+        int position = this.length + digits;
+        this.length = position;
+        do
+        {
+            this.buffer[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        while (value != 0);
+    }
+
+    /** Writes all the characters of a string in UTF-8. */
+    final void writeUtf8(String s)
+    {
+        int count = s.length();
+        for (int i = 0; i < count; )
+        {
+            i += this.writeUtf8Char(s, i);
+        }
+    }
+
+    /**
+     * Writes the character at an index of a string in UTF-8, with the low
+     * surrogate following it if it is a high surrogate. A lone surrogate is
+     * written as '?', as {@link String#getBytes(java.nio.charset.Charset)}
+     * does.
+     *
+     * @return the number of characters written, 1 or 2.
+     */
+    final int writeUtf8Char(String s, int index)
+    {
+        this.ensureCapacity(4);
+        char c = s.charAt(index);
+        if (c < 0x80)
+        {
+            this.buffer[this.length++] = (byte) c;
+        }
+        else if (c < 0x800)
+        {
+            this.buffer[this.length++] = (byte) (0xc0 | (c >> 6));
+            this.buffer[this.length++] = (byte) (0x80 | (c & 0x3f));
+        }
+        else if (Character.isSurrogate(c))
+        {
+            if (Character.isHighSurrogate(c) && index + 1 < s.length() && Character.isLowSurrogate(s.charAt(index + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, s.charAt(index + 1));
+                this.buffer[this.length++] = (byte) (0xf0 | (codePoint >> 18));
+                this.buffer[this.length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                this.buffer[this.length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                this.buffer[this.length++] = (byte) (0x80 | (codePoint & 0x3f));
+                return 2;
+            }
+            this.buffer[this.length++] = '?';
+        }
+        else
+        {
+            this.buffer[this.length++] = (byte) (0xe0 | (c >> 12));
+            this.buffer[this.length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            this.buffer[this.length++] = (byte) (0x80 | (c & 0x3f));
+        }
+        return 1;
+    }
+
+    /** Counts the bytes {@link #writeUtf8(String)} writes for a string. */
+    static int utf8Length(String s)
+    {
+        int count = s.length();
+        int bytes = 0;
+        for (int i = 0; i < count; i++)
+        {
+            char c = s.charAt(i);
+            if (c < 0x80)
+            {
+                bytes++;
+            }
+            else if (c < 0x800)
+            {
+                bytes += 2;
+            }
+            else if (Character.isSurrogate(c))
+            {
+                if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(s.charAt(i + 1)))
+                {
+                    bytes += 4;
+                    i++;
+                }
+                else
+                {
+                    bytes++;
+                }
+            }
+            else
+            {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,21 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * A telemetry event the application can turn into a message body with a
+ * {@link TelemetrySerializer}, typically through
+ * {@link DeviceClient#obtainMessage(TelemetryEvent)}. The event writes its
+ * fields itself, so serializing it needs neither reflection nor intermediate
+ * strings.
+ */
+public interface TelemetryEvent
+{
+    /**
+     * Writes the fields of the event.
+     *
+     * @param writer the writer of the serializer, only valid during the call.
+     */
+    void writeTo(TelemetryWriter writer);
+}
@@ -0,0 +1,29 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * Turns {@link TelemetryEvent}s into message bodies. A client serializes
+ * the events given to {@link DeviceClient#obtainMessage(TelemetryEvent)}
+ * with its serializer (see the <b>SetTelemetrySerializer</b> option of
+ * {@link DeviceClient#setOption(String, Object)}). Implementations shall be
+ * thread-safe.
+ *
+ * @see JsonTelemetrySerializer
+ * @see BinaryTelemetrySerializer
+ */
+public interface TelemetrySerializer
+{
+    /**
+     * Serializes an event.
+     *
+     * @param event the event to be serialized.
+     *
+     * @return the serialized event, in an array of its exact length, which
+     * the caller takes ownership of.
+     *
+     * @throws IllegalArgumentException if {@code event} is {@code null}.
+     */
+    byte[] serialize(TelemetryEvent event);
+}
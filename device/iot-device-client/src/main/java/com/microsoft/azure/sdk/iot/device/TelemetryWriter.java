@@ -0,0 +1,61 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+/**
+ * Writes the fields of a {@link TelemetryEvent} in the format of a
+ * {@link TelemetrySerializer}. A field with a {@code null} value is not
+ * written.
+ */
+public interface TelemetryWriter
+{
+    /**
+     * Writes a string field.
+     *
+     * @param name the name of the field.
+     * @param value the value of the field, or {@code null} to skip the field.
+     *
+     * @return this writer.
+     *
+     * @throws IllegalArgumentException if {@code name} is {@code null}.
+     */
+    TelemetryWriter field(String name, String value);
+
+    /**
+     * Writes an integral field.
+     *
+     * @param name the name of the field.
+     * @param value the value of the field.
+     *
+     * @return this writer.
+     *
+     * @throws IllegalArgumentException if {@code name} is {@code null}.
+     */
+    TelemetryWriter field(String name, long value);
+
+    /**
+     * Writes a floating point field.
+     *
+     * @param name the name of the field.
+     * @param value the value of the field.
+     *
+     * @return this writer.
+     *
+     * @throws IllegalArgumentException if {@code name} is {@code null}, or if
+     * the format cannot represent {@code value}.
+     */
+    TelemetryWriter field(String name, double value);
+
+    /**
+     * Writes a boolean field.
+     *
+     * @param name the name of the field.
+     * @param value the value of the field.
+     *
+     * @return this writer.
+     *
+     * @throws IllegalArgumentException if {@code name} is {@code null}.
+     */
+    TelemetryWriter field(String name, boolean value);
+}
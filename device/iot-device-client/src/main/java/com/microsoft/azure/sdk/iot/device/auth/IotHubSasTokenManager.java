@@ -0,0 +1,147 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.auth;
+
+import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+import com.microsoft.azure.sdk.iot.device.net.IotHubUri;
+
+import javax.crypto.Mac;
+
+/**
+ * Hands out the SAS token of a single client. A token signed with the device
+ * key is cached until a fraction of its validity has passed and is then
+ * renewed, ahead of its expiry, by the next caller. Renewals sign with a
+ * per-thread HMAC-SHA256 engine that is keyed once.
+ */
+public final class IotHubSasTokenManager
+{
+    /** The default fraction of the token validity after which it is renewed. */
+    public static final double DEFAULT_RENEWAL_FRACTION = 0.75;
+
+    /** A token together with the time at which it should be renewed. */
+    private static final class CachedToken
+    {
+        private final String token;
+        private final long renewAtMillis;
+        private final long tokenValidSecs;
+
+        private CachedToken(String token, long renewAtMillis, long tokenValidSecs)
+        {
+            this.token = token;
+            this.renewAtMillis = renewAtMillis;
+            this.tokenValidSecs = tokenValidSecs;
+        }
+    }
+
+    /** The client configuration. */
+    protected final DeviceClientConfig config;
+    protected volatile double renewalFraction = DEFAULT_RENEWAL_FRACTION;
+    protected volatile CachedToken cachedToken;
+    /** The resource URI the token is scoped to. Computed with the first token. */
+    protected String scope;
+    /** HMAC-SHA256 engines keyed with the device key, one per signing thread. */
+    protected final ThreadLocal<Mac> hMacSha256 = new ThreadLocal<Mac>()
+    {
+        @Override
+        protected Mac initialValue()
+        {
+            return SignatureHelper.initHmacSha256(
+                    SignatureHelper.decodeDeviceKeyBase64(config.getDeviceKey()));
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param config the configuration of the client the tokens are for.
+     */
+    public IotHubSasTokenManager(DeviceClientConfig config)
+    {
+        // Codes_SRS_IOTHUBSASTOKENMANAGER_21_001: [If the config is null, the constructor shall throw an IllegalArgumentException.]
+        if (config == null)
+        {
+            throw new IllegalArgumentException("config cannot be null.");
+        }
+
+        // Codes_SRS_IOTHUBSASTOKENMANAGER_21_002: [The constructor shall save the config, and shall not read from it until the first token is requested.]
+        this.config = config;
+    }
+
+    /**
+     * Returns a SAS token for the client, renewing the cached one if the
+     * renewal fraction of its validity has passed.
+     *
+     * @return the SAS token, or null if the config has neither a device key
+     * nor a shared access token.
+     *
+     * @throws IllegalArgumentException if the shared access token in the
+     * config has an invalid format.
+     */
+    public String getSasToken()
+    {
+        // Codes_SRS_IOTHUBSASTOKENMANAGER_21_003: [If the config has no device key, the function shall return the token built by IotHubSasToken from the config.]
+        if (this.config.getDeviceKey() == null)
+        {
+            return new IotHubSasToken(this.config, 0l).toString();
+        }
+
+        long nowMillis = System.currentTimeMillis();
+        long tokenValidSecs = this.config.getTokenValidSecs();
+        CachedToken current = this.cachedToken;
+        // Codes_SRS_IOTHUBSASTOKENMANAGER_21_004: [If a token was cached, its renewal time has not passed and the token validity in the config is unchanged, the function shall return the cached token.]
+        if ((current != null) && (nowMillis < current.renewAtMillis) && (current.tokenValidSecs == tokenValidSecs))
+        {
+            return current.token;
+        }
+
+        // Codes_SRS_IOTHUBSASTOKENMANAGER_21_005: [Otherwise, the function shall sign a new token valid for tokenValidSecs from the config, cache it and return it.]
+        if (this.scope == null)
+        {
+            this.scope = IotHubUri.getResourceUri(this.config.getIotHubHostname(), this.config.getDeviceId());
+        }
+        long expiryTime = nowMillis / 1000l + tokenValidSecs + 1l;
+        // Codes_SRS_IOTHUBSASTOKENMANAGER_21_006: [The function shall sign the token with an HMAC-SHA256 engine that is keyed once per thread.]
+        Signature sig = new Signature(this.scope, expiryTime, this.hMacSha256.get());
+        String token = String.format(IotHubSasToken.TOKEN_FORMAT, sig.toString(), expiryTime, this.scope);
+
+        // Codes_SRS_IOTHUBSASTOKENMANAGER_21_007: [The cached token shall be renewed once the renewal fraction of tokenValidSecs has passed.]
+        long renewAtMillis = nowMillis + (long)(tokenValidSecs * 1000l * this.renewalFraction);
+        this.cachedToken = new CachedToken(token, renewAtMillis, tokenValidSecs);
+        return token;
+    }
+
+    /**
+     * Setter for the fraction of the token validity after which a cached
+     * token is renewed.
+     *
+     * @param renewalFraction the fraction, greater than 0 and at most 1.
+     *
+     * @throws IllegalArgumentException if the fraction is not greater than 0
+     * or is greater than 1.
+     */
+    public void setRenewalFraction(double renewalFraction)
+    {
+        // Codes_SRS_IOTHUBSASTOKENMANAGER_21_008: [If the renewalFraction is not greater than 0 or is greater than 1, the function shall throw an IllegalArgumentException.]
+        if (!(renewalFraction > 0) || (renewalFraction > 1))
+        {
+            throw new IllegalArgumentException("renewalFraction shall be greater than 0 and at most 1.");
+        }
+
+        // Codes_SRS_IOTHUBSASTOKENMANAGER_21_009: [The function shall save the renewalFraction and drop the cached token.]
+        this.renewalFraction = renewalFraction;
+        this.cachedToken = null;
+    }
+
+    /**
+     * Getter for the fraction of the token validity after which a cached
+     * token is renewed.
+     *
+     * @return the renewal fraction.
+     */
+    public double getRenewalFraction()
+    {
+        // Codes_SRS_IOTHUBSASTOKENMANAGER_21_010: [The function shall return the renewal fraction, which defaults to 0.75.]
+        return this.renewalFraction;
+    }
+}
@@ -3,6 +3,8 @@
 
 package com.microsoft.azure.sdk.iot.device.auth;
 
+import javax.crypto.Mac;
+
 /**
  * A signature that is used in the SAS token to authenticate the client.
  */
@@ -36,6 +38,28 @@ public final class Signature
         this.sig = SignatureHelper.encodeSignatureWebSafe(utf8Sig);
     }
 
+    /**
+     * Constructs a {@code Signature} instance from the given resource URI,
+     * expiry time and an HMAC-SHA256 engine already keyed with the device key.
+     * @param resourceUri the resource URI.
+     * @param expiryTime the time, as a UNIX timestamp, after which the token
+     * will become invalid.
+     * @param hMacSha256 the keyed HMAC-SHA256 engine, as returned by
+     * {@link SignatureHelper#initHmacSha256(byte[])}.
+     */
+    public Signature(String resourceUri, long expiryTime, Mac hMacSha256)
+    {
+        // Codes_SRS_SIGNATURE_21_006: [The signature shall be computed as encodeSignatureWebSafe(encodeSignatureUtf8(encodeSignatureBase64(encryptSignatureHmacSha256(buildRawSignature(resourceUri, expiryTime), hMacSha256)))), without decoding the device key.]
+        byte[] rawSig = SignatureHelper.buildRawSignature(resourceUri,
+                expiryTime);
+        byte[] encryptedSig =
+                SignatureHelper.encryptSignatureHmacSha256(rawSig, hMacSha256);
+        byte[] encryptedSigBase64 = SignatureHelper.encodeSignatureBase64(
+                encryptedSig);
+        String utf8Sig = SignatureHelper.encodeSignatureUtf8(encryptedSigBase64);
+        this.sig = SignatureHelper.encodeSignatureWebSafe(utf8Sig);
+    }
+
     /**
      * Returns the string representation of the signature.
      *
@@ -91,6 +91,47 @@ public final class SignatureHelper
         return encryptedSig;
     }
 
+    /**
+     * Creates an HMAC-SHA256 engine keyed with the device key, so that it can
+     * sign several signatures without being initialized again.
+     *
+     * @param deviceKey the Base64-decoded device key.
+     *
+     * @return the keyed HMAC-SHA256 engine.
+     */
+    public static Mac initHmacSha256(byte[] deviceKey)
+    {
+        String hmacSha256 = "HmacSHA256";
+
+        try
+        {
+            // Codes_SRS_SIGNATUREHELPER_21_011: [The function shall return an HMAC-SHA256 engine initialized with the device key as the secret.]
+            Mac hMacSha256 = Mac.getInstance(hmacSha256);
+            hMacSha256.init(new SecretKeySpec(deviceKey, hmacSha256));
+            return hMacSha256;
+        }
+        catch (NoSuchAlgorithmException | InvalidKeyException e)
+        {
+            // should never happen, since the algorithm and key type are hard-coded.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encrypts the signature using an HMAC-SHA256 engine that is already
+     * keyed with the device key.
+     *
+     * @param sig the unencrypted signature.
+     * @param hMacSha256 the keyed HMAC-SHA256 engine.
+     *
+     * @return the HMAC-SHA256 encrypted signature.
+     */
+    public static byte[] encryptSignatureHmacSha256(byte[] sig, Mac hMacSha256)
+    {
+        // Codes_SRS_SIGNATUREHELPER_21_012: [The function shall encrypt the signature using the given HMAC-SHA256 engine.]
+        return hMacSha256.doFinal(sig);
+    }
+
     /**
      * Encodes the signature using Base64 and then further
      * encodes the resulting string using UTF-8 encoding.
@@ -0,0 +1,179 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.IotHubOutboundBuffer;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Handles the messages received by a transport that raises a receive signal
+ * whenever one arrives, instead of polling it as {@link IotHubReceiveTask}
+ * does. Every {@link #run()} handles a single message, and the task hands
+ * itself to the executor again when the signal is raised, so no thread is
+ * held while no message is waiting. Passes of the same task never overlap.
+ */
+public final class IotHubEventDrivenReceiveTask implements Runnable
+{
+    protected final IotHubTransport transport;
+    protected final IotHubSendSignal receiveSignal;
+    protected final Executor executor;
+
+    private final Object stateLock = new Object();
+    /** {@code true} while a pass is running. */
+    private boolean running;
+    /** {@code true} if the signal was raised during the current pass. */
+    private boolean rerun;
+    /** {@code true} if a pass is handed to the executor and has not run yet. */
+    private boolean submitted;
+    private boolean stopped;
+
+    /**
+     * Constructor.
+     *
+     * @param transport the transport whose received messages are to be handled.
+     * @param receiveSignal the signal raised by the transport when a message
+     * is waiting to be handled.
+     * @param executor the executor the passes run on.
+     *
+     * @throws IllegalArgumentException if any of the parameters is {@code null}.
+     */
+    public IotHubEventDrivenReceiveTask(IotHubTransport transport,
+            IotHubSendSignal receiveSignal,
+            Executor executor)
+    {
+        // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_001: [If the transport, the receive signal or the executor is null, the constructor shall throw an IllegalArgumentException.]
+        if (transport == null || receiveSignal == null || executor == null)
+        {
+            throw new IllegalArgumentException("Transport, receive signal and executor cannot be null.");
+        }
+
+        // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_002: [The constructor shall save the transport, the receive signal and the executor.]
+        this.transport = transport;
+        this.receiveSignal = receiveSignal;
+        this.executor = executor;
+    }
+
+    /**
+     * Registers the task as the listener of the receive signal and hands a
+     * first pass to the executor, for a message that arrived before the
+     * listener was registered. If the executor refuses the pass, the task
+     * stops without running.
+     */
+    public void start()
+    {
+        // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_003: [The function shall register a listener on the receive signal that wakes up the task.]
+        this.receiveSignal.setListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                wakeUp();
+            }
+        });
+        // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_004: [The function shall hand a first pass to the executor.]
+        this.wakeUp();
+    }
+
+    /**
+     * Hands a pass to the executor, unless one is already waiting to run. If
+     * a pass is running, another one runs once it completes.
+     */
+    private void wakeUp()
+    {
+        synchronized (this.stateLock)
+        {
+            // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_005: [If the task is stopped, waking it up shall do nothing.]
+            if (this.stopped)
+            {
+                return;
+            }
+            // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_006: [If a pass is running, waking up the task shall run another pass once it completes.]
+            if (this.running)
+            {
+                this.rerun = true;
+                return;
+            }
+            // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_007: [Otherwise, waking up the task shall hand a pass to the executor, unless one is already waiting to run.]
+            if (!this.submitted)
+            {
+                this.submitLocked();
+            }
+        }
+    }
+
+    public void run()
+    {
+        synchronized (this.stateLock)
+        {
+            // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_008: [If the task is stopped or another pass is running, the function shall return without handling a message.]
+            if (this.stopped || this.running)
+            {
+                return;
+            }
+            this.running = true;
+            this.submitted = false;
+        }
+
+        // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_009: [The function shall run as a client thread of the outbound buffer.]
+        boolean wasClientThread = IotHubOutboundBuffer.enterClientThread();
+        try
+        {
+            // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_010: [The function shall handle a message received by the transport, invoke the message callback if one exists, and return one of COMPLETE, ABANDON, or REJECT to the IoT Hub.]
+            this.transport.handleMessage();
+        }
+        // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_011: [The function shall not crash because of any error or exception thrown by the transport.]
+        catch (Throwable e)
+        {
+            System.out.println(e.toString() + ": " + e.getMessage());
+            for (StackTraceElement el : e.getStackTrace())
+            {
+                System.out.println(el);
+            }
+        }
+        finally
+        {
+            IotHubOutboundBuffer.exitClientThread(wasClientThread);
+            synchronized (this.stateLock)
+            {
+                this.running = false;
+                // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_012: [If the receive signal was raised during the pass, the function shall hand another pass to the executor.]
+                // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_013: [Otherwise, the function shall not hand another pass to the executor until the receive signal is raised.]
+                if (this.rerun && !this.stopped)
+                {
+                    this.rerun = false;
+                    this.submitLocked();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the task. A running pass is completed, and no other pass runs.
+     */
+    public void stop()
+    {
+        // Codes_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_014: [The function shall mark the task as stopped and remove its listener from the receive signal.]
+        this.receiveSignal.setListener(null);
+        synchronized (this.stateLock)
+        {
+            this.stopped = true;
+        }
+    }
+
+    private void submitLocked()
+    {
+        try
+        {
+            this.executor.execute(this);
+            this.submitted = true;
+        }
+        // the executor was shut down by its owner, so no task of the client
+        // runs any longer.
+        catch (RuntimeException e)
+        {
+            this.stopped = true;
+        }
+    }
+}
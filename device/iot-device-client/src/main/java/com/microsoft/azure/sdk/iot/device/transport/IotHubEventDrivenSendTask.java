@@ -0,0 +1,155 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.IotHubOutboundBuffer;
+
+/**
+ * Sends messages and invokes callbacks on completed requests whenever the
+ * transport signals that there is work to do. Unlike {@link IotHubSendTask},
+ * it is meant to be submitted to an executor once: {@link #run()} keeps
+ * draining the transport and parks on the {@link IotHubSendSignal} while the
+ * transport is idle, until {@link #stop()} is called.
+ */
+public final class IotHubEventDrivenSendTask implements Runnable
+{
+    protected final IotHubTransport transport;
+    protected final IotHubSendSignal sendSignal;
+    protected final long retryPeriodMillis;
+    protected final IotHubSendSignal drainSignal;
+
+    protected volatile boolean stopped;
+
+    /**
+     * Constructor.
+     *
+     * @param transport the transport whose messages are to be sent.
+     * @param sendSignal the signal raised by the transport when work is queued.
+     * @param retryPeriodMillis the number of milliseconds to wait before
+     * draining the transport again while it still holds messages that could
+     * not be completed.
+     *
+     * @throws IllegalArgumentException if {@code transport} or
+     * {@code sendSignal} is {@code null}, or if {@code retryPeriodMillis} is
+     * not positive.
+     */
+    public IotHubEventDrivenSendTask(IotHubTransport transport,
+            IotHubSendSignal sendSignal,
+            long retryPeriodMillis)
+    {
+        this(transport, sendSignal, retryPeriodMillis, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param transport the transport whose messages are to be sent.
+     * @param sendSignal the signal raised by the transport when work is queued.
+     * @param retryPeriodMillis the number of milliseconds to wait before
+     * draining the transport again while it still holds messages that could
+     * not be completed.
+     * @param drainSignal the signal raised after every pass that leaves the
+     * transport empty. Can be {@code null}.
+     *
+     * @throws IllegalArgumentException if {@code transport} or
+     * {@code sendSignal} is {@code null}, or if {@code retryPeriodMillis} is
+     * not positive.
+     */
+    public IotHubEventDrivenSendTask(IotHubTransport transport,
+            IotHubSendSignal sendSignal,
+            long retryPeriodMillis,
+            IotHubSendSignal drainSignal)
+    {
+        // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_21_001: [If the transport or the send signal is null, the constructor shall throw an IllegalArgumentException.]
+        if (transport == null || sendSignal == null)
+        {
+            throw new IllegalArgumentException("Transport and send signal cannot be null.");
+        }
+        // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_21_002: [If the retry period is not positive, the constructor shall throw an IllegalArgumentException.]
+        if (retryPeriodMillis <= 0)
+        {
+            throw new IllegalArgumentException("Retry period must be positive.");
+        }
+
+        // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_21_003: [The constructor shall save the transport, the send signal and the retry period.]
+        this.transport = transport;
+        this.sendSignal = sendSignal;
+        this.retryPeriodMillis = retryPeriodMillis;
+        this.drainSignal = drainSignal;
+        this.stopped = false;
+    }
+
+    public void run()
+    {
+        // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_21_012: [The function shall run as a client thread of the outbound buffer.]
+        boolean wasClientThread = IotHubOutboundBuffer.enterClientThread();
+        try
+        {
+            this.sendUntilStopped();
+        }
+        finally
+        {
+            IotHubOutboundBuffer.exitClientThread(wasClientThread);
+        }
+    }
+
+    private void sendUntilStopped()
+    {
+        while (!this.stopped)
+        {
+            try
+            {
+                // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_21_004: [The function shall send all messages on the transport queue.]
+                this.transport.sendMessages();
+                // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_21_005: [The function shall invoke all callbacks on the transport's callback queue.]
+                this.transport.invokeCallbacks();
+            }
+            // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_21_006: [The function shall not crash because of any error or exception thrown by the transport.]
+            catch (Throwable e)
+            {
+                System.out.println(e.toString() + ": " + e.getMessage());
+                for (StackTraceElement el : e.getStackTrace())
+                {
+                    System.out.println(el);
+                }
+            }
+
+            if (this.stopped)
+            {
+                break;
+            }
+
+            try
+            {
+                // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_21_007: [If the transport is empty, the function shall park until the send signal is raised.]
+                // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_21_008: [If the transport is not empty, the function shall wait until the send signal is raised or the retry period expires.]
+                boolean empty = this.transport.isEmpty();
+                // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_21_011: [If a drain signal is set and the transport is empty after the pass, the function shall raise the drain signal.]
+                if (empty && this.drainSignal != null)
+                {
+                    this.drainSignal.signal();
+                }
+                long timeoutMillis = empty ? 0 : this.retryPeriodMillis;
+                this.sendSignal.await(timeoutMillis);
+            }
+            // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_21_009: [If the thread is interrupted while waiting, the function shall return.]
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops the task. The current pass over the transport is completed, and
+     * the task returns instead of parking again.
+     */
+    public void stop()
+    {
+        // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_21_010: [The function shall mark the task as stopped and raise the send signal so that a parked task returns.]
+        this.stopped = true;
+        this.sendSignal.signal();
+    }
+}
@@ -0,0 +1,212 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * A hashed timer wheel indexing entries by their expiry time, so that the
+ * entries expired since the last call can be found without scanning the
+ * entries that are not.
+ * </p>
+ * <p>
+ * Time is cut in ticks, and each tick is hashed to one of a fixed number of
+ * slots. An entry is kept in the slot of the tick it expires in, and
+ * {@link #advance(long)} only visits the slots of the ticks elapsed since its
+ * last call, so adding, removing and expiring an entry are O(1), and a tick
+ * costs O(1) plus the entries of its slot. An entry expiring more than a
+ * revolution of the wheel away is passed over until its revolution comes.
+ * Entries are compared by identity. The wheel is not thread-safe.
+ * </p>
+ *
+ * @param <T> the type of the entries.
+ */
+public final class IotHubExpiryWheel<T>
+{
+    /** The length of a tick, in milliseconds. */
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    /** The number of slots, for a revolution of 51.2 seconds. */
+    public static final int DEFAULT_SLOT_COUNT = 512;
+
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private final long tickMillis;
+    private final List<Set<T>> slots;
+    /** The tick of the slot each entry is in. */
+    private final Map<T, Long> slotTicks = new IdentityHashMap<>();
+    /** The last tick whose expired entries were evicted. */
+    private long lastTick = NOT_STARTED;
+
+    /**
+     * Constructor, with the default tick length and number of slots.
+     */
+    public IotHubExpiryWheel()
+    {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_SLOT_COUNT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tickMillis the length of a tick, in milliseconds. Entries are
+     * expired at most one tick late.
+     * @param slotCount the number of slots.
+     *
+     * @throws IllegalArgumentException if {@code tickMillis} or
+     * {@code slotCount} is not positive.
+     */
+    public IotHubExpiryWheel(long tickMillis, int slotCount)
+    {
+        // Codes_SRS_IOTHUBEXPIRYWHEEL_21_001: [If the tick length or the number of slots is not positive, the constructor shall throw an IllegalArgumentException.]
+        if (tickMillis <= 0 || slotCount <= 0)
+        {
+            throw new IllegalArgumentException("The tick length and the number of slots shall be positive.");
+        }
+
+        // Codes_SRS_IOTHUBEXPIRYWHEEL_21_002: [The constructor shall create a wheel with the given number of empty slots.]
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++)
+        {
+            this.slots.add(Collections.newSetFromMap(new IdentityHashMap<T, Boolean>()));
+        }
+    }
+
+    /**
+     * Indexes an entry by its expiry time. An entry already indexed is moved
+     * to its new expiry time.
+     *
+     * @param entry the entry.
+     * @param expiryTime the time the entry expires, in milliseconds since the
+     * epoch, or 0 if it never expires.
+     *
+     * @return {@code true} if the entry is indexed, and {@code false} if it
+     * never expires.
+     *
+     * @throws IllegalArgumentException if {@code entry} is {@code null}.
+     */
+    public boolean add(T entry, long expiryTime)
+    {
+        // Codes_SRS_IOTHUBEXPIRYWHEEL_21_003: [If the entry is null, the function shall throw an IllegalArgumentException.]
+        if (entry == null)
+        {
+            throw new IllegalArgumentException("The entry cannot be null.");
+        }
+
+        this.remove(entry);
+
+        // Codes_SRS_IOTHUBEXPIRYWHEEL_21_004: [If the expiry time is 0, the function shall not index the entry and return false.]
+        if (expiryTime == 0)
+        {
+            return false;
+        }
+
+        // Codes_SRS_IOTHUBEXPIRYWHEEL_21_005: [The function shall add the entry to the slot of the tick it expires in, or of the next tick to be visited if that tick was already visited, and return true.]
+        long slotTick = expiryTime / this.tickMillis;
+        if (this.lastTick != NOT_STARTED && slotTick <= this.lastTick)
+        {
+            slotTick = this.lastTick + 1;
+        }
+        this.slotTicks.put(entry, slotTick);
+        this.slotOf(slotTick).add(entry);
+        return true;
+    }
+
+    /**
+     * Stops indexing an entry.
+     *
+     * @param entry the entry.
+     *
+     * @return {@code true} if the entry was indexed.
+     */
+    public boolean remove(T entry)
+    {
+        // Codes_SRS_IOTHUBEXPIRYWHEEL_21_006: [The function shall remove the entry from its slot, and return false if it is not indexed.]
+        Long slotTick = this.slotTicks.remove(entry);
+        if (slotTick == null)
+        {
+            return false;
+        }
+
+        this.slotOf(slotTick).remove(entry);
+        return true;
+    }
+
+    /**
+     * Removes and returns the entries expired by the given time, visiting the
+     * slots of the ticks elapsed since the last call.
+     *
+     * @param nowMillis the current time, in milliseconds since the epoch.
+     *
+     * @return the expired entries, which are no longer indexed.
+     */
+    public List<T> advance(long nowMillis)
+    {
+        List<T> expired = new ArrayList<>();
+
+        // an entry expiring in the current tick may still be valid, so only
+        // the ticks before it are visited.
+        long toTick = nowMillis / this.tickMillis - 1;
+        if (this.lastTick != NOT_STARTED && toTick <= this.lastTick)
+        {
+            return expired;
+        }
+
+        // Codes_SRS_IOTHUBEXPIRYWHEEL_21_007: [The function shall visit the slots of the ticks elapsed since the last call, each slot at most once, and remove and return the entries that expired in a visited tick or before.]
+        long fromTick = toTick - this.slots.size() + 1;
+        if (this.lastTick != NOT_STARTED && this.lastTick + 1 > fromTick)
+        {
+            fromTick = this.lastTick + 1;
+        }
+        for (long tick = fromTick; tick <= toTick; tick++)
+        {
+            Set<T> slot = this.slotOf(tick);
+            if (slot.isEmpty())
+            {
+                continue;
+            }
+
+            List<T> slotExpired = new ArrayList<>();
+            for (T entry : slot)
+            {
+                if (this.slotTicks.get(entry) <= toTick)
+                {
+                    slotExpired.add(entry);
+                }
+            }
+            for (T entry : slotExpired)
+            {
+                slot.remove(entry);
+                this.slotTicks.remove(entry);
+            }
+            expired.addAll(slotExpired);
+        }
+        this.lastTick = toTick;
+
+        return expired;
+    }
+
+    /**
+     * Returns the number of entries indexed.
+     *
+     * @return the number of entries.
+     */
+    public int size()
+    {
+        // Codes_SRS_IOTHUBEXPIRYWHEEL_21_008: [The function shall return the number of entries indexed.]
+        return this.slotTicks.size();
+    }
+
+    private Set<T> slotOf(long tick)
+    {
+        int slotCount = this.slots.size();
+        return this.slots.get((int) (((tick % slotCount) + slotCount) % slotCount));
+    }
+}
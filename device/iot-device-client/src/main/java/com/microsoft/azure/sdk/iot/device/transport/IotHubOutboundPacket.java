@@ -5,6 +5,7 @@ package com.microsoft.azure.sdk.iot.device.transport;
 
 import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
 import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessagePriority;
 
 /**
  * A packet containing the data needed for an IoT Hub transport to send a
@@ -15,6 +16,9 @@ public final class IotHubOutboundPacket
     protected final Message message;
     protected final IotHubEventCallback callback;
     protected final Object callbackContext;
+    protected final MessagePriority priority;
+    protected final long expiryTime;
+    protected final long createdNanos;
 
     /**
      * Constructor.
@@ -32,6 +36,12 @@ public final class IotHubOutboundPacket
         this.message = message;
         this.callback = callback;
         this.callbackContext = callbackContext;
+        // Codes_SRS_IOTHUBOUTBOUNDPACKET_21_001: [The constructor shall save the priority of the message, or NORMAL if the message is null.]
+        this.priority = message == null ? MessagePriority.NORMAL : message.getPriority();
+        // Codes_SRS_IOTHUBOUTBOUNDPACKET_21_003: [The constructor shall save the expiry time of the message, or 0 if the message is null.]
+        this.expiryTime = message == null ? 0 : message.getExpiryTime();
+        // Codes_SRS_IOTHUBOUTBOUNDPACKET_21_005: [The constructor shall save the System.nanoTime() at which the packet was created.]
+        this.createdNanos = System.nanoTime();
     }
 
     /**
@@ -66,4 +76,40 @@ public final class IotHubOutboundPacket
         // Codes_SRS_IOTHUBOUTBOUNDPACKET_11_004: [The function shall return the callback context given in the constructor.]
         return callbackContext;
     }
+
+    /**
+     * Getter for the priority of the message when the packet was created,
+     * which decides the lane the packet waits in.
+     *
+     * @return the message priority.
+     */
+    public MessagePriority getPriority()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDPACKET_21_002: [The function shall return the priority saved by the constructor.]
+        return priority;
+    }
+
+    /**
+     * Getter for the expiry time of the message when the packet was created.
+     *
+     * @return the time the message expires, in milliseconds since the epoch,
+     * or 0 if it never expires.
+     */
+    public long getExpiryTime()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDPACKET_21_004: [The function shall return the expiry time saved by the constructor.]
+        return expiryTime;
+    }
+
+    /**
+     * Getter for the time the packet was created, which is when its message
+     * was queued in the transport.
+     *
+     * @return the {@link System#nanoTime()} at which the packet was created.
+     */
+    public long getCreatedNanos()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDPACKET_21_006: [The function shall return the creation time saved by the constructor.]
+        return createdNanos;
+    }
 }
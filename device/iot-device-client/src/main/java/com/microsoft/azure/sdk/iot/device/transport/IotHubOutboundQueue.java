@@ -0,0 +1,332 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.MessagePriority;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>
+ * The queue of packets waiting to be sent by a transport, with one FIFO lane
+ * per {@link MessagePriority}.
+ * </p>
+ * <p>
+ * The lanes are drained in weighted round robin: each lane in turn hands out
+ * up to its weight in packets before the next non-empty lane gets its turn.
+ * A high priority packet therefore waits for at most the weights of the
+ * other lanes in lower priority packets, however long their backlog is,
+ * while the lower lanes still make progress.
+ * </p>
+ * <p>
+ * The packets with an expiry time are indexed in an {@link IotHubExpiryWheel},
+ * so that {@link #pollExpired(long)} evicts the expired packets without
+ * scanning the lanes.
+ * </p>
+ * <p>
+ * {@link #peek()} returns the packet {@link #poll()} would return, and
+ * removing that packet with {@link #remove(Object)} counts as polling it.
+ * The queue is thread-safe; its iterator works on a snapshot.
+ * </p>
+ */
+public final class IotHubOutboundQueue extends AbstractQueue<IotHubOutboundPacket>
+{
+    /** The number of packets drained from the high priority lane per round. */
+    public static final int DEFAULT_HIGH_WEIGHT = 4;
+    /** The number of packets drained from the normal priority lane per round. */
+    public static final int DEFAULT_NORMAL_WEIGHT = 2;
+    /** The number of packets drained from the low priority lane per round. */
+    public static final int DEFAULT_LOW_WEIGHT = 1;
+
+    private final Lane[] lanes;
+    private final int[] weights;
+    private final IotHubExpiryWheel<Node> expiryWheel;
+    private int currentLane;
+    private int credits;
+    private int size;
+
+    /**
+     * Constructor, with the default weights.
+     */
+    public IotHubOutboundQueue()
+    {
+        this(DEFAULT_HIGH_WEIGHT, DEFAULT_NORMAL_WEIGHT, DEFAULT_LOW_WEIGHT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param highWeight the number of packets drained from the high priority
+     * lane per round.
+     * @param normalWeight the number of packets drained from the normal
+     * priority lane per round.
+     * @param lowWeight the number of packets drained from the low priority
+     * lane per round.
+     *
+     * @throws IllegalArgumentException if any weight is not positive.
+     */
+    public IotHubOutboundQueue(int highWeight, int normalWeight, int lowWeight)
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_001: [If any weight is not positive, the constructor shall throw an IllegalArgumentException.]
+        if (highWeight <= 0 || normalWeight <= 0 || lowWeight <= 0)
+        {
+            throw new IllegalArgumentException("The lane weights shall be positive.");
+        }
+
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_002: [The constructor shall create an empty lane for each message priority.]
+        this.weights = new int[] { highWeight, normalWeight, lowWeight };
+        this.lanes = new Lane[this.weights.length];
+        for (int i = 0; i < this.lanes.length; i++)
+        {
+            this.lanes[i] = new Lane();
+        }
+        this.expiryWheel = new IotHubExpiryWheel<>();
+        this.currentLane = 0;
+        this.credits = this.weights[0];
+    }
+
+    /**
+     * Adds a packet to the tail of the lane of its priority. Packets without
+     * a priority go to the normal priority lane.
+     *
+     * @param packet the packet to be added.
+     *
+     * @return {@code true}.
+     *
+     * @throws NullPointerException if {@code packet} is {@code null}.
+     */
+    @Override
+    public synchronized boolean offer(IotHubOutboundPacket packet)
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_003: [If the packet is null, the function shall throw a NullPointerException.]
+        if (packet == null)
+        {
+            throw new NullPointerException("The packet cannot be null.");
+        }
+
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_004: [The function shall add the packet to the tail of the lane of its priority, or of the NORMAL lane if it has none, and return true.]
+        Node node = new Node(packet, this.lanes[laneOf(packet)]);
+        node.lane.link(node);
+        this.size++;
+
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_012: [If the packet has an expiry time, the function shall index it by its expiry time.]
+        this.expiryWheel.add(node, packet.getExpiryTime());
+        return true;
+    }
+
+    @Override
+    public synchronized IotHubOutboundPacket poll()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_005: [If the queue is empty, the function shall return null.]
+        int lane = this.nextLane();
+        if (lane < 0)
+        {
+            return null;
+        }
+
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_006: [The function shall remove and return the head of the current lane, moving to the next non-empty lane, in priority order, once the current lane is empty or has handed out as many packets as its weight in this round.]
+        this.credits--;
+        return this.unlink(this.lanes[lane].head);
+    }
+
+    @Override
+    public synchronized IotHubOutboundPacket peek()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_007: [The function shall return, without removing it, the packet the next poll would return, or null if the queue is empty.]
+        int lane = this.nextLane();
+        return lane < 0 ? null : this.lanes[lane].head.packet;
+    }
+
+    @Override
+    public synchronized boolean remove(Object packet)
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_008: [If the packet is the one the next poll would return, the function shall poll it.]
+        if (packet != null && packet == this.peek())
+        {
+            this.poll();
+            return true;
+        }
+
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_009: [Otherwise, the function shall remove the packet from its lane, and return false if it is not in the queue.]
+        for (Lane lane : this.lanes)
+        {
+            for (Node node = lane.head; node != null; node = node.next)
+            {
+                if (node.packet.equals(packet))
+                {
+                    this.unlink(node);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the oldest packet of the lowest priority non-empty lane; the
+     * packet to give up first when there is no room left.
+     *
+     * @return the removed packet, or {@code null} if the queue is empty.
+     */
+    public synchronized IotHubOutboundPacket pollLowestPriority()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_010: [The function shall remove and return the head of the lowest priority non-empty lane, or null if the queue is empty.]
+        for (int lane = this.lanes.length - 1; lane >= 0; lane--)
+        {
+            if (this.lanes[lane].head != null)
+            {
+                return this.unlink(this.lanes[lane].head);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the packets whose message expired by the given time, at most
+     * one expiry wheel tick late. Only the wheel slots of the ticks elapsed
+     * since the last call are visited, and each expired packet is unlinked
+     * from its lane in constant time.
+     *
+     * @param nowMillis the current time, in milliseconds since the epoch.
+     *
+     * @return the expired packets, in no particular order.
+     */
+    public synchronized List<IotHubOutboundPacket> pollExpired(long nowMillis)
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_013: [The function shall remove and return the packets whose expiry time passed, as found by the expiry index.]
+        List<Node> expired = this.expiryWheel.advance(nowMillis);
+        List<IotHubOutboundPacket> packets = new ArrayList<>(expired.size());
+        for (Node node : expired)
+        {
+            packets.add(this.unlink(node));
+        }
+        return packets;
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the queue, in priority order
+     * rather than in drain order. The iterator does not support removal.
+     *
+     * @return the iterator.
+     */
+    @Override
+    public synchronized Iterator<IotHubOutboundPacket> iterator()
+    {
+        // Codes_SRS_IOTHUBOUTBOUNDQUEUE_21_011: [The function shall return an unmodifiable iterator over a snapshot of the lanes, from the highest to the lowest priority.]
+        List<IotHubOutboundPacket> snapshot = new ArrayList<>(this.size);
+        for (Lane lane : this.lanes)
+        {
+            for (Node node = lane.head; node != null; node = node.next)
+            {
+                snapshot.add(node.packet);
+            }
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    /**
+     * Moves the round robin to the lane the next packet is taken from.
+     *
+     * @return the lane, or -1 if the queue is empty.
+     */
+    private int nextLane()
+    {
+        if (this.size == 0)
+        {
+            return -1;
+        }
+
+        while (this.credits == 0 || this.lanes[this.currentLane].head == null)
+        {
+            this.currentLane = (this.currentLane + 1) % this.lanes.length;
+            this.credits = this.weights[this.currentLane];
+        }
+        return this.currentLane;
+    }
+
+    private IotHubOutboundPacket unlink(Node node)
+    {
+        node.lane.unlink(node);
+        this.expiryWheel.remove(node);
+        this.size--;
+        return node.packet;
+    }
+
+    private static int laneOf(IotHubOutboundPacket packet)
+    {
+        MessagePriority priority = packet.getPriority();
+        return priority == null ? MessagePriority.NORMAL.ordinal() : priority.ordinal();
+    }
+
+    /**
+     * A packet in its lane. A packet added twice gets two nodes, so nodes
+     * rather than packets are indexed by expiry time.
+     */
+    private static final class Node
+    {
+        final IotHubOutboundPacket packet;
+        final Lane lane;
+        Node previous;
+        Node next;
+
+        Node(IotHubOutboundPacket packet, Lane lane)
+        {
+            this.packet = packet;
+            this.lane = lane;
+        }
+    }
+
+    /** A doubly linked list of nodes, so that any node is unlinked in constant time. */
+    private static final class Lane
+    {
+        Node head;
+        Node tail;
+
+        void link(Node node)
+        {
+            node.previous = this.tail;
+            if (this.tail == null)
+            {
+                this.head = node;
+            }
+            else
+            {
+                this.tail.next = node;
+            }
+            this.tail = node;
+        }
+
+        void unlink(Node node)
+        {
+            if (node.previous == null)
+            {
+                this.head = node.next;
+            }
+            else
+            {
+                node.previous.next = node.next;
+            }
+            if (node.next == null)
+            {
+                this.tail = node.previous;
+            }
+            else
+            {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+        }
+    }
+}
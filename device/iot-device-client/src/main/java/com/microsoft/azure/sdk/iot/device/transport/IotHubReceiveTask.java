@@ -3,6 +3,8 @@
 
 package com.microsoft.azure.sdk.iot.device.transport;
 
+import com.microsoft.azure.sdk.iot.device.IotHubOutboundBuffer;
+
 /**
  * Polls an IoT Hub for messages and invokes a callback if one is found.
  * Meant to be used with an executor that continuously calls run().
@@ -19,6 +21,8 @@ public final class IotHubReceiveTask implements Runnable
 
     public void run()
     {
+        // Codes_SRS_IOTHUBRECEIVETASK_21_001: [The function shall run as a client thread of the outbound buffer.]
+        boolean wasClientThread = IotHubOutboundBuffer.enterClientThread();
         try
         {
             // Codes_SRS_IOTHUBRECEIVETASK_11_002: [The function shall poll an IoT Hub for messages, invoke the message callback if one exists, and return one of COMPLETE, ABANDON, or REJECT to the IoT Hub.]
@@ -34,5 +38,9 @@ public final class IotHubReceiveTask implements Runnable
                 System.out.println(el);
             }
         }
+        finally
+        {
+            IotHubOutboundBuffer.exitClientThread(wasClientThread);
+        }
     }
 }
\ No newline at end of file
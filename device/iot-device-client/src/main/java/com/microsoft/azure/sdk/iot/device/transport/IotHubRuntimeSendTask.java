@@ -0,0 +1,236 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.IotHubClientRuntime;
+import com.microsoft.azure.sdk.iot.device.IotHubOutboundBuffer;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * The event-driven sender of a client hosted by an {@link IotHubClientRuntime}.
+ * Unlike {@link IotHubEventDrivenSendTask}, it never parks a thread of the
+ * runtime: every {@link #run()} is a single pass over the transport, and the
+ * task submits itself to the runtime again when the {@link IotHubSendSignal}
+ * is raised, or after the retry period while the transport still holds
+ * messages. Passes of the same task never overlap.
+ */
+public final class IotHubRuntimeSendTask implements Runnable
+{
+    protected final IotHubTransport transport;
+    protected final IotHubSendSignal sendSignal;
+    protected final long retryPeriodMillis;
+    protected final IotHubSendSignal drainSignal;
+    protected final IotHubClientRuntime runtime;
+
+    private final Object stateLock = new Object();
+    /** {@code true} while a pass is running. */
+    private boolean running;
+    /** {@code true} if the signal was raised during the current pass. */
+    private boolean rerun;
+    /** {@code true} if a pass is submitted to run as soon as possible. */
+    private boolean submitted;
+    /** The pass submitted to run after the retry period, if any. */
+    private ScheduledFuture<?> retry;
+    private boolean stopped;
+
+    /**
+     * Constructor.
+     *
+     * @param transport the transport whose messages are to be sent.
+     * @param sendSignal the signal raised by the transport when work is queued.
+     * @param retryPeriodMillis the number of milliseconds to wait before
+     * draining the transport again while it still holds messages that could
+     * not be completed.
+     * @param drainSignal the signal raised after every pass that leaves the
+     * transport empty. Can be {@code null}.
+     * @param runtime the runtime the passes run on.
+     *
+     * @throws IllegalArgumentException if {@code transport}, {@code sendSignal}
+     * or {@code runtime} is {@code null}, or if {@code retryPeriodMillis} is
+     * not positive.
+     */
+    public IotHubRuntimeSendTask(IotHubTransport transport,
+            IotHubSendSignal sendSignal,
+            long retryPeriodMillis,
+            IotHubSendSignal drainSignal,
+            IotHubClientRuntime runtime)
+    {
+        // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_001: [If the transport, the send signal or the runtime is null, the constructor shall throw an IllegalArgumentException.]
+        if (transport == null || sendSignal == null || runtime == null)
+        {
+            throw new IllegalArgumentException("Transport, send signal and runtime cannot be null.");
+        }
+        // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_002: [If the retry period is not positive, the constructor shall throw an IllegalArgumentException.]
+        if (retryPeriodMillis <= 0)
+        {
+            throw new IllegalArgumentException("Retry period must be positive.");
+        }
+
+        // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_003: [The constructor shall save the transport, the send signal, the retry period, the drain signal and the runtime.]
+        this.transport = transport;
+        this.sendSignal = sendSignal;
+        this.retryPeriodMillis = retryPeriodMillis;
+        this.drainSignal = drainSignal;
+        this.runtime = runtime;
+    }
+
+    /**
+     * Registers the task as the listener of the send signal and submits a
+     * first pass to the runtime. If the runtime is closed, the task stops
+     * without running.
+     */
+    public void start()
+    {
+        // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_004: [The function shall register a listener on the send signal that wakes up the task.]
+        this.sendSignal.setListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                wakeUp();
+            }
+        });
+        // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_005: [The function shall submit a first pass to the runtime.]
+        this.wakeUp();
+    }
+
+    /**
+     * Submits a pass to run as soon as possible, unless one is already
+     * submitted. If a pass is running, another one runs once it completes.
+     */
+    private void wakeUp()
+    {
+        synchronized (this.stateLock)
+        {
+            // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_006: [If the task is stopped, waking it up shall do nothing.]
+            if (this.stopped)
+            {
+                return;
+            }
+            // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_007: [If a pass is running, waking up the task shall run another pass once it completes.]
+            if (this.running)
+            {
+                this.rerun = true;
+                return;
+            }
+            // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_008: [Otherwise, waking up the task shall submit a pass to run on the runtime without delay, unless one is already submitted, and cancel the pass submitted after the retry period, if any.]
+            if (!this.submitted)
+            {
+                this.cancelRetry();
+                this.submitLocked(0);
+            }
+        }
+    }
+
+    public void run()
+    {
+        synchronized (this.stateLock)
+        {
+            // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_009: [If the task is stopped or another pass is running, the function shall return without sending.]
+            if (this.stopped || this.running)
+            {
+                return;
+            }
+            this.running = true;
+            this.submitted = false;
+            this.retry = null;
+        }
+
+        boolean empty = false;
+        // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_018: [The function shall run as a client thread of the outbound buffer.]
+        boolean wasClientThread = IotHubOutboundBuffer.enterClientThread();
+        try
+        {
+            // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_010: [The function shall send all messages on the transport queue.]
+            this.transport.sendMessages();
+            // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_011: [The function shall invoke all callbacks on the transport's callback queue.]
+            this.transport.invokeCallbacks();
+
+            empty = this.transport.isEmpty();
+            // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_012: [If a drain signal is set and the transport is empty after the pass, the function shall raise the drain signal.]
+            if (empty && this.drainSignal != null)
+            {
+                this.drainSignal.signal();
+            }
+        }
+        // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_013: [The function shall not crash because of any error or exception thrown by the transport.]
+        catch (Throwable e)
+        {
+            System.out.println(e.toString() + ": " + e.getMessage());
+            for (StackTraceElement el : e.getStackTrace())
+            {
+                System.out.println(el);
+            }
+        }
+        finally
+        {
+            IotHubOutboundBuffer.exitClientThread(wasClientThread);
+            synchronized (this.stateLock)
+            {
+                this.running = false;
+                if (!this.stopped)
+                {
+                    if (this.rerun)
+                    {
+                        // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_014: [If the send signal was raised during the pass, the function shall submit another pass to run on the runtime without delay.]
+                        this.rerun = false;
+                        this.submitLocked(0);
+                    }
+                    else if (!empty)
+                    {
+                        // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_015: [Otherwise, if the transport is not empty, the function shall submit another pass to run on the runtime after the retry period.]
+                        this.submitLocked(this.retryPeriodMillis);
+                    }
+                    // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_016: [Otherwise, the function shall not submit another pass until the send signal is raised.]
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the task. A running pass is completed, and no other pass runs.
+     */
+    public void stop()
+    {
+        // Codes_SRS_IOTHUBRUNTIMESENDTASK_21_017: [The function shall mark the task as stopped, remove its listener from the send signal, and cancel the pass submitted after the retry period, if any.]
+        this.sendSignal.setListener(null);
+        synchronized (this.stateLock)
+        {
+            this.stopped = true;
+            this.cancelRetry();
+        }
+    }
+
+    private void cancelRetry()
+    {
+        if (this.retry != null)
+        {
+            this.retry.cancel(false);
+            this.retry = null;
+        }
+    }
+
+    private void submitLocked(long delayMillis)
+    {
+        try
+        {
+            ScheduledFuture<?> pass = this.runtime.submit(this, delayMillis);
+            if (delayMillis == 0)
+            {
+                this.submitted = true;
+            }
+            else
+            {
+                this.retry = pass;
+            }
+        }
+        // the runtime was closed by its owner, so no task of its clients runs
+        // any longer.
+        catch (RuntimeException e)
+        {
+            this.stopped = true;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+/**
+ * A wake-up signal shared between an IoT Hub transport and the task sending
+ * its messages. The transport raises the signal whenever new work is queued,
+ * and the sender either parks on it while there is nothing to do, or
+ * registers a listener run every time the signal is raised. A signal raised
+ * while the sender is busy is remembered, so it is never lost.
+ */
+public final class IotHubSendSignal
+{
+    private final Object signalLock = new Object();
+    private boolean signalled;
+    private volatile Runnable listener;
+
+    /**
+     * Sets the listener run on the raising thread every time the signal is
+     * raised, for senders that do not park a thread on the signal.
+     *
+     * @param listener the listener. Can be {@code null} to remove it.
+     */
+    public void setListener(Runnable listener)
+    {
+        // Codes_SRS_IOTHUBSENDSIGNAL_21_007: [The function shall save the listener, replacing any previous one.]
+        this.listener = listener;
+    }
+
+    /**
+     * Wakes up the sender, runs the listener if any, or makes its next call to {@link #await(long)}
+     * return immediately if it is not currently waiting.
+     */
+    public void signal()
+    {
+        synchronized (this.signalLock)
+        {
+            // Codes_SRS_IOTHUBSENDSIGNAL_21_001: [The function shall mark the signal as raised and wake up all threads waiting on it.]
+            this.signalled = true;
+            this.signalLock.notifyAll();
+        }
+
+        // Codes_SRS_IOTHUBSENDSIGNAL_21_008: [If a listener is set, the function shall run it after releasing the signal.]
+        Runnable currentListener = this.listener;
+        if (currentListener != null)
+        {
+            currentListener.run();
+        }
+    }
+
+    /**
+     * Waits until the signal is raised or the timeout expires, and clears the
+     * signal before returning.
+     *
+     * @param timeoutMillis the maximum time to wait, in milliseconds. A
+     * timeout of 0 waits until the signal is raised.
+     *
+     * @return {@code true} if the signal was raised, and {@code false} if the
+     * timeout expired first.
+     *
+     * @throws InterruptedException if the waiting thread is interrupted.
+     * @throws IllegalArgumentException if {@code timeoutMillis} is negative.
+     */
+    public boolean await(long timeoutMillis) throws InterruptedException
+    {
+        // Codes_SRS_IOTHUBSENDSIGNAL_21_002: [If the timeout is negative, the function shall throw an IllegalArgumentException.]
+        if (timeoutMillis < 0)
+        {
+            throw new IllegalArgumentException("Timeout cannot be negative.");
+        }
+
+        synchronized (this.signalLock)
+        {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            // Codes_SRS_IOTHUBSENDSIGNAL_21_003: [If the signal was raised since the last call, the function shall return true without waiting.]
+            // Codes_SRS_IOTHUBSENDSIGNAL_21_004: [The function shall wait until the signal is raised or the timeout expires, waiting indefinitely if the timeout is 0.]
+            while (!this.signalled)
+            {
+                if (timeoutMillis == 0)
+                {
+                    this.signalLock.wait();
+                }
+                else
+                {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0)
+                    {
+                        // Codes_SRS_IOTHUBSENDSIGNAL_21_005: [If the timeout expires before the signal is raised, the function shall return false.]
+                        return false;
+                    }
+                    this.signalLock.wait(remaining);
+                }
+            }
+
+            // Codes_SRS_IOTHUBSENDSIGNAL_21_006: [The function shall clear the signal before returning true.]
+            this.signalled = false;
+            return true;
+        }
+    }
+}
@@ -3,6 +3,8 @@
 
 package com.microsoft.azure.sdk.iot.device.transport;
 
+import com.microsoft.azure.sdk.iot.device.IotHubOutboundBuffer;
+
 /**
  * Sends batched messages and invokes callbacks on completed requests. Meant to
  * be used with an executor that continuously calls run().
@@ -10,21 +12,43 @@ package com.microsoft.azure.sdk.iot.device.transport;
 public final class IotHubSendTask implements Runnable
 {
     protected final IotHubTransport transport;
+    protected final IotHubSendSignal drainSignal;
 
     public IotHubSendTask(IotHubTransport transport)
+    {
+        this(transport, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param transport the transport whose messages are to be sent.
+     * @param drainSignal the signal raised after every pass that leaves the
+     * transport empty. Can be {@code null}.
+     */
+    public IotHubSendTask(IotHubTransport transport, IotHubSendSignal drainSignal)
     {
         // Codes_SRS_IOTHUBSENDTASK_11_001: [The constructor shall save the transport.]
         this.transport = transport;
+        this.drainSignal = drainSignal;
     }
 
     public void run()
     {
+        // Codes_SRS_IOTHUBSENDTASK_21_002: [The function shall run as a client thread of the outbound buffer.]
+        boolean wasClientThread = IotHubOutboundBuffer.enterClientThread();
         try
         {
             // Codes_SRS_IOTHUBSENDTASK_11_002: [The function shall send all messages on the transport queue.]
             this.transport.sendMessages();
             // Codes_SRS_IOTHUBSENDTASK_11_003: [The function shall invoke all callbacks on the transport's callback queue.]
             this.transport.invokeCallbacks();
+
+            // Codes_SRS_IOTHUBSENDTASK_21_001: [If a drain signal is set and the transport is empty after the pass, the function shall raise the drain signal.]
+            if (this.drainSignal != null && this.transport.isEmpty())
+            {
+                this.drainSignal.signal();
+            }
         }
         // Codes_SRS_IOTHUBSENDTASK_11_005: [The function shall not crash because of an IOException thrown by the transport.]
         // Codes_SRS_IOTHUBSENDTASK_11_008: [The function shall not crash because of any error or exception thrown by the transport.]
@@ -36,5 +60,9 @@ public final class IotHubSendTask implements Runnable
                 System.out.println(el);
             }
         }
+        finally
+        {
+            IotHubOutboundBuffer.exitClientThread(wasClientThread);
+        }
     }
 }
\ No newline at end of file
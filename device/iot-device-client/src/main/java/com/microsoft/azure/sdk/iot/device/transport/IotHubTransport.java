@@ -3,11 +3,16 @@
 
 package com.microsoft.azure.sdk.iot.device.transport;
 
+import com.microsoft.azure.sdk.iot.device.IotHubCallbackDispatcher;
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
 import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.IotHubOutboundBuffer;
+import com.microsoft.azure.sdk.iot.device.IotHubOutboundJournal;
 import com.microsoft.azure.sdk.iot.device.Message;
 import java.io.Closeable;
 
 import java.io.IOException;
+import java.util.List;
 
 /** An interface for an IoT Hub transport. */
 public interface IotHubTransport extends Closeable
@@ -75,4 +80,69 @@ public interface IotHubTransport extends Closeable
      * and {@code false} otherwise.
      */
     boolean isEmpty();
+
+    /**
+     * Removes every message the IoT Hub has not acknowledged yet, whether it
+     * is still waiting to be sent or was sent without a response. Their
+     * callbacks are not invoked.
+     *
+     * @return the packets removed, oldest first.
+     */
+    List<IotHubOutboundPacket> removePendingPackets();
+
+    /**
+     * Sets the signal to be raised whenever the transport has new work for
+     * its sender, such as a message being added or a response arriving.
+     *
+     * @param sendSignal the signal to be raised. Can be {@code null}, in which
+     * case no signal is raised.
+     */
+    void setSendSignal(IotHubSendSignal sendSignal);
+
+    /**
+     * Sets the signal to be raised whenever a message from the IoT Hub is
+     * waiting to be handled. Transports that poll the IoT Hub for messages
+     * never raise it.
+     *
+     * @param receiveSignal the signal to be raised. Can be {@code null}, in
+     * which case no signal is raised.
+     */
+    void setReceiveSignal(IotHubSendSignal receiveSignal);
+
+    /**
+     * Sets the buffer capping the messages held by the transport until the
+     * IoT Hub responds to them.
+     *
+     * @param outboundBuffer the buffer to account messages in. Can be
+     * {@code null}, in which case the transport queue is unbounded.
+     */
+    void setOutboundBuffer(IotHubOutboundBuffer outboundBuffer);
+
+    /**
+     * Sets the journal keeping the messages held by the transport on disk
+     * until the IoT Hub responds to them.
+     *
+     * @param outboundJournal the journal to record messages in. Can be
+     * {@code null}, in which case messages are only held in memory.
+     */
+    void setOutboundJournal(IotHubOutboundJournal outboundJournal);
+
+    /**
+     * Sets the dispatcher delivering the event callbacks away from the thread
+     * calling {@link #invokeCallbacks()}.
+     *
+     * @param callbackDispatcher the dispatcher to hand the callbacks to. Can be
+     * {@code null}, in which case {@link #invokeCallbacks()} invokes them
+     * itself.
+     */
+    void setCallbackDispatcher(IotHubCallbackDispatcher callbackDispatcher);
+
+    /**
+     * Sets the metrics the transport and its connection record the messages,
+     * acknowledgements and callbacks in.
+     *
+     * @param metrics the metrics of the client. Can be {@code null}, in which
+     * case nothing is recorded.
+     */
+    void setMetrics(IotHubClientMetrics metrics);
 }
@@ -6,17 +6,20 @@
 package com.microsoft.azure.sdk.iot.device.transport.amqps;
 
 import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
 import com.microsoft.azure.sdk.iot.device.IotHubMessageResult;
 import com.microsoft.azure.sdk.iot.device.ObjectLock;
-import com.microsoft.azure.sdk.iot.device.auth.IotHubSasToken;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenManager;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
 //import com.microsoft.azure.sdk.iot
 import com.microsoft.azure.sdk.iot.deps.ws.impl.WebSocketImpl;
 import com.microsoft.azure.sdk.iot.device.CustomLogger;
 import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
 import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Data;
 import org.apache.qpid.proton.amqp.messaging.Source;
 import org.apache.qpid.proton.amqp.messaging.Target;
 import org.apache.qpid.proton.amqp.transport.DeliveryState;
@@ -75,6 +78,8 @@ public final class AmqpsIotHubConnection extends BaseHandler
     private static final String webSocketSubProtocol = "AMQPWSB10";
     private static final int amqpPort = 5671;
     private static final int amqpWebSocketPort = 443;
+    /** The size of the buffer the messages are encoded into, on top of their body. */
+    private static final int ENCODE_BUFFER_HEADROOM = 1024;
     private String sasToken;
 
     private Sender sender;
@@ -96,6 +101,9 @@ public final class AmqpsIotHubConnection extends BaseHandler
 
     private Reactor reactor;
 
+    /** The metrics the link credit and reconnections are recorded in. Can be {@code null}. */
+    private volatile IotHubClientMetrics metrics;
+
     private Boolean reconnectCall = false;
     private int currentReconnectionAttempt = 1;
     protected CustomLogger logger;
@@ -175,14 +183,14 @@ public final class AmqpsIotHubConnection extends BaseHandler
             logger.LogError(e);
             throw new IOException("Could not create Proton reactor");
         }
-        logger.LogInfo("AmqpsIotHubConnection object is created successfully using port %s in %s method ", useWebSockets ? amqpWebSocketPort : amqpPort, logger.getMethodName());
+        logger.LogInfo("AmqpsIotHubConnection object is created successfully using port %s in %s method ", useWebSockets ? amqpWebSocketPort : amqpPort, CustomLogger.METHOD_NAME);
     }
 
     /**
      * Opens the {@link AmqpsIotHubConnection}.
      * <p>
      *     If the current connection is not open, this method
-     *     will create a new {@link IotHubSasToken}. This method will
+     *     will obtain a SAS token from the {@link IotHubSasTokenManager}. This method will
      *     start the {@link Reactor}, set the connection to open and make it ready for sending.
      * </p>
      *
@@ -248,7 +256,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
         }
 
         if (this.executorService != null) {
-            logger.LogInfo("Shutdown of executor service has started, method name is %s ", logger.getMethodName());
+            logger.LogInfo("Shutdown of executor service has started, method name is %s ", CustomLogger.METHOD_NAME);
             this.executorService.shutdown();
             try {
                 // Wait a while for existing tasks to terminate
@@ -264,7 +272,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
                 // (Re-)Cancel if current thread also interrupted
                 this.executorService.shutdownNow();
             }
-            logger.LogInfo("Shutdown of executor service completed, method name is %s ", logger.getMethodName());
+            logger.LogInfo("Shutdown of executor service completed, method name is %s ", CustomLogger.METHOD_NAME);
         }
     }
 
@@ -272,10 +280,10 @@ public final class AmqpsIotHubConnection extends BaseHandler
     {
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_008: [The function shall create a new sasToken valid for the duration
         // specified in config to be used for the communication with IoTHub.]
-        this.sasToken = new IotHubSasToken(this.config, System.currentTimeMillis() / 1000L +
-                this.config.getTokenValidSecs() + 1L).toString();
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_21_005: [The function shall obtain the sasToken from the SAS token manager of the config.]
+        this.sasToken = this.config.getSasTokenManager().getSasToken();
 				
-        logger.LogInfo("SAS Token is created successfully, method name is %s ", logger.getMethodName());
+        logger.LogInfo("SAS Token is created successfully, method name is %s ", CustomLogger.METHOD_NAME);
 
         if (this.reactor == null)
         {
@@ -290,7 +298,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
         IotHubReactor iotHubReactor = new IotHubReactor(reactor);
         ReactorRunner reactorRunner = new ReactorRunner(iotHubReactor);
         executorService.submit(reactorRunner);
-        logger.LogInfo("Reactor is assigned to executor service, method name is %s ", logger.getMethodName());
+        logger.LogInfo("Reactor is assigned to executor service, method name is %s ", CustomLogger.METHOD_NAME);
     }
 
     private void closeAsync()
@@ -313,7 +321,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_014: [The function shall stop the Proton reactor.]
 
         this.reactor.stop();
-        logger.LogInfo("Proton reactor has been stopped, method name is %s ", logger.getMethodName());
+        logger.LogInfo("Proton reactor has been stopped, method name is %s ", CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -335,16 +343,17 @@ public final class AmqpsIotHubConnection extends BaseHandler
         {
 
             // Codes_SRS_AMQPSIOTHUBCONNECTION_15_016: [The function shall encode the message and copy the contents to the byte buffer.]
-            byte[] msgData = new byte[1024];
+            // Codes_SRS_AMQPSIOTHUBCONNECTION_21_001: [The function shall size the byte buffer to fit the message body, plus a headroom for its properties, so that a large body is usually encoded once.]
+            byte[] msgData = new byte[encodeBufferSize(message)];
             int length;
 
-            logger.LogInfo("Started encoding of message - entering in while loop, method name is %s ", logger.getMethodName());
+            logger.LogInfo("Started encoding of message - entering in while loop, method name is %s ", CustomLogger.METHOD_NAME);
             while (true)
             {
                 try
                 {
                     length = message.encode(msgData, 0, msgData.length);
-                    logger.LogInfo("Completed encoding of message, length is %s - breaking the while loop to come out, method name is %s ", length, logger.getMethodName());
+                    logger.LogInfo("Completed encoding of message, length is %s - breaking the while loop to come out, method name is %s ", length, CustomLogger.METHOD_NAME);
                     break;
                 }
                 catch (BufferOverflowException e)
@@ -357,23 +366,44 @@ public final class AmqpsIotHubConnection extends BaseHandler
             byte[] tag = String.valueOf(this. nextTag++).getBytes();
             Delivery dlv = sender.delivery(tag);
 
-            logger.LogInfo("Attempting to send the message using the sender link, method name is %s ", logger.getMethodName());
+            logger.LogInfo("Attempting to send the message using the sender link, method name is %s ", CustomLogger.METHOD_NAME);
             // Codes_SRS_AMQPSIOTHUBCONNECTION_15_018: [The function shall attempt to send the message using the sender link.]
             sender.send(msgData, 0, length);
             
-            logger.LogInfo("Advancing the sender link, method name is %s ", logger.getMethodName());
+            logger.LogInfo("Advancing the sender link, method name is %s ", CustomLogger.METHOD_NAME);
             // Codes_SRS_AMQPSIOTHUBCONNECTION_15_019: [The function shall advance the sender link.]
             sender.advance();
 
             // Codes_SRS_AMQPSIOTHUBCONNECTION_15_020: [The function shall set the delivery hash to the value returned by the sender link.]
             deliveryHash = dlv.hashCode();
-            logger.LogInfo("Delivery hash returned by the sender link %s, method name is %s ", deliveryHash, logger.getMethodName());
+            logger.LogInfo("Delivery hash returned by the sender link %s, method name is %s ", deliveryHash, CustomLogger.METHOD_NAME);
         }
 
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_021: [The function shall return the delivery hash.]
         return deliveryHash;
     }
 
+    /**
+     * Estimates the size of the encoded message, which is its body plus the
+     * headroom of the initial buffer for its properties and sections.
+     *
+     * @param message the message to be encoded.
+     * @return the size of the buffer to encode the message into.
+     */
+    private static int encodeBufferSize(Message message)
+    {
+        int size = ENCODE_BUFFER_HEADROOM;
+        if (message.getBody() instanceof Data)
+        {
+            Binary body = ((Data) message.getBody()).getValue();
+            if (body != null)
+            {
+                size += body.getLength();
+            }
+        }
+        return size;
+    }
+
     /**
      * Sends the message result for the previously received message.
      *
@@ -389,7 +419,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
         {
             try
             {
-                logger.LogInfo("Acknowledgement for received message is %s, method name is %s ", result.name(), logger.getMethodName());
+                logger.LogInfo("Acknowledgement for received message is %s, method name is %s ", result.name(), CustomLogger.METHOD_NAME);
                 // Codes_SRS_AMQPSIOTHUBCONNECTION_15_023: [If the message result is COMPLETE, ABANDON, or REJECT,
                 // the function shall acknowledge the last message with acknowledgement type COMPLETE, ABANDON, or REJECT respectively.]
                 switch (result)
@@ -405,7 +435,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
                         break;
                     default:
                         // should never happen.
-                        logger.LogError("Invalid IoT Hub message result (%s), method name is %s ", result.name(), logger.getMethodName());
+                        logger.LogError("Invalid IoT Hub message result (%s), method name is %s ", result.name(), CustomLogger.METHOD_NAME);
                         throw new IllegalStateException("Invalid IoT Hub message result.");
                 }
 
@@ -428,7 +458,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
     @Override
     public void onConnectionInit(Event event)
     {
-        logger.LogDebug("Entered in method %s", logger.getMethodName());
+        logger.LogDebug("Entered in method %s", CustomLogger.METHOD_NAME);
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_025: [The event handler shall get the Connection (Proton) object from the event handler and set the host name on the connection.]
         this.connection = event.getConnection();
         this.connection.setHostname(this.hostName);
@@ -451,7 +481,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
         this.session.open();
         receiver.open();
         sender.open();
-        logger.LogDebug("Exited from method %s", logger.getMethodName());
+        logger.LogDebug("Exited from method %s", CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -461,7 +491,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
     @Override
     public void onConnectionBound(Event event)
     {
-        logger.LogDebug("Entered in method %s", logger.getMethodName());
+        logger.LogDebug("Entered in method %s", CustomLogger.METHOD_NAME);
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_030: [The event handler shall get the Transport (Proton) object from the event.]
         Transport transport = event.getConnection().getTransport();
         if(transport != null){
@@ -484,15 +514,15 @@ public final class AmqpsIotHubConnection extends BaseHandler
         {
             openLock.notifyLock();
         }
-        logger.LogDebug("Exited from method %s", logger.getMethodName());
+        logger.LogDebug("Exited from method %s", CustomLogger.METHOD_NAME);
     }
 
     @Override
     public void onConnectionUnbound(Event event)
     {
-        logger.LogDebug("Entered in method %s", logger.getMethodName());
+        logger.LogDebug("Entered in method %s", CustomLogger.METHOD_NAME);
         this.state = State.CLOSED;
-        logger.LogDebug("Exited from method %s", logger.getMethodName());
+        logger.LogDebug("Exited from method %s", CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -502,7 +532,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
     @Override
     public void onReactorInit(Event event)
     {
-        logger.LogDebug("Entered in method %s", logger.getMethodName());
+        logger.LogDebug("Entered in method %s", CustomLogger.METHOD_NAME);
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_033: [The event handler shall set the current handler to handle the connection events.]
         if(this.useWebSockets)
         {
@@ -513,13 +543,13 @@ public final class AmqpsIotHubConnection extends BaseHandler
         {
             event.getReactor().connectionToHost(this.config.getIotHubHostname(), amqpPort, this);
         }
-        logger.LogDebug("Exited from method %s", logger.getMethodName());
+        logger.LogDebug("Exited from method %s", CustomLogger.METHOD_NAME);
     }
 
     @Override
     public void onReactorFinal(Event event)
     {
-        logger.LogDebug("Entered in method %s", logger.getMethodName());
+        logger.LogDebug("Entered in method %s", CustomLogger.METHOD_NAME);
         synchronized (closeLock)
         {
             closeLock.notifyLock();
@@ -539,7 +569,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
                 e.printStackTrace();
             }
         }
-        logger.LogDebug("Exited from method %s", logger.getMethodName());
+        logger.LogDebug("Exited from method %s", CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -549,29 +579,29 @@ public final class AmqpsIotHubConnection extends BaseHandler
     @Override
     public void onDelivery(Event event)
     {
-        logger.LogDebug("Entered in method %s", logger.getMethodName());
+        logger.LogDebug("Entered in method %s", CustomLogger.METHOD_NAME);
         if(event.getLink().getName().equals(receiveTag))
         {
-            logger.LogInfo("Reading the receiver link, method name is %s ", logger.getMethodName());
+            logger.LogInfo("Reading the receiver link, method name is %s ", CustomLogger.METHOD_NAME);
             // Codes_SRS_AMQPSIOTHUBCONNECTION_15_034: [If this link is the Receiver link, the event handler shall get the Receiver and Delivery (Proton) objects from the event.]
             Receiver receiveLink = (Receiver) event.getLink();
             Delivery delivery = receiveLink.current();
             if (delivery.isReadable() && !delivery.isPartial()) {
-                logger.LogInfo("Reading the received buffer, method name is %s ", logger.getMethodName());
+                logger.LogInfo("Reading the received buffer, method name is %s ", CustomLogger.METHOD_NAME);
                 // Codes_SRS_AMQPSIOTHUBCONNECTION_15_035: [The event handler shall read the received buffer.]
                 int size = delivery.pending();
                 byte[] buffer = new byte[size];
                 int read = receiveLink.recv(buffer, 0, buffer.length);
                 receiveLink.advance();
-                logger.LogInfo("Reading the received buffer completed, method name is %s ", logger.getMethodName());
+                logger.LogInfo("Reading the received buffer completed, method name is %s ", CustomLogger.METHOD_NAME);
                 // Codes_SRS_AMQPSIOTHUBCONNECTION_15_036: [The event handler shall create an AmqpsMessage object from the decoded buffer.]
                 AmqpsMessage msg = new AmqpsMessage();
 
                 // Codes_SRS_AMQPSIOTHUBCONNECTION_15_037: [The event handler shall set the AmqpsMessage Deliver (Proton) object.]
                 msg.setDelivery(delivery);
-                logger.LogInfo("Decoding the received message , method name is %s ", logger.getMethodName());
+                logger.LogInfo("Decoding the received message , method name is %s ", CustomLogger.METHOD_NAME);
                 msg.decode(buffer, 0, read);
-                logger.LogInfo("Decoding the received message completed , method name is %s ", logger.getMethodName());
+                logger.LogInfo("Decoding the received message completed , method name is %s ", CustomLogger.METHOD_NAME);
                 // Codes_SRS_AMQPSIOTHUBCONNECTION_15_049: [All the listeners shall be notified that a message was received from the server.]
                 this.messageReceivedFromServer(msg);
             }
@@ -581,15 +611,15 @@ public final class AmqpsIotHubConnection extends BaseHandler
             //Sender specific section for dispositions it receives
             if(event.getType() == Event.Type.DELIVERY)
             {
-                logger.LogInfo("Reading the delivery event in Sender link, method name is %s ", logger.getMethodName());
+                logger.LogInfo("Reading the delivery event in Sender link, method name is %s ", CustomLogger.METHOD_NAME);
                 // Codes_SRS_AMQPSIOTHUBCONNECTION_15_038: [If this link is the Sender link and the event type is DELIVERY, the event handler shall get the Delivery (Proton) object from the event.]
                 Delivery d = event.getDelivery();
                 DeliveryState remoteState = d.getRemoteState();
 
                 // Codes_SRS_AMQPSIOTHUBCONNECTION_15_039: [The event handler shall note the remote delivery state and use it and the Delivery (Proton) hash code to inform the AmqpsIotHubConnection of the message receipt.]
                 boolean state = remoteState.equals(Accepted.getInstance());
-                logger.LogInfo("Is state of remote Delivery COMPLETE ? %s, method name is %s ", state, logger.getMethodName());
-                logger.LogInfo("Inform listener that a message has been sent to IoT Hub along with remote state, method name is %s ", logger.getMethodName());
+                logger.LogInfo("Is state of remote Delivery COMPLETE ? %s, method name is %s ", state, CustomLogger.METHOD_NAME);
+                logger.LogInfo("Inform listener that a message has been sent to IoT Hub along with remote state, method name is %s ", CustomLogger.METHOD_NAME);
                 //let any listener know that the message was received by the server
                 for(ServerListener listener : listeners)
                 {
@@ -597,7 +627,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
                 }
             }
         }
-        logger.LogDebug("Exited from method %s", logger.getMethodName());
+        logger.LogDebug("Exited from method %s", CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -607,11 +637,17 @@ public final class AmqpsIotHubConnection extends BaseHandler
     @Override
     public void onLinkFlow(Event event)
     {
-        logger.LogDebug("Entered in method %s", logger.getMethodName());
+        logger.LogDebug("Entered in method %s", CustomLogger.METHOD_NAME);
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_040: [The event handler shall save the remaining link credit.]
         this.linkCredit = event.getLink().getCredit();
-		logger.LogDebug("The link credit value is %s, method name is %s", this.linkCredit, logger.getMethodName());
-        logger.LogDebug("Exited from method %s", logger.getMethodName());
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_21_003: [If metrics are set, the event handler shall sample the link credit.]
+        IotHubClientMetrics clientMetrics = this.metrics;
+        if (clientMetrics != null)
+        {
+            clientMetrics.setLinkCredit(this.linkCredit);
+        }
+		logger.LogDebug("The link credit value is %s, method name is %s", this.linkCredit, CustomLogger.METHOD_NAME);
+        logger.LogDebug("Exited from method %s", CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -622,14 +658,14 @@ public final class AmqpsIotHubConnection extends BaseHandler
     @Override
     public void onLinkRemoteOpen(Event event)
     {
-        logger.LogDebug("Entered in method %s", logger.getMethodName());
+        logger.LogDebug("Entered in method %s", CustomLogger.METHOD_NAME);
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_041: [The connection state shall be considered OPEN when the sender link is open remotely.]
         Link link = event.getLink();
         if (link.getName().equals(sendTag))
         {
             this.state = State.OPEN;
         }
-        logger.LogDebug("Exited from method %s", logger.getMethodName());
+        logger.LogDebug("Exited from method %s", CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -641,17 +677,17 @@ public final class AmqpsIotHubConnection extends BaseHandler
     @Override
     public void onLinkRemoteClose(Event event)
     {
-        logger.LogDebug("Entered in method %s", logger.getMethodName());
+        logger.LogDebug("Entered in method %s", CustomLogger.METHOD_NAME);
         this.state = State.CLOSED;
 
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_042 [The event handler shall attempt to startReconnect to the IoTHub.]
         if (event.getLink().getName().equals(sendTag))
         {
-            logger.LogInfo("Starting to reconnect to IotHub, method name is %s ", logger.getMethodName());
+            logger.LogInfo("Starting to reconnect to IotHub, method name is %s ", CustomLogger.METHOD_NAME);
             // Codes_SRS_AMQPSIOTHUBCONNECTION_15_048: [The event handler shall attempt to startReconnect to IoTHub.]
             startReconnect();
         }
-        logger.LogDebug("Exited from method %s", logger.getMethodName());
+        logger.LogDebug("Exited from method %s", CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -661,7 +697,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
     @Override
     public void onLinkInit(Event event)
     {
-        logger.LogDebug("Entered in method %s", logger.getMethodName());
+        logger.LogDebug("Entered in method %s", CustomLogger.METHOD_NAME);
         Link link = event.getLink();
         if(link.getName().equals(sendTag))
         {
@@ -684,7 +720,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
             // Codes_SRS_AMQPSIOTHUBCONNECTION_14_047: [If the link is the Receiver link, the event handler shall set its source to the created Source (Proton) object.]
             link.setSource(source);
         }
-        logger.LogDebug("Exited from method %s", logger.getMethodName());
+        logger.LogDebug("Exited from method %s", CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -694,12 +730,12 @@ public final class AmqpsIotHubConnection extends BaseHandler
     @Override
     public void onTransportError(Event event)
     {
-        logger.LogDebug("Entered in method %s", logger.getMethodName());
+        logger.LogDebug("Entered in method %s", CustomLogger.METHOD_NAME);
         this.state = State.CLOSED;
-        logger.LogInfo("Starting to reconnect to IotHub, method name is %s ", logger.getMethodName());
+        logger.LogInfo("Starting to reconnect to IotHub, method name is %s ", CustomLogger.METHOD_NAME);
         // Codes_SRS_AMQPSIOTHUBCONNECTION_15_048: [The event handler shall attempt to startReconnect to IoTHub.]
         startReconnect();
-        logger.LogDebug("Exited from method %s", logger.getMethodName());
+        logger.LogDebug("Exited from method %s", CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -711,6 +747,16 @@ public final class AmqpsIotHubConnection extends BaseHandler
         listeners.add(listener);
     }
 
+    /**
+     * Sets the metrics the link credit and reconnections are recorded in.
+     * @param metrics the metrics of the client. Can be {@code null}.
+     */
+    public void setMetrics(IotHubClientMetrics metrics)
+    {
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_21_002: [The function shall save the metrics.]
+        this.metrics = metrics;
+    }
+
     /**
      * Notifies all listeners that the connection was lost and attempts to startReconnect to the IoTHub
      * using an exponential backoff interval.
@@ -719,6 +765,13 @@ public final class AmqpsIotHubConnection extends BaseHandler
     {
         reconnectCall = true;
 
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_21_004: [If metrics are set, the function shall record the reconnection.]
+        IotHubClientMetrics clientMetrics = this.metrics;
+        if (clientMetrics != null)
+        {
+            clientMetrics.recordReconnect();
+        }
+
         for(ServerListener listener : listeners)
         {
             listener.connectionLost();
@@ -728,7 +781,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
             currentReconnectionAttempt = 0;
 
         System.out.println("Lost connection to the server. Reconnection attempt " + currentReconnectionAttempt++ + "...");
-        logger.LogInfo("Lost connection to the server. Reconnection attempt %s, method name is %s ", currentReconnectionAttempt, logger.getMethodName());
+        logger.LogInfo("Lost connection to the server. Reconnection attempt %s, method name is %s ", currentReconnectionAttempt, CustomLogger.METHOD_NAME);
         try
         {
             Thread.sleep(TransportUtils.generateSleepInterval(currentReconnectionAttempt));
@@ -746,7 +799,7 @@ public final class AmqpsIotHubConnection extends BaseHandler
      */
     private void messageReceivedFromServer(AmqpsMessage msg)
     {
-        logger.LogInfo("All the listeners are informed that a message has been received, method name is %s ", logger.getMethodName());
+        logger.LogInfo("All the listeners are informed that a message has been received, method name is %s ", CustomLogger.METHOD_NAME);
         for(ServerListener listener : listeners)
         {
             listener.messageReceived(msg);
@@ -7,11 +7,14 @@ import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.Message;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 import com.microsoft.azure.sdk.iot.device.CustomLogger;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
 import org.apache.qpid.proton.amqp.messaging.Data;
 import org.apache.qpid.proton.amqp.messaging.Properties;
@@ -43,8 +46,8 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
     /** The {@link AmqpsIotHubConnection} underlying this transport. */
     private AmqpsIotHubConnection connection;
 
-    /** Messages waiting to be sent to the IoT Hub. */
-    private final Queue<IotHubOutboundPacket> waitingMessages = new LinkedBlockingDeque<>();
+    /** Messages waiting to be sent to the IoT Hub, in one lane per message priority. */
+    private final IotHubOutboundQueue waitingMessages = new IotHubOutboundQueue();
 
     /** Messages which are sent to the IoT Hub but did not receive ack yet. */
     private Map<Integer, IotHubOutboundPacket> inProgressMessages = new ConcurrentHashMap<>();
@@ -59,6 +62,24 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
 
     private final Boolean useWebSockets;
 
+    /** The signal raised when there is new work for the sender. Can be {@code null}. */
+    private volatile IotHubSendSignal sendSignal;
+
+    /** The signal raised when a received message is waiting to be handled. Can be {@code null}. */
+    private volatile IotHubSendSignal receiveSignal;
+
+    /** The buffer capping the messages held by the transport. Can be {@code null}. */
+    private volatile IotHubOutboundBuffer outboundBuffer;
+
+    /** The dispatcher the event callbacks are handed to. Can be {@code null}. */
+    private volatile IotHubCallbackDispatcher callbackDispatcher;
+
+    /** The journal keeping the messages held by the transport on disk. Can be {@code null}. */
+    private volatile IotHubOutboundJournal outboundJournal;
+
+    /** The metrics the messages and callbacks are recorded in. Can be {@code null}. */
+    private volatile IotHubClientMetrics metrics;
+
     private CustomLogger logger;
     /**
      * Constructs an instance from the given {@link DeviceClientConfig}
@@ -92,13 +113,15 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         {
             return;
         }
-        logger.LogInfo("Opening the connection..., method name is %s ", logger.getMethodName());
+        logger.LogInfo("Opening the connection..., method name is %s ", CustomLogger.METHOD_NAME);
         // Codes_SRS_AMQPSTRANSPORT_15_004: [The function shall open an AMQPS connection with the IoT Hub given in the configuration.]
         this.connection = new AmqpsIotHubConnection(this.config, this.useWebSockets);
         try
         {
             // Codes_SRS_AMQPSTRANSPORT_15_005: [The function shall add the transport to the list of listeners subscribed to the connection events.]
             this.connection.addListener(this);
+            // Codes_SRS_AMQPSTRANSPORT_21_017: [The function shall register the metrics, if any, with the connection.]
+            this.connection.setMetrics(this.metrics);
 
             this.connection.open();
         }
@@ -110,7 +133,7 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
 
         // Codes_SRS_AMQPSTRANSPORT_15_006: [If the connection was opened successfully, the transport state shall be set to OPEN.]
         this.state = State.OPEN;
-        logger.LogInfo("Connection has been opened, method name is %s ", logger.getMethodName());
+        logger.LogInfo("Connection has been opened, method name is %s ", CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -125,17 +148,17 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         // Codes_SRS_AMQPSTRANSPORT_15_007: [If the AMQPS connection is closed, the function shall do nothing.]
         if (this.state == State.CLOSED)
         {
-            logger.LogInfo("The connection is already in closed state, method name is %s ", logger.getMethodName());
+            logger.LogInfo("The connection is already in closed state, method name is %s ", CustomLogger.METHOD_NAME);
             return;
         }
 
-        logger.LogInfo("Starting to close the connection..., method name is %s ", logger.getMethodName());
+        logger.LogInfo("Starting to close the connection..., method name is %s ", CustomLogger.METHOD_NAME);
         // Codes_SRS_AMQPSTRANSPORT_15_008: [The function shall close an AMQPS connection with the IoT Hub given in the configuration.]
         this.connection.close();
 
         // Codes_SRS_AMQPSTRANSPORT_15_009: [The function shall set the transport state to CLOSED.]
         this.state = State.CLOSED;
-        logger.LogInfo("Connection has been closed, method name is %s ", logger.getMethodName());
+        logger.LogInfo("Connection has been closed, method name is %s ", CustomLogger.METHOD_NAME);
     }
 
     /**
@@ -145,20 +168,35 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
      * @param callback the callback to be invoked when a response for the message is received.
      * @param callbackContext the context to be passed in when the callback is invoked.
      *
-     * @throws IllegalStateException if the transport is closed.
+     * @throws IllegalStateException if the transport is closed, or if the
+     * outbound buffer has no room for the message.
      */
     public void addMessage(Message message, IotHubEventCallback callback, Object callbackContext) throws IllegalStateException
     {
         // Codes_SRS_AMQPSTRANSPORT_15_010: [If the AMQPS session is closed, the function shall throw an IllegalStateException.]
         if (this.state == State.CLOSED)
         {
-            logger.LogError("Cannot add a message when the AMQPS transport is closed, method name is %s ", logger.getMethodName());
+            logger.LogError("Cannot add a message when the AMQPS transport is closed, method name is %s ", CustomLogger.METHOD_NAME);
             throw new IllegalStateException("Cannot add a message when the AMQPS transport is closed.");
         }
 
         // Codes_SRS_AMQPSTRANSPORT_15_011: [The function shall add a packet containing the message, callback, and callback context to the queue of messages waiting to be sent.]
         IotHubOutboundPacket packet = new IotHubOutboundPacket(message, callback, callbackContext);
-        this.waitingMessages.add(packet);
+        // Codes_SRS_AMQPSTRANSPORT_21_005: [If an outbound buffer is set, the function shall add the packet only if the buffer admits it.]
+        IotHubOutboundBuffer buffer = this.outboundBuffer;
+        if (buffer == null || buffer.acquire(packet, this.waitingMessages, this.callbackList))
+        {
+            // Codes_SRS_AMQPSTRANSPORT_21_011: [If an outbound journal is set, the function shall record the packet in it before adding it to the queue of messages waiting to be sent.]
+            IotHubOutboundJournal journal = this.outboundJournal;
+            if (journal != null)
+            {
+                journal.record(packet);
+            }
+            this.waitingMessages.add(packet);
+        }
+
+        // Codes_SRS_AMQPSTRANSPORT_21_001: [If a send signal is set, the function shall raise it after adding the packet.]
+        this.raiseSendSignal();
     }
 
     /**
@@ -177,10 +215,18 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         // Codes_SRS_AMQPSTRANSPORT_15_012: [If the AMQPS session is closed, the function shall throw an IllegalStateException.]
         if (this.state == State.CLOSED)
         {
-            logger.LogError("Cannot send messages when the AMQPS transport is closed, method name is %s ", logger.getMethodName());
+            logger.LogError("Cannot send messages when the AMQPS transport is closed, method name is %s ", CustomLogger.METHOD_NAME);
             throw new IllegalStateException("Cannot send messages when the AMQPS transport is closed.");
         }
 
+        // Codes_SRS_AMQPSTRANSPORT_21_015: [The function shall remove the expired packets from the waiting list, release and checkpoint them, and add a callback with the MESSAGE_EXPIRED status for each to the callback list.]
+        for (IotHubOutboundPacket packet : this.waitingMessages.pollExpired(System.currentTimeMillis()))
+        {
+            this.releaseFromOutboundBuffer(packet);
+            this.checkpointInOutboundJournal(packet);
+            this.callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_EXPIRED, packet.getCallback(), packet.getContext()));
+        }
+
         // Codes_SRS_AMQPSTRANSPORT_15_013: [If there are no messages in the waiting list, the function shall return.]
         if (this.waitingMessages.size() <= 0)
         {
@@ -188,29 +234,38 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         }
 
         Collection<IotHubOutboundPacket> failedMessages = new ArrayList<>() ;
+        int sentCount = 0;
+        long sentBytes = 0;
 
         // Codes_SRS_AMQPSTRANSPORT_15_014: [The function shall attempt to send every message on its waiting list, one at a time.]
         while (!this.waitingMessages.isEmpty())
         {
-           logger.LogInfo("Get the message from waiting message queue to be sent to IoT Hub, method name is %s ", logger.getMethodName());
-           IotHubOutboundPacket packet = this.waitingMessages.remove();
+           logger.LogInfo("Get the message from waiting message queue to be sent to IoT Hub, method name is %s ", CustomLogger.METHOD_NAME);
+           // the packet may have been dropped by the outbound buffer meanwhile.
+           IotHubOutboundPacket packet = this.waitingMessages.poll();
+            if (packet == null)
+            {
+                break;
+            }
 
             Message message = packet.getMessage();
 
             // Codes_SRS_AMQPSTRANSPORT_15_015: [The function shall skip messages with null or empty body.]
-            if (message != null && message.getBytes().length > 0)
+            if (message != null && message.getBodyLength() > 0)
             {
                 // Codes_SRS_AMQPSTRANSPORT_15_039: [If the message is expired, the function shall create a callback
                 // with the MESSAGE_EXPIRED status and add it to the callback list.]
                 if (message.isExpired())
                 {
-                    logger.LogInfo("Creating a callback for the expired message with MESSAGE_EXPIRED status, method name is %s ", logger.getMethodName());
+                    logger.LogInfo("Creating a callback for the expired message with MESSAGE_EXPIRED status, method name is %s ", CustomLogger.METHOD_NAME);
+                    this.releaseFromOutboundBuffer(packet);
+                    this.checkpointInOutboundJournal(packet);
                     IotHubCallbackPacket callbackPacket = new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_EXPIRED, packet.getCallback(), packet.getContext());
                     this.callbackList.add(callbackPacket);
                 }
                 else
                 {
-                    logger.LogInfo("Converting the IoT Hub message into AmqpsMessage, method name is %s ", logger.getMethodName());
+                    logger.LogInfo("Converting the IoT Hub message into AmqpsMessage, method name is %s ", CustomLogger.METHOD_NAME);
                     // Codes_SRS_AMQPSTRANSPORT_15_036: [The function shall create a new Proton message from the IoTHub message.]
                     MessageImpl protonMessage = iotHubMessageToProtonMessage(message);
 
@@ -221,6 +276,8 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
                     if (sendHash != -1)
                     {
                         this.inProgressMessages.put(sendHash, packet);
+                        sentCount++;
+                        sentBytes += message.getBodyLength();
                     }
                     // Codes_SRS_AMQPSTRANSPORT_15_017: [If the sent message hash is not valid, it shall be buffered to be sent in a subsequent attempt.]
                     else
@@ -229,9 +286,26 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
                     }
                 }
             }
+            else
+            {
+                this.releaseFromOutboundBuffer(packet);
+                this.checkpointInOutboundJournal(packet);
+            }
         }
 
         this.waitingMessages.addAll(failedMessages);
+
+        // Codes_SRS_AMQPSTRANSPORT_21_018: [If metrics are set, the function shall record the number and body bytes of the messages sent, and sample the number of messages waiting and in progress.]
+        IotHubClientMetrics clientMetrics = this.metrics;
+        if (clientMetrics != null)
+        {
+            if (sentCount > 0)
+            {
+                clientMetrics.recordSent(sentCount, sentBytes);
+            }
+            clientMetrics.setQueueDepth(this.waitingMessages.size());
+            clientMetrics.setInFlightCount(this.inProgressMessages.size());
+        }
     }
 
     /**
@@ -244,21 +318,39 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         // Codes_SRS_AMQPSTRANSPORT_15_019: [If the transport closed, the function shall throw an IllegalStateException.]
         if (this.state == State.CLOSED)
         {
-            logger.LogError("Cannot invoke callbacks when AMQPS transport is closed, method name is %s ", logger.getMethodName());
+            logger.LogError("Cannot invoke callbacks when AMQPS transport is closed, method name is %s ", CustomLogger.METHOD_NAME);
             throw new IllegalStateException("Cannot invoke callbacks when AMQPS transport is closed.");
         }
 
         // Codes_SRS_AMQPSTRANSPORT_15_020: [The function shall invoke all the callbacks from the callback queue.]
-        while (!this.callbackList.isEmpty())
+        IotHubCallbackDispatcher dispatcher = this.callbackDispatcher;
+        IotHubClientMetrics clientMetrics = this.metrics;
+        IotHubCallbackPacket packet;
+        while ((packet = this.callbackList.poll()) != null)
         {
-            IotHubCallbackPacket packet = this.callbackList.remove();
+            // Codes_SRS_AMQPSTRANSPORT_21_009: [If a callback dispatcher is set, the function shall hand every callback to it instead of invoking it.]
+            if (dispatcher != null)
+            {
+                dispatcher.dispatch(packet);
+                continue;
+            }
 
             IotHubStatusCode status = packet.getStatus();
             IotHubEventCallback callback = packet.getCallback();
             Object context = packet.getContext();
             
-            logger.LogInfo("Invoking the callback function for sent message, IoT Hub responded to message with status %s, method name is %s ", status.name(), logger.getMethodName());
-            callback.execute(status, context);
+            logger.LogInfo("Invoking the callback function for sent message, IoT Hub responded to message with status %s, method name is %s ", status.name(), CustomLogger.METHOD_NAME);
+            if (clientMetrics == null)
+            {
+                callback.execute(status, context);
+            }
+            else
+            {
+                // Codes_SRS_AMQPSTRANSPORT_21_020: [If metrics are set, the function shall record the time each callback it invokes runs for.]
+                long startNanos = System.nanoTime();
+                callback.execute(status, context);
+                clientMetrics.recordCallback(System.nanoTime() - startNanos);
+            }
         }
     }
 
@@ -277,17 +369,17 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         // Codes_SRS_AMQPSTRANSPORT_15_021: [If the transport is closed, the function shall throw an IllegalStateException.]
         if (this.state == State.CLOSED)
         {
-            logger.LogError("Cannot handle messages when AMQPS transport is closed, method name is %s ", logger.getMethodName());
+            logger.LogError("Cannot handle messages when AMQPS transport is closed, method name is %s ", CustomLogger.METHOD_NAME);
             throw new IllegalStateException("Cannot handle messages when AMQPS transport is closed.");
         }
         
-        logger.LogInfo("Get the callback function for the received message, method name is %s ", logger.getMethodName());
+        logger.LogInfo("Get the callback function for the received message, method name is %s ", CustomLogger.METHOD_NAME);
         MessageCallback callback = this.config.getMessageCallback();
 
         // Codes_SRS_AMQPSTRANSPORT_15_025: [If no callback is defined, the list of received messages is cleared.]
         if (callback == null)
         {
-            logger.LogError("Callback is not defined therefore response to IoT Hub cannot be generated. All received messages will be removed from receive message queue, method name is %s ", logger.getMethodName());
+            logger.LogError("Callback is not defined therefore response to IoT Hub cannot be generated. All received messages will be removed from receive message queue, method name is %s ", CustomLogger.METHOD_NAME);
             this.receivedMessages.clear();
             return;
         }
@@ -296,18 +388,25 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
         // Codes_SRS_AMQPSTRANSPORT_15_024: [If no message was received from IotHub, the function shall return.]
         if (this.receivedMessages.size() > 0)
         {
-            logger.LogInfo("Consuming a message received from IoT Hub using receive message queue, method name is %s ", logger.getMethodName());
+            logger.LogInfo("Consuming a message received from IoT Hub using receive message queue, method name is %s ", CustomLogger.METHOD_NAME);
             AmqpsMessage receivedMessage = this.receivedMessages.remove();
-            logger.LogInfo("Converting the AmqpsMessage to IoT Hub message, method name is %s ", logger.getMethodName());
+            logger.LogInfo("Converting the AmqpsMessage to IoT Hub message, method name is %s ", CustomLogger.METHOD_NAME);
             Message message = protonMessageToIoTHubMessage(receivedMessage);
 
+            // Codes_SRS_AMQPSTRANSPORT_21_021: [If metrics are set, the function shall record the body bytes of the message received.]
+            IotHubClientMetrics clientMetrics = this.metrics;
+            if (clientMetrics != null)
+            {
+                clientMetrics.recordReceived(message.getBodyLength());
+            }
+
 			// set  messageId from messageId property if it exists. Fix for GitHub issue #990
             if (message.getProperty("messageId") !=null)
 			{
 			  message.setMessageId(message.getProperty("messageId"));
 			}
                     
-            logger.LogInfo("Executing the callback function for received message, method name is %s ", logger.getMethodName());
+            logger.LogInfo("Executing the callback function for received message, method name is %s ", CustomLogger.METHOD_NAME);
             // Codes_SRS_AMQPSTRANSPORT_15_026: [The function shall invoke the callback on the message.]
             IotHubMessageResult result = callback.execute(message, this.config.getMessageContext());
 
@@ -316,9 +415,15 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
             // Codes_SRS_AMQPSTRANSPORT_15_028: [If the result could not be sent to IoTHub, the message shall be put back in the received messages queue to be processed again.]
             if (!ackResult)
             {
-                logger.LogWarn("Callback did not return a response for IoT Hub. Message has been added in the queue to be processed again, method name is %s", logger.getMethodName());
+                logger.LogWarn("Callback did not return a response for IoT Hub. Message has been added in the queue to be processed again, method name is %s", CustomLogger.METHOD_NAME);
                 receivedMessages.add(receivedMessage);
             }
+
+            // Codes_SRS_AMQPSTRANSPORT_21_025: [If a receive signal is set and messages are still waiting to be handled, the function shall raise it.]
+            if (!this.receivedMessages.isEmpty())
+            {
+                this.raiseReceiveSignal();
+            }
         }
     }
 
@@ -337,17 +442,29 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
             IotHubOutboundPacket packet = inProgressMessages.remove(messageHash);
             if (deliveryState)
             {
-                logger.LogInfo("Message with messageid %s has been successfully delivered to IoTHub, adding a callback to callbacklist with IotHubStatusCode.OK_EMPTY, method name is %s ", packet.getMessage().getMessageId(), logger.getMethodName());
+                logger.LogInfo("Message with messageid %s has been successfully delivered to IoTHub, adding a callback to callbacklist with IotHubStatusCode.OK_EMPTY, method name is %s ", packet.getMessage().getMessageId(), CustomLogger.METHOD_NAME);
                 // Codes_SRS_AMQPSTRANSPORT_15_030: [If the message was successfully delivered,
                 // its callback is added to the list of callbacks to be executed.]
+                this.releaseFromOutboundBuffer(packet);
+                this.checkpointInOutboundJournal(packet);
+                // Codes_SRS_AMQPSTRANSPORT_21_019: [If metrics are set, the function shall record the acknowledgement of the message, and sample the number of messages in progress.]
+                IotHubClientMetrics clientMetrics = this.metrics;
+                if (clientMetrics != null)
+                {
+                    clientMetrics.recordAcknowledged(packet.getCreatedNanos());
+                    clientMetrics.setInFlightCount(this.inProgressMessages.size());
+                }
                 IotHubCallbackPacket callbackPacket = new IotHubCallbackPacket(IotHubStatusCode.OK_EMPTY, packet.getCallback(), packet.getContext());
                 this.callbackList.add(callbackPacket);
             } else
             {
-                logger.LogInfo("Message with messageid %s was not delivered to IoTHub, it is buffered to be sent again, method name is %s ", packet.getMessage().getMessageId(), logger.getMethodName());
+                logger.LogInfo("Message with messageid %s was not delivered to IoTHub, it is buffered to be sent again, method name is %s ", packet.getMessage().getMessageId(), CustomLogger.METHOD_NAME);
                 // Codes_SRS_AMQPSTRANSPORT_15_031: [If the message was not delivered successfully, it is buffered to be sent again.]
                 waitingMessages.add(packet);
             }
+
+            // Codes_SRS_AMQPSTRANSPORT_21_002: [If a send signal is set, the function shall raise it after the acknowledged message was handled.]
+            this.raiseSendSignal();
         }
     }
 
@@ -356,8 +473,9 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
      */
     public void connectionLost()
     {
-        logger.LogInfo("The messages in progress are buffered to be sent again due to a connection loss, method name is %s ", logger.getMethodName());
+        logger.LogInfo("The messages in progress are buffered to be sent again due to a connection loss, method name is %s ", CustomLogger.METHOD_NAME);
         // Codes_SRS_AMQPSTRANSPORT_15_032: [The messages in progress are buffered to be sent again.]
+        // Codes_SRS_AMQPSTRANSPORT_21_014: [The messages in progress shall be buffered in the lane of their priority, so that they are not sent ahead of higher priority messages.]
         for (Map.Entry<Integer, IotHubOutboundPacket> entry : inProgressMessages.entrySet())
         {
             this.waitingMessages.add(entry.getValue());
@@ -365,6 +483,9 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
 
         // Codes_SRS_AMQPSTRANSPORT_15_033: [The map of messages in progress is cleared.]
         inProgressMessages.clear();
+
+        // Codes_SRS_AMQPSTRANSPORT_21_003: [If a send signal is set, the function shall raise it after the messages were buffered.]
+        this.raiseSendSignal();
     }
 
     /**
@@ -373,9 +494,11 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
      */
     public void messageReceived(AmqpsMessage message)
     {
-        logger.LogInfo("Message with hashcode %s is received from IotHub on %s, method name is %s ", message.hashCode(), new Date(), logger.getMethodName());
+        logger.LogInfo("Message with hashcode %s is received from IotHub on %s, method name is %s ", message.hashCode(), new Date(), CustomLogger.METHOD_NAME);
         // Codes_SRS_AMQPSTRANSPORT_15_034: [The message received is added to the list of messages to be processed.]
         this.receivedMessages.add(message);
+        // Codes_SRS_AMQPSTRANSPORT_21_026: [If a receive signal is set, the function shall raise it after the message was added.]
+        this.raiseReceiveSignal();
     }
 
     /**
@@ -393,6 +516,156 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
 
     }
 
+    /**
+     * Removes every message the IoT Hub has not acknowledged yet, whether it
+     * is still waiting to be sent or was sent without an acknowledgement.
+     *
+     * @return the packets removed, oldest first.
+     */
+    public List<IotHubOutboundPacket> removePendingPackets()
+    {
+        // Codes_SRS_AMQPSTRANSPORT_21_008: [The function shall remove and return all messages in progress followed by all packets on the waiting list, and release them from the outbound buffer.]
+        List<IotHubOutboundPacket> pending = new ArrayList<>(this.inProgressMessages.values());
+        this.inProgressMessages.clear();
+        IotHubOutboundPacket packet;
+        while ((packet = this.waitingMessages.poll()) != null)
+        {
+            pending.add(packet);
+        }
+
+        for (IotHubOutboundPacket pendingPacket : pending)
+        {
+            this.releaseFromOutboundBuffer(pendingPacket);
+        }
+
+        return pending;
+    }
+
+    /**
+     * Sets the signal to be raised whenever a message is added to the
+     * transport, acknowledged by the IoT Hub, or buffered to be sent again.
+     *
+     * @param sendSignal the signal to be raised. Can be {@code null}.
+     */
+    public void setSendSignal(IotHubSendSignal sendSignal)
+    {
+        // Codes_SRS_AMQPSTRANSPORT_21_004: [The function shall save the send signal.]
+        this.sendSignal = sendSignal;
+    }
+
+    /**
+     * Sets the signal to be raised whenever a message is received from the
+     * IoT Hub, or is still waiting to be handled after one was handled.
+     *
+     * @param receiveSignal the signal to be raised. Can be {@code null}.
+     */
+    public void setReceiveSignal(IotHubSendSignal receiveSignal)
+    {
+        // Codes_SRS_AMQPSTRANSPORT_21_024: [The function shall save the receive signal.]
+        this.receiveSignal = receiveSignal;
+    }
+
+    /**
+     * Sets the dispatcher delivering the event callbacks.
+     *
+     * @param callbackDispatcher the dispatcher to hand the callbacks to. Can be
+     * {@code null}.
+     */
+    public void setCallbackDispatcher(IotHubCallbackDispatcher callbackDispatcher)
+    {
+        // Codes_SRS_AMQPSTRANSPORT_21_010: [The function shall save the callback dispatcher.]
+        this.callbackDispatcher = callbackDispatcher;
+    }
+
+    /**
+     * Sets the buffer capping the messages held by the transport.
+     *
+     * @param outboundBuffer the buffer to account messages in. Can be {@code null}.
+     */
+    public void setOutboundBuffer(IotHubOutboundBuffer outboundBuffer)
+    {
+        // Codes_SRS_AMQPSTRANSPORT_21_007: [The function shall save the outbound buffer.]
+        this.outboundBuffer = outboundBuffer;
+    }
+
+    /**
+     * Sets the journal keeping the messages held by the transport on disk.
+     *
+     * @param outboundJournal the journal to record messages in. Can be
+     * {@code null}.
+     */
+    public void setOutboundJournal(IotHubOutboundJournal outboundJournal)
+    {
+        // Codes_SRS_AMQPSTRANSPORT_21_013: [The function shall save the outbound journal.]
+        this.outboundJournal = outboundJournal;
+    }
+
+    /**
+     * Sets the metrics the messages and callbacks are recorded in.
+     *
+     * @param metrics the metrics of the client. Can be {@code null}.
+     */
+    public void setMetrics(IotHubClientMetrics metrics)
+    {
+        // Codes_SRS_AMQPSTRANSPORT_21_022: [The function shall save the metrics, and register them with the connection if it is open.]
+        this.metrics = metrics;
+        AmqpsIotHubConnection currentConnection = this.connection;
+        if (currentConnection != null)
+        {
+            currentConnection.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Releases a completed packet from the outbound buffer, if one is set.
+     */
+    private void releaseFromOutboundBuffer(IotHubOutboundPacket packet)
+    {
+        // Codes_SRS_AMQPSTRANSPORT_21_006: [If an outbound buffer is set, every packet acknowledged, expired or skipped shall be released from it.]
+        IotHubOutboundBuffer buffer = this.outboundBuffer;
+        if (buffer != null)
+        {
+            buffer.release(packet);
+        }
+    }
+
+    /**
+     * Checkpoints a completed packet in the outbound journal, if one is set.
+     */
+    private void checkpointInOutboundJournal(IotHubOutboundPacket packet)
+    {
+        // Codes_SRS_AMQPSTRANSPORT_21_012: [If an outbound journal is set, every packet acknowledged, expired or skipped shall be checkpointed in it.]
+        IotHubOutboundJournal journal = this.outboundJournal;
+        if (journal != null)
+        {
+            journal.checkpoint(packet);
+        }
+    }
+
+    /**
+     * Raises the send signal, if one is set.
+     */
+    private void raiseSendSignal()
+    {
+        IotHubSendSignal signal = this.sendSignal;
+        if (signal != null)
+        {
+            signal.signal();
+        }
+    }
+
+    /**
+     * Raises the receive signal, if one is set.
+     */
+    private void raiseReceiveSignal()
+    {
+        IotHubSendSignal signal = this.receiveSignal;
+        if (signal != null)
+        {
+            signal.signal();
+        }
+    }
+
     /**
      * Converts an AMQPS message to a corresponding IoT Hub message.
      *
@@ -402,15 +675,22 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
      */
     private Message protonMessageToIoTHubMessage(MessageImpl protonMsg)
     {
-        logger.LogInfo("Started converting AmpqsMessage into IoT Hub message, method name is %s ", logger.getMethodName());
+        logger.LogInfo("Started converting AmpqsMessage into IoT Hub message, method name is %s ", CustomLogger.METHOD_NAME);
         Data d = (Data) protonMsg.getBody();
         Binary b = d.getValue();
-        byte[] msgBody = new byte[b.getLength()];
+        final byte[] msgBody = new byte[b.getLength()];
         ByteBuffer buffer = b.asByteBuffer();
         buffer.get(msgBody);
 
         Message msg = new Message(msgBody);
-        logger.LogInfo("Content of received message is %s, method name is %s ", new String(msg.getBytes(), Message.DEFAULT_IOTHUB_MESSAGE_CHARSET), logger.getMethodName());
+        logger.LogInfo("Content of received message is %s, method name is %s ", new CustomLogger.LazyArgument()
+        {
+            @Override
+            protected Object evaluate()
+            {
+                return new String(msgBody, Message.DEFAULT_IOTHUB_MESSAGE_CHARSET);
+            }
+        }, CustomLogger.METHOD_NAME);
         Properties properties = protonMsg.getProperties();
         //Call all of the getters for the Proton message Properties and set those properties
         //in the IoT Hub message properties if they exist.
@@ -458,7 +738,7 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
                 }
             }
         }
-        logger.LogInfo("Completed the conversion of AmpqsMessage into IoT Hub message, method name is %s ", logger.getMethodName());
+        logger.LogInfo("Completed the conversion of AmpqsMessage into IoT Hub message, method name is %s ", CustomLogger.METHOD_NAME);
         return msg;
     }
 
@@ -467,23 +747,36 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
      * @param message the IoTHub input message.
      * @return the proton message.
      */
-    private MessageImpl iotHubMessageToProtonMessage(com.microsoft.azure.sdk.iot.device.Message message)
+    private MessageImpl iotHubMessageToProtonMessage(final com.microsoft.azure.sdk.iot.device.Message message)
     {
-        logger.LogInfo("Started converting IoT Hub message into AmpqsMessage, method name is %s ", logger.getMethodName());
+        logger.LogInfo("Started converting IoT Hub message into AmpqsMessage, method name is %s ", CustomLogger.METHOD_NAME);
         MessageImpl outgoingMessage = (MessageImpl) Proton.message();
-        logger.LogInfo("Content of message is %s, method name is %s ", new String(message.getBytes(), Message.DEFAULT_IOTHUB_MESSAGE_CHARSET), logger.getMethodName());
+        logger.LogInfo("Content of message is %s, method name is %s ", new CustomLogger.LazyArgument()
+        {
+            @Override
+            protected Object evaluate()
+            {
+                return Message.DEFAULT_IOTHUB_MESSAGE_CHARSET.decode(message.getBodyBuffer());
+            }
+        }, CustomLogger.METHOD_NAME);
         Properties properties = new Properties();
         if(message.getMessageId() != null)
         {
             properties.setMessageId(message.getMessageId());
         }
+        // Codes_SRS_AMQPSTRANSPORT_21_016: [The function shall set the content encoding of the Proton message to the content encoding of the message, if any.]
+        if (message.getContentEncoding() != null)
+        {
+            properties.setContentEncoding(Symbol.valueOf(message.getContentEncoding()));
+        }
         outgoingMessage.setProperties(properties);
 
         // Codes_SRS_AMQPSTRANSPORT_15_038: [The function shall add all user properties to the application properties of the Proton message.]
-        if (message.getProperties().length > 0)
+        List<MessageProperty> messageProperties = message.getPropertyView();
+        if (messageProperties.size() > 0)
         {
-            Map<String, String> userProperties = new HashMap<>(message.getProperties().length);
-            for(MessageProperty messageProperty : message.getProperties())
+            Map<String, String> userProperties = new HashMap<>(messageProperties.size());
+            for(MessageProperty messageProperty : messageProperties)
             {
                 if (!MessageProperty.RESERVED_PROPERTY_NAMES.contains(messageProperty.getName()))
                 {
@@ -496,10 +789,12 @@ public final class AmqpsTransport implements IotHubTransport, ServerListener
             outgoingMessage.setApplicationProperties(applicationProperties);
         }
 
-        Binary binary = new Binary(message.getBytes());
+        // Codes_SRS_AMQPSTRANSPORT_21_023: [The function shall set the body of the Proton message to the message body, without copying it.]
+        byte[] body = message.getBodyArray();
+        Binary binary = new Binary(body, 0, body.length);
         Section section = new Data(binary);
         outgoingMessage.setBody(section);
-        logger.LogInfo("Started converting IoT Hub message into AmpqsMessage, method name is %s ", logger.getMethodName());
+        logger.LogInfo("Started converting IoT Hub message into AmpqsMessage, method name is %s ", CustomLogger.METHOD_NAME);
         return outgoingMessage;
     }
 }
\ No newline at end of file
@@ -3,17 +3,22 @@
 
 package com.microsoft.azure.sdk.iot.device.transport.https;
 
-import com.microsoft.azure.sdk.iot.device.Message;
 import com.microsoft.azure.sdk.iot.device.MessageProperty;
+import org.apache.commons.codec.binary.Base64;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import javax.naming.SizeLimitExceededException;
 
 /**
  * Builds a batched IoT Hub request body as a JSON array. The batched message
  * has a maximum size of 256 kb.
+ *
+ * Each message is written as a JSON object straight into a growable UTF-8
+ * buffer, which always holds the closed array, so adding a message takes time
+ * proportional to that message only, and the body is never encoded again.
  */
 public final class HttpsBatchMessage implements HttpsMessage
 {
@@ -32,8 +37,12 @@ public final class HttpsBatchMessage implements HttpsMessage
      */
     public static Charset BATCH_CHARSET = StandardCharsets.UTF_8;
 
-    /** The current batched message body. */
-    protected String batchBody;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    /** The current batched message body, in UTF-8, from index 0 to {@code batchLength}. */
+    protected byte[] batchBody;
+    /** The length of the current batched message body. */
+    protected int batchLength;
     /** The current number of messages in the batch. */
     protected int numMsgs;
 
@@ -41,7 +50,10 @@ public final class HttpsBatchMessage implements HttpsMessage
     public HttpsBatchMessage()
     {
         // Codes_SRS_HTTPSBATCHMESSAGE_11_001: [The constructor shall initialize the batch message with the body as an empty JSON array.]
-        this.batchBody = "[]";
+        this.batchBody = new byte[INITIAL_CAPACITY];
+        this.batchBody[0] = '[';
+        this.batchBody[1] = ']';
+        this.batchLength = 2;
         this.numMsgs = 0;
     }
 
@@ -57,26 +69,47 @@ public final class HttpsBatchMessage implements HttpsMessage
     public void addMessage(HttpsSingleMessage msg)
             throws SizeLimitExceededException
     {
-        String jsonMsg = msgToJson(msg);
-        // Codes_SRS_HTTPSBATCHMESSAGE_11_002: [The function shall add the message as a JSON object appended to the current JSON array.]
-        String newBatchBody = addJsonObjToArray(jsonMsg, this.batchBody);
+        byte[] body = msg.getBody();
+        // Codes_SRS_HTTPSBATCHMESSAGE_21_001: [If the message is Base64-encoded, or its body is not valid UTF-8, the JSON object shall have the body encoded in Base64, and the field "base64Encoded" set to true.]
+        boolean base64Encoded = msg.isBase64Encoded() || !isValidUtf8(body);
 
         // Codes_SRS_HTTPSBATCHMESSAGE_11_008: [If adding the message causes the batched message to exceed 256 kb in size, the function shall throw a SizeLimitExceededException.]
-        // Codes_SRS_HTTPSBATCHMESSAGE_11_009: [If the function throws a SizeLimitExceedException, the batched message shall remain as if the message was never added.]
-        byte[] newBatchBodyBytes = newBatchBody.getBytes(BATCH_CHARSET);
+        // Codes_SRS_HTTPSBATCHMESSAGE_21_002: [The function shall reject a message whose body alone cannot fit in the batch before writing any of it.]
+        long minimumSize = base64Encoded ? 4L * ((body.length + 2) / 3) : body.length;
+        if (this.batchLength + minimumSize > SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES)
+        {
+            throw sizeLimitExceeded(this.batchLength + minimumSize);
+        }
+
+        // Codes_SRS_HTTPSBATCHMESSAGE_11_002: [The function shall add the message as a JSON object appended to the current JSON array.]
+        int mark = this.batchLength;
+        if (this.numMsgs > 0)
+        {
+            this.batchBody[this.batchLength - 1] = ',';
+        }
+        else
+        {
+            this.batchLength--;
+        }
+        this.writeJsonObject(msg, body, base64Encoded);
+        this.writeByte(']');
 
-        if (newBatchBodyBytes.length > SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES) {
-            String errMsg = String.format("Service-bound message size (%d bytes) cannot exceed %d bytes.\n",
-                    newBatchBodyBytes.length, SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES);
-            throw new SizeLimitExceededException(errMsg);
+        // Codes_SRS_HTTPSBATCHMESSAGE_11_009: [If the function throws a SizeLimitExceedException, the batched message shall remain as if the message was never added.]
+        if (this.batchLength > SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES)
+        {
+            int size = this.batchLength;
+            this.batchLength = mark;
+            this.batchBody[mark - 1] = ']';
+            throw sizeLimitExceeded(size);
         }
 
-        this.batchBody = newBatchBody;
         this.numMsgs++;
     }
 
     /**
-     * Returns the current batch body as a UTF-8 encoded byte array.
+     * Returns the current batch body as a UTF-8 encoded byte array. The array
+     * is the one the batch is built in, trimmed to the length of the body, so
+     * it must not be modified.
      *
      * @return the current batch body as a UTF-8 encoded byte array.
      */
@@ -84,7 +117,12 @@ public final class HttpsBatchMessage implements HttpsMessage
     {
         // Codes_SRS_HTTPSBATCHMESSAGE_11_006: [The function shall return the current batch message body.]
         // Codes_SRS_HTTPSBATCHMESSAGE_11_007: [The batch message body shall be encoded using UTF-8.]
-        return this.batchBody.getBytes(BATCH_CHARSET);
+        // Codes_SRS_HTTPSBATCHMESSAGE_21_003: [The function shall return the buffer the body is built in, trimmed once to the length of the body, without encoding it again.]
+        if (this.batchBody.length != this.batchLength)
+        {
+            this.batchBody = Arrays.copyOf(this.batchBody, this.batchLength);
+        }
+        return this.batchBody;
     }
 
     /**
@@ -121,68 +159,232 @@ public final class HttpsBatchMessage implements HttpsMessage
     }
 
     /**
-     * Converts a service-bound message to a JSON object with the correct
-     * format.
-     *
-     * @param msg the message to be converted to a corresponding JSON object.
+     * Writes a service-bound message as a JSON object with the correct format.
      *
-     * @return the JSON string representation of the message.
+     * @param msg the message to be written.
+     * @param body the body of the message.
+     * @param base64Encoded whether the body is to be written in Base64.
      */
-    protected static String msgToJson(HttpsSingleMessage msg)
+    private void writeJsonObject(HttpsSingleMessage msg, byte[] body, boolean base64Encoded)
     {
-        StringBuilder jsonMsg = new StringBuilder("{");
         // Codes_SRS_HTTPSBATCHMESSAGE_11_003: [The JSON object shall have the field "body" set to the raw message.]
-        jsonMsg.append("\"body\":");
-        jsonMsg.append("\"" + msg.getBodyAsString() + "\",");
+        this.writeAscii("{\"body\":\"");
+        if (base64Encoded)
+        {
+            byte[] encoded = Base64.encodeBase64(body);
+            this.writeBytes(encoded, 0, encoded.length);
+        }
+        else
+        {
+            this.writeEscapedUtf8(body);
+        }
         // Codes_SRS_HTTPSBATCHMESSAGE_11_004: [The JSON object shall have the field "base64Encoded" set to whether the raw message was Base64-encoded.]
-        jsonMsg.append("\"base64Encoded\":");
-        jsonMsg.append(Boolean.toString(msg.isBase64Encoded()));
+        this.writeAscii("\",\"base64Encoded\":");
+        this.writeAscii(base64Encoded ? "true" : "false");
         // Codes_SRS_HTTPSBATCHMESSAGE_11_005: [The JSON object shall have the field "properties" set to a JSON object which has the field "content-type" set to the content type of the raw message.]
+        // Codes_SRS_HTTPSBATCHMESSAGE_21_004: [The function shall escape the body, property names and property values as JSON strings.]
         MessageProperty[] properties = msg.getProperties();
-        int numProperties = properties.length;
-        if (numProperties > 0)
+        if (properties.length > 0)
+        {
+            this.writeAscii(",\"properties\":{");
+            for (int i = 0; i < properties.length; ++i)
+            {
+                if (i > 0)
+                {
+                    this.writeByte(',');
+                }
+                this.writeJsonString(properties[i].getName());
+                this.writeByte(':');
+                this.writeJsonString(properties[i].getValue());
+            }
+            this.writeByte('}');
+        }
+        this.writeByte('}');
+    }
+
+    /**
+     * Returns whether the bytes are well-formed UTF-8, that is without
+     * overlong forms, surrogates or code points above U+10FFFF.
+     */
+    private static boolean isValidUtf8(byte[] bytes)
+    {
+        int i = 0;
+        while (i < bytes.length)
+        {
+            int b = bytes[i] & 0xff;
+            if (b < 0x80)
+            {
+                i++;
+                continue;
+            }
+
+            int count;
+            int min;
+            int codePoint;
+            if (b >= 0xc2 && b <= 0xdf)
+            {
+                count = 1;
+                min = 0x80;
+                codePoint = b & 0x1f;
+            }
+            else if (b >= 0xe0 && b <= 0xef)
+            {
+                count = 2;
+                min = 0x800;
+                codePoint = b & 0x0f;
+            }
+            else if (b >= 0xf0 && b <= 0xf4)
+            {
+                count = 3;
+                min = 0x10000;
+                codePoint = b & 0x07;
+            }
+            else
+            {
+                return false;
+            }
+
+            if (i + count >= bytes.length)
+            {
+                return false;
+            }
+            for (int j = 1; j <= count; j++)
+            {
+                int next = bytes[i + j] & 0xff;
+                if ((next & 0xc0) != 0x80)
+                {
+                    return false;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3f);
+            }
+            if (codePoint < min || codePoint > 0x10ffff || (codePoint >= 0xd800 && codePoint <= 0xdfff))
+            {
+                return false;
+            }
+            i += count + 1;
+        }
+        return true;
+    }
+
+    /** Writes UTF-8 bytes known to be well-formed, escaping them as the content of a JSON string. */
+    private void writeEscapedUtf8(byte[] bytes)
+    {
+        this.ensureCapacity(bytes.length);
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++)
+        {
+            int b = bytes[i] & 0xff;
+            if (b < 0x20 || b == '"' || b == '\\')
+            {
+                this.writeBytes(bytes, start, i - start);
+                this.writeEscape(b);
+                start = i + 1;
+            }
+        }
+        this.writeBytes(bytes, start, bytes.length - start);
+    }
+
+    /** Writes a string as a quoted and escaped JSON string, in UTF-8. */
+    private void writeJsonString(String s)
+    {
+        this.writeByte('"');
+        int count = s.length();
+        for (int i = 0; i < count; i++)
         {
-            jsonMsg.append(",");
-            jsonMsg.append("\"properties\":");
-            jsonMsg.append("{");
-            for (int i = 0; i < numProperties - 1; ++i)
+            char c = s.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\')
+            {
+                this.writeEscape(c);
+            }
+            else if (c < 0x80)
             {
-                MessageProperty property = properties[i];
-                jsonMsg.append("\"" + property.getName() + "\":");
-                jsonMsg.append("\"" + property.getValue() + "\",");
+                this.writeByte(c);
             }
-            if (numProperties > 0)
+            else
             {
-                MessageProperty property = properties[numProperties - 1];
-                jsonMsg.append("\"" + property.getName() + "\":");
-                jsonMsg.append("\"" + property.getValue() + "\"");
+                int end = i + 1;
+                if (Character.isHighSurrogate(c) && end < count && Character.isLowSurrogate(s.charAt(end)))
+                {
+                    end++;
+                }
+                byte[] encoded = s.substring(i, end).getBytes(BATCH_CHARSET);
+                this.writeBytes(encoded, 0, encoded.length);
+                i = end - 1;
             }
-            jsonMsg.append("}");
         }
-        jsonMsg.append("}");
+        this.writeByte('"');
+    }
 
-        return jsonMsg.toString();
+    private void writeEscape(int c)
+    {
+        this.ensureCapacity(6);
+        this.batchBody[this.batchLength++] = '\\';
+        switch (c)
+        {
+            case '"':
+            case '\\':
+                this.batchBody[this.batchLength++] = (byte) c;
+                break;
+            case '\b':
+                this.batchBody[this.batchLength++] = 'b';
+                break;
+            case '\f':
+                this.batchBody[this.batchLength++] = 'f';
+                break;
+            case '\n':
+                this.batchBody[this.batchLength++] = 'n';
+                break;
+            case '\r':
+                this.batchBody[this.batchLength++] = 'r';
+                break;
+            case '\t':
+                this.batchBody[this.batchLength++] = 't';
+                break;
+            default:
+                this.batchBody[this.batchLength++] = 'u';
+                this.batchBody[this.batchLength++] = '0';
+                this.batchBody[this.batchLength++] = '0';
+                this.batchBody[this.batchLength++] = HEX_DIGITS[(c >> 4) & 0xf];
+                this.batchBody[this.batchLength++] = HEX_DIGITS[c & 0xf];
+                break;
+        }
     }
 
-    /**
-     * Adds a JSON object to a JSON array.
-     *
-     * @param jsonObj the object to be added to the JSON array.
-     * @param jsonArray the JSON array.
-     *
-     * @return the JSON string representation of the JSON array with the object
-     * added.
-     */
-    protected static String addJsonObjToArray(String jsonObj, String jsonArray)
+    private void writeAscii(String s)
     {
-        if (jsonArray.equals("[]"))
+        int count = s.length();
+        this.ensureCapacity(count);
+        for (int i = 0; i < count; i++)
         {
-            return "[" + jsonObj + "]";
+            this.batchBody[this.batchLength++] = (byte) s.charAt(i);
         }
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int count)
+    {
+        this.ensureCapacity(count);
+        System.arraycopy(bytes, offset, this.batchBody, this.batchLength, count);
+        this.batchLength += count;
+    }
+
+    private void writeByte(int b)
+    {
+        this.ensureCapacity(1);
+        this.batchBody[this.batchLength++] = (byte) b;
+    }
 
-        // removes the closing brace of the JSON array.
-        String openJsonArray = jsonArray.substring(0, jsonArray.length() - 1);
+    private void ensureCapacity(int extra)
+    {
+        if (this.batchLength + extra > this.batchBody.length)
+        {
+            this.batchBody = Arrays.copyOf(this.batchBody, Math.max(this.batchBody.length * 2, this.batchLength + extra));
+        }
+    }
 
-        return openJsonArray + "," + jsonObj + "]";
+    private static SizeLimitExceededException sizeLimitExceeded(long size)
+    {
+        String errMsg = String.format("Service-bound message size (%d bytes) cannot exceed %d bytes.\n",
+                size, SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES);
+        return new SizeLimitExceededException(errMsg);
     }
 }
@@ -7,11 +7,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.ProtocolException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import com.microsoft.azure.sdk.iot.device.transport.TransportStreamReader;
+
 import javax.net.ssl.HttpsURLConnection;
 
 /**
@@ -40,6 +41,14 @@ public class HttpsConnection
      */
     protected byte[] body;
 
+    /**
+     * The stream the body is copied from while it is sent, instead of
+     * {@link #body}, or {@code null} if the body is not streamed.
+     */
+    protected InputStream bodyStream;
+    /** The number of bytes of the streamed body. */
+    protected int bodyStreamLength;
+
     /**
      * Constructor. Opens a connection to the given URL.
      *
@@ -78,9 +87,29 @@ public class HttpsConnection
     public void connect() throws IOException
     {
         // Codes_SRS_HTTPSCONNECTION_11_004: [The function shall stream the request body, if present, through the connection.]
-        if (this.body.length > 0)
+        if (this.bodyStream != null)
+        {
+            InputStream stream = this.bodyStream;
+            this.bodyStream = null;
+            try
+            {
+                this.connection.setDoOutput(true);
+                this.connection.setFixedLengthStreamingMode(this.bodyStreamLength);
+                // Codes_SRS_HTTPSCONNECTION_21_003: [If the body is streamed, the function shall copy it from its stream to the connection through a pooled buffer, and close the stream.]
+                TransportStreamReader.copy(stream, this.connection.getOutputStream(), this.bodyStreamLength);
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+        else if (this.body.length > 0)
         {
             this.connection.setDoOutput(true);
+            // Codes_SRS_HTTPSCONNECTION_21_001: [The function shall set the connection to fixed-length streaming mode, with the length of the body, before streaming the body.]
+            // otherwise the connection buffers a second copy of the whole
+            // body, to find its length, before sending any of it.
+            this.connection.setFixedLengthStreamingMode(this.body.length);
             this.connection.getOutputStream().write(this.body);
         }
         // Codes_SRS_HTTPSCONNECTION_11_003: [The function shall send a request to the URL given in the constructor.]
@@ -103,7 +132,7 @@ public class HttpsConnection
         // Codes_SRS_HTTPSCONNECTION_11_007: [The function shall throw an IllegalArgumentException if the request currently has a non-empty body and the new method is not a POST or a PUT.]
         if (method != HttpsMethod.POST && method != HttpsMethod.PUT)
         {
-            if (this.body.length > 0)
+            if ((this.body.length > 0) || (this.bodyStream != null))
             {
                 throw new IllegalArgumentException(
                         "Cannot change the request method from POST "
@@ -178,6 +207,39 @@ public class HttpsConnection
         }
     }
 
+    /**
+     * Saves the stream the body is copied from when the request is sent, so
+     * that the body is never held in memory as a whole. The connection takes
+     * ownership of the stream, which it closes once the body is sent.
+     *
+     * @param stream the stream of the request body.
+     * @param length the number of bytes of the body.
+     *
+     * @throws IllegalArgumentException if the stream is null, the length is
+     * negative, or the request does not currently use method POST or PUT.
+     */
+    public void writeOutput(InputStream stream, int length)
+    {
+        // Codes_SRS_HTTPSCONNECTION_21_002: [If the stream is null, the length is negative, or the request does not currently use method POST or PUT, the function shall throw an IllegalArgumentException.]
+        if ((stream == null) || (length < 0))
+        {
+            throw new IllegalArgumentException("The body stream cannot be null, and its length cannot be negative.");
+        }
+        HttpsMethod method = HttpsMethod.valueOf(
+                this.connection.getRequestMethod());
+        if (method != HttpsMethod.POST && method != HttpsMethod.PUT)
+        {
+            throw new IllegalArgumentException(
+                    "Cannot write a body to a request that "
+                    + "is not a POST or a PUT request.");
+        }
+
+        // Codes_SRS_HTTPSCONNECTION_21_004: [The function shall save the stream and the length of the body, to be copied when the request is sent.]
+        this.bodyStream = stream;
+        this.bodyStreamLength = length;
+        this.body = new byte[0];
+    }
+
     /**
      * Reads from the input stream (response stream) and returns the response.
      *
@@ -191,7 +253,8 @@ public class HttpsConnection
         // Codes_SRS_HTTPSCONNECTION_11_011: [The function shall read from the input stream (response stream) and return the response.]
         // Codes_SRS_HTTPSCONNECTION_11_012: [The function shall throw an IOException if the input stream could not be accessed.]
         InputStream inputStream = this.connection.getInputStream();
-        byte[] input = readInputStream(inputStream);
+        // Codes_SRS_HTTPSCONNECTION_21_021: [The function shall read the stream in bulk, using the response Content-Length as a sizing hint.]
+        byte[] input = TransportStreamReader.readAll(inputStream, this.connection.getContentLength());
         // Codes_SRS_HTTPSCONNECTION_11_019: [The function shall close the input stream after it has been completely read.]
         inputStream.close();
 
@@ -216,7 +279,8 @@ public class HttpsConnection
         // if there is no error reason, getErrorStream() returns null.
         if (errorStream != null)
         {
-            error = readInputStream(errorStream);
+            // Codes_SRS_HTTPSCONNECTION_21_022: [The function shall read the error stream in bulk, using the response Content-Length as a sizing hint.]
+            error = TransportStreamReader.readAll(errorStream, this.connection.getContentLength());
             // Codes_SRS_HTTPSCONNECTION_11_020: [The function shall close the error stream after it has been completely read.]
             errorStream.close();
         }
@@ -254,37 +318,6 @@ public class HttpsConnection
         return this.connection.getHeaderFields();
     }
 
-    /**
-     * Reads the input stream until the stream is empty.
-     *
-     * @param stream the input stream.
-     *
-     * @return the content of the input stream.
-     *
-     * @throws IOException if the input stream could not be read from.
-     */
-    protected static byte[] readInputStream(InputStream stream)
-            throws IOException
-    {
-        ArrayList<Byte> byteBuffer = new ArrayList<>();
-        int nextByte = -1;
-        // read(byte[]) reads the byte into the buffer and returns the number
-        // of bytes read, or -1 if the end of the stream has been reached.
-        while ((nextByte = stream.read()) > -1)
-        {
-            byteBuffer.add((byte) nextByte);
-        }
-
-        int bufferSize = byteBuffer.size();
-        byte[] byteArray = new byte[bufferSize];
-        for (int i = 0; i < bufferSize; ++i)
-        {
-            byteArray[i] = byteBuffer.get(i);
-        }
-
-        return byteArray;
-    }
-
     protected HttpsConnection()
     {
         this.connection = null;
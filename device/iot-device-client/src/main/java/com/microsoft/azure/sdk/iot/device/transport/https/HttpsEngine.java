@@ -0,0 +1,58 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.https;
+
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Carries the {@link HttpsRequest}s created with it to the IoT Hub. By
+ * default an {@link HttpsIotHubConnection} sends each request over its own
+ * {@link HttpsConnection}; a client can plug in an engine instead, such as an
+ * {@link HttpsPersistentEngine}, with the <b>SetHttpsEngine</b> option.
+ */
+public interface HttpsEngine
+{
+    /**
+     * Sends a request and waits for its response.
+     *
+     * @param request the request.
+     *
+     * @return the response, with an empty body and the content as error
+     * reason if its status is 400 or higher.
+     *
+     * @throws IOException if the IoT Hub could not be reached.
+     */
+    HttpsResponse send(HttpsRequest request) throws IOException;
+
+    /**
+     * Sends requests for the same host back to back, without waiting for the
+     * response of each, and waits for all the responses. Only the last
+     * request may use a method that is not idempotent, such as POST.
+     *
+     * @param requests the requests, in the order they are sent.
+     *
+     * @return the responses, in the order of the requests.
+     *
+     * @throws IOException if the IoT Hub could not be reached.
+     * @throws IllegalArgumentException if the requests are for different
+     * hosts, or a request that is not the last one is not idempotent.
+     */
+    List<HttpsResponse> sendPipelined(List<HttpsRequest> requests) throws IOException;
+
+    /**
+     * Sets the metrics the connections used are recorded in.
+     *
+     * @param metrics the metrics of the client. Can be {@code null}.
+     */
+    void setMetrics(IotHubClientMetrics metrics);
+
+    /**
+     * Closes the connections that are not in use. The engine stays usable,
+     * and opens new connections as needed.
+     */
+    void close();
+}
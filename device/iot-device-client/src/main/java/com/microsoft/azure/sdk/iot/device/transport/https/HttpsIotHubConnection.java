@@ -4,12 +4,14 @@
 package com.microsoft.azure.sdk.iot.device.transport.https;
 
 import com.microsoft.azure.sdk.iot.device.*;
-import com.microsoft.azure.sdk.iot.device.auth.IotHubSasToken;
 import com.microsoft.azure.sdk.iot.device.net.*;
 import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * An HTTPS connection between a device and an IoT Hub. Contains functionality
@@ -17,11 +19,21 @@ import java.net.URL;
  */
 public class HttpsIotHubConnection
 {
-    /** The HTTPS connection lock. */
-    protected static final Object HTTPS_CONNECTION_LOCK = new Object();
+    /** Serializes the events sent on this connection. */
+    protected final Object sendLock = new Object();
+    /**
+     * Serializes receiving messages and sending their results on this
+     * connection, since both use the saved message e-tag.
+     */
+    protected final Object receiveLock = new Object();
 
     /** The client configuration. */
     protected final DeviceClientConfig config;
+    /**
+     * The engine sending the requests, or {@code null} to send each request
+     * on its own {@link HttpsConnection}.
+     */
+    protected final HttpsEngine engine;
     /**
      * The message e-tag. Obtained when the device receives a
      * message and used when sending a message result back to
@@ -37,11 +49,33 @@ public class HttpsIotHubConnection
      */
     public HttpsIotHubConnection(DeviceClientConfig config)
     {
-        synchronized (HTTPS_CONNECTION_LOCK)
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_001: [The constructor shall save the client configuration.]
+        this.config = config;
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_046: [The constructor shall send each request on its own HttpsConnection.]
+        this.engine = null;
+    }
+
+    /**
+     * Constructs an instance from the given {@link DeviceClientConfig}
+     * object, sending the requests with the given engine.
+     *
+     * @param config the client configuration.
+     * @param engine the engine sending the requests.
+     *
+     * @throws IllegalArgumentException if the engine is {@code null}.
+     */
+    public HttpsIotHubConnection(DeviceClientConfig config, HttpsEngine engine)
+    {
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_047: [If the engine is null, the constructor shall throw an IllegalArgumentException.]
+        if (engine == null)
         {
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_001: [The constructor shall save the client configuration.]
-            this.config = config;
+            throw new IllegalArgumentException("engine cannot be null.");
         }
+
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_001: [The constructor shall save the client configuration.]
+        this.config = config;
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_048: [The constructor shall save the engine, which all the requests are created with.]
+        this.engine = engine;
     }
 
     /**
@@ -55,36 +89,10 @@ public class HttpsIotHubConnection
      */
     public IotHubStatusCode sendEvent(HttpsMessage msg) throws IOException
     {
-        synchronized (HTTPS_CONNECTION_LOCK)
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_040: [The function shall only be serialized with other calls to sendEvent on the same connection.]
+        synchronized (this.sendLock)
         {
-            String iotHubHostname = this.config.getIotHubHostname();
-            String deviceId = this.config.getDeviceId();
-            int readTimeoutMillis = this.config.getReadTimeoutMillis();
-
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_002: [The function shall send a request to the URL 'https://[iotHubHostname]/devices/[deviceId]/messages/events?api-version=2016-02-03'.]
-            IotHubEventUri eventUri = new IotHubEventUri(iotHubHostname, deviceId);
-            URL eventUrl = new URL("https://" + eventUri.toString());
-            IotHubSasToken sasToken = new IotHubSasToken(this.config, System.currentTimeMillis() / 1000l +
-                    this.config.getTokenValidSecs() + 1l);
-
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_003: [The function shall send a POST request.]
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_004: [The function shall set the request body to the message body.]
-            HttpsRequest request =
-                    new HttpsRequest(eventUrl, HttpsMethod.POST, msg.getBody());
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_005: [The function shall write each message property as a request header.]
-            for (MessageProperty property : msg.getProperties())
-            {
-                request.setHeaderField(property.getName(),
-                        property.getValue());
-            }
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_006: [The function shall set the request read timeout to be the configuration parameter readTimeoutMillis.]
-            request.setReadTimeoutMillis(readTimeoutMillis).
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_007: [The function shall set the header field 'authorization' to be a valid SAS token generated from the configuration parameters.]
-                            setHeaderField("authorization", sasToken.toString()).
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_008: [The function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/events'.]
-                            setHeaderField("iothub-to", eventUri.getPath()).
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_009: [The function shall set the header field 'content-type' to be the message content type.]
-                            setHeaderField("content-type", msg.getContentType());
+            HttpsRequest request = this.createEventRequest(msg);
 
             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_012: [If the IoT Hub could not be reached, the function shall throw an IOException.]
             HttpsResponse response = request.send();
@@ -104,7 +112,8 @@ public class HttpsIotHubConnection
      */
     public Message receiveMessage() throws IOException
     {
-        synchronized (HTTPS_CONNECTION_LOCK)
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_041: [The function shall only be serialized with other calls to receiveMessage and sendMessageResult on the same connection.]
+        synchronized (this.receiveLock)
         {
             String iotHubHostname = this.config.getIotHubHostname();
             String deviceId = this.config.getDeviceId();
@@ -115,17 +124,17 @@ public class HttpsIotHubConnection
             IotHubMessageUri messageUri = new IotHubMessageUri(iotHubHostname, deviceId);
             URL messageUrl = new URL("https://" + messageUri.toString());
 
-            IotHubSasToken sasToken = new IotHubSasToken(this.config, System.currentTimeMillis() / 1000l +
-                    this.config.getTokenValidSecs() + 1l);
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_21_044: [The function shall obtain the SAS token from the SAS token manager of the config.]
+            String sasToken = this.config.getSasTokenManager().getSasToken();
 
             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_014: [The function shall send a GET request.]
             HttpsRequest request =
-                    new HttpsRequest(messageUrl, HttpsMethod.GET, new byte[0]).
+                    new HttpsRequest(messageUrl, HttpsMethod.GET, new byte[0], this.engine).
                             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_015: [The function shall set the request read timeout to be the configuration parameter readTimeoutMillis.]
                                     setReadTimeoutMillis(readTimeoutMillis).
                             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_016: [The function shall set the header field 'authorization' to be a valid SAS token generated from the configuration parameters.]
                                     setHeaderField("authorization",
-                                    sasToken.toString()).
+                                    sasToken).
                             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_017: [The function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/devicebound'.]
                                     setHeaderField("iothub-to",
                                     messageUri.getPath()).
@@ -167,7 +176,8 @@ public class HttpsIotHubConnection
     public void sendMessageResult(IotHubMessageResult result)
             throws IOException
     {
-        synchronized (HTTPS_CONNECTION_LOCK)
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_042: [The function shall only be serialized with other calls to receiveMessage and sendMessageResult on the same connection.]
+        synchronized (this.receiveLock)
         {
             // Codes_SRS_HTTPSIOTHUBCONNECTION_11_039: [If the function is called before receiveMessage() returns a message, the function shall throw an IllegalStateException.]
             if (this.messageEtag == null)
@@ -176,92 +186,250 @@ public class HttpsIotHubConnection
                         + "result before a message is received.");
             }
 
-            String iotHubHostname = this.config.getIotHubHostname();
-            String deviceId = this.config.getDeviceId();
-            int readTimeoutMillis = this.config.getReadTimeoutMillis();
+            HttpsRequest request = this.createMessageResultRequest(result);
+
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_037: [If the IoT Hub could not be reached, the function shall throw an IOException.]
+            HttpsResponse response = request.send();
+            checkMessageResultStatus(IotHubStatusCode.getIotHubStatusCode(response.getStatus()));
+        }
+    }
 
-            String resultUri = "https://";
-            String resultPath;
-            URL resultUrl;
-            HttpsRequest request;
-            switch (result)
+    /**
+     * Sends the message result for the previously received message and an
+     * event message, back to back on the same connection when the engine
+     * allows it, so that they cost a single round trip to the IoT Hub.
+     *
+     * @param result the message result (one of {@link IotHubMessageResult#COMPLETE},
+     *               {@link IotHubMessageResult#ABANDON}, or {@link IotHubMessageResult#REJECT}).
+     * @param msg the event message.
+     *
+     * @return the IoT Hub status codes of the message result and of the
+     * event message, in that order. Unlike {@link #sendMessageResult}, a
+     * message result that is not accepted is only reported in its status, so
+     * that the caller still learns the status of the event.
+     *
+     * @throws IllegalStateException if the function is called before
+     * {@link #receiveMessage()} is called.
+     * @throws IOException if the IoT Hub could not be reached.
+     */
+    public List<IotHubStatusCode> sendMessageResultAndEvent(IotHubMessageResult result, HttpsMessage msg)
+            throws IOException
+    {
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_049: [The function shall hold the locks of both receiveMessage and sendEvent, in that order.]
+        synchronized (this.receiveLock)
+        {
+            synchronized (this.sendLock)
             {
-                case COMPLETE:
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_024: [If the result is COMPLETE, the function shall send a request to the URL 'https://[iotHubHostname]/devices/[deviceId]/messages/devicebound/[eTag]?api-version=2016-02-03'.]
-                    IotHubCompleteUri completeUri =
-                            new IotHubCompleteUri(iotHubHostname, deviceId,
-                                    this.messageEtag);
-                    resultUri += completeUri.toString();
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_026: [If the result is COMPLETE, the function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/devicebound/[eTag]'.]
-                    resultPath = completeUri.getPath();
-                    resultUrl = new URL(resultUri);
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_025: [If the result is COMPLETE, the function shall send a DELETE request.]
-                    request = new HttpsRequest(resultUrl, HttpsMethod.DELETE,
-                            new byte[0]);
-                    break;
-                case ABANDON:
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_027: [If the result is ABANDON, the function shall send a request to the URL 'https://[iotHubHostname]/devices/[deviceId]/messages/devicebound/[eTag]/abandon?api-version=2016-02-03'.]
-                    IotHubAbandonUri abandonUri =
-                            new IotHubAbandonUri(iotHubHostname, deviceId,
-                                    this.messageEtag);
-                    resultUri += abandonUri.toString();
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_029: [If the result is ABANDON, the function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/devicebound/[eTag]/abandon'.]
-                    resultPath = abandonUri.getPath();
-                    resultUrl = new URL(resultUri);
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_028: [If the result is ABANDON, the function shall send a POST request.]
-                    // The IoT Hub service requires the content-length header to be
-                    // set but the Java SE connection omits content-length
-                    // if content-length == 0. We include a placeholder body to
-                    // make the connection include a content-length.
-                    request = new HttpsRequest(resultUrl, HttpsMethod.POST,
-                            new byte[1]);
-                    break;
-                case REJECT:
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_030: [If the result is REJECT, the function shall send a request to the URL 'https://[iotHubHostname]/devices/[deviceId]/messages/devicebound/[eTag]??reject=true&api-version=2016-02-03' (the query parameters can be in any order).]
-                    IotHubRejectUri rejectUri =
-                            new IotHubRejectUri(iotHubHostname, deviceId,
-                                    this.messageEtag);
-                    resultUri += rejectUri.toString();
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_032: [If the result is REJECT, the function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/devicebound/[eTag]'.]
-                    resultPath = rejectUri.getPath();
-                    resultUrl = new URL(resultUri);
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_031: [If the result is REJECT, the function shall send a DELETE request.]
-                    request = new HttpsRequest(resultUrl, HttpsMethod.DELETE,
-                            new byte[0]);
-                    break;
-                default:
-                    // should never happen.
-                    throw new IllegalStateException(
-                            "Invalid message result specified.");
-            }
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_21_057: [If the function is called before receiveMessage() returns a message, the function shall throw an IllegalStateException.]
+                if (this.messageEtag == null)
+                {
+                    throw new IllegalStateException("Cannot send a message "
+                            + "result before a message is received.");
+                }
 
-            IotHubSasToken sasToken = new IotHubSasToken(this.config, System.currentTimeMillis() / 1000l +
-                                    this.config.getTokenValidSecs() + 1l);
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_21_050: [The function shall create the message result and event requests as sendMessageResult and sendEvent do.]
+                HttpsRequest resultRequest = this.createMessageResultRequest(result);
+                HttpsRequest eventRequest = this.createEventRequest(msg);
 
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_033: [The function shall set the request read timeout to be the configuration parameter readTimeoutMillis.]
-            request.setReadTimeoutMillis(readTimeoutMillis).
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_034: [The function shall set the header field 'authorization' to be a valid SAS token generated from the configuration parameters.]
-                            setHeaderField("authorization", sasToken.toString()).
-                    setHeaderField("iothub-to", resultPath).
-                    // Codes_SRS_HTTPSIOTHUBCONNECTION_11_035: [The function shall set the header field 'if-match' to be the e-tag saved when receiveMessage() was previously called.]
-                            setHeaderField("if-match", this.messageEtag);
+                HttpsResponse resultResponse;
+                HttpsResponse eventResponse;
+                if ((this.engine == null) || (resultRequest.getMethod() == HttpsMethod.POST))
+                {
+                    // Codes_SRS_HTTPSIOTHUBCONNECTION_21_051: [If the connection has no engine, or the message result is sent with a POST request, the function shall send the two requests one after the other, since a POST request cannot be followed by a pipelined request.]
+                    resultResponse = resultRequest.send();
+                    eventResponse = eventRequest.send();
+                }
+                else
+                {
+                    // Codes_SRS_HTTPSIOTHUBCONNECTION_21_052: [Otherwise, the function shall have the engine send the message result request and the event request pipelined, in that order.]
+                    List<HttpsResponse> responses = this.engine.sendPipelined(Arrays.asList(resultRequest, eventRequest));
+                    resultResponse = responses.get(0);
+                    eventResponse = responses.get(1);
+                }
 
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_037: [If the IoT Hub could not be reached, the function shall throw an IOException.]
-            HttpsResponse response = request.send();
-            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_038: [If the IoT Hub status code in the response is not OK_EMPTY, the function shall throw an IOException.]
-            IotHubStatusCode resultStatus =
-                    IotHubStatusCode.getIotHubStatusCode(
-                            response.getStatus());
-            if (resultStatus != IotHubStatusCode.OK_EMPTY)
-            {
-                String errMsg = String.format(
-                        "Sending message result failed with status %s.\n",
-                        resultStatus.name());
-                throw new IOException(errMsg);
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_21_053: [The function shall return the IoT Hub status codes of the message result and of the event, in that order.]
+                List<IotHubStatusCode> statuses = new ArrayList<>(2);
+                statuses.add(IotHubStatusCode.getIotHubStatusCode(resultResponse.getStatus()));
+                statuses.add(IotHubStatusCode.getIotHubStatusCode(eventResponse.getStatus()));
+                return statuses;
             }
         }
     }
 
+    /**
+     * Sets the metrics the connections used by the engine, if any, are
+     * recorded in.
+     *
+     * @param metrics the metrics of the client. Can be {@code null}.
+     */
+    public void setMetrics(IotHubClientMetrics metrics)
+    {
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_055: [If the connection has an engine, the function shall set the metrics of the engine.]
+        if (this.engine != null)
+        {
+            this.engine.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Closes the connections of the engine, if any, that are not in use.
+     */
+    public void close()
+    {
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_056: [If the connection has an engine, the function shall close the engine.]
+        if (this.engine != null)
+        {
+            this.engine.close();
+        }
+    }
+
+    /**
+     * Creates the request sending an event message. Called with the send
+     * lock held.
+     */
+    private HttpsRequest createEventRequest(HttpsMessage msg) throws IOException
+    {
+        String iotHubHostname = this.config.getIotHubHostname();
+        String deviceId = this.config.getDeviceId();
+        int readTimeoutMillis = this.config.getReadTimeoutMillis();
+
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_002: [The function shall send a request to the URL 'https://[iotHubHostname]/devices/[deviceId]/messages/events?api-version=2016-02-03'.]
+        IotHubEventUri eventUri = new IotHubEventUri(iotHubHostname, deviceId);
+        URL eventUrl = new URL("https://" + eventUri.toString());
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_043: [The function shall obtain the SAS token from the SAS token manager of the config.]
+        String sasToken = this.config.getSasTokenManager().getSasToken();
+
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_003: [The function shall send a POST request.]
+        HttpsRequest request;
+        if ((msg instanceof HttpsSingleMessage) && ((HttpsSingleMessage) msg).isBodyStreamed())
+        {
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_21_058: [If the body of the message is streamed, the function shall have the request copy the stream while it is sent.]
+            HttpsSingleMessage singleMsg = (HttpsSingleMessage) msg;
+            request = new HttpsRequest(eventUrl, HttpsMethod.POST,
+                    singleMsg.getBodyStream(), singleMsg.getBodyLength(), this.engine);
+        }
+        else
+        {
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_11_004: [The function shall set the request body to the message body.]
+            request = new HttpsRequest(eventUrl, HttpsMethod.POST, msg.getBody(), this.engine);
+        }
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_005: [The function shall write each message property as a request header.]
+        for (MessageProperty property : msg.getProperties())
+        {
+            request.setHeaderField(property.getName(),
+                    property.getValue());
+        }
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_006: [The function shall set the request read timeout to be the configuration parameter readTimeoutMillis.]
+        request.setReadTimeoutMillis(readTimeoutMillis).
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_007: [The function shall set the header field 'authorization' to be a valid SAS token generated from the configuration parameters.]
+                        setHeaderField("authorization", sasToken).
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_008: [The function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/events'.]
+                        setHeaderField("iothub-to", eventUri.getPath()).
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_009: [The function shall set the header field 'content-type' to be the message content type.]
+                        setHeaderField("content-type", msg.getContentType());
+
+        return request;
+    }
+
+    /**
+     * Creates the request sending the message result for the previously
+     * received message. Called with the receive lock held.
+     */
+    private HttpsRequest createMessageResultRequest(IotHubMessageResult result) throws IOException
+    {
+        String iotHubHostname = this.config.getIotHubHostname();
+        String deviceId = this.config.getDeviceId();
+        int readTimeoutMillis = this.config.getReadTimeoutMillis();
+
+        String resultUri = "https://";
+        String resultPath;
+        URL resultUrl;
+        HttpsRequest request;
+        switch (result)
+        {
+            case COMPLETE:
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_024: [If the result is COMPLETE, the function shall send a request to the URL 'https://[iotHubHostname]/devices/[deviceId]/messages/devicebound/[eTag]?api-version=2016-02-03'.]
+                IotHubCompleteUri completeUri =
+                        new IotHubCompleteUri(iotHubHostname, deviceId,
+                                this.messageEtag);
+                resultUri += completeUri.toString();
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_026: [If the result is COMPLETE, the function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/devicebound/[eTag]'.]
+                resultPath = completeUri.getPath();
+                resultUrl = new URL(resultUri);
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_025: [If the result is COMPLETE, the function shall send a DELETE request.]
+                request = new HttpsRequest(resultUrl, HttpsMethod.DELETE,
+                        new byte[0], this.engine);
+                break;
+            case ABANDON:
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_027: [If the result is ABANDON, the function shall send a request to the URL 'https://[iotHubHostname]/devices/[deviceId]/messages/devicebound/[eTag]/abandon?api-version=2016-02-03'.]
+                IotHubAbandonUri abandonUri =
+                        new IotHubAbandonUri(iotHubHostname, deviceId,
+                                this.messageEtag);
+                resultUri += abandonUri.toString();
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_029: [If the result is ABANDON, the function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/devicebound/[eTag]/abandon'.]
+                resultPath = abandonUri.getPath();
+                resultUrl = new URL(resultUri);
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_028: [If the result is ABANDON, the function shall send a POST request.]
+                // The IoT Hub service requires the content-length header to be
+                // set but the Java SE connection omits content-length
+                // if content-length == 0. We include a placeholder body to
+                // make the connection include a content-length.
+                request = new HttpsRequest(resultUrl, HttpsMethod.POST,
+                        new byte[1], this.engine);
+                break;
+            case REJECT:
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_030: [If the result is REJECT, the function shall send a request to the URL 'https://[iotHubHostname]/devices/[deviceId]/messages/devicebound/[eTag]??reject=true&api-version=2016-02-03' (the query parameters can be in any order).]
+                IotHubRejectUri rejectUri =
+                        new IotHubRejectUri(iotHubHostname, deviceId,
+                                this.messageEtag);
+                resultUri += rejectUri.toString();
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_032: [If the result is REJECT, the function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/devicebound/[eTag]'.]
+                resultPath = rejectUri.getPath();
+                resultUrl = new URL(resultUri);
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_031: [If the result is REJECT, the function shall send a DELETE request.]
+                request = new HttpsRequest(resultUrl, HttpsMethod.DELETE,
+                        new byte[0], this.engine);
+                break;
+            default:
+                // should never happen.
+                throw new IllegalStateException(
+                        "Invalid message result specified.");
+        }
+
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_21_045: [The function shall obtain the SAS token from the SAS token manager of the config.]
+        String sasToken = this.config.getSasTokenManager().getSasToken();
+
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_033: [The function shall set the request read timeout to be the configuration parameter readTimeoutMillis.]
+        request.setReadTimeoutMillis(readTimeoutMillis).
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_034: [The function shall set the header field 'authorization' to be a valid SAS token generated from the configuration parameters.]
+                        setHeaderField("authorization", sasToken).
+                setHeaderField("iothub-to", resultPath).
+                // Codes_SRS_HTTPSIOTHUBCONNECTION_11_035: [The function shall set the header field 'if-match' to be the e-tag saved when receiveMessage() was previously called.]
+                        setHeaderField("if-match", this.messageEtag);
+
+        return request;
+    }
+
+    /**
+     * Throws an {@link IOException} if the IoT Hub did not accept a message
+     * result.
+     *
+     * @param resultStatus the IoT Hub status code of the message result.
+     *
+     * @throws IOException if the status is not {@link IotHubStatusCode#OK_EMPTY}.
+     */
+    protected static void checkMessageResultStatus(IotHubStatusCode resultStatus) throws IOException
+    {
+        // Codes_SRS_HTTPSIOTHUBCONNECTION_11_038: [If the IoT Hub status code in the response is not OK_EMPTY, the function shall throw an IOException.]
+        if (resultStatus != IotHubStatusCode.OK_EMPTY)
+        {
+            String errMsg = String.format(
+                    "Sending message result failed with status %s.\n",
+                    resultStatus.name());
+            throw new IOException(errMsg);
+        }
+    }
+
     /**
      * Removes double quotes from the e-tag property.
      *
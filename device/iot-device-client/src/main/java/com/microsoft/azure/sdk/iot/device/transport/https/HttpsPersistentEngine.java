@@ -0,0 +1,815 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.https;
+
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
+import com.microsoft.azure.sdk.iot.device.transport.TransportStreamReader;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * An {@link HttpsEngine} that a client opts into with the
+ * <b>SetHttpsEngine</b> option. It speaks HTTP/1.1 over TLS sockets that
+ * it keeps open between requests, up to {@link #MAX_IDLE_CONNECTIONS_PER_HOST}
+ * per host and for at most the idle timeout, so that a send, a receive and the
+ * message result that follow each other pay the TCP and TLS handshakes once.
+ * All the sockets of an engine come from the same {@link SSLSocketFactory},
+ * by default the one of {@link HttpsURLConnection}, so a connection that has
+ * to be opened again resumes the TLS session of the previous one when the
+ * IoT Hub allows it. The connections go through the proxy chosen by the
+ * default {@link ProxySelector}, if any.
+ * </p>
+ * <p>
+ * The sockets are blocking, like the rest of the client: a request holds the
+ * thread of the task sending it until its response is read. A request sent
+ * on a kept connection that the IoT Hub closed in the meantime is sent once
+ * more on a new connection, as long as no byte of its response was received
+ * and every request sent with it is idempotent. The connections opened and
+ * reused are recorded in the metrics, if any.
+ * </p>
+ */
+public final class HttpsPersistentEngine implements HttpsEngine
+{
+    /** The port of an HTTPS URL that has none. */
+    public static final int DEFAULT_HTTPS_PORT = 443;
+    /** The time after which a connection that is not in use is closed. */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+    /** The connections kept per host: one for each of the send and receive tasks. */
+    public static final int MAX_IDLE_CONNECTIONS_PER_HOST = 2;
+    /**
+     * The time allowed to open a connection, including the proxy tunnel and
+     * the TLS handshake, whatever the read timeout of the requests.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 30000;
+
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final int MAX_HEADER_FIELDS = 128;
+    private static final int TRANSFER_BUFFER_SIZE = 8 * 1024;
+
+    /** An open connection, with the time it was last returned to the engine. */
+    private static final class PersistentConnection
+    {
+        private final String key;
+        private final Socket socket;
+        private final InputStream input;
+        private final OutputStream output;
+        private long idleSinceMillis;
+        /** Set once the first byte of a response is read from the connection. */
+        private boolean responseStarted;
+
+        private PersistentConnection(String key, Socket socket) throws IOException
+        {
+            this.key = key;
+            this.socket = socket;
+            this.input = new BufferedInputStream(socket.getInputStream());
+            this.output = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        private void close()
+        {
+            try
+            {
+                this.socket.close();
+            }
+            catch (IOException e)
+            {
+                // the connection is dropped either way.
+            }
+        }
+    }
+
+    /** A response together with whether its connection can be kept. */
+    private static final class ParsedResponse
+    {
+        private final HttpsResponse response;
+        private final boolean keepAlive;
+
+        private ParsedResponse(HttpsResponse response, boolean keepAlive)
+        {
+            this.response = response;
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    private final SocketFactory socketFactory;
+    /** The factory layering TLS over the sockets, or {@code null} to speak plain HTTP (for tests). */
+    private final SSLSocketFactory sslSocketFactory;
+    /** The selector of the proxies, or {@code null} for the default one at the time a connection is opened. */
+    private final ProxySelector proxySelector;
+    private final long idleTimeoutMillis;
+    private final int connectTimeoutMillis;
+    /** The connections not in use, most recently used first, by host and port. */
+    private final Map<String, Deque<PersistentConnection>> idleConnections = new HashMap<>();
+    private volatile IotHubClientMetrics metrics;
+
+    /**
+     * Constructor. The engine uses the default {@link SSLSocketFactory} of
+     * {@link HttpsURLConnection}, with its trust settings.
+     */
+    public HttpsPersistentEngine()
+    {
+        this(HttpsURLConnection.getDefaultSSLSocketFactory());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sslSocketFactory the factory of the TLS sockets, holding the
+     * trust material and the TLS session cache of the engine.
+     *
+     * @throws IllegalArgumentException if the sslSocketFactory is
+     * {@code null}.
+     */
+    public HttpsPersistentEngine(SSLSocketFactory sslSocketFactory)
+    {
+        // Codes_SRS_HTTPSPERSISTENTENGINE_21_001: [If the sslSocketFactory is null, the constructor shall throw an IllegalArgumentException.]
+        if (sslSocketFactory == null)
+        {
+            throw new IllegalArgumentException("sslSocketFactory cannot be null.");
+        }
+
+        // Codes_SRS_HTTPSPERSISTENTENGINE_21_002: [The constructor shall save the sslSocketFactory, close connections that are not in use for DEFAULT_IDLE_TIMEOUT_MILLIS, and allow DEFAULT_CONNECT_TIMEOUT_MILLIS to open a connection.]
+        this.socketFactory = SocketFactory.getDefault();
+        this.sslSocketFactory = sslSocketFactory;
+        this.proxySelector = null;
+        this.idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+        this.connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    }
+
+    HttpsPersistentEngine(SocketFactory socketFactory, SSLSocketFactory sslSocketFactory, ProxySelector proxySelector,
+            long idleTimeoutMillis, int connectTimeoutMillis)
+    {
+        this.socketFactory = socketFactory;
+        this.sslSocketFactory = sslSocketFactory;
+        this.proxySelector = proxySelector;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    @Override
+    public HttpsResponse send(HttpsRequest request) throws IOException
+    {
+        // Codes_SRS_HTTPSPERSISTENTENGINE_21_003: [If the request is null, the function shall throw an IllegalArgumentException.]
+        if (request == null)
+        {
+            throw new IllegalArgumentException("request cannot be null.");
+        }
+
+        // Codes_SRS_HTTPSPERSISTENTENGINE_21_004: [The function shall send the request as a pipeline of one request.]
+        return this.sendPipelined(Collections.singletonList(request)).get(0);
+    }
+
+    @Override
+    public List<HttpsResponse> sendPipelined(List<HttpsRequest> requests) throws IOException
+    {
+        // Codes_SRS_HTTPSPERSISTENTENGINE_21_005: [If the requests are null or empty, the function shall throw an IllegalArgumentException.]
+        if ((requests == null) || requests.isEmpty())
+        {
+            throw new IllegalArgumentException("requests cannot be null or empty.");
+        }
+
+        URL firstUrl = requests.get(0).getUrl();
+        String host = firstUrl.getHost();
+        int port = (firstUrl.getPort() == -1) ? DEFAULT_HTTPS_PORT : firstUrl.getPort();
+        int readTimeoutMillis = 0;
+        boolean idempotent = true;
+        for (int i = 0; i < requests.size(); i++)
+        {
+            HttpsRequest request = requests.get(i);
+            URL url = request.getUrl();
+            // Codes_SRS_HTTPSPERSISTENTENGINE_21_006: [If the requests are not all for the same host and port, the function shall throw an IllegalArgumentException.]
+            int requestPort = (url.getPort() == -1) ? DEFAULT_HTTPS_PORT : url.getPort();
+            if (!url.getHost().equalsIgnoreCase(host) || (requestPort != port))
+            {
+                throw new IllegalArgumentException("Pipelined requests shall be for the same host and port.");
+            }
+            // Codes_SRS_HTTPSPERSISTENTENGINE_21_007: [If a request that is not the last one uses the POST method, the function shall throw an IllegalArgumentException.]
+            if ((request.getMethod() == HttpsMethod.POST) && (i < requests.size() - 1))
+            {
+                throw new IllegalArgumentException("Only the last pipelined request may use the POST method.");
+            }
+            // a streamed body cannot be sent a second time.
+            idempotent &= (request.getMethod() != HttpsMethod.POST) && (request.getBodyStream() == null);
+            readTimeoutMillis = Math.max(readTimeoutMillis, request.getReadTimeoutMillis());
+        }
+
+        String key = host.toLowerCase() + ":" + port;
+        // Codes_SRS_HTTPSPERSISTENTENGINE_21_008: [The function shall send the requests on a connection to the host that is not in use, if one was used within the idle timeout, and on a new connection otherwise.]
+        PersistentConnection connection = this.checkOut(key);
+        boolean reused = (connection != null);
+        if (!reused)
+        {
+            connection = this.open(key, host, port);
+        }
+
+        List<ParsedResponse> responses = new ArrayList<>(requests.size());
+        try
+        {
+            this.exchange(connection, requests, host, port, readTimeoutMillis, responses);
+        }
+        catch (IOException e)
+        {
+            connection.close();
+            // Codes_SRS_HTTPSPERSISTENTENGINE_21_009: [If a reused connection fails before any byte of a response is read, and not by timing out, and none of the requests uses the POST method or a streamed body, the function shall send the requests once more on a new connection.]
+            // the IoT Hub may have processed a POST whose response was lost,
+            // so only the caller can tell whether sending it again is safe.
+            if (!reused || !idempotent || connection.responseStarted || (e instanceof SocketTimeoutException))
+            {
+                // Codes_SRS_HTTPSPERSISTENTENGINE_21_010: [Otherwise, if the requests cannot be sent or their responses cannot be read, the function shall close the connection and throw an IOException.]
+                throw e;
+            }
+
+            connection = this.open(key, host, port);
+            try
+            {
+                this.exchange(connection, requests, host, port, readTimeoutMillis, responses);
+            }
+            catch (IOException retryException)
+            {
+                connection.close();
+                throw retryException;
+            }
+        }
+
+        List<HttpsResponse> result = new ArrayList<>(requests.size());
+        for (ParsedResponse response : responses)
+        {
+            result.add(response.response);
+        }
+
+        ParsedResponse last = responses.get(responses.size() - 1);
+        if (last.keepAlive)
+        {
+            // Codes_SRS_HTTPSPERSISTENTENGINE_21_011: [If the last response does not close the connection, the function shall keep the connection for the next requests to the host.]
+            this.checkIn(connection);
+        }
+        else
+        {
+            connection.close();
+            // Codes_SRS_HTTPSPERSISTENTENGINE_21_012: [If a response closes the connection before the last request, the function shall send the requests left on a new connection.]
+            if (result.size() < requests.size())
+            {
+                result.addAll(this.sendPipelined(requests.subList(result.size(), requests.size())));
+            }
+        }
+
+        // Codes_SRS_HTTPSPERSISTENTENGINE_21_013: [The function shall return the responses in the order of the requests, with an empty body and the content as error reason if the status is 400 or higher.]
+        return result;
+    }
+
+    @Override
+    public void setMetrics(IotHubClientMetrics metrics)
+    {
+        // Codes_SRS_HTTPSPERSISTENTENGINE_21_014: [The function shall save the metrics the connections opened and reused are recorded in.]
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void close()
+    {
+        List<PersistentConnection> closing = new ArrayList<>();
+        synchronized (this.idleConnections)
+        {
+            for (Deque<PersistentConnection> connections : this.idleConnections.values())
+            {
+                closing.addAll(connections);
+            }
+            this.idleConnections.clear();
+        }
+
+        // Codes_SRS_HTTPSPERSISTENTENGINE_21_015: [The function shall close the connections that are not in use.]
+        for (PersistentConnection connection : closing)
+        {
+            connection.close();
+        }
+    }
+
+    private PersistentConnection checkOut(String key)
+    {
+        long nowMillis = System.currentTimeMillis();
+        PersistentConnection connection = null;
+        List<PersistentConnection> expired = new ArrayList<>();
+        synchronized (this.idleConnections)
+        {
+            Deque<PersistentConnection> connections = this.idleConnections.get(key);
+            while ((connections != null) && !connections.isEmpty() && (connection == null))
+            {
+                PersistentConnection candidate = connections.pollFirst();
+                if ((nowMillis - candidate.idleSinceMillis < this.idleTimeoutMillis) && !candidate.socket.isClosed())
+                {
+                    connection = candidate;
+                }
+                else
+                {
+                    expired.add(candidate);
+                }
+            }
+        }
+
+        for (PersistentConnection candidate : expired)
+        {
+            candidate.close();
+        }
+
+        if (connection != null)
+        {
+            IotHubClientMetrics clientMetrics = this.metrics;
+            if (clientMetrics != null)
+            {
+                clientMetrics.recordConnectionReused();
+            }
+            connection.responseStarted = false;
+        }
+        return connection;
+    }
+
+    private void checkIn(PersistentConnection connection)
+    {
+        connection.idleSinceMillis = System.currentTimeMillis();
+        PersistentConnection evicted = null;
+        synchronized (this.idleConnections)
+        {
+            Deque<PersistentConnection> connections = this.idleConnections.get(connection.key);
+            if (connections == null)
+            {
+                connections = new ArrayDeque<>(MAX_IDLE_CONNECTIONS_PER_HOST + 1);
+                this.idleConnections.put(connection.key, connections);
+            }
+            connections.offerFirst(connection);
+            if (connections.size() > MAX_IDLE_CONNECTIONS_PER_HOST)
+            {
+                evicted = connections.pollLast();
+            }
+        }
+
+        if (evicted != null)
+        {
+            evicted.close();
+        }
+    }
+
+    private PersistentConnection open(String key, String host, int port) throws IOException
+    {
+        Proxy proxy = this.selectProxy(host, port);
+        Socket socket = (proxy.type() == Proxy.Type.SOCKS)
+                ? new Socket(proxy)
+                : this.socketFactory.createSocket();
+        boolean sessionResumed = false;
+        try
+        {
+            socket.setTcpNoDelay(true);
+            // the read timeout of the requests can be 0, so it does not bound
+            // the time it takes to open a connection.
+            socket.setSoTimeout(this.connectTimeoutMillis);
+            // Codes_SRS_HTTPSPERSISTENTENGINE_21_016: [The function shall open new connections through the proxy the ProxySelector selects for the URL, tunneling through an HTTP proxy with a CONNECT request.]
+            if (proxy.type() == Proxy.Type.HTTP)
+            {
+                socket.connect(resolve(proxy.address()), this.connectTimeoutMillis);
+                openTunnel(socket, host, port);
+            }
+            else
+            {
+                // a SOCKS proxy resolves the host name itself.
+                InetSocketAddress address = (proxy.type() == Proxy.Type.SOCKS)
+                        ? InetSocketAddress.createUnresolved(host, port)
+                        : new InetSocketAddress(host, port);
+                socket.connect(address, this.connectTimeoutMillis);
+            }
+
+            if (this.sslSocketFactory != null)
+            {
+                long handshakeStartMillis = System.currentTimeMillis();
+                SSLSocket sslSocket = (SSLSocket) this.sslSocketFactory.createSocket(socket, host, port, true);
+                socket = sslSocket;
+                boolean endpointIdentified = enableEndpointIdentification(sslSocket);
+                sslSocket.startHandshake();
+                SSLSession session = sslSocket.getSession();
+                // Codes_SRS_HTTPSPERSISTENTENGINE_21_017: [If the platform cannot verify the host name during the TLS handshake, the function shall verify it with the default HostnameVerifier of HttpsURLConnection.]
+                if (!endpointIdentified && !HttpsURLConnection.getDefaultHostnameVerifier().verify(host, session))
+                {
+                    throw new SSLPeerUnverifiedException("The certificate of the IoT Hub does not match " + host + ".");
+                }
+                sessionResumed = (session.getCreationTime() < handshakeStartMillis);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            socket.close();
+            throw e;
+        }
+
+        IotHubClientMetrics clientMetrics = this.metrics;
+        if (clientMetrics != null)
+        {
+            clientMetrics.recordConnectionOpened(sessionResumed);
+        }
+        return new PersistentConnection(key, socket);
+    }
+
+    /** Returns the first proxy selected for the host, or {@link Proxy#NO_PROXY}. */
+    private Proxy selectProxy(String host, int port)
+    {
+        ProxySelector selector = (this.proxySelector == null) ? ProxySelector.getDefault() : this.proxySelector;
+        if (selector == null)
+        {
+            return Proxy.NO_PROXY;
+        }
+
+        List<Proxy> proxies = selector.select(URI.create("https://" + host + ":" + port));
+        return ((proxies == null) || proxies.isEmpty()) ? Proxy.NO_PROXY : proxies.get(0);
+    }
+
+    private static InetSocketAddress resolve(SocketAddress address)
+    {
+        InetSocketAddress socketAddress = (InetSocketAddress) address;
+        // the selector may hand out an unresolved address.
+        return socketAddress.isUnresolved()
+                ? new InetSocketAddress(socketAddress.getHostString(), socketAddress.getPort())
+                : socketAddress;
+    }
+
+    /** Asks an HTTP proxy to open a tunnel to the host, over the connection to the proxy. */
+    private static void openTunnel(Socket socket, String host, int port) throws IOException
+    {
+        String authority = host + ":" + port;
+        String connect = "CONNECT " + authority + " HTTP/1.1\r\nHost: " + authority + "\r\n\r\n";
+        OutputStream output = socket.getOutputStream();
+        output.write(connect.getBytes(StandardCharsets.ISO_8859_1));
+        output.flush();
+
+        // the input is read one byte at a time, so that nothing the host
+        // sends through the tunnel is consumed here.
+        InputStream input = socket.getInputStream();
+        String statusLine = readLine(input);
+        String[] statusParts = statusLine.split(" ", 3);
+        if ((statusParts.length < 2) || !statusParts[1].startsWith("2"))
+        {
+            throw new IOException("The proxy refused to open a tunnel to " + authority + ": " + statusLine);
+        }
+        readHeaderFields(input);
+    }
+
+    /**
+     * Turns on the host name verification of the TLS handshake.
+     *
+     * @return {@code false} if the platform does not support it, such as
+     * Android before API level 24.
+     */
+    private static boolean enableEndpointIdentification(SSLSocket sslSocket)
+    {
+        try
+        {
+            SSLParameters parameters = sslSocket.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            sslSocket.setSSLParameters(parameters);
+            return true;
+        }
+        catch (NoSuchMethodError e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Writes all the requests, then reads their responses until one of them
+     * closes the connection. The responses read are added to the list.
+     */
+    private void exchange(PersistentConnection connection, List<HttpsRequest> requests, String host, int port,
+            int readTimeoutMillis, List<ParsedResponse> responses) throws IOException
+    {
+        responses.clear();
+        connection.socket.setSoTimeout(readTimeoutMillis);
+        for (HttpsRequest request : requests)
+        {
+            writeRequest(connection.output, request, host, port);
+        }
+        connection.output.flush();
+
+        for (int i = 0; i < requests.size(); i++)
+        {
+            ParsedResponse response = readResponse(connection);
+            responses.add(response);
+            if (!response.keepAlive)
+            {
+                return;
+            }
+        }
+    }
+
+    private static void writeRequest(OutputStream output, HttpsRequest request, String host, int port)
+            throws IOException
+    {
+        URL url = request.getUrl();
+        byte[] body = request.getBody();
+        int bodyLength = request.getBodyLength();
+        String target = url.getFile().isEmpty() ? "/" : url.getFile();
+
+        StringBuilder head = new StringBuilder(512);
+        head.append(request.getMethod().name()).append(' ').append(target).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(host);
+        if (port != DEFAULT_HTTPS_PORT)
+        {
+            head.append(':').append(port);
+        }
+        head.append("\r\n");
+        for (Map.Entry<String, String> field : request.getHeaderFields().entrySet())
+        {
+            String name = field.getKey();
+            if (name.equalsIgnoreCase("Host") || name.equalsIgnoreCase("Content-Length")
+                    || name.equalsIgnoreCase("Connection") || name.equalsIgnoreCase("Transfer-Encoding"))
+            {
+                continue;
+            }
+            appendHeaderField(head, name, field.getValue());
+        }
+        // The IoT Hub requires a content length on POST requests, even without a body.
+        if ((bodyLength > 0) || (request.getMethod() == HttpsMethod.POST) || (request.getMethod() == HttpsMethod.PUT))
+        {
+            head.append("Content-Length: ").append(bodyLength).append("\r\n");
+        }
+        head.append("\r\n");
+
+        output.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        InputStream bodyStream = request.getBodyStream();
+        if (bodyStream != null)
+        {
+            // Codes_SRS_HTTPSPERSISTENTENGINE_21_018: [If the body of a request is streamed, the function shall copy the stream to the connection, and close it.]
+            try
+            {
+                TransportStreamReader.copy(bodyStream, output, bodyLength);
+            }
+            finally
+            {
+                bodyStream.close();
+            }
+        }
+        else
+        {
+            output.write(body);
+        }
+    }
+
+    private static void appendHeaderField(StringBuilder head, String name, String value)
+    {
+        String safeValue = (value == null) ? "" : value;
+        if ((name.indexOf('\r') >= 0) || (name.indexOf('\n') >= 0) || (name.indexOf(':') >= 0)
+                || (safeValue.indexOf('\r') >= 0) || (safeValue.indexOf('\n') >= 0))
+        {
+            throw new IllegalArgumentException("Illegal character in the header field " + name + ".");
+        }
+        head.append(name).append(": ").append(safeValue).append("\r\n");
+    }
+
+    private static ParsedResponse readResponse(PersistentConnection connection) throws IOException
+    {
+        InputStream input = connection.input;
+        String statusLine;
+        int status;
+        Map<String, List<String>> headerFields;
+        do
+        {
+            int first = input.read();
+            if (first < 0)
+            {
+                throw new EOFException("The connection was closed before the response was received.");
+            }
+            connection.responseStarted = true;
+            statusLine = (char) first + readLine(input);
+            String[] statusParts = statusLine.split(" ", 3);
+            if ((statusParts.length < 2) || !statusParts[0].startsWith("HTTP/"))
+            {
+                throw new IOException("Invalid HTTP status line: " + statusLine);
+            }
+            try
+            {
+                status = Integer.parseInt(statusParts[1]);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IOException("Invalid HTTP status line: " + statusLine);
+            }
+            headerFields = readHeaderFields(input);
+        }
+        // interim responses, such as 100 Continue, precede the final one.
+        while ((status >= 100) && (status < 200));
+
+        String connectionField = headerField(headerFields, "Connection");
+        boolean keepAlive = statusLine.startsWith("HTTP/1.1")
+                ? !"close".equalsIgnoreCase(connectionField)
+                : "keep-alive".equalsIgnoreCase(connectionField);
+
+        byte[] content;
+        String transferEncoding = headerField(headerFields, "Transfer-Encoding");
+        String contentLength = headerField(headerFields, "Content-Length");
+        if ((status == 204) || (status == 304))
+        {
+            content = new byte[0];
+        }
+        else if ((transferEncoding != null) && transferEncoding.toLowerCase().contains("chunked"))
+        {
+            content = readChunked(input);
+        }
+        else if (contentLength != null)
+        {
+            content = readFixed(input, parseLength(contentLength.trim(), 10));
+        }
+        else
+        {
+            // the content runs to the end of the connection.
+            content = TransportStreamReader.readAll(input, -1);
+            keepAlive = false;
+        }
+
+        HttpsResponse response = (status >= 400)
+                ? new HttpsResponse(status, new byte[0], headerFields, content)
+                : new HttpsResponse(status, content, headerFields, new byte[0]);
+        return new ParsedResponse(response, keepAlive);
+    }
+
+    private static Map<String, List<String>> readHeaderFields(InputStream input) throws IOException
+    {
+        Map<String, List<String>> headerFields = new LinkedHashMap<>();
+        int count = 0;
+        String line = readLine(input);
+        while (!line.isEmpty())
+        {
+            if (++count > MAX_HEADER_FIELDS)
+            {
+                throw new IOException("Too many HTTP header fields.");
+            }
+            int separator = line.indexOf(':');
+            if (separator > 0)
+            {
+                String name = line.substring(0, separator).trim();
+                List<String> values = headerFields.get(name);
+                if (values == null)
+                {
+                    values = new ArrayList<>(1);
+                    headerFields.put(name, values);
+                }
+                values.add(line.substring(separator + 1).trim());
+            }
+            line = readLine(input);
+        }
+        return headerFields;
+    }
+
+    private static String headerField(Map<String, List<String>> headerFields, String name)
+    {
+        for (Map.Entry<String, List<String>> field : headerFields.entrySet())
+        {
+            if (field.getKey().equalsIgnoreCase(name))
+            {
+                List<String> values = field.getValue();
+                return values.get(values.size() - 1);
+            }
+        }
+        return null;
+    }
+
+    private static byte[] readChunked(InputStream input) throws IOException
+    {
+        // the chunks are appended to a buffer that doubles as it fills, so
+        // that many small chunks are not copied over and over.
+        ByteArrayOutputStream content = new ByteArrayOutputStream(TRANSFER_BUFFER_SIZE);
+        byte[] transferBuffer = new byte[TRANSFER_BUFFER_SIZE];
+        while (true)
+        {
+            String sizeLine = readLine(input);
+            int extension = sizeLine.indexOf(';');
+            int size = parseLength((extension < 0) ? sizeLine.trim() : sizeLine.substring(0, extension).trim(), 16);
+            if (size == 0)
+            {
+                // skip the trailer fields.
+                readHeaderFields(input);
+                return content.toByteArray();
+            }
+
+            transfer(input, size, content, transferBuffer);
+            if (!readLine(input).isEmpty())
+            {
+                throw new IOException("Invalid HTTP chunk.");
+            }
+        }
+    }
+
+    private static int parseLength(String length, int radix) throws IOException
+    {
+        long value;
+        try
+        {
+            value = Long.parseLong(length, radix);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Invalid HTTP content length: " + length);
+        }
+        if ((value < 0) || (value > Integer.MAX_VALUE - 8))
+        {
+            throw new IOException("Invalid HTTP content length: " + length);
+        }
+        return (int) value;
+    }
+
+    private static byte[] readFixed(InputStream input, int length) throws IOException
+    {
+        // a declared length is only trusted up front up to a bound, and the
+        // rest is allocated as it arrives.
+        if (length > TransportStreamReader.MAX_PREALLOCATED_LENGTH)
+        {
+            ByteArrayOutputStream content = new ByteArrayOutputStream(TransportStreamReader.MAX_PREALLOCATED_LENGTH);
+            transfer(input, length, content, new byte[TRANSFER_BUFFER_SIZE]);
+            return content.toByteArray();
+        }
+
+        byte[] content = new byte[length];
+        int filled = 0;
+        while (filled < length)
+        {
+            int read = input.read(content, filled, length - filled);
+            if (read < 0)
+            {
+                throw new EOFException("The connection was closed before the response was received.");
+            }
+            filled += read;
+        }
+        return content;
+    }
+
+    /** Copies exactly {@code length} bytes of the input to the output. */
+    private static void transfer(InputStream input, int length, ByteArrayOutputStream output, byte[] transferBuffer)
+            throws IOException
+    {
+        int remaining = length;
+        while (remaining > 0)
+        {
+            int read = input.read(transferBuffer, 0, Math.min(remaining, transferBuffer.length));
+            if (read < 0)
+            {
+                throw new EOFException("The connection was closed before the response was received.");
+            }
+            output.write(transferBuffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    /** Reads a line ended by LF or CRLF, without its end. */
+    private static String readLine(InputStream input) throws IOException
+    {
+        StringBuilder line = new StringBuilder(64);
+        while (true)
+        {
+            int next = input.read();
+            if (next < 0)
+            {
+                throw new EOFException("The connection was closed before the response was received.");
+            }
+            if (next == '\n')
+            {
+                int length = line.length();
+                if ((length > 0) && (line.charAt(length - 1) == '\r'))
+                {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_LENGTH)
+            {
+                throw new IOException("HTTP response line too long.");
+            }
+            line.append((char) next);
+        }
+    }
+}
@@ -6,7 +6,10 @@ package com.microsoft.azure.sdk.iot.device.transport.https;
 import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,8 +18,23 @@ import java.util.Map;
  */
 public class HttpsRequest
 {
-    /** The underlying HTTPS connection stream. */
+    /**
+     * The underlying HTTPS connection stream, or {@code null} if the request
+     * is sent by an engine.
+     */
     protected final HttpsConnection connection;
+    /** The engine sending the request, or {@code null} to send it on its own connection. */
+    protected final HttpsEngine engine;
+    protected final URL url;
+    protected final HttpsMethod method;
+    /** The body, or {@code null} if it is streamed. */
+    protected final byte[] body;
+    /** The stream the body is copied from while it is sent, or {@code null}. */
+    protected final InputStream bodyStream;
+    protected final int bodyLength;
+    /** The header fields set, in the order they were first set. */
+    protected final Map<String, String> headerFields;
+    protected int readTimeoutMillis;
 
     /**
      * Constructor. Takes a URL as an argument and returns an HTTPS request that
@@ -35,13 +53,105 @@ public class HttpsRequest
     public HttpsRequest(URL url, HttpsMethod method, byte[] body)
             throws IOException
     {
-        // Codes_SRS_HTTPSREQUEST_11_005: [If an IOException occurs in setting up the HTTPS connection, the function shall throw an IOException.]
-        // Codes_SRS_HTTPSREQUEST_11_001: [The function shall open a connection with the given URL as the endpoint.]
-        // Codes_SRS_HTTPSREQUEST_11_004: [The function shall use the given HTTPS method (i.e. GET) as the request method.]
-        this.connection = new HttpsConnection(url, method);
-        this.connection.setRequestHeader("User-Agent", TransportUtils.javaDeviceClientIdentifier + TransportUtils.clientVersion);
-        // Codes_SRS_HTTPSREQUEST_11_002: [The function shall write the body to the connection.]
-        this.connection.writeOutput(body);
+        this(url, method, body, null);
+    }
+
+    /**
+     * Constructor. Takes a URL as an argument and returns an HTTPS request that
+     * is ready to be sent by the given engine.
+     *
+     * @param url the URL for the request.
+     * @param method the HTTPS request method (i.e. GET).
+     * @param body the request body. Must be an array of size 0 if the request
+     * method is GET or DELETE.
+     * @param engine the engine sending the request, or {@code null} to send
+     * it on its own {@link HttpsConnection}.
+     *
+     * @throws IOException if an IOException occurs in setting up the HTTPS
+     * connection.
+     * @throws IllegalArgumentException if the endpoint given does not use the
+     * HTTPS protocol.
+     */
+    public HttpsRequest(URL url, HttpsMethod method, byte[] body, HttpsEngine engine)
+            throws IOException
+    {
+        this(url, method, body, null, body.length, engine);
+    }
+
+    /**
+     * Constructor. Takes a URL as an argument and returns an HTTPS POST or
+     * PUT request that is ready to be sent by the given engine, whose body is
+     * copied from the stream while it is sent rather than held in memory.
+     * The request takes ownership of the stream, and can only be sent once.
+     *
+     * @param url the URL for the request.
+     * @param method the HTTPS request method, POST or PUT.
+     * @param bodyStream the stream of the request body.
+     * @param bodyLength the number of bytes of the body.
+     * @param engine the engine sending the request, or {@code null} to send
+     * it on its own {@link HttpsConnection}.
+     *
+     * @throws IOException if an IOException occurs in setting up the HTTPS
+     * connection.
+     * @throws IllegalArgumentException if the endpoint given does not use the
+     * HTTPS protocol, the stream is null, or the method is not POST or PUT.
+     */
+    public HttpsRequest(URL url, HttpsMethod method, InputStream bodyStream, int bodyLength, HttpsEngine engine)
+            throws IOException
+    {
+        this(url, method, null, bodyStream, bodyLength, engine);
+    }
+
+    private HttpsRequest(URL url, HttpsMethod method, byte[] body, InputStream bodyStream, int bodyLength,
+            HttpsEngine engine) throws IOException
+    {
+        // Codes_SRS_HTTPSREQUEST_21_018: [If the body is streamed, and the stream is null or the method is not POST or PUT, the function shall throw an IllegalArgumentException.]
+        if ((body == null) && ((bodyStream == null) || ((method != HttpsMethod.POST) && (method != HttpsMethod.PUT))))
+        {
+            throw new IllegalArgumentException("A streamed body requires a stream and a POST or a PUT request.");
+        }
+
+        this.url = url;
+        this.method = method;
+        this.body = body;
+        this.bodyStream = bodyStream;
+        this.bodyLength = bodyLength;
+        this.engine = engine;
+        this.headerFields = new LinkedHashMap<>();
+        this.headerFields.put("User-Agent", TransportUtils.javaDeviceClientIdentifier + TransportUtils.clientVersion);
+        if (engine == null)
+        {
+            // Codes_SRS_HTTPSREQUEST_11_005: [If an IOException occurs in setting up the HTTPS connection, the function shall throw an IOException.]
+            // Codes_SRS_HTTPSREQUEST_11_001: [The function shall open a connection with the given URL as the endpoint.]
+            // Codes_SRS_HTTPSREQUEST_11_004: [The function shall use the given HTTPS method (i.e. GET) as the request method.]
+            this.connection = new HttpsConnection(url, method);
+            this.connection.setRequestHeader("User-Agent", TransportUtils.javaDeviceClientIdentifier + TransportUtils.clientVersion);
+            // Codes_SRS_HTTPSREQUEST_11_002: [The function shall write the body to the connection.]
+            if (bodyStream != null)
+            {
+                // Codes_SRS_HTTPSREQUEST_21_019: [If the body is streamed, the function shall hand the stream to the connection, which copies it while the request is sent.]
+                this.connection.writeOutput(bodyStream, bodyLength);
+            }
+            else
+            {
+                this.connection.writeOutput(body);
+            }
+        }
+        else
+        {
+            // Codes_SRS_HTTPSREQUEST_21_015: [If an engine is given, the function shall not open a connection, and shall throw an IllegalArgumentException if the URL does not use the HTTPS protocol or if a body is given to a request that is not a POST or a PUT request.]
+            if (!url.getProtocol().equalsIgnoreCase("HTTPS"))
+            {
+                throw new IllegalArgumentException("The URL is not an HTTPS URL.");
+            }
+            if ((method != HttpsMethod.POST) && (method != HttpsMethod.PUT) && (bodyLength > 0))
+            {
+                throw new IllegalArgumentException(
+                        "Cannot write a body to a request that "
+                        + "is not a POST or a PUT request.");
+            }
+            this.connection = null;
+        }
     }
 
     /**
@@ -58,6 +168,12 @@ public class HttpsRequest
         byte[] responseBody = new byte[0];
         byte[] errorReason = new byte[0];
         Map<String, List<String>> headerFields;
+        // Codes_SRS_HTTPSREQUEST_21_016: [If the request has an engine, the function shall have the engine send it and return its response.]
+        if (this.engine != null)
+        {
+            return this.engine.send(this);
+        }
+
         try
         {
             // Codes_SRS_HTTPSREQUEST_11_008: [The function shall send an HTTPS request as formatted in the constructor.]
@@ -101,7 +217,11 @@ public class HttpsRequest
     public HttpsRequest setHeaderField(String field, String value)
     {
         // Codes_SRS_HTTPSREQUEST_11_013: [The function shall set the header field with the given name to the given value.]
-        this.connection.setRequestHeader(field, value);
+        this.headerFields.put(field, value);
+        if (this.connection != null)
+        {
+            this.connection.setRequestHeader(field, value);
+        }
         return this;
     }
 
@@ -117,12 +237,98 @@ public class HttpsRequest
     public HttpsRequest setReadTimeoutMillis(int timeout)
     {
         // Codes_SRS_HTTPSREQUEST_11_014: [The function shall set the read timeout for the request to the given value.]
-        this.connection.setReadTimeoutMillis(timeout);
+        this.readTimeoutMillis = timeout;
+        if (this.connection != null)
+        {
+            this.connection.setReadTimeoutMillis(timeout);
+        }
         return this;
     }
 
+    /**
+     * Getter for the URL of the request.
+     *
+     * @return the URL.
+     */
+    public URL getUrl()
+    {
+        // Codes_SRS_HTTPSREQUEST_21_017: [The getters shall return the URL, method, body, body stream and body length given in the constructor, and the header fields and read timeout set.]
+        return this.url;
+    }
+
+    /**
+     * Getter for the method of the request.
+     *
+     * @return the HTTPS method.
+     */
+    public HttpsMethod getMethod()
+    {
+        return this.method;
+    }
+
+    /**
+     * Getter for the body of the request. The body is not copied, and must
+     * not be modified.
+     *
+     * @return the body, or {@code null} if it is streamed.
+     */
+    public byte[] getBody()
+    {
+        return this.body;
+    }
+
+    /**
+     * Getter for the stream the body of the request is copied from while it
+     * is sent. The engine sending the request closes it.
+     *
+     * @return the stream of the body, or {@code null} if it is not streamed.
+     */
+    public InputStream getBodyStream()
+    {
+        return this.bodyStream;
+    }
+
+    /**
+     * Getter for the number of bytes of the body, streamed or not.
+     *
+     * @return the length of the body.
+     */
+    public int getBodyLength()
+    {
+        return this.bodyLength;
+    }
+
+    /**
+     * Getter for the header fields of the request, including the
+     * User-Agent.
+     *
+     * @return an unmodifiable view of the header fields, in the order they
+     * were first set.
+     */
+    public Map<String, String> getHeaderFields()
+    {
+        return Collections.unmodifiableMap(this.headerFields);
+    }
+
+    /**
+     * Getter for the read timeout of the request.
+     *
+     * @return the read timeout, in milliseconds, or 0 if there is none.
+     */
+    public int getReadTimeoutMillis()
+    {
+        return this.readTimeoutMillis;
+    }
+
     protected HttpsRequest()
     {
         this.connection = null;
+        this.engine = null;
+        this.url = null;
+        this.method = null;
+        this.body = null;
+        this.bodyStream = null;
+        this.bodyLength = 0;
+        this.headerFields = null;
     }
 }
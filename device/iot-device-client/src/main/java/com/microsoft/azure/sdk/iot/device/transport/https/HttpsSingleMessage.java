@@ -5,9 +5,12 @@ package com.microsoft.azure.sdk.iot.device.transport.https;
 
 import com.microsoft.azure.sdk.iot.device.Message;
 import com.microsoft.azure.sdk.iot.device.MessageProperty;
+import org.apache.commons.codec.binary.Base64;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 /** A single HTTPS message. */
@@ -15,8 +18,13 @@ public final class HttpsSingleMessage implements HttpsMessage
 {
     public static final String HTTPS_SINGLE_MESSAGE_CONTENT_TYPE =
             "binary/octet-stream";
+    /** The header field carrying the content encoding of the message body. */
+    public static final String HTTPS_CONTENT_ENCODING_PROPERTY =
+            "iothub-contentencoding";
 
     protected byte[] body;
+    protected InputStream bodyStream;
+    protected int bodyLength;
     protected boolean base64Encoded;
     protected MessageProperty[] properties;
 
@@ -31,22 +39,41 @@ public final class HttpsSingleMessage implements HttpsMessage
     public static HttpsSingleMessage parseHttpsMessage(Message message) {
         HttpsSingleMessage httpsMsg = new HttpsSingleMessage();
 
-        // Codes_SRS_HTTPSSINGLEMESSAGE_11_001: [The parsed HttpsSingleMessage shall have a copy of the original message body as its body.]
-        byte[] msgBody = message.getBytes();
-        httpsMsg.body = Arrays.copyOf(msgBody, msgBody.length);
+        if (message.hasBodyStream())
+        {
+            // Codes_SRS_HTTPSSINGLEMESSAGE_21_003: [If the body of the message is still in its stream, the parsed HttpsSingleMessage shall take the stream over, to copy it into the request, instead of reading the body.]
+            httpsMsg.bodyLength = message.getBodyLength();
+            httpsMsg.bodyStream = message.takeBodyStream();
+        }
+        if (httpsMsg.bodyStream == null)
+        {
+            // Codes_SRS_HTTPSSINGLEMESSAGE_11_001: [The parsed HttpsSingleMessage shall have a copy of the original message body as its body.]
+            httpsMsg.body = message.getBytes();
+            httpsMsg.bodyLength = httpsMsg.body.length;
+        }
 
         // Codes_SRS_HTTPSSINGLEMESSAGE_11_003: [The parsed HttpsSingleMessage shall add the prefix 'iothub-app-' to each of the message properties.]
-        MessageProperty[] msgProperties = message.getProperties();
-        httpsMsg.properties = new MessageProperty[msgProperties.length];
-        for (int i = 0; i < msgProperties.length; ++i)
+        List<MessageProperty> msgProperties = message.getPropertyView();
+        String contentEncoding = message.getContentEncoding();
+        int propertyCount = msgProperties.size();
+        httpsMsg.properties = new MessageProperty[contentEncoding == null ? propertyCount : propertyCount + 1];
+        for (int i = 0; i < propertyCount; ++i)
         {
-            MessageProperty property = msgProperties[i];
+            MessageProperty property = msgProperties.get(i);
 
             httpsMsg.properties[i] = new MessageProperty(
                     HTTPS_APP_PROPERTY_PREFIX + property.getName(),
                     property.getValue());
         }
 
+        // Codes_SRS_HTTPSSINGLEMESSAGE_21_001: [If the message has a content encoding, the parsed HttpsSingleMessage shall carry it in the property 'iothub-contentencoding', and be Base64-encoded when batched.]
+        if (contentEncoding != null)
+        {
+            httpsMsg.properties[propertyCount] = new MessageProperty(
+                    HTTPS_CONTENT_ENCODING_PROPERTY, contentEncoding);
+            httpsMsg.base64Encoded = true;
+        }
+
         return httpsMsg;
     }
 
@@ -61,8 +88,8 @@ public final class HttpsSingleMessage implements HttpsMessage
     public static HttpsSingleMessage parseHttpsMessage(HttpsResponse response) {
         HttpsSingleMessage msg = new HttpsSingleMessage();
         // Codes_SRS_HTTPSSINGLEMESSAGE_11_004: [The parsed HttpsSingleMessage shall have a copy of the original response body as its body.]
-        byte[] responseBody = response.getBody();
-        msg.body = Arrays.copyOf(responseBody, responseBody.length);
+        msg.body = response.getBody();
+        msg.bodyLength = msg.body.length;
 
         // Codes_SRS_HTTPSSINGLEMESSAGE_11_006: [The parsed HttpsSingleMessage shall include all valid HTTPS application-defined properties in the response header as message properties.]
         ArrayList<MessageProperty> properties = new ArrayList<>();
@@ -107,20 +134,68 @@ public final class HttpsSingleMessage implements HttpsMessage
      * Returns a copy of the message body.
      *
      * @return a copy of the message body.
+     *
+     * @throws IllegalStateException if the message body is streamed.
      */
     public byte[] getBody()
     {
+        // Codes_SRS_HTTPSSINGLEMESSAGE_21_004: [If the message body is streamed, the function shall throw an IllegalStateException.]
+        if (this.body == null)
+        {
+            throw new IllegalStateException("The message body is streamed and cannot be copied.");
+        }
+
         // Codes_SRS_HTTPSSINGLEMESSAGE_11_009: [The function shall return a copy of the message body.]
         return Arrays.copyOf(this.body, this.body.length);
     }
 
+    /**
+     * Returns whether the message body is streamed rather than held in
+     * memory. A streamed message can only be sent on its own, once.
+     *
+     * @return whether the message body is streamed.
+     */
+    public boolean isBodyStreamed()
+    {
+        // Codes_SRS_HTTPSSINGLEMESSAGE_21_005: [The function shall return whether the message body is streamed.]
+        return this.bodyStream != null;
+    }
+
+    /**
+     * Returns the stream of the message body.
+     *
+     * @return the stream of the message body, or null if it is not streamed.
+     */
+    public InputStream getBodyStream()
+    {
+        // Codes_SRS_HTTPSSINGLEMESSAGE_21_006: [The function shall return the stream of the message body, or null if it is not streamed.]
+        return this.bodyStream;
+    }
+
+    /**
+     * Returns the number of bytes in the message body.
+     *
+     * @return the number of bytes in the message body.
+     */
+    public int getBodyLength()
+    {
+        // Codes_SRS_HTTPSSINGLEMESSAGE_21_007: [The function shall return the number of bytes in the message body.]
+        return this.bodyLength;
+    }
+
     /**
      * Returns the message body as a string. The body is encoded using charset
-     * UTF-8.
+     * UTF-8, or in Base64 if the message is Base64-encoded.
      *
      * @return the message body as a string.
      */
     public String getBodyAsString() {
+        // Codes_SRS_HTTPSSINGLEMESSAGE_21_002: [If the message is Base64-encoded, the function shall return the message body encoded in Base64.]
+        if (this.base64Encoded)
+        {
+            return Base64.encodeBase64String(this.body);
+        }
+
         // Codes_SRS_HTTPSSINGLEMESSAGE_11_010: [The function shall return the message body as a string encoded using charset UTF-8.]
         return new String(this.body, Message.DEFAULT_IOTHUB_MESSAGE_CHARSET);
     }
@@ -155,20 +230,8 @@ public final class HttpsSingleMessage implements HttpsMessage
     public MessageProperty[] getProperties()
     {
         // Codes_SRS_HTTPSSINGLEMESSAGE_11_013: [The function shall return a copy of the message properties.]
-        int propertiesSize = this.properties.length;
-        MessageProperty[] propertiesCopy =
-                new MessageProperty[propertiesSize];
-
-        for (int i = 0; i < propertiesSize; ++i)
-        {
-            MessageProperty property = this.properties[i];
-            MessageProperty propertyCopy =
-                    new MessageProperty(property.getName(),
-                            property.getValue());
-            propertiesCopy[i] = propertyCopy;
-        }
-
-        return propertiesCopy;
+        // message properties are immutable, so the copy shares them.
+        return Arrays.copyOf(this.properties, this.properties.length);
     }
 
     /**
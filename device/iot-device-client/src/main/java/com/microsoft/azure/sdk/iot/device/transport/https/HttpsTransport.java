@@ -7,10 +7,15 @@ import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.MessageCallback;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingDeque;
@@ -42,8 +47,8 @@ public final class HttpsTransport implements IotHubTransport
     /** The underlying HTTPS connection. */
     protected HttpsIotHubConnection connection;
 
-    /** Messages waiting to be sent to an IoT Hub. */
-    protected final Queue<IotHubOutboundPacket> waitingList;
+    /** Messages waiting to be sent to an IoT Hub, in one lane per message priority. */
+    protected final IotHubOutboundQueue waitingList;
     /** Messages that are waiting for a response from an IoT Hub. */
     protected final Queue<IotHubOutboundPacket> inProgressList;
     /** Messages whose callbacks that are waiting to be invoked. */
@@ -51,6 +56,36 @@ public final class HttpsTransport implements IotHubTransport
 
     protected final DeviceClientConfig config;
 
+    /** The signal raised when a message is added. Can be {@code null}. */
+    protected volatile IotHubSendSignal sendSignal;
+
+    /** The buffer capping the messages held by the transport. Can be {@code null}. */
+    protected volatile IotHubOutboundBuffer outboundBuffer;
+
+    /** The dispatcher the event callbacks are handed to. Can be {@code null}. */
+    protected volatile IotHubCallbackDispatcher callbackDispatcher;
+
+    /** The journal keeping the messages held by the transport on disk. Can be {@code null}. */
+    protected volatile IotHubOutboundJournal outboundJournal;
+
+    /** The metrics the messages and callbacks are recorded in. Can be {@code null}. */
+    protected volatile IotHubClientMetrics metrics;
+
+    /** The engine sending the requests, or {@code null} for the default one. */
+    protected volatile HttpsEngine httpsEngine;
+
+    /**
+     * Serializes sending the result of the last message received with
+     * receiving the next message, whose e-tag replaces the one the result
+     * refers to.
+     */
+    protected final Object messageResultLock = new Object();
+    /**
+     * The result of the last message received, waiting to be sent along
+     * with the next event. Can be {@code null}.
+     */
+    protected volatile IotHubMessageResult pendingMessageResult;
+
     /**
      * Constructs an instance from the given {@link DeviceClientConfig}
      * object.
@@ -60,7 +95,8 @@ public final class HttpsTransport implements IotHubTransport
     public HttpsTransport(DeviceClientConfig config)
     {
         // Codes_SRS_HTTPSTRANSPORT_11_001: [The constructor shall initialize an empty transport queue for adding messages to be sent as a batch.]
-        this.waitingList = new LinkedBlockingDeque<>();
+        // Codes_SRS_HTTPSTRANSPORT_21_013: [The transport queue shall have one lane per message priority, drained in weighted round robin.]
+        this.waitingList = new IotHubOutboundQueue();
         this.inProgressList = new LinkedBlockingDeque<>();
         // Codes_SRS_HTTPSTRANSPORT_11_002: [The constructor shall initialize an empty queue for adding callbacks waiting to be invoked.]
         this.callbackList = new LinkedBlockingDeque<>();
@@ -86,7 +122,18 @@ public final class HttpsTransport implements IotHubTransport
 
         // Codes_SRS_HTTPSTRANSPORT_11_023: [If the transport is already closed, the function shall throw an IllegalStateException.]
         // Codes_SRS_HTTPSTRANSPORT_11_021: [The function shall establish an HTTPS connection with the IoT Hub given in the configuration.]
-        this.connection = new HttpsIotHubConnection(this.config);
+        HttpsEngine engine = this.httpsEngine;
+        if (engine == null)
+        {
+            this.connection = new HttpsIotHubConnection(this.config);
+        }
+        else
+        {
+            // Codes_SRS_HTTPSTRANSPORT_21_022: [If an HTTPS engine is set, the function shall have the connection send the requests with it.]
+            this.connection = new HttpsIotHubConnection(this.config, engine);
+        }
+        // Codes_SRS_HTTPSTRANSPORT_21_023: [The function shall register the metrics, if any, with the connection.]
+        this.connection.setMetrics(this.metrics);
         this.state = HttpsTransportState.OPEN;
     }
 
@@ -99,8 +146,11 @@ public final class HttpsTransport implements IotHubTransport
      */
     public void close() throws IOException
     {
-        // the HTTPS connection does not contain state
-        // that needs to be explicitly destroyed.
+        // Codes_SRS_HTTPSTRANSPORT_21_024: [If the transport was opened, the function shall close the connections of the HTTPS connection that are not in use.]
+        if (this.connection != null)
+        {
+            this.connection.close();
+        }
         // Codes_SRS_HTTPSTRANSPORT_11_035: [The function shall mark the transport as being closed.]
         this.state = HttpsTransportState.CLOSED;
     }
@@ -115,7 +165,7 @@ public final class HttpsTransport implements IotHubTransport
      * invoked.
      *
      * @throws IllegalStateException if the transport has not been opened or is
-     * already closed.
+     * already closed, or if the outbound buffer has no room for the message.
      */
     public void addMessage(Message message,
             IotHubEventCallback callback,
@@ -128,13 +178,33 @@ public final class HttpsTransport implements IotHubTransport
 
         // Codes_SRS_HTTPSTRANSPORT_11_003: [The function shall add a packet containing the message, callback, and callback context to the transport queue.]
         IotHubOutboundPacket packet = new IotHubOutboundPacket(message, callback, callbackContext);
-        this.waitingList.add(packet);
+        // Codes_SRS_HTTPSTRANSPORT_21_004: [If an outbound buffer is set, the function shall add the packet only if the buffer admits it.]
+        IotHubOutboundBuffer buffer = this.outboundBuffer;
+        if (buffer == null || buffer.acquire(packet, this.waitingList, this.callbackList))
+        {
+            // Codes_SRS_HTTPSTRANSPORT_21_010: [If an outbound journal is set, the function shall record the packet in it before adding it to the transport queue.]
+            IotHubOutboundJournal journal = this.outboundJournal;
+            if (journal != null)
+            {
+                journal.record(packet);
+            }
+            this.waitingList.add(packet);
+        }
+
+        // Codes_SRS_HTTPSTRANSPORT_21_001: [If a send signal is set, the function shall raise it after adding the packet.]
+        IotHubSendSignal signal = this.sendSignal;
+        if (signal != null)
+        {
+            signal.signal();
+        }
     }
 
     /**
-     * Sends all messages on the transport queue as a batched request.
+     * Sends all messages on the transport queue as a batched request, along
+     * with the pending message result, if any.
      *
-     * @throws IOException if the server could not be reached.
+     * @throws IOException if the server could not be reached, or did not
+     * accept the message result.
      * @throws IllegalStateException if the transport has not been opened or is
      * already closed.
      */
@@ -148,17 +218,58 @@ public final class HttpsTransport implements IotHubTransport
                             + "HTTPS transport that is closed.");
         }
 
+        this.evictExpiredPackets();
+
         // Codes_SRS_HTTPSTRANSPORT_11_004: [If no previous send request had failed while in progress, the function shall batch as many messages as possible such that the batched message body is of size at most 256 kb.]
         // Codes_SRS_HTTPSTRANSPORT_11_012: [If a previous send request had failed while in progress, the function shall resend the request.]
         if (this.inProgressList.size() <= 0)
         {
             this.moveWaitingListToInProgressList();
         }
+
+        if (this.pendingMessageResult != null)
+        {
+            synchronized (this.messageResultLock)
+            {
+                IotHubMessageResult messageResult = this.pendingMessageResult;
+                if (messageResult != null)
+                {
+                    this.pendingMessageResult = null;
+                    if (this.inProgressList.size() <= 0)
+                    {
+                        // Codes_SRS_HTTPSTRANSPORT_21_028: [If a message result is pending and there is no message to send, the function shall send the message result on its own.]
+                        this.connection.sendMessageResult(messageResult);
+                    }
+                    else
+                    {
+                        // Codes_SRS_HTTPSTRANSPORT_21_029: [If a message result is pending, the function shall send it along with the request, with the connection's sendMessageResultAndEvent.]
+                        this.sendInProgressList(messageResult);
+                    }
+                    return;
+                }
+            }
+        }
+
         if (this.inProgressList.size() <= 0)
         {
             return;
         }
+        this.sendInProgressList(null);
+    }
 
+    /**
+     * Sends the messages of the in-progress list in one request, along with
+     * a message result if one is given, and completes them with the status
+     * returned by the IoT Hub.
+     *
+     * @param messageResult the message result to send along with the
+     * messages, or {@code null} if there is none.
+     *
+     * @throws IOException if the server could not be reached, or did not
+     * accept the message result.
+     */
+    private void sendInProgressList(IotHubMessageResult messageResult) throws IOException
+    {
         HttpsMessage msg;
         try
         {
@@ -177,10 +288,65 @@ public final class HttpsTransport implements IotHubTransport
         // Codes_SRS_HTTPSTRANSPORT_11_005: [The function shall configure a valid HTTPS request and send it to the IoT Hub.]
         // Codes_SRS_HTTPSTRANSPORT_11_014: [If the send request fails while in progress, the function shall throw an IOException.]
         // Codes_SRS_HTTPSTRANSPORT_11_017: [If an invalid URI is generated from the configuration given in the constructor, the function shall throw a URISyntaxException.]
-        IotHubStatusCode status = this.connection.sendEvent(msg);
+        IotHubStatusCode status;
+        IotHubStatusCode resultStatus = null;
+        try
+        {
+            if (messageResult == null)
+            {
+                status = this.connection.sendEvent(msg);
+            }
+            else
+            {
+                List<IotHubStatusCode> statuses = this.connection.sendMessageResultAndEvent(messageResult, msg);
+                resultStatus = statuses.get(0);
+                status = statuses.get(1);
+            }
+        }
+        catch (IOException e)
+        {
+            if ((msg instanceof HttpsSingleMessage) && ((HttpsSingleMessage) msg).isBodyStreamed())
+            {
+                // Codes_SRS_HTTPSTRANSPORT_21_033: [If the body of the message sent was streamed and the send request fails, the function shall complete the message with the status ERROR, since its body cannot be read again, and throw the IOException.]
+                this.moveInProgressListToCallbackList(IotHubStatusCode.ERROR);
+            }
+            throw e;
+        }
+
+        // Codes_SRS_HTTPSTRANSPORT_21_016: [If metrics are set, the function shall record the number and body bytes of the messages sent in the request.]
+        IotHubClientMetrics clientMetrics = this.metrics;
+        if (clientMetrics != null)
+        {
+            long sentBytes = 0;
+            for (IotHubOutboundPacket packet : this.inProgressList)
+            {
+                sentBytes += packet.getMessage().getBodyLength();
+            }
+            clientMetrics.recordSent(this.inProgressList.size(), sentBytes);
+        }
 
         // Codes_SRS_HTTPSTRANSPORT_11_006: [The function shall add a packet containing the callbacks, contexts, and response for all sent messages to the callback queue.]
         this.moveInProgressListToCallbackList(status);
+
+        // Codes_SRS_HTTPSTRANSPORT_21_017: [If metrics are set, the function shall sample the number of messages waiting once the response is handled.]
+        if (clientMetrics != null)
+        {
+            clientMetrics.setQueueDepth(this.waitingList.size());
+            clientMetrics.setInFlightCount(this.inProgressList.size());
+        }
+
+        // Codes_SRS_HTTPSTRANSPORT_21_003: [If messages that did not fit in the batch are still waiting and a send signal is set, the function shall raise it so that the next batch is sent without delay.]
+        IotHubSendSignal signal = this.sendSignal;
+        if (signal != null && !this.waitingList.isEmpty())
+        {
+            signal.signal();
+        }
+
+        // Codes_SRS_HTTPSTRANSPORT_21_030: [If the IoT Hub did not accept the message result sent along with the request, the function shall throw an IOException once the messages are completed.]
+        if (resultStatus != null)
+        {
+            HttpsIotHubConnection.checkMessageResultStatus(resultStatus);
+        }
     }
 
     /**
@@ -200,16 +366,34 @@ public final class HttpsTransport implements IotHubTransport
         }
 
         // Codes_SRS_HTTPSTRANSPORT_11_007: [The function shall invoke all callbacks on the callback queue.]
-        while (!this.callbackList.isEmpty())
+        IotHubCallbackDispatcher dispatcher = this.callbackDispatcher;
+        IotHubClientMetrics clientMetrics = this.metrics;
+        IotHubCallbackPacket packet;
+        // Codes_SRS_HTTPSTRANSPORT_11_016: [If an exception is thrown during the callback, the function shall drop the callback from the queue.]
+        while ((packet = this.callbackList.poll()) != null)
         {
-            // Codes_SRS_HTTPSTRANSPORT_11_016: [If an exception is thrown during the callback, the function shall drop the callback from the queue.]
-            IotHubCallbackPacket packet = this.callbackList.remove();
+            // Codes_SRS_HTTPSTRANSPORT_21_008: [If a callback dispatcher is set, the function shall hand every callback to it instead of invoking it.]
+            if (dispatcher != null)
+            {
+                dispatcher.dispatch(packet);
+                continue;
+            }
 
             IotHubStatusCode status = packet.getStatus();
             IotHubEventCallback callback = packet.getCallback();
             Object context = packet.getContext();
 
-            callback.execute(status, context);
+            if (clientMetrics == null)
+            {
+                callback.execute(status, context);
+            }
+            else
+            {
+                // Codes_SRS_HTTPSTRANSPORT_21_019: [If metrics are set, the function shall record the time each callback it invokes runs for.]
+                long startNanos = System.nanoTime();
+                callback.execute(status, context);
+                clientMetrics.recordCallback(System.nanoTime() - startNanos);
+            }
         }
     }
 
@@ -219,11 +403,17 @@ public final class HttpsTransport implements IotHubTransport
      * responds to the IoT Hub on how the processed message should be
      * handled by the IoT Hub.
      * </p>
+     * <p>
+     * The response is sent by the next call to {@link #sendMessages()},
+     * along with the next event if there is one, so that both cost a single
+     * round trip. If it is still pending at the next call to this function,
+     * it is sent on its own before the next message is polled.
+     * </p>
      * If no message callback is set, the function will do nothing.
      *
      * @throws IOException if the server could not be reached, or if the
-     * response from sending the IoT Hub message result does not have
-     * status code {@link IotHubStatusCode#OK_EMPTY}.
+     * response from sending the previous IoT Hub message result does not
+     * have status code {@link IotHubStatusCode#OK_EMPTY}.
      * @throws IllegalStateException if the transport has not been opened or is
      * already closed.
      */
@@ -245,6 +435,17 @@ public final class HttpsTransport implements IotHubTransport
             return;
         }
 
+        // Codes_SRS_HTTPSTRANSPORT_21_031: [If the result of the previous message is still pending, the function shall send it on its own before polling, since the next message replaces the e-tag it refers to.]
+        synchronized (this.messageResultLock)
+        {
+            IotHubMessageResult previousResult = this.pendingMessageResult;
+            if (previousResult != null)
+            {
+                this.pendingMessageResult = null;
+                this.connection.sendMessageResult(previousResult);
+            }
+        }
+
         // Codes_SRS_HTTPSTRANSPORT_11_009: [The function shall poll the IoT Hub for messages.]
         // Codes_SRS_HTTPSTRANSPORT_11_010: [If a message is found and a message callback is registered, the function shall invoke the callback on the message.] 
         // Codes_SRS_HTTPSTRANSPORT_11_018: [If an invalid URI is generated from the configuration given in the constructor, the function shall throw a URISyntaxException.]
@@ -252,25 +453,74 @@ public final class HttpsTransport implements IotHubTransport
         Message message = this.connection.receiveMessage();
         if (message != null)
         {
+            // Codes_SRS_HTTPSTRANSPORT_21_020: [If metrics are set, the function shall record the body bytes of the message received.]
+            IotHubClientMetrics clientMetrics = this.metrics;
+            if (clientMetrics != null)
+            {
+                clientMetrics.recordReceived(message.getBodyLength());
+            }
+
             IotHubMessageResult result = callback.execute(message, context);
 
             // Codes_SRS_HTTPSTRANSPORT_11_011: [The function shall return the message result (one of COMPLETE, ABANDON, or REJECT) to the IoT Hub.]
-            // Codes_SRS_HTTPSTRANSPORT_11_020: [If the response from sending the IoT Hub message result does not have status code OK_EMPTY, the function shall throw an IOException.] 
-            this.connection.sendMessageResult(result);
+            // Codes_SRS_HTTPSTRANSPORT_21_027: [The function shall leave the message result pending, so that the next call to sendMessages sends it along with the next event, and raise the send signal, if any.]
+            // Codes_SRS_HTTPSTRANSPORT_11_020: [If the response from sending the IoT Hub message result does not have status code OK_EMPTY, the function that sends it shall throw an IOException.]
+            synchronized (this.messageResultLock)
+            {
+                this.pendingMessageResult = result;
+            }
+            IotHubSendSignal signal = this.sendSignal;
+            if (signal != null)
+            {
+                signal.signal();
+            }
         }
     }
 
     /**
      * Returns true if the transport has no more messages to handle, and false
-     * otherwise.
+     * otherwise. A message result waiting to be sent counts as a message.
      *
      * @return true if the transport has no more messages to handle, and false
      * otherwise.
      */
     public boolean isEmpty()
     {
-        // Codes_SRS_HTTPSTRANSPORT_11_015: [The function shall return true if the waiting list, in progress list, and callback list are all empty, and false otherwise.]
-        return this.waitingList.isEmpty() && this.inProgressList.isEmpty() && this.callbackList.isEmpty();
+        // Codes_SRS_HTTPSTRANSPORT_11_015: [The function shall return true if the waiting list, in progress list, and callback list are all empty and no message result is pending, and false otherwise.]
+        return this.waitingList.isEmpty() && this.inProgressList.isEmpty() && this.callbackList.isEmpty()
+                && (this.pendingMessageResult == null);
+    }
+
+    /**
+     * Removes every message the IoT Hub has not acknowledged yet, whether it
+     * is still waiting to be sent or was sent without a response.
+     *
+     * @return the packets removed, oldest first.
+     */
+    public List<IotHubOutboundPacket> removePendingPackets()
+    {
+        // Codes_SRS_HTTPSTRANSPORT_21_007: [The function shall remove and return all packets on the in progress list followed by all packets on the waiting list, and release them from the outbound buffer.]
+        List<IotHubOutboundPacket> pending = new ArrayList<>();
+        IotHubOutboundPacket packet;
+        while ((packet = this.inProgressList.poll()) != null)
+        {
+            pending.add(packet);
+        }
+        while ((packet = this.waitingList.poll()) != null)
+        {
+            pending.add(packet);
+        }
+
+        IotHubOutboundBuffer buffer = this.outboundBuffer;
+        if (buffer != null)
+        {
+            for (IotHubOutboundPacket pendingPacket : pending)
+            {
+                buffer.release(pendingPacket);
+            }
+        }
+
+        return pending;
     }
 
     /**
@@ -285,6 +535,15 @@ public final class HttpsTransport implements IotHubTransport
         while (!this.waitingList.isEmpty())
         {
             IotHubOutboundPacket packet = this.waitingList.peek();
+            // Codes_SRS_HTTPSTRANSPORT_21_032: [A message whose body is still in its stream shall be sent on its own, in the un-batched message format.]
+            if (packet.getMessage().hasBodyStream())
+            {
+                if ((batch.numMessages() <= 0) && this.waitingList.remove(packet))
+                {
+                    this.inProgressList.add(packet);
+                }
+                return;
+            }
             try
             {
                 HttpsSingleMessage httpsMsg =
@@ -297,14 +556,20 @@ public final class HttpsTransport implements IotHubTransport
                 break;
             }
 
-            this.waitingList.remove();
-            this.inProgressList.add(packet);
+            // the packet may have been dropped by the outbound buffer meanwhile.
+            if (this.waitingList.remove(packet))
+            {
+                this.inProgressList.add(packet);
+            }
         }
 
         if (!this.waitingList.isEmpty() && batch.numMessages() <= 0)
         {
-            IotHubOutboundPacket packet = this.waitingList.remove();
-            this.inProgressList.add(packet);
+            IotHubOutboundPacket packet = this.waitingList.poll();
+            if (packet != null)
+            {
+                this.inProgressList.add(packet);
+            }
         }
     }
 
@@ -358,10 +623,30 @@ public final class HttpsTransport implements IotHubTransport
      */
     protected void moveInProgressListToCallbackList(IotHubStatusCode status)
     {
+        // Codes_SRS_HTTPSTRANSPORT_21_018: [If metrics are set and the IoT Hub accepted the messages, the function shall record the acknowledgement of each.]
+        IotHubClientMetrics clientMetrics = this.metrics;
+        boolean accepted = status == IotHubStatusCode.OK || status == IotHubStatusCode.OK_EMPTY;
         while (!this.inProgressList.isEmpty())
         {
             IotHubOutboundPacket packet = this.inProgressList.remove();
 
+            // Codes_SRS_HTTPSTRANSPORT_21_005: [If an outbound buffer is set, the function shall release every completed packet from it.]
+            IotHubOutboundBuffer buffer = this.outboundBuffer;
+            if (buffer != null)
+            {
+                buffer.release(packet);
+            }
+            // Codes_SRS_HTTPSTRANSPORT_21_011: [If an outbound journal is set, the function shall checkpoint every completed packet in it.]
+            IotHubOutboundJournal journal = this.outboundJournal;
+            if (journal != null)
+            {
+                journal.checkpoint(packet);
+            }
+            if (clientMetrics != null && accepted)
+            {
+                clientMetrics.recordAcknowledged(packet.getCreatedNanos());
+            }
+
             IotHubEventCallback callback = packet.getCallback();
             if (callback != null)
             {
@@ -374,4 +659,139 @@ public final class HttpsTransport implements IotHubTransport
             }
         }
     }
+
+    /**
+     * Completes the packets whose message expired before being accepted by
+     * the IoT Hub, so that stale messages are neither sent nor kept in memory.
+     */
+    protected void evictExpiredPackets()
+    {
+        long now = System.currentTimeMillis();
+
+        // Codes_SRS_HTTPSTRANSPORT_21_014: [The function shall remove the expired packets from the waiting list, release and checkpoint them, and add a callback with the MESSAGE_EXPIRED status for each to the callback list.]
+        for (IotHubOutboundPacket packet : this.waitingList.pollExpired(now))
+        {
+            this.completeExpiredPacket(packet);
+        }
+
+        // Codes_SRS_HTTPSTRANSPORT_21_015: [The function shall also remove the expired packets of a failed request before it is sent again.]
+        Iterator<IotHubOutboundPacket> inProgress = this.inProgressList.iterator();
+        while (inProgress.hasNext())
+        {
+            IotHubOutboundPacket packet = inProgress.next();
+            long expiryTime = packet.getExpiryTime();
+            if (expiryTime != 0 && now > expiryTime)
+            {
+                inProgress.remove();
+                this.completeExpiredPacket(packet);
+            }
+        }
+    }
+
+    private void completeExpiredPacket(IotHubOutboundPacket packet)
+    {
+        IotHubOutboundBuffer buffer = this.outboundBuffer;
+        if (buffer != null)
+        {
+            buffer.release(packet);
+        }
+        IotHubOutboundJournal journal = this.outboundJournal;
+        if (journal != null)
+        {
+            journal.checkpoint(packet);
+        }
+        if (packet.getCallback() != null)
+        {
+            this.callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_EXPIRED,
+                    packet.getCallback(), packet.getContext()));
+        }
+    }
+
+    /**
+     * Sets the signal to be raised whenever a message is added to the
+     * transport.
+     *
+     * @param sendSignal the signal to be raised. Can be {@code null}.
+     */
+    public void setSendSignal(IotHubSendSignal sendSignal)
+    {
+        // Codes_SRS_HTTPSTRANSPORT_21_002: [The function shall save the send signal.]
+        this.sendSignal = sendSignal;
+    }
+
+    /**
+     * Does nothing, since the messages from the IoT Hub are only found by
+     * polling it.
+     *
+     * @param receiveSignal ignored.
+     */
+    public void setReceiveSignal(IotHubSendSignal receiveSignal)
+    {
+        // Codes_SRS_HTTPSTRANSPORT_21_034: [The function shall do nothing, since the transport polls the IoT Hub for messages.]
+    }
+
+    /**
+     * Sets the buffer capping the messages held by the transport.
+     *
+     * @param outboundBuffer the buffer to account messages in. Can be {@code null}.
+     */
+    public void setOutboundBuffer(IotHubOutboundBuffer outboundBuffer)
+    {
+        // Codes_SRS_HTTPSTRANSPORT_21_006: [The function shall save the outbound buffer.]
+        this.outboundBuffer = outboundBuffer;
+    }
+
+    /**
+     * Sets the dispatcher delivering the event callbacks.
+     *
+     * @param callbackDispatcher the dispatcher to hand the callbacks to. Can be
+     * {@code null}.
+     */
+    public void setCallbackDispatcher(IotHubCallbackDispatcher callbackDispatcher)
+    {
+        // Codes_SRS_HTTPSTRANSPORT_21_009: [The function shall save the callback dispatcher.]
+        this.callbackDispatcher = callbackDispatcher;
+    }
+
+    /**
+     * Sets the journal keeping the messages held by the transport on disk.
+     *
+     * @param outboundJournal the journal to record messages in. Can be
+     * {@code null}.
+     */
+    public void setOutboundJournal(IotHubOutboundJournal outboundJournal)
+    {
+        // Codes_SRS_HTTPSTRANSPORT_21_012: [The function shall save the outbound journal.]
+        this.outboundJournal = outboundJournal;
+    }
+
+    /**
+     * Sets the metrics the messages and callbacks are recorded in.
+     *
+     * @param metrics the metrics of the client. Can be {@code null}.
+     */
+    public void setMetrics(IotHubClientMetrics metrics)
+    {
+        // Codes_SRS_HTTPSTRANSPORT_21_021: [The function shall save the metrics.]
+        this.metrics = metrics;
+        HttpsIotHubConnection currentConnection = this.connection;
+        if (currentConnection != null)
+        {
+            // Codes_SRS_HTTPSTRANSPORT_21_025: [If the transport was opened, the function shall register the metrics with the connection.]
+            currentConnection.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Sets the engine the requests are sent with once the transport is
+     * opened, such as an {@link HttpsPersistentEngine}. By default each
+     * request is sent over its own {@link HttpsConnection}.
+     *
+     * @param httpsEngine the engine. Can be {@code null} for the default one.
+     */
+    public void setHttpsEngine(HttpsEngine httpsEngine)
+    {
+        // Codes_SRS_HTTPSTRANSPORT_21_026: [The function shall save the HTTPS engine.]
+        this.httpsEngine = httpsEngine;
+    }
 }
@@ -3,7 +3,9 @@
 
 package com.microsoft.azure.sdk.iot.device.transport.mqtt;
 
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
 import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
 import org.eclipse.paho.client.mqttv3.*;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
@@ -28,6 +30,12 @@ abstract public class Mqtt implements MqttCallback
     protected static ConcurrentSkipListMap<String, byte[]> allReceivedMessages;
     private static Object MQTT_LOCK;
 
+    /** The metrics of the client using this instance. Can be {@code null}. */
+    private volatile IotHubClientMetrics metrics;
+
+    /** The signal raised when a message arrives for this instance. Can be {@code null}. */
+    private volatile IotHubSendSignal receiveSignal;
+
     /*
       Inner class which holds the basic information related to Mqtt Client Async.
      */
@@ -258,6 +266,47 @@ abstract public class Mqtt implements MqttCallback
         }
     }
 
+    /**
+     * Sets the metrics the in-flight window seen by the publishes of this
+     * instance, and the reconnections it handles, are recorded in.
+     *
+     * @param metrics the metrics of the client. Can be {@code null}.
+     */
+    public void setMetrics(IotHubClientMetrics metrics)
+    {
+        /*
+        **Codes_SRS_Mqtt_21_001: [**The function shall save the metrics for this instance only.**]**
+         */
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the signal raised whenever a message arrives on the connection
+     * this instance receives the messages of, or is still waiting to be
+     * received after one was.
+     *
+     * @param receiveSignal the signal to be raised. Can be {@code null}.
+     */
+    public void setReceiveSignal(IotHubSendSignal receiveSignal)
+    {
+        /*
+        **Codes_SRS_Mqtt_21_004: [**The function shall save the receive signal for this instance only.**]**
+         */
+        this.receiveSignal = receiveSignal;
+    }
+
+    /**
+     * Raises the receive signal, if one is set.
+     */
+    private void raiseReceiveSignal()
+    {
+        IotHubSendSignal signal = this.receiveSignal;
+        if (signal != null)
+        {
+            signal.signal();
+        }
+    }
+
     /**
      * Method to publish to mqtt broker connection.
      *
@@ -292,7 +341,8 @@ abstract public class Mqtt implements MqttCallback
                     throw new IOException("Cannot publish on null or empty publish topic");
                 }
 
-                while (Mqtt.info.mqttAsyncClient.getPendingDeliveryTokens().length >= Mqtt.info.maxInFlightCount)
+                int inFlightCount;
+                while ((inFlightCount = Mqtt.info.mqttAsyncClient.getPendingDeliveryTokens().length) >= Mqtt.info.maxInFlightCount)
                 {
                     /*
                     **Codes_SRS_Mqtt_25_048: [**publish shall check for pending publish tokens by calling getPendingDeliveryTokens.
@@ -301,6 +351,15 @@ abstract public class Mqtt implements MqttCallback
                     Thread.sleep(10);
                 }
 
+                /*
+                **Codes_SRS_Mqtt_21_002: [**If metrics are set, publish shall sample the number of pending publish tokens, including the one being published.**]**
+                 */
+                IotHubClientMetrics clientMetrics = this.metrics;
+                if (clientMetrics != null)
+                {
+                    clientMetrics.setInFlightCount(inFlightCount + 1);
+                }
+
                 MqttMessage mqttMessage = new MqttMessage(payload);
                 mqttMessage.setQos(Mqtt.info.qos);
 
@@ -449,7 +508,15 @@ abstract public class Mqtt implements MqttCallback
                     /*
                     **Codes_SRS_Mqtt_25_024: [**This method shall construct new Message with the bytes obtained from parsePayload and return the message.**]**
                      */
-                    return new Message(data);
+                    Message message = new Message(data);
+                    /*
+                    **Codes_SRS_Mqtt_21_006: [**If a receive signal is set and another message for the messaging client is still in the received messages queue, the function shall raise it.**]**
+                     */
+                    if (parseTopic() != null)
+                    {
+                        raiseReceiveSignal();
+                    }
+                    return message;
                 }
                 else
                 {
@@ -488,6 +555,14 @@ abstract public class Mqtt implements MqttCallback
                     **Codes_SRS_Mqtt_25_026: [**The function shall notify all its concrete classes by calling abstract method onReconnect at the entry of the function**]**
                      */
                     onReconnect();
+                    /*
+                    **Codes_SRS_Mqtt_21_003: [**If metrics are set, the function shall record the reconnection.**]**
+                     */
+                    IotHubClientMetrics clientMetrics = this.metrics;
+                    if (clientMetrics != null)
+                    {
+                        clientMetrics.recordReconnect();
+                    }
                     int currentReconnectionAttempt = 0;
                     while (!Mqtt.info.mqttAsyncClient.isConnected())
                     {
@@ -566,6 +641,10 @@ abstract public class Mqtt implements MqttCallback
             Mqtt.allReceivedMessages.put(topic, mqttMessage.getPayload());
         }
 
+        /*
+        **Codes_SRS_Mqtt_21_005: [**If a receive signal is set, the function shall raise it after the message was added to the received messages queue.**]**
+         */
+        raiseReceiveSignal();
     }
 
     /**
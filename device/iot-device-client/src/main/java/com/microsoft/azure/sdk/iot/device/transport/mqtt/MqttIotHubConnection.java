@@ -4,9 +4,10 @@
 package com.microsoft.azure.sdk.iot.device.transport.mqtt;
 
 import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
 import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
 import com.microsoft.azure.sdk.iot.device.Message;
-import com.microsoft.azure.sdk.iot.device.auth.IotHubSasToken;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
 
@@ -39,6 +40,12 @@ public class MqttIotHubConnection
     private MqttDeviceTwin [] deviceTwin;
     private MqttDeviceMethods deviceMethods;
 
+    /** The metrics of the client, given to the messaging client. Can be {@code null}. */
+    private volatile IotHubClientMetrics metrics;
+
+    /** The signal raised by the messaging client when a message arrives. Can be {@code null}. */
+    private volatile IotHubSendSignal receiveSignal;
+
     /**
      * Constructs an instance from the given {@link DeviceClientConfig}
      * object.
@@ -103,9 +110,8 @@ public class MqttIotHubConnection
             // Codes_SRS_MQTTIOTHUBCONNECTION_15_004: [The function shall establish an MQTT connection
             // with an IoT Hub using the provided host name, user name, device ID, and sas token.]
             try {
-                IotHubSasToken sasToken = new IotHubSasToken(this.config, System.currentTimeMillis() / 1000l +
-                        this.config.getTokenValidSecs() + 1l);
-                this.iotHubUserPassword = sasToken.toString();
+                // Codes_SRS_MQTTIOTHUBCONNECTION_21_001: [The function shall obtain the SAS token from the SAS token manager of the config.]
+                this.iotHubUserPassword = this.config.getSasTokenManager().getSasToken();
 
                 String clientIdentifier = "DeviceClientType=" + URLEncoder.encode(TransportUtils.javaDeviceClientIdentifier + TransportUtils.clientVersion, "UTF-8");
                 this.iotHubUserName = this.config.getIotHubHostname() + "/" + this.config.getDeviceId() + "/" + clientIdentifier;
@@ -113,6 +119,10 @@ public class MqttIotHubConnection
 
                 this.deviceMessaging = new MqttMessaging(sslPrefix + this.config.getIotHubHostname() + sslPortSuffix,
                         this.config.getDeviceId(), this.iotHubUserName, this.iotHubUserPassword);
+                // Codes_SRS_MQTTIOTHUBCONNECTION_21_002: [The function shall give the metrics, if any, to the messaging client it creates.]
+                this.deviceMessaging.setMetrics(this.metrics);
+                // Codes_SRS_MQTTIOTHUBCONNECTION_21_004: [The function shall give the receive signal, if any, to the messaging client it creates.]
+                this.deviceMessaging.setReceiveSignal(this.receiveSignal);
                 this.deviceMethods = new MqttDeviceMethods();
                 this.deviceTwin = new MqttDeviceTwin[DEVICE_TWIN_TOTAL_PROPERTY];
                 this.deviceTwin[DEVICE_TWIN_DESIRED_PROPERTY] = new MqttDeviceTwinDesiredProperties();
@@ -186,7 +196,7 @@ public class MqttIotHubConnection
         {
             // Codes_SRS_MQTTIOTHUBCONNECTION_15_010: [If the message is null or empty,
             // the function shall return status code BAD_FORMAT.]
-            if (message == null || message.getBytes() == null || message.getBytes().length == 0)
+            if (message == null || message.getBodyLength() == 0)
             {
                 return IotHubStatusCode.BAD_FORMAT;
             }
@@ -246,4 +256,38 @@ public class MqttIotHubConnection
         return message;
     }
 
+    /**
+     * Sets the metrics the in-flight window and reconnections of the messages
+     * sent through this connection are recorded in.
+     *
+     * @param metrics the metrics of the client. Can be {@code null}.
+     */
+    public void setMetrics(IotHubClientMetrics metrics)
+    {
+        // Codes_SRS_MQTTIOTHUBCONNECTION_21_003: [The function shall save the metrics, and give them to the messaging client if the connection is open.]
+        this.metrics = metrics;
+        MqttMessaging messaging = this.deviceMessaging;
+        if (messaging != null)
+        {
+            messaging.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Sets the signal raised whenever a message for the device arrives through
+     * this connection.
+     *
+     * @param receiveSignal the signal to be raised. Can be {@code null}.
+     */
+    public void setReceiveSignal(IotHubSendSignal receiveSignal)
+    {
+        // Codes_SRS_MQTTIOTHUBCONNECTION_21_005: [The function shall save the receive signal, and give it to the messaging client if the connection is open.]
+        this.receiveSignal = receiveSignal;
+        MqttMessaging messaging = this.deviceMessaging;
+        if (messaging != null)
+        {
+            messaging.setReceiveSignal(receiveSignal);
+        }
+    }
+
 }
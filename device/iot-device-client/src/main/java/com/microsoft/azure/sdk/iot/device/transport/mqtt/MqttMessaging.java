@@ -228,7 +228,7 @@ public class MqttMessaging extends Mqtt {
         {
             MESSAGING_SEMAPHORE.acquire();
             {
-                if (message == null || message.getBytes() == null)
+                if (message == null || message.getBodyBuffer() == null)
                 {
                     /*
                     **Codes_SRS_MqttMessaging_25_025: [**send method shall throw an exception if the message is null.**]**
@@ -238,8 +238,9 @@ public class MqttMessaging extends Mqtt {
 
                 /*
                 **Codes_SRS_MqttMessaging_25_024: [**send method shall publish a message to the IOT Hub on the publish topic by calling method publish().**]**
+                **Codes_SRS_MqttMessaging_21_026: [**send method shall publish the message body without copying it.**]**
                  */
-                this.publish(this.publishTopic, message.getBytes());
+                this.publish(this.publishTopic, message.getBodyArray());
 
             }
 
@@ -6,10 +6,14 @@ package com.microsoft.azure.sdk.iot.device.transport.mqtt;
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingDeque;
 
@@ -37,14 +41,32 @@ public final class MqttTransport implements IotHubTransport
     /** The MQTT connection.*/
     protected MqttIotHubConnection mqttIotHubConnection;
 
-    /** Messages waiting to be sent. */
-    protected final Queue<IotHubOutboundPacket> waitingList;
+    /** Messages waiting to be sent, in one lane per message priority. */
+    protected final IotHubOutboundQueue waitingList;
 
     /** Messages whose callbacks that are waiting to be invoked. */
     protected final Queue<IotHubCallbackPacket> callbackList;
 
     protected final DeviceClientConfig config;
 
+    /** The signal raised when a message is added. Can be {@code null}. */
+    protected volatile IotHubSendSignal sendSignal;
+
+    /** The buffer capping the messages held by the transport. Can be {@code null}. */
+    protected volatile IotHubOutboundBuffer outboundBuffer;
+
+    /** The dispatcher the event callbacks are handed to. Can be {@code null}. */
+    protected volatile IotHubCallbackDispatcher callbackDispatcher;
+
+    /** The journal keeping the messages held by the transport on disk. Can be {@code null}. */
+    protected volatile IotHubOutboundJournal outboundJournal;
+
+    /** The metrics the messages and callbacks are recorded in. Can be {@code null}. */
+    protected volatile IotHubClientMetrics metrics;
+
+    /** The signal raised when a received message is waiting to be handled. Can be {@code null}. */
+    protected volatile IotHubSendSignal receiveSignal;
+
     /**
      * Constructs an instance from the given {@link DeviceClientConfig}
      * object.
@@ -55,7 +77,8 @@ public final class MqttTransport implements IotHubTransport
     {
         // Codes_SRS_MQTTTRANSPORT_15_001: [The constructor shall initialize an empty transport queue
         // for adding messages to be sent as a batch.]
-        this.waitingList = new LinkedBlockingDeque<>();
+        // Codes_SRS_MQTTTRANSPORT_21_012: [The transport queue shall have one lane per message priority, drained in weighted round robin.]
+        this.waitingList = new IotHubOutboundQueue();
         // Codes_SRS_MQTTTRANSPORT_15_002: [The constructor shall initialize an empty queue
         // for completed messages whose callbacks are waiting to be invoked.]
         this.callbackList = new LinkedBlockingDeque<>();
@@ -80,6 +103,10 @@ public final class MqttTransport implements IotHubTransport
         // Codes_SRS_MQTTTRANSPORT_15_003: [The function shall establish an MQTT connection
         // with the IoT Hub given in the configuration.]
         this.mqttIotHubConnection = new MqttIotHubConnection(this.config);
+        // Codes_SRS_MQTTTRANSPORT_21_019: [The function shall give the metrics, if any, to the MQTT connection before opening it.]
+        this.mqttIotHubConnection.setMetrics(this.metrics);
+        // Codes_SRS_MQTTTRANSPORT_21_021: [The function shall give the receive signal, if any, to the MQTT connection before opening it.]
+        this.mqttIotHubConnection.setReceiveSignal(this.receiveSignal);
         this.mqttIotHubConnection.open();
 
         this.state = State.OPEN;
@@ -113,26 +140,48 @@ public final class MqttTransport implements IotHubTransport
      * @param callbackContext the context to be passed in when the callback is
      * invoked.
      *
-     * @throws IllegalStateException if the transport has not been opened or is closed
+     * @throws IllegalStateException if the transport has not been opened or is closed,
+     * or if the outbound buffer has no room for the message.
      */
     public void addMessage(
             Message message,
             IotHubEventCallback callback,
             Object callbackContext) throws IllegalStateException
     {
-        synchronized (sendMessagesLock)
+        // Codes_SRS_MQTTTRANSPORT_15_008: [If the transport is closed,
+        // the function shall throw an IllegalStateException.]
+        if (this.state == State.CLOSED)
         {
-            // Codes_SRS_MQTTTRANSPORT_15_008: [If the transport is closed,
-            // the function shall throw an IllegalStateException.]
-            if (this.state == State.CLOSED)
+            throw new IllegalStateException("Cannot add a message to an MQTT transport that is closed.");
+        }
+
+        //Codes_SRS_MQTTTRANSPORT_15_007: [The function shall add a packet containing the message, callback,
+        // and callback context to the transport queue.]
+        IotHubOutboundPacket packet = new IotHubOutboundPacket(message, callback, callbackContext);
+
+        // waiting for room in the buffer must not hold the send lock, or the
+        // sender could never free any.
+        // Codes_SRS_MQTTTRANSPORT_21_003: [If an outbound buffer is set, the function shall add the packet only if the buffer admits it.]
+        IotHubOutboundBuffer buffer = this.outboundBuffer;
+        if (buffer == null || buffer.acquire(packet, this.waitingList, this.callbackList))
+        {
+            // Codes_SRS_MQTTTRANSPORT_21_009: [If an outbound journal is set, the function shall record the packet in it before adding it to the transport queue.]
+            IotHubOutboundJournal journal = this.outboundJournal;
+            if (journal != null)
             {
-                throw new IllegalStateException("Cannot add a message to an MQTT transport that is closed.");
+                journal.record(packet);
             }
+            synchronized (sendMessagesLock)
+            {
+                this.waitingList.add(packet);
+            }
+        }
 
-            //Codes_SRS_MQTTTRANSPORT_15_007: [The function shall add a packet containing the message, callback,
-            // and callback context to the transport queue.]
-            IotHubOutboundPacket packet = new IotHubOutboundPacket(message, callback, callbackContext);
-            this.waitingList.add(packet);
+        // Codes_SRS_MQTTTRANSPORT_21_001: [If a send signal is set, the function shall raise it after adding the packet.]
+        IotHubSendSignal signal = this.sendSignal;
+        if (signal != null)
+        {
+            signal.signal();
         }
     }
 
@@ -158,20 +207,53 @@ public final class MqttTransport implements IotHubTransport
                 throw new IllegalStateException("MQTT transport is closed.");
             }
 
+            this.evictExpiredPackets();
+
             if (this.waitingList.size() <= 0)
             {
                 return;
             }
 
+            IotHubClientMetrics clientMetrics = this.metrics;
+            int sentCount = 0;
+            long sentBytes = 0;
+
             // Codes_SRS_MQTTTRANSPORT_15_009: [The function shall attempt to send every message
             // on its waiting list, one at a time.]
             while (!this.waitingList.isEmpty())
             {
-                IotHubOutboundPacket packet = this.waitingList.remove();
+                // the packet may have been dropped by the outbound buffer meanwhile.
+                IotHubOutboundPacket packet = this.waitingList.poll();
+                if (packet == null)
+                {
+                    break;
+                }
 
                 try
                 {
-                    IotHubStatusCode status = this.mqttIotHubConnection.sendEvent(packet.getMessage());
+                    Message message = packet.getMessage();
+                    IotHubStatusCode status = this.mqttIotHubConnection.sendEvent(message);
+                    sentCount++;
+                    sentBytes += message.getBodyLength();
+                    // Codes_SRS_MQTTTRANSPORT_21_015: [If metrics are set and the IoT Hub accepted a message, the function shall record its acknowledgement.]
+                    if (clientMetrics != null
+                            && (status == IotHubStatusCode.OK || status == IotHubStatusCode.OK_EMPTY))
+                    {
+                        clientMetrics.recordAcknowledged(packet.getCreatedNanos());
+                    }
+
+                    // Codes_SRS_MQTTTRANSPORT_21_004: [If an outbound buffer is set, the function shall release every sent packet from it.]
+                    IotHubOutboundBuffer buffer = this.outboundBuffer;
+                    if (buffer != null)
+                    {
+                        buffer.release(packet);
+                    }
+                    // Codes_SRS_MQTTTRANSPORT_21_010: [If an outbound journal is set, the function shall checkpoint every sent packet in it.]
+                    IotHubOutboundJournal journal = this.outboundJournal;
+                    if (journal != null)
+                    {
+                        journal.checkpoint(packet);
+                    }
 
                     // Codes_SRS_MQTTTRANSPORT_15_010: [For each message being sent, the function shall add
                     // the IoT Hub status code along with the callback and context to the callback list.]
@@ -186,6 +268,39 @@ public final class MqttTransport implements IotHubTransport
                 }
 
             }
+
+            // Codes_SRS_MQTTTRANSPORT_21_014: [If metrics are set, the function shall record the number and body bytes of the messages sent, and sample the number of messages waiting.]
+            if (clientMetrics != null)
+            {
+                if (sentCount > 0)
+                {
+                    clientMetrics.recordSent(sentCount, sentBytes);
+                }
+                clientMetrics.setQueueDepth(this.waitingList.size());
+            }
+        }
+    }
+
+    /**
+     * Completes the waiting packets whose message expired, so that stale
+     * messages are neither sent nor kept in memory.
+     */
+    private void evictExpiredPackets()
+    {
+        // Codes_SRS_MQTTTRANSPORT_21_013: [The function shall remove the expired packets from the waiting list, release and checkpoint them, and add a callback with the MESSAGE_EXPIRED status for each to the callback list.]
+        for (IotHubOutboundPacket packet : this.waitingList.pollExpired(System.currentTimeMillis()))
+        {
+            IotHubOutboundBuffer buffer = this.outboundBuffer;
+            if (buffer != null)
+            {
+                buffer.release(packet);
+            }
+            IotHubOutboundJournal journal = this.outboundJournal;
+            if (journal != null)
+            {
+                journal.checkpoint(packet);
+            }
+            this.callbackList.add(new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_EXPIRED, packet.getCallback(), packet.getContext()));
         }
     }
 
@@ -196,28 +311,45 @@ public final class MqttTransport implements IotHubTransport
      */
     public void invokeCallbacks() throws IllegalStateException
     {
-        synchronized (sendMessagesLock)
+        // Codes_SRS_MQTTTRANSPORT_15_014: [If the transport is closed,
+        // the function shall throw an IllegalStateException.]
+        if (this.state == State.CLOSED)
         {
-            // Codes_SRS_MQTTTRANSPORT_15_014: [If the transport is closed,
-            // the function shall throw an IllegalStateException.]
-            if (this.state == State.CLOSED)
-            {
-                throw new IllegalStateException("MQTT transport is closed.");
-            }
+            throw new IllegalStateException("MQTT transport is closed.");
+        }
 
-            // Codes_SRS_MQTTTRANSPORT_15_013: [The function shall invoke all callbacks on the callback queue.]
-            while (!this.callbackList.isEmpty())
+        // the callback list is a concurrent queue, so user callbacks run
+        // without the send lock and cannot hold back addMessage or sendMessages.
+        // Codes_SRS_MQTTTRANSPORT_15_013: [The function shall invoke all callbacks on the callback queue.]
+        IotHubCallbackDispatcher dispatcher = this.callbackDispatcher;
+        IotHubClientMetrics clientMetrics = this.metrics;
+        IotHubCallbackPacket packet;
+        // Codes_SRS_MQTTTRANSPORT_15_015: [If an exception is thrown during the callback,
+        // the function shall drop the callback from the queue.]
+        while ((packet = this.callbackList.poll()) != null)
+        {
+            // Codes_SRS_MQTTTRANSPORT_21_007: [If a callback dispatcher is set, the function shall hand every callback to it instead of invoking it.]
+            if (dispatcher != null)
             {
-                // Codes_SRS_MQTTTRANSPORT_15_015: [If an exception is thrown during the callback,
-                // the function shall drop the callback from the queue.]
-                IotHubCallbackPacket packet = this.callbackList.remove();
+                dispatcher.dispatch(packet);
+                continue;
+            }
 
-                IotHubStatusCode status = packet.getStatus();
-                IotHubEventCallback callback = packet.getCallback();
-                Object context = packet.getContext();
+            IotHubStatusCode status = packet.getStatus();
+            IotHubEventCallback callback = packet.getCallback();
+            Object context = packet.getContext();
 
+            if (clientMetrics == null)
+            {
                 callback.execute(status, context);
             }
+            else
+            {
+                // Codes_SRS_MQTTTRANSPORT_21_016: [If metrics are set, the function shall record the time each callback it invokes runs for.]
+                long startNanos = System.nanoTime();
+                callback.execute(status, context);
+                clientMetrics.recordCallback(System.nanoTime() - startNanos);
+            }
         }
     }
 
@@ -258,6 +390,12 @@ public final class MqttTransport implements IotHubTransport
                 // the function shall invoke the callback on the message.]
                 if (message != null)
                 {
+                    // Codes_SRS_MQTTTRANSPORT_21_017: [If metrics are set, the function shall record the body bytes of the message received.]
+                    IotHubClientMetrics clientMetrics = this.metrics;
+                    if (clientMetrics != null)
+                    {
+                        clientMetrics.recordReceived(message.getBodyLength());
+                    }
                     callback.execute(message, context);
                 }
             } catch (IllegalStateException e)
@@ -288,4 +426,116 @@ public final class MqttTransport implements IotHubTransport
 
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * Removes every message waiting to be sent. Messages are sent
+     * synchronously, so none is ever waiting for a response.
+     *
+     * @return the packets removed, oldest first.
+     */
+    public List<IotHubOutboundPacket> removePendingPackets()
+    {
+        List<IotHubOutboundPacket> pending = new ArrayList<>();
+        synchronized (sendMessagesLock)
+        {
+            // Codes_SRS_MQTTTRANSPORT_21_006: [The function shall remove and return all packets on the waiting list, and release them from the outbound buffer.]
+            IotHubOutboundPacket packet;
+            while ((packet = this.waitingList.poll()) != null)
+            {
+                pending.add(packet);
+            }
+        }
+
+        IotHubOutboundBuffer buffer = this.outboundBuffer;
+        if (buffer != null)
+        {
+            for (IotHubOutboundPacket pendingPacket : pending)
+            {
+                buffer.release(pendingPacket);
+            }
+        }
+
+        return pending;
+    }
+
+    /**
+     * Sets the signal to be raised whenever a message is added to the
+     * transport.
+     *
+     * @param sendSignal the signal to be raised. Can be {@code null}.
+     */
+    public void setSendSignal(IotHubSendSignal sendSignal)
+    {
+        // Codes_SRS_MQTTTRANSPORT_21_002: [The function shall save the send signal.]
+        this.sendSignal = sendSignal;
+    }
+
+    /**
+     * Sets the signal to be raised whenever a message arrives from the IoT
+     * Hub, or is still waiting to be handled after one was handled.
+     *
+     * @param receiveSignal the signal to be raised. Can be {@code null}.
+     */
+    public void setReceiveSignal(IotHubSendSignal receiveSignal)
+    {
+        // Codes_SRS_MQTTTRANSPORT_21_020: [The function shall save the receive signal, and give it to the MQTT connection if there is one.]
+        this.receiveSignal = receiveSignal;
+        MqttIotHubConnection connection = this.mqttIotHubConnection;
+        if (connection != null)
+        {
+            connection.setReceiveSignal(receiveSignal);
+        }
+    }
+
+    /**
+     * Sets the buffer capping the messages held by the transport.
+     *
+     * @param outboundBuffer the buffer to account messages in. Can be {@code null}.
+     */
+    public void setOutboundBuffer(IotHubOutboundBuffer outboundBuffer)
+    {
+        // Codes_SRS_MQTTTRANSPORT_21_005: [The function shall save the outbound buffer.]
+        this.outboundBuffer = outboundBuffer;
+    }
+
+    /**
+     * Sets the dispatcher delivering the event callbacks.
+     *
+     * @param callbackDispatcher the dispatcher to hand the callbacks to. Can be
+     * {@code null}.
+     */
+    public void setCallbackDispatcher(IotHubCallbackDispatcher callbackDispatcher)
+    {
+        // Codes_SRS_MQTTTRANSPORT_21_008: [The function shall save the callback dispatcher.]
+        this.callbackDispatcher = callbackDispatcher;
+    }
+
+    /**
+     * Sets the journal keeping the messages held by the transport on disk.
+     *
+     * @param outboundJournal the journal to record messages in. Can be
+     * {@code null}.
+     */
+    public void setOutboundJournal(IotHubOutboundJournal outboundJournal)
+    {
+        // Codes_SRS_MQTTTRANSPORT_21_011: [The function shall save the outbound journal.]
+        this.outboundJournal = outboundJournal;
+    }
+
+    /**
+     * Sets the metrics the messages, callbacks, in-flight window and
+     * reconnections of this transport are recorded in.
+     *
+     * @param metrics the metrics of the client. Can be {@code null}.
+     */
+    public void setMetrics(IotHubClientMetrics metrics)
+    {
+        // Codes_SRS_MQTTTRANSPORT_21_018: [The function shall save the metrics, and give them to the MQTT connection if there is one.]
+        this.metrics = metrics;
+        MqttIotHubConnection connection = this.mqttIotHubConnection;
+        if (connection != null)
+        {
+            connection.setMetrics(metrics);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.BinaryTelemetrySerializer;
+import com.microsoft.azure.sdk.iot.device.TelemetryEvent;
+import com.microsoft.azure.sdk.iot.device.TelemetryWriter;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/** Unit tests for BinaryTelemetrySerializer. */
+public class BinaryTelemetrySerializerTest
+{
+    // Tests_SRS_BINARYTELEMETRYSERIALIZER_21_001: [If the event is null, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void serializeRejectsNullEvent()
+    {
+        new BinaryTelemetrySerializer().serialize(null);
+    }
+
+    // Tests_SRS_BINARYTELEMETRYSERIALIZER_21_002: [The function shall write the format version and then the fields in the order the event writes them into the buffer of the calling thread, and return a copy of the exact length of the event.]
+    // Tests_SRS_BINARYTELEMETRYSERIALIZER_21_003: [The writer shall skip a string field with a null value, and write the other strings with their UTF-8 length.]
+    // Tests_SRS_BINARYTELEMETRYSERIALIZER_21_004: [The writer shall write the integral fields as zigzag varints.]
+    // Tests_SRS_BINARYTELEMETRYSERIALIZER_21_006: [The writer shall write the boolean fields as their type alone.]
+    @Test
+    public void serializeWritesCompactFields()
+    {
+        TelemetryEvent event = new TelemetryEvent()
+        {
+            @Override
+            public void writeTo(TelemetryWriter writer)
+            {
+                writer.field("id", "\u00e9")
+                        .field("skipped", (String) null)
+                        .field("n", -1)
+                        .field("m", 300)
+                        .field("on", true)
+                        .field("off", false);
+            }
+        };
+
+        byte[] body = new BinaryTelemetrySerializer().serialize(event);
+
+        assertThat(body, is(new byte[] {
+                BinaryTelemetrySerializer.FORMAT_VERSION,
+                BinaryTelemetrySerializer.TYPE_STRING, 2, 'i', 'd', 2, (byte) 0xc3, (byte) 0xa9,
+                BinaryTelemetrySerializer.TYPE_LONG, 1, 'n', 1,
+                BinaryTelemetrySerializer.TYPE_LONG, 1, 'm', (byte) 0xd8, 0x04,
+                BinaryTelemetrySerializer.TYPE_TRUE, 2, 'o', 'n',
+                BinaryTelemetrySerializer.TYPE_FALSE, 3, 'o', 'f', 'f' }));
+    }
+
+    // Tests_SRS_BINARYTELEMETRYSERIALIZER_21_004: [The writer shall write the integral fields as zigzag varints.]
+    // Tests_SRS_BINARYTELEMETRYSERIALIZER_21_005: [The writer shall write the floating point fields as their 8 IEEE 754 bytes, big-endian.]
+    @Test
+    public void serializeWritesFullRangeNumbers()
+    {
+        TelemetryEvent event = new TelemetryEvent()
+        {
+            @Override
+            public void writeTo(TelemetryWriter writer)
+            {
+                writer.field("d", 10.5).field("l", Long.MIN_VALUE);
+            }
+        };
+
+        ByteBuffer body = ByteBuffer.wrap(new BinaryTelemetrySerializer().serialize(event));
+
+        assertThat(body.get(), is(BinaryTelemetrySerializer.FORMAT_VERSION));
+        assertThat(body.get(), is(BinaryTelemetrySerializer.TYPE_DOUBLE));
+        assertThat(body.get(), is((byte) 1));
+        assertThat(body.get(), is((byte) 'd'));
+        assertThat(body.getDouble(), is(10.5));
+        assertThat(body.get(), is(BinaryTelemetrySerializer.TYPE_LONG));
+        assertThat(body.get(), is((byte) 1));
+        assertThat(body.get(), is((byte) 'l'));
+        for (int i = 0; i < 9; i++)
+        {
+            assertThat(body.get(), is((byte) 0xff));
+        }
+        assertThat(body.get(), is((byte) 0x01));
+        assertThat(body.remaining(), is(0));
+    }
+}
@@ -0,0 +1,99 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.CustomLogger;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/** Unit tests for CustomLogger. */
+public class CustomLoggerTest
+{
+    protected Logger log4jLogger;
+    protected Level previousLevel;
+    protected final List<String> logged = new ArrayList<>();
+    protected final AppenderSkeleton appender = new AppenderSkeleton()
+    {
+        @Override
+        protected void append(LoggingEvent event)
+        {
+            logged.add(event.getRenderedMessage());
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean requiresLayout()
+        {
+            return false;
+        }
+    };
+
+    protected int evaluations;
+    protected final CustomLogger.LazyArgument countingArgument = new CustomLogger.LazyArgument()
+    {
+        @Override
+        protected Object evaluate()
+        {
+            evaluations++;
+            return "payload";
+        }
+    };
+
+    @Before
+    public void setUp()
+    {
+        this.log4jLogger = Logger.getLogger(CustomLoggerTest.class);
+        this.previousLevel = this.log4jLogger.getLevel();
+        this.log4jLogger.addAppender(this.appender);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.log4jLogger.removeAppender(this.appender);
+        this.log4jLogger.setLevel(this.previousLevel);
+    }
+
+    // Tests_SRS_CUSTOMLOGGER_21_001: [The log functions shall only format the message and its parameters if the message is logged at their level.]
+    @Test
+    public void disabledLevelDoesNotEvaluateArguments()
+    {
+        this.log4jLogger.setLevel(Level.WARN);
+        CustomLogger logger = new CustomLogger(CustomLoggerTest.class);
+
+        logger.LogInfo("Content is %s, method name is %s ", this.countingArgument, CustomLogger.METHOD_NAME);
+
+        assertThat(this.evaluations, is(0));
+        assertThat(this.logged.isEmpty(), is(true));
+    }
+
+    // Tests_SRS_CUSTOMLOGGER_21_002: [The log functions shall format METHOD_NAME as the name of the method calling them.]
+    // Tests_SRS_CUSTOMLOGGER_21_003: [A lazy argument shall be formatted as the value it evaluates to.]
+    @Test
+    public void enabledLevelFormatsLazyArgumentsAndCallingMethod()
+    {
+        this.log4jLogger.setLevel(Level.INFO);
+        CustomLogger logger = new CustomLogger(CustomLoggerTest.class);
+
+        logger.LogInfo("Content is %s, method name is %s ", this.countingArgument, CustomLogger.METHOD_NAME);
+
+        assertThat(this.evaluations, is(1));
+        assertThat(this.logged.get(0), is("Content is payload, method name is enabledLevelFormatsLazyArgumentsAndCallingMethod "));
+    }
+}
@@ -0,0 +1,100 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.DeflateMessageCodec;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for DeflateMessageCodec. */
+public class DeflateMessageCodecTest
+{
+    protected static byte[] telemetry(int length)
+    {
+        StringBuilder json = new StringBuilder();
+        while (json.length() < length)
+        {
+            json.append("{\"temperature\":21.5,\"humidity\":40},");
+        }
+        return json.substring(0, length).getBytes();
+    }
+
+    protected static byte[] readAll(InputStream input) throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = input.read(buffer)) >= 0)
+        {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    // Tests_SRS_DEFLATEMESSAGECODEC_21_001: [If the level is not from -1 to 9, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsLevelOutOfRange()
+    {
+        new DeflateMessageCodec(true, 10);
+    }
+
+    // Tests_SRS_DEFLATEMESSAGECODEC_21_002: [The constructor shall save the content encoding and the compression level.]
+    // Tests_SRS_DEFLATEMESSAGECODEC_21_003: [The function shall return "gzip" for a gzip codec, and "deflate" otherwise.]
+    @Test
+    public void getContentEncodingReturnsFormat()
+    {
+        assertThat(DeflateMessageCodec.GZIP.getContentEncoding(), is("gzip"));
+        assertThat(DeflateMessageCodec.DEFLATE.getContentEncoding(), is("deflate"));
+        assertThat(new DeflateMessageCodec(false, 9).getContentEncoding(), is("deflate"));
+    }
+
+    // Tests_SRS_DEFLATEMESSAGECODEC_21_004: [If the body is null, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeRejectsNullBody()
+    {
+        DeflateMessageCodec.GZIP.encode(null);
+    }
+
+    // Tests_SRS_DEFLATEMESSAGECODEC_21_005: [The function shall compress the body with the deflater of the calling thread, reset for the body, and return the compressed body in the gzip or the zlib format.]
+    @Test
+    public void gzipBodiesDecompressToOriginal() throws IOException
+    {
+        byte[] large = telemetry(100000);
+        byte[] small = telemetry(100);
+
+        byte[] encodedLarge = DeflateMessageCodec.GZIP.encode(ByteBuffer.wrap(large).asReadOnlyBuffer());
+        byte[] encodedSmall = DeflateMessageCodec.GZIP.encode(ByteBuffer.wrap(small).asReadOnlyBuffer());
+
+        assertTrue(encodedLarge.length < large.length / 5);
+        assertThat(readAll(new GZIPInputStream(new ByteArrayInputStream(encodedLarge))), is(large));
+        assertThat(readAll(new GZIPInputStream(new ByteArrayInputStream(encodedSmall))), is(small));
+    }
+
+    // Tests_SRS_DEFLATEMESSAGECODEC_21_005: [The function shall compress the body with the deflater of the calling thread, reset for the body, and return the compressed body in the gzip or the zlib format.]
+    @Test
+    public void deflateBodiesDecompressToOriginal() throws IOException
+    {
+        byte[] random = new byte[20000];
+        new Random(7).nextBytes(random);
+        byte[] empty = new byte[0];
+
+        byte[] encodedRandom = DeflateMessageCodec.DEFLATE.encode(ByteBuffer.wrap(random));
+        byte[] encodedEmpty = DeflateMessageCodec.DEFLATE.encode(ByteBuffer.wrap(empty));
+
+        assertThat(readAll(new InflaterInputStream(new ByteArrayInputStream(encodedRandom))), is(random));
+        assertThat(readAll(new InflaterInputStream(new ByteArrayInputStream(encodedEmpty))), is(empty));
+    }
+}
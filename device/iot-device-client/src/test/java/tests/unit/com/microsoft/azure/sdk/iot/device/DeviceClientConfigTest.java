@@ -4,10 +4,13 @@
 package tests.unit.com.microsoft.azure.sdk.iot.device;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
 import com.microsoft.azure.sdk.iot.device.MessageCallback;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenManager;
 import mockit.Mocked;
 import org.junit.Test;
 
@@ -238,4 +241,20 @@ public class DeviceClientConfigTest
         assertThat(testMessageLockTimeoutSecs,
                 is(expectedMessageLockTimeoutSecs));
     }
+    // Tests_SRS_DEVICECLIENTCONFIG_21_019: [The constructor shall create the SAS token manager of the client.]
+    // Tests_SRS_DEVICECLIENTCONFIG_21_020: [The function shall return the SAS token manager created in the constructor.]
+    @Test
+    public void getSasTokenManagerReturnsSameManager() throws URISyntaxException
+    {
+        final String iotHubHostname = "test.iothubhostname";
+        final String deviceId = "test-deviceid";
+        final String deviceKey = "test-devicekey";
+        final String sharedAccessToken = null;
+
+        DeviceClientConfig config = new DeviceClientConfig(iotHubHostname, deviceId, deviceKey, sharedAccessToken);
+        IotHubSasTokenManager testManager = config.getSasTokenManager();
+
+        assertThat(testManager, is(notNullValue()));
+        assertThat(config.getSasTokenManager(), is(sameInstance(testManager)));
+    }
 }
@@ -6,24 +6,41 @@ package tests.unit.com.microsoft.azure.sdk.iot.device;
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.DeviceClient;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsTransport;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsEngine;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsTransport;
 
+import com.microsoft.azure.sdk.iot.device.transport.IotHubEventDrivenReceiveTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubEventDrivenSendTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubReceiveTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubRuntimeSendTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubSendTask;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttTransport;
+import mockit.Deencapsulation;
+import mockit.Delegate;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Verifications;
+import mockit.VerificationsInOrder;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
 /** Unit tests for DeviceClient. */
 public class DeviceClientTest
 {
@@ -640,6 +657,99 @@ public class DeviceClientTest
         client.sendEventAsync(mockMsg, mockCallback, context);
     }
 
+    // Tests_SRS_DEVICECLIENT_21_032: [The function shall send the message with a callback completing the returned future with the status the IoT Hub responds with.]
+    @Test
+    public void sendEventAsyncReturnsFutureCompletedByCallback(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final AmqpsTransport mockTransport,
+            @Mocked final Message mockMsg)
+            throws IOException, URISyntaxException, InterruptedException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.addMessage((Message) any, (IotHubEventCallback) any, any);
+                result = new Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    void addMessage(Message message, IotHubEventCallback callback, Object context)
+                    {
+                        callback.execute(IotHubStatusCode.OK_EMPTY, context);
+                    }
+                };
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.AMQPS);
+        client.open();
+        IotHubSendFuture future = client.sendEventAsync(mockMsg);
+
+        assertThat(future.isDone(), is(true));
+        assertThat(future.get(), is(IotHubStatusCode.OK_EMPTY));
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_033: [If the collection is null, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void sendEventsAsyncRejectsNullCollection(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final AmqpsTransport mockTransport)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.AMQPS);
+        client.open();
+        client.sendEventsAsync(null);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_034: [The function shall send every message, in order, and return a future combining their futures.]
+    @Test
+    public void sendEventsAsyncReturnsCombinedFuture(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final AmqpsTransport mockTransport,
+            @Mocked final Message mockMsg)
+            throws IOException, URISyntaxException, InterruptedException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final List<IotHubStatusCode> statuses = new ArrayList<>();
+        statuses.add(IotHubStatusCode.OK_EMPTY);
+        statuses.add(IotHubStatusCode.THROTTLED);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.addMessage((Message) any, (IotHubEventCallback) any, any);
+                result = new Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    void addMessage(Message message, IotHubEventCallback callback, Object context)
+                    {
+                        callback.execute(statuses.remove(0), context);
+                    }
+                };
+            }
+        };
+        List<Message> messages = new ArrayList<>();
+        messages.add(mockMsg);
+        messages.add(mockMsg);
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.AMQPS);
+        client.open();
+        IotHubSendFuture future = client.sendEventsAsync(messages);
+
+        assertThat(future.get(), is(IotHubStatusCode.THROTTLED));
+        new Verifications()
+        {
+            {
+                mockTransport.addMessage((Message) any, (IotHubEventCallback) any, any);
+                times = 2;
+            }
+        };
+    }
+
     // Tests_SRS_DEVICECLIENT_11_012: [The function shall set the message callback, with its associated context.]
     @Test
     public void setMessageCallbackSetsMessageCallback(
@@ -1069,4 +1179,1548 @@ public class DeviceClientTest
             }
         };
     }
+
+    // Tests_SRS_DEVICECLIENT_21_001: [If event-driven sending is enabled, the function shall register a send signal with the transport and start a single send task that waits on it.]
+    // Tests_SRS_DEVICECLIENT_21_003: ["SetEventDrivenSend" is available for HTTPS/AMQP/MQTT.]
+    // Tests_SRS_DEVICECLIENT_21_079: [If event-driven sending is enabled and the protocol is AMQPS, AMQPS_WS or MQTT, the function shall register a receive signal with the transport and start a receive task that handles a message whenever the signal is raised, on the runtime or the threads of the client, instead of polling the transport every RECEIVE_PERIOD_MILLIS milliseconds.]
+    @Test
+    public void openWithEventDrivenSendStartsEventDrivenSendTask(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final AmqpsTransport mockTransport,
+            @Mocked final IotHubSendSignal mockSignal,
+            @Mocked final IotHubEventDrivenSendTask mockEventDrivenTask,
+            @Mocked final IotHubEventDrivenReceiveTask mockEventDrivenReceiveTask,
+            @Mocked final IotHubSendTask mockTask)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.setOption("SetEventDrivenSend", true);
+        client.open();
+
+        new Verifications()
+        {
+            {
+                mockTransport.setSendSignal((IotHubSendSignal) any);
+                times = 1;
+                mockScheduler.execute((IotHubEventDrivenSendTask) any);
+                times = 1;
+                new IotHubSendTask((AmqpsTransport) any);
+                times = 0;
+                mockTransport.setReceiveSignal((IotHubSendSignal) any);
+                times = 1;
+                new IotHubEventDrivenReceiveTask((AmqpsTransport) any, (IotHubSendSignal) any, mockScheduler);
+                times = 1;
+                mockEventDrivenReceiveTask.start();
+                times = 1;
+                mockScheduler.scheduleAtFixedRate((IotHubReceiveTask) any,
+                        anyLong, anyLong, TimeUnit.MILLISECONDS);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_11_024: [The function shall schedule receive tasks to run every RECEIVE_PERIOD_MILLIS milliseconds.]
+    @Test
+    public void openWithEventDrivenSendOverHttpsPollsForMessages(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport,
+            @Mocked final IotHubSendSignal mockSignal,
+            @Mocked final IotHubEventDrivenSendTask mockEventDrivenTask,
+            @Mocked final IotHubEventDrivenReceiveTask mockEventDrivenReceiveTask)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.setOption("SetEventDrivenSend", true);
+        client.open();
+
+        new Verifications()
+        {
+            {
+                mockEventDrivenReceiveTask.start();
+                times = 0;
+                mockScheduler.scheduleAtFixedRate((IotHubReceiveTask) any,
+                        anyLong, DeviceClient.RECEIVE_PERIOD_MILLIS_HTTPS, TimeUnit.MILLISECONDS);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_080: [If an event-driven receive task was started, the function shall stop it and unregister the receive signal from the transport.]
+    @Test
+    public void closeWithEventDrivenSendStopsEventDrivenReceiveTask(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubSendSignal mockSignal,
+            @Mocked final IotHubEventDrivenSendTask mockEventDrivenTask,
+            @Mocked final IotHubEventDrivenReceiveTask mockEventDrivenReceiveTask)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetEventDrivenSend", true);
+        client.open();
+        client.close();
+
+        new VerificationsInOrder()
+        {
+            {
+                mockEventDrivenReceiveTask.stop();
+                mockTransport.setReceiveSignal(null);
+                mockScheduler.shutdown();
+                mockTransport.close();
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_002: [If event-driven sending is enabled, the function shall stop the send task and unregister the send signal from the transport.]
+    @Test
+    public void closeWithEventDrivenSendStopsEventDrivenSendTask(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport,
+            @Mocked final IotHubSendSignal mockSignal,
+            @Mocked final IotHubEventDrivenSendTask mockEventDrivenTask,
+            @Mocked final IotHubReceiveTask mockReceiveTask)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.HTTPS;
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.setOption("SetEventDrivenSend", true);
+        client.open();
+        client.close();
+
+        new VerificationsInOrder()
+        {
+            {
+                mockEventDrivenTask.stop();
+                mockTransport.setSendSignal(null);
+                mockScheduler.shutdown();
+                mockTransport.close();
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_004: ["SetEventDrivenSend" only works when the client is closed.]
+    @Test(expected = IllegalStateException.class)
+    public void setOptionEventDrivenSendAfterOpenFails(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.open();
+        client.setOption("SetEventDrivenSend", true);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_005: ["SetEventDrivenSend" should have value type boolean.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionEventDrivenSendWithNonBooleanValueFails(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.setOption("SetEventDrivenSend", "true");
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_006: [The function shall register the outbound buffer, if any, with the transport.]
+    // Tests_SRS_DEVICECLIENT_21_007: ["SetOutboundBuffer" is available for HTTPS/AMQP/MQTT.]
+    @Test
+    public void openRegistersOutboundBufferWithTransport(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubOutboundBuffer mockBuffer)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.setOption("SetOutboundBuffer", mockBuffer);
+        client.open();
+
+        new Verifications()
+        {
+            {
+                mockTransport.setOutboundBuffer(mockBuffer);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_010: [The function shall return the number of messages held in the outbound buffer, or 0 if no outbound buffer is set.]
+    // Tests_SRS_DEVICECLIENT_21_011: [The function shall return the number of body bytes held in the outbound buffer, or 0 if no outbound buffer is set.]
+    @Test
+    public void getOutboundCountsReadTheOutboundBuffer(
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubOutboundBuffer mockBuffer)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+        new NonStrictExpectations()
+        {
+            {
+                mockBuffer.getMessageCount();
+                result = 3;
+                mockBuffer.getByteCount();
+                result = 42L;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.setOption("SetOutboundBuffer", mockBuffer);
+
+        assertThat(client.getOutboundMessageCount(), is(3));
+        assertThat(client.getOutboundByteCount(), is(42L));
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_006: [The function shall register the outbound buffer, if any, with the transport.]
+    // Tests_SRS_DEVICECLIENT_21_010: [The function shall return the number of messages held in the outbound buffer, or 0 if no outbound buffer is set.]
+    // Tests_SRS_DEVICECLIENT_21_011: [The function shall return the number of body bytes held in the outbound buffer, or 0 if no outbound buffer is set.]
+    @Test
+    public void openRegistersNoOutboundBufferByDefault(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.open();
+
+        assertThat(client.getOutboundMessageCount(), is(0));
+        assertThat(client.getOutboundByteCount(), is(0L));
+        new Verifications()
+        {
+            {
+                mockTransport.setOutboundBuffer(null);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_008: ["SetOutboundBuffer" only works when the client is closed.]
+    @Test(expected = IllegalStateException.class)
+    public void setOptionOutboundBufferAfterOpenFails(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubOutboundBuffer mockBuffer)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.open();
+        client.setOption("SetOutboundBuffer", mockBuffer);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_009: ["SetOutboundBuffer" should have value type IotHubOutboundBuffer.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionOutboundBufferWithWrongTypeFails(
+            @Mocked final MqttTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final IotHubClientProtocol protocol = IotHubClientProtocol.MQTT;
+
+        DeviceClient client = new DeviceClient(connString, protocol);
+        client.setOption("SetOutboundBuffer", 100);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_027: ["SetCallbackDispatcher" is available for HTTPS/AMQP/MQTT.]
+    // Tests_SRS_DEVICECLIENT_21_030: [The function shall register the callback dispatcher, if any, with the transport.]
+    @Test
+    public void openRegistersCallbackDispatcherWithTransport(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubCallbackDispatcher mockDispatcher)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetCallbackDispatcher", mockDispatcher);
+        client.open();
+
+        new Verifications()
+        {
+            {
+                mockTransport.setCallbackDispatcher(mockDispatcher);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_028: ["SetCallbackDispatcher" only works when the client is closed.]
+    @Test(expected = IllegalStateException.class)
+    public void setOptionCallbackDispatcherAfterOpenFails(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubCallbackDispatcher mockDispatcher)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.open();
+        client.setOption("SetCallbackDispatcher", mockDispatcher);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_029: ["SetCallbackDispatcher" should have value type IotHubCallbackDispatcher.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionCallbackDispatcherWithWrongTypeFails(
+            @Mocked final MqttTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetCallbackDispatcher", "dispatcher");
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_035: ["SetOutboundJournal" is available for HTTPS/AMQP/MQTT.]
+    // Tests_SRS_DEVICECLIENT_21_038: [The function shall register the outbound journal, if any, with the transport.]
+    // Tests_SRS_DEVICECLIENT_21_039: [If an outbound journal is set, the function shall add the messages pending in it to the transport, oldest first, before accepting new messages.]
+    @Test
+    public void openRegistersOutboundJournalAndReplaysPendingMessages(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport,
+            @Mocked final IotHubOutboundJournal mockJournal,
+            @Mocked final Message mockFirst,
+            @Mocked final Message mockSecond)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final List<Message> pending = new ArrayList<>();
+        pending.add(mockFirst);
+        pending.add(mockSecond);
+        new NonStrictExpectations()
+        {
+            {
+                mockJournal.getPendingMessages();
+                result = pending;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.setOption("SetOutboundJournal", mockJournal);
+        client.open();
+
+        new VerificationsInOrder()
+        {
+            {
+                mockTransport.setOutboundJournal(mockJournal);
+                mockTransport.addMessage(mockFirst, (IotHubEventCallback) any, any);
+                mockTransport.addMessage(mockSecond, (IotHubEventCallback) any, any);
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_039: [If an outbound journal is set, the function shall add the messages pending in it to the transport, oldest first, before accepting new messages.]
+    @Test
+    public void openStopsReplayingWhenTransportRefusesMessage(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport,
+            @Mocked final IotHubOutboundJournal mockJournal,
+            @Mocked final Message mockFirst,
+            @Mocked final Message mockSecond)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final List<Message> pending = new ArrayList<>();
+        pending.add(mockFirst);
+        pending.add(mockSecond);
+        new NonStrictExpectations()
+        {
+            {
+                mockJournal.getPendingMessages();
+                result = pending;
+                mockTransport.addMessage(mockFirst, (IotHubEventCallback) any, any);
+                result = new IllegalStateException("The outbound buffer is full.");
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.setOption("SetOutboundJournal", mockJournal);
+        client.open();
+
+        new Verifications()
+        {
+            {
+                mockTransport.addMessage(mockSecond, (IotHubEventCallback) any, any);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_036: ["SetOutboundJournal" only works when the client is closed.]
+    @Test(expected = IllegalStateException.class)
+    public void setOptionOutboundJournalAfterOpenFails(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubOutboundJournal mockJournal)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.open();
+        client.setOption("SetOutboundJournal", mockJournal);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_037: ["SetOutboundJournal" should have value type IotHubOutboundJournal.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionOutboundJournalWithWrongTypeFails(
+            @Mocked final MqttTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetOutboundJournal", "journal");
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_040: [The function shall have the message generate the IDs it has not given out yet with the message ID generator of the client.]
+    // Tests_SRS_DEVICECLIENT_21_041: ["SetMessageIdGenerator" is available for HTTPS/AMQP/MQTT.]
+    @Test
+    public void sendEventAsyncGeneratesIdsWithClientGenerator(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final MessageIdGenerator mockGenerator)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockGenerator.generateId();
+                result = "client-0";
+            }
+        };
+        Message message = new Message(new byte[0]);
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetMessageIdGenerator", mockGenerator);
+        client.open();
+        client.sendEventAsync(message, null, null);
+
+        assertThat(message.getMessageId(), is("client-0"));
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_042: ["SetMessageIdGenerator" only works when the client is closed.]
+    @Test(expected = IllegalStateException.class)
+    public void setOptionMessageIdGeneratorAfterOpenFails(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final MessageIdGenerator mockGenerator)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.open();
+        client.setOption("SetMessageIdGenerator", mockGenerator);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_043: ["SetMessageIdGenerator" should have value type MessageIdGenerator.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionMessageIdGeneratorWithWrongTypeFails(
+            @Mocked final MqttTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetMessageIdGenerator", "generator");
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_044: ["SetMessagePool" is available for HTTPS/AMQP/MQTT.]
+    // Tests_SRS_DEVICECLIENT_21_047: [If the message was obtained from a message pool, the function shall add it to the transport with a callback invoking the given callback and then releasing the message to its pool.]
+    // Tests_SRS_DEVICECLIENT_21_048: [If the client has a message pool, the function shall obtain the message from it, and otherwise create a new message with the given body.]
+    @Test
+    public void sendEventAsyncReleasesPooledMessageAfterCallback(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final Object context = new Object();
+        IotHubMessagePool pool = new IotHubMessagePool();
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetMessagePool", pool);
+        client.open();
+        final Message message = client.obtainMessage(new byte[] { 1 });
+        client.sendEventAsync(message, mockCallback, context);
+
+        assertThat(pool.getInUseCount(), is(1));
+        final List<IotHubEventCallback> callbacks = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockTransport.addMessage(message, withCapture(callbacks), message);
+                times = 1;
+            }
+        };
+        callbacks.get(0).execute(IotHubStatusCode.OK_EMPTY, message);
+
+        new Verifications()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.OK_EMPTY, context);
+                times = 1;
+            }
+        };
+        assertThat(pool.getInUseCount(), is(0));
+        assertThat(pool.getIdleCount(), is(1));
+        assertThat(client.obtainMessage(new byte[0]), is(message));
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_045: ["SetMessagePool" only works when the client is closed.]
+    @Test(expected = IllegalStateException.class)
+    public void setOptionMessagePoolAfterOpenFails(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.open();
+        client.setOption("SetMessagePool", new IotHubMessagePool());
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_046: ["SetMessagePool" should have value type IotHubMessagePool.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionMessagePoolWithWrongTypeFails(
+            @Mocked final MqttTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetMessagePool", 64);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_049: [If the client has a codec stage, the function shall have it encode the message before adding the message to the transport.]
+    // Tests_SRS_DEVICECLIENT_21_050: ["SetCodecStage" is available for HTTPS/AMQP.]
+    @Test
+    public void sendEventAsyncEncodesMessageWithCodecStage(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport,
+            @Mocked final IotHubCodecStage mockStage,
+            @Mocked final Message mockMessage)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.setOption("SetCodecStage", mockStage);
+        client.open();
+        client.sendEventAsync(mockMessage, null, null);
+
+        new VerificationsInOrder()
+        {
+            {
+                mockStage.apply(mockMessage);
+                mockTransport.addMessage(mockMessage, null, null);
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_050: ["SetCodecStage" is available for HTTPS/AMQP.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionCodecStageWithMqttFails(
+            @Mocked final MqttTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetCodecStage", new IotHubCodecStage(DeflateMessageCodec.GZIP));
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_051: ["SetCodecStage" only works when the client is closed.]
+    @Test(expected = IllegalStateException.class)
+    public void setOptionCodecStageAfterOpenFails(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final AmqpsTransport mockTransport)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.AMQPS);
+        client.open();
+        client.setOption("SetCodecStage", new IotHubCodecStage(DeflateMessageCodec.GZIP));
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_052: ["SetCodecStage" should have value type IotHubCodecStage.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionCodecStageWithWrongTypeFails(
+            @Mocked final HttpsTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.setOption("SetCodecStage", DeflateMessageCodec.GZIP);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_053: [The function shall obtain a message whose body is the event serialized by the telemetry serializer of the client.]
+    @Test
+    public void obtainMessageSerializesEventInJsonByDefault(
+            @Mocked final MqttTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        TelemetryEvent event = new TelemetryEvent()
+        {
+            @Override
+            public void writeTo(TelemetryWriter writer)
+            {
+                writer.field("windSpeed", 10.0);
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        Message message = client.obtainMessage(event);
+
+        assertThat(new String(message.getBytes(), Message.DEFAULT_IOTHUB_MESSAGE_CHARSET), is("{\"windSpeed\":10.0}"));
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_053: [The function shall obtain a message whose body is the event serialized by the telemetry serializer of the client.]
+    // Tests_SRS_DEVICECLIENT_21_054: ["SetTelemetrySerializer" is available for HTTPS/AMQP/MQTT.]
+    @Test
+    public void obtainMessageSerializesEventWithTelemetrySerializer(
+            @Mocked final AmqpsTransport mockTransport,
+            @Mocked final TelemetrySerializer mockSerializer,
+            @Mocked final TelemetryEvent mockEvent)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockSerializer.serialize(mockEvent);
+                result = new byte[] { 1, 2 };
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.AMQPS);
+        client.setOption("SetTelemetrySerializer", mockSerializer);
+        Message message = client.obtainMessage(mockEvent);
+
+        assertThat(message.getBytes(), is(new byte[] { 1, 2 }));
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_055: ["SetTelemetrySerializer" only works when the client is closed.]
+    @Test(expected = IllegalStateException.class)
+    public void setOptionTelemetrySerializerAfterOpenFails(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.open();
+        client.setOption("SetTelemetrySerializer", BinaryTelemetrySerializer.INSTANCE);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_056: ["SetTelemetrySerializer" should have value type TelemetrySerializer.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionTelemetrySerializerWithWrongTypeFails(
+            @Mocked final MqttTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetTelemetrySerializer", "json");
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_057: [If the client has a coalescer, the function shall hand the message to it, and add the packets it returns to the transport, in order.]
+    // Tests_SRS_DEVICECLIENT_21_061: ["SetCoalescer" is available for HTTPS/AMQP/MQTT.]
+    @Test
+    public void sendEventAsyncPacksReadingsWithCoalescer(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetCoalescer", new IotHubCoalescer(60000, 5, IotHubCoalescingFormat.JSON_ARRAY));
+        client.open();
+        client.sendEventAsync(new Message(new byte[] { '1' }), mockCallback, "first");
+        client.sendEventAsync(new Message(new byte[] { '2' }), mockCallback, "second");
+
+        final List<Message> messages = new ArrayList<>();
+        final List<IotHubEventCallback> callbacks = new ArrayList<>();
+        final List<Object> contexts = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockTransport.addMessage(withCapture(messages), withCapture(callbacks), withCapture(contexts));
+                times = 1;
+            }
+        };
+        assertThat(new String(messages.get(0).getBytes(), Message.DEFAULT_IOTHUB_MESSAGE_CHARSET), is("[1,2]"));
+        callbacks.get(0).execute(IotHubStatusCode.OK_EMPTY, contexts.get(0));
+        new VerificationsInOrder()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.OK_EMPTY, "first");
+                mockCallback.execute(IotHubStatusCode.OK_EMPTY, "second");
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_058: [If the transport refuses a packed message, the function shall invoke the callbacks of its readings with the MESSAGE_DROPPED status.]
+    @Test
+    public void sendEventAsyncDropsPackedReadingsRefusedByTransport(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final AmqpsTransport mockTransport,
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.addMessage((Message) any, (IotHubEventCallback) any, any);
+                result = new IllegalStateException("The outbound buffer is full.");
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.AMQPS);
+        client.setOption("SetCoalescer", new IotHubCoalescer(60000, 3, IotHubCoalescingFormat.JSON_ARRAY));
+        client.open();
+        client.sendEventAsync(new Message(new byte[] { '1' }), mockCallback, "dropped");
+
+        new Verifications()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.MESSAGE_DROPPED, "dropped");
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_059: [If the client has a coalescer, the function shall schedule a task adding the readings whose window expires to the transport, at the flush period of the coalescer.]
+    // Tests_SRS_DEVICECLIENT_21_060: [If the client has a coalescer, the function shall add the readings it holds to the transport before waiting for the outstanding requests.]
+    @Test
+    public void openSchedulesCoalescingTaskAndCloseFlushesReadings(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.setOption("SetCoalescer", new IotHubCoalescer(100, 1024, IotHubCoalescingFormat.LENGTH_PREFIXED));
+        client.open();
+        client.sendEventAsync(new Message(new byte[] { 1 }), null, null);
+        client.close();
+
+        final List<Message> messages = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockScheduler.scheduleAtFixedRate((Runnable) any, 25, 25, TimeUnit.MILLISECONDS);
+                times = 1;
+                mockTransport.addMessage(withCapture(messages), (IotHubEventCallback) any, any);
+                times = 1;
+            }
+        };
+        assertThat(messages.get(0).getBytes(), is(new byte[] { 0, 0, 0, 1, 1 }));
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_062: ["SetCoalescer" only works when the client is closed.]
+    @Test(expected = IllegalStateException.class)
+    public void setOptionCoalescerAfterOpenFails(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.open();
+        client.setOption("SetCoalescer", new IotHubCoalescer(100, 1024, IotHubCoalescingFormat.JSON_ARRAY));
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_063: ["SetCoalescer" should have value type IotHubCoalescer.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionCoalescerWithWrongTypeFails(
+            @Mocked final MqttTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetCoalescer", IotHubCoalescingFormat.JSON_ARRAY);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_031: [If a callback dispatcher is set, the function shall also wait until every callback handed to it has run.]
+    @Test
+    public void closeWaitsForCallbackDispatcher(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubSendSignal mockDrainSignal,
+            @Mocked final IotHubCallbackDispatcher mockDispatcher)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = true;
+                mockDispatcher.isIdle();
+                returns(false, true);
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetCallbackDispatcher", mockDispatcher);
+        client.open();
+        client.close();
+
+        new Verifications()
+        {
+            {
+                mockDispatcher.isIdle();
+                times = 2;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_012: [If the runtime is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void runtimeConstructorRejectsNullRuntime(
+            @Mocked final MqttTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        new DeviceClient(connString, IotHubClientProtocol.MQTT, null);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_013: [The constructor shall save the runtime.]
+    // Tests_SRS_DEVICECLIENT_21_014: [If the client was built with a runtime, the function shall schedule the send and receive tasks on the runtime instead of creating its own threads.]
+    @Test
+    public void openWithRuntimeSchedulesTasksOnRuntime(
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubClientRuntime mockRuntime,
+            @Mocked final IotHubSendTask mockSendTask,
+            @Mocked final IotHubReceiveTask mockReceiveTask)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT, mockRuntime);
+        client.open();
+
+        new Verifications()
+        {
+            {
+                mockRuntime.schedule(withInstanceOf(IotHubSendTask.class), DeviceClient.SEND_PERIOD_MILLIS);
+                times = 1;
+                mockRuntime.schedule(withInstanceOf(IotHubReceiveTask.class), anyLong);
+                times = 1;
+                Executors.newScheduledThreadPool(anyInt);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_015: [If the client was built with a runtime, the function shall cancel its tasks on the runtime without closing the runtime.]
+    @Test
+    public void closeWithRuntimeCancelsTasksAndKeepsRuntimeOpen(
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubClientRuntime mockRuntime,
+            @Mocked final ScheduledFuture<?> mockFuture)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockRuntime.schedule((Runnable) any, anyLong);
+                result = mockFuture;
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT, mockRuntime);
+        client.open();
+        client.close();
+
+        new Verifications()
+        {
+            {
+                mockFuture.cancel(false);
+                times = 2;
+                mockRuntime.close();
+                times = 0;
+                mockTransport.close();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_017: [If the client was built with a runtime that is closed, the function shall throw an IllegalStateException.]
+    @Test(expected = IllegalStateException.class)
+    public void openWithClosedRuntimeFails(
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubClientRuntime mockRuntime)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockRuntime.isClosed();
+                result = true;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT, mockRuntime);
+        client.open();
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_076: [If event-driven sending is enabled on a client built with a runtime, the function shall register a send signal with the transport and start a send task that submits a pass to the runtime whenever the signal is raised, without holding a thread of the runtime while the transport is idle.]
+    // Tests_SRS_DEVICECLIENT_21_079: [If event-driven sending is enabled and the protocol is AMQPS, AMQPS_WS or MQTT, the function shall register a receive signal with the transport and start a receive task that handles a message whenever the signal is raised, on the runtime or the threads of the client, instead of polling the transport every RECEIVE_PERIOD_MILLIS milliseconds.]
+    @Test
+    public void openWithRuntimeAndEventDrivenSendStartsRuntimeSendTask(
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubClientRuntime mockRuntime,
+            @Mocked final IotHubSendSignal mockSignal,
+            @Mocked final IotHubRuntimeSendTask mockRuntimeSendTask,
+            @Mocked final IotHubEventDrivenReceiveTask mockEventDrivenReceiveTask)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT, mockRuntime);
+        client.setOption("SetEventDrivenSend", true);
+        client.open();
+
+        new Verifications()
+        {
+            {
+                mockTransport.setSendSignal((IotHubSendSignal) any);
+                times = 1;
+                mockRuntimeSendTask.start();
+                times = 1;
+                new IotHubEventDrivenReceiveTask((MqttTransport) any, (IotHubSendSignal) any, mockRuntime);
+                times = 1;
+                mockEventDrivenReceiveTask.start();
+                times = 1;
+                mockRuntime.schedule((Runnable) any, anyLong);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_002: [If event-driven sending is enabled, the function shall stop the send task and unregister the send signal from the transport.]
+    @Test
+    public void closeWithRuntimeAndEventDrivenSendStopsRuntimeSendTask(
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubClientRuntime mockRuntime,
+            @Mocked final IotHubSendSignal mockSignal,
+            @Mocked final IotHubRuntimeSendTask mockRuntimeSendTask)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT, mockRuntime);
+        client.setOption("SetEventDrivenSend", true);
+        client.open();
+        client.close();
+
+        new VerificationsInOrder()
+        {
+            {
+                mockRuntimeSendTask.stop();
+                times = 1;
+                mockTransport.setSendSignal(null);
+                times = 1;
+                mockTransport.close();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_019: [If the timeout is negative, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void closeWithNegativeTimeoutFails(
+            @Mocked final HttpsTransport mockTransport)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.open();
+        client.close(-1);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_021: [The function shall wait on the drain signal raised by the send task, checking whether the transport is empty at least every CLOSE_RECHECK_PERIOD_MILLIS milliseconds, until it is empty or the timeout expires.]
+    @Test
+    public void closeWaitsOnDrainSignal(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport,
+            @Mocked final IotHubSendSignal mockDrainSignal)
+            throws IOException, URISyntaxException, InterruptedException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                returns(false, true);
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.open();
+        List<Message> pending = client.close(0);
+
+        assertThat(pending.isEmpty(), is(true));
+        new Verifications()
+        {
+            {
+                mockDrainSignal.await(DeviceClient.CLOSE_RECHECK_PERIOD_MILLIS);
+                times = 1;
+                mockTransport.removePendingPackets();
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_022: [If the timeout expires first, the function shall remove the pending messages from the transport and return them, except for the messages of a message pool.]
+    @Test
+    public void closeWithTimeoutReturnsPendingMessages(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport,
+            @Mocked final IotHubSendSignal mockDrainSignal,
+            @Mocked final IotHubOutboundPacket mockPacket,
+            @Mocked final Message mockMsg)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final List<IotHubOutboundPacket> pendingPackets = new ArrayList<>();
+        pendingPackets.add(mockPacket);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = false;
+                mockTransport.removePendingPackets();
+                result = pendingPackets;
+                mockPacket.getMessage();
+                result = mockMsg;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.open();
+        List<Message> pending = client.close(10);
+
+        assertThat(pending.size(), is(1));
+        assertThat(pending.get(0), is(mockMsg));
+        new VerificationsInOrder()
+        {
+            {
+                mockScheduler.shutdown();
+                mockTransport.removePendingPackets();
+                mockTransport.close();
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_077: [The function shall invoke the callbacks of the messages the IoT Hub acknowledged before closing the transport.]
+    // Tests_SRS_DEVICECLIENT_21_078: [The function shall invoke the callback of every message removed with the status MESSAGE_CANCELLED_ONCLOSE.]
+    @Test
+    public void closeWithTimeoutCompletesFutureOfPendingMessage(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport)
+            throws Exception
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final List<IotHubOutboundPacket> pendingPackets = new ArrayList<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.addMessage((Message) any, (IotHubEventCallback) any, any);
+                result = new Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    void addMessage(Message message, IotHubEventCallback callback, Object context)
+                    {
+                        pendingPackets.add(new IotHubOutboundPacket(message, callback, context));
+                    }
+                };
+                mockTransport.isEmpty();
+                result = false;
+                mockTransport.removePendingPackets();
+                result = pendingPackets;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.open();
+        Message message = new Message("test-event");
+        IotHubSendFuture future = client.sendEventAsync(message);
+        List<Message> pending = client.close(10);
+
+        assertThat(pending.size(), is(1));
+        assertThat(pending.get(0), is(message));
+        assertThat(future.isDone(), is(true));
+        assertThat(future.get(), is(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE));
+        new VerificationsInOrder()
+        {
+            {
+                mockTransport.removePendingPackets();
+                mockTransport.invokeCallbacks();
+                mockTransport.close();
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_022: [If the timeout expires first, the function shall remove the pending messages from the transport and return them, except for the messages of a message pool.]
+    // Tests_SRS_DEVICECLIENT_21_078: [The function shall invoke the callback of every message removed with the status MESSAGE_CANCELLED_ONCLOSE.]
+    @Test
+    public void closeWithTimeoutReleasesPendingPooledMessage(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport)
+            throws Exception
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final List<IotHubOutboundPacket> pendingPackets = new ArrayList<>();
+        final List<IotHubStatusCode> statuses = new ArrayList<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.addMessage((Message) any, (IotHubEventCallback) any, any);
+                result = new Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    void addMessage(Message message, IotHubEventCallback callback, Object context)
+                    {
+                        pendingPackets.add(new IotHubOutboundPacket(message, callback, context));
+                    }
+                };
+                mockTransport.isEmpty();
+                result = false;
+                mockTransport.removePendingPackets();
+                result = pendingPackets;
+            }
+        };
+        IotHubMessagePool pool = new IotHubMessagePool();
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.setOption("SetMessagePool", pool);
+        client.open();
+        client.sendEventAsync(pool.obtain(new byte[] { 1 }), new IotHubEventCallback()
+        {
+            @Override
+            public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+            {
+                statuses.add(responseStatus);
+            }
+        }, null);
+        List<Message> pending = client.close(10);
+
+        assertThat(pending.size(), is(0));
+        assertThat(statuses.size(), is(1));
+        assertThat(statuses.get(0), is(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE));
+        assertThat(pool.getInUseCount(), is(0));
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_024: [If the client is open, the function shall stop accepting new messages before returning.]
+    // Tests_SRS_DEVICECLIENT_21_026: [If the client is closing, the function shall throw an IllegalStateException.]
+    @Test(expected = IllegalStateException.class)
+    public void closeAsyncStopsAcceptingNewMessages(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport,
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback)
+            throws Exception
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.open();
+        Future<List<Message>> closed = client.closeAsync(0);
+        try
+        {
+            client.sendEventAsync(mockMsg, mockCallback, null);
+        }
+        finally
+        {
+            closed.get();
+        }
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_025: [The function shall close the client on a new thread and return a future completed with the result of close(timeoutMillis).]
+    @Test
+    public void closeAsyncCompletesWithPendingMessages(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport,
+            @Mocked final IotHubSendSignal mockDrainSignal,
+            @Mocked final IotHubOutboundPacket mockPacket,
+            @Mocked final Message mockMsg)
+            throws Exception
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        final List<IotHubOutboundPacket> pendingPackets = new ArrayList<>();
+        pendingPackets.add(mockPacket);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = false;
+                mockTransport.removePendingPackets();
+                result = pendingPackets;
+                mockPacket.getMessage();
+                result = mockMsg;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.open();
+        List<Message> pending = client.closeAsync(10).get();
+
+        assertThat(pending.size(), is(1));
+        new Verifications()
+        {
+            {
+                mockTransport.close();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_023: [If the timeout is negative, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void closeAsyncWithNegativeTimeoutFails(
+            @Mocked final HttpsTransport mockTransport)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.closeAsync(-1);
+    }
+    // Tests_SRS_DEVICECLIENT_21_064: [The function shall register the metrics of the client with the transport before opening it.]
+    // Tests_SRS_DEVICECLIENT_21_066: [If a metrics exporter is set, the function shall register the metrics with it, under the IoT Hub host name and the device ID, before opening the transport.]
+    // Tests_SRS_DEVICECLIENT_21_068: [If a metrics exporter is set, the function shall unregister the metrics from it before closing the transport.]
+    // Tests_SRS_DEVICECLIENT_21_069: [The function shall return the metrics of the client.]
+    // Tests_SRS_DEVICECLIENT_21_070: ["SetMetricsExporter" is available for HTTPS/AMQP/MQTT.]
+    @Test
+    public void openAndCloseRegisterMetricsWithTransportAndExporter(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport,
+            @Mocked final IotHubMetricsExporter mockExporter)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getIotHubHostname();
+                result = "iothub.device.com";
+                mockConfig.getDeviceId();
+                result = "testdevice";
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.setOption("SetMetricsExporter", mockExporter);
+        final IotHubClientMetrics metrics = client.getMetrics();
+        client.open();
+        client.close();
+
+        new VerificationsInOrder()
+        {
+            {
+                mockTransport.setMetrics(metrics);
+                mockExporter.register("iothub.device.com", "testdevice", metrics);
+                mockTransport.open();
+                mockExporter.unregister("iothub.device.com", "testdevice", metrics);
+                mockTransport.close();
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_067: [If the transport fails to open, the function shall unregister the metrics from the metrics exporter before throwing.]
+    @Test
+    public void openUnregistersMetricsWhenTransportFailsToOpen(
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubMetricsExporter mockExporter)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getIotHubHostname();
+                result = "iothub.device.com";
+                mockConfig.getDeviceId();
+                result = "testdevice";
+                mockTransport.open();
+                result = new IOException("unreachable");
+            }
+        };
+
+        final DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetMetricsExporter", mockExporter);
+        try
+        {
+            client.open();
+        }
+        catch (IOException e)
+        {
+            assertThat(e.getMessage(), is("unreachable"));
+        }
+
+        new Verifications()
+        {
+            {
+                mockExporter.unregister("iothub.device.com", "testdevice", client.getMetrics());
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_065: [If a callback dispatcher is set, the function shall register the metrics of the client with it.]
+    @Test
+    public void openRegistersMetricsWithCallbackDispatcher(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final AmqpsTransport mockTransport)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        }, true);
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.AMQPS);
+        client.setOption("SetCallbackDispatcher", dispatcher);
+        client.open();
+
+        IotHubClientMetrics dispatcherMetrics = Deencapsulation.getField(dispatcher, "metrics");
+        assertThat(dispatcherMetrics == client.getMetrics(), is(true));
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_071: ["SetMetricsExporter" only works when the client is closed.]
+    @Test(expected = IllegalStateException.class)
+    public void setOptionMetricsExporterAfterOpenFails(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final MqttTransport mockTransport,
+            @Mocked final IotHubMetricsExporter mockExporter)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.open();
+        client.setOption("SetMetricsExporter", mockExporter);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_072: ["SetMetricsExporter" should have value type IotHubMetricsExporter.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionMetricsExporterWithWrongTypeFails(
+            @Mocked final MqttTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.MQTT);
+        client.setOption("SetMetricsExporter", new IotHubClientMetrics());
+    }
+    // Tests_SRS_DEVICECLIENT_21_073: ["SetHttpsEngine" is available for HTTPS.]
+    // Tests_SRS_DEVICECLIENT_21_075: ["SetHttpsEngine" should have value type HttpsEngine.]
+    @Test
+    public void setOptionHttpsEngineSetsTransportEngine(
+            @Mocked final HttpsTransport mockTransport,
+            @Mocked final HttpsEngine mockEngine)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.setOption("SetHttpsEngine", mockEngine);
+
+        new Verifications()
+        {
+            {
+                mockTransport.setHttpsEngine(mockEngine);
+            }
+        };
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_073: ["SetHttpsEngine" is available for HTTPS.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionHttpsEngineWithAmqpFails(
+            @Mocked final AmqpsTransport mockTransport,
+            @Mocked final HttpsEngine mockEngine)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.AMQPS);
+        client.setOption("SetHttpsEngine", mockEngine);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_074: ["SetHttpsEngine" only works when the client is closed.]
+    @Test(expected = IllegalStateException.class)
+    public void setOptionHttpsEngineAfterOpenFails(
+            @Mocked final ScheduledExecutorService mockScheduler,
+            @Mocked final HttpsTransport mockTransport,
+            @Mocked final HttpsEngine mockEngine)
+            throws IOException, URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.open();
+        client.setOption("SetHttpsEngine", mockEngine);
+    }
+
+    // Tests_SRS_DEVICECLIENT_21_075: ["SetHttpsEngine" should have value type HttpsEngine.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setOptionHttpsEngineWithWrongTypeFails(
+            @Mocked final HttpsTransport mockTransport)
+            throws URISyntaxException
+    {
+        final String connString = "HostName=iothub.device.com;CredentialType=SharedAccessKey;DeviceId=testdevice;"
+                + "SharedAccessKey=adjkl234j52=";
+
+        DeviceClient client = new DeviceClient(connString, IotHubClientProtocol.HTTPS);
+        client.setOption("SetHttpsEngine", "engine");
+    }
 }
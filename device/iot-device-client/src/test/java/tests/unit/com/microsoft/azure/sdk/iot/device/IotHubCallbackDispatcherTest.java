@@ -0,0 +1,200 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.IotHubCallbackDispatcher;
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
+import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for IotHubCallbackDispatcher. */
+public class IotHubCallbackDispatcherTest
+{
+    /** An executor that holds its tasks until they are run explicitly. */
+    protected static final class QueuedExecutor implements Executor
+    {
+        protected final Queue<Runnable> tasks = new LinkedList<>();
+
+        @Override
+        public void execute(Runnable task)
+        {
+            this.tasks.add(task);
+        }
+
+        protected void runAll()
+        {
+            Runnable task;
+            while ((task = this.tasks.poll()) != null)
+            {
+                task.run();
+            }
+        }
+    }
+
+    /** A callback that records the context of every invocation. */
+    protected static final class RecordingCallback implements IotHubEventCallback
+    {
+        protected final List<Object> contexts = new ArrayList<>();
+
+        @Override
+        public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+        {
+            this.contexts.add(callbackContext);
+        }
+    }
+
+    protected final QueuedExecutor executor = new QueuedExecutor();
+    protected final RecordingCallback callback = new RecordingCallback();
+
+    protected IotHubCallbackPacket newPacket(Object context)
+    {
+        return new IotHubCallbackPacket(IotHubStatusCode.OK_EMPTY, callback, context);
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_001: [If the executor is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullExecutor()
+    {
+        new IotHubCallbackDispatcher(null, true);
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_002: [The constructor shall save the executor and the ordering.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_004: [If the dispatcher is not ordered, the function shall submit the callback to the executor.]
+    @Test
+    public void unorderedDispatchSubmitsEveryCallback()
+    {
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(executor, false);
+
+        dispatcher.dispatch(newPacket(1));
+        dispatcher.dispatch(newPacket(2));
+
+        assertThat(dispatcher.isOrdered(), is(false));
+        assertThat(executor.tasks.size(), is(2));
+        assertTrue(callback.contexts.isEmpty());
+        executor.runAll();
+        assertThat(callback.contexts.size(), is(2));
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_003: [If the dispatcher is ordered, the function shall queue the callback and, if no callback of this dispatcher is running, submit a task to the executor that invokes the queued callbacks one at a time, oldest first.]
+    @Test
+    public void orderedDispatchRunsCallbacksInOrderFromOneTask()
+    {
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(executor, true);
+
+        dispatcher.dispatch(newPacket(1));
+        dispatcher.dispatch(newPacket(2));
+        dispatcher.dispatch(newPacket(3));
+
+        assertThat(executor.tasks.size(), is(1));
+        executor.runAll();
+        assertThat(callback.contexts.toString(), is("[1, 2, 3]"));
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_003: [If the dispatcher is ordered, the function shall queue the callback and, if no callback of this dispatcher is running, submit a task to the executor that invokes the queued callbacks one at a time, oldest first.]
+    @Test
+    public void orderedDispatchSubmitsNewTaskOnceDrained()
+    {
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(executor, true);
+        dispatcher.dispatch(newPacket(1));
+        executor.runAll();
+
+        dispatcher.dispatch(newPacket(2));
+
+        assertThat(executor.tasks.size(), is(1));
+        executor.runAll();
+        assertThat(callback.contexts.toString(), is("[1, 2]"));
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_006: [If a callback throws, the dispatcher shall drop it and carry on with the next one.]
+    @Test
+    public void orderedDispatchCarriesOnAfterCallbackThrows()
+    {
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(executor, true);
+        IotHubEventCallback throwingCallback = new IotHubEventCallback()
+        {
+            @Override
+            public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+            {
+                throw new IllegalStateException("Test that dispatch does not stop.");
+            }
+        };
+
+        dispatcher.dispatch(new IotHubCallbackPacket(IotHubStatusCode.OK_EMPTY, throwingCallback, null));
+        dispatcher.dispatch(newPacket(2));
+        executor.runAll();
+
+        assertThat(callback.contexts.toString(), is("[2]"));
+        assertTrue(dispatcher.isIdle());
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_007: [The function shall return true if every callback dispatched has completed, and false otherwise.]
+    @Test
+    public void isIdleReturnsFalseUntilCallbacksRun()
+    {
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(executor, false);
+        assertTrue(dispatcher.isIdle());
+
+        dispatcher.dispatch(newPacket(1));
+        assertFalse(dispatcher.isIdle());
+
+        executor.runAll();
+        assertTrue(dispatcher.isIdle());
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_005: [Before invoking a callback, the dispatcher shall record the time it waited since it was dispatched.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_008: [The function shall return the number of callbacks invoked.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_009: [The function shall return the total dispatch latency divided by the number of callbacks invoked, or 0 if none was invoked.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_010: [The function shall return the longest dispatch latency observed.]
+    @Test
+    public void dispatchRecordsLatency() throws InterruptedException
+    {
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(executor, true);
+        assertThat(dispatcher.getAverageDispatchLatencyNanos(), is(0L));
+
+        dispatcher.dispatch(newPacket(1));
+        Thread.sleep(5);
+        executor.runAll();
+
+        assertThat(dispatcher.getDispatchedCount(), is(1L));
+        assertTrue(dispatcher.getMaxDispatchLatencyNanos() >= 5000000L);
+        assertThat(dispatcher.getAverageDispatchLatencyNanos(), is(dispatcher.getMaxDispatchLatencyNanos()));
+    }
+
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_011: [If metrics are set, the dispatcher shall record the time each callback runs for.]
+    // Tests_SRS_IOTHUBCALLBACKDISPATCHER_21_012: [The function shall save the metrics.]
+    @Test
+    public void dispatchRecordsCallbackDurationInMetrics()
+    {
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+        IotHubCallbackDispatcher dispatcher = new IotHubCallbackDispatcher(executor, false);
+        Deencapsulation.invoke(dispatcher, "setMetrics", metrics);
+
+        dispatcher.dispatch(newPacket(1));
+        dispatcher.dispatch(new IotHubCallbackPacket(IotHubStatusCode.OK_EMPTY, new IotHubEventCallback()
+        {
+            @Override
+            public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+            {
+                throw new IllegalStateException();
+            }
+        }, null));
+        executor.runAll();
+
+        assertThat(metrics.getCallbackDurations().getCount(), is(2L));
+    }
+}
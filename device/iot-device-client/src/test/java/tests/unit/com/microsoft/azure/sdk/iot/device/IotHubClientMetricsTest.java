@@ -0,0 +1,101 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for IotHubClientMetrics. */
+public class IotHubClientMetricsTest
+{
+    // Tests_SRS_IOTHUBCLIENTMETRICS_21_001: [The function shall record the number of messages in the batch size histogram, and add the body bytes to the bytes sent.]
+    // Tests_SRS_IOTHUBCLIENTMETRICS_21_007: [The function shall return the sum of the batch sizes recorded.]
+    @Test
+    public void recordSentCountsMessagesBytesAndBatches()
+    {
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+
+        metrics.recordSent(3, 300);
+        metrics.recordSent(1, 50);
+
+        assertThat(metrics.getMessagesSent(), is(4L));
+        assertThat(metrics.getBytesSent(), is(350L));
+        assertThat(metrics.getBatchSizeMax(), is(3L));
+        assertThat(metrics.getBatchSizeMean(), is(2.0));
+    }
+
+    // Tests_SRS_IOTHUBCLIENTMETRICS_21_002: [The function shall record the time elapsed since the message was queued, in microseconds, in the acknowledgement latency histogram.]
+    // Tests_SRS_IOTHUBCLIENTMETRICS_21_008: [The function shall return the number of acknowledgements recorded.]
+    @Test
+    public void recordAcknowledgedRecordsLatencySinceQueued()
+    {
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+
+        metrics.recordAcknowledged(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertThat(metrics.getMessagesAcknowledged(), is(1L));
+        assertTrue(metrics.getAckLatencyMaxMicros() >= 5000);
+        assertTrue(metrics.getAckLatencyP50Micros() >= 5000);
+        assertThat(metrics.getAckLatencyP99Micros(), is(metrics.getAckLatencyMaxMicros()));
+    }
+
+    // Tests_SRS_IOTHUBCLIENTMETRICS_21_003: [The function shall count the message received and add its body bytes to the bytes received.]
+    // Tests_SRS_IOTHUBCLIENTMETRICS_21_004: [The function shall count the reconnection.]
+    // Tests_SRS_IOTHUBCLIENTMETRICS_21_005: [The function shall record the duration, in microseconds, in the callback duration histogram.]
+    @Test
+    public void recordersCountReceivedReconnectsAndCallbacks()
+    {
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+
+        metrics.recordReceived(12);
+        metrics.recordReconnect();
+        metrics.recordCallback(TimeUnit.MICROSECONDS.toNanos(40));
+
+        assertThat(metrics.getMessagesReceived(), is(1L));
+        assertThat(metrics.getBytesReceived(), is(12L));
+        assertThat(metrics.getReconnectCount(), is(1L));
+        assertThat(metrics.getCallbackDurations().getCount(), is(1L));
+        assertThat(metrics.getCallbackDurationMaxMicros(), is(40L));
+        assertThat(metrics.getCallbackDurationMeanMicros(), is(40.0));
+    }
+
+    // Tests_SRS_IOTHUBCLIENTMETRICS_21_006: [The gauge setters shall save the value, to be returned by the matching getter.]
+    @Test
+    public void gaugesReturnLastSample()
+    {
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+        assertThat(metrics.getLinkCredit(), is(-1L));
+
+        metrics.setQueueDepth(7);
+        metrics.setInFlightCount(3);
+        metrics.setLinkCredit(100);
+
+        assertThat(metrics.getQueueDepth(), is(7L));
+        assertThat(metrics.getInFlightCount(), is(3L));
+        assertThat(metrics.getLinkCredit(), is(100L));
+    }
+    // Tests_SRS_IOTHUBCLIENTMETRICS_21_009: [The function shall count the connection opened, and count it as resuming a TLS session if tlsSessionResumed is true.]
+    // Tests_SRS_IOTHUBCLIENTMETRICS_21_010: [The function shall count the connection reused.]
+    @Test
+    public void recordersCountConnectionsOpenedResumedAndReused()
+    {
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+
+        metrics.recordConnectionOpened(false);
+        metrics.recordConnectionOpened(true);
+        metrics.recordConnectionReused();
+        metrics.recordConnectionReused();
+        metrics.recordConnectionReused();
+
+        assertThat(metrics.getConnectionsOpened(), is(2L));
+        assertThat(metrics.getTlsSessionsResumed(), is(1L));
+        assertThat(metrics.getConnectionsReused(), is(3L));
+    }
+}
@@ -0,0 +1,208 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.IotHubClientRuntime;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for IotHubClientRuntime. */
+public class IotHubClientRuntimeTest
+{
+    @Mocked
+    Executors mockExecutors;
+    @Mocked
+    ScheduledExecutorService mockScheduler;
+    @Mocked
+    Runnable mockTask;
+
+    // Tests_SRS_IOTHUBCLIENTRUNTIME_21_001: [If the thread count is not positive, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNonPositiveThreadCount()
+    {
+        new IotHubClientRuntime(0);
+    }
+
+    // Tests_SRS_IOTHUBCLIENTRUNTIME_21_002: [The constructor shall create a scheduler with the given number of threads.]
+    @Test
+    public void constructorCreatesSchedulerWithThreadCount()
+    {
+        new IotHubClientRuntime(4);
+
+        new Verifications()
+        {
+            {
+                Executors.newScheduledThreadPool(4);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBCLIENTRUNTIME_21_004: [The function shall schedule the task to run repeatedly with the given delay between the end of a pass and the start of the next one.]
+    @Test
+    public void scheduleRunsTaskWithFixedDelay()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                Executors.newScheduledThreadPool(anyInt);
+                result = mockScheduler;
+            }
+        };
+
+        IotHubClientRuntime runtime = new IotHubClientRuntime(2);
+        runtime.schedule(mockTask, 10);
+
+        new Verifications()
+        {
+            {
+                mockScheduler.scheduleWithFixedDelay(mockTask, 0, 10, TimeUnit.MILLISECONDS);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBCLIENTRUNTIME_21_003: [If the runtime is closed, the function shall throw an IllegalStateException.]
+    @Test(expected = IllegalStateException.class)
+    public void scheduleFailsIfRuntimeClosed()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                Executors.newScheduledThreadPool(anyInt);
+                result = mockScheduler;
+                mockScheduler.isShutdown();
+                result = true;
+            }
+        };
+
+        IotHubClientRuntime runtime = new IotHubClientRuntime(2);
+        runtime.schedule(mockTask, 10);
+    }
+
+    // Tests_SRS_IOTHUBCLIENTRUNTIME_21_008: [The function shall schedule the task to run once after the given delay.]
+    @Test
+    public void submitRunsTaskOnceAfterDelay()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                Executors.newScheduledThreadPool(anyInt);
+                result = mockScheduler;
+            }
+        };
+
+        IotHubClientRuntime runtime = new IotHubClientRuntime(2);
+        runtime.submit(mockTask, 10);
+
+        new Verifications()
+        {
+            {
+                mockScheduler.schedule(mockTask, 10, TimeUnit.MILLISECONDS);
+                times = 1;
+                mockScheduler.scheduleWithFixedDelay((Runnable) any, anyLong, anyLong, (TimeUnit) any);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBCLIENTRUNTIME_21_007: [If the runtime is closed, the function shall throw an IllegalStateException.]
+    @Test(expected = IllegalStateException.class)
+    public void submitFailsIfRuntimeClosed()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                Executors.newScheduledThreadPool(anyInt);
+                result = mockScheduler;
+                mockScheduler.isShutdown();
+                result = true;
+            }
+        };
+
+        IotHubClientRuntime runtime = new IotHubClientRuntime(2);
+        runtime.submit(mockTask, 0);
+    }
+
+    // Tests_SRS_IOTHUBCLIENTRUNTIME_21_010: [The function shall schedule the task to run once without delay.]
+    @Test
+    public void executeRunsTaskOnce()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                Executors.newScheduledThreadPool(anyInt);
+                result = mockScheduler;
+            }
+        };
+
+        IotHubClientRuntime runtime = new IotHubClientRuntime(2);
+        runtime.execute(mockTask);
+
+        new Verifications()
+        {
+            {
+                mockScheduler.execute(mockTask);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBCLIENTRUNTIME_21_009: [If the runtime is closed, the function shall throw a RejectedExecutionException.]
+    @Test(expected = RejectedExecutionException.class)
+    public void executeFailsIfRuntimeClosed()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                Executors.newScheduledThreadPool(anyInt);
+                result = mockScheduler;
+                mockScheduler.isShutdown();
+                result = true;
+            }
+        };
+
+        IotHubClientRuntime runtime = new IotHubClientRuntime(2);
+        runtime.execute(mockTask);
+    }
+
+    // Tests_SRS_IOTHUBCLIENTRUNTIME_21_005: [The function shall return true if the runtime is closed, and false otherwise.]
+    // Tests_SRS_IOTHUBCLIENTRUNTIME_21_006: [The function shall shut down the scheduler.]
+    @Test
+    public void closeShutsDownScheduler()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                Executors.newScheduledThreadPool(anyInt);
+                result = mockScheduler;
+                mockScheduler.isShutdown();
+                returns(false, true);
+            }
+        };
+
+        IotHubClientRuntime runtime = new IotHubClientRuntime(2);
+        assertFalse(runtime.isClosed());
+        runtime.close();
+        assertTrue(runtime.isClosed());
+
+        new Verifications()
+        {
+            {
+                mockScheduler.shutdown();
+                times = 1;
+            }
+        };
+    }
+}
@@ -0,0 +1,222 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.IotHubCoalescer;
+import com.microsoft.azure.sdk.iot.device.IotHubCoalescingFormat;
+import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.IotHubMessagePool;
+import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessagePriority;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/** Unit tests for IotHubCoalescer. */
+public class IotHubCoalescerTest
+{
+    /** Records the contexts it is invoked with, and throws for the "throw" context. */
+    private static class RecordingCallback implements IotHubEventCallback
+    {
+        final List<Object> contexts = new ArrayList<>();
+        final List<IotHubStatusCode> statuses = new ArrayList<>();
+
+        @Override
+        public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+        {
+            this.contexts.add(callbackContext);
+            this.statuses.add(responseStatus);
+            if ("throw".equals(callbackContext))
+            {
+                throw new IllegalStateException("callback failure");
+            }
+        }
+    }
+
+    private static List<IotHubOutboundPacket> add(IotHubCoalescer coalescer, Message message,
+            IotHubEventCallback callback, Object context, long nowMillis)
+    {
+        return Deencapsulation.invoke(coalescer, "add", message, callback, context, nowMillis);
+    }
+
+    private static List<IotHubOutboundPacket> flush(IotHubCoalescer coalescer, long nowMillis, boolean all)
+    {
+        return Deencapsulation.invoke(coalescer, "flush", nowMillis, all);
+    }
+
+    private static Message reading(String body)
+    {
+        return new Message(body.getBytes(Message.DEFAULT_IOTHUB_MESSAGE_CHARSET));
+    }
+
+    private static String body(IotHubOutboundPacket packet)
+    {
+        return new String(packet.getMessage().getBytes(), Message.DEFAULT_IOTHUB_MESSAGE_CHARSET);
+    }
+
+    // Tests_SRS_IOTHUBCOALESCER_21_001: [If the maximum delay or the maximum bytes is not positive, or the format is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNonPositiveDelay()
+    {
+        new IotHubCoalescer(0, 1024, IotHubCoalescingFormat.JSON_ARRAY);
+    }
+
+    // Tests_SRS_IOTHUBCOALESCER_21_001: [If the maximum delay or the maximum bytes is not positive, or the format is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNonPositiveBytes()
+    {
+        new IotHubCoalescer(100, 0, IotHubCoalescingFormat.JSON_ARRAY);
+    }
+
+    // Tests_SRS_IOTHUBCOALESCER_21_001: [If the maximum delay or the maximum bytes is not positive, or the format is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullFormat()
+    {
+        new IotHubCoalescer(100, 1024, null);
+    }
+
+    // Tests_SRS_IOTHUBCOALESCER_21_002: [The constructor shall save the maximum delay, the maximum bytes and the format, and check for expired windows four times per maximum delay.]
+    // Tests_SRS_IOTHUBCOALESCER_21_008: [The function shall return the maximum delay.]
+    // Tests_SRS_IOTHUBCOALESCER_21_009: [The function shall return the maximum bytes.]
+    // Tests_SRS_IOTHUBCOALESCER_21_010: [The function shall return the format.]
+    // Tests_SRS_IOTHUBCOALESCER_21_011: [The function shall return the period of the checks for expired windows.]
+    @Test
+    public void constructorSavesSettings()
+    {
+        IotHubCoalescer coalescer = new IotHubCoalescer(100, 2048, IotHubCoalescingFormat.LENGTH_PREFIXED);
+
+        assertThat(coalescer.getMaxDelayMillis(), is(100L));
+        assertThat(coalescer.getMaxBytes(), is(2048));
+        assertThat(coalescer.getFormat(), is(IotHubCoalescingFormat.LENGTH_PREFIXED));
+        assertThat(coalescer.getFlushPeriodMillis(), is(25L));
+        assertThat(new IotHubCoalescer(3, 2048, IotHubCoalescingFormat.JSON_ARRAY).getFlushPeriodMillis(), is(1L));
+    }
+
+    // Tests_SRS_IOTHUBCOALESCER_21_005: [The function shall copy the body of the reading, framed in the format of the coalescer, and hold the reading, starting the window at the first reading held.]
+    // Tests_SRS_IOTHUBCOALESCER_21_007: [The function shall return the readings held as a packed message if all of them are requested, or if their window expires before the next check, and nothing otherwise.]
+    // Tests_SRS_IOTHUBCOALESCER_21_012: [The function shall return the number of readings held.]
+    @Test
+    public void readingsArePackedAsJsonArray()
+    {
+        IotHubCoalescer coalescer = new IotHubCoalescer(100, 1024, IotHubCoalescingFormat.JSON_ARRAY);
+        RecordingCallback callback = new RecordingCallback();
+
+        assertThat(add(coalescer, reading("{\"a\":1}"), callback, "first", 0).size(), is(0));
+        assertThat(add(coalescer, reading("2"), callback, "second", 0).size(), is(0));
+        assertThat(coalescer.getPendingCount(), is(2));
+        List<IotHubOutboundPacket> packets = flush(coalescer, 0, true);
+
+        assertThat(packets.size(), is(1));
+        assertThat(body(packets.get(0)), is("[{\"a\":1},2]"));
+        assertThat(packets.get(0).getMessage().getProperty(IotHubCoalescer.FORMAT_PROPERTY), is("json-array"));
+        assertThat(packets.get(0).getMessage().getProperty(IotHubCoalescer.COUNT_PROPERTY), is("2"));
+        assertThat(coalescer.getPendingCount(), is(0));
+        assertThat(flush(coalescer, 0, true).size(), is(0));
+    }
+
+    // Tests_SRS_IOTHUBCOALESCER_21_005: [The function shall copy the body of the reading, framed in the format of the coalescer, and hold the reading, starting the window at the first reading held.]
+    @Test
+    public void readingsArePackedWithLengthPrefixes()
+    {
+        IotHubCoalescer coalescer = new IotHubCoalescer(100, 1024, IotHubCoalescingFormat.LENGTH_PREFIXED);
+        RecordingCallback callback = new RecordingCallback();
+
+        add(coalescer, new Message(new byte[] { 7, 8 }), callback, "ctx", 0);
+        add(coalescer, new Message(new byte[0]), callback, "ctx", 0);
+        List<IotHubOutboundPacket> packets = flush(coalescer, 0, true);
+
+        assertThat(packets.get(0).getMessage().getBytes(), is(new byte[] { 0, 0, 0, 2, 7, 8, 0, 0, 0, 0 }));
+        assertThat(packets.get(0).getMessage().getProperty(IotHubCoalescer.FORMAT_PROPERTY), is("length-prefixed"));
+    }
+
+    // Tests_SRS_IOTHUBCOALESCER_21_004: [If the reading does not fit with the readings held, the function shall return the readings held as a packed message before holding the reading.]
+    // Tests_SRS_IOTHUBCOALESCER_21_006: [If the readings held fill the maximum bytes, the function shall return them as a packed message.]
+    @Test
+    public void readingsArePackedWhenTheyFillMaxBytes()
+    {
+        IotHubCoalescer coalescer = new IotHubCoalescer(100, 6, IotHubCoalescingFormat.JSON_ARRAY);
+        RecordingCallback callback = new RecordingCallback();
+
+        assertThat(add(coalescer, reading("1"), callback, "ctx", 0).size(), is(0));
+        assertThat(add(coalescer, reading("2"), callback, "ctx", 0).size(), is(0));
+        List<IotHubOutboundPacket> first = add(coalescer, reading("333"), callback, "ctx", 0);
+        List<IotHubOutboundPacket> second = add(coalescer, reading("4"), callback, "ctx", 0);
+        List<IotHubOutboundPacket> full = add(coalescer, reading("55"), callback, "ctx", 0);
+
+        // "[1,2,333]" would not fit in 6 bytes, nor would "[333,4]", and "[4,55]" fills them
+        assertThat(body(first.get(0)), is("[1,2]"));
+        assertThat(body(second.get(0)), is("[333]"));
+        assertThat(body(full.get(0)), is("[4,55]"));
+        assertThat(coalescer.getPendingCount(), is(0));
+    }
+
+    // Tests_SRS_IOTHUBCOALESCER_21_003: [If the message is not a plain reading, or does not fit alone in the maximum bytes, the function shall return the readings held as a packed message, if any, followed by the message on its own.]
+    @Test
+    public void messagesOtherThanPlainReadingsAreSentAlone()
+    {
+        IotHubCoalescer coalescer = new IotHubCoalescer(100, 8, IotHubCoalescingFormat.JSON_ARRAY);
+        RecordingCallback callback = new RecordingCallback();
+        Message withProperty = reading("p");
+        withProperty.setProperty("name", "value");
+        Message withPriority = reading("q");
+        withPriority.setPriority(MessagePriority.HIGH);
+        Message withId = reading("r");
+        withId.getMessageId();
+        Message tooLarge = reading("12345678");
+
+        add(coalescer, reading("1"), callback, "ctx", 0);
+        List<IotHubOutboundPacket> packets = add(coalescer, withProperty, callback, "p", 0);
+
+        assertThat(packets.size(), is(2));
+        assertThat(body(packets.get(0)), is("[1]"));
+        assertThat(packets.get(1).getMessage(), is(withProperty));
+        assertThat(packets.get(1).getCallback(), is((IotHubEventCallback) callback));
+        assertThat(packets.get(1).getContext(), is((Object) "p"));
+        assertThat(add(coalescer, withPriority, callback, "ctx", 0).get(0).getMessage(), is(withPriority));
+        assertThat(add(coalescer, withId, callback, "ctx", 0).get(0).getMessage(), is(withId));
+        assertThat(add(coalescer, tooLarge, callback, "ctx", 0).get(0).getMessage(), is(tooLarge));
+        assertThat(coalescer.getPendingCount(), is(0));
+    }
+
+    // Tests_SRS_IOTHUBCOALESCER_21_007: [The function shall return the readings held as a packed message if all of them are requested, or if their window expires before the next check, and nothing otherwise.]
+    @Test
+    public void flushWaitsForTheWindowToExpire()
+    {
+        IotHubCoalescer coalescer = new IotHubCoalescer(100, 1024, IotHubCoalescingFormat.JSON_ARRAY);
+        RecordingCallback callback = new RecordingCallback();
+
+        add(coalescer, reading("1"), callback, "ctx", 1000);
+        add(coalescer, reading("2"), callback, "ctx", 1050);
+
+        assertThat(flush(coalescer, 1074, false).size(), is(0));
+        assertThat(body(flush(coalescer, 1075, false).get(0)), is("[1,2]"));
+    }
+
+    // Tests_SRS_IOTHUBCOALESCER_21_005: [The function shall copy the body of the reading, framed in the format of the coalescer, and hold the reading, starting the window at the first reading held.]
+    @Test
+    public void packedMessageInvokesEachCallbackInOrder()
+    {
+        IotHubCoalescer coalescer = new IotHubCoalescer(100, 1024, IotHubCoalescingFormat.JSON_ARRAY);
+        RecordingCallback callback = new RecordingCallback();
+        IotHubMessagePool pool = new IotHubMessagePool();
+        Message pooled = pool.obtain(new byte[] { '3' });
+
+        add(coalescer, reading("1"), callback, "first", 0);
+        add(coalescer, reading("2"), callback, "throw", 0);
+        add(coalescer, pooled, callback, "third", 0);
+        IotHubOutboundPacket packet = flush(coalescer, 0, true).get(0);
+        packet.getCallback().execute(IotHubStatusCode.OK_EMPTY, packet.getContext());
+
+        assertThat(callback.contexts.toString(), is("[first, throw, third]"));
+        assertThat(callback.statuses.get(2), is(IotHubStatusCode.OK_EMPTY));
+        assertThat(pool.getInUseCount(), is(0));
+    }
+}
@@ -0,0 +1,125 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.DeflateMessageCodec;
+import com.microsoft.azure.sdk.iot.device.IotHubCodecStage;
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessageCodec;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for IotHubCodecStage. */
+public class IotHubCodecStageTest
+{
+    // Tests_SRS_IOTHUBCODECSTAGE_21_001: [If the codec is null or the minimum body length is negative, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullCodec()
+    {
+        new IotHubCodecStage(null);
+    }
+
+    // Tests_SRS_IOTHUBCODECSTAGE_21_001: [If the codec is null or the minimum body length is negative, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNegativeMinBodyLength()
+    {
+        new IotHubCodecStage(DeflateMessageCodec.GZIP, -1);
+    }
+
+    // Tests_SRS_IOTHUBCODECSTAGE_21_002: [The constructor shall save the codec and the minimum body length.]
+    // Tests_SRS_IOTHUBCODECSTAGE_21_007: [The function shall return the codec of the stage.]
+    // Tests_SRS_IOTHUBCODECSTAGE_21_008: [The function shall return the minimum body length.]
+    @Test
+    public void constructorSavesCodecAndMinBodyLength()
+    {
+        IotHubCodecStage stage = new IotHubCodecStage(DeflateMessageCodec.DEFLATE, 10);
+
+        assertThat((DeflateMessageCodec) stage.getCodec(), is(DeflateMessageCodec.DEFLATE));
+        assertThat(stage.getMinBodyLength(), is(10));
+        assertThat(new IotHubCodecStage(DeflateMessageCodec.GZIP).getMinBodyLength(), is(IotHubCodecStage.DEFAULT_MIN_BODY_LENGTH));
+    }
+
+    // Tests_SRS_IOTHUBCODECSTAGE_21_006: [The function shall replace the body of the message by the encoded body, set the content encoding of the message to the one of the codec, and return true.]
+    @Test
+    public void applyCompressesLongBody()
+    {
+        byte[] body = DeflateMessageCodecTest.telemetry(4096);
+        Message message = new Message(body);
+
+        boolean encoded = new IotHubCodecStage(DeflateMessageCodec.GZIP).apply(message);
+
+        assertThat(encoded, is(true));
+        assertThat(message.getContentEncoding(), is("gzip"));
+        assertTrue(message.getBodyLength() < body.length);
+        assertThat(message.getBodyLength(), is(message.getBytes().length));
+    }
+
+    // Tests_SRS_IOTHUBCODECSTAGE_21_003: [If the message already has a content encoding, or its body is shorter than the minimum body length, the function shall leave the message unchanged and return false.]
+    @Test
+    public void applyLeavesShortOrEncodedBodies()
+    {
+        IotHubCodecStage stage = new IotHubCodecStage(DeflateMessageCodec.GZIP, 100);
+        Message shortMessage = new Message(DeflateMessageCodecTest.telemetry(99));
+        Message encodedMessage = new Message(DeflateMessageCodecTest.telemetry(4096));
+        encodedMessage.setContentEncoding("identity");
+
+        assertThat(stage.apply(shortMessage), is(false));
+        assertThat(stage.apply(encodedMessage), is(false));
+        assertThat(shortMessage.getContentEncoding(), is(nullValue()));
+        assertThat(shortMessage.getBodyLength(), is(99));
+        assertThat(encodedMessage.getBodyLength(), is(4096));
+    }
+
+    // Tests_SRS_IOTHUBCODECSTAGE_21_005: [If the encoded body is not shorter than the body, the function shall leave the message unchanged and return false.]
+    @Test
+    public void applyLeavesIncompressibleBody()
+    {
+        byte[] body = new byte[2048];
+        new Random(3).nextBytes(body);
+        Message message = new Message(body);
+
+        assertThat(new IotHubCodecStage(DeflateMessageCodec.GZIP).apply(message), is(false));
+        assertThat(message.getContentEncoding(), is(nullValue()));
+        assertThat(message.getBytes(), is(body));
+    }
+
+    // Tests_SRS_IOTHUBCODECSTAGE_21_004: [The function shall encode the body with the codec of the message, or with the codec of the stage if the message has none.]
+    @Test
+    public void applyPrefersCodecOfMessage(@Mocked final MessageCodec mockCodec)
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockCodec.encode((ByteBuffer) any);
+                result = new byte[] { 1 };
+                mockCodec.getContentEncoding();
+                result = "lz4";
+            }
+        };
+        Message message = new Message(new byte[2048]);
+        message.setCodec(mockCodec);
+
+        assertThat(new IotHubCodecStage(DeflateMessageCodec.GZIP).apply(message), is(true));
+
+        assertThat(message.getContentEncoding(), is("lz4"));
+        assertThat(message.getBytes(), is(new byte[] { 1 }));
+        new Verifications()
+        {
+            {
+                mockCodec.encode((ByteBuffer) any);
+                times = 1;
+            }
+        };
+    }
+}
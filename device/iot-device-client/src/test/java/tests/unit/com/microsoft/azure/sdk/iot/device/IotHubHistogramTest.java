@@ -0,0 +1,78 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.IotHubHistogram;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/** Unit tests for IotHubHistogram. */
+public class IotHubHistogramTest
+{
+    // Tests_SRS_IOTHUBHISTOGRAM_21_001: [The function shall record a negative value as 0.]
+    // Tests_SRS_IOTHUBHISTOGRAM_21_002: [The function shall count the value in the bucket of its highest bit, and add it to the count and sum of the histogram.]
+    // Tests_SRS_IOTHUBHISTOGRAM_21_003: [The function shall keep the largest value recorded.]
+    // Tests_SRS_IOTHUBHISTOGRAM_21_004: [The function shall return the sum divided by the count, or 0 if no value was recorded.]
+    @Test
+    public void recordKeepsCountSumMaxAndMean()
+    {
+        IotHubHistogram histogram = new IotHubHistogram();
+        assertThat(histogram.getMean(), is(0.0));
+
+        histogram.record(-5);
+        histogram.record(10);
+        histogram.record(20);
+
+        assertThat(histogram.getCount(), is(3L));
+        assertThat(histogram.getSum(), is(30L));
+        assertThat(histogram.getMax(), is(20L));
+        assertThat(histogram.getMean(), is(10.0));
+        assertThat(histogram.getPercentile(0), is(0L));
+    }
+
+    // Tests_SRS_IOTHUBHISTOGRAM_21_006: [The function shall return the upper bound of the first bucket at which the fraction of the values is reached, capped at the largest value recorded.]
+    @Test
+    public void getPercentileReturnsUpperBoundOfBucket()
+    {
+        IotHubHistogram histogram = new IotHubHistogram();
+        assertThat(histogram.getPercentile(0.5), is(0L));
+
+        for (int i = 0; i < 99; i++)
+        {
+            histogram.record(100);
+        }
+        histogram.record(1000);
+
+        // 100 is in the bucket from 64 to 127, and 1000 in the one from 512 to 1023
+        assertThat(histogram.getPercentile(0.5), is(127L));
+        assertThat(histogram.getPercentile(0.9), is(127L));
+        assertThat(histogram.getPercentile(1), is(1000L));
+    }
+
+    // Tests_SRS_IOTHUBHISTOGRAM_21_006: [The function shall return the upper bound of the first bucket at which the fraction of the values is reached, capped at the largest value recorded.]
+    @Test
+    public void getPercentileHandlesLargestValues()
+    {
+        IotHubHistogram histogram = new IotHubHistogram();
+        histogram.record(Long.MAX_VALUE);
+
+        assertThat(histogram.getPercentile(0.5), is(Long.MAX_VALUE));
+    }
+
+    // Tests_SRS_IOTHUBHISTOGRAM_21_005: [If the fraction is not between 0 and 1, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void getPercentileRejectsFractionAboveOne()
+    {
+        new IotHubHistogram().getPercentile(1.5);
+    }
+
+    // Tests_SRS_IOTHUBHISTOGRAM_21_005: [If the fraction is not between 0 and 1, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void getPercentileRejectsNaN()
+    {
+        new IotHubHistogram().getPercentile(Double.NaN);
+    }
+}
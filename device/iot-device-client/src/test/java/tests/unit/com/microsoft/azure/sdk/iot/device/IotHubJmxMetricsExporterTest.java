@@ -0,0 +1,118 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
+import com.microsoft.azure.sdk.iot.device.IotHubJmxMetricsExporter;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/** Unit tests for IotHubJmxMetricsExporter. */
+public class IotHubJmxMetricsExporterTest
+{
+    private static final String IOTHUB_HOSTNAME = "test-iothub.azure-devices.net";
+
+    // Tests_SRS_IOTHUBJMXMETRICSEXPORTER_21_002: [If the server is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullServer()
+    {
+        new IotHubJmxMetricsExporter(null);
+    }
+
+    // Tests_SRS_IOTHUBJMXMETRICSEXPORTER_21_003: [The function shall return the name of the DeviceClient type in the exporter domain, with the quoted IoT Hub host name as hub and the quoted device ID as name.]
+    @Test
+    public void getObjectNameQuotesHostnameAndDeviceId()
+    {
+        ObjectName name = IotHubJmxMetricsExporter.getObjectName(IOTHUB_HOSTNAME, "dev:1,a=b");
+
+        assertThat(name.getDomain(), is(IotHubJmxMetricsExporter.DOMAIN));
+        assertThat(name.getKeyProperty("type"), is("DeviceClient"));
+        assertThat(ObjectName.unquote(name.getKeyProperty("hub")), is(IOTHUB_HOSTNAME));
+        assertThat(ObjectName.unquote(name.getKeyProperty("name")), is("dev:1,a=b"));
+    }
+
+    // Tests_SRS_IOTHUBJMXMETRICSEXPORTER_21_003: [The function shall return the name of the DeviceClient type in the exporter domain, with the quoted IoT Hub host name as hub and the quoted device ID as name.]
+    @Test(expected = IllegalArgumentException.class)
+    public void getObjectNameRejectsNullHostname()
+    {
+        IotHubJmxMetricsExporter.getObjectName(null, "device");
+    }
+
+    // Tests_SRS_IOTHUBJMXMETRICSEXPORTER_21_004: [The function shall register the metrics with the server under the name of the device, and throw an IllegalStateException if the server refuses them.]
+    // Tests_SRS_IOTHUBJMXMETRICSEXPORTER_21_005: [The function shall unregister the MBean of the device if this exporter registered it with the given metrics, and do nothing otherwise.]
+    @Test
+    public void registerExposesMetricsUntilUnregistered() throws JMException
+    {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        IotHubJmxMetricsExporter exporter = new IotHubJmxMetricsExporter(server);
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+        metrics.recordSent(2, 42);
+        ObjectName name = IotHubJmxMetricsExporter.getObjectName(IOTHUB_HOSTNAME, "device");
+
+        exporter.register(IOTHUB_HOSTNAME, "device", metrics);
+
+        assertThat((Long) server.getAttribute(name, "BytesSent"), is(42L));
+        assertThat((Long) server.getAttribute(name, "MessagesSent"), is(2L));
+
+        exporter.unregister(IOTHUB_HOSTNAME, "device", metrics);
+        exporter.unregister(IOTHUB_HOSTNAME, "device", metrics);
+
+        assertThat(server.isRegistered(name), is(false));
+    }
+
+    // Tests_SRS_IOTHUBJMXMETRICSEXPORTER_21_004: [The function shall register the metrics with the server under the name of the device, and throw an IllegalStateException if the server refuses them.]
+    @Test(expected = IllegalStateException.class)
+    public void registerRejectsDeviceAlreadyRegistered()
+    {
+        IotHubJmxMetricsExporter exporter = new IotHubJmxMetricsExporter(MBeanServerFactory.newMBeanServer());
+        exporter.register(IOTHUB_HOSTNAME, "device", new IotHubClientMetrics());
+
+        exporter.register(IOTHUB_HOSTNAME, "device", new IotHubClientMetrics());
+    }
+
+    // Tests_SRS_IOTHUBJMXMETRICSEXPORTER_21_004: [The function shall register the metrics with the server under the name of the device, and throw an IllegalStateException if the server refuses them.]
+    @Test
+    public void registerKeepsSameDeviceOnDifferentHubsApart()
+    {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        IotHubJmxMetricsExporter exporter = new IotHubJmxMetricsExporter(server);
+
+        exporter.register(IOTHUB_HOSTNAME, "device", new IotHubClientMetrics());
+        exporter.register("other-iothub.azure-devices.net", "device", new IotHubClientMetrics());
+
+        assertThat(server.isRegistered(IotHubJmxMetricsExporter.getObjectName(IOTHUB_HOSTNAME, "device")), is(true));
+        assertThat(server.isRegistered(IotHubJmxMetricsExporter.getObjectName("other-iothub.azure-devices.net", "device")), is(true));
+    }
+
+    // Tests_SRS_IOTHUBJMXMETRICSEXPORTER_21_005: [The function shall unregister the MBean of the device if this exporter registered it with the given metrics, and do nothing otherwise.]
+    @Test
+    public void unregisterLeavesMBeanOfOtherMetrics()
+    {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        IotHubJmxMetricsExporter exporter = new IotHubJmxMetricsExporter(server);
+        IotHubJmxMetricsExporter otherExporter = new IotHubJmxMetricsExporter(server);
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+        ObjectName name = IotHubJmxMetricsExporter.getObjectName(IOTHUB_HOSTNAME, "device");
+        exporter.register(IOTHUB_HOSTNAME, "device", metrics);
+
+        exporter.unregister(IOTHUB_HOSTNAME, "device", new IotHubClientMetrics());
+        otherExporter.unregister(IOTHUB_HOSTNAME, "device", metrics);
+
+        assertThat(server.isRegistered(name), is(true));
+    }
+
+    // Tests_SRS_IOTHUBJMXMETRICSEXPORTER_21_004: [The function shall register the metrics with the server under the name of the device, and throw an IllegalStateException if the server refuses them.]
+    @Test(expected = IllegalArgumentException.class)
+    public void registerRejectsNullMetrics()
+    {
+        new IotHubJmxMetricsExporter(MBeanServerFactory.newMBeanServer()).register(IOTHUB_HOSTNAME, "device", null);
+    }
+}
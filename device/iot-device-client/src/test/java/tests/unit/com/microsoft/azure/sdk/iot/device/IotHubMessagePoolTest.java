@@ -0,0 +1,166 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.IotHubMessagePool;
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessagePriority;
+import mockit.Mock;
+import mockit.MockUp;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/** Unit tests for IotHubMessagePool. */
+public class IotHubMessagePoolTest
+{
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_001: [If the capacity is not positive or the leak threshold is negative, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNonPositiveCapacity()
+    {
+        new IotHubMessagePool(0, 0);
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_001: [If the capacity is not positive or the leak threshold is negative, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNegativeLeakThreshold()
+    {
+        new IotHubMessagePool(1, -1);
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_003: [If the body is null, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void obtainRejectsNullBody()
+    {
+        new IotHubMessagePool().obtain(null);
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_002: [The constructor shall create an empty pool, which tracks the messages in use only if the leak threshold is positive.]
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_004: [The function shall return an idle message reset to the given body, or a new message bound to the pool if none is idle.]
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_008: [The function shall drop the body of the message and keep it for reuse, unless the pool already holds its capacity of idle messages.]
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_009: [The function shall return the number of idle messages.]
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_010: [The function shall return the number of messages obtained and not released yet.]
+    @Test
+    public void releasedMessageIsReusedAsNew()
+    {
+        IotHubMessagePool pool = new IotHubMessagePool();
+        Message message = pool.obtain(new byte[] { 1, 2 });
+        message.setMessageId("used");
+        message.setProperty("name", "value");
+        message.setPriority(MessagePriority.HIGH);
+        message.setExpiryTime(1000);
+        assertThat(pool.getInUseCount(), is(1));
+
+        pool.release(message);
+        assertThat(pool.getInUseCount(), is(0));
+        assertThat(pool.getIdleCount(), is(1));
+        assertThat(message.getBodyLength(), is(0));
+
+        Message reused = pool.obtain(new byte[] { 3 });
+        assertThat(reused == message, is(true));
+        assertThat(reused.getBytes(), is(new byte[] { 3 }));
+        assertThat(reused.getMessageId(), is(not("used")));
+        assertThat(reused.getProperty("name"), is(nullValue()));
+        assertThat(reused.getPropertyView().size(), is(0));
+        assertThat(reused.getPriority(), is(MessagePriority.NORMAL));
+        assertThat(reused.getExpiryTime(), is(0L));
+        assertThat(pool.getIdleCount(), is(0));
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_008: [The function shall drop the body of the message and keep it for reuse, unless the pool already holds its capacity of idle messages.]
+    @Test
+    public void releaseKeepsAtMostCapacityIdleMessages()
+    {
+        IotHubMessagePool pool = new IotHubMessagePool(1, 0);
+        Message first = pool.obtain(new byte[0]);
+        Message second = pool.obtain(new byte[0]);
+
+        pool.release(first);
+        pool.release(second);
+
+        assertThat(pool.getIdleCount(), is(1));
+        assertThat(pool.getInUseCount(), is(0));
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_006: [If the message is null or was not obtained from this pool, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void releaseRejectsMessageOfAnotherPool()
+    {
+        Message message = new IotHubMessagePool().obtain(new byte[0]);
+
+        new IotHubMessagePool().release(message);
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_006: [If the message is null or was not obtained from this pool, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void releaseRejectsUnpooledMessage()
+    {
+        new IotHubMessagePool().release(new Message(new byte[0]));
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_007: [If the message was already released, the function shall throw an IllegalStateException.]
+    @Test(expected = IllegalStateException.class)
+    public void releaseRejectsMessageReleasedTwice()
+    {
+        IotHubMessagePool pool = new IotHubMessagePool();
+        Message message = pool.obtain(new byte[0]);
+        pool.release(message);
+
+        pool.release(message);
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_005: [If the leak detection is enabled, the function shall record where the message is obtained, and log once each message held for longer than the leak threshold, with where it was obtained.]
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_011: [The function shall return the number of messages reported as leaked.]
+    @Test
+    public void obtainReportsMessagesHeldPastThresholdOnce()
+    {
+        final long[] now = { 1000 };
+        new MockUp<IotHubMessagePool>()
+        {
+            @Mock
+            long currentTimeMillis()
+            {
+                return now[0];
+            }
+        };
+        IotHubMessagePool pool = new IotHubMessagePool(4, 200);
+        pool.obtain(new byte[0]);
+        Message released = pool.obtain(new byte[0]);
+        pool.release(released);
+
+        now[0] = 1200;
+        pool.obtain(new byte[0]);
+        assertThat(pool.getLeakCount(), is(0L));
+
+        now[0] = 1201;
+        pool.obtain(new byte[0]);
+        pool.obtain(new byte[0]);
+        assertThat(pool.getLeakCount(), is(1L));
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEPOOL_21_002: [The constructor shall create an empty pool, which tracks the messages in use only if the leak threshold is positive.]
+    @Test
+    public void poolWithoutThresholdReportsNoLeak()
+    {
+        final long[] now = { 1000 };
+        new MockUp<IotHubMessagePool>()
+        {
+            @Mock
+            long currentTimeMillis()
+            {
+                return now[0];
+            }
+        };
+        IotHubMessagePool pool = new IotHubMessagePool();
+        pool.obtain(new byte[0]);
+
+        now[0] = Long.MAX_VALUE;
+        pool.obtain(new byte[0]);
+
+        assertThat(pool.getLeakCount(), is(0L));
+    }
+}
@@ -0,0 +1,320 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.IotHubOutboundBuffer;
+import com.microsoft.azure.sdk.iot.device.IotHubOutboundBufferPolicy;
+import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessagePriority;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+import mockit.Mocked;
+import org.junit.Test;
+
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** Unit tests for IotHubOutboundBuffer. */
+public class IotHubOutboundBufferTest
+{
+    @Mocked
+    IotHubEventCallback mockCallback;
+
+    protected final Queue<IotHubOutboundPacket> waitingList = new LinkedBlockingDeque<>();
+    protected final Queue<IotHubCallbackPacket> callbackList = new LinkedBlockingDeque<>();
+
+    protected IotHubOutboundPacket newPacket(int bodyLength)
+    {
+        return new IotHubOutboundPacket(new Message(new byte[bodyLength]), mockCallback, null);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_001: [If the maximum number of messages or the maximum number of bytes is not positive, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNonPositiveMaxMessages()
+    {
+        new IotHubOutboundBuffer(0, 10, IotHubOutboundBufferPolicy.FAIL, 0);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_001: [If the maximum number of messages or the maximum number of bytes is not positive, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNonPositiveMaxBytes()
+    {
+        new IotHubOutboundBuffer(10, 0, IotHubOutboundBufferPolicy.FAIL, 0);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_002: [If the policy is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullPolicy()
+    {
+        new IotHubOutboundBuffer(10, 10, null, 0);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_003: [If the block timeout is negative, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNegativeTimeout()
+    {
+        new IotHubOutboundBuffer(10, 10, IotHubOutboundBufferPolicy.BLOCK, -1);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_004: [The constructor shall save the limits, the policy and the block timeout.]
+    @Test
+    public void constructorSavesLimitsAndPolicy()
+    {
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(5, 100, IotHubOutboundBufferPolicy.DROP_OLDEST, 0);
+
+        assertThat(buffer.getMaxMessages(), is(5));
+        assertThat(buffer.getMaxBytes(), is(100L));
+        assertThat(buffer.getPolicy(), is(IotHubOutboundBufferPolicy.DROP_OLDEST));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_005: [The function shall return a buffer limited to Integer.MAX_VALUE messages and Long.MAX_VALUE bytes.]
+    @Test
+    public void unboundedHasNoPracticalLimits()
+    {
+        IotHubOutboundBuffer buffer = IotHubOutboundBuffer.unbounded();
+
+        assertThat(buffer.getMaxMessages(), is(Integer.MAX_VALUE));
+        assertThat(buffer.getMaxBytes(), is(Long.MAX_VALUE));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_006: [If the packet fits, the function shall account for it and return true.]
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_013: [The function shall return the number of packets currently held.]
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_014: [The function shall return the total body size of the packets currently held.]
+    @Test
+    public void acquireAccountsForPacketThatFits()
+    {
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(2, 10, IotHubOutboundBufferPolicy.FAIL, 0);
+
+        assertTrue(buffer.acquire(newPacket(4), waitingList, callbackList));
+        assertTrue(buffer.acquire(newPacket(6), waitingList, callbackList));
+
+        assertThat(buffer.getMessageCount(), is(2));
+        assertThat(buffer.getByteCount(), is(10L));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_008: [If the policy is FAIL and the packet does not fit, the function shall throw an IllegalStateException.]
+    @Test(expected = IllegalStateException.class)
+    public void acquireFailsFastIfMessageCountExceeded()
+    {
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(1, 10, IotHubOutboundBufferPolicy.FAIL, 0);
+        buffer.acquire(newPacket(1), waitingList, callbackList);
+
+        buffer.acquire(newPacket(1), waitingList, callbackList);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_008: [If the policy is FAIL and the packet does not fit, the function shall throw an IllegalStateException.]
+    @Test(expected = IllegalStateException.class)
+    public void acquireFailsFastIfByteCountExceeded()
+    {
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(10, 10, IotHubOutboundBufferPolicy.FAIL, 0);
+        buffer.acquire(newPacket(6), waitingList, callbackList);
+
+        buffer.acquire(newPacket(5), waitingList, callbackList);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_007: [If the policy is BLOCK, the function shall wait until the packet fits, and throw an IllegalStateException if the block timeout expires first.]
+    @Test(expected = IllegalStateException.class)
+    public void acquireBlocksUntilTimeoutExpires()
+    {
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(1, 10, IotHubOutboundBufferPolicy.BLOCK, 10);
+        buffer.acquire(newPacket(1), waitingList, callbackList);
+
+        buffer.acquire(newPacket(1), waitingList, callbackList);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_007: [If the policy is BLOCK, the function shall wait until the packet fits, and throw an IllegalStateException if the block timeout expires first.]
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_011: [The function shall stop accounting for the packet and wake up all threads waiting for room.]
+    @Test
+    public void acquireBlocksUntilPacketIsReleased() throws InterruptedException
+    {
+        final IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(1, 10, IotHubOutboundBufferPolicy.BLOCK, 0);
+        final IotHubOutboundPacket first = newPacket(1);
+        buffer.acquire(first, waitingList, callbackList);
+
+        Thread releaser = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(20);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                buffer.release(first);
+            }
+        });
+        releaser.start();
+
+        assertTrue(buffer.acquire(newPacket(2), waitingList, callbackList));
+        releaser.join();
+        assertThat(buffer.getMessageCount(), is(1));
+        assertThat(buffer.getByteCount(), is(2L));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_009: [If the policy is DROP_OLDEST, the function shall drop packets from the head of the waiting list until the packet fits.]
+    @Test
+    public void acquireDropsOldestWaitingPackets()
+    {
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(2, 10, IotHubOutboundBufferPolicy.DROP_OLDEST, 0);
+        IotHubOutboundPacket oldest = newPacket(5);
+        IotHubOutboundPacket newer = newPacket(5);
+        buffer.acquire(oldest, waitingList, callbackList);
+        waitingList.add(oldest);
+        buffer.acquire(newer, waitingList, callbackList);
+        waitingList.add(newer);
+
+        boolean admitted = buffer.acquire(newPacket(3), waitingList, callbackList);
+
+        assertTrue(admitted);
+        assertThat(waitingList.size(), is(1));
+        assertThat(waitingList.peek(), is(newer));
+        assertThat(callbackList.size(), is(1));
+        assertThat(callbackList.peek().getStatus(), is(IotHubStatusCode.MESSAGE_DROPPED));
+        assertThat(buffer.getMessageCount(), is(2));
+        assertThat(buffer.getByteCount(), is(8L));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_009: [If the policy is DROP_OLDEST, the function shall drop packets from the head of the waiting list until the packet fits.]
+    @Test
+    public void acquireDropsNewPacketIfNothingOldIsWaiting()
+    {
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(1, 10, IotHubOutboundBufferPolicy.DROP_OLDEST, 0);
+        buffer.acquire(newPacket(1), waitingList, callbackList);
+
+        boolean admitted = buffer.acquire(newPacket(1), waitingList, callbackList);
+
+        assertFalse(admitted);
+        assertThat(callbackList.size(), is(1));
+        assertThat(buffer.getMessageCount(), is(1));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_015: [If the waiting list is an IotHubOutboundQueue, the function shall drop packets from its lowest priority lane first.]
+    @Test
+    public void acquireDropsLowestPriorityPacketsFirst()
+    {
+        Queue<IotHubOutboundPacket> lanes = new IotHubOutboundQueue();
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(2, 10, IotHubOutboundBufferPolicy.DROP_OLDEST, 0);
+        Message alarm = new Message(new byte[1]);
+        alarm.setPriority(MessagePriority.HIGH);
+        Message telemetry = new Message(new byte[1]);
+        telemetry.setPriority(MessagePriority.LOW);
+        IotHubOutboundPacket high = new IotHubOutboundPacket(alarm, mockCallback, null);
+        IotHubOutboundPacket low = new IotHubOutboundPacket(telemetry, mockCallback, null);
+        buffer.acquire(high, lanes, callbackList);
+        lanes.add(high);
+        buffer.acquire(low, lanes, callbackList);
+        lanes.add(low);
+
+        boolean admitted = buffer.acquire(newPacket(1), lanes, callbackList);
+
+        assertTrue(admitted);
+        assertThat(lanes.size(), is(1));
+        assertThat(lanes.peek(), is(high));
+        assertThat(callbackList.size(), is(1));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_010: [If the policy is DROP_NEWEST and the packet does not fit, the function shall drop it and return false.]
+    @Test
+    public void acquireDropsNewestPacket()
+    {
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(1, 10, IotHubOutboundBufferPolicy.DROP_NEWEST, 0);
+        buffer.acquire(newPacket(1), waitingList, callbackList);
+
+        boolean admitted = buffer.acquire(newPacket(1), waitingList, callbackList);
+
+        assertFalse(admitted);
+        assertThat(callbackList.size(), is(1));
+        assertThat(callbackList.peek().getStatus(), is(IotHubStatusCode.MESSAGE_DROPPED));
+        assertThat(buffer.getMessageCount(), is(1));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_012: [If the packet is not held by the buffer, the function shall do nothing.]
+    @Test
+    public void releaseIgnoresPacketNotHeld()
+    {
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(2, 10, IotHubOutboundBufferPolicy.FAIL, 0);
+        IotHubOutboundPacket packet = newPacket(4);
+        buffer.acquire(packet, waitingList, callbackList);
+
+        buffer.release(packet);
+        buffer.release(packet);
+        buffer.release(newPacket(4));
+
+        assertThat(buffer.getMessageCount(), is(0));
+        assertThat(buffer.getByteCount(), is(0L));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_016: [If the packet is larger than the maximum number of bytes, the function shall throw an IllegalStateException if the policy is FAIL or BLOCK, and otherwise drop only the packet and return false.]
+    @Test(expected = IllegalStateException.class)
+    public void acquireRejectsOversizedPacketWithoutWaiting()
+    {
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(2, 10, IotHubOutboundBufferPolicy.BLOCK, 0);
+
+        buffer.acquire(newPacket(11), waitingList, callbackList);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_016: [If the packet is larger than the maximum number of bytes, the function shall throw an IllegalStateException if the policy is FAIL or BLOCK, and otherwise drop only the packet and return false.]
+    @Test
+    public void acquireDropsOnlyOversizedPacket()
+    {
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(2, 10, IotHubOutboundBufferPolicy.DROP_OLDEST, 0);
+        IotHubOutboundPacket waiting = newPacket(5);
+        buffer.acquire(waiting, waitingList, callbackList);
+        waitingList.add(waiting);
+
+        boolean admitted = buffer.acquire(newPacket(11), waitingList, callbackList);
+
+        assertFalse(admitted);
+        assertThat(waitingList.size(), is(1));
+        assertThat(waitingList.peek(), is(waiting));
+        assertThat(callbackList.size(), is(1));
+        assertThat(callbackList.peek().getStatus(), is(IotHubStatusCode.MESSAGE_DROPPED));
+        assertThat(buffer.getMessageCount(), is(1));
+        assertThat(buffer.getByteCount(), is(5L));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_017: [If the policy is BLOCK and the calling thread is a client thread, the function shall throw an IllegalStateException instead of waiting.]
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_018: [The function shall mark the current thread as a client thread and return whether it already was one.]
+    // Tests_SRS_IOTHUBOUTBOUNDBUFFER_21_019: [The function shall unmark the current thread, unless it was already a client thread when it was marked.]
+    @Test
+    public void acquireDoesNotBlockClientThread()
+    {
+        IotHubOutboundBuffer buffer = new IotHubOutboundBuffer(1, 10, IotHubOutboundBufferPolicy.BLOCK, 0);
+        buffer.acquire(newPacket(1), waitingList, callbackList);
+
+        boolean wasClientThread = IotHubOutboundBuffer.enterClientThread();
+        try
+        {
+            assertFalse(wasClientThread);
+            assertTrue(IotHubOutboundBuffer.enterClientThread());
+            IotHubOutboundBuffer.exitClientThread(true);
+
+            buffer.acquire(newPacket(1), waitingList, callbackList);
+            fail("Expected an IllegalStateException.");
+        }
+        catch (IllegalStateException e)
+        {
+            assertThat(buffer.getMessageCount(), is(1));
+        }
+        finally
+        {
+            IotHubOutboundBuffer.exitClientThread(wasClientThread);
+        }
+        assertFalse(IotHubOutboundBuffer.enterClientThread());
+        IotHubOutboundBuffer.exitClientThread(false);
+    }
+}
@@ -0,0 +1,284 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.IotHubOutboundJournal;
+import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessagePriority;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import mockit.Deencapsulation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/** Unit tests for IotHubOutboundJournal. */
+public class IotHubOutboundJournalTest
+{
+    /** The size of a journal record for the messages built by newMessage. */
+    protected static final int RECORD_SIZE = 144;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected static Message newMessage(String id)
+    {
+        Message message = new Message(new byte[100]);
+        message.setMessageId(id);
+        message.setCorrelationId(id);
+        return message;
+    }
+
+    protected static IotHubOutboundPacket newPacket(Message message)
+    {
+        return new IotHubOutboundPacket(message, null, null);
+    }
+
+    protected static List<String> pendingIds(IotHubOutboundJournal journal)
+    {
+        List<String> ids = new ArrayList<>();
+        for (Message message : journal.getPendingMessages())
+        {
+            ids.add(message.getMessageId());
+        }
+        return ids;
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_001: [If the directory is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullDirectory() throws IOException
+    {
+        new IotHubOutboundJournal(null, 1024, 4096);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_002: [If the segment size is not larger than a record header, or the maximum size is smaller than the segment size, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsSegmentLargerThanJournal() throws IOException
+    {
+        new IotHubOutboundJournal(folder.getRoot(), 4096, 1024);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_003: [If the directory does not exist and cannot be created, the constructor shall throw an IOException.]
+    @Test(expected = IOException.class)
+    public void constructorFailsIfDirectoryCannotBeCreated() throws IOException
+    {
+        File file = folder.newFile("not-a-directory");
+
+        new IotHubOutboundJournal(new File(file, "journal"), 1024, 4096);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_004: [The constructor shall read every segment file in the directory, oldest first, up to the first record that is incomplete or fails its checksum, and recover the records not checkpointed.]
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_008: [The function shall append a record holding the message and a checksum to the active segment, starting a new segment if it does not fit.]
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_011: [The function shall return the messages not checkpointed, in the order they were first journaled.]
+    @Test
+    public void recordedMessagesAreRecoveredInOrder() throws IOException
+    {
+        IotHubOutboundJournal journal = new IotHubOutboundJournal(folder.getRoot(), 1024, 4096);
+        Message first = newMessage("m1");
+        first.setProperty("key", "value");
+        first.setExpiryTime(60000);
+        first.setPriority(MessagePriority.HIGH);
+        first.setContentEncoding("gzip");
+        journal.record(newPacket(first));
+        journal.record(newPacket(newMessage("m2")));
+        journal.close();
+
+        IotHubOutboundJournal recovered = new IotHubOutboundJournal(folder.getRoot(), 1024, 4096);
+        List<Message> messages = recovered.getPendingMessages();
+
+        assertThat(pendingIds(recovered).toString(), is("[m1, m2]"));
+        assertThat(messages.get(0).getCorrelationId(), is("m1"));
+        assertThat(messages.get(0).getProperty("key"), is("value"));
+        assertThat(messages.get(0).isExpired(), is(false));
+        assertThat(messages.get(0).getPriority(), is(MessagePriority.HIGH));
+        assertThat(messages.get(1).getPriority(), is(MessagePriority.NORMAL));
+        assertThat(messages.get(0).getContentEncoding(), is("gzip"));
+        assertThat(messages.get(1).getContentEncoding(), is(nullValue()));
+        assertThat(Arrays.equals(messages.get(0).getBytes(), new byte[100]), is(true));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_004: [The constructor shall read every segment file in the directory, oldest first, up to the first record that is incomplete or fails its checksum, and recover the records not checkpointed.]
+    @Test
+    public void recoveryStopsAtRecordFailingChecksum() throws IOException
+    {
+        IotHubOutboundJournal journal = new IotHubOutboundJournal(folder.getRoot(), 1024, 4096);
+        journal.record(newPacket(newMessage("m1")));
+        journal.record(newPacket(newMessage("m2")));
+        journal.record(newPacket(newMessage("m3")));
+        journal.close();
+
+        File[] segments = folder.getRoot().listFiles();
+        assertThat(segments.length, is(1));
+        try (RandomAccessFile segment = new RandomAccessFile(segments[0], "rw"))
+        {
+            // corrupt the body of the second record.
+            segment.seek(RECORD_SIZE + 100);
+            segment.write(0x5A);
+        }
+
+        IotHubOutboundJournal recovered = new IotHubOutboundJournal(folder.getRoot(), 1024, 4096);
+
+        assertThat(pendingIds(recovered).toString(), is("[m1]"));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_005: [The constructor shall delete the segment files holding no record to recover.]
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_009: [If the message is not journaled, the function shall do nothing.]
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_010: [The function shall mark the record as checkpointed in its segment, and delete the segment if it is not the active one and holds no other pending record.]
+    @Test
+    public void checkpointedMessagesAreNotRecovered() throws IOException
+    {
+        IotHubOutboundJournal journal = new IotHubOutboundJournal(folder.getRoot(), 1024, 4096);
+        IotHubOutboundPacket first = newPacket(newMessage("m1"));
+        IotHubOutboundPacket second = newPacket(newMessage("m2"));
+        journal.record(first);
+        journal.record(second);
+        journal.checkpoint(first);
+        journal.checkpoint(newPacket(newMessage("m9")));
+        journal.close();
+
+        IotHubOutboundJournal recovered = new IotHubOutboundJournal(folder.getRoot(), 1024, 4096);
+        assertThat(pendingIds(recovered).toString(), is("[m2]"));
+        recovered.checkpoint(newPacket(recovered.getPendingMessages().get(0)));
+        recovered.close();
+
+        new IotHubOutboundJournal(folder.getRoot(), 1024, 4096);
+        assertThat(folder.getRoot().listFiles().length, is(0));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_010: [The function shall mark the record as checkpointed in its segment, and delete the segment if it is not the active one and holds no other pending record.]
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_012: [The function shall return the number of segment files currently on disk.]
+    @Test
+    public void segmentIsDeletedOnceFullyCheckpointed() throws IOException
+    {
+        IotHubOutboundJournal journal = new IotHubOutboundJournal(folder.getRoot(), 2 * RECORD_SIZE, 4096);
+        IotHubOutboundPacket first = newPacket(newMessage("m1"));
+        IotHubOutboundPacket second = newPacket(newMessage("m2"));
+        journal.record(first);
+        journal.record(second);
+        journal.record(newPacket(newMessage("m3")));
+        assertThat(journal.getSegmentCount(), is(2));
+
+        journal.checkpoint(first);
+        assertThat(journal.getSegmentCount(), is(2));
+        journal.checkpoint(second);
+
+        assertThat(journal.getSegmentCount(), is(1));
+        assertThat(folder.getRoot().listFiles().length, is(1));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_006: [If the journal is closed or the message is already journaled, the function shall do nothing.]
+    @Test
+    public void recordIgnoresJournaledMessages() throws IOException
+    {
+        IotHubOutboundJournal journal = new IotHubOutboundJournal(folder.getRoot(), 1024, 4096);
+        Message message = newMessage("m1");
+        journal.record(newPacket(message));
+        journal.record(newPacket(message));
+        journal.close();
+
+        IotHubOutboundJournal recovered = new IotHubOutboundJournal(folder.getRoot(), 1024, 4096);
+        recovered.record(newPacket(recovered.getPendingMessages().get(0)));
+
+        assertThat(pendingIds(recovered).toString(), is("[m1]"));
+        assertThat(recovered.getSegmentCount(), is(1));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_006: [If the journal is closed or the message is already journaled, the function shall do nothing.]
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_014: [The function shall flush every segment to disk and stop journaling messages.]
+    @Test
+    public void closedJournalDoesNotRecordMessages() throws IOException
+    {
+        IotHubOutboundJournal journal = new IotHubOutboundJournal(folder.getRoot(), 1024, 4096);
+        journal.record(newPacket(newMessage("m1")));
+        journal.close();
+        journal.record(newPacket(newMessage("m2")));
+
+        assertThat(journal.getPendingMessages().size(), is(0));
+        assertThat(pendingIds(new IotHubOutboundJournal(folder.getRoot(), 1024, 4096)).toString(), is("[m1]"));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_007: [If the record does not fit in a segment, the function shall not journal the message.]
+    @Test
+    public void recordSkipsMessageLargerThanSegment() throws IOException
+    {
+        IotHubOutboundJournal journal = new IotHubOutboundJournal(folder.getRoot(), 1024, 4096);
+
+        journal.record(newPacket(new Message(new byte[1024])));
+
+        assertThat(journal.getPendingMessages().size(), is(0));
+        assertThat(journal.getSegmentCount(), is(0));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_015: [If there are more segments than the maximum size allows, the function shall move the pending records of the oldest segments into the new one and delete them; records that do not fit shall no longer be journaled.]
+    @Test
+    public void fullJournalCompactsOldestSegment() throws IOException
+    {
+        IotHubOutboundJournal journal = new IotHubOutboundJournal(folder.getRoot(), 3 * RECORD_SIZE, 6 * RECORD_SIZE);
+        List<IotHubOutboundPacket> packets = new ArrayList<>();
+        for (int i = 1; i <= 6; i++)
+        {
+            IotHubOutboundPacket packet = newPacket(newMessage("m" + i));
+            packets.add(packet);
+            journal.record(packet);
+        }
+        journal.checkpoint(packets.get(0));
+        journal.checkpoint(packets.get(1));
+
+        journal.record(newPacket(newMessage("m7")));
+        journal.close();
+
+        IotHubOutboundJournal recovered = new IotHubOutboundJournal(folder.getRoot(), 3 * RECORD_SIZE, 6 * RECORD_SIZE);
+        assertThat(recovered.getSegmentCount(), is(2));
+        assertThat(pendingIds(recovered).toString(), is("[m3, m4, m5, m6, m7]"));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_015: [If there are more segments than the maximum size allows, the function shall move the pending records of the oldest segments into the new one and delete them; records that do not fit shall no longer be journaled.]
+    @Test
+    public void fullJournalStopsJournalingRecordsThatDoNotFit() throws IOException
+    {
+        IotHubOutboundJournal journal = new IotHubOutboundJournal(folder.getRoot(), 3 * RECORD_SIZE, 6 * RECORD_SIZE);
+        for (int i = 1; i <= 7; i++)
+        {
+            journal.record(newPacket(newMessage("m" + i)));
+        }
+
+        assertThat(journal.getSegmentCount(), is(2));
+        assertThat(pendingIds(journal).toString(), is("[m1, m2, m4, m5, m6, m7]"));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDJOURNAL_21_013: [The function shall save the replay callback and context; a null callback shall be replaced by one that does nothing.]
+    @Test
+    public void setReplayCallbackSavesCallback() throws IOException
+    {
+        IotHubOutboundJournal journal = new IotHubOutboundJournal(folder.getRoot(), 1024, 4096);
+        IotHubEventCallback callback = new IotHubEventCallback()
+        {
+            @Override
+            public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+            {
+            }
+        };
+        Object context = new Object();
+
+        journal.setReplayCallback(callback, context);
+        assertThat((IotHubEventCallback) Deencapsulation.invoke(journal, "getReplayCallback"), is(callback));
+        assertThat(Deencapsulation.invoke(journal, "getReplayCallbackContext"), is(context));
+
+        journal.setReplayCallback(null, null);
+        assertThat((IotHubEventCallback) Deencapsulation.invoke(journal, "getReplayCallback"), is(notNullValue()));
+    }
+}
@@ -0,0 +1,180 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.IotHubSendFuture;
+import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
+import mockit.Deencapsulation;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for IotHubSendFuture. */
+public class IotHubSendFutureTest
+{
+    @Mocked
+    IotHubEventCallback mockCallback;
+
+    protected static IotHubSendFuture newFuture()
+    {
+        return Deencapsulation.newInstance(IotHubSendFuture.class);
+    }
+
+    protected static void complete(IotHubSendFuture future, IotHubStatusCode status)
+    {
+        Deencapsulation.invoke(future, "complete", status);
+    }
+
+    // Tests_SRS_IOTHUBSENDFUTURE_21_001: [The function shall return true if the future is completed, and false otherwise.]
+    // Tests_SRS_IOTHUBSENDFUTURE_21_002: [The function shall wait until the future is completed and return its status.]
+    @Test
+    public void getReturnsCompletedStatus() throws InterruptedException
+    {
+        IotHubSendFuture future = newFuture();
+        assertFalse(future.isDone());
+
+        complete(future, IotHubStatusCode.OK_EMPTY);
+        complete(future, IotHubStatusCode.ERROR);
+
+        assertTrue(future.isDone());
+        assertThat(future.get(), is(IotHubStatusCode.OK_EMPTY));
+    }
+
+    // Tests_SRS_IOTHUBSENDFUTURE_21_002: [The function shall wait until the future is completed and return its status.]
+    @Test
+    public void getWaitsForCompletion() throws InterruptedException
+    {
+        final IotHubSendFuture future = newFuture();
+        Thread completer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(20);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                complete(future, IotHubStatusCode.THROTTLED);
+            }
+        });
+        completer.start();
+
+        assertThat(future.get(), is(IotHubStatusCode.THROTTLED));
+        completer.join();
+    }
+
+    // Tests_SRS_IOTHUBSENDFUTURE_21_003: [If the timeout expires before the future is completed, the function shall throw a TimeoutException.]
+    @Test(expected = TimeoutException.class)
+    public void getWithTimeoutFailsIfNotCompleted() throws Exception
+    {
+        newFuture().get(10, TimeUnit.MILLISECONDS);
+    }
+
+    // Tests_SRS_IOTHUBSENDFUTURE_21_004: [If the callback is null, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void whenCompleteRejectsNullCallback()
+    {
+        newFuture().whenComplete(null, null);
+    }
+
+    // Tests_SRS_IOTHUBSENDFUTURE_21_005: [If the future is not completed, the function shall invoke the callback with the status and the context once it is.]
+    // Tests_SRS_IOTHUBSENDFUTURE_21_006: [If the future is completed, the function shall invoke the callback with the status and the context right away.]
+    @Test
+    public void whenCompleteInvokesCallbackOnCompletion()
+    {
+        final Object before = new Object();
+        final Object after = new Object();
+        IotHubSendFuture future = newFuture();
+
+        future.whenComplete(mockCallback, before);
+        complete(future, IotHubStatusCode.OK);
+        future.whenComplete(mockCallback, after);
+
+        new Verifications()
+        {
+            {
+                mockCallback.execute(IotHubStatusCode.OK, before);
+                times = 1;
+                mockCallback.execute(IotHubStatusCode.OK, after);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBSENDFUTURE_21_010: [The function shall return false without cancelling the future.]
+    @Test
+    public void cancelDoesNothing()
+    {
+        IotHubSendFuture future = newFuture();
+
+        assertFalse(future.cancel(true));
+        assertFalse(future.isCancelled());
+        assertFalse(future.isDone());
+    }
+
+    // Tests_SRS_IOTHUBSENDFUTURE_21_007: [If the collection is null, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void allOfRejectsNullCollection()
+    {
+        IotHubSendFuture.allOf(null);
+    }
+
+    // Tests_SRS_IOTHUBSENDFUTURE_21_008: [If the collection is empty, the function shall return a future completed with OK_EMPTY.]
+    @Test
+    public void allOfEmptyCollectionIsCompleted() throws InterruptedException
+    {
+        IotHubSendFuture combined = IotHubSendFuture.allOf(new ArrayList<IotHubSendFuture>());
+
+        assertTrue(combined.isDone());
+        assertThat(combined.get(), is(IotHubStatusCode.OK_EMPTY));
+    }
+
+    // Tests_SRS_IOTHUBSENDFUTURE_21_009: [The function shall return a future completed once all the futures are completed, with the first status, in collection order, that is neither OK nor OK_EMPTY, or OK_EMPTY if there is none.]
+    @Test
+    public void allOfCompletesWithFirstFailureOnceAllComplete() throws InterruptedException
+    {
+        List<IotHubSendFuture> futures = new ArrayList<>();
+        futures.add(newFuture());
+        futures.add(newFuture());
+        futures.add(newFuture());
+        IotHubSendFuture combined = IotHubSendFuture.allOf(futures);
+
+        complete(futures.get(2), IotHubStatusCode.MESSAGE_EXPIRED);
+        complete(futures.get(0), IotHubStatusCode.OK);
+        assertFalse(combined.isDone());
+        complete(futures.get(1), IotHubStatusCode.THROTTLED);
+
+        assertThat(combined.get(), is(IotHubStatusCode.THROTTLED));
+    }
+
+    // Tests_SRS_IOTHUBSENDFUTURE_21_009: [The function shall return a future completed once all the futures are completed, with the first status, in collection order, that is neither OK nor OK_EMPTY, or OK_EMPTY if there is none.]
+    @Test
+    public void allOfCompletesWithOkEmptyIfAllSucceed() throws InterruptedException
+    {
+        List<IotHubSendFuture> futures = new ArrayList<>();
+        futures.add(newFuture());
+        futures.add(newFuture());
+        IotHubSendFuture combined = IotHubSendFuture.allOf(futures);
+
+        complete(futures.get(0), IotHubStatusCode.OK);
+        complete(futures.get(1), IotHubStatusCode.OK_EMPTY);
+
+        assertThat(combined.get(), is(IotHubStatusCode.OK_EMPTY));
+    }
+}
@@ -0,0 +1,67 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.IotHubStripedCounter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/** Unit tests for IotHubStripedCounter. */
+public class IotHubStripedCounterTest
+{
+    // Tests_SRS_IOTHUBSTRIPEDCOUNTER_21_001: [The constructor shall create a counter of value 0, with as many stripes as available processors, rounded up to a power of two and capped at 64.]
+    // Tests_SRS_IOTHUBSTRIPEDCOUNTER_21_002: [The function shall add the value to the stripe of the calling thread.]
+    // Tests_SRS_IOTHUBSTRIPEDCOUNTER_21_003: [The function shall return the sum of all stripes.]
+    @Test
+    public void sumReturnsEverythingAdded()
+    {
+        IotHubStripedCounter counter = new IotHubStripedCounter();
+        assertThat(counter.sum(), is(0L));
+
+        counter.add(40);
+        counter.increment();
+        counter.add(-1);
+
+        assertThat(counter.sum(), is(40L));
+    }
+
+    // Tests_SRS_IOTHUBSTRIPEDCOUNTER_21_002: [The function shall add the value to the stripe of the calling thread.]
+    // Tests_SRS_IOTHUBSTRIPEDCOUNTER_21_003: [The function shall return the sum of all stripes.]
+    @Test
+    public void sumCountsAdditionsFromManyThreads() throws InterruptedException
+    {
+        final IotHubStripedCounter counter = new IotHubStripedCounter();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+        {
+            threads.add(new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < 10000; j++)
+                    {
+                        counter.increment();
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertThat(counter.sum(), is(80000L));
+    }
+}
@@ -0,0 +1,160 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.google.gson.Gson;
+import com.microsoft.azure.sdk.iot.device.JsonTelemetrySerializer;
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.TelemetryEvent;
+import com.microsoft.azure.sdk.iot.device.TelemetryWriter;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/** Unit tests for JsonTelemetrySerializer. */
+public class JsonTelemetrySerializerTest
+{
+    /** A telemetry event as the applications used to serialize with Gson. */
+    private static class Reading implements TelemetryEvent
+    {
+        String deviceId;
+        long count;
+        double windSpeed;
+        double temperature;
+        boolean alarm;
+
+        @Override
+        public void writeTo(TelemetryWriter writer)
+        {
+            writer.field("deviceId", deviceId)
+                    .field("count", count)
+                    .field("windSpeed", windSpeed)
+                    .field("temperature", temperature)
+                    .field("alarm", alarm);
+        }
+    }
+
+    private static String json(TelemetryEvent event)
+    {
+        return new String(new JsonTelemetrySerializer().serialize(event), Message.DEFAULT_IOTHUB_MESSAGE_CHARSET);
+    }
+
+    private static TelemetryEvent stringField(final String value)
+    {
+        return new TelemetryEvent()
+        {
+            @Override
+            public void writeTo(TelemetryWriter writer)
+            {
+                writer.field("s", value);
+            }
+        };
+    }
+
+    // Tests_SRS_JSONTELEMETRYSERIALIZER_21_001: [If the event is null, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void serializeRejectsNullEvent()
+    {
+        new JsonTelemetrySerializer().serialize(null);
+    }
+
+    // Tests_SRS_JSONTELEMETRYSERIALIZER_21_002: [The function shall write the event as a JSON object in UTF-8, with the fields in the order the event writes them, into the buffer of the calling thread, and return a copy of the exact length of the object.]
+    // Tests_SRS_JSONTELEMETRYSERIALIZER_21_004: [The writer shall write the integral fields in decimal.]
+    // Tests_SRS_JSONTELEMETRYSERIALIZER_21_006: [The writer shall write the floating point fields as Double.toString does, without creating a string for the integral values.]
+    // Tests_SRS_JSONTELEMETRYSERIALIZER_21_007: [The writer shall write the boolean fields as true or false.]
+    @Test
+    public void serializeWritesAsGson()
+    {
+        double[] doubles = { 10, -3, 0, -0.0, 0.5, 12.375, 1e7, 9999999, 1e-4, Double.MAX_VALUE, Double.MIN_VALUE };
+        long[] longs = { 0, 7, -42, Long.MAX_VALUE, Long.MIN_VALUE };
+        Gson gson = new Gson();
+        for (int i = 0; i < doubles.length; i++)
+        {
+            Reading reading = new Reading();
+            reading.deviceId = "myFirstDevice";
+            reading.count = longs[i % longs.length];
+            reading.windSpeed = doubles[i];
+            reading.temperature = -doubles[i];
+            reading.alarm = i % 2 == 0;
+
+            assertThat(json(reading), is(gson.toJson(reading)));
+        }
+    }
+
+    // Tests_SRS_JSONTELEMETRYSERIALIZER_21_003: [The writer shall skip a string field with a null value, and write the other strings escaped as JSON strings.]
+    @Test
+    public void serializeEscapesStringsAndSkipsNull()
+    {
+        assertThat(json(stringField(null)), is("{}"));
+        assertThat(json(stringField("a\"b\\c\n\t\u0001\u2028")), is("{\"s\":\"a\\\"b\\\\c\\n\\t\\u0001\\u2028\"}"));
+
+        byte[] body = new JsonTelemetrySerializer().serialize(stringField("\u00e9\u20ac\uD83D\uDE00\uD800"));
+        assertThat(body, is("{\"s\":\"\u00e9\u20ac\uD83D\uDE00?\"}".getBytes(Message.DEFAULT_IOTHUB_MESSAGE_CHARSET)));
+    }
+
+    // Tests_SRS_JSONTELEMETRYSERIALIZER_21_005: [If a floating point value is NaN or infinite, the writer shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void serializeRejectsNaN()
+    {
+        Reading reading = new Reading();
+        reading.windSpeed = Double.NaN;
+
+        new JsonTelemetrySerializer().serialize(reading);
+    }
+
+    // Tests_SRS_JSONTELEMETRYSERIALIZER_21_002: [The function shall write the event as a JSON object in UTF-8, with the fields in the order the event writes them, into the buffer of the calling thread, and return a copy of the exact length of the object.]
+    @Test
+    public void serializeReusesBufferAcrossEvents()
+    {
+        JsonTelemetrySerializer serializer = new JsonTelemetrySerializer();
+        char[] large = new char[100000];
+        Arrays.fill(large, 'x');
+
+        byte[] first = serializer.serialize(stringField(new String(large)));
+        byte[] second = serializer.serialize(stringField("y"));
+        try
+        {
+            serializer.serialize(new TelemetryEvent()
+            {
+                @Override
+                public void writeTo(TelemetryWriter writer)
+                {
+                    writer.field("partial", 1).field(null, 2);
+                }
+            });
+        }
+        catch (IllegalArgumentException e)
+        {
+            // The next event shall not see the partial one.
+        }
+        byte[] third = serializer.serialize(stringField("z"));
+
+        assertThat(first.length, is(large.length + 8));
+        assertThat(new String(second, Message.DEFAULT_IOTHUB_MESSAGE_CHARSET), is("{\"s\":\"y\"}"));
+        assertThat(new String(third, Message.DEFAULT_IOTHUB_MESSAGE_CHARSET), is("{\"s\":\"z\"}"));
+    }
+
+    // Tests_SRS_JSONTELEMETRYSERIALIZER_21_002: [The function shall write the event as a JSON object in UTF-8, with the fields in the order the event writes them, into the buffer of the calling thread, and return a copy of the exact length of the object.]
+    @Test
+    public void serializeWithinEventUsesAnotherBuffer()
+    {
+        final JsonTelemetrySerializer serializer = new JsonTelemetrySerializer();
+        TelemetryEvent outer = new TelemetryEvent()
+        {
+            @Override
+            public void writeTo(TelemetryWriter writer)
+            {
+                writer.field("a", 1);
+                byte[] inner = serializer.serialize(stringField("b"));
+                writer.field("inner", new String(inner, Message.DEFAULT_IOTHUB_MESSAGE_CHARSET));
+            }
+        };
+
+        assertThat(new String(serializer.serialize(outer), Message.DEFAULT_IOTHUB_MESSAGE_CHARSET),
+                is("{\"a\":1,\"inner\":\"{\\\"s\\\":\\\"b\\\"}\"}"));
+    }
+}
@@ -5,17 +5,29 @@ package tests.unit.com.microsoft.azure.sdk.iot.device;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import com.microsoft.azure.sdk.iot.device.DeflateMessageCodec;
 import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessagePriority;
 import com.microsoft.azure.sdk.iot.device.MessageProperty;
+import com.microsoft.azure.sdk.iot.device.SequentialMessageIdGenerator;
+import mockit.Deencapsulation;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Verifications;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /** Unit tests for Message. */
 public class MessageTest
@@ -36,6 +48,269 @@ public class MessageTest
         assertThat(testBody, is(expectedBody));
     }
 
+    // Tests_SRS_MESSAGE_21_001: [The function shall return the number of bytes in the message body, or 0 if the body is null.]
+    @Test
+    public void getBodyLengthReturnsBodySize()
+    {
+        final byte[] body = { 1, 2, 3 };
+
+        assertThat(new Message(body).getBodyLength(), is(3));
+        assertThat(new Message().getBodyLength(), is(0));
+    }
+
+    // Tests_SRS_MESSAGE_21_016: [If the stream is null or the length is negative, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNegativeStreamLength()
+    {
+        new Message(new ByteArrayInputStream(new byte[0]), -1);
+    }
+
+    // Tests_SRS_MESSAGE_21_017: [The constructor shall save the stream and the length of the body without reading the stream.]
+    // Tests_SRS_MESSAGE_21_018: [The function shall not read the body from its stream.]
+    // Tests_SRS_MESSAGE_21_019: [The first time the body is needed, the message shall read it from its stream into an array of the length of the body, and close the stream.]
+    @Test
+    public void streamedBodyIsReadOnceWhenNeeded()
+    {
+        final int[] reads = { 0 };
+        final boolean[] closed = { false };
+        InputStream stream = new ByteArrayInputStream(new byte[] { 1, 2, 3 })
+        {
+            @Override
+            public synchronized int read(byte[] b, int off, int len)
+            {
+                reads[0]++;
+                // hands out the body in two parts.
+                return super.read(b, off, Math.min(len, 2));
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                closed[0] = true;
+            }
+        };
+
+        Message msg = new Message(stream, 3);
+        assertThat(msg.getBodyLength(), is(3));
+        assertThat(reads[0], is(0));
+
+        assertThat(msg.getBytes(), is(new byte[] { 1, 2, 3 }));
+        assertThat(msg.getBodyBuffer().remaining(), is(3));
+        assertThat(reads[0], is(2));
+        assertThat(closed[0], is(true));
+    }
+
+    // Tests_SRS_MESSAGE_21_019: [The first time the body is needed, the message shall read it from its stream into an array of the length of the body, and close the stream.]
+    @Test
+    public void byteArrayStreamConstructorSavesAvailableBytes()
+    {
+        final byte[] body = { 1, 2, 3, 4 };
+        ByteArrayInputStream stream = new ByteArrayInputStream(body);
+        stream.skip(1);
+
+        Message msg = new Message(stream);
+
+        assertThat(msg.getBodyLength(), is(3));
+        assertThat(msg.getBytes(), is(new byte[] { 2, 3, 4 }));
+    }
+
+    // Tests_SRS_MESSAGE_21_020: [If the stream cannot be read or ends before the length of the body, the message shall throw an IllegalStateException.]
+    @Test
+    public void shortStreamedBodyThrowsAndLeavesNoBody()
+    {
+        Message msg = new Message(new ByteArrayInputStream(new byte[] { 1, 2 }), 3);
+
+        try
+        {
+            msg.getBytes();
+            fail("Expected an IllegalStateException.");
+        }
+        catch (IllegalStateException e)
+        {
+            assertThat(msg.getBodyLength(), is(0));
+            assertThat(msg.getBytes(), is(nullValue()));
+        }
+    }
+
+    // Tests_SRS_MESSAGE_21_025: [The function shall return the message body without copying it, or null if the body is null.]
+    @Test
+    public void getBodyArrayReturnsOwnedBody()
+    {
+        final byte[] body = { 1, 2, 3 };
+        Message msg = new Message(body);
+
+        assertThat(msg.getBodyArray() == body, is(true));
+    }
+
+    // Tests_SRS_MESSAGE_21_026: [The function shall return true if the body is still in its stream, and false otherwise.]
+    // Tests_SRS_MESSAGE_21_027: [If the body is still in its stream, the function shall return the stream and release it, after which reading the body shall throw an IllegalStateException.]
+    @Test
+    public void takeBodyStreamHandsOverTheStream()
+    {
+        InputStream stream = new ByteArrayInputStream(new byte[] { 1, 2, 3 });
+        Message msg = new Message(stream, 3);
+        assertThat(msg.hasBodyStream(), is(true));
+
+        InputStream taken = msg.takeBodyStream();
+
+        assertThat(taken == stream, is(true));
+        assertThat(msg.hasBodyStream(), is(false));
+        assertThat(msg.getBodyLength(), is(3));
+        try
+        {
+            msg.getBodyArray();
+            fail("Expected an IllegalStateException.");
+        }
+        catch (IllegalStateException e)
+        {
+            assertThat(msg.takeBodyStream(), is(nullValue()));
+        }
+    }
+
+    // Tests_SRS_MESSAGE_21_026: [The function shall return true if the body is still in its stream, and false otherwise.]
+    // Tests_SRS_MESSAGE_21_028: [Otherwise, the function shall return null.]
+    @Test
+    public void takeBodyStreamReturnsNullOnceBodyIsRead()
+    {
+        Message msg = new Message(new ByteArrayInputStream(new byte[] { 1, 2, 3 }), 3);
+        msg.getBodyArray();
+
+        assertThat(msg.hasBodyStream(), is(false));
+        assertThat(msg.takeBodyStream(), is(nullValue()));
+        assertThat(msg.getBytes(), is(new byte[] { 1, 2, 3 }));
+    }
+
+    // Tests_SRS_MESSAGE_21_021: [The function shall return the content encoding of the message, or null if it has none.]
+    // Tests_SRS_MESSAGE_21_022: [The function shall set the content encoding of the message.]
+    // Tests_SRS_MESSAGE_21_023: [The function shall return the codec of the message, or null if it has none.]
+    // Tests_SRS_MESSAGE_21_024: [The function shall set the codec of the message.]
+    @Test
+    public void contentEncodingAndCodecAreSaved()
+    {
+        Message msg = new Message(new byte[0]);
+        assertThat(msg.getContentEncoding(), is(nullValue()));
+        assertThat(msg.getCodec(), is(nullValue()));
+
+        msg.setContentEncoding("gzip");
+        msg.setCodec(DeflateMessageCodec.DEFLATE);
+
+        assertThat(msg.getContentEncoding(), is("gzip"));
+        assertThat((DeflateMessageCodec) msg.getCodec(), is(DeflateMessageCodec.DEFLATE));
+    }
+
+    // Tests_SRS_MESSAGE_21_006: [The constructor shall take ownership of the body array without copying it.]
+    // Tests_SRS_MESSAGE_21_007: [The function shall return a read-only view of the message body, sharing its content, or null if the body is null.]
+    @Test
+    public void getBodyBufferSharesOwnedBody()
+    {
+        final byte[] body = { 1, 2, 3 };
+        Message msg = new Message(body);
+
+        body[0] = 4;
+        ByteBuffer view = msg.getBodyBuffer();
+
+        assertThat(view.isReadOnly(), is(true));
+        assertThat(view.remaining(), is(3));
+        assertThat(view.get(0), is((byte) 4));
+        assertThat(new Message().getBodyBuffer(), is(nullValue()));
+    }
+
+    // Tests_SRS_MESSAGE_21_007: [The function shall return a read-only view of the message body, sharing its content, or null if the body is null.]
+    @Test(expected = ReadOnlyBufferException.class)
+    public void getBodyBufferRejectsWrites()
+    {
+        new Message(new byte[] { 1, 2, 3 }).getBodyBuffer().put(0, (byte) 4);
+    }
+
+    // Tests_SRS_MESSAGE_21_008: [The constructor shall not generate the message and correlation IDs.]
+    // Tests_SRS_MESSAGE_21_009: [If the message ID was neither set nor read before, the function shall generate it with the ID generator of the message.]
+    // Tests_SRS_MESSAGE_21_010: [The function shall return the message ID.]
+    // Tests_SRS_MESSAGE_21_012: [If the correlation ID was neither set nor read before, the function shall generate it with the ID generator of the message.]
+    // Tests_SRS_MESSAGE_21_013: [The function shall return the correlation ID.]
+    @Test
+    public void idsAreGeneratedOnFirstRead(@Mocked final SequentialMessageIdGenerator mockGenerator)
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockGenerator.generateId();
+                returns("id-0", "id-1");
+            }
+        };
+
+        Message msg = new Message(new byte[0]);
+        new Verifications()
+        {
+            {
+                mockGenerator.generateId();
+                times = 0;
+            }
+        };
+
+        assertThat(msg.getMessageId(), is("id-0"));
+        assertThat(msg.getMessageId(), is("id-0"));
+        assertThat(msg.getCorrelationId(), is("id-1"));
+    }
+
+    // Tests_SRS_MESSAGE_21_009: [If the message ID was neither set nor read before, the function shall generate it with the ID generator of the message.]
+    @Test
+    public void idsOfDifferentMessagesDiffer()
+    {
+        Message first = new Message(new byte[0]);
+        Message second = new Message(new byte[0]);
+
+        assertThat(first.getMessageId(), is(not(second.getMessageId())));
+        assertThat(first.getCorrelationId(), is(not(first.getMessageId())));
+    }
+
+    // Tests_SRS_MESSAGE_21_011: [The function shall set the message ID, which is then no longer generated.]
+    // Tests_SRS_MESSAGE_21_014: [The function shall set the correlation ID, which is then no longer generated.]
+    @Test
+    public void setIdsPreventsGeneration()
+    {
+        Message msg = new Message(new byte[0]);
+
+        msg.setMessageId(null);
+        msg.setCorrelationId("correlation");
+
+        assertThat(msg.getMessageId(), is(nullValue()));
+        assertThat(msg.getCorrelationId(), is("correlation"));
+    }
+
+    // Tests_SRS_MESSAGE_21_002: [The function shall return the message priority, which is NORMAL unless set otherwise.]
+    // Tests_SRS_MESSAGE_21_004: [The function shall set the message priority.]
+    @Test
+    public void setPrioritySavesPriority()
+    {
+        Message msg = new Message(new byte[0]);
+        assertThat(msg.getPriority(), is(MessagePriority.NORMAL));
+
+        msg.setPriority(MessagePriority.HIGH);
+
+        assertThat(msg.getPriority(), is(MessagePriority.HIGH));
+    }
+
+    // Tests_SRS_MESSAGE_21_005: [The function shall return the time the message expires, in milliseconds since the epoch, or 0 if it never expires.]
+    @Test
+    public void getExpiryTimeReturnsAbsoluteExpiryTime()
+    {
+        Message msg = new Message(new byte[0]);
+        assertThat(msg.getExpiryTime(), is(0L));
+
+        long before = System.currentTimeMillis();
+        msg.setExpiryTime(1000);
+
+        assertThat(msg.getExpiryTime() >= before + 1000, is(true));
+        assertThat(msg.getExpiryTime() <= System.currentTimeMillis() + 1000, is(true));
+    }
+
+    // Tests_SRS_MESSAGE_21_003: [If the priority is null, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setPriorityRejectsNull()
+    {
+        new Message(new byte[0]).setPriority(null);
+    }
+
     // Tests_SRS_MESSAGE_11_025: [If the message body is null, the constructor shall throw an IllegalArgumentException.]
     @Test(expected = IllegalArgumentException.class)
     public void constructorRejectsNullBody()
@@ -215,6 +490,85 @@ public class MessageTest
         assertThat(testProperties[0], is(not(mockProperty)));
     }
 
+    // Tests_SRS_MESSAGE_11_026: [The function shall set the message property to the given value.]
+    // Tests_SRS_MESSAGE_11_032: [The function shall return the value associated with the message property name, where the name can be either the HTTPS or AMQPS property name.]
+    @Test
+    public void setPropertyReplacesPropertyIgnoringCase()
+    {
+        Message msg = new Message(new byte[0]);
+        for (int i = 0; i < 20; i++)
+        {
+            msg.setProperty("name-" + i, "value-" + i);
+        }
+
+        msg.setProperty("NAME-3", "replaced");
+
+        MessageProperty[] properties = msg.getProperties();
+        assertThat(properties.length, is(20));
+        assertThat(properties[19].getName(), is("NAME-3"));
+        assertThat(msg.getProperty("Name-3"), is("replaced"));
+        assertThat(msg.getProperty("name-19"), is("value-19"));
+        assertThat(msg.getProperty("name-20"), is(nullValue()));
+        assertThat(msg.getProperty(null), is(nullValue()));
+    }
+
+    // Tests_SRS_MESSAGE_11_026: [The function shall set the message property to the given value.]
+    // Tests_SRS_MESSAGE_11_032: [The function shall return the value associated with the message property name, where the name can be either the HTTPS or AMQPS property name.]
+    @Test
+    public void setPropertyReplacesWithoutRebuildingIndex()
+    {
+        Message msg = new Message(new byte[0]);
+        for (int i = 0; i < 6; i++)
+        {
+            msg.setProperty("name-" + i, "value-" + i);
+        }
+        Object table = Deencapsulation.getField(msg, "properties");
+        int[] slots = Deencapsulation.getField(table, "slots");
+
+        msg.setProperty("Name-1", "replaced-1");
+        msg.setProperty("NAME-4", "replaced-4");
+        msg.setProperty("name-5", "replaced-5");
+
+        assertThat(Deencapsulation.getField(table, "slots") == slots, is(true));
+        MessageProperty[] properties = msg.getProperties();
+        String[] expected = { "name-0", "name-2", "name-3", "Name-1", "NAME-4", "name-5" };
+        assertThat(properties.length, is(expected.length));
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertThat(properties[i].getName(), is(expected[i]));
+            assertThat(msg.getProperty(expected[i].toUpperCase()), is(properties[i].getValue()));
+        }
+        assertThat(msg.getProperty("name-1"), is("replaced-1"));
+        assertThat(msg.getProperty("name-2"), is("value-2"));
+    }
+
+    // Tests_SRS_MESSAGE_21_015: [The function shall return an unmodifiable view of the message properties, in the order they were last set, which is the same object until they change.]
+    @Test
+    public void getPropertyViewIsSharedUntilPropertiesChange()
+    {
+        Message msg = new Message(new byte[0]);
+        msg.setProperty("first", "1");
+
+        List<MessageProperty> view = msg.getPropertyView();
+        assertThat(msg.getPropertyView() == view, is(true));
+
+        msg.setProperty("second", "2");
+
+        assertThat(view.size(), is(1));
+        assertThat(msg.getPropertyView().size(), is(2));
+        assertThat(msg.getPropertyView().get(1).getName(), is("second"));
+    }
+
+    // Tests_SRS_MESSAGE_21_015: [The function shall return an unmodifiable view of the message properties, in the order they were last set, which is the same object until they change.]
+    @Test(expected = UnsupportedOperationException.class)
+    public void getPropertyViewRejectsChanges()
+    {
+        Message msg = new Message(new byte[0]);
+        msg.setProperty("first", "1");
+
+        msg.getPropertyView().remove(0);
+    }
+
     // Tests_SRS_MESSAGE_15_035: [The function shall return true if the expiryTime is set to 0.]
     @Test
     public void isExpiredReturnsTrueIfExpiryIsNotSet()
@@ -0,0 +1,56 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.SequentialMessageIdGenerator;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for SequentialMessageIdGenerator. */
+public class SequentialMessageIdGeneratorTest
+{
+    // Tests_SRS_SEQUENTIALMESSAGEIDGENERATOR_21_001: [If the random source is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullRandom()
+    {
+        new SequentialMessageIdGenerator(null);
+    }
+
+    // Tests_SRS_SEQUENTIALMESSAGEIDGENERATOR_21_002: [The constructor shall draw a prefix of PREFIX_LENGTH alphanumeric characters from the random source.]
+    // Tests_SRS_SEQUENTIALMESSAGEIDGENERATOR_21_003: [The function shall return the prefix followed by the next sequence number of the generator, in base 36.]
+    @Test
+    public void generateIdAppendsSequenceToPrefix()
+    {
+        SequentialMessageIdGenerator generator = new SequentialMessageIdGenerator(new Random(42));
+        String prefix = null;
+
+        for (int i = 0; i < 40; i++)
+        {
+            String id = generator.generateId();
+            int separator = id.lastIndexOf('-');
+            assertThat(separator, is(SequentialMessageIdGenerator.PREFIX_LENGTH));
+            assertTrue(id.substring(0, separator).matches("[0-9a-zA-Z]+"));
+            assertThat(id.substring(separator + 1), is(Integer.toString(i, 36)));
+            if (prefix != null)
+            {
+                assertThat(id.substring(0, separator), is(prefix));
+            }
+            prefix = id.substring(0, separator);
+        }
+    }
+
+    // Tests_SRS_SEQUENTIALMESSAGEIDGENERATOR_21_002: [The constructor shall draw a prefix of PREFIX_LENGTH alphanumeric characters from the random source.]
+    @Test
+    public void generatorsHaveDistinctPrefixes()
+    {
+        assertThat(new SequentialMessageIdGenerator().generateId(),
+                is(not(new SequentialMessageIdGenerator().generateId())));
+    }
+}
@@ -0,0 +1,212 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.auth;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasToken;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenManager;
+import mockit.Deencapsulation;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import java.net.URISyntaxException;
+import java.util.HashSet;
+import java.util.Set;
+
+/** Unit tests for IotHubSasTokenManager. */
+public class IotHubSasTokenManagerTest
+{
+    private static final String IOTHUB_HOSTNAME = "test-iothub.azure-devices.net";
+    private static final String DEVICE_ID = "test-device-id";
+    private static final String DEVICE_KEY = "dGVzdC1kZXZpY2Uta2V5LXZhbHVlLTAxMjM0NTY3ODk=";
+
+    private static long expiryOf(String token)
+    {
+        int start = token.indexOf("se=") + 3;
+        int end = token.indexOf('&', start);
+        return Long.parseLong(token.substring(start, end));
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_001: [If the config is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullConfig()
+    {
+        new IotHubSasTokenManager(null);
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_003: [If the config has no device key, the function shall return the token built by IotHubSasToken from the config.]
+    @Test
+    public void getSasTokenReturnsSharedAccessTokenFromConfig() throws URISyntaxException
+    {
+        final String sharedAccessToken = "SharedAccessSignature sr=test-resource&sig=test-sig&se=1000";
+        DeviceClientConfig config = new DeviceClientConfig(IOTHUB_HOSTNAME, DEVICE_ID, null, sharedAccessToken);
+
+        String token = config.getSasTokenManager().getSasToken();
+
+        assertThat(token, is(sharedAccessToken));
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_003: [If the config has no device key, the function shall return the token built by IotHubSasToken from the config.]
+    @Test
+    public void getSasTokenReturnsNullWithoutCredentials() throws URISyntaxException
+    {
+        DeviceClientConfig config = new DeviceClientConfig(IOTHUB_HOSTNAME, DEVICE_ID, null, null);
+
+        assertThat(config.getSasTokenManager().getSasToken(), is(nullValue()));
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_005: [Otherwise, the function shall sign a new token valid for tokenValidSecs from the config, cache it and return it.]
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_006: [The function shall sign the token with an HMAC-SHA256 engine that is keyed once per thread.]
+    @Test
+    public void getSasTokenMatchesIotHubSasToken() throws URISyntaxException
+    {
+        DeviceClientConfig config = new DeviceClientConfig(IOTHUB_HOSTNAME, DEVICE_ID, DEVICE_KEY, null);
+
+        String token = config.getSasTokenManager().getSasToken();
+
+        long expiryTime = expiryOf(token);
+        long nowSecs = System.currentTimeMillis() / 1000l;
+        assertTrue(expiryTime > nowSecs + config.getTokenValidSecs() - 5);
+        assertTrue(expiryTime <= nowSecs + config.getTokenValidSecs() + 1);
+        assertThat(token, is(new IotHubSasToken(config, expiryTime).toString()));
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_004: [If a token was cached, its renewal time has not passed and the token validity in the config is unchanged, the function shall return the cached token.]
+    @Test
+    public void getSasTokenReturnsCachedToken() throws URISyntaxException
+    {
+        DeviceClientConfig config = new DeviceClientConfig(IOTHUB_HOSTNAME, DEVICE_ID, DEVICE_KEY, null);
+        IotHubSasTokenManager manager = config.getSasTokenManager();
+
+        String first = manager.getSasToken();
+        String second = manager.getSasToken();
+
+        assertThat(second, is(sameInstance(first)));
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_004: [If a token was cached, its renewal time has not passed and the token validity in the config is unchanged, the function shall return the cached token.]
+    @Test
+    public void getSasTokenRenewsWhenTokenValidityChanges() throws URISyntaxException
+    {
+        DeviceClientConfig config = new DeviceClientConfig(IOTHUB_HOSTNAME, DEVICE_ID, DEVICE_KEY, null);
+        IotHubSasTokenManager manager = config.getSasTokenManager();
+        String first = manager.getSasToken();
+
+        config.setTokenValidSecs(60);
+        String second = manager.getSasToken();
+
+        assertThat(second, is(not(first)));
+        assertTrue(expiryOf(second) <= System.currentTimeMillis() / 1000l + 61);
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_007: [The cached token shall be renewed once the renewal fraction of tokenValidSecs has passed.]
+    @Test
+    public void getSasTokenRenewsAheadOfExpiry() throws URISyntaxException, InterruptedException
+    {
+        DeviceClientConfig config = new DeviceClientConfig(IOTHUB_HOSTNAME, DEVICE_ID, DEVICE_KEY, null);
+        config.setTokenValidSecs(1);
+        IotHubSasTokenManager manager = config.getSasTokenManager();
+        manager.setRenewalFraction(0.2);
+
+        String first = manager.getSasToken();
+        Thread.sleep(300);
+        String second = manager.getSasToken();
+
+        assertThat(second, is(not(sameInstance(first))));
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_006: [The function shall sign the token with an HMAC-SHA256 engine that is keyed once per thread.]
+    @Test
+    public void getSasTokenKeysHmacOncePerThread() throws URISyntaxException, InterruptedException
+    {
+        DeviceClientConfig config = new DeviceClientConfig(IOTHUB_HOSTNAME, DEVICE_ID, DEVICE_KEY, null);
+        final IotHubSasTokenManager manager = config.getSasTokenManager();
+        final ThreadLocal<Mac> hMacSha256 = Deencapsulation.getField(manager, "hMacSha256");
+        final Set<Mac> engines = new HashSet<>();
+
+        manager.getSasToken();
+        engines.add(hMacSha256.get());
+        manager.setRenewalFraction(1);
+        manager.getSasToken();
+        engines.add(hMacSha256.get());
+        Thread other = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                manager.setRenewalFraction(1);
+                manager.getSasToken();
+                synchronized (engines)
+                {
+                    engines.add(hMacSha256.get());
+                }
+            }
+        };
+        other.start();
+        other.join();
+
+        assertThat(engines.size(), is(2));
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_008: [If the renewalFraction is not greater than 0 or is greater than 1, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setRenewalFractionRejectsZero() throws URISyntaxException
+    {
+        DeviceClientConfig config = new DeviceClientConfig(IOTHUB_HOSTNAME, DEVICE_ID, DEVICE_KEY, null);
+
+        config.getSasTokenManager().setRenewalFraction(0);
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_008: [If the renewalFraction is not greater than 0 or is greater than 1, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void setRenewalFractionRejectsGreaterThanOne() throws URISyntaxException
+    {
+        DeviceClientConfig config = new DeviceClientConfig(IOTHUB_HOSTNAME, DEVICE_ID, DEVICE_KEY, null);
+
+        config.getSasTokenManager().setRenewalFraction(1.5);
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_009: [The function shall save the renewalFraction and drop the cached token.]
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_010: [The function shall return the renewal fraction, which defaults to 0.75.]
+    @Test
+    public void setRenewalFractionSavesFractionAndDropsCachedToken() throws URISyntaxException
+    {
+        DeviceClientConfig config = new DeviceClientConfig(IOTHUB_HOSTNAME, DEVICE_ID, DEVICE_KEY, null);
+        IotHubSasTokenManager manager = config.getSasTokenManager();
+        assertThat(manager.getRenewalFraction(), is(IotHubSasTokenManager.DEFAULT_RENEWAL_FRACTION));
+        String first = manager.getSasToken();
+
+        manager.setRenewalFraction(0.5);
+
+        assertThat(manager.getRenewalFraction(), is(0.5));
+        assertThat(manager.getSasToken(), is(not(sameInstance(first))));
+    }
+
+    // Tests_SRS_IOTHUBSASTOKENMANAGER_21_002: [The constructor shall save the config, and shall not read from it until the first token is requested.]
+    @Test
+    public void constructorDoesNotReadConfig(@Mocked final DeviceClientConfig mockConfig)
+    {
+        IotHubSasTokenManager manager = new IotHubSasTokenManager(mockConfig);
+
+        assertThat(Deencapsulation.getField(manager, "config"), is((Object) mockConfig));
+        new Verifications()
+        {
+            {
+                mockConfig.getDeviceKey();
+                times = 0;
+                mockConfig.getTokenValidSecs();
+                times = 0;
+            }
+        };
+    }
+}
@@ -12,6 +12,8 @@ import com.microsoft.azure.sdk.iot.device.auth.SignatureHelper;
 
 import org.junit.Test;
 
+import javax.crypto.Mac;
+
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -121,4 +123,21 @@ public class SignatureHelperTest
         final String expectedWebSafeSig = "m+m";
         assertThat(testWebSafeSig, is(expectedWebSafeSig));
     }
+    // Tests_SRS_SIGNATUREHELPER_21_011: [The function shall return an HMAC-SHA256 engine initialized with the device key as the secret.]
+    // Tests_SRS_SIGNATUREHELPER_21_012: [The function shall encrypt the signature using the given HMAC-SHA256 engine.]
+    @Test
+    public void keyedHmacSha256MatchesAndIsReusable()
+    {
+        final byte[] testSig = "what do ya want for nothing?".getBytes(UTF8);
+        final byte[] deviceKey = "Jefe".getBytes(UTF8);
+
+        Mac hMacSha256 = SignatureHelper.initHmacSha256(deviceKey);
+        byte[] firstEncryptedSig = SignatureHelper.encryptSignatureHmacSha256(testSig, hMacSha256);
+        byte[] secondEncryptedSig = SignatureHelper.encryptSignatureHmacSha256(testSig, hMacSha256);
+
+        final byte[] expectedEncryptedSig =
+                SignatureHelper.encryptSignatureHmacSha256(testSig, deviceKey);
+        assertThat(firstEncryptedSig, is(expectedEncryptedSig));
+        assertThat(secondEncryptedSig, is(expectedEncryptedSig));
+    }
 }
@@ -9,11 +9,14 @@ import static org.hamcrest.CoreMatchers.is;
 import com.microsoft.azure.sdk.iot.device.auth.SignatureHelper;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import mockit.VerificationsInOrder;
 import org.junit.Test;
 
 import com.microsoft.azure.sdk.iot.device.auth.Signature;
 
+import javax.crypto.Mac;
+
 /** Unit tests for Signature. */
 public class SignatureTest
 {
@@ -91,4 +94,31 @@ public class SignatureTest
         final String expectedSigStr = sigStr;
         assertThat(testSigStr, is(expectedSigStr));
     }
+    // Tests_SRS_SIGNATURE_21_006: [The signature shall be computed as encodeSignatureWebSafe(encodeSignatureUtf8(encodeSignatureBase64(encryptSignatureHmacSha256(buildRawSignature(resourceUri, expiryTime), hMacSha256)))), without decoding the device key.]
+    @Test
+    public void signatureWithKeyedHmacComputedInOrder(@Mocked final Mac mockMac)
+    {
+        final String resourceUri = "test-resource-uri";
+        final long expiryTime = 101l;
+
+        new Signature(resourceUri, expiryTime, mockMac);
+
+        new VerificationsInOrder()
+        {
+            {
+                SignatureHelper.buildRawSignature(anyString, anyLong);
+                SignatureHelper.encryptSignatureHmacSha256((byte[]) any, mockMac);
+                SignatureHelper.encodeSignatureBase64((byte[]) any);
+                SignatureHelper.encodeSignatureUtf8((byte[]) any);
+                SignatureHelper.encodeSignatureWebSafe(anyString);
+            }
+        };
+        new Verifications()
+        {
+            {
+                SignatureHelper.decodeDeviceKeyBase64(anyString);
+                times = 0;
+            }
+        };
+    }
 }
@@ -0,0 +1,188 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubEventDrivenReceiveTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsTransport;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/** Unit tests for IotHubEventDrivenReceiveTask. */
+public class IotHubEventDrivenReceiveTaskTest
+{
+    @Mocked
+    AmqpsTransport mockTransport;
+
+    @Mocked
+    Executor mockExecutor;
+
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_001: [If the transport, the receive signal or the executor is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullExecutor()
+    {
+        new IotHubEventDrivenReceiveTask(mockTransport, new IotHubSendSignal(), null);
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_001: [If the transport, the receive signal or the executor is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullReceiveSignal()
+    {
+        new IotHubEventDrivenReceiveTask(mockTransport, null, mockExecutor);
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_003: [The function shall register a listener on the receive signal that wakes up the task.]
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_004: [The function shall hand a first pass to the executor.]
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_007: [Otherwise, waking up the task shall hand a pass to the executor, unless one is already waiting to run.]
+    @Test
+    public void startHandsOnePassUntilItRuns()
+    {
+        IotHubSendSignal receiveSignal = new IotHubSendSignal();
+        final IotHubEventDrivenReceiveTask task = new IotHubEventDrivenReceiveTask(mockTransport, receiveSignal, mockExecutor);
+
+        task.start();
+        receiveSignal.signal();
+        receiveSignal.signal();
+
+        new Verifications()
+        {
+            {
+                mockExecutor.execute(task);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_002: [The constructor shall save the transport, the receive signal and the executor.]
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_010: [The function shall handle a message received by the transport, invoke the message callback if one exists, and return one of COMPLETE, ABANDON, or REJECT to the IoT Hub.]
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_013: [Otherwise, the function shall not hand another pass to the executor until the receive signal is raised.]
+    @Test
+    public void runHandlesOneMessageAndWaitsForSignal() throws IOException
+    {
+        IotHubSendSignal receiveSignal = new IotHubSendSignal();
+        final IotHubEventDrivenReceiveTask task = new IotHubEventDrivenReceiveTask(mockTransport, receiveSignal, mockExecutor);
+
+        task.start();
+        task.run();
+
+        new Verifications()
+        {
+            {
+                mockTransport.handleMessage();
+                times = 1;
+                mockExecutor.execute(task);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_006: [If a pass is running, waking up the task shall run another pass once it completes.]
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_012: [If the receive signal was raised during the pass, the function shall hand another pass to the executor.]
+    @Test
+    public void signalDuringPassHandsAnotherPassWhenItCompletes() throws IOException
+    {
+        final IotHubSendSignal receiveSignal = new IotHubSendSignal();
+        final IotHubEventDrivenReceiveTask task = new IotHubEventDrivenReceiveTask(mockTransport, receiveSignal, mockExecutor);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.handleMessage();
+                result = new mockit.Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    void handleMessage()
+                    {
+                        receiveSignal.signal();
+                    }
+                };
+            }
+        };
+
+        task.start();
+        task.run();
+
+        new Verifications()
+        {
+            {
+                mockExecutor.execute(task);
+                times = 2;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_011: [The function shall not crash because of any error or exception thrown by the transport.]
+    @Test
+    public void runDoesNotCrashIfTransportThrows() throws IOException
+    {
+        IotHubEventDrivenReceiveTask task = new IotHubEventDrivenReceiveTask(mockTransport, new IotHubSendSignal(), mockExecutor);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.handleMessage();
+                result = new IOException();
+            }
+        };
+
+        task.run();
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_005: [If the task is stopped, waking it up shall do nothing.]
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_008: [If the task is stopped or another pass is running, the function shall return without handling a message.]
+    // Tests_SRS_IOTHUBEVENTDRIVENRECEIVETASK_21_014: [The function shall mark the task as stopped and remove its listener from the receive signal.]
+    @Test
+    public void stopIgnoresLaterSignals() throws IOException
+    {
+        IotHubSendSignal receiveSignal = new IotHubSendSignal();
+        final IotHubEventDrivenReceiveTask task = new IotHubEventDrivenReceiveTask(mockTransport, receiveSignal, mockExecutor);
+
+        task.start();
+        task.stop();
+        receiveSignal.signal();
+        task.run();
+
+        new Verifications()
+        {
+            {
+                mockExecutor.execute(task);
+                times = 1;
+                mockTransport.handleMessage();
+                times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void executorRefusingPassStopsTask() throws IOException
+    {
+        IotHubSendSignal receiveSignal = new IotHubSendSignal();
+        final IotHubEventDrivenReceiveTask task = new IotHubEventDrivenReceiveTask(mockTransport, receiveSignal, mockExecutor);
+        new NonStrictExpectations()
+        {
+            {
+                mockExecutor.execute((Runnable) any);
+                result = new RejectedExecutionException();
+            }
+        };
+
+        task.start();
+        receiveSignal.signal();
+        task.run();
+
+        new Verifications()
+        {
+            {
+                mockExecutor.execute(task);
+                times = 1;
+                mockTransport.handleMessage();
+                times = 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,185 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubEventDrivenSendTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsTransport;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/** Unit tests for IotHubEventDrivenSendTask. */
+public class IotHubEventDrivenSendTaskTest
+{
+    @Mocked
+    AmqpsTransport mockTransport;
+
+    @Mocked
+    IotHubSendSignal mockSignal;
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_21_001: [If the transport or the send signal is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullTransport()
+    {
+        new IotHubEventDrivenSendTask(null, mockSignal, 1000);
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_21_001: [If the transport or the send signal is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullSignal()
+    {
+        new IotHubEventDrivenSendTask(mockTransport, null, 1000);
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_21_002: [If the retry period is not positive, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNonPositiveRetryPeriod()
+    {
+        new IotHubEventDrivenSendTask(mockTransport, mockSignal, 0);
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_21_003: [The constructor shall save the transport, the send signal and the retry period.]
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_21_004: [The function shall send all messages on the transport queue.]
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_21_005: [The function shall invoke all callbacks on the transport's callback queue.]
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_21_007: [If the transport is empty, the function shall park until the send signal is raised.]
+    @Test
+    public void runDrainsTransportThenParksUntilSignalled() throws IOException, InterruptedException
+    {
+        final IotHubEventDrivenSendTask task = new IotHubEventDrivenSendTask(mockTransport, mockSignal, 1000);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = true;
+                mockSignal.await(anyLong);
+                result = new mockit.Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    boolean await(long timeoutMillis)
+                    {
+                        task.stop();
+                        return true;
+                    }
+                };
+            }
+        };
+
+        task.run();
+
+        new Verifications()
+        {
+            {
+                mockTransport.sendMessages();
+                times = 1;
+                mockTransport.invokeCallbacks();
+                times = 1;
+                mockSignal.await(0);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_21_008: [If the transport is not empty, the function shall wait until the send signal is raised or the retry period expires.]
+    @Test
+    public void runWaitsForRetryPeriodIfTransportIsNotEmpty() throws IOException, InterruptedException
+    {
+        final long retryPeriodMillis = 250;
+        final IotHubEventDrivenSendTask task = new IotHubEventDrivenSendTask(mockTransport, mockSignal, retryPeriodMillis);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = false;
+                mockSignal.await(anyLong);
+                result = new mockit.Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    boolean await(long timeoutMillis)
+                    {
+                        task.stop();
+                        return false;
+                    }
+                };
+            }
+        };
+
+        task.run();
+
+        new Verifications()
+        {
+            {
+                mockSignal.await(retryPeriodMillis);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_21_006: [The function shall not crash because of any error or exception thrown by the transport.]
+    @Test
+    public void runDoesNotCrashFromThrowable() throws IOException, InterruptedException
+    {
+        final IotHubEventDrivenSendTask task = new IotHubEventDrivenSendTask(mockTransport, mockSignal, 1000);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.sendMessages();
+                result = new IOException("Test that send does not crash.");
+                mockSignal.await(anyLong);
+                result = new mockit.Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    boolean await(long timeoutMillis)
+                    {
+                        task.stop();
+                        return true;
+                    }
+                };
+            }
+        };
+
+        task.run();
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_21_009: [If the thread is interrupted while waiting, the function shall return.]
+    @Test
+    public void runReturnsIfInterrupted() throws IOException, InterruptedException
+    {
+        IotHubEventDrivenSendTask task = new IotHubEventDrivenSendTask(mockTransport, mockSignal, 1000);
+        new NonStrictExpectations()
+        {
+            {
+                mockSignal.await(anyLong);
+                result = new InterruptedException();
+            }
+        };
+
+        task.run();
+
+        // clear the interrupted flag set by the task.
+        Thread.interrupted();
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_21_010: [The function shall mark the task as stopped and raise the send signal so that a parked task returns.]
+    @Test
+    public void stopRaisesSignalAndPreventsFurtherSends() throws IOException
+    {
+        IotHubEventDrivenSendTask task = new IotHubEventDrivenSendTask(mockTransport, mockSignal, 1000);
+        task.stop();
+        task.run();
+
+        new Verifications()
+        {
+            {
+                mockSignal.signal();
+                times = 1;
+                mockTransport.sendMessages();
+                times = 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,136 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubExpiryWheel;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for IotHubExpiryWheel. */
+public class IotHubExpiryWheelTest
+{
+    protected static final long TICK = 10;
+    protected static final int SLOTS = 8;
+
+    // Tests_SRS_IOTHUBEXPIRYWHEEL_21_001: [If the tick length or the number of slots is not positive, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNonPositiveTick()
+    {
+        new IotHubExpiryWheel<String>(0, SLOTS);
+    }
+
+    // Tests_SRS_IOTHUBEXPIRYWHEEL_21_001: [If the tick length or the number of slots is not positive, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNonPositiveSlotCount()
+    {
+        new IotHubExpiryWheel<String>(TICK, 0);
+    }
+
+    // Tests_SRS_IOTHUBEXPIRYWHEEL_21_002: [The constructor shall create a wheel with the given number of empty slots.]
+    // Tests_SRS_IOTHUBEXPIRYWHEEL_21_008: [The function shall return the number of entries indexed.]
+    @Test
+    public void constructorCreatesEmptyWheel()
+    {
+        IotHubExpiryWheel<String> wheel = new IotHubExpiryWheel<>(TICK, SLOTS);
+
+        assertThat(wheel.size(), is(0));
+        assertTrue(wheel.advance(1000).isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBEXPIRYWHEEL_21_003: [If the entry is null, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void addRejectsNullEntry()
+    {
+        new IotHubExpiryWheel<String>(TICK, SLOTS).add(null, 100);
+    }
+
+    // Tests_SRS_IOTHUBEXPIRYWHEEL_21_004: [If the expiry time is 0, the function shall not index the entry and return false.]
+    @Test
+    public void addIgnoresEntryThatNeverExpires()
+    {
+        IotHubExpiryWheel<String> wheel = new IotHubExpiryWheel<>(TICK, SLOTS);
+
+        assertFalse(wheel.add("forever", 0));
+        assertThat(wheel.size(), is(0));
+    }
+
+    // Tests_SRS_IOTHUBEXPIRYWHEEL_21_005: [The function shall add the entry to the slot of the tick it expires in, or of the next tick to be visited if that tick was already visited, and return true.]
+    // Tests_SRS_IOTHUBEXPIRYWHEEL_21_007: [The function shall visit the slots of the ticks elapsed since the last call, each slot at most once, and remove and return the entries that expired in a visited tick or before.]
+    @Test
+    public void advanceExpiresEntriesOnceTheirTickElapsed()
+    {
+        IotHubExpiryWheel<String> wheel = new IotHubExpiryWheel<>(TICK, SLOTS);
+        assertTrue(wheel.add("early", 1005));
+        assertTrue(wheel.add("late", 1025));
+
+        assertTrue(wheel.advance(1005).isEmpty());
+        assertThat(wheel.advance(1010).toString(), is("[early]"));
+        assertTrue(wheel.advance(1029).isEmpty());
+        assertThat(wheel.advance(1030).toString(), is("[late]"));
+        assertThat(wheel.size(), is(0));
+    }
+
+    // Tests_SRS_IOTHUBEXPIRYWHEEL_21_007: [The function shall visit the slots of the ticks elapsed since the last call, each slot at most once, and remove and return the entries that expired in a visited tick or before.]
+    @Test
+    public void advanceKeepsEntriesOfLaterRevolutions()
+    {
+        IotHubExpiryWheel<String> wheel = new IotHubExpiryWheel<>(TICK, SLOTS);
+        wheel.advance(1000);
+        wheel.add("next", 1015);
+        wheel.add("later", 1015 + TICK * SLOTS);
+
+        assertThat(wheel.advance(1020).toString(), is("[next]"));
+        assertTrue(wheel.advance(1020 + TICK * SLOTS - 1).isEmpty());
+        assertThat(wheel.advance(1020 + TICK * SLOTS).toString(), is("[later]"));
+    }
+
+    // Tests_SRS_IOTHUBEXPIRYWHEEL_21_007: [The function shall visit the slots of the ticks elapsed since the last call, each slot at most once, and remove and return the entries that expired in a visited tick or before.]
+    @Test
+    public void advanceAfterLongPauseExpiresEveryDueEntry()
+    {
+        IotHubExpiryWheel<String> wheel = new IotHubExpiryWheel<>(TICK, SLOTS);
+        wheel.advance(1000);
+        for (int i = 0; i < 3 * SLOTS; i++)
+        {
+            wheel.add("e" + i, 1000 + i * TICK);
+        }
+        wheel.add("pending", 100000);
+
+        List<String> expired = wheel.advance(50000);
+
+        assertThat(expired.size(), is(3 * SLOTS));
+        assertThat(wheel.size(), is(1));
+    }
+
+    // Tests_SRS_IOTHUBEXPIRYWHEEL_21_005: [The function shall add the entry to the slot of the tick it expires in, or of the next tick to be visited if that tick was already visited, and return true.]
+    @Test
+    public void addOfAlreadyExpiredEntryExpiresOnNextAdvance()
+    {
+        IotHubExpiryWheel<String> wheel = new IotHubExpiryWheel<>(TICK, SLOTS);
+        wheel.advance(1000);
+
+        wheel.add("stale", 500);
+
+        assertThat(wheel.advance(1010).toString(), is("[stale]"));
+    }
+
+    // Tests_SRS_IOTHUBEXPIRYWHEEL_21_006: [The function shall remove the entry from its slot, and return false if it is not indexed.]
+    @Test
+    public void removeStopsIndexingEntry()
+    {
+        IotHubExpiryWheel<String> wheel = new IotHubExpiryWheel<>(TICK, SLOTS);
+        wheel.add("sent", 1005);
+
+        assertTrue(wheel.remove("sent"));
+        assertFalse(wheel.remove("sent"));
+        assertTrue(wheel.advance(2000).isEmpty());
+        assertThat(wheel.size(), is(0));
+    }
+}
@@ -11,8 +11,10 @@ import static org.hamcrest.Matchers.isIn;
 import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
 
 import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessagePriority;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
 import mockit.Mocked;
+import mockit.NonStrictExpectations;
 import org.junit.Test;
 
 import java.util.HashMap;
@@ -77,4 +79,44 @@ public class IotHubOutboundPacketTest
                 context.entrySet();
         assertThat(testEntrySet, everyItem(isIn(expectedEntrySet)));
     }
+
+    // Tests_SRS_IOTHUBOUTBOUNDPACKET_21_001: [The constructor shall save the priority of the message, or NORMAL if the message is null.]
+    // Tests_SRS_IOTHUBOUTBOUNDPACKET_21_002: [The function shall return the priority saved by the constructor.]
+    @Test
+    public void getPriorityReturnsMessagePriority()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getPriority();
+                result = MessagePriority.LOW;
+            }
+        };
+
+        IotHubOutboundPacket packet = new IotHubOutboundPacket(mockMsg, mockCallback, null);
+        IotHubOutboundPacket noMessage = new IotHubOutboundPacket(null, mockCallback, null);
+
+        assertThat(packet.getPriority(), is(MessagePriority.LOW));
+        assertThat(noMessage.getPriority(), is(MessagePriority.NORMAL));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDPACKET_21_003: [The constructor shall save the expiry time of the message, or 0 if the message is null.]
+    // Tests_SRS_IOTHUBOUTBOUNDPACKET_21_004: [The function shall return the expiry time saved by the constructor.]
+    @Test
+    public void getExpiryTimeReturnsMessageExpiryTime()
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getExpiryTime();
+                result = 1234L;
+            }
+        };
+
+        IotHubOutboundPacket packet = new IotHubOutboundPacket(mockMsg, mockCallback, null);
+        IotHubOutboundPacket noMessage = new IotHubOutboundPacket(null, mockCallback, null);
+
+        assertThat(packet.getExpiryTime(), is(1234L));
+        assertThat(noMessage.getExpiryTime(), is(0L));
+    }
 }
@@ -0,0 +1,237 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessagePriority;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundQueue;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for IotHubOutboundQueue. */
+public class IotHubOutboundQueueTest
+{
+    protected static IotHubOutboundPacket newPacket(MessagePriority priority, String id)
+    {
+        Message message = new Message(new byte[0]);
+        message.setMessageId(id);
+        message.setPriority(priority);
+        return new IotHubOutboundPacket(message, null, null);
+    }
+
+    protected static String drain(IotHubOutboundQueue queue)
+    {
+        StringBuilder ids = new StringBuilder();
+        IotHubOutboundPacket packet;
+        while ((packet = queue.poll()) != null)
+        {
+            ids.append(packet.getMessage().getMessageId());
+        }
+        return ids.toString();
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_001: [If any weight is not positive, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNonPositiveWeight()
+    {
+        new IotHubOutboundQueue(1, 0, 1);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_002: [The constructor shall create an empty lane for each message priority.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_005: [If the queue is empty, the function shall return null.]
+    @Test
+    public void constructorCreatesEmptyQueue()
+    {
+        IotHubOutboundQueue queue = new IotHubOutboundQueue();
+
+        assertTrue(queue.isEmpty());
+        assertThat(queue.poll(), is(nullValue()));
+        assertThat(queue.peek(), is(nullValue()));
+        assertThat(queue.pollLowestPriority(), is(nullValue()));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_003: [If the packet is null, the function shall throw a NullPointerException.]
+    @Test(expected = NullPointerException.class)
+    public void offerRejectsNullPacket()
+    {
+        new IotHubOutboundQueue().offer(null);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_004: [The function shall add the packet to the tail of the lane of its priority, or of the NORMAL lane if it has none, and return true.]
+    @Test
+    public void offerAddsPacketWithoutPriorityToNormalLane()
+    {
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(1, 1, 1);
+        IotHubOutboundPacket noMessage = new IotHubOutboundPacket(null, null, null);
+        queue.add(newPacket(MessagePriority.LOW, "l"));
+        queue.add(noMessage);
+
+        assertThat(queue.pollLowestPriority().getMessage().getMessageId(), is("l"));
+        assertThat(queue.pollLowestPriority(), is(noMessage));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_006: [The function shall remove and return the head of the current lane, moving to the next non-empty lane, in priority order, once the current lane is empty or has handed out as many packets as its weight in this round.]
+    @Test
+    public void pollDrainsLanesInWeightedRoundRobin()
+    {
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(2, 1, 1);
+        for (int i = 0; i < 3; i++)
+        {
+            queue.add(newPacket(MessagePriority.LOW, "l"));
+            queue.add(newPacket(MessagePriority.NORMAL, "n"));
+            queue.add(newPacket(MessagePriority.HIGH, "h"));
+        }
+
+        assertThat(drain(queue), is("hhnlhnlnl"));
+        assertTrue(queue.isEmpty());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_006: [The function shall remove and return the head of the current lane, moving to the next non-empty lane, in priority order, once the current lane is empty or has handed out as many packets as its weight in this round.]
+    @Test
+    public void pollBoundsHighPriorityLatencyBehindBacklog()
+    {
+        IotHubOutboundQueue queue = new IotHubOutboundQueue();
+        for (int i = 0; i < 1000; i++)
+        {
+            queue.add(newPacket(MessagePriority.LOW, "l"));
+            queue.add(newPacket(MessagePriority.NORMAL, "n"));
+        }
+        for (int i = 0; i < 5; i++)
+        {
+            queue.poll();
+        }
+
+        queue.add(newPacket(MessagePriority.HIGH, "h"));
+
+        int polled = 1;
+        while (!"h".equals(queue.poll().getMessage().getMessageId()))
+        {
+            polled++;
+        }
+        assertTrue(polled <= 1 + IotHubOutboundQueue.DEFAULT_NORMAL_WEIGHT + IotHubOutboundQueue.DEFAULT_LOW_WEIGHT);
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_007: [The function shall return, without removing it, the packet the next poll would return, or null if the queue is empty.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_008: [If the packet is the one the next poll would return, the function shall poll it.]
+    @Test
+    public void peekAndRemoveFollowDrainOrder()
+    {
+        IotHubOutboundQueue queue = new IotHubOutboundQueue(1, 1, 1);
+        queue.add(newPacket(MessagePriority.HIGH, "h"));
+        queue.add(newPacket(MessagePriority.HIGH, "h"));
+        queue.add(newPacket(MessagePriority.LOW, "l"));
+
+        StringBuilder ids = new StringBuilder();
+        while (!queue.isEmpty())
+        {
+            IotHubOutboundPacket packet = queue.peek();
+            assertTrue(queue.remove(packet));
+            ids.append(packet.getMessage().getMessageId());
+        }
+
+        assertThat(ids.toString(), is("hlh"));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_009: [Otherwise, the function shall remove the packet from its lane, and return false if it is not in the queue.]
+    @Test
+    public void removeTakesPacketOutOfItsLane()
+    {
+        IotHubOutboundQueue queue = new IotHubOutboundQueue();
+        IotHubOutboundPacket low = newPacket(MessagePriority.LOW, "l");
+        queue.add(newPacket(MessagePriority.HIGH, "h"));
+        queue.add(low);
+
+        assertTrue(queue.remove(low));
+        assertFalse(queue.remove(low));
+        assertThat(queue.size(), is(1));
+        assertThat(drain(queue), is("h"));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_010: [The function shall remove and return the head of the lowest priority non-empty lane, or null if the queue is empty.]
+    @Test
+    public void pollLowestPriorityTakesOldestOfLowestLane()
+    {
+        IotHubOutboundQueue queue = new IotHubOutboundQueue();
+        queue.add(newPacket(MessagePriority.HIGH, "h"));
+        queue.add(newPacket(MessagePriority.NORMAL, "n1"));
+        queue.add(newPacket(MessagePriority.NORMAL, "n2"));
+
+        assertThat(queue.pollLowestPriority().getMessage().getMessageId(), is("n1"));
+        assertThat(queue.size(), is(2));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_012: [If the packet has an expiry time, the function shall index it by its expiry time.]
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_013: [The function shall remove and return the packets whose expiry time passed, as found by the expiry index.]
+    @Test
+    public void pollExpiredRemovesExpiredPackets()
+    {
+        IotHubOutboundQueue queue = new IotHubOutboundQueue();
+        Message stale = new Message(new byte[0]);
+        stale.setExpiryTime(-1000);
+        IotHubOutboundPacket stalePacket = new IotHubOutboundPacket(stale, null, null);
+        Message fresh = new Message(new byte[0]);
+        fresh.setExpiryTime(60000);
+        queue.add(newPacket(MessagePriority.LOW, "l"));
+        queue.add(stalePacket);
+        queue.add(new IotHubOutboundPacket(fresh, null, null));
+
+        List<IotHubOutboundPacket> expired = queue.pollExpired(System.currentTimeMillis());
+
+        assertThat(expired.size(), is(1));
+        assertThat(expired.get(0), is(stalePacket));
+        assertThat(queue.size(), is(2));
+        assertFalse(queue.contains(stalePacket));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_013: [The function shall remove and return the packets whose expiry time passed, as found by the expiry index.]
+    @Test
+    public void pollExpiredIgnoresPacketsAlreadyPolled()
+    {
+        IotHubOutboundQueue queue = new IotHubOutboundQueue();
+        Message stale = new Message(new byte[0]);
+        stale.setExpiryTime(-1000);
+        queue.add(new IotHubOutboundPacket(stale, null, null));
+        queue.poll();
+
+        assertTrue(queue.pollExpired(System.currentTimeMillis()).isEmpty());
+        assertThat(queue.size(), is(0));
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_011: [The function shall return an unmodifiable iterator over a snapshot of the lanes, from the highest to the lowest priority.]
+    @Test
+    public void iteratorReturnsSnapshotInPriorityOrder()
+    {
+        IotHubOutboundQueue queue = new IotHubOutboundQueue();
+        queue.add(newPacket(MessagePriority.LOW, "l"));
+        queue.add(newPacket(MessagePriority.HIGH, "h"));
+
+        Iterator<IotHubOutboundPacket> iterator = queue.iterator();
+        queue.clear();
+
+        assertThat(iterator.next().getMessage().getMessageId(), is("h"));
+        assertThat(iterator.next().getMessage().getMessageId(), is("l"));
+        assertFalse(iterator.hasNext());
+    }
+
+    // Tests_SRS_IOTHUBOUTBOUNDQUEUE_21_011: [The function shall return an unmodifiable iterator over a snapshot of the lanes, from the highest to the lowest priority.]
+    @Test(expected = UnsupportedOperationException.class)
+    public void iteratorRejectsRemoval()
+    {
+        IotHubOutboundQueue queue = new IotHubOutboundQueue();
+        queue.add(newPacket(MessagePriority.LOW, "l"));
+
+        Iterator<IotHubOutboundPacket> iterator = queue.iterator();
+        iterator.next();
+        iterator.remove();
+    }
+}
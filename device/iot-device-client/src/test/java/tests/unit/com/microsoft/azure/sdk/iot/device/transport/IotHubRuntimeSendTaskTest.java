@@ -0,0 +1,220 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.IotHubClientRuntime;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubRuntimeSendTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsTransport;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for IotHubRuntimeSendTask. */
+public class IotHubRuntimeSendTaskTest
+{
+    @Mocked
+    AmqpsTransport mockTransport;
+
+    @Mocked
+    IotHubClientRuntime mockRuntime;
+
+    @Mocked
+    ScheduledFuture<?> mockFuture;
+
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_001: [If the transport, the send signal or the runtime is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullRuntime()
+    {
+        new IotHubRuntimeSendTask(mockTransport, new IotHubSendSignal(), 1000, null, null);
+    }
+
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_002: [If the retry period is not positive, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNonPositiveRetryPeriod()
+    {
+        new IotHubRuntimeSendTask(mockTransport, new IotHubSendSignal(), 0, null, mockRuntime);
+    }
+
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_004: [The function shall register a listener on the send signal that wakes up the task.]
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_005: [The function shall submit a first pass to the runtime.]
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_008: [Otherwise, waking up the task shall submit a pass to run on the runtime without delay, unless one is already submitted, and cancel the pass submitted after the retry period, if any.]
+    @Test
+    public void startSubmitsOnePassUntilItRuns()
+    {
+        IotHubSendSignal sendSignal = new IotHubSendSignal();
+        final IotHubRuntimeSendTask task = new IotHubRuntimeSendTask(mockTransport, sendSignal, 1000, null, mockRuntime);
+
+        task.start();
+        sendSignal.signal();
+        sendSignal.signal();
+
+        new Verifications()
+        {
+            {
+                mockRuntime.submit(task, 0);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_003: [The constructor shall save the transport, the send signal, the retry period, the drain signal and the runtime.]
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_010: [The function shall send all messages on the transport queue.]
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_011: [The function shall invoke all callbacks on the transport's callback queue.]
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_012: [If a drain signal is set and the transport is empty after the pass, the function shall raise the drain signal.]
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_016: [Otherwise, the function shall not submit another pass until the send signal is raised.]
+    @Test
+    public void runDrainsTransportAndDoesNotResubmitWhenEmpty() throws IOException, InterruptedException
+    {
+        IotHubSendSignal drainSignal = new IotHubSendSignal();
+        final IotHubRuntimeSendTask task = new IotHubRuntimeSendTask(mockTransport, new IotHubSendSignal(), 1000,
+                drainSignal, mockRuntime);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+
+        task.start();
+        task.run();
+
+        assertTrue(drainSignal.await(10));
+        new Verifications()
+        {
+            {
+                mockTransport.sendMessages();
+                times = 1;
+                mockTransport.invokeCallbacks();
+                times = 1;
+                mockRuntime.submit(task, anyLong);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_015: [Otherwise, if the transport is not empty, the function shall submit another pass to run on the runtime after the retry period.]
+    @Test
+    public void runResubmitsAfterRetryPeriodIfTransportIsNotEmpty()
+    {
+        final IotHubRuntimeSendTask task = new IotHubRuntimeSendTask(mockTransport, new IotHubSendSignal(), 1000,
+                null, mockRuntime);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = false;
+            }
+        };
+
+        task.run();
+
+        new Verifications()
+        {
+            {
+                mockRuntime.submit(task, 1000);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_007: [If a pass is running, waking up the task shall run another pass once it completes.]
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_014: [If the send signal was raised during the pass, the function shall submit another pass to run on the runtime without delay.]
+    @Test
+    public void signalDuringPassSubmitsAnotherPassWhenItCompletes() throws IOException
+    {
+        final IotHubSendSignal sendSignal = new IotHubSendSignal();
+        final IotHubRuntimeSendTask task = new IotHubRuntimeSendTask(mockTransport, sendSignal, 1000, null, mockRuntime);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.sendMessages();
+                result = new mockit.Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    void sendMessages()
+                    {
+                        sendSignal.signal();
+                    }
+                };
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+
+        task.start();
+        task.run();
+
+        new Verifications()
+        {
+            {
+                mockRuntime.submit(task, 0);
+                times = 2;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_013: [The function shall not crash because of any error or exception thrown by the transport.]
+    @Test
+    public void runDoesNotCrashIfTransportThrows() throws IOException
+    {
+        IotHubRuntimeSendTask task = new IotHubRuntimeSendTask(mockTransport, new IotHubSendSignal(), 1000,
+                null, mockRuntime);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.sendMessages();
+                result = new IllegalStateException();
+            }
+        };
+
+        task.run();
+    }
+
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_006: [If the task is stopped, waking it up shall do nothing.]
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_009: [If the task is stopped or another pass is running, the function shall return without sending.]
+    // Tests_SRS_IOTHUBRUNTIMESENDTASK_21_017: [The function shall mark the task as stopped, remove its listener from the send signal, and cancel the pass submitted after the retry period, if any.]
+    @Test
+    public void stopCancelsRetryAndIgnoresLaterSignals() throws IOException, InterruptedException
+    {
+        IotHubSendSignal sendSignal = new IotHubSendSignal();
+        final IotHubRuntimeSendTask task = new IotHubRuntimeSendTask(mockTransport, sendSignal, 1000, null, mockRuntime);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = false;
+                mockRuntime.submit((Runnable) any, anyLong);
+                result = mockFuture;
+            }
+        };
+
+        task.run();
+        task.stop();
+        sendSignal.signal();
+        task.run();
+
+        assertTrue(sendSignal.await(10));
+        assertFalse(sendSignal.await(10));
+        new Verifications()
+        {
+            {
+                mockFuture.cancel(false);
+                times = 1;
+                mockRuntime.submit(task, 0);
+                times = 0;
+                mockTransport.sendMessages();
+                times = 1;
+            }
+        };
+    }
+}
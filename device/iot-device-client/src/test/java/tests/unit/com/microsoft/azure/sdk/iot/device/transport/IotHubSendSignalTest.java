@@ -0,0 +1,107 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for IotHubSendSignal. */
+public class IotHubSendSignalTest
+{
+    // Tests_SRS_IOTHUBSENDSIGNAL_21_001: [The function shall mark the signal as raised and wake up all threads waiting on it.]
+    // Tests_SRS_IOTHUBSENDSIGNAL_21_003: [If the signal was raised since the last call, the function shall return true without waiting.]
+    @Test
+    public void awaitReturnsTrueIfSignalWasRaisedBefore() throws InterruptedException
+    {
+        IotHubSendSignal signal = new IotHubSendSignal();
+        signal.signal();
+
+        assertTrue(signal.await(0));
+    }
+
+    // Tests_SRS_IOTHUBSENDSIGNAL_21_002: [If the timeout is negative, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void awaitRejectsNegativeTimeout() throws InterruptedException
+    {
+        IotHubSendSignal signal = new IotHubSendSignal();
+
+        signal.await(-1);
+    }
+
+    // Tests_SRS_IOTHUBSENDSIGNAL_21_005: [If the timeout expires before the signal is raised, the function shall return false.]
+    @Test
+    public void awaitReturnsFalseIfTimeoutExpires() throws InterruptedException
+    {
+        IotHubSendSignal signal = new IotHubSendSignal();
+
+        assertFalse(signal.await(10));
+    }
+
+    // Tests_SRS_IOTHUBSENDSIGNAL_21_006: [The function shall clear the signal before returning true.]
+    @Test
+    public void awaitClearsSignal() throws InterruptedException
+    {
+        IotHubSendSignal signal = new IotHubSendSignal();
+        signal.signal();
+        signal.signal();
+
+        assertTrue(signal.await(10));
+        assertFalse(signal.await(10));
+    }
+
+    // Tests_SRS_IOTHUBSENDSIGNAL_21_004: [The function shall wait until the signal is raised or the timeout expires, waiting indefinitely if the timeout is 0.]
+    @Test
+    public void awaitWakesUpWhenSignalIsRaisedByAnotherThread() throws InterruptedException
+    {
+        final IotHubSendSignal signal = new IotHubSendSignal();
+        Thread signaller = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                signal.signal();
+            }
+        });
+        signaller.start();
+
+        assertTrue(signal.await(0));
+        signaller.join();
+    }
+
+    // Tests_SRS_IOTHUBSENDSIGNAL_21_007: [The function shall save the listener, replacing any previous one.]
+    // Tests_SRS_IOTHUBSENDSIGNAL_21_008: [If a listener is set, the function shall run it after releasing the signal.]
+    @Test
+    public void signalRunsListenerUntilRemoved() throws InterruptedException
+    {
+        final IotHubSendSignal signal = new IotHubSendSignal();
+        final int[] runs = new int[1];
+        signal.setListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runs[0]++;
+            }
+        });
+
+        signal.signal();
+        signal.setListener(null);
+        signal.signal();
+
+        assertEquals(1, runs[0]);
+        assertTrue(signal.await(10));
+    }
+}
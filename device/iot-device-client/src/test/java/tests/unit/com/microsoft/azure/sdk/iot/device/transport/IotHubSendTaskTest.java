@@ -3,14 +3,21 @@
 
 package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
 
+import com.microsoft.azure.sdk.iot.device.IotHubOutboundBuffer;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsTransport;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubSendTask;
+import mockit.Delegate;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Verifications;
 import org.junit.Test;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.net.URISyntaxException;
 
 /** Unit tests for IotHubSendTask. */
@@ -50,6 +57,58 @@ public class IotHubSendTaskTest
         };
     }
 
+    // Tests_SRS_IOTHUBSENDTASK_21_001: [If a drain signal is set and the transport is empty after the pass, the function shall raise the drain signal.]
+    @Test
+    public void runRaisesDrainSignalIfTransportIsEmpty(
+            @Mocked final IotHubSendSignal mockDrainSignal)
+            throws IOException, URISyntaxException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = true;
+            }
+        };
+
+        IotHubSendTask sendTask = new IotHubSendTask(mockTransport, mockDrainSignal);
+        sendTask.run();
+
+        new Verifications()
+        {
+            {
+                mockDrainSignal.signal();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBSENDTASK_21_001: [If a drain signal is set and the transport is empty after the pass, the function shall raise the drain signal.]
+    @Test
+    public void runDoesNotRaiseDrainSignalIfTransportIsNotEmpty(
+            @Mocked final IotHubSendSignal mockDrainSignal)
+            throws IOException, URISyntaxException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.isEmpty();
+                result = false;
+            }
+        };
+
+        IotHubSendTask sendTask = new IotHubSendTask(mockTransport, mockDrainSignal);
+        sendTask.run();
+
+        new Verifications()
+        {
+            {
+                mockDrainSignal.signal();
+                times = 0;
+            }
+        };
+    }
+
     // Tests_SRS_IOTHUBSENDTASK_11_005: [The function shall not crash because of an IOException thrown by the transport.]
     @Test
     public void runDoesNotCrashFromIoException()
@@ -83,4 +142,33 @@ public class IotHubSendTaskTest
         IotHubSendTask sendTask = new IotHubSendTask(mockTransport);
         sendTask.run();
     }
+
+    // Tests_SRS_IOTHUBSENDTASK_21_002: [The function shall run as a client thread of the outbound buffer.]
+    @Test
+    public void runSendsAsClientThread() throws IOException, URISyntaxException
+    {
+        final AtomicBoolean clientThread = new AtomicBoolean();
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.sendMessages();
+                result = new Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    void sendMessages()
+                    {
+                        boolean wasClientThread = IotHubOutboundBuffer.enterClientThread();
+                        IotHubOutboundBuffer.exitClientThread(wasClientThread);
+                        clientThread.set(wasClientThread);
+                    }
+                };
+            }
+        };
+
+        new IotHubSendTask(mockTransport).run();
+
+        assertThat(clientThread.get(), is(true));
+        assertThat(IotHubOutboundBuffer.enterClientThread(), is(false));
+        IotHubOutboundBuffer.exitClientThread(false);
+    }
 }
@@ -8,7 +8,7 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.transport.amqps;
 import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
 import com.microsoft.azure.sdk.iot.device.IotHubMessageResult;
 import com.microsoft.azure.sdk.iot.device.ObjectLock;
-import com.microsoft.azure.sdk.iot.device.auth.IotHubSasToken;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenManager;
 import com.microsoft.azure.sdk.iot.device.net.IotHubUri;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsIotHubConnection;
@@ -20,8 +20,10 @@ import com.microsoft.azure.sdk.iot.deps.ws.WebSocketHandler;
 
 import mockit.*;
 import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
 import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Data;
 import org.apache.qpid.proton.amqp.messaging.Source;
 import org.apache.qpid.proton.amqp.messaging.Target;
 import org.apache.qpid.proton.amqp.transport.SenderSettleMode;
@@ -34,11 +36,14 @@ import org.apache.qpid.proton.reactor.Reactor;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class AmqpsIotHubConnectionTest {
 
@@ -71,7 +76,7 @@ public class AmqpsIotHubConnectionTest {
     protected IotHubUri mockIotHubUri;
 
     @Mocked
-    protected IotHubSasToken mockToken;
+    protected IotHubSasTokenManager mockTokenManager;
 
     @Mocked
     protected Message mockProtonMessage;
@@ -79,9 +84,6 @@ public class AmqpsIotHubConnectionTest {
     @Mocked
     protected AmqpsMessage mockAmqpsMessage;
 
-    @Mocked
-    protected IotHubSasToken mockSasToken;
-
     @Mocked
     protected Sender mockSender;
 
@@ -378,7 +380,7 @@ public class AmqpsIotHubConnectionTest {
         new Verifications()
         {
             {
-                new IotHubSasToken(mockConfig, anyLong);
+                mockTokenManager.getSasToken();
                 times = 0;
             }
         };
@@ -387,6 +389,7 @@ public class AmqpsIotHubConnectionTest {
 
     // Tests_SRS_AMQPSIOTHUBCONNECTION_15_008: [The function shall create a new sasToken valid for the duration
     // specified in config to be used for the communication with IoTHub.]
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_21_005: [The function shall obtain the sasToken from the SAS token manager of the config.]
     @Test
     public void openCreatesSasToken() throws IOException, InterruptedException
     {
@@ -399,7 +402,7 @@ public class AmqpsIotHubConnectionTest {
         new Verifications()
         {
             {
-                new IotHubSasToken(mockConfig, anyLong);
+                mockTokenManager.getSasToken();
                 times = 1;
             }
         };
@@ -430,7 +433,7 @@ public class AmqpsIotHubConnectionTest {
         new Verifications()
         {
             {
-                new IotHubSasToken(mockConfig, anyLong);
+                mockTokenManager.getSasToken();
                 times = 1;
                 new IotHubReactor((Reactor)any);
                 times = 1;
@@ -665,6 +668,41 @@ public class AmqpsIotHubConnectionTest {
         };
     }
 
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_21_001: [The function shall size the byte buffer to fit the message body, plus a headroom for its properties, so that a large body is usually encoded once.]
+    @Test
+    public void sendMessageSizesEncodeBufferFromBody() throws IOException
+    {
+        baseExpectations();
+
+        new NonStrictExpectations()
+        {
+            {
+                mockProtonMessage.getBody();
+                result = new Data(new Binary(new byte[4096]));
+                mockSender.delivery((byte[]) any);
+                result = mockDelivery;
+            }
+        };
+
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig, false);
+
+        Deencapsulation.setField(connection, "state", State.OPEN);
+        Deencapsulation.setField(connection, "linkCredit", 100);
+        Deencapsulation.setField(connection, "sender", mockSender);
+
+        connection.sendMessage(mockProtonMessage);
+
+        final List<byte[]> buffers = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockProtonMessage.encode(withCapture(buffers), anyInt, anyInt);
+                times = 1;
+            }
+        };
+        assertTrue(buffers.get(0).length > 4096);
+    }
+
     // Tests_SRS_AMQPSIOTHUBCONNECTION_15_022: [If the AMQPS Connection is closed, the function shall return false.]
     @Test
     public void sendMessageReturnsFalseIfConnectionIsClosed() throws IOException
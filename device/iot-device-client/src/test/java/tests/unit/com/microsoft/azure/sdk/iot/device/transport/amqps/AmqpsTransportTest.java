@@ -6,24 +6,28 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.transport.amqps;
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsIotHubConnection;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsMessage;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsTransport;
 import mockit.*;
 import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Properties;
 import org.apache.qpid.proton.message.impl.MessageImpl;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import static org.junit.Assert.assertEquals;
@@ -336,8 +340,10 @@ public class AmqpsTransportTest
                 result = mockPacket;
                 mockPacket.getMessage();
                 result = mockMsg;
-                mockMsg.getBytes();
+                mockMsg.getBodyArray();
                 result = messageBytes;
+                mockMsg.getBodyLength();
+                result = messageBytes.length;
             }
         };
 
@@ -425,12 +431,14 @@ public class AmqpsTransportTest
                 result = mockPacket;
                 mockPacket.getMessage();
                 result = mockMsg;
-                mockMsg.getBytes();
+                mockMsg.getBodyArray();
                 result = messageBytes;
+                mockMsg.getBodyLength();
+                result = messageBytes.length;
                 new MessageImpl();
                 result = mockProtonMessage;
-                mockMsg.getProperties();
-                result = iotHubMessageProperties;
+                mockMsg.getPropertyView();
+                result = Arrays.asList(iotHubMessageProperties);
                 mockConnection.sendMessage(mockProtonMessage);
                 result = 1;
                 new ApplicationProperties(userProperties);
@@ -460,6 +468,54 @@ public class AmqpsTransportTest
         };
     }
 
+    // Tests_SRS_AMQPSTRANSPORT_21_016: [The function shall set the content encoding of the Proton message to the content encoding of the message, if any.]
+    @Test
+    public void sendMessagesSetsProtonContentEncoding(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final IotHubOutboundPacket mockPacket,
+            @Mocked final Properties mockProperties)
+            throws IOException
+    {
+        final Map<String, Object> context = new HashMap<>();
+        final byte[] messageBytes = new byte[] {1, 2};
+
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig, false);
+                result = mockConnection;
+                new IotHubOutboundPacket(mockMsg, mockCallback, context);
+                result = mockPacket;
+                mockPacket.getMessage();
+                result = mockMsg;
+                mockMsg.getBodyArray();
+                result = messageBytes;
+                mockMsg.getBodyLength();
+                result = messageBytes.length;
+                mockMsg.getContentEncoding();
+                result = "gzip";
+                new MessageImpl();
+                result = mockProtonMessage;
+                mockConnection.sendMessage(mockProtonMessage);
+                result = 1;
+            }
+        };
+
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        transport.open();
+        transport.addMessage(mockMsg, mockCallback, context);
+        transport.sendMessages();
+
+        new Verifications()
+        {
+            {
+                mockProperties.setContentEncoding(Symbol.valueOf("gzip"));
+                times = 1;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSTRANSPORT_15_015: [The function shall skip messages with null or empty body.]
     @Test
     public void sendMessagesSkipsMessagesWithEmptyBody(
@@ -478,8 +534,10 @@ public class AmqpsTransportTest
                 result = mockPacket;
                 mockPacket.getMessage();
                 result = mockMsg;
-                mockMsg.getBytes();
+                mockMsg.getBodyArray();
                 result = new byte[0];
+                mockMsg.getBodyLength();
+                result = 0;
             }
         };
 
@@ -517,8 +575,10 @@ public class AmqpsTransportTest
                 result = mockPacket;
                 mockPacket.getMessage();
                 result = mockMsg;
-                mockMsg.getBytes();
+                mockMsg.getBodyArray();
                 result = messageBytes;
+                mockMsg.getBodyLength();
+                result = messageBytes.length;
                 mockConnection.sendMessage((org.apache.qpid.proton.message.Message) any);
                 returns (1, 2);
             }
@@ -565,8 +625,10 @@ public class AmqpsTransportTest
                 result = mockPacket;
                 mockPacket.getMessage();
                 result = mockMsg;
-                mockMsg.getBytes();
+                mockMsg.getBodyArray();
                 result = messageBytes;
+                mockMsg.getBodyLength();
+                result = messageBytes.length;
                 mockConnection.sendMessage((org.apache.qpid.proton.message.Message) any);
                 returns (1, -1);
             }
@@ -617,8 +679,10 @@ public class AmqpsTransportTest
                 result = mockPacket;
                 mockPacket.getMessage();
                 result = mockMsg;
-                mockMsg.getBytes();
+                mockMsg.getBodyArray();
                 result = messageBytes;
+                mockMsg.getBodyLength();
+                result = messageBytes.length;
                 mockMsg.isExpired();
                 returns (true, false);
                 mockConnection.sendMessage((org.apache.qpid.proton.message.Message) any);
@@ -676,6 +740,42 @@ public class AmqpsTransportTest
         transport.invokeCallbacks();
     }
 
+    // Tests_SRS_AMQPSTRANSPORT_21_009: [If a callback dispatcher is set, the function shall hand every callback to it instead of invoking it.]
+    // Tests_SRS_AMQPSTRANSPORT_21_010: [The function shall save the callback dispatcher.]
+    @Test
+    public void invokeCallbacksHandsCallbacksToDispatcher(
+            @Mocked final IotHubCallbackDispatcher mockDispatcher) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig, false);
+                result = mockConnection;
+            }
+        };
+
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        transport.open();
+        transport.setCallbackDispatcher(mockDispatcher);
+
+        Queue<IotHubCallbackPacket> callbackList = new LinkedList<>();
+        callbackList.add(mockIotHubCallbackPacket);
+        callbackList.add(mockIotHubCallbackPacket);
+        Deencapsulation.setField(transport, "callbackList", callbackList);
+
+        transport.invokeCallbacks();
+
+        new Verifications()
+        {
+            {
+                mockDispatcher.dispatch(mockIotHubCallbackPacket);
+                times = 2;
+                mockIotHubEventCallback.execute((IotHubStatusCode) any, any);
+                times = 0;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSTRANSPORT_15_020: [The function shall invoke all the callbacks from the callback queue.]
     @Test
     public void invokeCallbacksInvokesAllCallbacksFromQueue() throws IOException
@@ -971,6 +1071,216 @@ public class AmqpsTransportTest
         Assert.assertTrue(callbackList.size() == 1);
     }
 
+    // Tests_SRS_AMQPSTRANSPORT_21_006: [If an outbound buffer is set, every packet acknowledged, expired or skipped shall be released from it.]
+    // Tests_SRS_AMQPSTRANSPORT_21_007: [The function shall save the outbound buffer.]
+    @Test
+    public void messageSentReleasesDeliveredMessageFromOutboundBuffer(
+            @Mocked final IotHubOutboundBuffer mockBuffer) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig, false);
+                result = mockConnection;
+            }
+        };
+
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        transport.open();
+        transport.setOutboundBuffer(mockBuffer);
+
+        final IotHubOutboundPacket packet = new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object());
+        Map<Integer, IotHubOutboundPacket> inProgressMessages = new ConcurrentHashMap<>();
+        inProgressMessages.put(1, packet);
+        Deencapsulation.setField(transport, "inProgressMessages", inProgressMessages);
+
+        transport.messageSent(1, true);
+
+        new Verifications()
+        {
+            {
+                mockBuffer.release(packet);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSTRANSPORT_21_015: [The function shall remove the expired packets from the waiting list, release and checkpoint them, and add a callback with the MESSAGE_EXPIRED status for each to the callback list.]
+    @Test
+    public void sendMessagesEvictsExpiredPacketsBeforeSending(
+            @Mocked final IotHubOutboundBuffer mockBuffer)
+            throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig, false);
+                result = mockConnection;
+                mockBuffer.acquire((IotHubOutboundPacket) any, (Queue<IotHubOutboundPacket>) any, (Queue<IotHubCallbackPacket>) any);
+                result = true;
+            }
+        };
+        Message stale = new Message(new byte[1]);
+        stale.setExpiryTime(-1000);
+
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        transport.open();
+        transport.setOutboundBuffer(mockBuffer);
+        transport.addMessage(stale, mockIotHubEventCallback, null);
+        transport.sendMessages();
+
+        Queue<IotHubOutboundPacket> waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
+        Queue<IotHubCallbackPacket> callbackList = Deencapsulation.getField(transport, "callbackList");
+        Assert.assertTrue(waitingMessages.isEmpty());
+        Assert.assertEquals(1, callbackList.size());
+        new Verifications()
+        {
+            {
+                new IotHubCallbackPacket(IotHubStatusCode.MESSAGE_EXPIRED, mockIotHubEventCallback, null);
+                times = 1;
+                mockConnection.sendMessage((org.apache.qpid.proton.message.Message) any);
+                times = 0;
+                mockBuffer.release((IotHubOutboundPacket) any);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSTRANSPORT_21_008: [The function shall remove and return all messages in progress followed by all packets on the waiting list, and release them from the outbound buffer.]
+    @Test
+    public void removePendingPacketsRemovesAndReleasesPendingPackets(
+            @Mocked final IotHubOutboundBuffer mockBuffer) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig, false);
+                result = mockConnection;
+            }
+        };
+
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        transport.open();
+        transport.setOutboundBuffer(mockBuffer);
+
+        final IotHubOutboundPacket inProgress = new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object());
+        final IotHubOutboundPacket waiting = new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object());
+        Map<Integer, IotHubOutboundPacket> inProgressMessages = new ConcurrentHashMap<>();
+        inProgressMessages.put(1, inProgress);
+        Deencapsulation.setField(transport, "inProgressMessages", inProgressMessages);
+        Queue<IotHubOutboundPacket> waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
+        waitingMessages.add(waiting);
+
+        List<IotHubOutboundPacket> pending = transport.removePendingPackets();
+
+        assertEquals(2, pending.size());
+        assertTrue(pending.get(0) == inProgress);
+        assertTrue(pending.get(1) == waiting);
+        assertTrue(inProgressMessages.isEmpty());
+        assertTrue(waitingMessages.isEmpty());
+        new Verifications()
+        {
+            {
+                mockBuffer.release(inProgress);
+                times = 1;
+                mockBuffer.release(waiting);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSTRANSPORT_21_011: [If an outbound journal is set, the function shall record the packet in it before adding it to the queue of messages waiting to be sent.]
+    // Tests_SRS_AMQPSTRANSPORT_21_012: [If an outbound journal is set, every packet acknowledged, expired or skipped shall be checkpointed in it.]
+    // Tests_SRS_AMQPSTRANSPORT_21_013: [The function shall save the outbound journal.]
+    @Test
+    public void outboundJournalRecordsAddedAndCheckpointsDeliveredPackets(
+            @Mocked final IotHubOutboundJournal mockJournal) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig, false);
+                result = mockConnection;
+            }
+        };
+
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        transport.open();
+        transport.setOutboundJournal(mockJournal);
+        transport.addMessage(new Message(), mockIotHubEventCallback, new Object());
+
+        final IotHubOutboundPacket packet = new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object());
+        Map<Integer, IotHubOutboundPacket> inProgressMessages = new ConcurrentHashMap<>();
+        inProgressMessages.put(1, packet);
+        Deencapsulation.setField(transport, "inProgressMessages", inProgressMessages);
+        transport.messageSent(1, true);
+
+        new Verifications()
+        {
+            {
+                mockJournal.record((IotHubOutboundPacket) any);
+                times = 1;
+                mockJournal.checkpoint(packet);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSTRANSPORT_21_012: [If an outbound journal is set, every packet acknowledged, expired or skipped shall be checkpointed in it.]
+    @Test
+    public void messageSentDoesNotCheckpointUndeliveredPacket(
+            @Mocked final IotHubOutboundJournal mockJournal) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig, false);
+                result = mockConnection;
+            }
+        };
+
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        transport.open();
+        transport.setOutboundJournal(mockJournal);
+
+        Map<Integer, IotHubOutboundPacket> inProgressMessages = new ConcurrentHashMap<>();
+        inProgressMessages.put(1, new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
+        Deencapsulation.setField(transport, "inProgressMessages", inProgressMessages);
+        transport.messageSent(1, false);
+
+        new Verifications()
+        {
+            {
+                mockJournal.checkpoint((IotHubOutboundPacket) any);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSTRANSPORT_21_005: [If an outbound buffer is set, the function shall add the packet only if the buffer admits it.]
+    @Test
+    public void addMessageDoesNotQueuePacketDroppedByOutboundBuffer(
+            @Mocked final IotHubOutboundBuffer mockBuffer) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig, false);
+                result = mockConnection;
+                mockBuffer.acquire((IotHubOutboundPacket) any, (Queue<IotHubOutboundPacket>) any, (Queue<IotHubCallbackPacket>) any);
+                result = false;
+            }
+        };
+
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        transport.open();
+        transport.setOutboundBuffer(mockBuffer);
+        transport.addMessage(new Message(), mockIotHubEventCallback, new Object());
+
+        Queue<IotHubOutboundPacket> waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
+        Assert.assertTrue(waitingMessages.size() == 0);
+    }
+
     // Tests_SRS_AMQPSTRANSPORT_15_031: [If the message was not delivered successfully, it is buffered to be sent again.]
     @Test
     public void messageSentBuffersPreviouslySentMessageIfNotSuccessfullyDelivered() throws IOException
@@ -1030,10 +1340,9 @@ public class AmqpsTransportTest
         inProgressMessages.put(2, new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
         Deencapsulation.setField(transport, "inProgressMessages", inProgressMessages);
 
-        Queue<IotHubOutboundPacket> waitingMessages = new LinkedBlockingDeque<>();
+        Queue<IotHubOutboundPacket> waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
         waitingMessages.add(new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
         waitingMessages.add(new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
-        Deencapsulation.setField(transport, "waitingMessages", waitingMessages);
 
         transport.connectionLost();
 
@@ -1041,6 +1350,41 @@ public class AmqpsTransportTest
         Assert.assertTrue(waitingMessages.size() == 4);
     }
 
+    // Tests_SRS_AMQPSTRANSPORT_21_014: [The messages in progress shall be buffered in the lane of their priority, so that they are not sent ahead of higher priority messages.]
+    @Test
+    public void connectionLostBuffersInProgressMessagesByPriority() throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig, false);
+                result = mockConnection;
+            }
+        };
+
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        transport.open();
+
+        Message alarm = new Message();
+        alarm.setPriority(MessagePriority.HIGH);
+        IotHubOutboundPacket alarmPacket = new IotHubOutboundPacket(alarm, mockIotHubEventCallback, new Object());
+        Map<Integer, IotHubOutboundPacket> inProgressMessages = Deencapsulation.getField(transport, "inProgressMessages");
+        inProgressMessages.put(1, alarmPacket);
+
+        Queue<IotHubOutboundPacket> waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
+        for (int i = 0; i < 10; i++)
+        {
+            Message telemetry = new Message();
+            telemetry.setPriority(MessagePriority.LOW);
+            waitingMessages.add(new IotHubOutboundPacket(telemetry, mockIotHubEventCallback, new Object()));
+        }
+
+        transport.connectionLost();
+
+        Assert.assertEquals(11, waitingMessages.size());
+        Assert.assertSame(alarmPacket, waitingMessages.poll());
+    }
+
     // Tests_SRS_AMQPSTRANSPORT_15_034: [The message received is added to the list of messages to be processed.]
     @Test
     public void messageReceivedAddsTheMessageToTheListOfMessagesToBeProcessed() throws IOException
@@ -1066,6 +1410,62 @@ public class AmqpsTransportTest
         Assert.assertTrue(receivedMessages.size() == 3);
     }
 
+    // Tests_SRS_AMQPSTRANSPORT_21_024: [The function shall save the receive signal.]
+    // Tests_SRS_AMQPSTRANSPORT_21_026: [If a receive signal is set, the function shall raise it after the message was added.]
+    @Test
+    public void messageReceivedRaisesReceiveSignal() throws IOException, InterruptedException
+    {
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        IotHubSendSignal receiveSignal = new IotHubSendSignal();
+        transport.setReceiveSignal(receiveSignal);
+
+        transport.messageReceived(mockAmqpsMessage);
+
+        Assert.assertTrue(receiveSignal.await(10));
+    }
+
+    // Tests_SRS_AMQPSTRANSPORT_21_025: [If a receive signal is set and messages are still waiting to be handled, the function shall raise it.]
+    @Test
+    public void handleMessageRaisesReceiveSignalWhileMessagesAreLeft() throws IOException, InterruptedException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig, false);
+                result = mockConnection;
+                mockConfig.getMessageCallback();
+                result = mockMessageCallback;
+                mockMessageCallback.execute((Message) any, any);
+                result = IotHubMessageResult.COMPLETE;
+                mockConnection.sendMessageResult(mockAmqpsMessage, IotHubMessageResult.COMPLETE);
+                result = true;
+            }
+        };
+
+        new MockUp<AmqpsTransport>() {
+            @Mock
+            Message protonMessageToIoTHubMessage(MessageImpl protonMessage) {
+                return new Message();
+            }
+        };
+
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        transport.open();
+        IotHubSendSignal receiveSignal = new IotHubSendSignal();
+        transport.setReceiveSignal(receiveSignal);
+
+        Queue<AmqpsMessage> receivedMessages = new LinkedBlockingQueue<>();
+        receivedMessages.add(mockAmqpsMessage);
+        receivedMessages.add(mockAmqpsMessage);
+        Deencapsulation.setField(transport, "receivedMessages", receivedMessages);
+
+        transport.handleMessage();
+        Assert.assertTrue(receiveSignal.await(10));
+
+        transport.handleMessage();
+        Assert.assertFalse(receiveSignal.await(10));
+    }
+
     // Tests_SRS_AMQPSTRANSPORT_15_035: [The function shall return true if the waiting list,
     // in progress list and callback list are all empty, and false otherwise.]
     @Test
@@ -1084,9 +1484,8 @@ public class AmqpsTransportTest
     {
         AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
 
-        Queue<IotHubOutboundPacket> waitingMessages = new LinkedBlockingDeque<>();
+        Queue<IotHubOutboundPacket> waitingMessages = Deencapsulation.getField(transport, "waitingMessages");
         waitingMessages.add(new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
-        Deencapsulation.setField(transport, "waitingMessages", waitingMessages);
 
         Boolean isEmpty = transport.isEmpty();
 
@@ -1124,4 +1523,62 @@ public class AmqpsTransportTest
 
         Assert.assertFalse(isEmpty);
     }
+    // Tests_SRS_AMQPSTRANSPORT_21_017: [The function shall register the metrics, if any, with the connection.]
+    // Tests_SRS_AMQPSTRANSPORT_21_022: [The function shall save the metrics, and register them with the connection if it is open.]
+    @Test
+    public void metricsAreRegisteredWithConnection() throws IOException
+    {
+        final IotHubClientMetrics metrics = new IotHubClientMetrics();
+        final IotHubClientMetrics otherMetrics = new IotHubClientMetrics();
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig, false);
+                result = mockConnection;
+            }
+        };
+
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        transport.setMetrics(metrics);
+        transport.open();
+        transport.setMetrics(otherMetrics);
+
+        new VerificationsInOrder()
+        {
+            {
+                mockConnection.setMetrics(metrics);
+                mockConnection.open();
+                mockConnection.setMetrics(otherMetrics);
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSTRANSPORT_21_019: [If metrics are set, the function shall record the acknowledgement of the message, and sample the number of messages in progress.]
+    @Test
+    public void messageSentRecordsAcknowledgementInMetrics() throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new AmqpsIotHubConnection(mockConfig, false);
+                result = mockConnection;
+            }
+        };
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+
+        AmqpsTransport transport = new AmqpsTransport(mockConfig, false);
+        transport.open();
+        transport.setMetrics(metrics);
+        Map<Integer, IotHubOutboundPacket> inProgressMessages = new ConcurrentHashMap<>();
+        inProgressMessages.put(1, new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
+        inProgressMessages.put(2, new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
+        inProgressMessages.put(3, new IotHubOutboundPacket(new Message(), mockIotHubEventCallback, new Object()));
+        Deencapsulation.setField(transport, "inProgressMessages", inProgressMessages);
+
+        transport.messageSent(1, true);
+        transport.messageSent(2, false);
+
+        assertEquals(1L, metrics.getMessagesAcknowledged());
+        assertEquals(2L, metrics.getInFlightCount());
+    }
 }
\ No newline at end of file
@@ -6,19 +6,24 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.transport.https;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
-import com.microsoft.azure.sdk.iot.device.Message;
 import com.microsoft.azure.sdk.iot.device.MessageProperty;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsSingleMessage;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsBatchMessage;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
+import org.apache.commons.codec.binary.Base64;
 import org.junit.Test;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import javax.naming.SizeLimitExceededException;
 
@@ -53,8 +58,8 @@ public class HttpsBatchMessageTest
         new NonStrictExpectations()
         {
             {
-                mockMsg.getBodyAsString();
-                result = msgBody;
+                mockMsg.getBody();
+                result = msgBody.getBytes(UTF8);
                 mockMsg.isBase64Encoded();
                 result = isBase64Encoded;
             }
@@ -80,8 +85,8 @@ public class HttpsBatchMessageTest
         new NonStrictExpectations()
         {
             {
-                mockMsg.getBodyAsString();
-                result = msgBody;
+                mockMsg.getBody();
+                result = msgBody.getBytes(UTF8);
                 mockMsg.isBase64Encoded();
                 result = isBase64Encoded;
             }
@@ -112,8 +117,8 @@ public class HttpsBatchMessageTest
         new NonStrictExpectations()
         {
             {
-                mockMsg.getBodyAsString();
-                result = msgBody;
+                mockMsg.getBody();
+                result = msgBody.getBytes(UTF8);
                 mockMsg.getProperties();
                 result = properties;
                 mockProperty.getName();
@@ -145,13 +150,14 @@ public class HttpsBatchMessageTest
     {
         final int msgBodySize = SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES / 2 + 1;
         final byte[] msgBodyBytes = new byte[msgBodySize];
+        Arrays.fill(msgBodyBytes, (byte) 'a');
         final String msgBody = new String(msgBodyBytes, UTF8);
         final boolean isBase64Encoded = false;
         new NonStrictExpectations()
         {
             {
-                mockMsg.getBodyAsString();
-                result = msgBody;
+                mockMsg.getBody();
+                result = msgBody.getBytes(UTF8);
                 mockMsg.isBase64Encoded();
                 result = isBase64Encoded;
             }
@@ -219,8 +225,8 @@ public class HttpsBatchMessageTest
         new NonStrictExpectations()
         {
             {
-                mockMsg.getBodyAsString();
-                result = msgBody;
+                mockMsg.getBody();
+                result = msgBody.getBytes(UTF8);
                 mockMsg.isBase64Encoded();
                 result = isBase64Encoded;
             }
@@ -250,8 +256,8 @@ public class HttpsBatchMessageTest
         new NonStrictExpectations()
         {
             {
-                mockMsg.getBodyAsString();
-                result = new String(validSizeBody, Message.DEFAULT_IOTHUB_MESSAGE_CHARSET);
+                mockMsg.getBody();
+                result = validSizeBody;
             }
         };
 
@@ -266,4 +272,172 @@ public class HttpsBatchMessageTest
 
         assertThat(httpsBatchMessageSizeLimitVerified, is(true));
     }
+    // Tests_SRS_HTTPSBATCHMESSAGE_21_004: [The function shall escape the body, property names and property values as JSON strings.]
+    @Test
+    public void addMessageEscapesBodyAndProperties(
+            @Mocked final HttpsSingleMessage mockMsg,
+            @Mocked final MessageProperty mockProperty) throws
+            SizeLimitExceededException
+    {
+        final String msgBody = "say \"hi\"\\\n\t\u0001";
+        final MessageProperty[] properties = { mockProperty };
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                result = msgBody.getBytes(UTF8);
+                mockMsg.getProperties();
+                result = properties;
+                mockProperty.getName();
+                result = "iothub-app-quote\"";
+                mockProperty.getValue();
+                result = "back\\slash";
+            }
+        };
+
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+        batchMsg.addMessage(mockMsg);
+        String testBatchBody = new String(batchMsg.getBody(), UTF8);
+
+        final String expectedBatchBody = "[{\"body\":\"say \\\"hi\\\"\\\\\\n\\t\\u0001\","
+                + "\"base64Encoded\":false,"
+                + "\"properties\":{\"iothub-app-quote\\\"\":\"back\\\\slash\"}}]";
+        assertThat(testBatchBody, is(expectedBatchBody));
+        JsonObject parsed = new JsonParser().parse(testBatchBody).getAsJsonArray().get(0).getAsJsonObject();
+        assertThat(parsed.get("body").getAsString(), is(msgBody));
+    }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_21_001: [If the message is Base64-encoded, or its body is not valid UTF-8, the JSON object shall have the body encoded in Base64, and the field "base64Encoded" set to true.]
+    @Test
+    public void addMessageKeepsValidMultiByteUtf8Body(
+            @Mocked final HttpsSingleMessage mockMsg) throws
+            SizeLimitExceededException
+    {
+        final String msgBody = "café € 😀";
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                result = msgBody.getBytes(UTF8);
+            }
+        };
+
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+        batchMsg.addMessage(mockMsg);
+        String testBatchBody = new String(batchMsg.getBody(), UTF8);
+
+        assertThat(testBatchBody, is("[{\"body\":\"" + msgBody + "\",\"base64Encoded\":false}]"));
+    }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_21_001: [If the message is Base64-encoded, or its body is not valid UTF-8, the JSON object shall have the body encoded in Base64, and the field "base64Encoded" set to true.]
+    @Test
+    public void addMessageEncodesInvalidUtf8BodyInBase64(
+            @Mocked final HttpsSingleMessage mockMsg) throws
+            SizeLimitExceededException
+    {
+        final byte[][] invalidBodies = {
+                { (byte) 0xff, 0x01, 0x02, 0x03 },
+                { (byte) 0xc0, (byte) 0x80 },
+                { (byte) 0xed, (byte) 0xa0, (byte) 0x80 },
+                { 'a', (byte) 0xe2, (byte) 0x82 },
+                { (byte) 0xf4, (byte) 0x90, (byte) 0x80, (byte) 0x80 }
+        };
+        for (final byte[] invalidBody : invalidBodies)
+        {
+            new NonStrictExpectations()
+            {
+                {
+                    mockMsg.getBody();
+                    result = invalidBody;
+                }
+            };
+
+            HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+            batchMsg.addMessage(mockMsg);
+            String testBatchBody = new String(batchMsg.getBody(), UTF8);
+
+            assertThat(testBatchBody, is("[{\"body\":\"" + Base64.encodeBase64String(invalidBody)
+                    + "\",\"base64Encoded\":true}]"));
+        }
+    }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_21_001: [If the message is Base64-encoded, or its body is not valid UTF-8, the JSON object shall have the body encoded in Base64, and the field "base64Encoded" set to true.]
+    @Test
+    public void addMessageEncodesBase64EncodedMessageInBase64(
+            @Mocked final HttpsSingleMessage mockMsg) throws
+            SizeLimitExceededException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                result = "abcde".getBytes(UTF8);
+                mockMsg.isBase64Encoded();
+                result = true;
+            }
+        };
+
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+        batchMsg.addMessage(mockMsg);
+        String testBatchBody = new String(batchMsg.getBody(), UTF8);
+
+        assertThat(testBatchBody, is("[{\"body\":\"YWJjZGU=\",\"base64Encoded\":true}]"));
+    }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_21_002: [The function shall reject a message whose body alone cannot fit in the batch before writing any of it.]
+    @Test
+    public void addMessageRejectsBodyLargerThanLimitBeforeWritingIt(
+            @Mocked final HttpsSingleMessage mockMsg) throws
+            SizeLimitExceededException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                result = new byte[HttpsBatchMessage.SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES];
+            }
+        };
+
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+        try
+        {
+            batchMsg.addMessage(mockMsg);
+        }
+        catch (SizeLimitExceededException e)
+        {
+            byte[] body = batchMsg.getBody();
+            assertThat(new String(body, UTF8), is("[]"));
+            assertThat(batchMsg.numMessages(), is(0));
+            return;
+        }
+        throw new AssertionError("SizeLimitExceededException expected");
+    }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_11_002: [The function shall add the message as a JSON object appended to the current JSON array.]
+    // Tests_SRS_HTTPSBATCHMESSAGE_21_003: [The function shall return the buffer the body is built in, trimmed once to the length of the body, without encoding it again.]
+    @Test
+    public void getBodyReturnsWholeArrayWithoutCopyingAgain(
+            @Mocked final HttpsSingleMessage mockMsg) throws
+            SizeLimitExceededException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                result = "{\"temperature\":21.5}".getBytes(UTF8);
+            }
+        };
+
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+        for (int i = 0; i < 1000; i++)
+        {
+            batchMsg.addMessage(mockMsg);
+        }
+        byte[] body = batchMsg.getBody();
+
+        assertSame(body, batchMsg.getBody());
+        JsonArray parsed = new JsonParser().parse(new String(body, UTF8)).getAsJsonArray();
+        assertThat(parsed.size(), is(1000));
+        assertThat(parsed.get(999).getAsJsonObject().get("body").getAsString(), is("{\"temperature\":21.5}"));
+    }
 }
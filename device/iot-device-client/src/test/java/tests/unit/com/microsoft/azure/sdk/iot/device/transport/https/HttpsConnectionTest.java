@@ -12,8 +12,11 @@ import com.microsoft.azure.sdk.iot.device.transport.https.HttpsMethod;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Verifications;
+import mockit.VerificationsInOrder;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -184,6 +187,105 @@ public class HttpsConnectionTest
         };
     }
 
+    // Tests_SRS_HTTPSCONNECTION_21_001: [The function shall set the connection to fixed-length streaming mode, with the length of the body, before streaming the body.]
+    @Test
+    public void connectStreamsRequestBodyWithFixedLength() throws IOException
+    {
+        final HttpsMethod httpsMethod = HttpsMethod.POST;
+        final byte[] body = { 1, 2, 3 };
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+                mockUrl.openConnection();
+                result = mockUrlConn;
+                mockUrlConn.getRequestMethod();
+                result = httpsMethod.name();
+            }
+        };
+        HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
+
+        conn.writeOutput(body);
+        conn.connect();
+
+        new VerificationsInOrder()
+        {
+            {
+                mockUrlConn.setFixedLengthStreamingMode(body.length);
+                mockUrlConn.getOutputStream().write(body);
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSCONNECTION_21_001: [The function shall set the connection to fixed-length streaming mode, with the length of the body, before streaming the body.]
+    // Tests_SRS_HTTPSCONNECTION_21_003: [If the body is streamed, the function shall copy it from its stream to the connection through a pooled buffer, and close the stream.]
+    // Tests_SRS_HTTPSCONNECTION_21_004: [The function shall save the stream and the length of the body, to be copied when the request is sent.]
+    @Test
+    public void connectCopiesBodyStreamWithFixedLength() throws IOException
+    {
+        final HttpsMethod httpsMethod = HttpsMethod.POST;
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final boolean[] closed = { false };
+        InputStream stream = new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 })
+        {
+            @Override
+            public void close() throws IOException
+            {
+                closed[0] = true;
+            }
+        };
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+                mockUrl.openConnection();
+                result = mockUrlConn;
+                mockUrlConn.getRequestMethod();
+                result = httpsMethod.name();
+                mockUrlConn.getOutputStream();
+                result = output;
+            }
+        };
+        HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
+
+        conn.writeOutput(stream, 3);
+        conn.connect();
+
+        new VerificationsInOrder()
+        {
+            {
+                mockUrlConn.setFixedLengthStreamingMode(3);
+                mockUrlConn.getOutputStream();
+                mockUrlConn.connect();
+            }
+        };
+        assertThat(output.toByteArray(), is(new byte[] { 1, 2, 3 }));
+        assertThat(closed[0], is(true));
+    }
+
+    // Tests_SRS_HTTPSCONNECTION_21_002: [If the stream is null, the length is negative, or the request does not currently use method POST or PUT, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void writeOutputStreamFailsWhenMethodIsNotPostOrPut() throws IOException
+    {
+        final HttpsMethod httpsMethod = HttpsMethod.GET;
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+                mockUrl.openConnection();
+                result = mockUrlConn;
+                mockUrlConn.getRequestMethod();
+                result = httpsMethod.name();
+            }
+        };
+        HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
+
+        conn.writeOutput(new ByteArrayInputStream(new byte[0]), 0);
+    }
+
     // Tests_SRS_HTTPSCONNECTION_11_005: [The function shall throw an IOException if the connection could not be established, or the server responded with a bad status code.]
     @Test(expected = IOException.class)
     public void connectThrowsIoExceptionIfCannotConnect() throws IOException
@@ -703,4 +805,69 @@ public class HttpsConnectionTest
 
         conn.getResponseHeaders();
     }
+    // Tests_SRS_HTTPSCONNECTION_21_021: [The function shall read the stream in bulk, using the response Content-Length as a sizing hint.]
+    @Test
+    public void readInputUsesContentLengthAsSizingHint(
+            @Mocked final InputStream mockIs)
+            throws IOException
+    {
+        final HttpsMethod httpsMethod = HttpsMethod.GET;
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+                mockUrl.openConnection();
+                result = mockUrlConn;
+                mockUrlConn.getRequestMethod();
+                result = httpsMethod.name();
+                mockUrlConn.getInputStream();
+                result = mockIs;
+                mockUrlConn.getContentLength();
+                result = 3;
+                mockIs.read();
+                returns(1, 2, 3, -1);
+            }
+        };
+        HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
+        conn.connect();
+
+        byte[] testResponse = conn.readInput();
+
+        byte[] expectedResponse = { 1, 2, 3 };
+        assertThat(testResponse, is(expectedResponse));
+    }
+
+    // Tests_SRS_HTTPSCONNECTION_21_022: [The function shall read the error stream in bulk, using the response Content-Length as a sizing hint.]
+    @Test
+    public void readErrorUsesContentLengthAsSizingHint(
+            @Mocked final InputStream mockIs)
+            throws IOException
+    {
+        final HttpsMethod httpsMethod = HttpsMethod.GET;
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+                mockUrl.openConnection();
+                result = mockUrlConn;
+                mockUrlConn.getRequestMethod();
+                result = httpsMethod.name();
+                mockUrlConn.getErrorStream();
+                result = mockIs;
+                mockUrlConn.getContentLength();
+                result = 3;
+                mockIs.read();
+                returns(1, 2, 3, -1);
+            }
+        };
+        HttpsConnection conn = new HttpsConnection(mockUrl, httpsMethod);
+        conn.connect();
+
+        byte[] testResponse = conn.readError();
+
+        byte[] expectedResponse = { 1, 2, 3 };
+        assertThat(testResponse, is(expectedResponse));
+    }
 }
@@ -7,11 +7,13 @@ import static org.junit.Assert.assertThat;
 import static org.hamcrest.CoreMatchers.is;
 
 import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
 import com.microsoft.azure.sdk.iot.device.Message;
 import com.microsoft.azure.sdk.iot.device.MessageProperty;
 import com.microsoft.azure.sdk.iot.device.IotHubMessageResult;
 import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
-import com.microsoft.azure.sdk.iot.device.auth.IotHubSasToken;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenManager;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsEngine;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsIotHubConnection;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsMethod;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsRequest;
@@ -24,6 +26,8 @@ import com.microsoft.azure.sdk.iot.device.net.IotHubRejectUri;
 import com.microsoft.azure.sdk.iot.device.net.IotHubEventUri;
 import com.microsoft.azure.sdk.iot.device.net.IotHubUri;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsSingleMessage;
+import mockit.Deencapsulation;
+import mockit.Delegate;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Verifications;
@@ -32,6 +36,11 @@ import org.junit.Test;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /** Unit tests for HttpsIotHubConnection. */
 public class HttpsIotHubConnectionTest
@@ -45,7 +54,7 @@ public class HttpsIotHubConnectionTest
     @Mocked
     HttpsSingleMessage mockMsg;
     @Mocked
-    IotHubSasToken mockToken;
+    IotHubSasTokenManager mockTokenManager;
     @Mocked
     HttpsRequest mockRequest;
     @Mocked
@@ -100,7 +109,7 @@ public class HttpsIotHubConnectionTest
         new Verifications()
         {
             {
-                new HttpsRequest((URL) any, expectedMethod, (byte[]) any);
+                new HttpsRequest((URL) any, expectedMethod, (byte[]) any, (HttpsEngine) any);
             }
         };
     }
@@ -126,7 +135,7 @@ public class HttpsIotHubConnectionTest
         new Verifications()
         {
             {
-                new HttpsRequest((URL) any, (HttpsMethod) any, expectedBody);
+                new HttpsRequest((URL) any, (HttpsMethod) any, expectedBody, (HttpsEngine) any);
             }
         };
     }
@@ -192,6 +201,7 @@ public class HttpsIotHubConnectionTest
     }
 
     // Tests_SRS_HTTPSIOTHUBCONNECTION_11_007: [The function shall set the header field 'authorization' to be a valid SAS token generated from the configuration parameters.]
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_043: [The function shall obtain the SAS token from the SAS token manager of the config.]
     @Test
     public void sendEventSetsAuthToSasToken(@Mocked final IotHubEventUri mockUri) throws IOException
     {
@@ -208,9 +218,9 @@ public class HttpsIotHubConnectionTest
                 result = deviceId;
                 mockConfig.getDeviceKey();
                 result = deviceKey;
-                new IotHubSasToken(mockConfig, anyLong);
-                result = mockToken;
-                mockToken.toString();
+                mockConfig.getSasTokenManager();
+                result = mockTokenManager;
+                mockTokenManager.getSasToken();
                 result = tokenStr;
             }
         };
@@ -363,7 +373,7 @@ public class HttpsIotHubConnectionTest
         new Verifications()
         {
             {
-                new HttpsRequest((URL) any, expectedMethod, (byte[]) any);
+                new HttpsRequest((URL) any, expectedMethod, (byte[]) any, (HttpsEngine) any);
             }
         };
     }
@@ -394,6 +404,7 @@ public class HttpsIotHubConnectionTest
     }
 
     // Tests_SRS_HTTPSIOTHUBCONNECTION_11_016: [The function shall set the header field 'authorization' to be a valid SAS token generated from the configuration parameters.]
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_044: [The function shall obtain the SAS token from the SAS token manager of the config.]
     @Test
     public void receiveMessageSetsAuthToSasToken(@Mocked final IotHubMessageUri mockUri) throws IOException
     {
@@ -410,9 +421,9 @@ public class HttpsIotHubConnectionTest
                 result = deviceId;
                 mockConfig.getDeviceKey();
                 result = deviceKey;
-                new IotHubSasToken(mockConfig, anyLong);
-                result = mockToken;
-                mockToken.toString();
+                mockConfig.getSasTokenManager();
+                result = mockTokenManager;
+                mockTokenManager.getSasToken();
                 result = tokenStr;
             }
         };
@@ -651,7 +662,7 @@ public class HttpsIotHubConnectionTest
         new Verifications()
         {
             {
-                new HttpsRequest((URL) any, expectedMethod, (byte[]) any);
+                new HttpsRequest((URL) any, expectedMethod, (byte[]) any, (HttpsEngine) any);
             }
         };
     }
@@ -773,7 +784,7 @@ public class HttpsIotHubConnectionTest
         new Verifications()
         {
             {
-                new HttpsRequest((URL) any, expectedMethod, (byte[]) any);
+                new HttpsRequest((URL) any, expectedMethod, (byte[]) any, (HttpsEngine) any);
             }
         };
     }
@@ -895,7 +906,7 @@ public class HttpsIotHubConnectionTest
         new Verifications()
         {
             {
-                new HttpsRequest((URL) any, expectedMethod, (byte[]) any);
+                new HttpsRequest((URL) any, expectedMethod, (byte[]) any, (HttpsEngine) any);
             }
         };
     }
@@ -983,6 +994,7 @@ public class HttpsIotHubConnectionTest
     }
 
     // Tests_SRS_HTTPSIOTHUBCONNECTION_11_034: [The function shall set the header field 'authorization' to be a valid SAS token generated from the configuration parameters.]
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_045: [The function shall obtain the SAS token from the SAS token manager of the config.]
     @Test
     public void sendMessageResultSetsAuthToSasToken(@Mocked final IotHubRejectUri mockUri) throws IOException
     {
@@ -1008,9 +1020,9 @@ public class HttpsIotHubConnectionTest
                 result = deviceId;
                 mockConfig.getDeviceKey();
                 result = deviceKey;
-                new IotHubSasToken(mockConfig, anyLong);
-                result = mockToken;
-                mockToken.toString();
+                mockConfig.getSasTokenManager();
+                result = mockTokenManager;
+                mockTokenManager.getSasToken();
                 result = tokenStr;
             }
         };
@@ -1129,4 +1141,375 @@ public class HttpsIotHubConnectionTest
         conn.receiveMessage();
         conn.sendMessageResult(IotHubMessageResult.REJECT);
     }
+    /**
+     * Makes every request wait until {@code parties} requests are in flight at
+     * the same time, failing if they are serialized instead.
+     */
+    private void expectConcurrentRequests(final int parties)
+            throws IOException
+    {
+        final CountDownLatch inFlight = new CountDownLatch(parties);
+        new NonStrictExpectations()
+        {
+            {
+                mockRequest.send();
+                result = new Delegate()
+                {
+                    HttpsResponse send() throws IOException
+                    {
+                        inFlight.countDown();
+                        try
+                        {
+                            if (!inFlight.await(10, TimeUnit.SECONDS))
+                            {
+                                throw new IOException("Requests were not sent concurrently.");
+                            }
+                        }
+                        catch (InterruptedException e)
+                        {
+                            throw new IOException(e);
+                        }
+                        return mockResponse;
+                    }
+                };
+            }
+        };
+    }
+
+    private static void runConcurrently(List<Thread> threads, final List<Throwable> failures)
+            throws InterruptedException
+    {
+        for (Thread thread : threads)
+        {
+            thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler()
+            {
+                @Override
+                public void uncaughtException(Thread t, Throwable e)
+                {
+                    synchronized (failures)
+                    {
+                        failures.add(e);
+                    }
+                }
+            });
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_040: [The function shall only be serialized with other calls to sendEvent on the same connection.]
+    @Test
+    public void sendEventOnDifferentConnectionsRunsConcurrently(
+            @Mocked final IotHubEventUri mockUri) throws IOException, InterruptedException
+    {
+        final int clients = 4;
+        expectConcurrentRequests(clients);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++)
+        {
+            final HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+            threads.add(new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        conn.sendEvent(mockMsg);
+                    }
+                    catch (IOException e)
+                    {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+        }
+        List<Throwable> failures = new ArrayList<>();
+        runConcurrently(threads, failures);
+
+        assertThat(failures.isEmpty(), is(true));
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_040: [The function shall only be serialized with other calls to sendEvent on the same connection.]
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_041: [The function shall only be serialized with other calls to receiveMessage and sendMessageResult on the same connection.]
+    @Test
+    public void sendEventDoesNotWaitForReceiveMessageOnSameConnection(
+            @Mocked final IotHubEventUri mockEventUri,
+            @Mocked final IotHubMessageUri mockMessageUri) throws IOException, InterruptedException
+    {
+        expectConcurrentRequests(2);
+
+        final HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    conn.receiveMessage();
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        threads.add(new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    conn.sendEvent(mockMsg);
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        List<Throwable> failures = new ArrayList<>();
+        runConcurrently(threads, failures);
+
+        assertThat(failures.isEmpty(), is(true));
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_042: [The function shall only be serialized with other calls to receiveMessage and sendMessageResult on the same connection.]
+    @Test
+    public void sendMessageResultOnDifferentConnectionsRunsConcurrently(
+            @Mocked final IotHubCompleteUri mockUri) throws IOException, InterruptedException
+    {
+        final int clients = 3;
+        expectConcurrentRequests(clients);
+        new NonStrictExpectations()
+        {
+            {
+                IotHubStatusCode.getIotHubStatusCode(anyInt);
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++)
+        {
+            final HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+            Deencapsulation.setField(conn, "messageEtag", "test-etag");
+            threads.add(new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        conn.sendMessageResult(IotHubMessageResult.COMPLETE);
+                    }
+                    catch (IOException e)
+                    {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+        }
+        List<Throwable> failures = new ArrayList<>();
+        runConcurrently(threads, failures);
+
+        assertThat(failures.isEmpty(), is(true));
+    }
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_046: [The constructor shall send each request on its own HttpsConnection.]
+    @Test
+    public void constructorSendsRequestsWithoutEngine(@Mocked final IotHubEventUri mockUri) throws IOException
+    {
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        conn.sendEvent(mockMsg);
+
+        assertThat(Deencapsulation.getField(conn, "engine") == null, is(true));
+        new Verifications()
+        {
+            {
+                new HttpsRequest((URL) any, HttpsMethod.POST, (byte[]) any, null);
+                mockRequest.send();
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_047: [If the engine is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullEngine()
+    {
+        new HttpsIotHubConnection(mockConfig, null);
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_048: [The constructor shall save the engine, which all the requests are created with.]
+    @Test
+    public void sendEventCreatesRequestWithEngine(@Mocked final IotHubEventUri mockUri,
+            @Mocked final HttpsEngine mockEngine) throws IOException
+    {
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig, mockEngine);
+        conn.sendEvent(mockMsg);
+
+        new Verifications()
+        {
+            {
+                new HttpsRequest((URL) any, HttpsMethod.POST, (byte[]) any, mockEngine);
+                mockRequest.send();
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_050: [The function shall create the message result and event requests as sendMessageResult and sendEvent do.]
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_052: [Otherwise, the function shall have the engine send the message result request and the event request pipelined, in that order.]
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_053: [The function shall return the IoT Hub status codes of the message result and of the event, in that order.]
+    @Test
+    public void sendMessageResultAndEventPipelinesCompleteAndEvent(@Mocked final IotHubCompleteUri mockCompleteUri,
+            @Mocked final IotHubEventUri mockEventUri, @Mocked final HttpsEngine mockEngine) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockRequest.getMethod();
+                result = HttpsMethod.DELETE;
+                mockEngine.sendPipelined((List<HttpsRequest>) any);
+                result = Arrays.asList(mockResponse, mockResponse);
+                mockResponse.getStatus();
+                returns(200, 204);
+                IotHubStatusCode.getIotHubStatusCode(200);
+                result = IotHubStatusCode.OK;
+                IotHubStatusCode.getIotHubStatusCode(204);
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig, mockEngine);
+        Deencapsulation.setField(conn, "messageEtag", "test-etag");
+
+        List<IotHubStatusCode> statuses = conn.sendMessageResultAndEvent(IotHubMessageResult.COMPLETE, mockMsg);
+
+        assertThat(statuses, is(Arrays.asList(IotHubStatusCode.OK, IotHubStatusCode.OK_EMPTY)));
+        new Verifications()
+        {
+            {
+                new HttpsRequest((URL) any, HttpsMethod.DELETE, (byte[]) any, mockEngine);
+                new HttpsRequest((URL) any, HttpsMethod.POST, (byte[]) any, mockEngine);
+                mockRequest.setHeaderField("if-match", "test-etag");
+                mockEngine.sendPipelined((List<HttpsRequest>) any);
+                times = 1;
+                mockRequest.send();
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_051: [If the connection has no engine, or the message result is sent with a POST request, the function shall send the two requests one after the other, since a POST request cannot be followed by a pipelined request.]
+    @Test
+    public void sendMessageResultAndEventSendsAbandonAndEventInTurn(@Mocked final IotHubAbandonUri mockAbandonUri,
+            @Mocked final IotHubEventUri mockEventUri, @Mocked final HttpsEngine mockEngine) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockRequest.getMethod();
+                result = HttpsMethod.POST;
+                mockResponse.getStatus();
+                returns(200, 204);
+                IotHubStatusCode.getIotHubStatusCode(200);
+                result = IotHubStatusCode.OK;
+                IotHubStatusCode.getIotHubStatusCode(204);
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig, mockEngine);
+        Deencapsulation.setField(conn, "messageEtag", "test-etag");
+
+        conn.sendMessageResultAndEvent(IotHubMessageResult.ABANDON, mockMsg);
+
+        new Verifications()
+        {
+            {
+                mockRequest.send();
+                times = 2;
+                mockEngine.sendPipelined((List<HttpsRequest>) any);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_051: [If the connection has no engine, or the message result is sent with a POST request, the function shall send the two requests one after the other, since a POST request cannot be followed by a pipelined request.]
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_053: [The function shall return the IoT Hub status codes of the message result and of the event, in that order.]
+    @Test
+    public void sendMessageResultAndEventWithoutEngineReturnsRefusedResult(@Mocked final IotHubRejectUri mockRejectUri,
+            @Mocked final IotHubEventUri mockEventUri) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockRequest.getMethod();
+                result = HttpsMethod.DELETE;
+                mockResponse.getStatus();
+                returns(412, 204);
+                IotHubStatusCode.getIotHubStatusCode(412);
+                result = IotHubStatusCode.PRECONDITION_FAILED;
+                IotHubStatusCode.getIotHubStatusCode(204);
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        Deencapsulation.setField(conn, "messageEtag", "test-etag");
+
+        List<IotHubStatusCode> statuses = conn.sendMessageResultAndEvent(IotHubMessageResult.REJECT, mockMsg);
+
+        assertThat(statuses, is(Arrays.asList(IotHubStatusCode.PRECONDITION_FAILED, IotHubStatusCode.OK_EMPTY)));
+        new Verifications()
+        {
+            {
+                mockRequest.send();
+                times = 2;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_057: [If the function is called before receiveMessage() returns a message, the function shall throw an IllegalStateException.]
+    @Test(expected = IllegalStateException.class)
+    public void sendMessageResultAndEventFailsIfNoMessageReceived(@Mocked final HttpsEngine mockEngine)
+            throws IOException
+    {
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig, mockEngine);
+        conn.sendMessageResultAndEvent(IotHubMessageResult.COMPLETE, mockMsg);
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_055: [If the connection has an engine, the function shall set the metrics of the engine.]
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_056: [If the connection has an engine, the function shall close the engine.]
+    @Test
+    public void setMetricsAndCloseDelegateToEngine(@Mocked final HttpsEngine mockEngine)
+    {
+        final IotHubClientMetrics metrics = new IotHubClientMetrics();
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig, mockEngine);
+
+        conn.setMetrics(metrics);
+        conn.close();
+
+        new Verifications()
+        {
+            {
+                mockEngine.setMetrics(metrics);
+                mockEngine.close();
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_055: [If the connection has an engine, the function shall set the metrics of the engine.]
+    // Tests_SRS_HTTPSIOTHUBCONNECTION_21_056: [If the connection has an engine, the function shall close the engine.]
+    @Test
+    public void setMetricsAndCloseWithoutEngineDoNothing()
+    {
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+
+        conn.setMetrics(new IotHubClientMetrics());
+        conn.close();
+    }
 }
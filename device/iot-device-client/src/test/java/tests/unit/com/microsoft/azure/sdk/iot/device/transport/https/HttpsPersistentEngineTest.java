@@ -0,0 +1,511 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.https;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsMethod;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsPersistentEngine;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsRequest;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsResponse;
+import mockit.Deencapsulation;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for HttpsPersistentEngine. The engine speaks plain HTTP to a
+ * local stub server, which answers the requests with scripted responses.
+ */
+public class HttpsPersistentEngineTest
+{
+    private static final String OK_EMPTY = "HTTP/1.1 204 No Content\r\n\r\n";
+    private static final String OK_HELLO = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\netag: \"1\"\r\n\r\nhello";
+    /** Closes the connection instead of responding. */
+    private static final String HANG_UP = "HANG_UP";
+    /** Prefixed to a response after which the connection is closed without notice. */
+    private static final String THEN_HANG_UP = "THEN_HANG_UP:";
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+
+    /** An HTTP server answering the requests of one connection at a time. */
+    static final class StubServer extends Thread
+    {
+        private final ServerSocket serverSocket;
+        private final Queue<String> responses = new LinkedList<>();
+        private final int requestsPerResponseBatch;
+        final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger connections = new AtomicInteger();
+
+        StubServer(int requestsPerResponseBatch, String... responses) throws IOException
+        {
+            this.serverSocket = new ServerSocket(0);
+            this.requestsPerResponseBatch = requestsPerResponseBatch;
+            this.responses.addAll(Arrays.asList(responses));
+            this.setDaemon(true);
+            this.start();
+        }
+
+        int getPort()
+        {
+            return this.serverSocket.getLocalPort();
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    Socket socket = this.serverSocket.accept();
+                    this.connections.incrementAndGet();
+                    try
+                    {
+                        this.serve(socket);
+                    }
+                    catch (IOException e)
+                    {
+                        // the client dropped the connection.
+                    }
+                    finally
+                    {
+                        socket.close();
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                // the server was closed.
+            }
+        }
+
+        private void serve(Socket socket) throws IOException
+        {
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+            while (true)
+            {
+                for (int i = 0; i < this.requestsPerResponseBatch; i++)
+                {
+                    String request = readRequest(input);
+                    if (request == null)
+                    {
+                        return;
+                    }
+                    this.requests.add(request);
+                }
+
+                for (int i = 0; i < this.requestsPerResponseBatch; i++)
+                {
+                    String response;
+                    synchronized (this.responses)
+                    {
+                        response = this.responses.poll();
+                    }
+                    if ((response == null) || response.equals(HANG_UP))
+                    {
+                        return;
+                    }
+                    boolean hangUp = response.startsWith(THEN_HANG_UP);
+                    if (hangUp)
+                    {
+                        response = response.substring(THEN_HANG_UP.length());
+                    }
+                    output.write(response.getBytes(StandardCharsets.ISO_8859_1));
+                    output.flush();
+                    if (hangUp || response.contains("Connection: close"))
+                    {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private static String readRequest(InputStream input) throws IOException
+        {
+            ByteArrayOutputStream head = new ByteArrayOutputStream();
+            int matched = 0;
+            while (matched < 4)
+            {
+                int next = input.read();
+                if (next < 0)
+                {
+                    return null;
+                }
+                head.write(next);
+                matched = ((next == '\r' && (matched % 2 == 0)) || (next == '\n' && (matched % 2 == 1))) ? matched + 1 : 0;
+            }
+
+            String headText = new String(head.toByteArray(), StandardCharsets.ISO_8859_1);
+            int contentLength = 0;
+            for (String line : headText.split("\r\n"))
+            {
+                if (line.toLowerCase().startsWith("content-length:"))
+                {
+                    contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                }
+            }
+            byte[] body = new byte[contentLength];
+            int filled = 0;
+            while (filled < contentLength)
+            {
+                int read = input.read(body, filled, contentLength - filled);
+                if (read < 0)
+                {
+                    return null;
+                }
+                filled += read;
+            }
+            return headText + new String(body, StandardCharsets.ISO_8859_1);
+        }
+
+        void shutdown() throws IOException
+        {
+            this.serverSocket.close();
+        }
+    }
+
+    private StubServer server;
+
+    @After
+    public void stopServer() throws IOException
+    {
+        if (this.server != null)
+        {
+            this.server.shutdown();
+        }
+    }
+
+    static HttpsPersistentEngine createPlainEngine(long idleTimeoutMillis)
+    {
+        return createPlainEngine(Proxy.NO_PROXY, idleTimeoutMillis);
+    }
+
+    private static HttpsPersistentEngine createPlainEngine(final Proxy proxy, long idleTimeoutMillis)
+    {
+        ProxySelector proxySelector = new ProxySelector()
+        {
+            @Override
+            public List<Proxy> select(URI uri)
+            {
+                return Collections.singletonList(proxy);
+            }
+
+            @Override
+            public void connectFailed(URI uri, SocketAddress address, IOException e)
+            {
+            }
+        };
+        return Deencapsulation.newInstance(HttpsPersistentEngine.class,
+                new Class<?>[] { SocketFactory.class, SSLSocketFactory.class, ProxySelector.class, long.class, int.class },
+                SocketFactory.getDefault(), null, proxySelector, idleTimeoutMillis,
+                HttpsPersistentEngine.DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    private HttpsRequest createRequest(HttpsPersistentEngine engine, HttpsMethod method, String path, byte[] body)
+            throws IOException
+    {
+        URL url = new URL("https://localhost:" + this.server.getPort() + path);
+        return new HttpsRequest(url, method, body, engine).setReadTimeoutMillis(READ_TIMEOUT_MILLIS);
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_001: [If the sslSocketFactory is null, the constructor shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsNullSslSocketFactory()
+    {
+        new HttpsPersistentEngine(null);
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_002: [The constructor shall save the sslSocketFactory, close connections that are not in use for DEFAULT_IDLE_TIMEOUT_MILLIS, and allow DEFAULT_CONNECT_TIMEOUT_MILLIS to open a connection.]
+    @Test
+    public void constructorUsesDefaultTimeouts()
+    {
+        SSLSocketFactory sslSocketFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+
+        HttpsPersistentEngine engine = new HttpsPersistentEngine(sslSocketFactory);
+
+        assertThat(Deencapsulation.getField(engine, "sslSocketFactory") == sslSocketFactory, is(true));
+        assertThat((Long) Deencapsulation.getField(engine, "idleTimeoutMillis"),
+                is(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS));
+        assertThat((Integer) Deencapsulation.getField(engine, "connectTimeoutMillis"),
+                is(HttpsPersistentEngine.DEFAULT_CONNECT_TIMEOUT_MILLIS));
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_003: [If the request is null, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void sendRejectsNullRequest() throws IOException
+    {
+        new HttpsPersistentEngine().send(null);
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_005: [If the requests are null or empty, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void sendPipelinedRejectsEmptyRequests() throws IOException
+    {
+        new HttpsPersistentEngine().sendPipelined(new ArrayList<HttpsRequest>());
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_006: [If the requests are not all for the same host and port, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void sendPipelinedRejectsRequestsForDifferentHosts() throws IOException
+    {
+        HttpsPersistentEngine engine = new HttpsPersistentEngine();
+        HttpsRequest first = new HttpsRequest(new URL("https://test-hub-1.azure-devices.net/a"), HttpsMethod.GET, new byte[0], engine);
+        HttpsRequest second = new HttpsRequest(new URL("https://test-hub-2.azure-devices.net/b"), HttpsMethod.GET, new byte[0], engine);
+
+        engine.sendPipelined(Arrays.asList(first, second));
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_007: [If a request that is not the last one uses the POST method, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void sendPipelinedRejectsPostBeforeLastRequest() throws IOException
+    {
+        HttpsPersistentEngine engine = new HttpsPersistentEngine();
+        HttpsRequest first = new HttpsRequest(new URL("https://test-hub.azure-devices.net/a"), HttpsMethod.POST, new byte[1], engine);
+        HttpsRequest second = new HttpsRequest(new URL("https://test-hub.azure-devices.net/b"), HttpsMethod.DELETE, new byte[0], engine);
+
+        engine.sendPipelined(Arrays.asList(first, second));
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_004: [The function shall send the request as a pipeline of one request.]
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_013: [The function shall return the responses in the order of the requests, with an empty body and the content as error reason if the status is 400 or higher.]
+    @Test
+    public void sendWritesRequestAndReadsResponse() throws IOException
+    {
+        this.server = new StubServer(1, OK_HELLO);
+        HttpsPersistentEngine engine = createPlainEngine(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+        HttpsResponse response = engine.send(
+                createRequest(engine, HttpsMethod.POST, "/devices/test-device/messages/events?api-version=2016-02-03",
+                        "test-body".getBytes(StandardCharsets.UTF_8))
+                        .setHeaderField("iothub-to", "/devices/test-device/messages/events"));
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(new String(response.getBody(), StandardCharsets.UTF_8), is("hello"));
+        assertThat(response.getHeaderField("etag"), is("\"1\""));
+        String request = this.server.requests.get(0);
+        assertThat(request, containsString("POST /devices/test-device/messages/events?api-version=2016-02-03 HTTP/1.1\r\n"));
+        assertThat(request, containsString("Host: localhost:" + this.server.getPort() + "\r\n"));
+        assertThat(request, containsString("iothub-to: /devices/test-device/messages/events\r\n"));
+        assertThat(request, containsString("Content-Length: 9\r\n"));
+        assertThat(request, containsString("\r\n\r\ntest-body"));
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_013: [The function shall return the responses in the order of the requests, with an empty body and the content as error reason if the status is 400 or higher.]
+    @Test
+    public void sendReturnsContentAsErrorReasonForErrorStatus() throws IOException
+    {
+        this.server = new StubServer(1, "HTTP/1.1 412 Precondition Failed\r\nContent-Length: 7\r\n\r\nno-etag");
+        HttpsPersistentEngine engine = createPlainEngine(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+        HttpsResponse response = engine.send(createRequest(engine, HttpsMethod.DELETE, "/a", new byte[0]));
+
+        assertThat(response.getStatus(), is(412));
+        assertThat(response.getBody().length, is(0));
+        assertThat(new String(response.getErrorReason(), StandardCharsets.UTF_8), is("no-etag"));
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_013: [The function shall return the responses in the order of the requests, with an empty body and the content as error reason if the status is 400 or higher.]
+    @Test
+    public void sendReadsChunkedResponse() throws IOException
+    {
+        this.server = new StubServer(1,
+                "HTTP/1.1 100 Continue\r\n\r\n"
+                + "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n3;ext=1\r\nhel\r\n2\r\nlo\r\n0\r\n\r\n",
+                OK_EMPTY);
+        HttpsPersistentEngine engine = createPlainEngine(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+        HttpsResponse first = engine.send(createRequest(engine, HttpsMethod.GET, "/a", new byte[0]));
+        HttpsResponse second = engine.send(createRequest(engine, HttpsMethod.GET, "/b", new byte[0]));
+
+        assertThat(new String(first.getBody(), StandardCharsets.UTF_8), is("hello"));
+        assertThat(second.getStatus(), is(204));
+        assertThat(this.server.connections.get(), is(1));
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_008: [The function shall send the requests on a connection to the host that is not in use, if one was used within the idle timeout, and on a new connection otherwise.]
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_011: [If the last response does not close the connection, the function shall keep the connection for the next requests to the host.]
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_014: [The function shall save the metrics the connections opened and reused are recorded in.]
+    @Test
+    public void sendReusesConnectionAndRecordsMetrics() throws IOException
+    {
+        this.server = new StubServer(1, OK_HELLO, OK_EMPTY, OK_HELLO);
+        HttpsPersistentEngine engine = createPlainEngine(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+        engine.setMetrics(metrics);
+
+        engine.send(createRequest(engine, HttpsMethod.POST, "/a", new byte[1]));
+        engine.send(createRequest(engine, HttpsMethod.DELETE, "/b", new byte[0]));
+        engine.send(createRequest(engine, HttpsMethod.GET, "/c", new byte[0]));
+
+        assertThat(this.server.connections.get(), is(1));
+        assertThat(this.server.requests.size(), is(3));
+        assertThat(metrics.getConnectionsOpened(), is(1L));
+        assertThat(metrics.getConnectionsReused(), is(2L));
+        assertThat(metrics.getTlsSessionsResumed(), is(0L));
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_008: [The function shall send the requests on a connection to the host that is not in use, if one was used within the idle timeout, and on a new connection otherwise.]
+    @Test
+    public void sendOpensNewConnectionOnceIdleTimeoutPassed() throws IOException, InterruptedException
+    {
+        this.server = new StubServer(1, OK_EMPTY, OK_EMPTY);
+        HttpsPersistentEngine engine = createPlainEngine(50);
+
+        engine.send(createRequest(engine, HttpsMethod.GET, "/a", new byte[0]));
+        Thread.sleep(100);
+        engine.send(createRequest(engine, HttpsMethod.GET, "/b", new byte[0]));
+
+        assertThat(this.server.connections.get(), is(2));
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_013: [The function shall return the responses in the order of the requests, with an empty body and the content as error reason if the status is 400 or higher.]
+    @Test
+    public void sendPipelinedWritesAllRequestsBeforeReadingResponses() throws IOException
+    {
+        // the server reads both requests before it responds to the first.
+        this.server = new StubServer(2, OK_EMPTY, OK_HELLO);
+        HttpsPersistentEngine engine = createPlainEngine(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+        List<HttpsResponse> responses = engine.sendPipelined(Arrays.asList(
+                createRequest(engine, HttpsMethod.DELETE, "/devices/test-device/messages/devicebound/1", new byte[0]),
+                createRequest(engine, HttpsMethod.POST, "/devices/test-device/messages/events", new byte[] { 42 })));
+
+        assertThat(responses.size(), is(2));
+        assertThat(responses.get(0).getStatus(), is(204));
+        assertThat(responses.get(1).getStatus(), is(200));
+        assertThat(this.server.requests.get(0), containsString("DELETE /devices/test-device/messages/devicebound/1 HTTP/1.1"));
+        assertThat(this.server.requests.get(1), containsString("POST /devices/test-device/messages/events HTTP/1.1"));
+        assertThat(this.server.connections.get(), is(1));
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_012: [If a response closes the connection before the last request, the function shall send the requests left on a new connection.]
+    @Test
+    public void sendPipelinedSendsRequestsLeftOnNewConnection() throws IOException
+    {
+        this.server = new StubServer(1, "HTTP/1.1 204 No Content\r\nConnection: close\r\n\r\n", OK_HELLO);
+        HttpsPersistentEngine engine = createPlainEngine(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+        List<HttpsResponse> responses = engine.sendPipelined(Arrays.asList(
+                createRequest(engine, HttpsMethod.DELETE, "/a", new byte[0]),
+                createRequest(engine, HttpsMethod.POST, "/b", new byte[1])));
+
+        assertThat(responses.get(0).getStatus(), is(204));
+        assertThat(responses.get(1).getStatus(), is(200));
+        assertThat(this.server.connections.get(), is(2));
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_009: [If a reused connection fails before any byte of a response is read, and not by timing out, and none of the requests uses the POST method, the function shall send the requests once more on a new connection.]
+    @Test
+    public void sendRetriesRequestOnConnectionClosedByServer() throws IOException
+    {
+        this.server = new StubServer(1, THEN_HANG_UP + OK_EMPTY, OK_HELLO);
+        HttpsPersistentEngine engine = createPlainEngine(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+        engine.setMetrics(metrics);
+
+        engine.send(createRequest(engine, HttpsMethod.GET, "/a", new byte[0]));
+        HttpsResponse response = engine.send(createRequest(engine, HttpsMethod.GET, "/b", new byte[0]));
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(this.server.connections.get(), is(2));
+        assertThat(metrics.getConnectionsOpened(), is(2L));
+        assertThat(metrics.getConnectionsReused(), is(1L));
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_010: [Otherwise, if the requests cannot be sent or their responses cannot be read, the function shall close the connection and throw an IOException.]
+    @Test
+    public void sendDoesNotRetryPostOnConnectionClosedByServer() throws IOException
+    {
+        this.server = new StubServer(1, THEN_HANG_UP + OK_EMPTY, OK_HELLO);
+        HttpsPersistentEngine engine = createPlainEngine(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+        engine.send(createRequest(engine, HttpsMethod.GET, "/a", new byte[0]));
+        try
+        {
+            engine.send(createRequest(engine, HttpsMethod.POST, "/b", new byte[1]));
+            fail("expected an IOException");
+        }
+        catch (IOException e)
+        {
+            assertThat(this.server.connections.get(), is(1));
+        }
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_016: [The function shall open new connections through the proxy the ProxySelector selects for the URL, tunneling through an HTTP proxy with a CONNECT request.]
+    @Test
+    public void sendTunnelsThroughHttpProxy() throws IOException
+    {
+        this.server = new StubServer(1, "HTTP/1.1 200 Connection established\r\n\r\n", OK_HELLO);
+        Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress("localhost", this.server.getPort()));
+        HttpsPersistentEngine engine = createPlainEngine(proxy, HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+        HttpsResponse response = engine.send(new HttpsRequest(new URL("https://test-hub.azure-devices.net/a"),
+                HttpsMethod.GET, new byte[0], engine).setReadTimeoutMillis(READ_TIMEOUT_MILLIS));
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(this.server.connections.get(), is(1));
+        assertThat(this.server.requests.get(0), containsString("CONNECT test-hub.azure-devices.net:443 HTTP/1.1\r\n"));
+        assertThat(this.server.requests.get(1), containsString("GET /a HTTP/1.1\r\nHost: test-hub.azure-devices.net\r\n"));
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_010: [Otherwise, if the requests cannot be sent or their responses cannot be read, the function shall close the connection and throw an IOException.]
+    @Test
+    public void sendThrowsIfNewConnectionFails() throws IOException
+    {
+        this.server = new StubServer(1, HANG_UP, OK_EMPTY);
+        HttpsPersistentEngine engine = createPlainEngine(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+        try
+        {
+            engine.send(createRequest(engine, HttpsMethod.GET, "/a", new byte[0]));
+            fail("expected an IOException");
+        }
+        catch (IOException e)
+        {
+            assertThat(this.server.connections.get(), is(1));
+        }
+    }
+
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_015: [The function shall close the connections that are not in use.]
+    @Test
+    public void closeClosesIdleConnections() throws IOException
+    {
+        this.server = new StubServer(1, OK_EMPTY, OK_EMPTY);
+        HttpsPersistentEngine engine = createPlainEngine(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+        engine.send(createRequest(engine, HttpsMethod.GET, "/a", new byte[0]));
+        engine.close();
+        engine.send(createRequest(engine, HttpsMethod.GET, "/b", new byte[0]));
+
+        assertThat(this.server.connections.get(), is(2));
+    }
+}
@@ -8,6 +8,7 @@ import static org.hamcrest.CoreMatchers.is;
 
 import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsConnection;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsEngine;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsRequest;
 import mockit.*;
 import org.junit.Test;
@@ -15,7 +16,9 @@ import org.junit.Test;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsMethod;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsResponse;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -624,4 +627,178 @@ public class HttpsRequestTest
             }
         };
     }
+    // Tests_SRS_HTTPSREQUEST_21_015: [If an engine is given, the function shall not open a connection, and shall throw an IllegalArgumentException if the URL does not use the HTTPS protocol or if a body is given to a request that is not a POST or a PUT request.]
+    @Test
+    public void constructorWithEngineDoesNotOpenConnection(@Mocked final HttpsConnection mockConn,
+            @Mocked final HttpsEngine mockEngine) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+            }
+        };
+
+        new HttpsRequest(mockUrl, HttpsMethod.POST, new byte[] { 1, 2, 3 }, mockEngine);
+
+        new Verifications()
+        {
+            {
+                new HttpsConnection((URL) any, (HttpsMethod) any);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSREQUEST_21_015: [If an engine is given, the function shall not open a connection, and shall throw an IllegalArgumentException if the URL does not use the HTTPS protocol or if a body is given to a request that is not a POST or a PUT request.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorWithEngineRejectsHttpUrl(@Mocked final HttpsEngine mockEngine) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "http";
+            }
+        };
+
+        new HttpsRequest(mockUrl, HttpsMethod.GET, new byte[0], mockEngine);
+    }
+
+    // Tests_SRS_HTTPSREQUEST_21_015: [If an engine is given, the function shall not open a connection, and shall throw an IllegalArgumentException if the URL does not use the HTTPS protocol or if a body is given to a request that is not a POST or a PUT request.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorWithEngineRejectsBodyForGet(@Mocked final HttpsEngine mockEngine) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+            }
+        };
+
+        new HttpsRequest(mockUrl, HttpsMethod.GET, new byte[] { 1 }, mockEngine);
+    }
+
+    // Tests_SRS_HTTPSREQUEST_21_016: [If the request has an engine, the function shall have the engine send it and return its response.]
+    @Test
+    public void sendWithEngineDelegatesToEngine(@Mocked final HttpsConnection mockConn,
+            @Mocked final HttpsEngine mockEngine, @Mocked final HttpsResponse mockResponse) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+            }
+        };
+        final HttpsRequest request = new HttpsRequest(mockUrl, HttpsMethod.DELETE, new byte[0], mockEngine);
+        new NonStrictExpectations()
+        {
+            {
+                mockEngine.send(request);
+                result = mockResponse;
+            }
+        };
+
+        HttpsResponse response = request.send();
+
+        assertThat(response, is(mockResponse));
+        new Verifications()
+        {
+            {
+                mockConn.connect();
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSREQUEST_21_017: [The getters shall return the URL, method, body, body stream and body length given in the constructor, and the header fields and read timeout set.]
+    @Test
+    public void gettersReturnRequestContent(@Mocked final HttpsEngine mockEngine) throws IOException
+    {
+        final byte[] body = { 1, 2, 3 };
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+            }
+        };
+
+        HttpsRequest request = new HttpsRequest(mockUrl, HttpsMethod.POST, body, mockEngine)
+                .setHeaderField("test-field", "test-value")
+                .setReadTimeoutMillis(1234);
+
+        assertThat(request.getUrl(), is(mockUrl));
+        assertThat(request.getMethod(), is(HttpsMethod.POST));
+        assertThat(request.getBody(), is(body));
+        assertThat(request.getBodyStream(), is((InputStream) null));
+        assertThat(request.getBodyLength(), is(body.length));
+        assertThat(request.getReadTimeoutMillis(), is(1234));
+        assertThat(request.getHeaderFields().get("test-field"), is("test-value"));
+        assertThat(request.getHeaderFields().get("User-Agent"),
+                is(TransportUtils.javaDeviceClientIdentifier + TransportUtils.clientVersion));
+    }
+
+    // Tests_SRS_HTTPSREQUEST_21_019: [If the body is streamed, the function shall hand the stream to the connection, which copies it while the request is sent.]
+    @Test
+    public void constructorHandsBodyStreamToConnection(@Mocked final HttpsConnection mockConn) throws IOException
+    {
+        final InputStream stream = new ByteArrayInputStream(new byte[] { 1, 2, 3 });
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+            }
+        };
+
+        new HttpsRequest(mockUrl, HttpsMethod.POST, stream, 3, null);
+
+        new Verifications()
+        {
+            {
+                mockConn.writeOutput(stream, 3);
+                mockConn.writeOutput((byte[]) any);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSREQUEST_21_018: [If the body is streamed, and the stream is null or the method is not POST or PUT, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsBodyStreamForGet(@Mocked final HttpsEngine mockEngine) throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+            }
+        };
+
+        new HttpsRequest(mockUrl, HttpsMethod.GET, new ByteArrayInputStream(new byte[0]), 0, mockEngine);
+    }
+
+    // Tests_SRS_HTTPSREQUEST_21_017: [The getters shall return the URL, method, body, body stream and body length given in the constructor, and the header fields and read timeout set.]
+    @Test
+    public void gettersReturnBodyStream(@Mocked final HttpsEngine mockEngine) throws IOException
+    {
+        final InputStream stream = new ByteArrayInputStream(new byte[] { 1, 2, 3 });
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+            }
+        };
+
+        HttpsRequest request = new HttpsRequest(mockUrl, HttpsMethod.POST, stream, 3, mockEngine);
+
+        assertThat(request.getBodyStream(), is(stream));
+        assertThat(request.getBodyLength(), is(3));
+        assertThat(request.getBody(), is((byte[]) null));
+    }
 }
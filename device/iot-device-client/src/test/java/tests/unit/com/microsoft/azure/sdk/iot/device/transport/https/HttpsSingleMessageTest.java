@@ -6,6 +6,7 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.transport.https;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import com.microsoft.azure.sdk.iot.device.Message;
 import com.microsoft.azure.sdk.iot.device.MessageProperty;
@@ -17,6 +18,10 @@ import mockit.NonStrictExpectations;
 import mockit.Verifications;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -38,8 +43,8 @@ public class HttpsSingleMessageTest
             {
                 mockMsg.getBytes();
                 result = body;
-                mockMsg.getProperties();
-                result = properties;
+                mockMsg.getPropertyView();
+                result = Arrays.asList(properties);
                 mockProperty.getName();
                 result = propertyName;
                 mockProperty.getValue();
@@ -73,8 +78,8 @@ public class HttpsSingleMessageTest
             {
                 mockMsg.getBytes();
                 result = body;
-                mockMsg.getProperties();
-                result = properties;
+                mockMsg.getPropertyView();
+                result = Arrays.asList(properties);
                 mockProperty.getName();
                 result = propertyName;
                 mockProperty.getValue();
@@ -96,6 +101,76 @@ public class HttpsSingleMessageTest
         };
     }
 
+    // Tests_SRS_HTTPSSINGLEMESSAGE_21_001: [If the message has a content encoding, the parsed HttpsSingleMessage shall carry it in the property 'iothub-contentencoding', and be Base64-encoded when batched.]
+    // Tests_SRS_HTTPSSINGLEMESSAGE_21_002: [If the message is Base64-encoded, the function shall return the message body encoded in Base64.]
+    @Test
+    public void parseHttpsMessageFromEncodedMessageSavesContentEncoding(
+            @Mocked final Message mockMsg)
+    {
+        final byte[] body = { 0x61, 0x62, 0x63 };
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBytes();
+                result = body;
+                mockMsg.getPropertyView();
+                result = Collections.emptyList();
+                mockMsg.getContentEncoding();
+                result = "gzip";
+            }
+        };
+
+        HttpsSingleMessage httpsMsg = HttpsSingleMessage.parseHttpsMessage(mockMsg);
+
+        MessageProperty[] properties = httpsMsg.getProperties();
+        assertThat(properties.length, is(1));
+        assertThat(properties[0].getName(), is("iothub-contentencoding"));
+        assertThat(properties[0].getValue(), is("gzip"));
+        assertThat(httpsMsg.isBase64Encoded(), is(true));
+        assertThat(httpsMsg.getBodyAsString(), is("YWJj"));
+        assertThat(httpsMsg.getBody(), is(body));
+    }
+
+    // Tests_SRS_HTTPSSINGLEMESSAGE_21_003: [If the body of the message is still in its stream, the parsed HttpsSingleMessage shall take the stream over, to copy it into the request, instead of reading the body.]
+    // Tests_SRS_HTTPSSINGLEMESSAGE_21_004: [If the message body is streamed, the function shall throw an IllegalStateException.]
+    // Tests_SRS_HTTPSSINGLEMESSAGE_21_005: [The function shall return whether the message body is streamed.]
+    // Tests_SRS_HTTPSSINGLEMESSAGE_21_006: [The function shall return the stream of the message body, or null if it is not streamed.]
+    // Tests_SRS_HTTPSSINGLEMESSAGE_21_007: [The function shall return the number of bytes in the message body.]
+    @Test
+    public void parseHttpsMessageFromStreamedMessageTakesStream()
+    {
+        InputStream stream = new ByteArrayInputStream(new byte[] { 1, 2, 3 });
+        Message msg = new Message(stream, 3);
+
+        HttpsSingleMessage httpsMsg = HttpsSingleMessage.parseHttpsMessage(msg);
+
+        assertThat(httpsMsg.isBodyStreamed(), is(true));
+        assertThat(httpsMsg.getBodyStream() == stream, is(true));
+        assertThat(httpsMsg.getBodyLength(), is(3));
+        assertThat(msg.hasBodyStream(), is(false));
+        try
+        {
+            httpsMsg.getBody();
+            fail("Expected an IllegalStateException.");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected.
+        }
+    }
+
+    // Tests_SRS_HTTPSSINGLEMESSAGE_21_005: [The function shall return whether the message body is streamed.]
+    // Tests_SRS_HTTPSSINGLEMESSAGE_21_007: [The function shall return the number of bytes in the message body.]
+    @Test
+    public void parseHttpsMessageFromReadMessageDoesNotStream()
+    {
+        HttpsSingleMessage httpsMsg = HttpsSingleMessage.parseHttpsMessage(new Message(new byte[] { 1, 2 }));
+
+        assertThat(httpsMsg.isBodyStreamed(), is(false));
+        assertThat(httpsMsg.getBodyLength(), is(2));
+        assertThat(httpsMsg.getBody(), is(new byte[] { 1, 2 }));
+    }
+
     // Tests_SRS_HTTPSSINGLEMESSAGE_11_004: [The parsed HttpsSingleMessage shall have a copy of the original response body as its body.]
     @Test
     public void parseHttpsMessageFromResponseCopiesBody(
@@ -328,8 +403,8 @@ public class HttpsSingleMessageTest
             {
                 mockMsg.getBytes();
                 result = body;
-                mockMsg.getProperties();
-                result = properties;
+                mockMsg.getPropertyView();
+                result = Arrays.asList(properties);
                 mockProperty.getName();
                 result = propertyName;
                 mockProperty.getValue();
@@ -364,8 +439,8 @@ public class HttpsSingleMessageTest
             {
                 mockMsg.getBytes();
                 result = body;
-                mockMsg.getProperties();
-                result = properties;
+                mockMsg.getPropertyView();
+                result = Arrays.asList(properties);
                 mockProperty.getName();
                 result = propertyName;
                 mockProperty.getValue();
@@ -397,8 +472,8 @@ public class HttpsSingleMessageTest
             {
                 mockMsg.getBytes();
                 result = body;
-                mockMsg.getProperties();
-                result = properties;
+                mockMsg.getPropertyView();
+                result = Arrays.asList(properties);
                 mockProperty.getName();
                 result = propertyName;
                 mockProperty.getValue();
@@ -430,8 +505,8 @@ public class HttpsSingleMessageTest
             {
                 mockMsg.getBytes();
                 result = body;
-                mockMsg.getProperties();
-                result = properties;
+                mockMsg.getPropertyView();
+                result = Arrays.asList(properties);
                 mockProperty.getName();
                 result = propertyName;
                 result = httpsPropertyName;
@@ -451,7 +526,7 @@ public class HttpsSingleMessageTest
         {
             {
                 new MessageProperty(expectedPropertyName, expectedPropertyValue);
-                times = 2;
+                times = 1;
             }
         };
     }
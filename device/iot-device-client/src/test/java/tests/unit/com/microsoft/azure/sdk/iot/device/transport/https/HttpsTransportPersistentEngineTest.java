@@ -0,0 +1,158 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.https;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.IotHubMessageResult;
+import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessageCallback;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenManager;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsPersistentEngine;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsTransport;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for HttpsTransport sending its requests through an
+ * HttpsPersistentEngine, to a local stub server speaking plain HTTP.
+ */
+public class HttpsTransportPersistentEngineTest
+{
+    private static final String MESSAGE = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\netag: \"test-etag\"\r\n\r\nhi";
+    private static final String OK_EMPTY = "HTTP/1.1 204 No Content\r\n\r\n";
+
+    @Mocked
+    DeviceClientConfig mockConfig;
+    @Mocked
+    IotHubSasTokenManager mockSasTokenManager;
+
+    private HttpsPersistentEngineTest.StubServer server;
+
+    @After
+    public void stopServer() throws IOException
+    {
+        if (this.server != null)
+        {
+            this.server.shutdown();
+        }
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_027: [The function shall leave the message result pending, so that the next call to sendMessages sends it along with the next event, and raise the send signal, if any.]
+    // Tests_SRS_HTTPSTRANSPORT_21_029: [If a message result is pending, the function shall send it along with the request, with the connection's sendMessageResultAndEvent.]
+    @Test
+    public void sendMessagesSendsMessageResultAndEventOnOneConnection() throws IOException
+    {
+        this.server = new HttpsPersistentEngineTest.StubServer(1, MESSAGE, OK_EMPTY, OK_EMPTY);
+        final List<IotHubStatusCode> eventStatuses = new ArrayList<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getIotHubHostname();
+                result = "localhost:" + server.getPort();
+                mockConfig.getDeviceId();
+                result = "test-device";
+                mockConfig.getReadTimeoutMillis();
+                result = 5000;
+                mockConfig.getSasTokenManager();
+                result = mockSasTokenManager;
+                mockSasTokenManager.getSasToken();
+                result = "test-token";
+                mockConfig.getMessageCallback();
+                result = new MessageCallback()
+                {
+                    @Override
+                    public IotHubMessageResult execute(Message message, Object callbackContext)
+                    {
+                        return IotHubMessageResult.COMPLETE;
+                    }
+                };
+            }
+        };
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.setHttpsEngine(
+                HttpsPersistentEngineTest.createPlainEngine(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS));
+        transport.open();
+
+        transport.handleMessage();
+        transport.addMessage(new Message("test-event"), new IotHubEventCallback()
+        {
+            @Override
+            public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+            {
+                eventStatuses.add(responseStatus);
+            }
+        }, null);
+        transport.sendMessages();
+        transport.invokeCallbacks();
+
+        assertThat(transport.isEmpty(), is(true));
+        assertThat(eventStatuses.size(), is(1));
+        assertThat(eventStatuses.get(0), is(IotHubStatusCode.OK_EMPTY));
+        assertThat(this.server.connections.get(), is(1));
+        assertThat(this.server.requests.size(), is(3));
+        assertThat(this.server.requests.get(0), containsString("GET /devices/test-device/messages/devicebound"));
+        assertThat(this.server.requests.get(1), containsString("DELETE /devices/test-device/messages/devicebound/test-etag"));
+        assertThat(this.server.requests.get(1), containsString("if-match: test-etag\r\n"));
+        assertThat(this.server.requests.get(2), containsString("POST /devices/test-device/messages/events"));
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_032: [A message whose body is still in its stream shall be sent on its own, in the un-batched message format.]
+    // Tests_SRS_HTTPSPERSISTENTENGINE_21_018: [If the body of a request is streamed, the function shall copy the stream to the connection, and close it.]
+    @Test
+    public void sendMessagesStreamsMessageBody() throws IOException
+    {
+        this.server = new HttpsPersistentEngineTest.StubServer(1, OK_EMPTY);
+        final List<IotHubStatusCode> eventStatuses = new ArrayList<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getIotHubHostname();
+                result = "localhost:" + server.getPort();
+                mockConfig.getDeviceId();
+                result = "test-device";
+                mockConfig.getReadTimeoutMillis();
+                result = 5000;
+                mockConfig.getSasTokenManager();
+                result = mockSasTokenManager;
+                mockSasTokenManager.getSasToken();
+                result = "test-token";
+            }
+        };
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.setHttpsEngine(
+                HttpsPersistentEngineTest.createPlainEngine(HttpsPersistentEngine.DEFAULT_IDLE_TIMEOUT_MILLIS));
+        transport.open();
+
+        byte[] body = "streamed-event-and-more".getBytes("UTF-8");
+        transport.addMessage(new Message(new ByteArrayInputStream(body), 14), new IotHubEventCallback()
+        {
+            @Override
+            public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+            {
+                eventStatuses.add(responseStatus);
+            }
+        }, null);
+        transport.sendMessages();
+        transport.invokeCallbacks();
+
+        assertThat(eventStatuses.size(), is(1));
+        assertThat(eventStatuses.get(0), is(IotHubStatusCode.OK_EMPTY));
+        assertThat(this.server.requests.size(), is(1));
+        assertThat(this.server.requests.get(0), containsString("Content-Length: 14\r\n"));
+        assertThat(this.server.requests.get(0).endsWith("\r\n\r\nstreamed-event"), is(true));
+    }
+}
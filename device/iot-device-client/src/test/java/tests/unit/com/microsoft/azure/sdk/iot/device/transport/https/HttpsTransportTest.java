@@ -9,6 +9,7 @@ import static org.hamcrest.CoreMatchers.is;
 import com.microsoft.azure.sdk.iot.device.*;
 
 import com.microsoft.azure.sdk.iot.device.MessageCallback;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsEngine;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsIotHubConnection;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsBatchMessage;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsMessage;
@@ -16,7 +17,9 @@ import com.microsoft.azure.sdk.iot.device.transport.https.HttpsSingleMessage;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsTransport;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 import junit.framework.AssertionFailedError;
+import mockit.Deencapsulation;
 import mockit.MockUp;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
@@ -24,9 +27,13 @@ import mockit.Verifications;
 import mockit.VerificationsInOrder;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 
@@ -460,6 +467,45 @@ public class HttpsTransportTest
         transport.invokeCallbacks();
     }
 
+    // Tests_SRS_HTTPSTRANSPORT_21_008: [If a callback dispatcher is set, the function shall hand every callback to it instead of invoking it.]
+    // Tests_SRS_HTTPSTRANSPORT_21_009: [The function shall save the callback dispatcher.]
+    @Test
+    public void invokeCallbacksHandsCallbacksToDispatcher(
+            @Mocked final Message mockMsg,
+            @Mocked final HttpsSingleMessage mockHttpsMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final HttpsBatchMessage mockBatch,
+            @Mocked final IotHubCallbackDispatcher mockDispatcher)
+            throws IOException
+    {
+        final Map<String, Object> context = new HashMap<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockConn.sendEvent((HttpsMessage) any);
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.setCallbackDispatcher(mockDispatcher);
+        transport.addMessage(mockMsg, mockCallback, context);
+        transport.addMessage(mockMsg, mockCallback, context);
+        transport.sendMessages();
+        transport.invokeCallbacks();
+
+        new Verifications()
+        {
+            {
+                mockDispatcher.dispatch((IotHubCallbackPacket) any);
+                times = 2;
+                mockCallback.execute((IotHubStatusCode) any, any);
+                times = 0;
+            }
+        };
+    }
+
     // Tests_SRS_HTTPSTRANSPORT_11_031: [If the transport is closed, the function shall throw an IllegalStateException.]
     @Test(expected = IllegalStateException.class)
     public void invokeCallbacksFailsIfTransportAlreadyClosed()
@@ -523,37 +569,197 @@ public class HttpsTransportTest
     }
 
     // Tests_SRS_HTTPSTRANSPORT_11_011: [The function shall return the message result (one of COMPLETE, ABANDON, or REJECT) to the IoT Hub.]
+    // Tests_SRS_HTTPSTRANSPORT_21_027: [The function shall leave the message result pending, so that the next call to sendMessages sends it along with the next event, and raise the send signal, if any.]
     @Test
-    public void handleMessageSendsMessageResult(
-            @Mocked final IotHubStatusCode mockStatus,
+    public void handleMessageLeavesMessageResultPending(
+            @Mocked final MessageCallback mockCallback,
+            @Mocked final Message mockMessage,
+            @Mocked final IotHubSendSignal mockSignal)
+            throws URISyntaxException, IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockCallback.execute((Message) any, any);
+                result = IotHubMessageResult.COMPLETE;
+            }
+        };
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.setSendSignal(mockSignal);
+        transport.open();
+        transport.handleMessage();
+
+        assertThat(transport.isEmpty(), is(false));
+        new Verifications()
+        {
+            {
+                mockConn.sendMessageResult((IotHubMessageResult) any);
+                times = 0;
+                mockSignal.signal();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_028: [If a message result is pending and there is no message to send, the function shall send the message result on its own.]
+    // Tests_SRS_HTTPSTRANSPORT_11_015: [The function shall return true if the waiting list, in progress list, and callback list are all empty and no message result is pending, and false otherwise.]
+    @Test
+    public void sendMessagesSendsPendingMessageResultOnItsOwn(
             @Mocked final MessageCallback mockCallback,
             @Mocked final Message mockMessage)
             throws URISyntaxException, IOException
     {
-        final IotHubMessageResult messageResult =
-                IotHubMessageResult.COMPLETE;
         new NonStrictExpectations()
         {
             {
                 mockCallback.execute((Message) any, any);
-                result = messageResult;
+                result = IotHubMessageResult.ABANDON;
             }
         };
 
         HttpsTransport transport = new HttpsTransport(mockConfig);
         transport.open();
         transport.handleMessage();
+        transport.sendMessages();
+        transport.sendMessages();
 
-        final IotHubMessageResult expectedResult = messageResult;
+        assertThat(transport.isEmpty(), is(true));
         new Verifications()
         {
             {
-                mockConn.sendMessageResult(expectedResult);
+                mockConn.sendMessageResult(IotHubMessageResult.ABANDON);
+                times = 1;
+                mockConn.sendMessageResultAndEvent((IotHubMessageResult) any, (HttpsMessage) any);
+                times = 0;
             }
         };
     }
 
-    // Tests_SRS_HTTPSTRANSPORT_11_020: [If the response from sending the IoT Hub message result does not have status code OK_EMPTY, the function shall throw an IOException.]
+    // Tests_SRS_HTTPSTRANSPORT_21_029: [If a message result is pending, the function shall send it along with the request, with the connection's sendMessageResultAndEvent.]
+    @Test
+    public void sendMessagesSendsPendingMessageResultWithEvent(
+            @Mocked final MessageCallback mockCallback,
+            @Mocked final Message mockMessage,
+            @Mocked final HttpsSingleMessage mockHttpsMsg,
+            @Mocked final IotHubEventCallback mockEventCallback)
+            throws URISyntaxException, IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockCallback.execute((Message) any, any);
+                result = IotHubMessageResult.COMPLETE;
+                HttpsSingleMessage.parseHttpsMessage(mockMessage);
+                result = mockHttpsMsg;
+                mockConn.sendMessageResultAndEvent((IotHubMessageResult) any, (HttpsMessage) any);
+                result = Arrays.asList(IotHubStatusCode.OK_EMPTY, IotHubStatusCode.OK_EMPTY);
+            }
+        };
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.handleMessage();
+        transport.addMessage(mockMessage, mockEventCallback, null);
+        transport.sendMessages();
+        transport.invokeCallbacks();
+
+        assertThat(transport.isEmpty(), is(true));
+        new Verifications()
+        {
+            {
+                mockConn.sendMessageResultAndEvent(IotHubMessageResult.COMPLETE, (HttpsMessage) any);
+                times = 1;
+                mockConn.sendMessageResult((IotHubMessageResult) any);
+                times = 0;
+                mockConn.sendEvent((HttpsMessage) any);
+                times = 0;
+                mockEventCallback.execute(IotHubStatusCode.OK_EMPTY, null);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_030: [If the IoT Hub did not accept the message result sent along with the request, the function shall throw an IOException once the messages are completed.]
+    @Test
+    public void sendMessagesCompletesEventsBeforeThrowingIfMessageResultRefused(
+            @Mocked final MessageCallback mockCallback,
+            @Mocked final Message mockMessage,
+            @Mocked final HttpsSingleMessage mockHttpsMsg,
+            @Mocked final IotHubEventCallback mockEventCallback)
+            throws URISyntaxException, IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockCallback.execute((Message) any, any);
+                result = IotHubMessageResult.REJECT;
+                HttpsSingleMessage.parseHttpsMessage(mockMessage);
+                result = mockHttpsMsg;
+                mockConn.sendMessageResultAndEvent((IotHubMessageResult) any, (HttpsMessage) any);
+                result = Arrays.asList(IotHubStatusCode.PRECONDITION_FAILED, IotHubStatusCode.OK_EMPTY);
+                Deencapsulation.invoke(HttpsIotHubConnection.class, "checkMessageResultStatus",
+                        IotHubStatusCode.PRECONDITION_FAILED);
+                result = new IOException();
+            }
+        };
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.handleMessage();
+        transport.addMessage(mockMessage, mockEventCallback, null);
+        try
+        {
+            transport.sendMessages();
+            throw new AssertionFailedError("expected an IOException");
+        }
+        catch (IOException e)
+        {
+            transport.invokeCallbacks();
+        }
+
+        assertThat(transport.isEmpty(), is(true));
+        new Verifications()
+        {
+            {
+                mockEventCallback.execute(IotHubStatusCode.OK_EMPTY, null);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_031: [If the result of the previous message is still pending, the function shall send it on its own before polling, since the next message replaces the e-tag it refers to.]
+    @Test
+    public void handleMessageSendsPendingMessageResultBeforePolling(
+            @Mocked final MessageCallback mockCallback,
+            @Mocked final Message mockMessage)
+            throws URISyntaxException, IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockCallback.execute((Message) any, any);
+                result = IotHubMessageResult.COMPLETE;
+            }
+        };
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.handleMessage();
+        transport.handleMessage();
+
+        new VerificationsInOrder()
+        {
+            {
+                mockConn.receiveMessage();
+                mockConn.sendMessageResult(IotHubMessageResult.COMPLETE);
+                times = 1;
+                mockConn.receiveMessage();
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_11_020: [If the response from sending the IoT Hub message result does not have status code OK_EMPTY, the function that sends it shall throw an IOException.]
     @Test(expected = IOException.class)
     public void handleMessageThrowsIOExceptionIfSendResultFails(
             @Mocked final IotHubStatusCode mockStatus,
@@ -572,6 +778,7 @@ public class HttpsTransportTest
         HttpsTransport transport = new HttpsTransport(mockConfig);
         transport.open();
         transport.handleMessage();
+        transport.handleMessage();
     }
 
     // Tests_SRS_HTTPSTRANSPORT_11_033: [If the transport is closed, the function shall throw an IllegalStateException.]
@@ -593,7 +800,211 @@ public class HttpsTransportTest
         transport.handleMessage();
     }
 
-    // Tests_SRS_HTTPSTRANSPORT_11_015: [The function shall return true if the waiting list, in progress list, and callback list are all empty, and false otherwise.]
+    // Tests_SRS_HTTPSTRANSPORT_21_004: [If an outbound buffer is set, the function shall add the packet only if the buffer admits it.]
+    // Tests_SRS_HTTPSTRANSPORT_21_006: [The function shall save the outbound buffer.]
+    @Test
+    public void addMessageDoesNotQueuePacketDroppedByOutboundBuffer(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final IotHubOutboundBuffer mockBuffer)
+            throws IOException
+    {
+        final Map<String, Object> context = new HashMap<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockBuffer.acquire((IotHubOutboundPacket) any, (Queue<IotHubOutboundPacket>) any, (Queue<IotHubCallbackPacket>) any);
+                result = false;
+            }
+        };
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.setOutboundBuffer(mockBuffer);
+        transport.addMessage(mockMsg, mockCallback, context);
+
+        assertThat(transport.isEmpty(), is(true));
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_005: [If an outbound buffer is set, the function shall release every completed packet from it.]
+    @Test
+    public void sendMessagesReleasesSentPacketsFromOutboundBuffer(
+            @Mocked final Message mockMsg,
+            @Mocked final HttpsSingleMessage mockHttpsMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final HttpsBatchMessage mockBatch,
+            @Mocked final IotHubOutboundBuffer mockBuffer)
+            throws IOException
+    {
+        final Map<String, Object> context = new HashMap<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockBuffer.acquire((IotHubOutboundPacket) any, (Queue<IotHubOutboundPacket>) any, (Queue<IotHubCallbackPacket>) any);
+                result = true;
+                mockConn.sendEvent((HttpsMessage) any);
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.setOutboundBuffer(mockBuffer);
+        transport.addMessage(mockMsg, mockCallback, context);
+        transport.sendMessages();
+
+        new Verifications()
+        {
+            {
+                mockBuffer.release((IotHubOutboundPacket) any);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_014: [The function shall remove the expired packets from the waiting list, release and checkpoint them, and add a callback with the MESSAGE_EXPIRED status for each to the callback list.]
+    @Test
+    public void sendMessagesCompletesExpiredWaitingPackets(
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final IotHubOutboundBuffer mockBuffer,
+            @Mocked final IotHubOutboundJournal mockJournal)
+            throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockBuffer.acquire((IotHubOutboundPacket) any, (Queue<IotHubOutboundPacket>) any, (Queue<IotHubCallbackPacket>) any);
+                result = true;
+            }
+        };
+        Message stale = new Message(new byte[1]);
+        stale.setExpiryTime(-1000);
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.setOutboundBuffer(mockBuffer);
+        transport.setOutboundJournal(mockJournal);
+        transport.addMessage(stale, mockCallback, null);
+        transport.sendMessages();
+
+        Queue<IotHubCallbackPacket> callbackList = Deencapsulation.getField(transport, "callbackList");
+        assertThat(callbackList.size(), is(1));
+        assertThat(callbackList.peek().getStatus(), is(IotHubStatusCode.MESSAGE_EXPIRED));
+        assertThat(transport.isEmpty(), is(false));
+        new Verifications()
+        {
+            {
+                mockConn.sendEvent((HttpsMessage) any);
+                times = 0;
+                mockBuffer.release((IotHubOutboundPacket) any);
+                times = 1;
+                mockJournal.checkpoint((IotHubOutboundPacket) any);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_015: [The function shall also remove the expired packets of a failed request before it is sent again.]
+    @Test
+    public void sendMessagesDropsExpiredPacketsOfFailedRequest(
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException
+    {
+        Message stale = new Message(new byte[1]);
+        stale.setExpiryTime(-1000);
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        Queue<IotHubOutboundPacket> inProgressList = Deencapsulation.getField(transport, "inProgressList");
+        inProgressList.add(new IotHubOutboundPacket(stale, mockCallback, null));
+        transport.sendMessages();
+
+        Queue<IotHubCallbackPacket> callbackList = Deencapsulation.getField(transport, "callbackList");
+        assertThat(inProgressList.isEmpty(), is(true));
+        assertThat(callbackList.peek().getStatus(), is(IotHubStatusCode.MESSAGE_EXPIRED));
+        new Verifications()
+        {
+            {
+                mockConn.sendEvent((HttpsMessage) any);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_007: [The function shall remove and return all packets on the in progress list followed by all packets on the waiting list, and release them from the outbound buffer.]
+    @Test
+    public void removePendingPacketsRemovesAndReleasesPendingPackets(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final IotHubOutboundBuffer mockBuffer)
+            throws IOException
+    {
+        final Map<String, Object> context = new HashMap<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockBuffer.acquire((IotHubOutboundPacket) any, (Queue<IotHubOutboundPacket>) any, (Queue<IotHubCallbackPacket>) any);
+                result = true;
+            }
+        };
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.setOutboundBuffer(mockBuffer);
+        transport.addMessage(mockMsg, mockCallback, context);
+        transport.addMessage(mockMsg, mockCallback, context);
+        List<IotHubOutboundPacket> pending = transport.removePendingPackets();
+
+        assertThat(pending.size(), is(2));
+        assertThat(transport.isEmpty(), is(true));
+        new Verifications()
+        {
+            {
+                mockBuffer.release((IotHubOutboundPacket) any);
+                times = 2;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_010: [If an outbound journal is set, the function shall record the packet in it before adding it to the transport queue.]
+    // Tests_SRS_HTTPSTRANSPORT_21_011: [If an outbound journal is set, the function shall checkpoint every completed packet in it.]
+    // Tests_SRS_HTTPSTRANSPORT_21_012: [The function shall save the outbound journal.]
+    @Test
+    public void outboundJournalRecordsAddedAndCheckpointsSentPackets(
+            @Mocked final Message mockMsg,
+            @Mocked final HttpsSingleMessage mockHttpsMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final HttpsBatchMessage mockBatch,
+            @Mocked final IotHubOutboundJournal mockJournal)
+            throws IOException
+    {
+        final Map<String, Object> context = new HashMap<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockConn.sendEvent((HttpsMessage) any);
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.setOutboundJournal(mockJournal);
+        transport.addMessage(mockMsg, mockCallback, context);
+        transport.sendMessages();
+
+        new VerificationsInOrder()
+        {
+            {
+                mockJournal.record((IotHubOutboundPacket) any);
+                times = 1;
+                mockJournal.checkpoint((IotHubOutboundPacket) any);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_11_015: [The function shall return true if the waiting list, in progress list, and callback list are all empty and no message result is pending, and false otherwise.]
     @Test
     public void isEmptyReturnsFalseIfWaitingListIsNotEmpty(
             @Mocked final Message mockMsg,
@@ -611,7 +1022,7 @@ public class HttpsTransportTest
         assertThat(testIsEmpty, is(expectedIsEmpty));
     }
 
-    // Tests_SRS_HTTPSTRANSPORT_11_015: [The function shall return true if the waiting list, in progress list, and callback list are all empty, and false otherwise.]
+    // Tests_SRS_HTTPSTRANSPORT_11_015: [The function shall return true if the waiting list, in progress list, and callback list are all empty and no message result is pending, and false otherwise.]
     @Test
     public void isEmptyReturnsFalseIfCallbackListIsNotEmpty(
             @Mocked final Message mockMsg,
@@ -644,7 +1055,7 @@ public class HttpsTransportTest
         assertThat(testIsEmpty, is(expectedIsEmpty));
     }
 
-    // Tests_SRS_HTTPSTRANSPORT_11_015: [The function shall return true if the waiting list, in progress list, and callback list are all empty, and false otherwise.]
+    // Tests_SRS_HTTPSTRANSPORT_11_015: [The function shall return true if the waiting list, in progress list, and callback list are all empty and no message result is pending, and false otherwise.]
     @Test
     public void isEmptyReturnsTrueIfEmpty(
             @Mocked final Message mockMsg,
@@ -677,4 +1088,203 @@ public class HttpsTransportTest
         final boolean expectedIsEmpty = true;
         assertThat(testIsEmpty, is(expectedIsEmpty));
     }
+    // Tests_SRS_HTTPSTRANSPORT_21_016: [If metrics are set, the function shall record the number and body bytes of the messages sent in the request.]
+    // Tests_SRS_HTTPSTRANSPORT_21_017: [If metrics are set, the function shall sample the number of messages waiting once the response is handled.]
+    // Tests_SRS_HTTPSTRANSPORT_21_018: [If metrics are set and the IoT Hub accepted the messages, the function shall record the acknowledgement of each.]
+    // Tests_SRS_HTTPSTRANSPORT_21_021: [The function shall save the metrics.]
+    @Test
+    public void sendMessagesRecordsBatchInMetrics(
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockConn.sendEvent((HttpsMessage) any);
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.setMetrics(metrics);
+        transport.addMessage(new Message(new byte[3]), mockCallback, null);
+        transport.addMessage(new Message(new byte[4]), mockCallback, null);
+        transport.sendMessages();
+
+        assertThat(metrics.getMessagesSent(), is(2L));
+        assertThat(metrics.getBytesSent(), is(7L));
+        assertThat(metrics.getBatchSizeMax(), is(2L));
+        assertThat(metrics.getMessagesAcknowledged(), is(2L));
+        assertThat(metrics.getQueueDepth(), is(0L));
+        assertThat(metrics.getInFlightCount(), is(0L));
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_018: [If metrics are set and the IoT Hub accepted the messages, the function shall record the acknowledgement of each.]
+    // Tests_SRS_HTTPSTRANSPORT_21_019: [If metrics are set, the function shall record the time each callback it invokes runs for.]
+    @Test
+    public void refusedMessagesAreNotRecordedAsAcknowledged(
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockConn.sendEvent((HttpsMessage) any);
+                result = IotHubStatusCode.ERROR;
+            }
+        };
+        IotHubClientMetrics metrics = new IotHubClientMetrics();
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.setMetrics(metrics);
+        transport.addMessage(new Message(new byte[3]), mockCallback, null);
+        transport.sendMessages();
+        transport.invokeCallbacks();
+
+        assertThat(metrics.getMessagesSent(), is(1L));
+        assertThat(metrics.getMessagesAcknowledged(), is(0L));
+        assertThat(metrics.getCallbackDurations().getCount(), is(1L));
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_032: [A message whose body is still in its stream shall be sent on its own, in the un-batched message format.]
+    @Test
+    public void sendMessagesSendsStreamedMessageOnItsOwn(
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException
+    {
+        final List<HttpsMessage> sent = new ArrayList<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockConn.sendEvent((HttpsMessage) any);
+                result = new mockit.Delegate<IotHubStatusCode>()
+                {
+                    @SuppressWarnings("unused")
+                    IotHubStatusCode sendEvent(HttpsMessage msg)
+                    {
+                        sent.add(msg);
+                        return IotHubStatusCode.OK_EMPTY;
+                    }
+                };
+            }
+        };
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.addMessage(new Message(new byte[3]), mockCallback, null);
+        transport.addMessage(new Message(new ByteArrayInputStream(new byte[4]), 4), mockCallback, null);
+        transport.addMessage(new Message(new byte[5]), mockCallback, null);
+        transport.sendMessages();
+        transport.sendMessages();
+        transport.sendMessages();
+
+        assertThat(sent.size(), is(3));
+        assertThat(sent.get(0) instanceof HttpsSingleMessage, is(true));
+        assertThat(((HttpsSingleMessage) sent.get(1)).isBodyStreamed(), is(true));
+        assertThat(((HttpsSingleMessage) sent.get(1)).getBodyLength(), is(4));
+        assertThat(((HttpsSingleMessage) sent.get(2)).getBodyLength(), is(5));
+        assertThat(transport.isEmpty(), is(false));
+        transport.invokeCallbacks();
+        assertThat(transport.isEmpty(), is(true));
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_033: [If the body of the message sent was streamed and the send request fails, the function shall complete the message with the status ERROR, since its body cannot be read again, and throw the IOException.]
+    @Test
+    public void sendMessagesCompletesFailedStreamedMessageWithError() throws IOException
+    {
+        final List<IotHubStatusCode> statuses = new ArrayList<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockConn.sendEvent((HttpsMessage) any);
+                result = new IOException("failed");
+            }
+        };
+
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.open();
+        transport.addMessage(new Message(new ByteArrayInputStream(new byte[4]), 4), new IotHubEventCallback()
+        {
+            @Override
+            public void execute(IotHubStatusCode responseStatus, Object callbackContext)
+            {
+                statuses.add(responseStatus);
+            }
+        }, null);
+        try
+        {
+            transport.sendMessages();
+            throw new AssertionFailedError("Expected an IOException.");
+        }
+        catch (IOException e)
+        {
+            assertThat(e.getMessage(), is("failed"));
+        }
+        transport.invokeCallbacks();
+
+        assertThat(statuses, is(Arrays.asList(IotHubStatusCode.ERROR)));
+        assertThat(transport.isEmpty(), is(true));
+    }
+    // Tests_SRS_HTTPSTRANSPORT_21_022: [If an HTTPS engine is set, the function shall have the connection send the requests with it.]
+    // Tests_SRS_HTTPSTRANSPORT_21_026: [The function shall save the HTTPS engine.]
+    @Test
+    public void openCreatesConnectionWithHttpsEngine(@Mocked final HttpsEngine mockEngine) throws IOException
+    {
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.setHttpsEngine(mockEngine);
+        transport.open();
+
+        final DeviceClientConfig expectedConfig = mockConfig;
+        new Verifications()
+        {
+            {
+                new HttpsIotHubConnection(expectedConfig, mockEngine);
+                times = 1;
+                new HttpsIotHubConnection(expectedConfig);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_023: [The function shall register the metrics, if any, with the connection.]
+    // Tests_SRS_HTTPSTRANSPORT_21_025: [If the transport was opened, the function shall register the metrics with the connection.]
+    @Test
+    public void openAndSetMetricsRegisterMetricsWithConnection() throws IOException
+    {
+        final IotHubClientMetrics metrics = new IotHubClientMetrics();
+        final IotHubClientMetrics otherMetrics = new IotHubClientMetrics();
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.setMetrics(metrics);
+        transport.open();
+        transport.setMetrics(otherMetrics);
+
+        new VerificationsInOrder()
+        {
+            {
+                mockConn.setMetrics(metrics);
+                mockConn.setMetrics(otherMetrics);
+            }
+        };
+    }
+
+    // Tests_SRS_HTTPSTRANSPORT_21_024: [If the transport was opened, the function shall close the connections of the HTTPS connection that are not in use.]
+    @Test
+    public void closeClosesConnection() throws IOException
+    {
+        HttpsTransport transport = new HttpsTransport(mockConfig);
+        transport.close();
+        transport.open();
+        transport.close();
+
+        new Verifications()
+        {
+            {
+                mockConn.close();
+                times = 1;
+            }
+        };
+    }
 }
@@ -4,10 +4,12 @@
 package tests.unit.com.microsoft.azure.sdk.iot.device.transport.mqtt;
 
 import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
 import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
 import com.microsoft.azure.sdk.iot.device.Message;
-import com.microsoft.azure.sdk.iot.device.auth.IotHubSasToken;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenManager;
 import com.microsoft.azure.sdk.iot.device.net.IotHubUri;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 import com.microsoft.azure.sdk.iot.device.transport.State;
 import com.microsoft.azure.sdk.iot.device.transport.TransportUtils;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.*;
@@ -15,6 +17,7 @@ import mockit.Deencapsulation;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Verifications;
+import mockit.VerificationsInOrder;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -33,6 +36,7 @@ public class MqttIotHubConnectionTest
     final String deviceId = "test-deviceId";
     final String deviceKey = "test-devicekey?&test";
     final String resourceUri = "test-resource-uri";
+    final String sasToken = "test-sas-token";
     final int qos = 1;
     final String publishTopic = "devices/test-deviceId/messages/events/";
     final String subscribeTopic = "devices/test-deviceId/messages/devicebound/#";
@@ -53,7 +57,7 @@ public class MqttIotHubConnectionTest
     private MqttDeviceMethods mockDeviceMethods;
 
     @Mocked
-    protected IotHubSasToken mockToken;
+    protected IotHubSasTokenManager mockTokenManager;
 
     @Mocked
     IotHubUri mockIotHubUri;
@@ -234,6 +238,7 @@ public class MqttIotHubConnectionTest
 
     // Tests_SRS_MQTTIOTHUBCONNECTION_15_004: [The function shall establish an MQTT connection with an IoT Hub
     // using the provided host name, user name, device ID, and sas token.]
+    // Tests_SRS_MQTTIOTHUBCONNECTION_21_001: [The function shall obtain the SAS token from the SAS token manager of the config.]
     @Test
     public void openEstablishesConnectionUsingCorrectConfig() throws IOException
     {
@@ -248,7 +253,7 @@ public class MqttIotHubConnectionTest
         String clientIdentifier = "DeviceClientType=" + URLEncoder.encode(TransportUtils.javaDeviceClientIdentifier + TransportUtils.clientVersion, "UTF-8");
         assertEquals(iotHubHostName + "/" + deviceId + "/" + clientIdentifier, actualIotHubUserName);
 
-        String expectedSasToken = mockToken.toString();
+        String expectedSasToken = sasToken;
         String actualUserPassword = Deencapsulation.getField(connection, "iotHubUserPassword");
 
         assertEquals(expectedSasToken, actualUserPassword);
@@ -270,6 +275,74 @@ public class MqttIotHubConnectionTest
         };
     }
 
+    // Tests_SRS_MQTTIOTHUBCONNECTION_21_002: [The function shall give the metrics, if any, to the messaging client it creates.]
+    // Tests_SRS_MQTTIOTHUBCONNECTION_21_003: [The function shall save the metrics, and give them to the messaging client if the connection is open.]
+    @Test
+    public void openGivesMetricsToMessagingClient() throws IOException
+    {
+        baseExpectations();
+        openExpectations();
+        final IotHubClientMetrics metrics = new IotHubClientMetrics();
+
+        MqttIotHubConnection connection = new MqttIotHubConnection(mockConfig);
+        connection.setMetrics(metrics);
+        connection.open();
+
+        new Verifications()
+        {
+            {
+                mockDeviceMessaging.setMetrics(metrics);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTIOTHUBCONNECTION_21_004: [The function shall give the receive signal, if any, to the messaging client it creates.]
+    // Tests_SRS_MQTTIOTHUBCONNECTION_21_005: [The function shall save the receive signal, and give it to the messaging client if the connection is open.]
+    @Test
+    public void openGivesReceiveSignalToMessagingClient() throws IOException
+    {
+        baseExpectations();
+        openExpectations();
+        final IotHubSendSignal receiveSignal = new IotHubSendSignal();
+
+        MqttIotHubConnection connection = new MqttIotHubConnection(mockConfig);
+        connection.setReceiveSignal(receiveSignal);
+        connection.open();
+        connection.setReceiveSignal(null);
+
+        new VerificationsInOrder()
+        {
+            {
+                mockDeviceMessaging.setReceiveSignal(receiveSignal);
+                mockDeviceMessaging.setReceiveSignal(null);
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTIOTHUBCONNECTION_21_003: [The function shall save the metrics, and give them to the messaging client if the connection is open.]
+    @Test
+    public void setMetricsAfterOpenGivesThemToMessagingClient() throws IOException
+    {
+        baseExpectations();
+        openExpectations();
+        final IotHubClientMetrics metrics = new IotHubClientMetrics();
+
+        MqttIotHubConnection connection = new MqttIotHubConnection(mockConfig);
+        connection.open();
+        connection.setMetrics(metrics);
+
+        new Verifications()
+        {
+            {
+                mockDeviceMessaging.setMetrics(null);
+                times = 1;
+                mockDeviceMessaging.setMetrics(metrics);
+                times = 1;
+            }
+        };
+    }
+
     // Tests_SRS_MQTTIOTHUBCONNECTION_15_005: [If an MQTT connection is unable to be established for any reason,
     // the function shall throw an IOException.]
     @Test(expected = IOException.class)
@@ -279,8 +352,10 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                new IotHubSasToken(mockConfig, anyLong);
-                result = mockToken;
+                mockConfig.getSasTokenManager();
+                result = mockTokenManager;
+                mockTokenManager.getSasToken();
+                result = sasToken;
                 new MqttMessaging(sslPrefix + iotHubHostName + sslPortSuffix, deviceId, anyString, anyString);
                 result = new IOException(anyString);
             }
@@ -407,8 +482,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockMsg.getBytes();
-                result = msgBody;
+                mockMsg.getBodyLength();
+                result = msgBody.length;
                 mockDeviceMessaging.send(mockMsg);
             }
         };
@@ -451,12 +526,11 @@ public class MqttIotHubConnectionTest
         baseExpectations();
         openExpectations();
 
-        final byte[] msgBody = null;
         new NonStrictExpectations()
         {
             {
-                mockMsg.getBytes();
-                result = msgBody;
+                mockMsg.getBodyLength();
+                result = 0;
             }
         };
 
@@ -477,8 +551,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockMsg.getBytes();
-                result = new byte[0];
+                mockMsg.getBodyLength();
+                result = 0;
             }
         };
 
@@ -500,8 +574,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockMsg.getBytes();
-                result = msgBody;
+                mockMsg.getBodyLength();
+                result = msgBody.length;
             }
         };
 
@@ -520,8 +594,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockMsg.getBytes();
-                result = msgBody;
+                mockMsg.getBodyLength();
+                result = msgBody.length;
             }
         };
 
@@ -542,8 +616,8 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                mockMsg.getBytes();
-                result = msgBody;
+                mockMsg.getBodyLength();
+                result = msgBody.length;
                 mockDeviceMessaging.send(mockMsg);
                 result = new IOException(anyString);
             }
@@ -627,8 +701,10 @@ public class MqttIotHubConnectionTest
         new NonStrictExpectations()
         {
             {
-                new IotHubSasToken(mockConfig, anyLong);
-                result = mockToken;
+                mockConfig.getSasTokenManager();
+                result = mockTokenManager;
+                mockTokenManager.getSasToken();
+                result = sasToken;
                 new MqttMessaging(sslPrefix + iotHubHostName + sslPortSuffix, deviceId, anyString, anyString);
                 result = mockDeviceMessaging;
                 new MqttDeviceMethods();
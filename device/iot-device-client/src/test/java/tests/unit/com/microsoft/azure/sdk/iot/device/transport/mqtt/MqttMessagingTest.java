@@ -452,7 +452,7 @@ public class MqttMessagingTest {
         new NonStrictExpectations()
         {
             {
-                mockMessage.getBytes();
+                mockMessage.getBodyArray();
                 result = messageBody;
                 mockMqtt.publish(anyString, messageBody);
 
@@ -465,8 +465,8 @@ public class MqttMessagingTest {
         new Verifications()
         {
             {
-                mockMessage.getBytes();
-                times = 2;
+                mockMessage.getBodyArray();
+                times = 1;
                 mockMqtt.publish(anyString, messageBody);
                 times = 1;
 
@@ -483,7 +483,7 @@ public class MqttMessagingTest {
         new NonStrictExpectations()
         {
             {
-                mockMessage.getBytes();
+                mockMessage.getBodyArray();
                 result = messageBody;
                 mockMqtt.publish(anyString, messageBody);
                 result = mockIOException;
@@ -497,7 +497,7 @@ public class MqttMessagingTest {
         new Verifications()
         {
             {
-                mockMessage.getBytes();
+                mockMessage.getBodyArray();
                 times = 1;
                 mockMqtt.publish(mockParseTopic, new byte[1]);
                 times = 1;
@@ -520,7 +520,7 @@ public class MqttMessagingTest {
         new Verifications()
         {
             {
-                mockMessage.getBytes();
+                mockMessage.getBodyArray();
                 times = 0;
                 mockMqtt.publish(mockParseTopic, new byte[1]);
                 times = 0;
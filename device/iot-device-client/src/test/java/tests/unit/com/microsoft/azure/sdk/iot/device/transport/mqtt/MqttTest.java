@@ -4,7 +4,10 @@
 package com.microsoft.azure.sdk.iot.device.transport.mqtt;
 
 
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
+import com.microsoft.azure.sdk.iot.device.IotHubClientMetrics;
 import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 
 import mockit.*;
 import org.eclipse.paho.client.mqttv3.*;
@@ -1402,6 +1405,73 @@ public class MqttTest {
 
     }
 
+    /*
+    **Tests_SRS_Mqtt_21_004: [**The function shall save the receive signal for this instance only.**]**
+    **Tests_SRS_Mqtt_21_005: [**If a receive signal is set, the function shall raise it after the message was added to the received messages queue.**]**
+     */
+    @Test
+    public void messageArrivedRaisesReceiveSignal() throws IOException, MqttException, InterruptedException
+    {
+        //arrange
+        Mqtt mockMqtt = null;
+        try
+        {
+            baseConstructorExpectations(true);
+            baseConnectExpectation();
+            mockMqtt = instantiateMqtt(true);
+            IotHubSendSignal receiveSignal = new IotHubSendSignal();
+            mockMqtt.setReceiveSignal(receiveSignal);
+            mockMqtt.connect();
+
+            //act
+            mockMqtt.messageArrived(mockParseTopic, new MqttMessage(new byte[] {0x61}));
+
+            //assert
+            assertTrue(receiveSignal.await(10));
+        }
+        finally
+        {
+            testCleanUp(mockMqtt);
+        }
+    }
+
+    /*
+    **Tests_SRS_Mqtt_21_006: [**If a receive signal is set and another message for the messaging client is still in the received messages queue, the function shall raise it.**]**
+     */
+    @Test
+    public void receiveRaisesReceiveSignalWhileMessagesAreLeft() throws IOException, MqttException, InterruptedException
+    {
+        //arrange
+        Mqtt mockMqtt = null;
+        try
+        {
+            baseConstructorExpectations(true);
+            baseConnectExpectation();
+            new NonStrictExpectations()
+            {
+                {
+                    mockMqttAsyncClient.isConnected();
+                    result = true;
+                }
+            };
+            mockMqtt = instantiateMqtt(true);
+            IotHubSendSignal receiveSignal = new IotHubSendSignal();
+            mockMqtt.setReceiveSignal(receiveSignal);
+            mockMqtt.connect();
+
+            //act
+            Message receivedMessage = mockMqtt.receive();
+
+            //assert
+            assertNotNull(receivedMessage);
+            assertTrue(receiveSignal.await(10));
+        }
+        finally
+        {
+            testCleanUp(mockMqtt);
+        }
+    }
+
     /*
     **Tests_SRS_Mqtt_25_026: [**The function shall notify all its concrete classes by calling abstract method onReconnect at the entry of the function**]**
      */
@@ -1534,4 +1604,42 @@ public class MqttTest {
 
     }
 
+    /*
+    **Tests_SRS_Mqtt_21_001: [**The function shall save the metrics for this instance only.**]**
+    **Tests_SRS_Mqtt_21_002: [**If metrics are set, publish shall sample the number of pending publish tokens, including the one being published.**]**
+     */
+    @Test
+    public void publishSamplesInFlightCountIntoMetricsOfItsInstanceOnly() throws IOException, MqttException
+    {
+        //arrange
+        baseConstructorExpectations(true);
+        baseConstructorExpectations(false);
+        baseConnectExpectation();
+        basePublishExpectations();
+        new NonStrictExpectations()
+        {
+            {
+                mockMqttAsyncClient.getPendingDeliveryTokens();
+                result = new IMqttDeliveryToken[] { mockMqttDeliveryToken, mockMqttDeliveryToken };
+            }
+        };
+
+        final byte[] payload = {0x61, 0x62, 0x63};
+        Mqtt mockMqtt1 = instantiateMqtt(true);
+        Mqtt mockMqtt2 = instantiateMqtt(false);
+        IotHubClientMetrics metrics1 = new IotHubClientMetrics();
+        IotHubClientMetrics metrics2 = new IotHubClientMetrics();
+        mockMqtt1.setMetrics(metrics1);
+        mockMqtt2.setMetrics(metrics2);
+        mockMqtt1.connect();
+
+        //act
+        mockMqtt1.publish(mockParseTopic, payload);
+
+        //assert
+        assertEquals(3L, metrics1.getInFlightCount());
+        assertEquals(0L, metrics2.getInFlightCount());
+        testCleanUp(mockMqtt1);
+    }
+
 }
@@ -6,6 +6,7 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.transport.mqtt;
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubCallbackPacket;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubOutboundPacket;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubSendSignal;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttIotHubConnection;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttTransport;
 import junit.framework.AssertionFailedError;
@@ -15,6 +16,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 
@@ -163,6 +165,30 @@ public class MqttTransportTest {
         };
     }
 
+    // Tests_SRS_MQTTTRANSPORT_21_001: [If a send signal is set, the function shall raise it after adding the packet.]
+    // Tests_SRS_MQTTTRANSPORT_21_002: [The function shall save the send signal.]
+    @Test
+    public void addMessageRaisesSendSignal(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final IotHubSendSignal mockSignal) throws IOException
+    {
+        final Map<String, Object> context = new HashMap<>();
+
+        MqttTransport transport = new MqttTransport(mockConfig);
+        transport.open();
+        transport.setSendSignal(mockSignal);
+        transport.addMessage(mockMsg, mockCallback, context);
+
+        new Verifications()
+        {
+            {
+                mockSignal.signal();
+                times = 1;
+            }
+        };
+    }
+
     // Tests_SRS_MQTTTRANSPORT_15_008: [If the transport is closed, the function shall throw an IllegalStateException.]
     @Test(expected = IllegalStateException.class)
     public void addMessageFailsIfTransportNotOpened(
@@ -230,6 +256,40 @@ public class MqttTransportTest {
         };
     }
 
+    // Tests_SRS_MQTTTRANSPORT_21_012: [The transport queue shall have one lane per message priority, drained in weighted round robin.]
+    @Test
+    public void sendMessagesSendsHighPriorityMessagesFirst(
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new MqttIotHubConnection(mockConfig);
+                result = mockConnection;
+            }
+        };
+        final Message telemetry = new Message(new byte[1]);
+        telemetry.setPriority(MessagePriority.LOW);
+        final Message alarm = new Message(new byte[1]);
+        alarm.setPriority(MessagePriority.HIGH);
+
+        MqttTransport transport = new MqttTransport(mockConfig);
+        transport.open();
+        transport.addMessage(telemetry, mockCallback, null);
+        transport.addMessage(alarm, mockCallback, null);
+        transport.sendMessages();
+
+        final MqttIotHubConnection expectedConnection = mockConnection;
+        new VerificationsInOrder()
+        {
+            {
+                expectedConnection.sendEvent(alarm);
+                expectedConnection.sendEvent(telemetry);
+            }
+        };
+    }
+
     // Tests_SRS_MQTTTRANSPORT_15_010: [For each message being sent, the function shall send the message
     // and add the IoT Hub status code along with the callback and context to the callback list.]
     @Test
@@ -377,6 +437,43 @@ public class MqttTransportTest {
         };
     }
 
+    // Tests_SRS_MQTTTRANSPORT_21_007: [If a callback dispatcher is set, the function shall hand every callback to it instead of invoking it.]
+    // Tests_SRS_MQTTTRANSPORT_21_008: [The function shall save the callback dispatcher.]
+    @Test
+    public void invokeCallbacksHandsCallbacksToDispatcher(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final IotHubCallbackDispatcher mockDispatcher)
+            throws IOException
+    {
+        final Map<String, Object> context = new HashMap<>();
+        new NonStrictExpectations()
+        {
+            {
+                new MqttIotHubConnection(mockConfig);
+                result = mockConnection;
+            }
+        };
+
+        MqttTransport transport = new MqttTransport(mockConfig);
+        transport.open();
+        transport.setCallbackDispatcher(mockDispatcher);
+        transport.addMessage(mockMsg, mockCallback, context);
+        transport.addMessage(mockMsg, mockCallback, context);
+        transport.sendMessages();
+        transport.invokeCallbacks();
+
+        new Verifications()
+        {
+            {
+                mockDispatcher.dispatch((IotHubCallbackPacket) any);
+                times = 2;
+                mockCallback.execute((IotHubStatusCode) any, any);
+                times = 0;
+            }
+        };
+    }
+
     // Tests_SRS_MQTTTRANSPORT_15_014: [If the transport is closed, the function shall throw an IllegalStateException.]
     @Test(expected = IllegalStateException.class)
     public void invokeCallbacksFailsIfTransportNeverOpened() throws IOException
@@ -446,6 +543,137 @@ public class MqttTransportTest {
         };
     }
 
+    // Tests_SRS_MQTTTRANSPORT_21_013: [The function shall remove the expired packets from the waiting list, release and checkpoint them, and add a callback with the MESSAGE_EXPIRED status for each to the callback list.]
+    @Test
+    public void sendMessagesCompletesExpiredPackets(
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final IotHubOutboundJournal mockJournal)
+            throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new MqttIotHubConnection(mockConfig);
+                result = mockConnection;
+            }
+        };
+        final Message stale = new Message(new byte[1]);
+        stale.setExpiryTime(-1000);
+
+        MqttTransport transport = new MqttTransport(mockConfig);
+        transport.open();
+        transport.setOutboundJournal(mockJournal);
+        transport.addMessage(stale, mockCallback, null);
+        transport.sendMessages();
+
+        Queue<IotHubCallbackPacket> callbackList = Deencapsulation.getField(transport, "callbackList");
+        assertThat(callbackList.size(), is(1));
+        assertThat(callbackList.peek().getStatus(), is(IotHubStatusCode.MESSAGE_EXPIRED));
+        final MqttIotHubConnection expectedConnection = mockConnection;
+        new Verifications()
+        {
+            {
+                expectedConnection.sendEvent(stale);
+                times = 0;
+                mockJournal.checkpoint((IotHubOutboundPacket) any);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_21_006: [The function shall remove and return all packets on the waiting list, and release them from the outbound buffer.]
+    @Test
+    public void removePendingPacketsRemovesAndReleasesWaitingPackets(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final IotHubOutboundBuffer mockBuffer) throws IOException
+    {
+        final Map<String, Object> context = new HashMap<>();
+        new NonStrictExpectations()
+        {
+            {
+                mockBuffer.acquire((IotHubOutboundPacket) any, (Queue<IotHubOutboundPacket>) any, (Queue<IotHubCallbackPacket>) any);
+                result = true;
+            }
+        };
+
+        MqttTransport transport = new MqttTransport(mockConfig);
+        transport.open();
+        transport.setOutboundBuffer(mockBuffer);
+        transport.addMessage(mockMsg, mockCallback, context);
+        List<IotHubOutboundPacket> pending = transport.removePendingPackets();
+
+        assertThat(pending.size(), is(1));
+        assertThat(transport.isEmpty(), is(true));
+        new Verifications()
+        {
+            {
+                mockBuffer.release((IotHubOutboundPacket) any);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_21_009: [If an outbound journal is set, the function shall record the packet in it before adding it to the transport queue.]
+    // Tests_SRS_MQTTTRANSPORT_21_010: [If an outbound journal is set, the function shall checkpoint every sent packet in it.]
+    // Tests_SRS_MQTTTRANSPORT_21_011: [The function shall save the outbound journal.]
+    @Test
+    public void outboundJournalRecordsAddedAndCheckpointsSentPackets(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final IotHubOutboundJournal mockJournal) throws IOException
+    {
+        final Map<String, Object> context = new HashMap<>();
+        new NonStrictExpectations()
+        {
+            {
+                new MqttIotHubConnection(mockConfig);
+                result = mockConnection;
+            }
+        };
+
+        MqttTransport transport = new MqttTransport(mockConfig);
+        transport.open();
+        transport.setOutboundJournal(mockJournal);
+        transport.addMessage(mockMsg, mockCallback, context);
+        transport.sendMessages();
+
+        new VerificationsInOrder()
+        {
+            {
+                mockJournal.record((IotHubOutboundPacket) any);
+                times = 1;
+                mockConnection.sendEvent(mockMsg);
+                mockJournal.checkpoint((IotHubOutboundPacket) any);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_21_010: [If an outbound journal is set, the function shall checkpoint every sent packet in it.]
+    @Test
+    public void removePendingPacketsDoesNotCheckpointPackets(
+            @Mocked final Message mockMsg,
+            @Mocked final IotHubEventCallback mockCallback,
+            @Mocked final IotHubOutboundJournal mockJournal) throws IOException
+    {
+        final Map<String, Object> context = new HashMap<>();
+
+        MqttTransport transport = new MqttTransport(mockConfig);
+        transport.open();
+        transport.setOutboundJournal(mockJournal);
+        transport.addMessage(mockMsg, mockCallback, context);
+        transport.removePendingPackets();
+
+        new Verifications()
+        {
+            {
+                mockJournal.checkpoint((IotHubOutboundPacket) any);
+                times = 0;
+            }
+        };
+    }
+
     // Tests_SRS_MqttTransport_11_019: [The function shall return true if the waiting list
     // and callback list are all empty, and false otherwise.]
     @Test
@@ -591,4 +819,91 @@ public class MqttTransportTest {
         transport.close();
         transport.handleMessage();
     }
-}
\ No newline at end of file
+    // Tests_SRS_MQTTTRANSPORT_21_014: [If metrics are set, the function shall record the number and body bytes of the messages sent, and sample the number of messages waiting.]
+    // Tests_SRS_MQTTTRANSPORT_21_015: [If metrics are set and the IoT Hub accepted a message, the function shall record its acknowledgement.]
+    // Tests_SRS_MQTTTRANSPORT_21_016: [If metrics are set, the function shall record the time each callback it invokes runs for.]
+    // Tests_SRS_MQTTTRANSPORT_21_018: [The function shall save the metrics, and give them to the MQTT connection if there is one.]
+    @Test
+    public void sendMessagesRecordsMessagesInMetrics(
+            @Mocked final IotHubEventCallback mockCallback)
+            throws IOException
+    {
+        new NonStrictExpectations()
+        {
+            {
+                new MqttIotHubConnection(mockConfig);
+                result = mockConnection;
+                mockConnection.sendEvent((Message) any);
+                returns(IotHubStatusCode.OK_EMPTY, IotHubStatusCode.ERROR);
+            }
+        };
+        final IotHubClientMetrics metrics = new IotHubClientMetrics();
+
+        MqttTransport transport = new MqttTransport(mockConfig);
+        transport.open();
+        transport.setMetrics(metrics);
+        transport.addMessage(new Message(new byte[3]), mockCallback, null);
+        transport.addMessage(new Message(new byte[4]), mockCallback, null);
+        transport.sendMessages();
+        transport.invokeCallbacks();
+        transport.setMetrics(null);
+
+        new Verifications()
+        {
+            {
+                mockConnection.setMetrics(metrics);
+                times = 1;
+            }
+        };
+
+        assertThat(metrics.getMessagesSent(), is(2L));
+        assertThat(metrics.getBytesSent(), is(7L));
+        assertThat(metrics.getBatchSizeMax(), is(2L));
+        assertThat(metrics.getMessagesAcknowledged(), is(1L));
+        assertThat(metrics.getQueueDepth(), is(0L));
+        assertThat(metrics.getCallbackDurations().getCount(), is(2L));
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_21_019: [The function shall give the metrics, if any, to the MQTT connection before opening it.]
+    @Test
+    public void openGivesMetricsToConnectionBeforeOpeningIt() throws IOException
+    {
+        final IotHubClientMetrics metrics = new IotHubClientMetrics();
+
+        MqttTransport transport = new MqttTransport(mockConfig);
+        transport.setMetrics(metrics);
+        transport.open();
+
+        new VerificationsInOrder()
+        {
+            {
+                new MqttIotHubConnection(mockConfig);
+                mockConnection.setMetrics(metrics);
+                mockConnection.open();
+            }
+        };
+    }
+
+    // Tests_SRS_MQTTTRANSPORT_21_020: [The function shall save the receive signal, and give it to the MQTT connection if there is one.]
+    // Tests_SRS_MQTTTRANSPORT_21_021: [The function shall give the receive signal, if any, to the MQTT connection before opening it.]
+    @Test
+    public void openGivesReceiveSignalToConnectionBeforeOpeningIt() throws IOException
+    {
+        final IotHubSendSignal receiveSignal = new IotHubSendSignal();
+
+        MqttTransport transport = new MqttTransport(mockConfig);
+        transport.setReceiveSignal(receiveSignal);
+        transport.open();
+        transport.setReceiveSignal(null);
+
+        new VerificationsInOrder()
+        {
+            {
+                new MqttIotHubConnection(mockConfig);
+                mockConnection.setReceiveSignal(receiveSignal);
+                mockConnection.open();
+                mockConnection.setReceiveSignal(null);
+            }
+        };
+    }
+}
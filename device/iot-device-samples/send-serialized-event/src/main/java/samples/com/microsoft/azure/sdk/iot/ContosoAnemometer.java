@@ -3,9 +3,10 @@
 
 package samples.com.microsoft.azure.sdk.iot.device;
 
-import com.google.gson.Gson;
+import com.microsoft.azure.sdk.iot.device.TelemetryEvent;
+import com.microsoft.azure.sdk.iot.device.TelemetryWriter;
 
-public class ContosoAnemometer {
+public class ContosoAnemometer implements TelemetryEvent {
     public String deviceId;
     public double windSpeed;
 
@@ -24,9 +25,8 @@ public class ContosoAnemometer {
         return true;
     }
 
-    public String serialize() {
-        Gson gson = new Gson();
-
-        return gson.toJson(this);
+    public void writeTo(TelemetryWriter writer) {
+        writer.field("deviceId", deviceId)
+              .field("windSpeed", windSpeed);
     }
 }
@@ -138,9 +138,7 @@ public class SendSerializedEvent {
             data.deviceId = arguments.deviceId;
             data.windSpeed = arguments.windSpeed;
 
-            String msgStr = data.serialize();
-
-            Message msg = new Message(msgStr);
+            Message msg = client.obtainMessage(data);
             msg.setExpiryTime(5000);
 
             Object lockobj = new Object();
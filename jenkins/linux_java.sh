@@ -22,3 +22,12 @@ cd $build_root/device
 mvn install -DskipITs=false
 [ $? -eq 0 ] || exit $?
 
+# -- Java Device Client Benchmarks --
+# Fails when a hot path allocates more per operation than the committed baseline
+export JAVA_HOME=/usr/lib/jvm/java-8-openjdk-amd64
+cd $build_root/device
+mvn install -Pbenchmarks -DskipTests -pl iot-device-client-benchmarks -am
+[ $? -eq 0 ] || exit $?
+cd $build_root/device/iot-device-client-benchmarks
+java -cp target/benchmarks.jar benchmarks.com.microsoft.azure.sdk.iot.device.BenchmarkRegressionCheck baseline.properties
+[ $? -eq 0 ] || exit $?
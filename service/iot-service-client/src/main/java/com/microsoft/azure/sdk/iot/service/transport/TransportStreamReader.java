@@ -0,0 +1,231 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.service.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reads response streams in bulk. When the length of the content is known
+ * up front, and not larger than {@link #MAX_PREALLOCATED_LENGTH}, the stream
+ * is read straight into an array of that size; otherwise it is read into
+ * pooled chunks of 8 KB to 64 KB that are assembled once at the end of the
+ * stream, so that a large declared length is only allocated as the bytes
+ * arrive.
+ */
+public final class TransportStreamReader
+{
+    /** The size of the first chunk used when the content length is unknown. */
+    public static final int MIN_CHUNK_SIZE = 8 * 1024;
+    /** The size of the largest chunk used when the content length is unknown. */
+    public static final int MAX_CHUNK_SIZE = 64 * 1024;
+    /** The largest content length allocated before any byte of the content is read. */
+    public static final int MAX_PREALLOCATED_LENGTH = 16 * MAX_CHUNK_SIZE;
+
+    private static final int CHUNK_SIZE_CLASSES = 4;
+    private static final int POOLED_CHUNKS_PER_SIZE_CLASS = 4;
+    private static final List<ArrayBlockingQueue<byte[]>> CHUNK_POOLS = new ArrayList<>(CHUNK_SIZE_CLASSES);
+
+    static
+    {
+        for (int i = 0; i < CHUNK_SIZE_CLASSES; i++)
+        {
+            CHUNK_POOLS.add(new ArrayBlockingQueue<byte[]>(POOLED_CHUNKS_PER_SIZE_CLASS));
+        }
+    }
+
+    /**
+     * Reads the stream until the end of the stream is reached.
+     *
+     * @param stream the stream to read from.
+     * @param contentLength the expected number of bytes, or a value less than
+     * or equal to 0 if it is unknown. It is only used as a sizing hint, up to
+     * {@link #MAX_PREALLOCATED_LENGTH}.
+     *
+     * @return the content of the stream.
+     *
+     * @throws IOException if the stream could not be read from.
+     */
+    public static byte[] readAll(InputStream stream, long contentLength) throws IOException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_001: [If the provided stream is null, the function shall throw an IllegalArgumentException.]
+        if (stream == null)
+        {
+            throw new IllegalArgumentException("stream cannot be null.");
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_002: [If the contentLength is greater than 0 and not greater than MAX_PREALLOCATED_LENGTH, the function shall read the stream directly into an array of that size.]
+        if ((contentLength > 0) && (contentLength <= MAX_PREALLOCATED_LENGTH))
+        {
+            return readKnownLength(stream, (int)contentLength);
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_003: [Otherwise, the function shall read the stream into pooled chunks and assemble them once the end of the stream is reached.]
+        return readUnknownLength(stream);
+    }
+
+    /**
+     * Reads the stream until the end of the stream is reached and returns
+     * the content as a {@link ByteBuffer}.
+     *
+     * @param stream the stream to read from.
+     * @param contentLength the expected number of bytes, or a value less than
+     * or equal to 0 if it is unknown.
+     *
+     * @return a buffer positioned at the start of the content.
+     *
+     * @throws IOException if the stream could not be read from.
+     */
+    public static ByteBuffer readBuffer(InputStream stream, long contentLength) throws IOException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_007: [The function shall return a ByteBuffer that wraps the content read by readAll without copying it.]
+        return ByteBuffer.wrap(readAll(stream, contentLength));
+    }
+
+    /**
+     * Reads the stream until the end of the stream is reached and returns
+     * the content as an {@link InputStream}, for parsers that consume a stream.
+     *
+     * @param stream the stream to read from.
+     * @param contentLength the expected number of bytes, or a value less than
+     * or equal to 0 if it is unknown.
+     *
+     * @return a stream over the content.
+     *
+     * @throws IOException if the stream could not be read from.
+     */
+    public static InputStream readStream(InputStream stream, long contentLength) throws IOException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_008: [The function shall return an InputStream over the content read by readAll without copying it.]
+        return new ByteArrayInputStream(readAll(stream, contentLength));
+    }
+
+    private static byte[] readKnownLength(InputStream stream, int contentLength) throws IOException
+    {
+        byte[] content = new byte[contentLength];
+        int filled = 0;
+        while (filled < contentLength)
+        {
+            int read = readSome(stream, content, filled, contentLength - filled);
+            if (read < 0)
+            {
+                // Codes_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_004: [If the stream ends before contentLength bytes are read, the function shall return only the bytes read.]
+                return Arrays.copyOf(content, filled);
+            }
+            filled += read;
+        }
+
+        int next = stream.read();
+        if (next < 0)
+        {
+            return content;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_005: [If the stream holds more than contentLength bytes, the function shall keep reading until the end of the stream.]
+        byte[] remaining = readUnknownLength(stream);
+        byte[] result = Arrays.copyOf(content, contentLength + 1 + remaining.length);
+        result[contentLength] = (byte)next;
+        System.arraycopy(remaining, 0, result, contentLength + 1, remaining.length);
+        return result;
+    }
+
+    private static byte[] readUnknownLength(InputStream stream) throws IOException
+    {
+        List<byte[]> fullChunks = new ArrayList<>();
+        int sizeClass = 0;
+        byte[] chunk = acquireChunk(sizeClass);
+        int filled = 0;
+        int total = 0;
+        try
+        {
+            while (true)
+            {
+                if (filled == chunk.length)
+                {
+                    fullChunks.add(chunk);
+                    if (sizeClass < CHUNK_SIZE_CLASSES - 1)
+                    {
+                        sizeClass++;
+                    }
+                    chunk = acquireChunk(sizeClass);
+                    filled = 0;
+                }
+
+                int read = readSome(stream, chunk, filled, chunk.length - filled);
+                if (read < 0)
+                {
+                    break;
+                }
+                filled += read;
+                total += read;
+            }
+
+            byte[] content = new byte[total];
+            int offset = 0;
+            for (byte[] fullChunk : fullChunks)
+            {
+                System.arraycopy(fullChunk, 0, content, offset, fullChunk.length);
+                offset += fullChunk.length;
+            }
+            System.arraycopy(chunk, 0, content, offset, filled);
+            return content;
+        }
+        finally
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_006: [The function shall return the chunks to the pool, even if reading the stream fails.]
+            for (byte[] fullChunk : fullChunks)
+            {
+                releaseChunk(fullChunk);
+            }
+            releaseChunk(chunk);
+        }
+    }
+
+    /**
+     * Reads into the buffer in bulk. A stream that returns 0 from a bulk
+     * read is read one byte at a time, so that it still makes progress.
+     */
+    private static int readSome(InputStream stream, byte[] buffer, int offset, int length) throws IOException
+    {
+        int read = stream.read(buffer, offset, length);
+        if (read != 0)
+        {
+            return read;
+        }
+
+        int next = stream.read();
+        if (next < 0)
+        {
+            return -1;
+        }
+        buffer[offset] = (byte)next;
+        return 1;
+    }
+
+    private static byte[] acquireChunk(int sizeClass)
+    {
+        byte[] chunk = CHUNK_POOLS.get(sizeClass).poll();
+        if (chunk == null)
+        {
+            chunk = new byte[MIN_CHUNK_SIZE << sizeClass];
+        }
+        return chunk;
+    }
+
+    private static void releaseChunk(byte[] chunk)
+    {
+        int sizeClass = Integer.numberOfTrailingZeros(chunk.length / MIN_CHUNK_SIZE);
+        CHUNK_POOLS.get(sizeClass).offer(chunk);
+    }
+
+    private TransportStreamReader()
+    {
+    }
+}
@@ -5,12 +5,13 @@
 
 package com.microsoft.azure.sdk.iot.service.transport.http;
 
+import com.microsoft.azure.sdk.iot.service.transport.TransportStreamReader;
+
 import javax.net.ssl.HttpsURLConnection;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.ProtocolException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -189,7 +190,8 @@ public class HttpConnection
         // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_12_014: [The function shall read from the input stream (response stream) and return the response.]
         // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_12_015: [The function shall throw an IOException if the input stream could not be accessed.]
         InputStream inputStream = this.connection.getInputStream();
-        byte[] input = readInputStream(inputStream);
+        // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_21_024: [The function shall read the stream in bulk, using the response Content-Length as a sizing hint.]
+        byte[] input = TransportStreamReader.readAll(inputStream, this.connection.getContentLength());
         // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_12_016: [The function shall close the input stream after it has been completely read.]
         inputStream.close();
 
@@ -214,7 +216,8 @@ public class HttpConnection
         // if there is no error reason, getErrorStream() returns null.
         if (errorStream != null)
         {
-            error = readInputStream(errorStream);
+            // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_21_025: [The function shall read the error stream in bulk, using the response Content-Length as a sizing hint.]
+            error = TransportStreamReader.readAll(errorStream, this.connection.getContentLength());
             // Codes_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_12_019: [The function shall close the error stream after it has been completely read.]
             errorStream.close();
         }
@@ -252,37 +255,6 @@ public class HttpConnection
         return this.connection.getHeaderFields();
     }
 
-    /**
-     * Reads the input stream until the stream is empty.
-     *
-     * @param stream The input stream.
-     *
-     * @return The content of the input stream.
-     *
-     * @throws IOException This exception thrown if the input stream could not be read from.
-     */
-    protected static byte[] readInputStream(InputStream stream)
-            throws IOException
-    {
-        ArrayList<Byte> byteBuffer = new ArrayList<>();
-        int nextByte = -1;
-        // read(byte[]) reads the byte into the buffer and returns the number
-        // of bytes read, or -1 if the end of the stream has been reached.
-        while ((nextByte = stream.read()) > -1)
-        {
-            byteBuffer.add((byte) nextByte);
-        }
-
-        int bufferSize = byteBuffer.size();
-        byte[] byteArray = new byte[bufferSize];
-        for (int i = 0; i < bufferSize; ++i)
-        {
-            byteArray[i] = byteBuffer.get(i);
-        }
-
-        return byteArray;
-    }
-
     protected HttpConnection()
     {
         this.connection = null;
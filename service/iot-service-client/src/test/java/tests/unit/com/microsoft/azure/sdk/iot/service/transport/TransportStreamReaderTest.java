@@ -0,0 +1,204 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.service.transport;
+
+import com.microsoft.azure.sdk.iot.service.transport.TransportStreamReader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/** Unit tests for TransportStreamReader. */
+public class TransportStreamReaderTest
+{
+    private static byte[] content(int length)
+    {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            content[i] = (byte)(i * 31);
+        }
+        return content;
+    }
+
+    /** A stream that hands out at most one byte per bulk read, and 0 on every other call. */
+    private static InputStream tricklingStream(final byte[] content)
+    {
+        return new InputStream()
+        {
+            private int position = 0;
+            private boolean skip = false;
+
+            @Override
+            public int read()
+            {
+                return (position < content.length) ? (content[position++] & 0xFF) : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len)
+            {
+                skip = !skip;
+                if (position >= content.length)
+                {
+                    return -1;
+                }
+                if (skip)
+                {
+                    return 0;
+                }
+                b[off] = content[position++];
+                return 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_001: [If the provided stream is null, the function shall throw an IllegalArgumentException.]
+    @Test(expected = IllegalArgumentException.class)
+    public void readAllRejectsNullStream() throws IOException
+    {
+        TransportStreamReader.readAll(null, 0);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_002: [If the contentLength is greater than 0 and not greater than MAX_PREALLOCATED_LENGTH, the function shall read the stream directly into an array of that size.]
+    @Test
+    public void readAllReadsKnownLength() throws IOException
+    {
+        byte[] expected = content(100000);
+
+        byte[] actual = TransportStreamReader.readAll(new ByteArrayInputStream(expected), expected.length);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_003: [Otherwise, the function shall read the stream into pooled chunks and assemble them once the end of the stream is reached.]
+    @Test
+    public void readAllReadsUnknownLengthAcrossChunks() throws IOException
+    {
+        byte[] expected = content(TransportStreamReader.MIN_CHUNK_SIZE + 2 * TransportStreamReader.MAX_CHUNK_SIZE + 17);
+
+        byte[] actual = TransportStreamReader.readAll(new ByteArrayInputStream(expected), -1);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_003: [Otherwise, the function shall read the stream into pooled chunks and assemble them once the end of the stream is reached.]
+    @Test
+    public void readAllReturnsEmptyArrayForEmptyStream() throws IOException
+    {
+        byte[] actual = TransportStreamReader.readAll(new ByteArrayInputStream(new byte[0]), 0);
+
+        assertEquals(0, actual.length);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_003: [Otherwise, the function shall read the stream into pooled chunks and assemble them once the end of the stream is reached.]
+    @Test
+    public void readAllMakesProgressOnStreamsReturningZero() throws IOException
+    {
+        byte[] expected = content(300);
+
+        assertArrayEquals(expected, TransportStreamReader.readAll(tricklingStream(expected), 0));
+        assertArrayEquals(expected, TransportStreamReader.readAll(tricklingStream(expected), expected.length));
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_003: [Otherwise, the function shall read the stream into pooled chunks and assemble them once the end of the stream is reached.]
+    @Test
+    public void readAllDoesNotPreallocateHugeContentLength() throws IOException
+    {
+        byte[] expected = content(TransportStreamReader.MAX_PREALLOCATED_LENGTH + 1);
+
+        byte[] small = TransportStreamReader.readAll(new ByteArrayInputStream(expected, 0, 1000), Integer.MAX_VALUE - 8);
+        byte[] large = TransportStreamReader.readAll(new ByteArrayInputStream(expected), expected.length);
+
+        assertEquals(1000, small.length);
+        assertArrayEquals(expected, large);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_004: [If the stream ends before contentLength bytes are read, the function shall return only the bytes read.]
+    @Test
+    public void readAllTrimsShortStream() throws IOException
+    {
+        byte[] expected = content(10);
+
+        byte[] actual = TransportStreamReader.readAll(new ByteArrayInputStream(expected), 1000);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_005: [If the stream holds more than contentLength bytes, the function shall keep reading until the end of the stream.]
+    @Test
+    public void readAllReadsPastUnderstatedLength() throws IOException
+    {
+        byte[] expected = content(20000);
+
+        byte[] actual = TransportStreamReader.readAll(new ByteArrayInputStream(expected), 10);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_006: [The function shall return the chunks to the pool, even if reading the stream fails.]
+    @Test
+    public void readAllPropagatesReadFailureAndStaysUsable() throws IOException
+    {
+        InputStream failing = new InputStream()
+        {
+            @Override
+            public int read() throws IOException
+            {
+                throw new IOException("failed");
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                throw new IOException("failed");
+            }
+        };
+
+        try
+        {
+            TransportStreamReader.readAll(failing, 0);
+            fail("expected an IOException");
+        }
+        catch (IOException e)
+        {
+            assertEquals("failed", e.getMessage());
+        }
+
+        byte[] expected = content(50000);
+        assertArrayEquals(expected, TransportStreamReader.readAll(new ByteArrayInputStream(expected), 0));
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_007: [The function shall return a ByteBuffer that wraps the content read by readAll without copying it.]
+    @Test
+    public void readBufferWrapsContent() throws IOException
+    {
+        byte[] expected = content(500);
+
+        ByteBuffer buffer = TransportStreamReader.readBuffer(new ByteArrayInputStream(expected), 0);
+
+        assertEquals(0, buffer.position());
+        assertEquals(expected.length, buffer.remaining());
+        byte[] actual = new byte[buffer.remaining()];
+        buffer.get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_TRANSPORTSTREAMREADER_21_008: [The function shall return an InputStream over the content read by readAll without copying it.]
+    @Test
+    public void readStreamReturnsStreamOverContent() throws IOException
+    {
+        byte[] expected = content(500);
+
+        InputStream stream = TransportStreamReader.readStream(new ByteArrayInputStream(expected), expected.length);
+
+        assertArrayEquals(expected, TransportStreamReader.readAll(stream, 0));
+    }
+}
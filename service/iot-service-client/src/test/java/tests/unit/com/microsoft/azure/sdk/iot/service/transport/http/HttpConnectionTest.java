@@ -719,4 +719,67 @@ public class HttpConnectionTest
         // Act
         conn.getResponseHeaders();
     }
+    // Tests_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_21_024: [The function shall read the stream in bulk, using the response Content-Length as a sizing hint.]
+    @Test
+    public void readInputUsesContentLengthAsSizingHint(@Mocked final InputStream mockIs) throws IOException
+    {
+        // Arrange
+        final HttpMethod httpsMethod = HttpMethod.GET;
+        byte[] expectedResponse = { 1, 2, 3 };
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+                mockUrl.openConnection();
+                result = mockUrlConn;
+                mockUrlConn.getRequestMethod();
+                result = httpsMethod.name();
+                mockUrlConn.getInputStream();
+                result = mockIs;
+                mockUrlConn.getContentLength();
+                result = 3;
+                mockIs.read();
+                returns(1, 2, 3, -1);
+            }
+        };
+        HttpConnection conn = new HttpConnection(mockUrl, httpsMethod);
+        conn.connect();
+        // Act
+        byte[] testResponse = conn.readInput();
+        // Assert
+        assertThat(testResponse, is(expectedResponse));
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_HTTPCONNECTION_21_025: [The function shall read the error stream in bulk, using the response Content-Length as a sizing hint.]
+    @Test
+    public void readErrorUsesContentLengthAsSizingHint(@Mocked final InputStream mockIs) throws IOException
+    {
+        // Arrange
+        final HttpMethod httpsMethod = HttpMethod.GET;
+        byte[] expectedResponse = { 1, 2, 3 };
+        new NonStrictExpectations()
+        {
+            {
+                mockUrl.getProtocol();
+                result = "https";
+                mockUrl.openConnection();
+                result = mockUrlConn;
+                mockUrlConn.getRequestMethod();
+                result = httpsMethod.name();
+                mockUrlConn.getErrorStream();
+                result = mockIs;
+                mockUrlConn.getContentLength();
+                result = 3;
+                mockIs.read();
+                returns(1, 2, 3, -1);
+            }
+        };
+        HttpConnection conn = new HttpConnection(mockUrl, httpsMethod);
+        conn.connect();
+        // Act
+        byte[] testResponse = conn.readError();
+        // Assert
+        assertThat(testResponse, is(expectedResponse));
+    }
 }